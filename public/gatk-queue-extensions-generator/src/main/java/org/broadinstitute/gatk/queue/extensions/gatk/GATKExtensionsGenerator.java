@@ -102,7 +102,7 @@ public class GATKExtensionsGenerator extends CommandLineProgram {
     public static void main(String[] argv) {
         try {
             start(new GATKExtensionsGenerator(), argv);
-            System.exit(CommandLineProgram.result);
+            System.exit(CommandLineProgram.getResult());
         } catch (Exception e) {
             exitSystemWithError(e);
         }
@@ -0,0 +1,167 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.queue.extensions.gatk
+
+import collection.JavaConversions._
+import java.io.{PrintWriter, File}
+import org.broadinstitute.gatk.engine.datasources.reads.BAMIndexIntervalCostModel
+import org.broadinstitute.gatk.utils.{GenomeLoc, GenomeLocParser}
+import org.broadinstitute.gatk.utils.interval.{IntervalCostModel, IntervalUtils, TimedIntervalCostModel}
+import org.broadinstitute.gatk.queue.QException
+import org.broadinstitute.gatk.queue.function.InProcessFunction
+import org.broadinstitute.gatk.queue.function.scattergather.CloneFunction
+
+/**
+ * A scatter function that divides down to the locus level like the LocusScatterFunction, but into parts of about
+ * equal expected cost instead of equal size.  The cost of each region is estimated from the indices of the input
+ * BAMs and, if the GATK function has an interval_cost_table, from the runtimes of an earlier run.
+ *
+ * When Queue keeps a runtime history, the runtime of each part is also merged into an interval timings file next to
+ * the history, and the next run without an interval_cost_table splits the intervals using those timings.  Parts that
+ * ran much longer than the rest are then split into smaller pieces.
+ */
+class CostScatterFunction extends GATKScatterFunction with InProcessFunction {
+  protected override def maxIntervals = scatterCount
+
+  def run() {
+    val gi = GATKScatterFunction.getGATKIntervals(this.originalGATK)
+    val splits = IntervalUtils.splitLocusIntervalsByCost(gi.locs, this.scatterOutputFiles.size, costModel(gi))
+    IntervalUtils.scatterFixedIntervals(gi.samFileHeader, splits, this.scatterOutputFiles)
+  }
+
+  /** The interval timings recorded so far, starting with those of earlier runs, loaded when the first part completes. */
+  private var recordedTimings: java.util.TreeMap[GenomeLoc, java.lang.Double] = _
+
+  /** The number of parts that completed in this run, and the number at which the timings file is next rewritten. */
+  private var partsDone = 0
+  private var nextWrite = 1
+
+  private lazy val timingsParser =
+    new GenomeLocParser(GATKScatterFunction.getGATKIntervals(this.originalGATK).samFileHeader.getSequenceDictionary)
+
+  /**
+   * Spreads the runtime of a completed part over its intervals by size, replacing the timings recorded for the same
+   * bases by earlier runs.  The timings file is rewritten each time the number of completed parts doubles and when
+   * the last part completes, so the file is written a logarithmic number of times over the whole scatter.
+   */
+  override def cloneDone(cloneFunction: CloneFunction, index: Int, runtimeSeconds: Double) {
+    val timingsFile = recordedTimingsFile
+    if (timingsFile != null) {
+      if (recordedTimings == null)
+        recordedTimings = readTimings(timingsFile)
+      val locs = cloneFunction.getFieldValue(this.intervalsField).asInstanceOf[Seq[File]]
+              .flatMap(file => IntervalUtils.intervalFileToList(timingsParser, file.getAbsolutePath))
+      val size = locs.map(_.size.toDouble).sum
+      if (size > 0) {
+        for (loc <- locs)
+          putTiming(loc, runtimeSeconds * loc.size / size)
+      }
+      partsDone += 1
+      if (partsDone >= nextWrite || partsDone >= cloneFunction.cloneCount) {
+        writeTimings(timingsFile)
+        nextWrite = partsDone * 2
+      }
+    }
+  }
+
+  private def costModel(gi: GATKIntervals): IntervalCostModel = {
+    val indexCostModel = BAMIndexIntervalCostModel.fromBAMFiles(this.originalGATK.input_file)
+    val timings =
+      if (this.originalGATK.interval_cost_table != null) this.originalGATK.interval_cost_table
+      else recordedTimingsFile
+    if (timings == null || !timings.exists)
+      indexCostModel
+    else
+      new TimedIntervalCostModel(new GenomeLocParser(gi.samFileHeader.getSequenceDictionary), timings, indexCostModel)
+  }
+
+  /**
+   * @return the file the runtimes of the parts are recorded in, or null if Queue does not keep a runtime history.
+   */
+  private def recordedTimingsFile = {
+    val history = this.qSettings.runtimeHistory
+    if (history == null) null
+    else new File(history.getPath + "." + this.originalGATK.analysisName.replaceAll("\\s", "_") + ".intervals")
+  }
+
+  /**
+   * Reads the interval timings written by an earlier run.
+   * @return the timings by interval, empty if the file doesn't exist or can't be read.
+   */
+  private def readTimings(timingsFile: File) = {
+    val timings = new java.util.TreeMap[GenomeLoc, java.lang.Double]
+    if (timingsFile.exists) {
+      val source = scala.io.Source.fromFile(timingsFile)
+      try {
+        for (line <- source.getLines() if !line.isEmpty && !line.startsWith("#")) {
+          val fields = line.split("\t")
+          putTiming(timings, timingsParser.parseGenomeLoc(fields(0)), fields(1).toDouble)
+        }
+      } catch {
+        case e: Exception =>
+          logger.warn("Ignoring the unreadable interval timings in " + timingsFile, e)
+          timings.clear()
+      } finally {
+        source.close()
+      }
+    }
+    timings
+  }
+
+  private def putTiming(loc: GenomeLoc, seconds: Double) {
+    putTiming(recordedTimings, loc, seconds)
+  }
+
+  /**
+   * Records the time of an interval, trimming the timed intervals it overlaps so that none of the intervals overlap.
+   * The time of a trimmed interval is spread evenly over its bases.
+   */
+  private def putTiming(timings: java.util.TreeMap[GenomeLoc, java.lang.Double], loc: GenomeLoc, seconds: Double) {
+    // Only the interval before loc can start before it and still overlap, since the timed intervals don't overlap.
+    val overlapping = (Option(timings.lowerKey(loc)).toSeq ++ timings.tailMap(loc, true).keySet.takeWhile(!loc.isBefore(_)))
+            .filter(_.overlapsP(loc))
+    for (old <- overlapping) {
+      val oldSeconds = timings.remove(old).doubleValue
+      for (remainder <- old.subtract(loc))
+        timings.put(remainder, oldSeconds * remainder.size / old.size)
+    }
+    timings.put(loc, seconds)
+  }
+
+  private def writeTimings(timingsFile: File) {
+    val tempFile = new File(timingsFile.getPath + ".tmp")
+    val writer = new PrintWriter(tempFile)
+    try {
+      writer.println("#interval\tseconds")
+      for ((loc, seconds) <- recordedTimings)
+        writer.println("%s:%d-%d\t%.6f".format(loc.getContig, loc.getStart, loc.getStop, seconds.doubleValue))
+    } finally {
+      writer.close()
+    }
+    if (!tempFile.renameTo(timingsFile) && !(timingsFile.delete() && tempFile.renameTo(timingsFile)))
+      throw new QException("Unable to write interval timings to " + timingsFile)
+  }
+}
@@ -33,7 +33,7 @@ import org.broadinstitute.gatk.utils.commandline._
 
 trait GATKScatterFunction extends ScatterFunction {
   /* The runtime field to set for specifying intervals. */
-  private final val intervalsField = "intervals"
+  protected final val intervalsField = "intervals"
   private final val intervalsStringField = "intervalsString"
   private final val excludeIntervalsField = "excludeIntervals"
   private final val excludeIntervalsStringField = "excludeIntervalsString"
@@ -66,8 +66,8 @@ object QCommandLine extends Logging {
       } catch {
         case e: Exception => /* ignore, example 'java.lang.IllegalStateException: Shutdown in progress' */
       }
-      if (CommandLineProgram.result != 0)
-        System.exit(CommandLineProgram.result)
+      if (CommandLineProgram.getResult != 0)
+        System.exit(CommandLineProgram.getResult)
     } catch {
       case e: Exception => CommandLineProgram.exitSystemWithError(e)
     }
@@ -98,4 +98,7 @@ class QSettings {
   
   @Argument(fullName="log_directory", shortName="logDir", doc="Directory to write log files into.", required=false)
   var logDirectory: File = _
+
+  @Argument(fullName="runtime_history", shortName="runtimeHistory", doc="File where the runtimes of jobs are recorded across runs and used to order jobs and size scatter gathers.", required=false)
+  var runtimeHistory: File = _
 }
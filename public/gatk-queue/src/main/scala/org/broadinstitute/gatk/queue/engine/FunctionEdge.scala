@@ -46,6 +46,11 @@ class FunctionEdge(val function: QFunction, val inputs: QNode, val outputs: QNod
    */
   var depth = -1
 
+  /**
+   * The expected runtime of the longest chain of dependent functions starting with this edge.
+   */
+  var criticalPathCost = -1D
+
   val myRunInfo: JobRunInfo = JobRunInfo.default // purely for dryRun testing
 
   /**
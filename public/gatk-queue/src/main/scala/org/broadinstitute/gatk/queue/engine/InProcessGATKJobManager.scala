@@ -0,0 +1,100 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.queue.engine
+
+import org.broadinstitute.gatk.engine.CommandLineGATK
+import org.broadinstitute.gatk.queue.QException
+import org.broadinstitute.gatk.queue.function.{JavaCommandLineFunction, CommandLineFunction}
+import org.broadinstitute.gatk.queue.function.scattergather.CloneFunction
+import org.broadinstitute.gatk.queue.util.{ShellUtils, Logging}
+
+/**
+ * Runs GATK functions on a pool of threads in the Queue JVM instead of starting a JVM for each one.
+ *
+ * Runs are isolated from each other as in the GATK daemon: each gets a fresh engine on a thread group of
+ * its own, with its own output and random number generator, while the reference, its dictionary and
+ * Tribble indices are loaded once and shared.  Functions run at once up to the number of threads, and
+ * while their memory limits fit in the heap of Queue.  Functions asking for more memory than the
+ * in-process maximum, and functions whose command lines need a shell, are run in their own JVM
+ * by the command line job runner instead.
+ */
+class InProcessGATKJobManager extends ResourceLimitedJobManager[InProcessGATKRunner] with Logging {
+  private var maxJobMemory = 0D
+
+  def runnerType = classOf[InProcessGATKRunner]
+  def functionType = classOf[CommandLineFunction]
+  def create(function: CommandLineFunction) = {
+    val args = InProcessGATKJobManager.gatkArguments(function).getOrElse(
+      throw new QException("Unable to run in process: " + function.description))
+    new InProcessGATKRunner(function, args, this)
+  }
+
+  override def init(settings: QGraphSettings) {
+    super.init(settings)
+    // each function runs on a thread of its own, which counts as a core
+    totalCores = settings.inProcessGATKThreads.getOrElse(Runtime.getRuntime.availableProcessors) max 1
+    totalMemory = Runtime.getRuntime.maxMemory / (1024D * 1024D * 1024D)
+    maxJobMemory = settings.inProcessGATKMaxMemory.getOrElse(totalMemory)
+    logger.info("Running GATK functions in process on %d threads with %.1f GB of memory".format(totalCores, totalMemory))
+  }
+
+  /**
+   * Returns true if the function is a GATK run that can share the Queue JVM.
+   * @param function Function to check.
+   * @return true if the function should be run in process.
+   */
+  def accepts(function: CommandLineFunction) =
+    InProcessGATKJobManager.memory(function) <= maxJobMemory && InProcessGATKJobManager.gatkArguments(function).isDefined
+
+  protected def cores(function: CommandLineFunction) = 1
+  protected def memory(function: CommandLineFunction) = InProcessGATKJobManager.memory(function)
+}
+
+object InProcessGATKJobManager {
+  private val gatkMainClass = classOf[CommandLineGATK].getName
+
+  /**
+   * Returns the arguments to pass to CommandLineGATK to run a function.
+   * @param function Function to run, or a scatter gather clone of one.
+   * @return the arguments, or None if the function does not run the GATK or its command line needs a shell.
+   */
+  def gatkArguments(function: CommandLineFunction): Option[Seq[String]] = function match {
+    case clone: CloneFunction => clone.withOriginalFunction(original => gatkArguments(original))
+    case java: JavaCommandLineFunction if (java.jarFile == null && java.javaMainClass == gatkMainClass) =>
+      java.javaArguments.flatMap(ShellUtils.parseShellArguments(_))
+    case _ => None
+  }
+
+  /**
+   * The memory in gigabytes reserved for a function.
+   * Like gatkArguments, must be called from the thread running the graph, as clones briefly change their original function.
+   */
+  def memory(function: CommandLineFunction): Double = function match {
+    case clone: CloneFunction => clone.withOriginalFunction(original => memory(original))
+    case java: JavaCommandLineFunction => java.javaMemoryLimit.getOrElse(0D) max 0D
+    case _ => function.memoryLimit.getOrElse(0D) max 0D
+  }
+}
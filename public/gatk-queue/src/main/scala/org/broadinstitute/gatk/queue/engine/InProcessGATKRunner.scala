@@ -0,0 +1,100 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.queue.engine
+
+import java.io.PrintStream
+import java.util.Date
+import org.apache.commons.io.{IOUtils, FileUtils}
+import org.broadinstitute.gatk.engine.daemon.GATKDaemon
+import org.broadinstitute.gatk.queue.function.CommandLineFunction
+import org.broadinstitute.gatk.queue.util.Logging
+import org.broadinstitute.gatk.utils.Utils
+
+/**
+ * Runs a GATK function in the Queue JVM on a thread of its own.
+ * @param function Function to run.
+ * @param args Arguments to pass to CommandLineGATK.
+ * @param manager Manager holding the threads and memory used by the job.
+ */
+class InProcessGATKRunner(val function: CommandLineFunction, args: Seq[String], manager: InProcessGATKJobManager)
+  extends JobRunner[CommandLineFunction] with Logging {
+
+  @volatile private var runStatus: RunnerStatus.Value = _
+
+  // Evaluated up front, as clone functions cannot be described from the thread running the job
+  private val description = function.description
+
+  def status = runStatus
+
+  def start() {
+    updateJobRun(args)
+
+    getRunInfo.startTime = new Date()
+    getRunInfo.exechosts = Utils.resolveHostname()
+    runStatus = RunnerStatus.RUNNING
+
+    val reserved = manager.allocate(function)
+    try {
+      val thread = new Thread(new Runnable {
+        def run() {
+          var exitStatus = -1
+          var jobOutputStream: PrintStream = null
+          var jobErrorStream: PrintStream = null
+          try {
+            jobOutputStream = new PrintStream(FileUtils.openOutputStream(function.jobOutputFile))
+            jobErrorStream =
+              if (function.jobErrorFile != null) new PrintStream(FileUtils.openOutputStream(function.jobErrorFile))
+              else jobOutputStream
+
+            val result = GATKDaemon.runInProcess(args.toArray, jobOutputStream, jobErrorStream)
+            exitStatus = result.getExitStatus
+            if (result.getCpuTimeNanos >= 0)
+              getRunInfo.cpuTimeInMs = result.getCpuTimeNanos / 1000000L
+            getRunInfo.allocatedBytes = result.getAllocatedBytes
+            jobOutputStream.println("%s%nRan in process: %s".format(description, result))
+            logger.debug("Ran in process with %s: %s".format(result, description))
+          } catch {
+            case e: Throwable =>
+              logger.error("Unable to run in process: " + description, e)
+          } finally {
+            IOUtils.closeQuietly(jobOutputStream)
+            if (function.jobErrorFile != null)
+              IOUtils.closeQuietly(jobErrorStream)
+            getRunInfo.doneTime = new Date()
+            runStatus = if (exitStatus == 0) RunnerStatus.DONE else RunnerStatus.FAILED
+            manager.release(reserved)
+          }
+        }
+      }, "In process GATK: " + function.analysisName)
+      thread.setDaemon(true)
+      thread.start()
+    } catch {
+      case e: Throwable =>
+        manager.release(reserved)
+        throw e
+    }
+  }
+}
@@ -30,5 +30,14 @@ import org.broadinstitute.gatk.queue.function.InProcessFunction
 class InProcessJobManager extends JobManager[InProcessFunction, InProcessRunner] {
   def runnerType = classOf[InProcessRunner]
   def functionType = classOf[InProcessFunction]
-  def create(function: InProcessFunction) = new InProcessRunner(function)
+  def create(function: InProcessFunction) = new InProcessRunner(function) {
+    // The function runs within start, so the graph is told right away that it's done instead of waiting to poll it.
+    override def start() {
+      try {
+        super.start()
+      } finally {
+        statusChanged()
+      }
+    }
+  }
 }
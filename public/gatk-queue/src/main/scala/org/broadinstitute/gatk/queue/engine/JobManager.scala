@@ -34,6 +34,30 @@ trait JobManager[TFunction <: QFunction, TRunner <: JobRunner[TFunction]] {
   def init() {}
   def exit() {}
 
+  /**
+   * Initializes the manager with the settings of the graph it runs jobs for.
+   * @param settings Settings of the QGraph.
+   */
+  def init(settings: QGraphSettings) { init() }
+
+  /** Called when a runner changes status on its own instead of when polled by updateStatus. */
+  private var statusListener: () => Unit = () => {}
+
+  /**
+   * Sets the listener to call when a runner changes status on its own, for example when a local process exits.
+   * @param listener Listener to call from the thread that observed the change.
+   */
+  def setStatusListener(listener: () => Unit) {
+    this.statusListener = listener
+  }
+
+  /**
+   * Notifies the status listener that a runner changed status.
+   */
+  protected def statusChanged() {
+    statusListener()
+  }
+
   /** The class type of the runner.  Available at runtime even after erasure. */
   def functionType: Class[TFunction]
 
@@ -45,6 +69,14 @@ trait JobManager[TFunction <: QFunction, TRunner <: JobRunner[TFunction]] {
    */
   def create(function: TFunction): TRunner
 
+  /**
+   * Returns true if the function can be started now.
+   * Managers with a fixed amount of resources return false until enough of them are free.
+   * @param function Function to start.
+   * @return true if the function can be started now.
+   */
+  def canStart(function: TFunction): Boolean = true
+
   /**
    * Updates the status on a list of functions.
    * @param runners Runners to update.
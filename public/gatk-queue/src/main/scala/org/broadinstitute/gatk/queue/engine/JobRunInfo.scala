@@ -40,6 +40,10 @@ class JobRunInfo {
   /** The done time with millisecond resolution of this job */
   var doneTime: java.util.Date = _
   var exechosts: String = "localhost"
+  /** The CPU time of this job in milliseconds, or -1 if the runner cannot measure it */
+  var cpuTimeInMs: Long = -1
+  /** The bytes of memory allocated by this job, or -1 if the runner cannot measure them */
+  var allocatedBytes: Long = -1
 
   def getStartTime: String = getTime(startTime)
   def getDoneTime: String = getTime(doneTime)
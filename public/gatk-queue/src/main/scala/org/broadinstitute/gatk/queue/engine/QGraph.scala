@@ -54,7 +54,7 @@ class QGraph extends Logging {
   private var numMissingValues = 0
 
   private val jobGraph = newGraph
-  private val functionOrdering = Ordering.by[FunctionEdge, Iterable[Int]](edge => -graphDepth(edge) +: edge.function.addOrder)
+  private val functionOrdering = Ordering.by[FunctionEdge, Iterable[Int]](edge => -criticalPathRank(edge) +: -graphDepth(edge) +: edge.function.addOrder)
   private val fileOrdering = Ordering.by[File,String](_.getAbsolutePath)
   // A map of nodes by list of files.
   private var nodeMap = TreeMap.empty[Iterable[File], QNode](Ordering.Iterable(fileOrdering))
@@ -63,6 +63,8 @@ class QGraph extends Logging {
 
   private var running = true
   private val runningLock = new Object
+  // Set when a job manager reports a status change on its own, guarded by runningLock.
+  private var runnerStatusChanged = false
   private var runningJobs = Set.empty[FunctionEdge]
   private var cleanupJobs = Set.empty[FunctionEdge]
 
@@ -71,7 +73,8 @@ class QGraph extends Logging {
   private val commandLinePluginManager = new CommandLinePluginManager
   private var commandLineManager: CommandLineJobManager[CommandLineJobRunner] = _
   private val inProcessManager = new InProcessJobManager
-  private def managers = Seq[Any](inProcessManager, commandLineManager)
+  private var inProcessGATKManager: InProcessGATKJobManager = _
+  private def managers = Seq[Any](inProcessManager, inProcessGATKManager, commandLineManager)
 
   /**
    * If true, we will write out incremental job reports
@@ -83,6 +86,14 @@ class QGraph extends Logging {
    */
   private var jobInfoReporter: QJobsReporter = null
 
+  /**
+   * Holds the optional runtimes of jobs from previous runs
+   */
+  private var runtimeHistory: RuntimeHistory = null
+
+  // Running edges already reported as running much longer than expected.
+  private var reportedStragglers = Set.empty[FunctionEdge]
+
   private class StatusCounts {
     var pending = 0
     var running = 0
@@ -102,6 +113,10 @@ class QGraph extends Logging {
   def initializeWithSettings(settings: QGraphSettings) {
     this.settings = settings
     this.jobInfoReporter = createJobsReporter()
+    if (settings.qSettings.runtimeHistory != null)
+      this.runtimeHistory = new RuntimeHistory(settings.qSettings.runtimeHistory)
+    else if (settings.scatterTargetRuntime.isDefined)
+      throw new QException("--scatter_target_runtime requires --runtime_history")
   }
 
   /**
@@ -171,6 +186,7 @@ class QGraph extends Logging {
     validate()
 
     if (running && numMissingValues == 0) {
+      sizeScatterGathers()
       val scatterGathers = jobGraph.edgeSet.filter(edge => scatterGatherable(edge))
       if (!scatterGathers.isEmpty) {
         logger.info("Generating scatter gather jobs.")
@@ -402,11 +418,14 @@ class QGraph extends Logging {
       else if (settings.jobRunner == null)
         settings.jobRunner = "Shell"
       commandLineManager = commandLinePluginManager.createByName(settings.jobRunner)
+      if (settings.inProcessGATK)
+        inProcessGATKManager = new InProcessGATKJobManager
 
       for (mgr <- managers) {
         if (mgr != null) {
           val manager = mgr.asInstanceOf[JobManager[QFunction,JobRunner[QFunction]]]
-          manager.init()
+          manager.init(settings)
+          manager.setStatusListener(() => signalStatusChanged())
         }
       }
 
@@ -428,8 +447,8 @@ class QGraph extends Logging {
         var doneJobs = Set.empty[FunctionEdge]
         var failedJobs = Set.empty[FunctionEdge]
 
-        while (running && readyJobs.size > 0 && !readyRunningCheck(lastRunningCheck)) {
-          val edge = readyJobs.head
+        // start ready jobs in priority order, skipping those that do not fit in the resources left
+        for (edge <- readyJobs.toSeq if running && !readyRunningCheck(lastRunningCheck) && canStart(edge.function)) {
           edge.runner = newRunner(edge.function)
           edge.start()
           messengers.foreach(_.started(jobShortName(edge.function)))
@@ -454,13 +473,14 @@ class QGraph extends Logging {
           startedJobsToEmail = Set.empty[FunctionEdge]
         }
 
-        if (readyJobs.size == 0 && runningJobs.size > 0) {
+        if (runningJobs.size > 0 && (readyJobs.size == 0 || startedJobs.size == 0)) {
           runningLock.synchronized {
-            if (running) {
+            if (running && !runnerStatusChanged) {
               val timeout = nextRunningCheck(lastRunningCheck)
               if (timeout > 0)
                 runningLock.wait(timeout)
             }
+            runnerStatusChanged = false
           }
         }
 
@@ -470,6 +490,7 @@ class QGraph extends Logging {
         runningJobs.foreach(edge => edge.status match {
           case RunnerStatus.DONE => {
             doneJobs += edge
+            recordRuntime(edge)
             messengers.foreach(_.done(jobShortName(edge.function)))
           }
           case RunnerStatus.FAILED => {
@@ -481,6 +502,9 @@ class QGraph extends Logging {
 
         runningJobs --= doneJobs
         runningJobs --= failedJobs
+        reportedStragglers &~= doneJobs
+        reportedStragglers &~= failedJobs
+        checkStragglers()
 
         startedJobsToEmail &~= failedJobs
 
@@ -519,6 +543,16 @@ class QGraph extends Logging {
     }
   }
 
+  /**
+   * Wakes up the main thread to check the status of the running jobs, for example after a local job exits.
+   */
+  private def signalStatusChanged() {
+    runningLock.synchronized {
+      runnerStatusChanged = true
+      runningLock.notify()
+    }
+  }
+
   private def readyRunningCheck(lastRunningCheck: Long) =
     lastRunningCheck > 0 && nextRunningCheck(lastRunningCheck) <= 0
 
@@ -661,6 +695,96 @@ class QGraph extends Logging {
     edge.depth
   }
 
+  /**
+   * Returns the expected runtime on the longest chain of dependent functions starting with this function.
+   * Starting the functions with the longest chains first keeps the critical path of the graph moving.
+   * Without a runtime history each function counts as one unit of time, so the cost is the length of the chain.
+   * @param edge Function edge to get the critical path cost for.
+   * @return the expected cost of the critical path from this function.
+   */
+  private def criticalPathCost(edge: FunctionEdge): Double = {
+    if (edge.criticalPathCost < 0) {
+      val next = nextFunctions(edge)
+      val cost = if (runtimeHistory == null) 1D else runtimeHistory.expectedRuntime(edge.function).getOrElse(1D) max 1D
+      if (next.size == 0)
+        edge.criticalPathCost = cost
+      else
+        edge.criticalPathCost = next.map(f => criticalPathCost(f)).max + cost
+    }
+    edge.criticalPathCost
+  }
+
+  /**
+   * Returns the critical path cost of a function rounded up to an Int for ordering the ready jobs.
+   * @param edge Function edge to get the rank for.
+   * @return the rounded critical path cost.
+   */
+  private def criticalPathRank(edge: FunctionEdge): Int =
+    math.ceil(criticalPathCost(edge) min Int.MaxValue).toInt
+
+  /**
+   * Chooses the scatter count of scatter gatherable functions so each part runs for about the target runtime.
+   * Only analyses with a runtime in the history are resized.
+   */
+  private def sizeScatterGathers() {
+    for (target <- settings.scatterTargetRuntime; edge <- getFunctionEdges) {
+      edge.function match {
+        case scatterGather: ScatterGatherableFunction if (scatterGather.scatterClass != null) =>
+          for (work <- runtimeHistory.expectedWork(scatterGather)) {
+            val scatterCount = math.ceil(work / (target * 60)).toInt max 1 min settings.maxScatterCount
+            if (scatterCount != scatterGather.scatterCount) {
+              logger.info("Scattering %s into %d parts instead of %d to run about %.1f minutes each.".format(
+                scatterGather.description, scatterCount, scatterGather.scatterCount, work / scatterCount / 60))
+              scatterGather.scatterCount = scatterCount
+            }
+          }
+        case _ => /* ignore */
+      }
+    }
+  }
+
+  /**
+   * Records the runtime of a completed function in the runtime history and passes
+   * the runtime of a scatter gather clone to its scatter function.
+   * @param edge Function edge that completed.
+   */
+  private def recordRuntime(edge: FunctionEdge) {
+    if (runtimeHistory != null) {
+      val runInfo = edge.getRunInfo
+      try {
+        runtimeHistory.record(edge.function, runInfo)
+        edge.function match {
+          case clone: CloneFunction if (clone.scatterFunction != null && runInfo.isFilledIn) =>
+            clone.scatterFunction.cloneDone(clone, clone.cloneIndex, runInfo.getRuntimeInMs / 1000D)
+          case _ => /* ignore */
+        }
+      } catch {
+        case e: Exception =>
+          logger.warn("Unable to record the runtime of " + edge.function.description, e)
+      }
+    }
+  }
+
+  /**
+   * Reports running functions that have been running much longer than their history predicts.
+   */
+  private def checkStragglers() {
+    if (runtimeHistory != null) {
+      val now = System.currentTimeMillis
+      for (edge <- runningJobs if !reportedStragglers.contains(edge)) {
+        val startTime = edge.getRunInfo.startTime
+        if (startTime != null) {
+          val elapsed = (now - startTime.getTime) / 1000D
+          if (runtimeHistory.isStraggler(edge.function, elapsed)) {
+            logger.warn("%s has been running for %.1f minutes but was expected to take %.1f minutes.".format(
+              edge.function.description, elapsed / 60, runtimeHistory.expectedRuntime(edge.function).get / 60))
+            reportedStragglers += edge
+          }
+        }
+      }
+    }
+  }
+
   /**
    * From the previous edges, resets any that are marked as skipped to pending.
    * If those that are reset have skipped edges, those skipped edges are recursively also set
@@ -678,8 +802,28 @@ class QGraph extends Logging {
     }
   }
 
+  /**
+   * Returns true if the function is a GATK function to run in the Queue JVM.
+   * @param f Function to check.
+   * @return true if the function runs in process.
+   */
+  private def runsInProcess(f: CommandLineFunction) =
+    inProcessGATKManager != null && inProcessGATKManager.accepts(f)
+
+  private def canStart(f: QFunction) = {
+    f match {
+      case cmd: CommandLineFunction if (runsInProcess(cmd)) =>
+        inProcessGATKManager.canStart(cmd)
+      case cmd: CommandLineFunction =>
+        commandLineManager.canStart(cmd)
+      case _ => true
+    }
+  }
+
   private def newRunner(f: QFunction) = {
     f match {
+      case cmd: CommandLineFunction if (runsInProcess(cmd)) =>
+        inProcessGATKManager.create(cmd)
       case cmd: CommandLineFunction =>
         commandLineManager.create(cmd)
       case inProc: InProcessFunction =>
@@ -28,7 +28,7 @@ package org.broadinstitute.gatk.queue.engine
 import java.io.File
 import org.broadinstitute.gatk.queue.QSettings
 import org.broadinstitute.gatk.queue.util.{EmailSettings, SystemUtils}
-import org.broadinstitute.gatk.utils.commandline.{Advanced, ArgumentCollection, Argument}
+import org.broadinstitute.gatk.utils.commandline.{Advanced, ArgumentCollection, Argument, ClassType}
 
 /**
  * Command line options for a QGraph.
@@ -46,6 +46,32 @@ class QGraphSettings {
   @Argument(fullName="qsub", shortName="qsub", doc="Equivalent to -jobRunner GridEngine", required=false)
   var qsub = false
 
+  @Argument(fullName="local_cores", shortName="localCores", doc="Number of cores the Local job runner may use for concurrent jobs. Defaults to all available processors.", required=false)
+  @ClassType(classOf[Int])
+  var localCores: Option[Int] = None
+
+  @Argument(fullName="local_memory", shortName="localMemory", doc="Memory in gigabytes the Local job runner may commit to concurrent jobs. Defaults to the physical memory of the machine.", required=false)
+  @ClassType(classOf[Double])
+  var localMemory: Option[Double] = None
+
+  @Argument(fullName="in_process_gatk", shortName="inProcessGATK", doc="Run GATK functions on a pool of threads in the Queue JVM, sharing the reference and indices, instead of starting a JVM for each one.", required=false)
+  var inProcessGATK = false
+
+  @Argument(fullName="in_process_gatk_threads", shortName="inProcessGATKThreads", doc="Number of GATK functions to run at once with --in_process_gatk. Defaults to the number of available processors.", required=false)
+  @ClassType(classOf[Int])
+  var inProcessGATKThreads: Option[Int] = None
+
+  @Argument(fullName="in_process_gatk_max_memory", shortName="inProcessGATKMaxMemory", doc="GATK functions with a memory limit above this many gigabytes are run in their own JVM with --in_process_gatk. Defaults to the maximum heap of Queue.", required=false)
+  @ClassType(classOf[Double])
+  var inProcessGATKMaxMemory: Option[Double] = None
+
+  @Argument(fullName="scatter_target_runtime", shortName="scatterTargetRuntime", doc="Target runtime in minutes of each scatter gather part. Requires --runtime_history; analyses with a recorded runtime have their scatter count chosen to meet the target.", required=false)
+  @ClassType(classOf[Double])
+  var scatterTargetRuntime: Option[Double] = None
+
+  @Argument(fullName="max_scatter_count", shortName="maxScatterCount", doc="Maximum scatter count chosen by --scatter_target_runtime.", required=false)
+  var maxScatterCount = 1000
+
   @Argument(fullName="status",shortName="status",doc="Get status of jobs for the qscript",required=false)
   var getStatus = false
 
@@ -0,0 +1,101 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package org.broadinstitute.gatk.queue.engine
+
+import org.broadinstitute.gatk.queue.function.CommandLineFunction
+
+/**
+ * Runs command line functions on a fixed number of cores and amount of memory, starting a function only
+ * while the resources it reserves are free.  A function asking for more than all of them is started once
+ * nothing else is running.
+ *
+ * Runners reserve their resources when they start and release them as soon as their function ends,
+ * notifying the graph instead of waiting to be polled.
+ */
+trait ResourceLimitedJobManager[TRunner <: JobRunner[CommandLineFunction]] extends JobManager[CommandLineFunction, TRunner] {
+  /** The cores and memory in gigabytes shared by the running functions, set by init. */
+  protected var totalCores = 0
+  protected var totalMemory = 0D
+
+  private var usedCores = 0
+  private var usedMemory = 0D
+  private var runningCount = 0
+
+  /**
+   * The number of cores reserved for a function.
+   * @param function Function to check.
+   * @return the number of cores.
+   */
+  protected def cores(function: CommandLineFunction): Int
+
+  /**
+   * The memory in gigabytes reserved for a function.
+   * @param function Function to check.
+   * @return the memory in gigabytes.
+   */
+  protected def memory(function: CommandLineFunction): Double
+
+  override def canStart(function: CommandLineFunction) = synchronized {
+    runningCount == 0 ||
+      (usedCores + cores(function) <= totalCores && usedMemory + memory(function) <= totalMemory)
+  }
+
+  /** Runners always know their status, so none of them should time out as unknown. */
+  override def updateStatus(runners: Set[TRunner]) = runners
+
+  /**
+   * Reserves the resources of a runner that is starting.
+   * Must be called from the thread running the graph, as clones briefly change their original function.
+   * @param function Function being started.
+   * @return the resources reserved, to pass to release once the function ends.
+   */
+  private[engine] def allocate(function: CommandLineFunction) = {
+    val reserved = ResourceLimitedJobManager.Reservation(cores(function), memory(function))
+    synchronized {
+      usedCores += reserved.cores
+      usedMemory += reserved.memory
+      runningCount += 1
+    }
+    reserved
+  }
+
+  /**
+   * Releases the resources of a runner whose function ended and notifies the graph.
+   * @param reserved Resources returned by allocate when the function started.
+   */
+  private[engine] def release(reserved: ResourceLimitedJobManager.Reservation) {
+    synchronized {
+      usedCores -= reserved.cores
+      usedMemory -= reserved.memory
+      runningCount -= 1
+    }
+    statusChanged()
+  }
+}
+
+object ResourceLimitedJobManager {
+  /** The cores and memory in gigabytes reserved for a running function. */
+  case class Reservation(cores: Int, memory: Double)
+}
@@ -0,0 +1,189 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.queue.engine
+
+import java.io.{IOException, FileWriter, PrintWriter, File}
+import org.broadinstitute.gatk.queue.QException
+import org.broadinstitute.gatk.queue.function.QFunction
+import org.broadinstitute.gatk.queue.function.scattergather.{CloneFunction, GatherFunction, ScatterFunction}
+import org.broadinstitute.gatk.queue.util.Logging
+
+/**
+ * Runtimes of jobs recorded across runs, used to estimate how long jobs will take.
+ *
+ * Each line of the history file holds the name of an analysis, the number of parts it was scattered into
+ * and the runtime in seconds of one of its jobs.  The work of an analysis is the runtime of a part times
+ * the number of parts, so estimates carry over between runs with different scatter counts.
+ *
+ * @param file File the history is read from and appended to.
+ */
+class RuntimeHistory(val file: File) extends Logging {
+  /** The most recent work in seconds of each analysis, oldest first. */
+  private var work = Map.empty[String, Seq[Double]]
+
+  load()
+
+  /**
+   * Returns the expected work in seconds of an analysis, summed over all of its parts.
+   * @param function The function, or the original function of a scatter gather.
+   * @return the expected work, or None if the analysis has never run.
+   */
+  def expectedWork(function: QFunction): Option[Double] =
+    work.get(RuntimeHistory.analysisKey(function)).map(RuntimeHistory.median(_))
+
+  /**
+   * Returns the expected runtime in seconds of a function.
+   * @param function The function.
+   * @return the expected runtime, or None if the analysis has never run.
+   */
+  def expectedRuntime(function: QFunction): Option[Double] =
+    expectedWork(function).map(_ / RuntimeHistory.parts(function))
+
+  /**
+   * Returns true if a function has been running for much longer than expected.
+   * @param function The running function.
+   * @param elapsedSeconds How long the function has been running.
+   * @return true if the function is a straggler.
+   */
+  def isStraggler(function: QFunction, elapsedSeconds: Double) =
+    elapsedSeconds > RuntimeHistory.minStragglerSeconds &&
+      expectedRuntime(function).exists(expected => elapsedSeconds > RuntimeHistory.stragglerFactor * expected)
+
+  /**
+   * Records the runtime of a function that completed.
+   * @param function The function.
+   * @param runInfo The run info of the function.
+   */
+  def record(function: QFunction, runInfo: JobRunInfo) {
+    if (runInfo.isFilledIn) {
+      val key = RuntimeHistory.analysisKey(function)
+      val parts = RuntimeHistory.parts(function)
+      val seconds = runInfo.getRuntimeInMs / 1000D
+      add(key, parts * seconds)
+      try {
+        val isNew = !file.exists
+        val writer = new PrintWriter(new FileWriter(file, true))
+        try {
+          if (isNew)
+            writer.println(RuntimeHistory.header)
+          writer.println("%s\t%d\t%.3f".format(key, parts, seconds))
+        } finally {
+          writer.close()
+        }
+      } catch {
+        case e: IOException =>
+          logger.warn("Unable to record the runtime of %s in %s".format(function.description, file), e)
+      }
+    }
+  }
+
+  private def add(key: String, seconds: Double) {
+    work += key -> (work.getOrElse(key, Seq.empty[Double]) :+ seconds).takeRight(RuntimeHistory.maxRecords)
+  }
+
+  private def load() {
+    if (file.exists) {
+      var records = 0
+      val source = io.Source.fromFile(file)
+      try {
+        for (line <- source.getLines() if !line.isEmpty && !line.startsWith("#")) {
+          val fields = line.split("\t")
+          if (fields.length != 3)
+            throw new QException("Expected an analysis, a number of parts and a runtime in %s, but got: %s".format(file, line))
+          try {
+            add(fields(0), fields(1).toInt * fields(2).toDouble)
+          } catch {
+            case e: NumberFormatException =>
+              throw new QException("Invalid runtime in %s: %s".format(file, line), e)
+          }
+          records += 1
+        }
+      } finally {
+        source.close()
+      }
+
+      // Rewrite the history without the records that have been superseded.
+      if (records > work.values.map(_.size).sum)
+        compact()
+    }
+  }
+
+  private def compact() {
+    val writer = new PrintWriter(file)
+    try {
+      writer.println(RuntimeHistory.header)
+      for ((key, seconds) <- work; value <- seconds)
+        writer.println("%s\t%d\t%.3f".format(key, 1, value))
+    } finally {
+      writer.close()
+    }
+  }
+}
+
+object RuntimeHistory {
+  /** The number of most recent runtimes kept for each analysis. */
+  val maxRecords = 20
+
+  /** How many times longer than expected a function must run to be reported as a straggler. */
+  val stragglerFactor = 3D
+
+  /** Functions are not reported as stragglers before running for this many seconds. */
+  val minStragglerSeconds = 60D
+
+  private val header = "#analysis\tparts\tseconds"
+
+  /**
+   * Returns the name the runtimes of a function are recorded under.
+   * Scatter and gather functions are recorded separately for each analysis they split up.
+   * @param function The function.
+   * @return the name of the analysis.
+   */
+  def analysisKey(function: QFunction) = {
+    val name = function match {
+      case scatter: ScatterFunction if (scatter.originalFunction != null) =>
+        scatter.originalFunction.analysisName + "." + scatter.analysisName
+      case gather: GatherFunction if (gather.originalFunction != null) =>
+        gather.originalFunction.analysisName + "." + gather.analysisName
+      case _ => function.analysisName
+    }
+    name.replaceAll("\\s", "_")
+  }
+
+  /**
+   * Returns the number of parts a function is one of.
+   * @param function The function.
+   * @return the clone count of a scatter gather clone, otherwise 1.
+   */
+  def parts(function: QFunction) = function match {
+    case clone: CloneFunction if (clone.cloneCount > 0) => clone.cloneCount
+    case _ => 1
+  }
+
+  private def median(values: Seq[Double]) = {
+    val sorted = values.sorted
+    sorted(sorted.size / 2)
+  }
+}
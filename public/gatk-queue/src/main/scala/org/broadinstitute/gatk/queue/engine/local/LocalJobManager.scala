@@ -0,0 +1,71 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.queue.engine.local
+
+import java.lang.management.ManagementFactory
+import org.broadinstitute.gatk.queue.function.CommandLineFunction
+import org.broadinstitute.gatk.queue.engine.{ResourceLimitedJobManager, QGraphSettings, CommandLineJobManager}
+import org.broadinstitute.gatk.queue.util.Logging
+
+/**
+ * Runs command line functions as concurrent local processes, starting only as many as fit
+ * within the cores and memory available to this machine.
+ *
+ * Each function uses its nCoresRequest and memoryLimit.
+ */
+class LocalJobManager extends CommandLineJobManager[LocalJobRunner] with ResourceLimitedJobManager[LocalJobRunner] with Logging {
+  def runnerType = classOf[LocalJobRunner]
+  def create(function: CommandLineFunction) = new LocalJobRunner(function, this)
+
+  override def init(settings: QGraphSettings) {
+    super.init(settings)
+    totalCores = settings.localCores.getOrElse(Runtime.getRuntime.availableProcessors)
+    totalMemory = settings.localMemory.getOrElse(LocalJobManager.physicalMemory)
+    logger.info("Running local jobs on %d cores with %.1f GB of memory".format(totalCores, totalMemory))
+  }
+
+  protected def cores(function: CommandLineFunction) = LocalJobManager.cores(function)
+  protected def memory(function: CommandLineFunction) = LocalJobManager.memory(function)
+
+  override def tryStop(runners: Set[LocalJobRunner]) { runners.foreach(_.tryStop()) }
+}
+
+object LocalJobManager {
+  /** The number of cores reserved for a function. */
+  def cores(function: CommandLineFunction) = function.nCoresRequest.getOrElse(1) max 1
+
+  /** The memory in gigabytes reserved for a function. */
+  def memory(function: CommandLineFunction) = function.memoryLimit.getOrElse(0D) max 0D
+
+  /** The physical memory of this machine in gigabytes, or the maximum heap if it is not known. */
+  private def physicalMemory = {
+    val bytes = ManagementFactory.getOperatingSystemMXBean match {
+      case os: com.sun.management.OperatingSystemMXBean => os.getTotalPhysicalMemorySize
+      case _ => Runtime.getRuntime.maxMemory
+    }
+    bytes / (1024D * 1024D * 1024D)
+  }
+}
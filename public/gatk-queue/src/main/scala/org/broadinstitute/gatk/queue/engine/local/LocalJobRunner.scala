@@ -0,0 +1,112 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.queue.engine.local
+
+import org.broadinstitute.gatk.queue.function.CommandLineFunction
+import org.broadinstitute.gatk.queue.engine.{RunnerStatus, CommandLineJobRunner}
+import java.util.Date
+import org.broadinstitute.gatk.utils.Utils
+import org.broadinstitute.gatk.utils.runtime.{ProcessSettings, OutputStreamSettings, ProcessController}
+
+/**
+ * Runs a job locally on its own thread so that other jobs can run at the same time.
+ * @param function Command to run.
+ * @param manager Manager holding the resources used by the job.
+ */
+class LocalJobRunner(val function: CommandLineFunction, manager: LocalJobManager) extends CommandLineJobRunner {
+  // Controller on the thread running the job
+  @volatile private var controller: ProcessController = null
+
+  /**
+   * Starts the function on the local shell and returns while it is still running.
+   */
+  def start() {
+    val commandLine = Array("sh", jobScript.getAbsolutePath)
+    val stdoutSettings = new OutputStreamSettings
+    val stderrSettings = new OutputStreamSettings
+    val mergeError = (function.jobErrorFile == null)
+
+    stdoutSettings.setOutputFile(function.jobOutputFile, true)
+    if (function.jobErrorFile != null)
+      stderrSettings.setOutputFile(function.jobErrorFile, true)
+
+    if (logger.isDebugEnabled) {
+      stdoutSettings.printStandard(true)
+      stderrSettings.printStandard(true)
+    }
+
+    val processSettings = new ProcessSettings(
+      commandLine, mergeError, function.commandDirectory, null,
+      null, stdoutSettings, stderrSettings)
+
+    updateJobRun(processSettings)
+
+    getRunInfo.startTime = new Date()
+    getRunInfo.exechosts = Utils.resolveHostname()
+    updateStatus(RunnerStatus.RUNNING)
+
+    val reserved = manager.allocate(function)
+    try {
+      val thread = new Thread(new Runnable {
+        def run() {
+          var exitStatus = -1
+          try {
+            controller = ProcessController.getThreadLocal
+            exitStatus = controller.exec(processSettings).getExitValue
+          } catch {
+            case e: Throwable =>
+              logger.error("Unable to run local job: " + function.description, e)
+          } finally {
+            getRunInfo.doneTime = new Date()
+            updateStatus(if (exitStatus == 0) RunnerStatus.DONE else RunnerStatus.FAILED)
+            manager.release(reserved)
+          }
+        }
+      }, "Local job: " + function.analysisName)
+      thread.setDaemon(true)
+      thread.start()
+    } catch {
+      case e: Throwable =>
+        manager.release(reserved)
+        throw e
+    }
+  }
+
+  /**
+   * Possibly invoked from a shutdown thread, find and
+   * stop the controller from the thread running the job
+   */
+  def tryStop() {
+    if (controller != null) {
+      try {
+        controller.tryDestroy()
+      } catch {
+        case e: Exception =>
+          logger.error("Unable to kill local job: " + function.description, e)
+      }
+    }
+  }
+}
@@ -131,6 +131,16 @@ trait JavaCommandLineFunction extends CommandLineFunction {
   def commandLine = required("java") +
                     javaOpts +
                     javaExecutable
+
+  /**
+   * Returns the part of the command line passed to the main class or jar.
+   * @return the arguments of the main class, or None if the command line no longer starts with the java command.
+   */
+  def javaArguments: Option[String] = {
+    val javaCommand = required("java") + javaOpts + javaExecutable
+    val command = commandLine
+    if (command.startsWith(javaCommand)) Some(command.substring(javaCommand.length)) else None
+  }
 }
 
 object JavaCommandLineFunction {
@@ -38,6 +38,7 @@ object CloneFunction {
 
 class CloneFunction extends CommandLineFunction {
   var originalFunction: ScatterGatherableFunction = _
+  var scatterFunction: ScatterFunction = _
   var cloneIndex: Int = _
   var cloneCount: Int = _
 
@@ -78,6 +79,13 @@ class CloneFunction extends CommandLineFunction {
 
   def commandLine = withScatterPart(() => originalFunction.commandLine)
 
+  /**
+   * Evaluates a function of the original function while it holds the field values of this clone.
+   * @param f Function of the original function.
+   * @return the result of f.
+   */
+  def withOriginalFunction[A](f: ScatterGatherableFunction => A): A = withScatterPart(() => f(originalFunction))
+
   def getFieldValue(field: String): AnyRef = {
     val source = ClassFieldCache.findField(originalFunction.getClass, field)
     getFieldValue(source)
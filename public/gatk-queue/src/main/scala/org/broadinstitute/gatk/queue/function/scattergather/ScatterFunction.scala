@@ -75,4 +75,13 @@ trait ScatterFunction extends QFunction {
    * @param index The one based scatter index.
    */
   def bindCloneInputs(cloneFunction: CloneFunction, index: Int) {}
+
+  /**
+   * Called when a clone function completes with its runtime.
+   * Scatter functions may use the runtimes to split up the next run more evenly.
+   * @param cloneFunction CloneFunction that completed.
+   * @param index The one based scatter index.
+   * @param runtimeSeconds The runtime of the clone in seconds.
+   */
+  def cloneDone(cloneFunction: CloneFunction, index: Int, runtimeSeconds: Double) {}
 }
@@ -175,6 +175,7 @@ trait ScatterGatherableFunction extends CommandLineFunction {
 
       this.copySettingsTo(cloneFunction)
       cloneFunction.originalFunction = this
+      cloneFunction.scatterFunction = scatterFunction
       cloneFunction.analysisName = this.analysisName
       cloneFunction.cloneIndex = i
       cloneFunction.cloneCount = numClones
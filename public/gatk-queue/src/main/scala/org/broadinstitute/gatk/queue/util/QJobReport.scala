@@ -56,7 +56,9 @@ trait QJobReport extends Logging {
       "doneTime" -> info.getDoneTime,
       "formattedStartTime" -> info.getFormattedStartTime,
       "formattedDoneTime" -> info.getFormattedDoneTime,
-      "runtime" -> info.getRuntimeInMs).mapValues((x:Any) => if (x != null) x.toString else "null")
+      "runtime" -> info.getRuntimeInMs,
+      "cputime" -> info.cpuTimeInMs,
+      "allocatedBytes" -> info.allocatedBytes).mapValues((x:Any) => if (x != null) x.toString else "null")
     reportFeatures = runtimeFeatures ++ userReportFeatures
     // note -- by adding reportFeatures second we override iteration
     // (or any other binding) with the user provided value
@@ -58,4 +58,70 @@ object ShellUtils {
 
     "'" + str.replaceAll("'", "'\\\\''") + "'"
   }
+
+  /** Characters that make the shell do more than split and unquote arguments when not quoted. */
+  private val shellSpecialCharacters = "|&;<>()$`*?[]{}~#!"
+
+  /**
+   * Splits a command line into its arguments the way sh/bash would, undoing escapeShellArgument.
+   * Arguments may be quoted with single quotes, with double quotes around text the shell
+   * leaves alone, or escaped with a backslash.
+   *
+   * Examples:
+   * 'a b' c  ->  Seq("a b", "c")
+   * 'a'\''b'  ->  Seq("a'b")
+   * a | b    ->  None
+   *
+   * @param str the command line to split
+   * @return the arguments, or None if the shell would do more than split and unquote the command line,
+   *         for example expand a variable or a glob, redirect output, or run several commands
+   */
+  def parseShellArguments ( str : String ) : Option[Seq[String]] = {
+    if ( str == null ) {
+      throw new IllegalArgumentException("parseShellArguments() was passed a null String")
+    }
+
+    var args = Seq.empty[String]
+    val arg = new java.lang.StringBuilder
+    var inArg = false
+    var i = 0
+    while ( i < str.length ) {
+      val c = str.charAt(i)
+      if ( c == '\'' || c == '"' ) {
+        val end = str.indexOf(c, i + 1)
+        if ( end < 0 )
+          return None
+        val quoted = str.substring(i + 1, end)
+        if ( c == '"' && quoted.exists(q => "$`\\!".indexOf(q) >= 0) )
+          return None
+        arg.append(quoted)
+        inArg = true
+        i = end
+      } else if ( c == '\\' ) {
+        i += 1
+        if ( i == str.length )
+          return None
+        // a backslash before a newline continues the line
+        if ( str.charAt(i) != '\n' ) {
+          arg.append(str.charAt(i))
+          inArg = true
+        }
+      } else if ( Character.isWhitespace(c) ) {
+        if ( inArg ) {
+          args :+= arg.toString
+          arg.setLength(0)
+          inArg = false
+        }
+      } else if ( shellSpecialCharacters.indexOf(c) >= 0 ) {
+        return None
+      } else {
+        arg.append(c)
+        inArg = true
+      }
+      i += 1
+    }
+    if ( inArg )
+      args :+= arg.toString
+    Some(args)
+  }
 }
\ No newline at end of file
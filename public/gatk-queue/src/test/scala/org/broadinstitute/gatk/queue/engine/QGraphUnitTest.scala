@@ -0,0 +1,189 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package org.broadinstitute.gatk.queue.engine
+
+import java.io.File
+import org.apache.commons.io.FileUtils
+import org.testng.Assert
+import org.testng.annotations.{AfterClass, BeforeClass, Test}
+import org.broadinstitute.gatk.queue.QCommandLine
+import org.broadinstitute.gatk.queue.function.{InProcessFunction, QFunction, CommandLineFunction}
+import org.broadinstitute.gatk.queue.util.ClassFieldCache
+import org.broadinstitute.gatk.utils.commandline.{ParsingEngine, Input, Output}
+import org.broadinstitute.gatk.utils.io.IOUtils
+
+/**
+ * Runs small graphs of shell commands with the Local job runner to check how the graph schedules its jobs.
+ */
+class QGraphUnitTest {
+  private var directories = Seq.empty[File]
+
+  @BeforeClass
+  def initFieldCache() {
+    // normally set by QCommandLine, whose parser knows how to handle Scala collections
+    if (ClassFieldCache.parsingEngine == null)
+      ClassFieldCache.parsingEngine = new ParsingEngine(new QCommandLine)
+  }
+
+  /**
+   * Appends its name to the order file when it starts, so that the file lists the functions in the order they started.
+   */
+  private class OrderedFunction(name: String, dir: File, seconds: Int) extends CommandLineFunction {
+    @Input(doc="Outputs of the functions to run before this one", required=false)
+    var after: Seq[File] = Nil
+
+    @Output(doc="File created when the function is done")
+    var done: File = new File(dir, name + ".done")
+
+    analysisName = name
+    jobName = name
+
+    def commandLine = "echo %s >> %s; sleep %d; touch %s".format(
+      name, new File(dir, "order.txt").getAbsolutePath, seconds, done.getAbsolutePath)
+  }
+
+  /**
+   * Creates its output in the Queue JVM.
+   */
+  private class TouchFunction(name: String, dir: File) extends InProcessFunction {
+    @Input(doc="Outputs of the functions to run before this one", required=false)
+    var after: Seq[File] = Nil
+
+    @Output(doc="File created by the function")
+    var done: File = new File(dir, name + ".done")
+
+    analysisName = name
+
+    def run() {
+      FileUtils.touch(done)
+    }
+  }
+
+  private def newDirectory() = {
+    val dir = IOUtils.tempDir("QGraphUnitTest.", "")
+    directories :+= dir
+    dir
+  }
+
+  @AfterClass
+  def deleteDirectories() {
+    directories.foreach(FileUtils.deleteQuietly(_))
+  }
+
+  private def newFunction(name: String, dir: File, after: OrderedFunction*): OrderedFunction =
+    newFunction(name, dir, 0, 1, after: _*)
+
+  private def newFunction(name: String, dir: File, seconds: Int, cores: Int, after: OrderedFunction*) = {
+    val function = new OrderedFunction(name, dir, seconds)
+    function.after = after.map(_.done)
+    function.nCoresRequest = Some(cores)
+    function
+  }
+
+  private def run(dir: File, localCores: Int, functions: QFunction*) {
+    val settings = new QGraphSettings
+    settings.run = true
+    settings.jobRunner = "Local"
+    settings.localCores = Some(localCores)
+    settings.qSettings.runName = "QGraphUnitTest"
+    settings.qSettings.runDirectory = dir
+    settings.qSettings.tempDirectory = new File(dir, "temp")
+
+    val graph = new QGraph
+    graph.initializeWithSettings(settings)
+    functions.foreach(graph.add(_))
+    try {
+      graph.run()
+      Assert.assertTrue(graph.success, "the graph failed: " + graph.formattedStatusCounts)
+    } finally {
+      graph.shutdown()
+    }
+  }
+
+  private def startOrder(dir: File) = FileUtils.readLines(new File(dir, "order.txt")).toArray.toSeq
+
+  @Test(timeOut = 300000)
+  def testCriticalPathStartsFirst() {
+    val dir = newDirectory()
+    val single = newFunction("single", dir)
+    val first = newFunction("first", dir)
+    val second = newFunction("second", dir, first)
+    val third = newFunction("third", dir, second)
+
+    // one core, so the functions run one at a time in the order the graph picks them
+    run(dir, 1, single, first, second, third)
+    Assert.assertEquals(startOrder(dir), Seq("first", "second", "third", "single"))
+  }
+
+  @Test(timeOut = 300000)
+  def testFunctionsThatDoNotFitAreSkipped() {
+    val dir = newDirectory()
+    val small = newFunction("small", dir, 0, 1)
+    val large = newFunction("large", dir, 0, 2)
+    val largeNext = newFunction("largeNext", dir, large)
+    val slow = newFunction("slow", dir, 2, 1)
+    val slowNext = newFunction("slowNext", dir, slow)
+    val slowLast = newFunction("slowLast", dir, slowNext)
+
+    // slow has the longest critical path and starts first.  large comes next but needs both cores, so it's
+    // skipped while slow runs and small starts in its place.
+    run(dir, 2, small, large, largeNext, slow, slowNext, slowLast)
+    val order = startOrder(dir)
+    Assert.assertEquals(order.size, 6)
+    Assert.assertTrue(order.indexOf("small") < order.indexOf("large"), "small should start before large: " + order)
+    Assert.assertTrue(order.indexOf("slow") < order.indexOf("large"), "slow should start before large: " + order)
+  }
+
+  @Test(timeOut = 300000)
+  def testFinishedJobsWakeTheGraph() {
+    val dir = newDirectory()
+    val first = newFunction("first", dir)
+    val second = newFunction("second", dir, first)
+    val third = newFunction("third", dir, second)
+
+    // without being woken up the graph checks on running jobs every 30 seconds, once per job of the chain
+    val start = System.currentTimeMillis
+    run(dir, 1, first, second, third)
+    val seconds = (System.currentTimeMillis - start) / 1000D
+    Assert.assertEquals(startOrder(dir), Seq("first", "second", "third"))
+    Assert.assertTrue(seconds < 30, "the graph was not woken up when its jobs finished; it took %.1f seconds".format(seconds))
+  }
+
+  @Test(timeOut = 300000)
+  def testFinishedInProcessFunctionsWakeTheGraph() {
+    val dir = newDirectory()
+    val first = new TouchFunction("first", dir)
+    val second = new TouchFunction("second", dir)
+    second.after = Seq(first.done)
+    val third = new TouchFunction("third", dir)
+    third.after = Seq(second.done)
+
+    val start = System.currentTimeMillis
+    run(dir, 1, first, second, third)
+    val seconds = (System.currentTimeMillis - start) / 1000D
+    Assert.assertTrue(third.done.exists)
+    Assert.assertTrue(seconds < 30, "the graph was not woken up when its jobs finished; it took %.1f seconds".format(seconds))
+  }
+}
@@ -0,0 +1,193 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.queue.engine
+
+import java.io.{PrintWriter, File}
+import java.util.Date
+import org.testng.Assert
+import org.testng.annotations.Test
+import org.broadinstitute.gatk.queue.QException
+import org.broadinstitute.gatk.queue.function.CommandLineFunction
+import org.broadinstitute.gatk.queue.function.scattergather.CloneFunction
+
+class RuntimeHistoryUnitTest {
+  private def createHistoryFile(lines: String*) = {
+    val file = File.createTempFile("RuntimeHistoryUnitTest.", ".history")
+    file.deleteOnExit()
+    val writer = new PrintWriter(file)
+    try {
+      lines.foreach(writer.println(_))
+    } finally {
+      writer.close()
+    }
+    file
+  }
+
+  private def newFunction(name: String) = {
+    val function = new CommandLineFunction { def commandLine = "" }
+    function.analysisName = name
+    function
+  }
+
+  private def newClone(name: String, cloneCount: Int) = {
+    val clone = new CloneFunction
+    clone.analysisName = name
+    clone.cloneIndex = 1
+    clone.cloneCount = cloneCount
+    clone
+  }
+
+  private def runInfo(seconds: Double) = {
+    val info = new JobRunInfo
+    info.startTime = new Date(0)
+    info.doneTime = new Date((seconds * 1000).toLong)
+    info
+  }
+
+  private def records(file: File) = {
+    val source = scala.io.Source.fromFile(file)
+    try {
+      source.getLines().filterNot(_.startsWith("#")).toList
+    } finally {
+      source.close()
+    }
+  }
+
+  @Test
+  def testMissingFile() {
+    val file = createHistoryFile()
+    file.delete()
+    val history = new RuntimeHistory(file)
+    Assert.assertEquals(history.expectedWork(newFunction("A")), None)
+    Assert.assertFalse(history.isStraggler(newFunction("A"), 1000000))
+    Assert.assertFalse(file.exists)
+  }
+
+  @Test
+  def testLoadKeepsRecentRecords() {
+    val file = createHistoryFile(Seq("#analysis\tparts\tseconds") ++ (1 to 5).map("A\t1\t%d.000".format(_)): _*)
+    val history = new RuntimeHistory(file)
+    Assert.assertEquals(history.expectedWork(newFunction("A")), Some(3D))
+    Assert.assertEquals(history.expectedWork(newFunction("B")), None)
+    // Nothing was superseded, so the file is left as written.
+    Assert.assertEquals(records(file).size, 5)
+  }
+
+  @Test
+  def testLoadCompactsSupersededRecords() {
+    val extra = 5
+    val lines = (1 to RuntimeHistory.maxRecords + extra).map("A\t2\t%d.000".format(_)) :+ "B\t1\t7.000"
+    val file = createHistoryFile(lines: _*)
+    val history = new RuntimeHistory(file)
+
+    val compacted = records(file)
+    Assert.assertEquals(compacted.size, RuntimeHistory.maxRecords + 1)
+    Assert.assertEquals(compacted.count(_.startsWith("A\t1\t")), RuntimeHistory.maxRecords)
+    Assert.assertTrue(compacted.contains("B\t1\t7.000"))
+
+    // Only the most recent records are kept, stored as the work over all parts.
+    val kept = (1 + extra to RuntimeHistory.maxRecords + extra).map(_ * 2D)
+    Assert.assertEquals(history.expectedWork(newFunction("A")), Some(kept(kept.size / 2)))
+    Assert.assertEquals(new RuntimeHistory(file).expectedWork(newFunction("A")), history.expectedWork(newFunction("A")))
+    Assert.assertEquals(new RuntimeHistory(file).expectedWork(newFunction("B")), Some(7D))
+  }
+
+  @Test(expectedExceptions = Array(classOf[QException]))
+  def testLoadMissingField() {
+    new RuntimeHistory(createHistoryFile("A\t1"))
+  }
+
+  @Test(expectedExceptions = Array(classOf[QException]))
+  def testLoadBadRuntime() {
+    new RuntimeHistory(createHistoryFile("A\t1\tsoon"))
+  }
+
+  @Test
+  def testRecordNormalizesByParts() {
+    val file = createHistoryFile()
+    file.delete()
+    val history = new RuntimeHistory(file)
+    history.record(newClone("A", 4), runInfo(100))
+
+    // The work of the analysis is the runtime of a part times the number of parts.
+    Assert.assertEquals(history.expectedWork(newFunction("A")), Some(400D))
+    Assert.assertEquals(history.expectedRuntime(newFunction("A")), Some(400D))
+    Assert.assertEquals(history.expectedRuntime(newClone("A", 4)), Some(100D))
+    Assert.assertEquals(history.expectedRuntime(newClone("A", 8)), Some(50D))
+
+    Assert.assertEquals(records(file), List("A\t4\t100.000"))
+    Assert.assertEquals(new RuntimeHistory(file).expectedWork(newFunction("A")), Some(400D))
+  }
+
+  @Test
+  def testRecordIgnoresUnfinishedJobs() {
+    val file = createHistoryFile()
+    file.delete()
+    val history = new RuntimeHistory(file)
+    history.record(newFunction("A"), new JobRunInfo)
+    Assert.assertEquals(history.expectedWork(newFunction("A")), None)
+    Assert.assertFalse(file.exists)
+  }
+
+  @Test
+  def testAnalysisKeyReplacesWhitespace() {
+    val file = createHistoryFile()
+    val history = new RuntimeHistory(file)
+    history.record(newFunction("Count Reads"), runInfo(10))
+    Assert.assertEquals(RuntimeHistory.analysisKey(newFunction("Count Reads")), "Count_Reads")
+    Assert.assertEquals(history.expectedWork(newFunction("Count_Reads")), Some(10D))
+  }
+
+  @Test
+  def testMedian() {
+    val history = new RuntimeHistory(createHistoryFile("A\t1\t5", "A\t1\t1", "A\t1\t3", "B\t1\t4", "B\t1\t1", "B\t1\t3", "B\t1\t2"))
+    Assert.assertEquals(history.expectedWork(newFunction("A")), Some(3D))
+    // With an even number of runtimes the upper of the two middle values is used.
+    Assert.assertEquals(history.expectedWork(newFunction("B")), Some(3D))
+
+    // An outlier moves the estimate by at most one recorded value.
+    history.record(newFunction("A"), runInfo(1000))
+    Assert.assertEquals(history.expectedWork(newFunction("A")), Some(5D))
+  }
+
+  @Test
+  def testStragglers() {
+    val history = new RuntimeHistory(createHistoryFile("A\t1\t100", "B\t4\t10"))
+    val a = newFunction("A")
+    Assert.assertFalse(history.isStraggler(a, 100))
+    Assert.assertFalse(history.isStraggler(a, RuntimeHistory.stragglerFactor * 100))
+    Assert.assertTrue(history.isStraggler(a, RuntimeHistory.stragglerFactor * 100 + 1))
+
+    // Short jobs are not reported until they have run for a minimum time.
+    val b = newClone("B", 4)
+    Assert.assertFalse(history.isStraggler(b, RuntimeHistory.stragglerFactor * 10 + 1))
+    Assert.assertFalse(history.isStraggler(b, RuntimeHistory.minStragglerSeconds))
+    Assert.assertTrue(history.isStraggler(b, RuntimeHistory.minStragglerSeconds + 1))
+
+    // Analyses without a history are never stragglers.
+    Assert.assertFalse(history.isStraggler(newFunction("C"), 1000000))
+  }
+}
@@ -0,0 +1,98 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package org.broadinstitute.gatk.queue.engine.local
+
+import org.testng.Assert
+import org.testng.annotations.Test
+import org.broadinstitute.gatk.queue.engine.QGraphSettings
+import org.broadinstitute.gatk.queue.function.CommandLineFunction
+
+class LocalJobManagerUnitTest {
+  private def newManager(cores: Int, memory: Double) = {
+    val settings = new QGraphSettings
+    settings.localCores = Some(cores)
+    settings.localMemory = Some(memory)
+    val manager = new LocalJobManager
+    manager.init(settings)
+    manager
+  }
+
+  private def newFunction(cores: Int, memory: Double) = {
+    val function = new CommandLineFunction { def commandLine = "" }
+    function.nCoresRequest = Some(cores)
+    function.memoryLimit = Some(memory)
+    function
+  }
+
+  @Test
+  def testCanStartSkipsFunctionsWithoutEnoughCores() {
+    val manager = newManager(4, 16)
+    val running = newFunction(3, 1)
+    Assert.assertTrue(manager.canStart(running))
+    val reserved = manager.allocate(running)
+
+    Assert.assertFalse(manager.canStart(newFunction(2, 1)))
+    Assert.assertTrue(manager.canStart(newFunction(1, 1)))
+
+    manager.release(reserved)
+    Assert.assertTrue(manager.canStart(newFunction(2, 1)))
+  }
+
+  @Test
+  def testCanStartSkipsFunctionsWithoutEnoughMemory() {
+    val manager = newManager(4, 16)
+    val reserved = manager.allocate(newFunction(1, 10))
+
+    Assert.assertFalse(manager.canStart(newFunction(1, 8)))
+    Assert.assertTrue(manager.canStart(newFunction(1, 6)))
+
+    manager.release(reserved)
+    Assert.assertTrue(manager.canStart(newFunction(1, 8)))
+  }
+
+  @Test
+  def testFunctionLargerThanTheMachineStartsAlone() {
+    val manager = newManager(2, 4)
+    val large = newFunction(8, 32)
+    Assert.assertTrue(manager.canStart(large))
+
+    val reserved = manager.allocate(newFunction(1, 1))
+    Assert.assertFalse(manager.canStart(large))
+    manager.release(reserved)
+    Assert.assertTrue(manager.canStart(large))
+  }
+
+  @Test
+  def testReleaseNotifiesStatusListener() {
+    val manager = newManager(2, 4)
+    var notified = 0
+    manager.setStatusListener(() => notified += 1)
+
+    val reserved = manager.allocate(newFunction(1, 1))
+    Assert.assertEquals(notified, 0)
+    manager.release(reserved)
+    Assert.assertEquals(notified, 1)
+  }
+}
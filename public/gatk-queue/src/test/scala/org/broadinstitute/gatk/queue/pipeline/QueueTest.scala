@@ -222,7 +222,7 @@ object QueueTest extends BaseTest with Logging {
       // we expected an exception but didn't see it
         Assert.fail("Test %s expected exception %s but none was thrown (%s)".format(name, expectedException.toString, jobRunner))
     } else {
-      if (CommandLineProgram.result != 0)
+      if (CommandLineProgram.getResult != 0)
         throw new RuntimeException("Error running Queue with arguments: " + args)
     }
   }
@@ -79,4 +79,29 @@ class ShellUtilsUnitTest {
   def testEscapeShellArgumentEmptyString() {
     Assert.assertEquals(ShellUtils.escapeShellArgument(""), "''")
   }
+
+  @Test
+  def testParseShellArgumentsUndoesEscaping() {
+    val originalArgs = Seq("-T", "a b", "it's", "", "$HOME", "chr1:1-100", "a\\b", "\"quoted\"")
+    val commandLine = originalArgs.map(ShellUtils.escapeShellArgument(_)).mkString(" ")
+    Assert.assertEquals(ShellUtils.parseShellArguments(commandLine), Some(originalArgs))
+  }
+
+  @Test
+  def testParseShellArgumentsUnquoted() {
+    Assert.assertEquals(ShellUtils.parseShellArguments("  -I in.bam\t-o \"out file.vcf\" a\\ b "),
+      Some(Seq("-I", "in.bam", "-o", "out file.vcf", "a b")))
+    Assert.assertEquals(ShellUtils.parseShellArguments(""), Some(Seq.empty[String]))
+  }
+
+  @Test
+  def testParseShellArgumentsRejectsShellFeatures() {
+    for (commandLine <- Seq("a | b", "a > out", "a && b", "a; b", "$HOME", "*.bam", "\"$HOME\"", "'unterminated", "a `b`"))
+      Assert.assertEquals(ShellUtils.parseShellArguments(commandLine), None, commandLine)
+  }
+
+  @Test(expectedExceptions = Array(classOf[IllegalArgumentException]))
+  def testParseShellArgumentsNullString() {
+    ShellUtils.parseShellArguments(null)
+  }
 }
\ No newline at end of file
@@ -126,6 +126,18 @@ public class GATKBAMFileSpan extends BAMFileSpan {
         return size;
     }
 
+    /**
+     * Returns an approximation of the number of compressed bytes in this
+     * file span.
+     * @return Approximation of compressed bytes in filespan.
+     */
+    public long compressedSize() {
+        long size = 0L;
+        for(GATKChunk chunk: getGATKChunks())
+            size += chunk.compressedSize();
+        return size;
+    }
+
     /**
      * Get a GATKChunk representing the "extent" of this file span, from the start of the first
      * chunk to the end of the last chunk.The chunks list must be sorted in order to use this method.
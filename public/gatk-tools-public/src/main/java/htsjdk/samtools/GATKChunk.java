@@ -102,6 +102,17 @@ public class GATKChunk extends Chunk {
         return chunkSpan + offsetSpan;
     }
 
+    /**
+     * Computes an approximation of the number of compressed bytes of the file
+     * covered by this chunk, which is what it costs to read the chunk.
+     * @return An approximation of the compressed chunk size in bytes.
+     */
+    public long compressedSize() {
+        final long blockSpan = (getChunkEnd()>>16)-(getChunkStart()>>16);
+        final int offsetSpan = (int)((getChunkEnd()&0xFFFF)-(getChunkStart()&0xFFFF));
+        return blockSpan + Math.round(offsetSpan*AVERAGE_BAM_COMPRESSION_RATIO);
+    }
+
     /**
      * Merges two chunks together. The caller is responsible for testing whether the
      * chunks overlap/are adjacent before calling this method!
@@ -30,7 +30,6 @@ import htsjdk.samtools.SAMException;
 import htsjdk.tribble.TribbleException;
 import org.broadinstitute.gatk.utils.commandline.Argument;
 import org.broadinstitute.gatk.utils.commandline.ArgumentCollection;
-import org.broadinstitute.gatk.utils.commandline.CommandLineProgram;
 import org.broadinstitute.gatk.engine.arguments.GATKArgumentCollection;
 import org.broadinstitute.gatk.engine.refdata.tracks.FeatureManager;
 import org.broadinstitute.gatk.engine.walkers.Attribution;
@@ -102,10 +101,10 @@ public class CommandLineGATK extends CommandLineExecutable {
      * Required main method implementation.
      */
     public static void main(String[] argv) {
+        int result = -1;
         try {
             CommandLineGATK instance = new CommandLineGATK();
-            start(instance, argv);
-            System.exit(CommandLineProgram.result); // todo -- this is a painful hack
+            result = start(instance, argv);
         } catch (UserException e) {
             exitSystemWithUserError(e);
         } catch (TribbleException e) {
@@ -124,6 +123,8 @@ public class CommandLineGATK extends CommandLineExecutable {
             checkForMaskedUserErrors(t);
             exitSystemWithError(t);
         }
+        // each of the errors above exits, so we only get here when the run succeeded
+        System.exit(result);
     }
 
     public static final String PICARD_TEXT_SAM_FILE_ERROR_1 = "Cannot use index file with textual SAM file";
@@ -35,6 +35,7 @@ import htsjdk.variant.vcf.VCFConstants;
 import org.apache.log4j.Logger;
 import org.broadinstitute.gatk.engine.arguments.GATKArgumentCollection;
 import org.broadinstitute.gatk.engine.arguments.ValidationExclusion;
+import org.broadinstitute.gatk.engine.daemon.DaemonCache;
 import org.broadinstitute.gatk.engine.datasources.reads.*;
 import org.broadinstitute.gatk.engine.datasources.reference.ReferenceDataSource;
 import org.broadinstitute.gatk.engine.datasources.rmd.ReferenceOrderedDataSource;
@@ -52,6 +53,7 @@ import org.broadinstitute.gatk.engine.iterators.ReadTransformersMode;
 import org.broadinstitute.gatk.engine.phonehome.GATKRunReport;
 import org.broadinstitute.gatk.engine.refdata.tracks.IndexDictionaryUtils;
 import org.broadinstitute.gatk.engine.refdata.tracks.RMDTrackBuilder;
+import org.broadinstitute.gatk.engine.refdata.tracks.TribbleIndexCache;
 import org.broadinstitute.gatk.engine.refdata.utils.RMDTriplet;
 import org.broadinstitute.gatk.engine.resourcemanagement.ThreadAllocation;
 import org.broadinstitute.gatk.engine.samples.SampleDB;
@@ -61,20 +63,25 @@ import org.broadinstitute.gatk.tools.walkers.genotyper.IndexedSampleList;
 import org.broadinstitute.gatk.tools.walkers.genotyper.SampleList;
 import org.broadinstitute.gatk.utils.*;
 import org.broadinstitute.gatk.utils.classloader.PluginManager;
+import org.broadinstitute.gatk.utils.collections.Pair;
 import org.broadinstitute.gatk.utils.commandline.*;
 import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.interval.IntervalCostModel;
 import org.broadinstitute.gatk.utils.interval.IntervalUtils;
+import org.broadinstitute.gatk.utils.interval.TimedIntervalCostModel;
 import org.broadinstitute.gatk.utils.progressmeter.ProgressMeter;
 import org.broadinstitute.gatk.utils.recalibration.BQSRArgumentSet;
 import org.broadinstitute.gatk.utils.sam.ReadUtils;
 import org.broadinstitute.gatk.utils.text.XReadLines;
+import org.broadinstitute.gatk.utils.threading.NamedThreadFactory;
 import org.broadinstitute.gatk.utils.threading.ThreadEfficiencyMonitor;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 
 import static org.broadinstitute.gatk.utils.DeprecatedToolChecks.getWalkerDeprecationInfo;
 import static org.broadinstitute.gatk.utils.DeprecatedToolChecks.isDeprecatedWalker;
@@ -231,13 +238,32 @@ public class GenomeAnalysisEngine {
     private long runtimeLimitInNanoseconds = -1;
 
     /**
-     *  Static random number generator and seed.
+     * With multiple threads, locus shards are combined until they amount to about this many shards of equal
+     * expected cost per thread, which leaves the threads enough shards to even out the errors of the estimate.
+     */
+    private static final int COST_BALANCED_SHARDS_PER_THREAD = 32;
+
+    /**
+     *  Static random number generator and seed.  Threads share one generator unless isolateRandomGenerator() gave
+     *  them, and the threads they create, their own.
      */
     private static final long GATK_RANDOM_SEED = 47382911L;
-    private static Random randomGenerator = new Random(GATK_RANDOM_SEED);
-    public static Random getRandomGenerator() { return randomGenerator; }
-    public static void resetRandomGenerator() { randomGenerator.setSeed(GATK_RANDOM_SEED); }
-    public static void resetRandomGenerator(long seed) { randomGenerator.setSeed(seed); }
+    private static final Random sharedRandomGenerator = new Random(GATK_RANDOM_SEED);
+    private static final InheritableThreadLocal<Random> randomGenerator = new InheritableThreadLocal<Random>() {
+        @Override
+        protected Random initialValue() {
+            return sharedRandomGenerator;
+        }
+    };
+    public static Random getRandomGenerator() { return randomGenerator.get(); }
+    public static void resetRandomGenerator() { getRandomGenerator().setSeed(GATK_RANDOM_SEED); }
+    public static void resetRandomGenerator(long seed) { getRandomGenerator().setSeed(seed); }
+
+    /**
+     * Give the current thread, and every thread it creates from now on, a random number generator of its own, freshly
+     * seeded as at JVM start up.  Used to run several GATKs in one JVM without their random numbers interfering.
+     */
+    public static void isolateRandomGenerator() { randomGenerator.set(new Random(GATK_RANDOM_SEED)); }
 
     /**
      *  Base Quality Score Recalibration helper object
@@ -451,7 +477,8 @@ public class GenomeAnalysisEngine {
         this.threadAllocation = new ThreadAllocation(argCollection.numberOfDataThreads,
                 argCollection.numberOfCPUThreadsPerDataThread,
                 argCollection.numberOfIOThreads,
-                argCollection.monitorThreadEfficiency);
+                argCollection.monitorThreadEfficiency,
+                argCollection.nanoSchedulerExecutionMode);
     }
 
     public int getTotalNumberOfThreads() {
@@ -586,6 +613,31 @@ public class GenomeAnalysisEngine {
         // TODO: add a check for ActiveRegion walkers to prevent users from passing an entire contig/chromosome
     }
 
+    /**
+     * @return true if locus shards should be balanced by their expected cost, as asked for by --cost_balanced_shards
+     *         or --interval_cost_table, and there is more than one data thread to balance them between
+     */
+    private boolean useCostBalancedShards() {
+        return argCollection.numberOfDataThreads > 1 && (argCollection.costBalancedShards || argCollection.intervalCostTable != null);
+    }
+
+    /**
+     * Estimate the cost of processing each region from the indices of the reads and, if given, the runtimes of an
+     * earlier run
+     *
+     * @param readsDataSource the indexed reads to process
+     * @return a new cost model
+     */
+    private IntervalCostModel createIntervalCostModel(final SAMDataSource readsDataSource) {
+        final List<GATKBAMIndex> indices = new ArrayList<GATKBAMIndex>();
+        for ( final SAMReaderID id : readsDataSource.getReaderIDs() )
+            indices.add(readsDataSource.getIndex(id));
+        final IntervalCostModel indexCostModel = new BAMIndexIntervalCostModel(indices, BAMIndexIntervalCostModel.DEFAULT_COST_PER_BASE);
+        if ( argCollection.intervalCostTable == null )
+            return indexCostModel;
+        return new TimedIntervalCostModel(genomeLocParser, argCollection.intervalCostTable, indexCostModel);
+    }
+
     /**
      * Get the sharding strategy given a driving data source.
      *
@@ -609,8 +661,14 @@ public class GenomeAnalysisEngine {
             if(walker instanceof LocusWalker) {
                 if (readsDataSource.getSortOrder() != SAMFileHeader.SortOrder.coordinate)
                     throw new UserException.MissortedBAM(SAMFileHeader.SortOrder.coordinate, "Locus walkers can only traverse coordinate-sorted data.  Please resort your input BAM file(s) or set the Sort Order tag in the header appropriately.");
-                if(intervals == null)
+                if(intervals == null && useCostBalancedShards() && readsDataSource.hasIndex())
+                    return readsDataSource.createShardIteratorOverMappedReads(new ByteSpanShardBalancer(argCollection.numberOfDataThreads * COST_BALANCED_SHARDS_PER_THREAD));
+                else if(intervals == null)
                     return readsDataSource.createShardIteratorOverMappedReads(new LocusShardBalancer());
+                else if(useCostBalancedShards() && readsDataSource.hasIndex())
+                    return readsDataSource.createShardIteratorOverIntervals(intervals,new LocusShardBalancer(),
+                                                                            createIntervalCostModel(readsDataSource),
+                                                                            argCollection.numberOfDataThreads * COST_BALANCED_SHARDS_PER_THREAD);
                 else
                     return readsDataSource.createShardIteratorOverIntervals(intervals,new LocusShardBalancer());
             } 
@@ -967,9 +1025,21 @@ public class GenomeAnalysisEngine {
      *
      * @param refFile Handle to a reference sequence file.  Non-null.
      */
-    public void setReferenceDataSource(File refFile) {
-        this.referenceDataSource = new ReferenceDataSource(refFile);
-        genomeLocParser = new GenomeLocParser(referenceDataSource.getReference());
+    public void setReferenceDataSource(final File refFile) {
+        final Pair<ReferenceDataSource,GenomeLocParser> reference;
+        try {
+            reference = DaemonCache.get("reference", new DaemonCache.Loader<Pair<ReferenceDataSource,GenomeLocParser>>() {
+                @Override
+                public Pair<ReferenceDataSource,GenomeLocParser> load() {
+                    final ReferenceDataSource dataSource = new ReferenceDataSource(refFile);
+                    return new Pair<ReferenceDataSource,GenomeLocParser>(dataSource, new GenomeLocParser(dataSource.getReference()));
+                }
+            }, refFile);
+        } catch (IOException e) {
+            throw new UserException.CouldNotReadInputFile(refFile, e);
+        }
+        this.referenceDataSource = reference.getFirst();
+        genomeLocParser = reference.getSecond();
     }
 
     /**
@@ -990,15 +1060,53 @@ public class GenomeAnalysisEngine {
                                                                             final Map<String, String> sampleRenameMap) {
         final RMDTrackBuilder builder = new RMDTrackBuilder(sequenceDictionary,genomeLocParser, validationExclusionType,
                                                             getArguments().disableAutoIndexCreationAndLockingWhenReadingRods,
-                                                            sampleRenameMap);
+                                                            sampleRenameMap,
+                                                            getArguments().tribbleIndexCacheDirectory == null ? null : new TribbleIndexCache(getArguments().tribbleIndexCacheDirectory));
 
         final List<ReferenceOrderedDataSource> dataSources = new ArrayList<ReferenceOrderedDataSource>();
-        for (RMDTriplet fileDescriptor : referenceMetaDataFiles)
-            dataSources.add(new ReferenceOrderedDataSource(fileDescriptor,
-                                                           builder,
-                                                           sequenceDictionary,
-                                                           genomeLocParser,
-                                                           flashbackData()));
+        // only open the data sources in parallel when their indices come from the index cache, which is cheap to read
+        final int nThreads = getArguments().tribbleIndexCacheDirectory == null ? 1
+                : Math.min(referenceMetaDataFiles.size(), Runtime.getRuntime().availableProcessors());
+        if ( nThreads <= 1 ) {
+            for (RMDTriplet fileDescriptor : referenceMetaDataFiles)
+                dataSources.add(new ReferenceOrderedDataSource(fileDescriptor,
+                                                               builder,
+                                                               sequenceDictionary,
+                                                               genomeLocParser,
+                                                               flashbackData()));
+            return dataSources;
+        }
+
+        // opening a data source loads, and possibly creates, its index, so open them all at once
+        final ExecutorService executor = Executors.newFixedThreadPool(nThreads, new NamedThreadFactory("GATK-rod-loader-%d"));
+        try {
+            final List<Future<ReferenceOrderedDataSource>> futures = new ArrayList<Future<ReferenceOrderedDataSource>>();
+            for (final RMDTriplet fileDescriptor : referenceMetaDataFiles) {
+                futures.add(executor.submit(new Callable<ReferenceOrderedDataSource>() {
+                    @Override
+                    public ReferenceOrderedDataSource call() {
+                        return new ReferenceOrderedDataSource(fileDescriptor,
+                                                              builder,
+                                                              sequenceDictionary,
+                                                              genomeLocParser,
+                                                              flashbackData());
+                    }
+                }));
+            }
+
+            for (final Future<ReferenceOrderedDataSource> future : futures)
+                dataSources.add(future.get());
+        } catch (InterruptedException e) {
+            throw new ReviewedGATKException("Interrupted while opening the reference-ordered data sources", e);
+        } catch (ExecutionException e) {
+            if ( e.getCause() instanceof RuntimeException )
+                throw (RuntimeException)e.getCause();
+            if ( e.getCause() instanceof Error )
+                throw (Error)e.getCause();
+            throw new ReviewedGATKException("Unable to open the reference-ordered data sources", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
 
         return dataSources;
     }
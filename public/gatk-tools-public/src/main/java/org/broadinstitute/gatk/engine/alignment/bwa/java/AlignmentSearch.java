@@ -0,0 +1,72 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.alignment.bwa.java;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Working space for aligning reads one at a time with a {@link BWAJavaAligner}.  The aligner's BWTs and
+ * suffix arrays are read-only and shared; everything that changes while a read is being aligned lives here,
+ * so each thread aligning reads needs its own search.
+ */
+class AlignmentSearch {
+    /**
+     * Partial alignments still to be extended, best first.
+     */
+    final PriorityQueue<BWAAlignment> alignments = new PriorityQueue<BWAAlignment>();
+
+    /**
+     * Lower bounds on the differences for the read against the reverse BWT.
+     */
+    final List<LowerBound> forwardLowerBounds = new ArrayList<LowerBound>();
+
+    /**
+     * Lower bounds on the differences for the complemented read against the forward BWT.
+     */
+    final List<LowerBound> reverseLowerBounds = new ArrayList<LowerBound>();
+
+    /**
+     * Number of alignments created by this search; used to break ties between alignments of equal score.
+     */
+    private long numCreated;
+
+    /**
+     * Gets the creation number for a new alignment.
+     * @return A number greater than that of any alignment previously created by this search.
+     */
+    long nextCreationNumber() {
+        return numCreated++;
+    }
+
+    /**
+     * Clears out the partial alignments left over from the last read.
+     */
+    void reset() {
+        alignments.clear();
+    }
+}
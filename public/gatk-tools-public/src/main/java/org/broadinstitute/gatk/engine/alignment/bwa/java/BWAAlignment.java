@@ -36,11 +36,11 @@ import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
  * @author mhanna
  * @version 0.1
  */
-public class BWAAlignment extends Alignment implements Cloneable {
+public class BWAAlignment extends Alignment implements Cloneable, Comparable<Alignment> {
     /**
-     * Track the number of alignments that have been created.
+     * The search that created this alignment; numbers its alignments in order of creation.
      */
-    private static long numCreated;
+    private final AlignmentSearch search;
 
     /**
      * Which number alignment is this?
@@ -159,8 +159,18 @@ public class BWAAlignment extends Alignment implements Cloneable {
      * @param aligner Aligner being used.
      */
     public BWAAlignment( BWAJavaAligner aligner ) {
+        this(aligner,new AlignmentSearch());
+    }
+
+    /**
+     * Create a new alignment as part of the given search.
+     * @param aligner Aligner being used.
+     * @param search Search to which the alignment belongs.
+     */
+    BWAAlignment( BWAJavaAligner aligner, AlignmentSearch search ) {
         this.aligner = aligner;
-        this.creationNumber = numCreated++;
+        this.search = search;
+        this.creationNumber = search.nextCreationNumber();
     }
 
     /**
@@ -175,12 +185,50 @@ public class BWAAlignment extends Alignment implements Cloneable {
         catch( CloneNotSupportedException ex ) {
             throw new ReviewedGATKException("Unable to clone BWAAlignment.");
         }
-        newAlignment.creationNumber = numCreated++;
+        newAlignment.creationNumber = search.nextCreationNumber();
         newAlignment.alignmentMatchSequence = alignmentMatchSequence.clone();
 
         return newAlignment;
     }
 
+    /**
+     * Sets the mapping quality of this alignment.
+     * @param mappingQuality Phred-scaled mapping quality.
+     */
+    protected void setMappingQuality(int mappingQuality) {
+        this.mappingQuality = mappingQuality;
+    }
+
+    /**
+     * Sets the number of best and second best alignments found for the read.
+     * @param bestCount Number of top scoring alignments.
+     * @param secondBestCount Number of second best scoring alignments.
+     */
+    protected void setAlignmentCounts(int bestCount, int secondBestCount) {
+        this.bestCount = bestCount;
+        this.secondBestCount = secondBestCount;
+    }
+
+    /**
+     * Places this alignment on the given contig.
+     * @param contigIndex Index of the contig in the sequence dictionary.
+     * @param alignmentStart 1-based start of the alignment within the contig.
+     */
+    protected void setContig(int contigIndex, long alignmentStart) {
+        this.contigIndex = contigIndex;
+        this.alignmentStart = alignmentStart;
+    }
+
+    /**
+     * Fills in the edit distance from the mismatches and the inserted and deleted bases.
+     */
+    protected void updateEditDistance() {
+        this.numMismatches = mismatches;
+        this.numGapOpens = gapOpens;
+        this.numGapExtensions = gapExtensions;
+        this.editDistance = mismatches + getNumberOfBasesMatchingState(AlignmentState.INSERTION) + getNumberOfBasesMatchingState(AlignmentState.DELETION);
+    }
+
     /**
      * How many bases in the read match the given state.
      * @param state State to test.
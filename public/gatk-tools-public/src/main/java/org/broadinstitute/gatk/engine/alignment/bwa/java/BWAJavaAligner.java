@@ -27,17 +27,24 @@ package org.broadinstitute.gatk.engine.alignment.bwa.java;
 
 import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import org.broadinstitute.gatk.engine.GenomeAnalysisEngine;
 import org.broadinstitute.gatk.engine.alignment.Alignment;
 import org.broadinstitute.gatk.engine.alignment.bwa.BWAAligner;
 import org.broadinstitute.gatk.engine.alignment.bwa.BWAConfiguration;
+import org.broadinstitute.gatk.engine.alignment.bwa.BWTFiles;
 import org.broadinstitute.gatk.engine.alignment.reference.bwt.*;
 import org.broadinstitute.gatk.utils.BaseUtils;
 import org.broadinstitute.gatk.utils.Utils;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.threading.NamedThreadFactory;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.PriorityQueue;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Create imperfect alignments from the read to the genome represented by the given BWT / suffix array. 
@@ -101,20 +108,79 @@ public class BWAJavaAligner extends BWAAligner {
      */
     public final int INDEL_END_SKIP = 5;
 
+    /**
+     * Number of distinct second-best alignments beyond which the mapping quality bottoms out.
+     */
+    private static final int MAXIMUM_SECOND_BEST_COUNT = 255;
+
+    /**
+     * Dictionary of the contigs concatenated into the BWT, or null if alignments should be reported against
+     * the concatenated reference as a single contig.
+     */
+    private final SAMSequenceDictionary referenceDictionary;
+
+    /**
+     * Offset of each contig within the concatenated reference, plus a final entry for its total length.
+     */
+    private final long[] contigStarts;
+
+    /**
+     * Seed of the choice among equally good alignments.  Drawn once from the GATK generator, so that the choice
+     * follows the GATK seed, and mixed with the bases of each read, so that it doesn't depend on the order in
+     * which threads align the reads.
+     */
+    private final long randomSeed = GenomeAnalysisEngine.getRandomGenerator().nextLong();
+
+    /**
+     * Search state for each thread using this aligner.
+     */
+    private final ThreadLocal<AlignmentSearch> searches = new ThreadLocal<AlignmentSearch>() {
+        @Override
+        protected AlignmentSearch initialValue() {
+            return new AlignmentSearch();
+        }
+    };
+
     public BWAJavaAligner( File forwardBWTFile, File reverseBWTFile, File forwardSuffixArrayFile, File reverseSuffixArrayFile ) {
-        super(null,null);
-        forwardBWT = new BWTReader(forwardBWTFile).read();
-        reverseBWT = new BWTReader(reverseBWTFile).read();
-        forwardSuffixArray = new SuffixArrayReader(forwardSuffixArrayFile,forwardBWT).read();
-        reverseSuffixArray = new SuffixArrayReader(reverseSuffixArrayFile,reverseBWT).read();
+        this(null,forwardBWTFile,reverseBWTFile,forwardSuffixArrayFile,reverseSuffixArrayFile,null);
     }
 
     /**
-     * Close this instance of the BWA pointer and delete its resources.
+     * Create an aligner over the given BWA index.  Alignments are placed on the contigs of the given dictionary,
+     * which must list the contigs in the order in which they were packed into the index.
+     * @param bwtFiles BWA index files.
+     * @param referenceDictionary Dictionary of the indexed reference.
+     */
+    public BWAJavaAligner( BWTFiles bwtFiles, SAMSequenceDictionary referenceDictionary ) {
+        this(bwtFiles,bwtFiles.forwardBWTFile,bwtFiles.reverseBWTFile,bwtFiles.forwardSAFile,bwtFiles.reverseSAFile,referenceDictionary);
+    }
+
+    private BWAJavaAligner( BWTFiles bwtFiles, File forwardBWTFile, File reverseBWTFile, File forwardSuffixArrayFile, File reverseSuffixArrayFile, SAMSequenceDictionary referenceDictionary ) {
+        super(bwtFiles,null);
+        forwardBWT = MappedBWT.open(forwardBWTFile);
+        reverseBWT = MappedBWT.open(reverseBWTFile);
+        forwardSuffixArray = MappedSuffixArray.open(forwardSuffixArrayFile,forwardBWT);
+        reverseSuffixArray = MappedSuffixArray.open(reverseSuffixArrayFile,reverseBWT);
+
+        this.referenceDictionary = referenceDictionary;
+        if(referenceDictionary != null) {
+            List<SAMSequenceRecord> contigs = referenceDictionary.getSequences();
+            contigStarts = new long[contigs.size()+1];
+            for(int i = 0; i < contigs.size(); i++)
+                contigStarts[i+1] = contigStarts[i] + contigs.get(i).getSequenceLength();
+            if(contigStarts[contigs.size()] != forwardBWT.length())
+                throw new UserException.BadInput(String.format("Reference dictionary describes %d bases, but BWT %s indexes %d",contigStarts[contigs.size()],forwardBWTFile,forwardBWT.length()));
+        }
+        else
+            contigStarts = null;
+    }
+
+    /**
+     * Close this instance of the BWA pointer and delete its resources.  The mapped index is shared with other
+     * aligners and is released once none of them refer to it.
      */
     @Override
     public void close()  {
-        throw new UnsupportedOperationException("BWA aligner can't currently be closed.");
     }
 
     /**
@@ -126,11 +192,21 @@ public class BWAJavaAligner extends BWAAligner {
     }
 
     /**
-     * Allow the aligner to choose one alignment randomly from the pile of best alignments.
+     * Allow the aligner to choose one alignment randomly from the pile of best alignments.  The same bases
+     * always get the same alignment from this aligner, whichever thread aligns them.
      * @param bases Bases to align.
      * @return An align
      */
-    public Alignment getBestAlignment(final byte[] bases) { throw new UnsupportedOperationException("BWAJavaAligner does not yet support the standard Aligner interface."); }
+    public Alignment getBestAlignment(final byte[] bases) {
+        List<Alignment[]> alignments = getAllAlignments(bases);
+        if(alignments.isEmpty())
+            return null;
+        Alignment[] best = alignments.get(0);
+        if(best.length == 1)
+            return best[0];
+        final Random random = new Random(randomSeed ^ (Arrays.hashCode(bases) * 0x9E3779B97F4A7C15L));
+        return best[random.nextInt(best.length)];
+    }
 
     /**
      * Align the read to the reference.
@@ -138,14 +214,27 @@ public class BWAJavaAligner extends BWAAligner {
      * @param header Optional header to drop in place.
      * @return A list of the alignments.
      */
-    public SAMRecord align(final SAMRecord read, final SAMFileHeader header) { throw new UnsupportedOperationException("BWAJavaAligner does not yet support the standard Aligner interface."); }
+    public SAMRecord align(final SAMRecord read, final SAMFileHeader header) {
+        return Alignment.convertToRead(getBestAlignment(read.getReadBases()),read,header);
+    }
 
     /**
      * Get a iterator of alignments, batched by mapping quality.
      * @param bases List of bases.
      * @return Iterator to alignments.
      */
-    public Iterable<Alignment[]> getAllAlignments(final byte[] bases) { throw new UnsupportedOperationException("BWAJavaAligner does not yet support the standard Aligner interface."); }
+    public List<Alignment[]> getAllAlignments(final byte[] bases) {
+        List<Alignment[]> batches = new ArrayList<Alignment[]>();
+        List<BWAAlignment> alignments = align(bases,searches.get());
+        int batchStart = 0;
+        for(int i = 1; i <= alignments.size(); i++) {
+            if(i == alignments.size() || alignments.get(i).getScore() != alignments.get(batchStart).getScore()) {
+                batches.add(alignments.subList(batchStart,i).toArray(new Alignment[i-batchStart]));
+                batchStart = i;
+            }
+        }
+        return batches;
+    }
 
     /**
      * Get a iterator of aligned reads, batched by mapping quality.
@@ -153,29 +242,105 @@ public class BWAJavaAligner extends BWAAligner {
      * @param newHeader Optional new header to use when aligning the read.  If present, it must be null.
      * @return Iterator to alignments.
      */
-    public Iterable<SAMRecord[]> alignAll(final SAMRecord read, final SAMFileHeader newHeader) { throw new UnsupportedOperationException("BWAJavaAligner does not yet support the standard Aligner interface."); }
+    public Iterable<SAMRecord[]> alignAll(final SAMRecord read, final SAMFileHeader newHeader) {
+        List<SAMRecord[]> batches = new ArrayList<SAMRecord[]>();
+        for(Alignment[] alignments: getAllAlignments(read.getReadBases())) {
+            SAMRecord[] reads = new SAMRecord[alignments.length];
+            for(int i = 0; i < alignments.length; i++)
+                reads[i] = Alignment.convertToRead(alignments[i],read,newHeader);
+            batches.add(reads);
+        }
+        return batches;
+    }
+
+    /**
+     * Align a block of reads, spreading them across the given number of threads.  The threads share this
+     * aligner's index, so aligning in parallel costs no more memory than aligning serially.
+     * @param reads Reads to align.
+     * @param header Optional header to drop in place.
+     * @param numThreads Number of threads to align with; 1 aligns in the calling thread.
+     * @return The best alignment of each read, in the order of the input; unaligned reads are marked unmapped.
+     */
+    public List<SAMRecord> align(final List<SAMRecord> reads, final SAMFileHeader header, final int numThreads) {
+        if(numThreads < 1)
+            throw new IllegalArgumentException("numThreads must be at least 1 but got " + numThreads);
+
+        final List<SAMRecord> input = reads instanceof RandomAccess ? reads : new ArrayList<SAMRecord>(reads);
+        final SAMRecord[] aligned = new SAMRecord[input.size()];
+        final int numWorkers = Math.min(numThreads,input.size());
+        if(numWorkers <= 1) {
+            for(int i = 0; i < aligned.length; i++)
+                aligned[i] = align(input.get(i),header);
+            return Arrays.asList(aligned);
+        }
 
+        // Workers claim reads one at a time, so that a few slow reads don't hold up a whole partition.
+        final AtomicInteger nextRead = new AtomicInteger();
+        final Callable<Void> worker = new Callable<Void>() {
+            @Override
+            public Void call() {
+                for(int i = nextRead.getAndIncrement(); i < aligned.length; i = nextRead.getAndIncrement())
+                    aligned[i] = align(input.get(i),header);
+                return null;
+            }
+        };
+
+        final ExecutorService executor = Executors.newFixedThreadPool(numWorkers,new NamedThreadFactory("BWA-align-thread-%d"));
+        try {
+            final List<Future<Void>> workers = new ArrayList<Future<Void>>(numWorkers);
+            for(int i = 0; i < numWorkers; i++)
+                workers.add(executor.submit(worker));
+            for(Future<Void> future: workers)
+                future.get();
+        }
+        catch(ExecutionException ex) {
+            if(ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException)ex.getCause();
+            throw new ReviewedGATKException("Unable to align reads", ex.getCause());
+        }
+        catch(InterruptedException ex) {
+            throw new ReviewedGATKException("Interrupted while aligning reads", ex);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        return Arrays.asList(aligned);
+    }
 
     public List<Alignment> align( SAMRecord read ) {
-        List<Alignment> successfulMatches = new ArrayList<Alignment>();
+        return new ArrayList<Alignment>(align(read.getReadBases(),searches.get()));
+    }
+
+    /**
+     * Find all alignments of the given bases, best first.
+     * @param readBases Bases to align.
+     * @param search Working space for the alignment.
+     * @return Alignments, sorted by score, with mapping qualities and edit distances filled in.
+     */
+    private List<BWAAlignment> align( byte[] readBases, AlignmentSearch search ) {
+        List<BWAAlignment> successfulMatches = new ArrayList<BWAAlignment>();
 
-        Byte[] uncomplementedBases = normalizeBases(read.getReadBases());
-        Byte[] complementedBases = normalizeBases(Utils.reverse(BaseUtils.simpleReverseComplement(read.getReadBases())));
+        Byte[] uncomplementedBases = normalizeBases(readBases);
+        Byte[] complementedBases = normalizeBases(Utils.reverse(BaseUtils.simpleReverseComplement(readBases)));
 
-        List<LowerBound> forwardLowerBounds = LowerBound.create(uncomplementedBases,forwardBWT);
-        List<LowerBound> reverseLowerBounds = LowerBound.create(complementedBases,reverseBWT);
+        List<LowerBound> forwardLowerBounds = search.forwardLowerBounds;
+        List<LowerBound> reverseLowerBounds = search.reverseLowerBounds;
+        LowerBound.create(uncomplementedBases,forwardBWT,forwardLowerBounds);
+        LowerBound.create(complementedBases,reverseBWT,reverseLowerBounds);
 
         // Seed the best score with any score that won't overflow on comparison.
         int bestScore = Integer.MAX_VALUE - MISMATCH_PENALTY;
         int bestDiff = MAXIMUM_EDIT_DISTANCE+1;
         int maxDiff = MAXIMUM_EDIT_DISTANCE;
 
-        PriorityQueue<BWAAlignment> alignments = new PriorityQueue<BWAAlignment>();
+        search.reset();
+        PriorityQueue<BWAAlignment> alignments = search.alignments;
 
         // Create a fictional initial alignment, with the position just off the end of the read, and the limits
         // set as the entire BWT.
-        alignments.add(createSeedAlignment(reverseBWT));
-        alignments.add(createSeedAlignment(forwardBWT));
+        alignments.add(createSeedAlignment(reverseBWT,search));
+        alignments.add(createSeedAlignment(forwardBWT,search));
 
         while(!alignments.isEmpty()) {
             BWAAlignment alignment = alignments.remove();
@@ -200,18 +365,21 @@ public class BWAJavaAligner extends BWAAligner {
             }
 
             // Found a valid alignment; store it and move on.
-            if(alignment.position >= read.getReadLength()-1) {
+            if(alignment.position >= readBases.length-1) {
                 for(long bwtIndex = alignment.loBound; bwtIndex <= alignment.hiBound; bwtIndex++) {
                     BWAAlignment finalAlignment = alignment.clone();
 
+                    int sizeAlongReference = readBases.length -
+                            finalAlignment.getNumberOfBasesMatchingState(AlignmentState.INSERTION) +
+                            finalAlignment.getNumberOfBasesMatchingState(AlignmentState.DELETION);
                     if( finalAlignment.isNegativeStrand() )
                         finalAlignment.setAlignmentStart(forwardSuffixArray.get(bwtIndex) + 1);
-                    else {
-                        int sizeAlongReference = read.getReadLength() -
-                                finalAlignment.getNumberOfBasesMatchingState(AlignmentState.INSERTION) +
-                                finalAlignment.getNumberOfBasesMatchingState(AlignmentState.DELETION);
+                    else
                         finalAlignment.setAlignmentStart(reverseBWT.length() - reverseSuffixArray.get(bwtIndex) - sizeAlongReference + 1);
-                    }
+
+                    // Alignments running off the end of a contig into the next aren't real.
+                    if( !placeOnContig(finalAlignment,sizeAlongReference) )
+                        continue;
 
                     successfulMatches.add(finalAlignment);
 
@@ -244,7 +412,7 @@ public class BWAJavaAligner extends BWAAligner {
 
             if( allowDifferences &&
                 alignment.position+1 >= INDEL_END_SKIP-1+alignment.getGapOpens()+alignment.getGapExtensions() &&
-                read.getReadLength()-1-(alignment.position+1) >= INDEL_END_SKIP+alignment.getGapOpens()+alignment.getGapExtensions() ) {
+                readBases.length-1-(alignment.position+1) >= INDEL_END_SKIP+alignment.getGapOpens()+alignment.getGapExtensions() ) {
                 if( alignment.getCurrentState() == AlignmentState.MATCH_MISMATCH ) {
                     if( alignment.getGapOpens() < MAXIMUM_GAP_OPENS ) {
                         // Add a potential insertion extension.
@@ -282,16 +450,87 @@ public class BWAJavaAligner extends BWAAligner {
             alignments.addAll(createMatchedAlignments(bwt,alignment,bases,allowDifferences&&allowMismatches));
         }
 
+        search.reset();
+        annotate(successfulMatches);
         return successfulMatches;
     }
 
+    /**
+     * Sort the alignments of a read best first, and fill in the counts and mapping qualities that depend on
+     * the read's other alignments.
+     * @param alignments All alignments found for a read.
+     */
+    private void annotate( List<BWAAlignment> alignments ) {
+        Collections.sort(alignments,new Comparator<BWAAlignment>() {
+            @Override
+            public int compare(BWAAlignment lhs, BWAAlignment rhs) {
+                return lhs.getScore() < rhs.getScore() ? -1 : (lhs.getScore() == rhs.getScore() ? 0 : 1);
+            }
+        });
+
+        int bestCount = 0, secondBestCount = 0;
+        for( BWAAlignment alignment: alignments ) {
+            if( alignment.getScore() == alignments.get(0).getScore() )
+                bestCount++;
+            else if( alignment.getScore() == alignments.get(bestCount).getScore() )
+                secondBestCount++;
+            else
+                break;
+        }
+
+        for( BWAAlignment alignment: alignments ) {
+            alignment.updateEditDistance();
+            alignment.setAlignmentCounts(bestCount,secondBestCount);
+            alignment.setMappingQuality(alignment.getScore() == alignments.get(0).getScore() ? getMappingQuality(alignment,bestCount,secondBestCount) : 0);
+        }
+    }
+
+    /**
+     * Approximate the mapping quality of a best alignment the way BWA does, from the number of equally good and
+     * next best alignments.
+     * @param alignment One of the best alignments.
+     * @param bestCount Number of best alignments.
+     * @param secondBestCount Number of second best alignments.
+     * @return Phred-scaled mapping quality.
+     */
+    private int getMappingQuality( BWAAlignment alignment, int bestCount, int secondBestCount ) {
+        if( bestCount > 1 )
+            return 0;
+        if( alignment.getMismatches() == MAXIMUM_EDIT_DISTANCE )
+            return 25;
+        if( secondBestCount == 0 )
+            return 37;
+        int logSecondBestCount = (int)(4.343 * Math.log(Math.min(secondBestCount,MAXIMUM_SECOND_BEST_COUNT)) + 0.5);
+        return logSecondBestCount > 23 ? 0 : 23 - logSecondBestCount;
+    }
+
+    /**
+     * Translate the alignment's position within the concatenated reference to a position on a contig.
+     * @param alignment Alignment whose start is relative to the concatenated reference.
+     * @param sizeAlongReference Number of reference bases covered by the alignment.
+     * @return False if the alignment spans more than one contig.
+     */
+    private boolean placeOnContig( BWAAlignment alignment, int sizeAlongReference ) {
+        if( referenceDictionary == null )
+            return true;
+        long start = alignment.getAlignmentStart() - 1;
+        int contig = Arrays.binarySearch(contigStarts,start);
+        if( contig < 0 )
+            contig = -contig - 2;
+        if( contig < 0 || contig >= contigStarts.length-1 || start + sizeAlongReference > contigStarts[contig+1] )
+            return false;
+        alignment.setContig(contig,start - contigStarts[contig] + 1);
+        return true;
+    }
+
     /**
      * Create an seeding alignment to use as a starting point when traversing.
      * @param bwt source BWT.
+     * @param search Search to which the alignment belongs.
      * @return Seed alignment.
      */
-    private BWAAlignment createSeedAlignment(BWT bwt) {
-        BWAAlignment seed = new BWAAlignment(this);
+    private BWAAlignment createSeedAlignment(BWT bwt, AlignmentSearch search) {
+        BWAAlignment seed = new BWAAlignment(this,search);
         seed.setNegativeStrand(bwt == forwardBWT);
         seed.position = -1;
         seed.loBound = 0;
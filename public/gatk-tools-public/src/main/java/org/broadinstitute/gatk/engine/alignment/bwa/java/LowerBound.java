@@ -28,6 +28,7 @@ package org.broadinstitute.gatk.engine.alignment.bwa.java;
 import org.broadinstitute.gatk.engine.alignment.reference.bwt.BWT;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -80,6 +81,18 @@ public class LowerBound {
      */
     public static List<LowerBound> create(Byte[] bases, BWT bwt) {
         List<LowerBound> bounds = new ArrayList<LowerBound>();
+        create(bases,bwt,bounds);
+        return bounds;
+    }
+
+    /**
+     * Create the lower bounds for the given read, reusing the given list.
+     * @param bases Bases of the read to use when creating a new BWT.
+     * @param bwt BWT to check against.
+     * @param bounds List to clear and fill with the lower bound at every point in the read.
+     */
+    static void create(Byte[] bases, BWT bwt, List<LowerBound> bounds) {
+        bounds.clear();
 
         long loIndex = 0, hiIndex = bwt.length();
         int mismatches = 0;
@@ -97,10 +110,11 @@ public class LowerBound {
                 hiIndex = bwt.length();
                 mismatches++;
             }
-            bounds.add(0,new LowerBound(loIndex,hiIndex,mismatches));
+            bounds.add(new LowerBound(loIndex,hiIndex,mismatches));
         }
 
-        return bounds;
+        // Bounds were computed from the end of the read back to the start.
+        Collections.reverse(bounds);
     }
 
     /**
@@ -157,14 +157,15 @@ public class BWT {
     }
 
     private SequenceBlock getSequenceBlock(long index) {
-        // If the index is above the SA-1[0], remap it to the appropriate coordinate space.
-        if(index > inverseSA0) index--;
+        // If the index is at or above the SA-1[0], remap it to the appropriate coordinate space.  The '$' itself
+        // isn't stored, so counts through it are counts through the base before it.
+        if(index >= inverseSA0) index--;
         return sequenceBlocks[(int)(index/SEQUENCE_BLOCK_SIZE)];
     }
 
     private int getSequencePosition(long index) {
-        // If the index is above the SA-1[0], remap it to the appropriate coordinate space.
-        if(index > inverseSA0) index--;
+        // If the index is at or above the SA-1[0], remap it to the appropriate coordinate space.
+        if(index >= inverseSA0) index--;
         return (int)(index%SEQUENCE_BLOCK_SIZE);
     }
 
@@ -0,0 +1,257 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.alignment.reference.bwt;
+
+import org.broadinstitute.gatk.engine.alignment.reference.packing.PackUtils;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A BWT that is memory-mapped from a BWA-format .bwt file rather than copied onto the heap.  Occurrence queries
+ * are answered directly from the packed on-disk representation, so opening an index costs little more than
+ * reading its header, and the pages backing it are shared by every aligner in the JVM (and by the OS page cache
+ * across processes).
+ *
+ * Instances are read-only: the sequence blocks are never materialized, so a mapped BWT can't be handed to a
+ * {@link BWTWriter}.
+ */
+public class MappedBWT extends BWT {
+    /**
+     * Size of the header: inverse SA0 followed by the four cumulative counts.
+     */
+    private static final int HEADER_SIZE = (1 + PackUtils.ALPHABET_SIZE) * 4;
+
+    /**
+     * Number of bases packed into each on-disk word.
+     */
+    private static final int BASES_PER_WORD = 16;
+
+    /**
+     * Size of the occurrence table heading each sequence block.
+     */
+    private static final int OCCURRENCES_SIZE = PackUtils.ALPHABET_SIZE * 4;
+
+    /**
+     * Distance between the starts of consecutive sequence blocks.
+     */
+    private static final int BLOCK_SIZE_IN_BYTES = OCCURRENCES_SIZE + SEQUENCE_BLOCK_SIZE / BASES_PER_WORD * 4;
+
+    /**
+     * Mask selecting the low bit of each packed base.
+     */
+    private static final int LOW_BITS = 0x55555555;
+
+    /**
+     * Every open mapping, keyed by canonical path, so that aligners over the same index share a single mapping.
+     */
+    private static final Map<String,WeakReference<MappedBWT>> openBWTs = new HashMap<String,WeakReference<MappedBWT>>();
+
+    /**
+     * The mapped file.
+     */
+    private final MappedIndexFile file;
+
+    /**
+     * Modification time of the file at the time it was mapped.
+     */
+    private final long lastModified;
+
+    /**
+     * Number of bases in the BWT, excluding the '$'.
+     */
+    private final long length;
+
+    /**
+     * Cumulative counts, indexed by packed base.
+     */
+    private final long[] cumulativeCounts = new long[PackUtils.ALPHABET_SIZE];
+
+    /**
+     * Map the given BWT file.  Prefer {@link #open(File)}, which reuses existing mappings.
+     * @param bwtFile BWA-format .bwt file.
+     */
+    public MappedBWT(File bwtFile) {
+        this(new MappedIndexFile(bwtFile), bwtFile.lastModified());
+    }
+
+    private MappedBWT(MappedIndexFile file, long lastModified) {
+        super(readInverseSA0(file), new Counts(readCounts(file), true), (SequenceBlock[])null);
+        this.file = file;
+        this.lastModified = lastModified;
+
+        long[] counts = readCounts(file);
+        for(int i = 1; i < PackUtils.ALPHABET_SIZE; i++)
+            cumulativeCounts[i] = counts[i-1];
+        length = counts[PackUtils.ALPHABET_SIZE-1];
+
+        int numSequenceBlocks = PackUtils.numberOfPartitions(length,SEQUENCE_BLOCK_SIZE);
+        long lastBlockLength = length - (long)(numSequenceBlocks-1)*SEQUENCE_BLOCK_SIZE;
+        if(numSequenceBlocks > 0)
+            file.checkLength(blockStart(numSequenceBlocks-1) + OCCURRENCES_SIZE + PackUtils.numberOfPartitions(lastBlockLength,BASES_PER_WORD)*4L,
+                             String.format("A BWT of %d bases",length));
+    }
+
+    /**
+     * Gets the mapped BWT for the given file, mapping it if no live aligner is already using it.
+     * @param bwtFile BWA-format .bwt file.
+     * @return A mapped BWT, possibly shared with other callers.
+     */
+    public static MappedBWT open(File bwtFile) {
+        String key = MappedIndexFile.canonicalPath(bwtFile);
+        synchronized(openBWTs) {
+            WeakReference<MappedBWT> reference = openBWTs.get(key);
+            MappedBWT bwt = reference != null ? reference.get() : null;
+            if(bwt == null || !bwt.isCurrent()) {
+                bwt = new MappedBWT(bwtFile);
+                openBWTs.put(key,new WeakReference<MappedBWT>(bwt));
+            }
+            return bwt;
+        }
+    }
+
+    /**
+     * Extract the full sequence from the mapped file.
+     * @return The full BWT string as a byte array.
+     */
+    @Override
+    public byte[] getSequence() {
+        if(length > Integer.MAX_VALUE)
+            throw new ReviewedGATKException(String.format("BWT of length %d is too long to extract as a single array",length));
+        byte[] sequence = new byte[(int)length];
+        for(int i = 0; i < sequence.length; i++)
+            sequence[i] = PackUtils.unpackBase((byte)unpack(getWord(i/SEQUENCE_BLOCK_SIZE,i%SEQUENCE_BLOCK_SIZE),i%SEQUENCE_BLOCK_SIZE));
+        return sequence;
+    }
+
+    @Override
+    public long counts(byte base) {
+        return cumulativeCounts[pack(base)];
+    }
+
+    @Override
+    public long occurrences(byte base,long index) {
+        // If the index is at or above the SA-1[0], remap it to the appropriate coordinate space.  The '$' itself
+        // isn't stored, so counts through it are counts through the base before it.
+        if(index >= inverseSA0) index--;
+        int pack = pack(base);
+        long block = index/SEQUENCE_BLOCK_SIZE;
+        int position = (int)(index%SEQUENCE_BLOCK_SIZE);
+
+        long blockStart = blockStart(block);
+        long accumulator = file.getUnsignedInt(blockStart + pack*4);
+        if(position < 0)
+            return accumulator;
+
+        // Replicate the base into every two-bit slot; matching slots XOR to zero.
+        int pattern = pack * LOW_BITS;
+        long wordStart = blockStart + OCCURRENCES_SIZE;
+        int lastWord = position/BASES_PER_WORD;
+        for(int word = 0; word < lastWord; word++)
+            accumulator += Integer.bitCount(matches(file.getInt(wordStart + word*4),pattern));
+
+        // Bases are packed from the high bits down; keep only those up to and including the position.
+        int mask = LOW_BITS & (0xFFFFFFFF << ((BASES_PER_WORD - 1 - position%BASES_PER_WORD)*PackUtils.BITS_PER_BASE));
+        accumulator += Integer.bitCount(matches(file.getInt(wordStart + lastWord*4),pattern) & mask);
+        return accumulator;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    protected byte getBase(long index) {
+        if(index == inverseSA0)
+            throw new ReviewedGATKException(String.format("Base at index %d does not have a text representation",index));
+        if(index > inverseSA0) index--;
+        int position = (int)(index%SEQUENCE_BLOCK_SIZE);
+        return PackUtils.unpackBase((byte)unpack(getWord(index/SEQUENCE_BLOCK_SIZE,position),position));
+    }
+
+    /**
+     * Has the underlying file been left unchanged since it was mapped?
+     * @return True if the mapping still reflects the file on disk.
+     */
+    private boolean isCurrent() {
+        return file.getFile().lastModified() == lastModified && file.getFile().length() == file.length();
+    }
+
+    /**
+     * Gets the packed word holding the given base.
+     * @param block Sequence block.
+     * @param position Position of the base within the block.
+     * @return The packed word.
+     */
+    private int getWord(long block, int position) {
+        return file.getInt(blockStart(block) + OCCURRENCES_SIZE + (position/BASES_PER_WORD)*4);
+    }
+
+    private static long blockStart(long block) {
+        return HEADER_SIZE + block*BLOCK_SIZE_IN_BYTES;
+    }
+
+    private static int unpack(int word, int position) {
+        return (word >>> ((BASES_PER_WORD - 1 - position%BASES_PER_WORD)*PackUtils.BITS_PER_BASE)) & 0x3;
+    }
+
+    /**
+     * Sets the low bit of each two-bit slot in which the word and the pattern agree.
+     * @param word Packed bases.
+     * @param pattern The base being sought, replicated into every slot.
+     * @return A word with the low bit of each matching slot set.
+     */
+    private static int matches(int word, int pattern) {
+        int difference = word ^ pattern;
+        return ~(difference | (difference >>> 1)) & LOW_BITS;
+    }
+
+    private static int pack(byte base) {
+        switch(base) {
+            case Bases.A: return 0;
+            case Bases.C: return 1;
+            case Bases.G: return 2;
+            case Bases.T: return 3;
+            default: return Bases.toPack(base);
+        }
+    }
+
+    private static long readInverseSA0(MappedIndexFile file) {
+        file.checkLength(HEADER_SIZE,"A BWT header");
+        return file.getUnsignedInt(0);
+    }
+
+    private static long[] readCounts(MappedIndexFile file) {
+        long[] counts = new long[PackUtils.ALPHABET_SIZE];
+        for(int i = 0; i < counts.length; i++)
+            counts[i] = file.getUnsignedInt(4 + i*4);
+        return counts;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.alignment.reference.bwt;
+
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only, memory-mapped index file made of little-endian unsigned ints.
+ *
+ * Files larger than a single mapping can address are mapped in overlapping segments, so that any read of up to
+ * {@link #MAX_READ_SIZE} bytes falls entirely within one segment.
+ */
+class MappedIndexFile {
+    /**
+     * Largest number of bytes that can be read in place at once.
+     */
+    static final int MAX_READ_SIZE = 64;
+
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    /**
+     * The file being mapped.
+     */
+    private final File file;
+
+    /**
+     * Size of the file in bytes.
+     */
+    private final long length;
+
+    /**
+     * Mapped segments; segment i starts at byte i * 2^SEGMENT_SHIFT.
+     */
+    private final MappedByteBuffer[] segments;
+
+    /**
+     * Map the given file.
+     * @param file File to map.
+     */
+    MappedIndexFile(final File file) {
+        this.file = file;
+        try {
+            final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            try {
+                final FileChannel channel = randomAccessFile.getChannel();
+                length = channel.size();
+                segments = new MappedByteBuffer[(int)((length + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+                for( int i = 0; i < segments.length; i++ ) {
+                    final long start = (long)i << SEGMENT_SHIFT;
+                    final long size = Math.min(SEGMENT_MASK + 1 + MAX_READ_SIZE, length - start);
+                    segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+                    segments[i].order(ByteOrder.LITTLE_ENDIAN);
+                }
+            }
+            finally {
+                // the mappings stay valid after the channel is closed.
+                randomAccessFile.close();
+            }
+        }
+        catch( IOException ex ) {
+            throw new UserException.CouldNotReadInputFile(file, "it could not be memory-mapped", ex);
+        }
+    }
+
+    /**
+     * Gets the key under which mappings of the given file are shared.
+     * @param file File to map.
+     * @return The canonical path of the file.
+     */
+    static String canonicalPath(final File file) {
+        try {
+            return file.getCanonicalPath();
+        }
+        catch( IOException ex ) {
+            throw new UserException.CouldNotReadInputFile(file, ex);
+        }
+    }
+
+    /**
+     * The mapped file.
+     * @return the file.
+     */
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Size of the mapped file.
+     * @return size in bytes.
+     */
+    long length() {
+        return length;
+    }
+
+    /**
+     * Make sure that the file holds at least the given number of bytes.
+     * @param requiredLength Minimum size of the file, in bytes.
+     * @param description What the file should contain, for the error message.
+     */
+    void checkLength(final long requiredLength, final String description) {
+        if( length < requiredLength )
+            throw new UserException.MalformedFile(file, String.format("%s needs at least %d bytes but the file only has %d; is it truncated?", description, requiredLength, length));
+    }
+
+    /**
+     * Read an unsigned int in place.
+     * @param position Offset of the int within the file.
+     * @return The value as a non-negative long.
+     */
+    long getUnsignedInt(final long position) {
+        return getInt(position) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Read the raw bits of a little-endian int in place.
+     * @param position Offset of the int within the file.
+     * @return The int.
+     */
+    int getInt(final long position) {
+        if( position < 0 || position + 4 > length )
+            throw new ReviewedGATKException(String.format("Position %d is outside of index file %s", position, file));
+        return segments[(int)(position >>> SEGMENT_SHIFT)].getInt((int)(position & SEGMENT_MASK));
+    }
+}
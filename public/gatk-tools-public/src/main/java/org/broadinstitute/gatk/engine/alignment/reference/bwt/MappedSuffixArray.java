@@ -0,0 +1,149 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.alignment.reference.bwt;
+
+import org.broadinstitute.gatk.engine.alignment.reference.packing.PackUtils;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A suffix array that is memory-mapped from a BWA-format .sa file.  Stored entries are read in place; the
+ * remaining entries are inferred from the BWT exactly as in {@link SuffixArray}.
+ */
+public class MappedSuffixArray extends SuffixArray {
+    /**
+     * Size of the header: inverse SA0, the four cumulative counts and the sampling interval.
+     */
+    private static final int HEADER_SIZE = (2 + PackUtils.ALPHABET_SIZE) * 4;
+
+    /**
+     * Every open mapping, keyed by canonical path, so that aligners over the same index share a single mapping.
+     */
+    private static final Map<String,WeakReference<MappedSuffixArray>> openSuffixArrays = new HashMap<String,WeakReference<MappedSuffixArray>>();
+
+    /**
+     * The mapped file.
+     */
+    private final MappedIndexFile file;
+
+    /**
+     * Modification time of the file at the time it was mapped.
+     */
+    private final long lastModified;
+
+    /**
+     * Number of entries stored in the file.
+     */
+    private final long storedEntries;
+
+    /**
+     * Map the given suffix array file.  Prefer {@link #open(File,BWT)}, which reuses existing mappings.
+     * @param suffixArrayFile BWA-format .sa file.
+     * @param bwt BWT to use when filling in missing data.
+     */
+    public MappedSuffixArray(File suffixArrayFile, BWT bwt) {
+        this(new MappedIndexFile(suffixArrayFile), suffixArrayFile.lastModified(), bwt);
+    }
+
+    private MappedSuffixArray(MappedIndexFile file, long lastModified, BWT bwt) {
+        super(readInverseSA0(file), new Counts(readOccurrences(file), true), null, (int)file.getUnsignedInt(HEADER_SIZE-4), bwt);
+        this.file = file;
+        this.lastModified = lastModified;
+
+        if(sequenceInterval <= 0)
+            throw new ReviewedGATKException(String.format("Suffix array %s has invalid sampling interval %d", file.getFile(), sequenceInterval));
+        long total = readOccurrences(file)[PackUtils.ALPHABET_SIZE-1];
+        storedEntries = (total+sequenceInterval-1)/sequenceInterval;
+        file.checkLength(HEADER_SIZE + storedEntries*4, String.format("A suffix array of %d entries", storedEntries));
+    }
+
+    /**
+     * Gets the mapped suffix array for the given file, mapping it if no live aligner is already using it.
+     * @param suffixArrayFile BWA-format .sa file.
+     * @param bwt BWT to use when filling in missing data.
+     * @return A mapped suffix array, possibly shared with other callers.
+     */
+    public static MappedSuffixArray open(File suffixArrayFile, BWT bwt) {
+        String key = MappedIndexFile.canonicalPath(suffixArrayFile);
+        synchronized(openSuffixArrays) {
+            WeakReference<MappedSuffixArray> reference = openSuffixArrays.get(key);
+            MappedSuffixArray suffixArray = reference != null ? reference.get() : null;
+            if(suffixArray == null || suffixArray.bwt != bwt || !suffixArray.isCurrent()) {
+                suffixArray = new MappedSuffixArray(suffixArrayFile,bwt);
+                openSuffixArrays.put(key,new WeakReference<MappedSuffixArray>(suffixArray));
+            }
+            return suffixArray;
+        }
+    }
+
+    @Override
+    public long length() {
+        if( bwt != null )
+            return bwt.length()+1;
+        else
+            return storedEntries;
+    }
+
+    @Override
+    public long get(long index) {
+        int iterations = 0;
+        while(index%sequenceInterval != 0) {
+            // The inverseSA0 ('$') doesn't have a usable ASCII representation; it must be treated as a special case.
+            if(index == inverseSA0)
+                index = 0;
+            else {
+                byte base = bwt.getBase(index);
+                index = bwt.counts(base) + bwt.occurrences(base,index);
+            }
+            iterations++;
+        }
+        return (file.getUnsignedInt(HEADER_SIZE + (index/sequenceInterval)*4)+iterations) % length();
+    }
+
+    /**
+     * Has the underlying file been left unchanged since it was mapped?
+     * @return True if the mapping still reflects the file on disk.
+     */
+    private boolean isCurrent() {
+        return file.getFile().lastModified() == lastModified && file.getFile().length() == file.length();
+    }
+
+    private static long readInverseSA0(MappedIndexFile file) {
+        file.checkLength(HEADER_SIZE,"A suffix array header");
+        return file.getUnsignedInt(0);
+    }
+
+    private static long[] readOccurrences(MappedIndexFile file) {
+        long[] occurrences = new long[PackUtils.ALPHABET_SIZE];
+        for(int i = 0; i < occurrences.length; i++)
+            occurrences[i] = file.getUnsignedInt(4 + i*4);
+        return occurrences;
+    }
+}
@@ -34,6 +34,8 @@ import org.broadinstitute.gatk.engine.phonehome.GATKRunReport;
 import org.broadinstitute.gatk.engine.samples.PedigreeValidationType;
 import org.broadinstitute.gatk.utils.QualityUtils;
 import org.broadinstitute.gatk.utils.baq.BAQ;
+import org.broadinstitute.gatk.utils.nanoScheduler.NSExecutionMode;
+import org.broadinstitute.gatk.utils.progressmeter.ProgressMetricsWriter;
 import org.broadinstitute.gatk.utils.variant.GATKVCFIndexType;
 import org.broadinstitute.gatk.utils.variant.GATKVCFUtils;
 
@@ -300,6 +302,28 @@ public class GATKArgumentCollection {
     @Argument(fullName = "performanceLog", shortName="PF", doc="Write GATK runtime performance log to this file", required = false)
     public File performanceLog = null;
 
+    /**
+     * The file to which machine-readable progress metrics are exported, or null if they shouldn't be exported.
+     * Besides the progress shown in the log (units and bp processed per second, percent complete and estimated
+     * remaining runtime) the metrics include heap use, garbage collection time, the queue depths of the nano
+     * scheduler and, with -nt, the shard timings of the microscheduler.
+     */
+    @Advanced
+    @Argument(fullName = "progress_metrics_file", shortName = "PMF", doc = "Export progress metrics to this file", required = false)
+    public File progressMetricsFile = null;
+
+    /**
+     * JSON_LINES appends a JSON object per export to the metrics file, while PROMETHEUS rewrites it with each export
+     * in the Prometheus text format, for the node exporter textfile collector.
+     */
+    @Advanced
+    @Argument(fullName = "progress_metrics_format", shortName = "PMFormat", doc = "Format of the progress metrics file", required = false)
+    public ProgressMetricsWriter.Format progressMetricsFormat = ProgressMetricsWriter.Format.JSON_LINES;
+
+    @Advanced
+    @Argument(fullName = "progress_metrics_interval", shortName = "PMInterval", doc = "Seconds between exports of progress metrics", required = false, minValue = 1)
+    public int progressMetricsIntervalSeconds = 10;
+
     // --------------------------------------------------------------------------------------------------------------
     //
     // BQSR arguments
@@ -407,6 +431,32 @@ public class GATKArgumentCollection {
               required = false)
     public boolean disableAutoIndexCreationAndLockingWhenReadingRods = false;
 
+    /**
+     * Keep the Tribble indices of ROD tracks, already validated against the reference's sequence dictionary, in this
+     * directory.  Later runs against the same reference load the indices of unchanged files straight from the cache,
+     * skipping both index creation and dictionary validation.  The directory may be shared by concurrent runs.
+     *
+     * With this argument, the ROD files of a run are also opened in parallel, one thread per file up to the number of
+     * processors.
+     */
+    @Advanced
+    @Argument(fullName = "tribble_index_cache", shortName = "indexCache",
+              doc = "Directory in which to cache validated Tribble indices of ROD files between runs",
+              required = false)
+    public File tribbleIndexCacheDirectory = null;
+
+    /**
+     * A tab separated file of intervals and the seconds an earlier run spent processing each of them, used to
+     * predict how long each region will take.  Giving a table turns on --cost_balanced_shards, estimating the cost
+     * of regions from the BAM indices where the table has no timing for them.  Queue's CostScatterFunction uses the
+     * same table to balance its scatter parts.
+     */
+    @Advanced
+    @Input(fullName = "interval_cost_table", shortName = "costTable",
+           doc = "Per-interval runtimes of an earlier run, used to balance shards and scatter parts by expected cost",
+           required = false)
+    public File intervalCostTable = null;
+
     @Hidden
     @Argument(fullName = "no_cmdline_in_header", shortName = "no_cmdline_in_header", doc = "Don't output the usual VCF header tag with the command line. FOR DEBUGGING PURPOSES ONLY. This option is required in order to pass integration tests.",
               required = false)
@@ -466,6 +516,37 @@ public class GATKArgumentCollection {
     @Argument(fullName = "num_threads", shortName = "nt", doc = "Number of data threads to allocate to this analysis", required = false, minValue = 1)
     public Integer numberOfDataThreads = 1;
 
+    /**
+     * By default each data thread traverses whole shards.  With this option, threads that run out of shards split
+     * the remaining loci of shards still being traversed and take over part of them, so a few expensive shards
+     * don't leave the other data threads idle at the end of the run.  Only has an effect with -nt > 1.
+     */
+    @Advanced
+    @Argument(fullName = "nt_work_stealing", shortName = "ntws", doc = "Let idle data threads split and take over part of the shards of other data threads", required = false)
+    public boolean workStealingDataThreads = false;
+
+    /**
+     * By default the shards of a locus walker are made from the intervals alone, or cover a fixed number of loci
+     * when there are no intervals.  With this option and -nt > 1, the engine combines cheap neighbouring shards over
+     * intervals until they are expected to take about as long as the expensive ones, estimating the cost of each
+     * region from the compressed size of its reads in the BAM indices, or from --interval_cost_table when given.
+     * Without intervals, shards are instead cut to span about the same number of compressed bytes of the BAMs.
+     * Only has an effect with indexed BAMs.
+     */
+    @Advanced
+    @Argument(fullName = "cost_balanced_shards", shortName = "costShards", doc = "Balance locus shards by the expected cost of their regions rather than by their size", required = false)
+    public boolean costBalancedShards = false;
+
+    /**
+     * Log, for every locus shard, the compressed bytes of BAM it spans, the time predicted for it from those bytes
+     * and the time its traversal actually took, and summarize how well the bytes predicted the times at the end of
+     * the run.  Useful for checking that shards balanced by their compressed size with --cost_balanced_shards take
+     * about as long on your data.
+     */
+    @Advanced
+    @Argument(fullName = "shard_cost_diagnostics", shortName = "shardDiagnostics", doc = "Log the predicted and actual traversal time of every locus shard", required = false)
+    public boolean shardCostDiagnostics = false;
+
     /**
      * Each CPU thread operates the map cycle independently, but may run into earlier scaling problems with IO than
      * data threads. Has the benefit of not requiring X times as much memory per thread as data threads do, but rather
@@ -474,6 +555,17 @@ public class GATKArgumentCollection {
     @Argument(fullName="num_cpu_threads_per_data_thread", shortName = "nct", doc="Number of CPU threads to allocate per data thread", required = false, minValue = 1)
     public int numberOfCPUThreadsPerDataThread = 1;
 
+    /**
+     * Controls how the -nct CPU threads of each data thread share their work.  PER_ELEMENT hands a single
+     * locus, read or active region to a thread at a time.  BATCHED hands out adaptively sized batches of
+     * them and collects the map results without locking, which reduces the time threads spend contending
+     * with each other when map calls are very cheap (e.g. loci with low coverage) and -nct is large.
+     * Output is identical in both modes, as results are always reduced in input order.
+     */
+    @Advanced
+    @Argument(fullName="nct_execution_mode", shortName = "nctMode", doc="How to distribute work among the CPU threads of each data thread", required = false)
+    public NSExecutionMode nanoSchedulerExecutionMode = NSExecutionMode.PER_ELEMENT;
+
     @Argument(fullName="num_io_threads", shortName = "nit", doc="Number of given threads to allocate to IO", required = false, minValue = 0)
     @Hidden
     public int numberOfIOThreads = 0;
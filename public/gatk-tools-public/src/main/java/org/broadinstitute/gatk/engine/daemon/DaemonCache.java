@@ -0,0 +1,161 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.daemon;
+
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Process-wide cache of expensive, read-only engine resources (the reference and its dictionary, Tribble indices)
+ * that a long-lived GATK daemon keeps warm between runs.
+ *
+ * The cache is disabled by default, so an ordinary command line run loads everything afresh exactly as before.  Each
+ * entry is keyed by a kind and the canonical paths of the files it was loaded from, and remembers their size and
+ * modification time; an entry whose files have changed on disk is reloaded on its next use.  Loads of the same key
+ * are serialized, loads of different keys run concurrently.
+ *
+ * Values handed out by the cache are shared by every run in the daemon, so only objects that are safe to use from
+ * several engines at once should be cached.
+ */
+public final class DaemonCache {
+    private static final Logger logger = Logger.getLogger(DaemonCache.class);
+
+    /**
+     * Loads a value that has not been cached yet, or whose files have changed.
+     * @param <T> type of the value
+     */
+    public interface Loader<T> {
+        T load() throws IOException;
+    }
+
+    private static volatile boolean enabled = false;
+
+    private static final ConcurrentMap<String,Entry> entries = new ConcurrentHashMap<String,Entry>();
+
+    private DaemonCache() {}
+
+    /**
+     * @return true if resources should be shared through this cache
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns the cache on or off.  Turning it off drops every cached value.
+     * @param enable true to share resources between runs
+     */
+    public static void setEnabled(final boolean enable) {
+        enabled = enable;
+        if ( ! enable )
+            entries.clear();
+    }
+
+    /**
+     * @return the number of values currently cached
+     */
+    public static int size() {
+        return entries.size();
+    }
+
+    /**
+     * Get the cached value of the given kind for the given files, loading it if it is not cached or any of the files
+     * has changed since it was loaded.  If the cache is disabled the loader is simply run.
+     *
+     * The files are stamped after the loader has run, so a file the loader itself writes (such as a freshly created
+     * Tribble index) does not invalidate the entry it belongs to.
+     *
+     * @param kind   what is being cached, kept apart from other kinds loaded from the same files
+     * @param loader loads the value
+     * @param files  the files the value is loaded from
+     * @param <T>    type of the value
+     * @return the cached or freshly loaded value
+     * @throws IOException if the loader fails
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T get(final String kind, final Loader<T> loader, final File... files) throws IOException {
+        if ( kind == null ) throw new IllegalArgumentException("kind cannot be null");
+        if ( loader == null ) throw new IllegalArgumentException("loader cannot be null");
+        if ( files.length == 0 ) throw new IllegalArgumentException("at least one file is required");
+
+        if ( ! enabled )
+            return loader.load();
+
+        final StringBuilder key = new StringBuilder(kind);
+        for ( final File file : files )
+            key.append('\t').append(canonicalPath(file));
+
+        Entry entry = entries.get(key.toString());
+        if ( entry == null ) {
+            final Entry created = new Entry();
+            entry = entries.putIfAbsent(key.toString(), created);
+            if ( entry == null )
+                entry = created;
+        }
+
+        synchronized (entry) {
+            if ( entry.value == null || ! Arrays.equals(entry.stamps, stamp(files)) ) {
+                if ( entry.value != null )
+                    logger.info(String.format("Reloading %s for %s, which has changed on disk", kind, files[0]));
+                entry.value = null;
+                entry.value = loader.load();
+                entry.stamps = stamp(files);
+            }
+            return (T)entry.value;
+        }
+    }
+
+    /**
+     * @param files the files to stamp
+     * @return the size and modification time of each file, zero for files that do not exist
+     */
+    private static long[] stamp(final File[] files) {
+        final long[] stamps = new long[files.length * 2];
+        for ( int i = 0; i < files.length; i++ ) {
+            stamps[2*i] = files[i].length();
+            stamps[2*i+1] = files[i].lastModified();
+        }
+        return stamps;
+    }
+
+    private static String canonicalPath(final File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    private static final class Entry {
+        private Object value;
+        private long[] stamps;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.daemon;
+
+import java.io.*;
+
+/**
+ * The wire format spoken between GATKDaemonClient and GATKDaemon over a loopback socket.
+ *
+ * The client sends a single request: the protocol magic and version, the access token read from the daemon file,
+ * its working directory and the GATK command line.  The daemon answers with a stream of frames, each a channel byte
+ * followed by a payload: stdout and stderr frames carry a length and that many bytes, and the final exit frame
+ * carries the run's exit status.
+ */
+final class DaemonProtocol {
+    static final int MAGIC = 0x4741544B; // "GATK"
+    static final int VERSION = 1;
+
+    static final byte STDOUT = 1;
+    static final byte STDERR = 2;
+    static final byte EXIT = 3;
+
+    /** System property naming the daemon file, defaulting to .gatk_daemon in the user's home directory */
+    static final String DAEMON_FILE_PROPERTY = "gatk.daemon.file";
+
+    private DaemonProtocol() {}
+
+    /**
+     * @return the file a daemon advertises its port and access token in, unless told otherwise
+     */
+    static File getDefaultDaemonFile() {
+        final String path = System.getProperty(DAEMON_FILE_PROPERTY);
+        return path != null ? new File(path) : new File(System.getProperty("user.home"), ".gatk_daemon");
+    }
+
+    /**
+     * A request to run the GATK with the given arguments
+     */
+    static final class Request {
+        final String token;
+        final String workingDirectory;
+        final String[] args;
+
+        Request(final String token, final String workingDirectory, final String[] args) {
+            this.token = token;
+            this.workingDirectory = workingDirectory;
+            this.args = args;
+        }
+
+        void write(final DataOutputStream out) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(token);
+            out.writeUTF(workingDirectory);
+            out.writeInt(args.length);
+            for ( final String arg : args )
+                out.writeUTF(arg);
+            out.flush();
+        }
+
+        static Request read(final DataInputStream in) throws IOException {
+            if ( in.readInt() != MAGIC )
+                throw new IOException("Not a GATK daemon request");
+            final int version = in.readInt();
+            if ( version != VERSION )
+                throw new IOException(String.format("GATK daemon protocol version %d is not supported, expected %d", version, VERSION));
+            final String token = in.readUTF();
+            final String workingDirectory = in.readUTF();
+            final int count = in.readInt();
+            if ( count < 0 )
+                throw new IOException("Negative argument count " + count);
+            final String[] args = new String[count];
+            for ( int i = 0; i < count; i++ )
+                args[i] = in.readUTF();
+            return new Request(token, workingDirectory, args);
+        }
+    }
+
+    /**
+     * Writes the final frame of a response
+     */
+    static void writeExit(final DataOutputStream out, final int status) throws IOException {
+        synchronized (out) {
+            out.writeByte(EXIT);
+            out.writeInt(status);
+            out.flush();
+        }
+    }
+
+    /**
+     * Copies response frames to the given streams until the exit frame arrives.
+     *
+     * @return the exit status of the run
+     * @throws EOFException if the daemon hangs up before sending an exit status
+     */
+    static int readResponse(final DataInputStream in, final OutputStream out, final OutputStream err) throws IOException {
+        byte[] buffer = new byte[8192];
+        while ( true ) {
+            final byte channel = in.readByte();
+            if ( channel == EXIT ) {
+                out.flush();
+                err.flush();
+                return in.readInt();
+            }
+            if ( channel != STDOUT && channel != STDERR )
+                throw new IOException("Unknown GATK daemon response channel " + channel);
+
+            final int length = in.readInt();
+            if ( length > buffer.length )
+                buffer = new byte[length];
+            in.readFully(buffer, 0, length);
+            final OutputStream target = channel == STDOUT ? out : err;
+            target.write(buffer, 0, length);
+            target.flush();
+        }
+    }
+
+    /**
+     * An output stream that sends everything written to it as frames on one channel of a response.  Once closed it
+     * silently drops further writes, as it does when the client has gone away.
+     */
+    static final class FrameOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte channel;
+        private volatile boolean closed = false;
+
+        FrameOutputStream(final DataOutputStream out, final byte channel) {
+            this.out = out;
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            write(new byte[] { (byte)b }, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+            if ( closed || length == 0 )
+                return;
+            synchronized (out) {
+                try {
+                    out.writeByte(channel);
+                    out.writeInt(length);
+                    out.write(bytes, offset, length);
+                    out.flush();
+                } catch (IOException e) {
+                    // the client hung up; there is no one left to report to, so let the run finish quietly
+                    closed = true;
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,641 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.daemon;
+
+import org.apache.log4j.Appender;
+import org.apache.log4j.ConsoleAppender;
+import org.apache.log4j.Logger;
+import org.broadinstitute.gatk.engine.CommandLineGATK;
+import org.broadinstitute.gatk.engine.GenomeAnalysisEngine;
+import org.broadinstitute.gatk.utils.commandline.Argument;
+import org.broadinstitute.gatk.utils.commandline.CommandLineProgram;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.threading.NamedThreadFactory;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.Permission;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A long-lived GATK server that runs walkers on behalf of GATKDaemonClient.
+ *
+ * The daemon keeps a warm JVM between runs: the reference, its dictionary and GenomeLocParser, and loaded Tribble
+ * indices are shared through DaemonCache, plugin metadata is loaded once, and the JIT keeps whatever it compiled for
+ * earlier runs.  Each run gets a fresh CommandLineGATK, and so a fresh GenomeAnalysisEngine, on a thread of its own,
+ * with its own random number generator seeded exactly as in a fresh JVM; up to max_concurrent_runs runs execute at
+ * once and further requests wait their turn.  A run's stdout, stderr and console logging go back to the client that
+ * requested it, and System.exit() from the run ends just that run, with the status forwarded to the client.
+ *
+ * The daemon only listens on the loopback interface.  On start up it writes its port and a random access token to
+ * the daemon file, readable only by its owner, and refuses requests without that token.  Runs are resolved against
+ * the daemon's working directory, so it refuses requests from clients in any other directory.
+ *
+ * Engine settings that used to live in static state are kept per run: the read shard buffer size belongs to the
+ * run's SAMDataSource and the result of CommandLineProgram.start() to the thread that called it.  What is still
+ * shared by concurrent runs is the rest of the static state: log4j logger levels, which the last run to start sets
+ * for everyone, and process-wide counters such as the PairHMM cell totals, which sum the work of every run.
+ *
+ * The same isolation is available without a server through runInProcess(), which Queue uses to run GATK functions
+ * in its own JVM.
+ *
+ * To route output and trap System.exit(), the JVM's System.out, System.err, console log appenders and security
+ * manager are replaced while any run is executing, and restored when the last run ends.
+ */
+public class GATKDaemon extends CommandLineProgram {
+    private static final Logger logger = Logger.getLogger(GATKDaemon.class);
+
+    @Argument(fullName = "port", shortName = "port", doc = "Loopback port to listen on; 0 picks a free port", required = false)
+    public int port = 0;
+
+    @Argument(fullName = "max_concurrent_runs", shortName = "maxRuns", doc = "Maximum number of GATK runs to execute at once", required = false)
+    public int maxConcurrentRuns = Runtime.getRuntime().availableProcessors();
+
+    @Argument(fullName = "daemon_file", shortName = "daemonFile", doc = "File to advertise the port and access token in; defaults to ~/.gatk_daemon, or the gatk.daemon.file system property", required = false)
+    public File daemonFile = DaemonProtocol.getDefaultDaemonFile();
+
+    /** The runs in progress, by the thread group their threads belong to */
+    private static final ConcurrentMap<ThreadGroup,Run> runs = new ConcurrentHashMap<ThreadGroup,Run>();
+
+    /** The number of runs executing with the hooks installed; guarded by the class */
+    private static int hookUsers = 0;
+
+    /** What the hooks replaced, restored once the last run using them ends */
+    private static PrintStream originalOut;
+    private static PrintStream originalErr;
+    private static final List<ConsoleAppender> redirectedAppenders = new ArrayList<ConsoleAppender>();
+    private static Thread usageSampler;
+
+    /** How often the CPU time and allocation of the threads of each run are sampled */
+    private static final long USAGE_SAMPLE_INTERVAL_MS = 500;
+
+    private static final AtomicInteger runCount = new AtomicInteger();
+    private final String token = new BigInteger(128, new SecureRandom()).toString(16);
+    private String workingDirectory;
+    private ServerSocket serverSocket;
+    private ExecutorService runExecutor;
+    private Thread acceptor;
+
+    @Override
+    protected int execute() throws Exception {
+        startServer();
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                shutdown();
+            }
+        }, "GATK-daemon-shutdown"));
+        acceptor.join();
+        return 0;
+    }
+
+    /**
+     * Start accepting runs on a background thread
+     *
+     * @throws IOException if the server socket or the daemon file cannot be created
+     */
+    public synchronized void startServer() throws IOException {
+        if ( serverSocket != null ) throw new IllegalStateException("The GATK daemon has already been started");
+        if ( maxConcurrentRuns < 1 ) throw new UserException.BadArgumentValue("max_concurrent_runs", "must be at least 1, but was " + maxConcurrentRuns);
+
+        checkNoSecurityManager();
+        DaemonCache.setEnabled(true);
+
+        workingDirectory = new File(".").getCanonicalPath();
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        writeDaemonFile();
+        runExecutor = Executors.newFixedThreadPool(maxConcurrentRuns, new NamedThreadFactory("GATK-daemon-connection-%d"));
+
+        acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        }, "GATK-daemon-acceptor");
+        acceptor.start();
+
+        logger.info(String.format("GATK daemon listening on port %d in %s, running at most %d runs at once",
+                getPort(), workingDirectory, maxConcurrentRuns));
+    }
+
+    /**
+     * @return the port the daemon is listening on
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stop accepting runs and remove the daemon file.  Runs in progress are allowed to finish.
+     */
+    public synchronized void shutdown() {
+        if ( serverSocket == null || serverSocket.isClosed() )
+            return;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            logger.warn("Unable to close the GATK daemon socket", e);
+        }
+        runExecutor.shutdown();
+        if ( ! daemonFile.delete() )
+            logger.warn("Unable to remove the GATK daemon file " + daemonFile);
+    }
+
+    /**
+     * Wait for the runs in progress when shutdown was called to finish
+     *
+     * @param timeout how long to wait
+     * @param unit    units of timeout
+     * @return true if every run finished in time
+     */
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return runExecutor.awaitTermination(timeout, unit);
+    }
+
+    private void acceptConnections() {
+        while ( ! serverSocket.isClosed() ) {
+            try {
+                final Socket socket = serverSocket.accept();
+                runExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                });
+            } catch (SocketException e) {
+                // the socket was closed by shutdown()
+            } catch (IOException e) {
+                logger.warn("Unable to accept a GATK daemon connection", e);
+            }
+        }
+    }
+
+    /**
+     * Read one request from the socket, check it and run it
+     */
+    private void serve(final Socket socket) {
+        try {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            final DaemonProtocol.Request request = DaemonProtocol.Request.read(in);
+
+            final String error;
+            if ( ! token.equals(request.token) )
+                error = "The access token does not match the one in " + daemonFile + "; is another GATK daemon running?";
+            else if ( ! workingDirectory.equals(request.workingDirectory) )
+                error = "This GATK daemon runs in " + workingDirectory + " and cannot resolve paths relative to " + request.workingDirectory + "; run it from the daemon's directory";
+            else
+                error = null;
+
+            if ( error != null ) {
+                logger.warn("Refusing GATK daemon request: " + error);
+                final PrintStream err = new PrintStream(new DaemonProtocol.FrameOutputStream(out, DaemonProtocol.STDERR), true);
+                err.println("##### ERROR " + error);
+                DaemonProtocol.writeExit(out, 1);
+            } else {
+                DaemonProtocol.writeExit(out, run(request.args,
+                        new DaemonProtocol.FrameOutputStream(out, DaemonProtocol.STDOUT),
+                        new DaemonProtocol.FrameOutputStream(out, DaemonProtocol.STDERR)));
+            }
+        } catch (IOException e) {
+            logger.warn("GATK daemon connection failed: " + e.getMessage());
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // nothing left to do with this connection
+            }
+        }
+    }
+
+    /**
+     * Run the GATK with the given arguments on a thread group of its own, sending its output to the client
+     *
+     * @return the exit status of the run
+     */
+    private int run(final String[] args, final OutputStream out, final OutputStream err) {
+        final long startTime = System.currentTimeMillis();
+        final int id = runCount.incrementAndGet();
+        logger.info(String.format("Starting run %d: %s", id, join(args)));
+        final int status = run(id, args, out, err).getExitStatus();
+        logger.info(String.format("Finished run %d with status %d in %.1f s", id, status, (System.currentTimeMillis() - startTime) / 1000.0));
+        return status;
+    }
+
+    /**
+     * Run the GATK in this JVM, isolated from other runs in the same way as the runs of a daemon.
+     *
+     * The reference, its dictionary and Tribble indices are shared with other runs through DaemonCache, which this
+     * enables.  Output of the run's threads goes to out and err, which are not closed; System.exit() from the run
+     * ends just the run.  Several runs may execute at once on different threads.
+     *
+     * @param args GATK command line arguments
+     * @param out  receives the run's stdout
+     * @param err  receives the run's stderr
+     * @return the exit status and resource usage of the run
+     */
+    public static GATKRunResult runInProcess(final String[] args, final OutputStream out, final OutputStream err) {
+        if ( args == null ) throw new IllegalArgumentException("args cannot be null");
+        if ( out == null ) throw new IllegalArgumentException("out cannot be null");
+        if ( err == null ) throw new IllegalArgumentException("err cannot be null");
+
+        DaemonCache.setEnabled(true);
+        return run(runCount.incrementAndGet(), args, out, err);
+    }
+
+    private static GATKRunResult run(final int id, final String[] args, final OutputStream out, final OutputStream err) {
+        final ThreadGroup group = new ThreadGroup("GATK-run-" + id) {
+            @Override
+            public void uncaughtException(final Thread thread, final Throwable throwable) {
+                // threads left behind are interrupted when the run ends; like the rest of their output, drop what they report
+                if ( runs.containsKey(this) )
+                    super.uncaughtException(thread, throwable);
+            }
+        };
+        group.setDaemon(true);
+        final Run run = new Run(out, err, new ThreadGroupUsage(group));
+        installHooks();
+        runs.put(group, run);
+
+        final long startTime = System.currentTimeMillis();
+        try {
+            final Thread runner = new Thread(group, new Runnable() {
+                @Override
+                public void run() {
+                    GenomeAnalysisEngine.isolateRandomGenerator();
+                    try {
+                        CommandLineGATK.main(args);
+                    } catch (ExitException e) {
+                        // the exit status was recorded by the ExitTrap
+                    } catch (Throwable t) {
+                        t.printStackTrace();
+                        run.exit(1);
+                    } finally {
+                        // the runner's own usage can only be read while it is alive
+                        run.usage.sample();
+                    }
+                }
+            }, "GATK-run-" + id);
+            runner.start();
+            runner.join();
+        } catch (InterruptedException e) {
+            run.exit(1);
+        } finally {
+            // stop anything the run left behind, and cut it off from the client
+            run.usage.sample();
+            group.interrupt();
+            runs.remove(group);
+            run.close();
+            uninstallHooks();
+        }
+
+        return new GATKRunResult(run.getExitStatus(), System.currentTimeMillis() - startTime,
+                run.usage.getCpuTimeNanos(), run.usage.getAllocatedBytes());
+    }
+
+    private void writeDaemonFile() throws IOException {
+        if ( daemonFile.exists() && ! daemonFile.delete() )
+            throw new UserException.CouldNotCreateOutputFile(daemonFile, "it already exists and cannot be removed");
+
+        if ( FileSystems.getDefault().supportedFileAttributeViews().contains("posix") )
+            Files.createFile(daemonFile.toPath(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+
+        final PrintWriter writer = new PrintWriter(new FileWriter(daemonFile));
+        try {
+            writer.println(getPort() + " " + token);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String join(final String[] args) {
+        final StringBuilder joined = new StringBuilder();
+        for ( final String arg : args )
+            joined.append(joined.length() == 0 ? "" : " ").append(arg);
+        return joined.toString();
+    }
+
+    /**
+     * @return the run the current thread belongs to, or null if it isn't part of a run
+     */
+    private static Run currentRun() {
+        for ( ThreadGroup group = Thread.currentThread().getThreadGroup(); group != null; group = group.getParent() ) {
+            final Run run = runs.get(group);
+            if ( run != null )
+                return run;
+        }
+        return null;
+    }
+
+    private static void checkNoSecurityManager() {
+        final SecurityManager securityManager = System.getSecurityManager();
+        if ( securityManager != null && ! (securityManager instanceof ExitTrap) )
+            throw new ReviewedGATKException("The GATK daemon cannot run under a security manager, as it needs to trap System.exit() from GATK runs");
+    }
+
+    /**
+     * Route System.out and System.err, including the console log, through the current run, and trap System.exit()
+     * from runs.  Installed by the first of the runs executing at once; every call must be matched by a call to
+     * uninstallHooks().
+     */
+    @SuppressWarnings("unchecked")
+    private static synchronized void installHooks() {
+        if ( hookUsers++ > 0 )
+            return;
+
+        try {
+            checkNoSecurityManager();
+        } catch (ReviewedGATKException e) {
+            hookUsers--;
+            throw e;
+        }
+
+        originalOut = System.out;
+        originalErr = System.err;
+        System.setOut(new PrintStream(new RoutingOutputStream(originalOut, DaemonProtocol.STDOUT), true));
+        System.setErr(new PrintStream(new RoutingOutputStream(originalErr, DaemonProtocol.STDERR), true));
+
+        // console appenders that don't follow System.out and System.err captured the original streams when they
+        // were created; point them at the new ones.  Their follow setting is left alone, as switching it to true
+        // would close the original streams along with the appender's writer.
+        for ( final Appender appender : Collections.list((Enumeration<Appender>)Logger.getRootLogger().getAllAppenders()) ) {
+            if ( appender instanceof ConsoleAppender && ! ((ConsoleAppender)appender).getFollow() ) {
+                redirectConsoleAppender((ConsoleAppender)appender);
+                redirectedAppenders.add((ConsoleAppender)appender);
+            }
+        }
+
+        System.setSecurityManager(new ExitTrap());
+
+        usageSampler = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                sampleUsage();
+            }
+        }, "GATK-run-usage");
+        usageSampler.setDaemon(true);
+        usageSampler.start();
+    }
+
+    /**
+     * Put back the streams, console appenders and security manager replaced by installHooks() once the last run
+     * using them has ended
+     */
+    private static synchronized void uninstallHooks() {
+        if ( hookUsers == 0 ) throw new IllegalStateException("The GATK run hooks are not installed");
+        if ( --hookUsers > 0 )
+            return;
+
+        usageSampler.interrupt();
+        usageSampler = null;
+
+        if ( System.getSecurityManager() instanceof ExitTrap )
+            System.setSecurityManager(null);
+
+        System.out.flush();
+        System.err.flush();
+        System.setOut(originalOut);
+        System.setErr(originalErr);
+        originalOut = null;
+        originalErr = null;
+
+        for ( final ConsoleAppender appender : redirectedAppenders )
+            redirectConsoleAppender(appender);
+        redirectedAppenders.clear();
+    }
+
+    /**
+     * Have a console appender that doesn't follow System.out and System.err write to their current values
+     */
+    private static void redirectConsoleAppender(final ConsoleAppender appender) {
+        final PrintStream stream = ConsoleAppender.SYSTEM_ERR.equals(appender.getTarget()) ? System.err : System.out;
+        try {
+            appender.setWriter(appender.getEncoding() == null ? new OutputStreamWriter(stream) : new OutputStreamWriter(stream, appender.getEncoding()));
+        } catch (UnsupportedEncodingException e) {
+            appender.setWriter(new OutputStreamWriter(stream));
+        }
+    }
+
+    /**
+     * Keep sampling the resource usage of the threads of each run, so that threads a run starts and stops before it
+     * ends are counted too
+     */
+    private static void sampleUsage() {
+        while ( true ) {
+            try {
+                Thread.sleep(USAGE_SAMPLE_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            for ( final Run run : runs.values() )
+                run.usage.sample();
+        }
+    }
+
+    /**
+     * Required main method implementation.
+     * @param argv Command-line argument text.
+     * @throws Exception on error.
+     */
+    public static void main(String[] argv) throws Exception {
+        int returnCode = 0;
+        try {
+            GATKDaemon instance = new GATKDaemon();
+            start(instance, argv);
+            returnCode = 0;
+        }
+        catch(Exception ex) {
+            returnCode = 1;
+            ex.printStackTrace();
+            throw ex;
+        }
+        finally {
+            System.exit(returnCode);
+        }
+    }
+
+    /**
+     * The client side of one run
+     */
+    private static final class Run {
+        private final DetachableOutputStream stdout;
+        private final DetachableOutputStream stderr;
+        private final ThreadGroupUsage usage;
+        private Integer exitStatus = null;
+
+        private Run(final OutputStream out, final OutputStream err, final ThreadGroupUsage usage) {
+            this.stdout = new DetachableOutputStream(out);
+            this.stderr = new DetachableOutputStream(err);
+            this.usage = usage;
+        }
+
+        private OutputStream getStream(final byte channel) {
+            return channel == DaemonProtocol.STDOUT ? stdout : stderr;
+        }
+
+        /**
+         * Record the exit status of the run.  Only the first exit counts: the GATK reports the error it is exiting
+         * with before calling System.exit(), so anything it prints while unwinding afterwards is dropped.
+         *
+         * @return the exit status of the run
+         */
+        private synchronized int exit(final int status) {
+            if ( exitStatus == null ) {
+                exitStatus = status;
+                close();
+            }
+            return exitStatus;
+        }
+
+        private synchronized int getExitStatus() {
+            return exitStatus == null ? 0 : exitStatus;
+        }
+
+        private void close() {
+            stdout.detach();
+            stderr.detach();
+        }
+    }
+
+    /**
+     * Passes writes on to a stream until detached, then drops them, leaving the stream itself open
+     */
+    private static final class DetachableOutputStream extends OutputStream {
+        private final OutputStream out;
+        private volatile boolean detached = false;
+
+        private DetachableOutputStream(final OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            if ( ! detached )
+                out.write(b);
+        }
+
+        @Override
+        public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+            if ( ! detached )
+                out.write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if ( ! detached )
+                out.flush();
+        }
+
+        private void detach() {
+            try {
+                flush();
+            } catch (IOException e) {
+                // the run is over, nothing more can be reported
+            }
+            detached = true;
+        }
+    }
+
+    /**
+     * Sends output to the run the writing thread belongs to, or to the daemon's own stream otherwise
+     */
+    private static final class RoutingOutputStream extends OutputStream {
+        private final OutputStream daemonStream;
+        private final byte channel;
+
+        private RoutingOutputStream(final OutputStream daemonStream, final byte channel) {
+            this.daemonStream = daemonStream;
+            this.channel = channel;
+        }
+
+        private OutputStream target() {
+            final Run run = currentRun();
+            return run == null ? daemonStream : run.getStream(channel);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            target().write(b);
+        }
+
+        @Override
+        public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+            target().write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target().flush();
+        }
+    }
+
+    /**
+     * Thrown in place of exiting the JVM when a run calls System.exit()
+     */
+    private static final class ExitException extends SecurityException {
+        private ExitException(final int status) {
+            super("GATK run exited with status " + status);
+        }
+    }
+
+    /**
+     * A security manager that allows everything, except exiting the JVM from a run
+     */
+    private static final class ExitTrap extends SecurityManager {
+        @Override
+        public void checkExit(final int status) {
+            final Run run = currentRun();
+            if ( run != null )
+                throw new ExitException(run.exit(status));
+        }
+
+        @Override
+        public void checkPermission(final Permission permission) {
+        }
+
+        @Override
+        public void checkPermission(final Permission permission, final Object context) {
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.daemon;
+
+import org.broadinstitute.gatk.engine.CommandLineGATK;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+
+import java.io.*;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Runs a GATK command line on a GATKDaemon, as a drop-in replacement for CommandLineGATK.
+ *
+ * The arguments are exactly those of CommandLineGATK.  The client finds the daemon through the daemon file
+ * (~/.gatk_daemon, or the file named by the gatk.daemon.file system property), copies the run's stdout and stderr to
+ * its own and exits with the run's exit status.  If no daemon is running the command is run in this JVM instead, so
+ * scripts work whether or not a daemon has been started.
+ */
+public class GATKDaemonClient {
+    /**
+     * Run the GATK with the given arguments on the daemon advertised in daemonFile
+     *
+     * @param daemonFile file the daemon wrote its port and access token to
+     * @param args       GATK command line arguments
+     * @param out        receives the run's stdout
+     * @param err        receives the run's stderr
+     * @return the exit status of the run
+     * @throws FileNotFoundException if there is no daemon file
+     * @throws ConnectException if no daemon is listening on the advertised port
+     * @throws IOException if the connection to the daemon fails
+     */
+    public static int runOnDaemon(final File daemonFile, final String[] args, final OutputStream out, final OutputStream err) throws IOException {
+        final BufferedReader reader = new BufferedReader(new FileReader(daemonFile));
+        final String[] portAndToken;
+        try {
+            final String line = reader.readLine();
+            portAndToken = line == null ? new String[0] : line.trim().split(" ");
+        } finally {
+            reader.close();
+        }
+        if ( portAndToken.length != 2 )
+            throw new UserException.MalformedFile(daemonFile, "expected the daemon's port and access token");
+
+        final int port;
+        try {
+            port = Integer.parseInt(portAndToken[0]);
+        } catch (NumberFormatException e) {
+            throw new UserException.MalformedFile(daemonFile, "the port " + portAndToken[0] + " is not a number", e);
+        }
+
+        final Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        try {
+            final DataOutputStream request = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            new DaemonProtocol.Request(portAndToken[1], new File(".").getCanonicalPath(), args).write(request);
+            return DaemonProtocol.readResponse(new DataInputStream(new BufferedInputStream(socket.getInputStream())), out, err);
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Required main method implementation.
+     * @param argv Command-line argument text.
+     * @throws Exception on error.
+     */
+    public static void main(String[] argv) throws Exception {
+        final int status;
+        try {
+            status = runOnDaemon(DaemonProtocol.getDefaultDaemonFile(), argv, System.out, System.err);
+        } catch (FileNotFoundException e) {
+            CommandLineGATK.main(argv);
+            return;
+        } catch (ConnectException e) {
+            System.err.println("No GATK daemon is listening, running the GATK in this JVM instead");
+            CommandLineGATK.main(argv);
+            return;
+        }
+        System.exit(status);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.daemon;
+
+/**
+ * The exit status and resource usage of a GATK run executed in process by GATKDaemon.runInProcess()
+ */
+public final class GATKRunResult {
+    private final int exitStatus;
+    private final long wallTimeMillis;
+    private final long cpuTimeNanos;
+    private final long allocatedBytes;
+
+    GATKRunResult(final int exitStatus, final long wallTimeMillis, final long cpuTimeNanos, final long allocatedBytes) {
+        this.exitStatus = exitStatus;
+        this.wallTimeMillis = wallTimeMillis;
+        this.cpuTimeNanos = cpuTimeNanos;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * @return the exit status of the run, 0 if it succeeded
+     */
+    public int getExitStatus() {
+        return exitStatus;
+    }
+
+    /**
+     * @return how long the run took in milliseconds
+     */
+    public long getWallTimeMillis() {
+        return wallTimeMillis;
+    }
+
+    /**
+     * @return the CPU time used by the threads of the run in nanoseconds, or -1 if the JVM cannot measure it
+     */
+    public long getCpuTimeNanos() {
+        return cpuTimeNanos;
+    }
+
+    /**
+     * @return the bytes allocated by the threads of the run, or -1 if the JVM cannot measure them
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("exit status %d, %.1f s, %.1f s CPU, %.1f MB allocated", exitStatus, wallTimeMillis / 1000.0,
+                cpuTimeNanos / 1e9, allocatedBytes / (1024.0 * 1024.0));
+    }
+}
@@ -0,0 +1,107 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.daemon;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tracks the CPU time used and the memory allocated by the threads of a thread group.
+ *
+ * The JVM only reports the usage of live threads, so the usage of each thread is sampled while it runs and its last
+ * sample counts once it has ended.  A thread that ends between samples is counted up to its last sample, and a thread
+ * that starts and ends between samples is not counted at all.
+ */
+final class ThreadGroupUsage {
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private final ThreadGroup group;
+
+    /** The last CPU time in nanoseconds and allocated bytes sampled for each thread, by thread id */
+    private final Map<Long,long[]> usageByThread = new HashMap<Long,long[]>();
+
+    ThreadGroupUsage(final ThreadGroup group) {
+        if ( group == null ) throw new IllegalArgumentException("group cannot be null");
+        this.group = group;
+    }
+
+    /**
+     * Record the usage of the live threads of the group and its subgroups
+     */
+    synchronized void sample() {
+        final Thread[] active = new Thread[group.activeCount() + 16];
+        final int n = group.enumerate(active, true);
+        for ( int i = 0; i < n; i++ ) {
+            final long id = active[i].getId();
+            final long cpuTime = isCpuTimeSupported() ? threads.getThreadCpuTime(id) : -1;
+            final long allocated = isAllocationSupported() ? ((com.sun.management.ThreadMXBean)threads).getThreadAllocatedBytes(id) : -1;
+            // a thread that ended since it was enumerated reports -1
+            if ( cpuTime < 0 && allocated < 0 )
+                continue;
+
+            long[] usage = usageByThread.get(id);
+            if ( usage == null ) {
+                usage = new long[2];
+                usageByThread.put(id, usage);
+            }
+            usage[0] = Math.max(usage[0], cpuTime);
+            usage[1] = Math.max(usage[1], allocated);
+        }
+    }
+
+    /**
+     * @return the CPU time used by the sampled threads in nanoseconds, or -1 if the JVM cannot measure it
+     */
+    synchronized long getCpuTimeNanos() {
+        return isCpuTimeSupported() ? sum(0) : -1;
+    }
+
+    /**
+     * @return the bytes allocated by the sampled threads, or -1 if the JVM cannot measure them
+     */
+    synchronized long getAllocatedBytes() {
+        return isAllocationSupported() ? sum(1) : -1;
+    }
+
+    private long sum(final int index) {
+        long total = 0;
+        for ( final long[] usage : usageByThread.values() )
+            total += usage[index];
+        return total;
+    }
+
+    private static boolean isCpuTimeSupported() {
+        return threads.isThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled();
+    }
+
+    private static boolean isAllocationSupported() {
+        return threads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean)threads).isThreadAllocatedMemorySupported()
+                && ((com.sun.management.ThreadMXBean)threads).isThreadAllocatedMemoryEnabled();
+    }
+}
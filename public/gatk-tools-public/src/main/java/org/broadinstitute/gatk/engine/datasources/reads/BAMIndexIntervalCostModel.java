@@ -0,0 +1,152 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.datasources.reads;
+
+import htsjdk.samtools.LinearIndex;
+import htsjdk.samtools.SamFiles;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.interval.IntervalCostModel;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Estimates the cost of processing a region from the number of compressed bytes of reads the BAM indices assign it.
+ *
+ * The linear index of a BAM gives, for each 16kb window of a contig, the file offset of the first read overlapping
+ * it, so the distance between the offsets of neighbouring windows approximates the compressed size of the reads in
+ * the window.  Those sizes are summed over all the BAMs and interpolated within each window.  Every base also costs
+ * a small fixed amount, so that regions without reads are still spread evenly over the parts.
+ */
+public class BAMIndexIntervalCostModel implements IntervalCostModel {
+    /** the default cost of a base, in compressed bytes, on top of the cost of its reads */
+    public static final double DEFAULT_COST_PER_BASE = 0.1;
+
+    private static final int WINDOW_SIZE = 1 << LinearIndex.BAM_LIDX_SHIFT;
+
+    /** for each contig, the total compressed bytes of the windows before each window, or null if there are none */
+    private final double[][] cumulativeBytes;
+    private final double costPerBase;
+
+    /**
+     * @param indices     the indices of the BAMs to be processed, all over the same reference
+     * @param costPerBase the cost of a base, in compressed bytes, on top of the cost of its reads
+     */
+    public BAMIndexIntervalCostModel(final Collection<GATKBAMIndex> indices, final double costPerBase) {
+        if ( indices == null ) throw new IllegalArgumentException("indices cannot be null");
+        if ( costPerBase < 0 ) throw new IllegalArgumentException("costPerBase must be >= 0 but got " + costPerBase);
+        this.costPerBase = costPerBase;
+
+        int numberOfReferences = 0;
+        for ( final GATKBAMIndex index : indices )
+            numberOfReferences = Math.max(numberOfReferences, index.getNumberOfReferences());
+
+        cumulativeBytes = new double[numberOfReferences][];
+        for ( final GATKBAMIndex index : indices ) {
+            for ( int contig = 0; contig < index.getNumberOfReferences(); contig++ )
+                cumulativeBytes[contig] = addWindowBytes(cumulativeBytes[contig], index.readReferenceSequence(contig).getLinearIndex().getIndexEntries());
+        }
+    }
+
+    /**
+     * Create a cost model from the indices of the BAMs, with the default cost per base
+     *
+     * @param bamFiles indexed BAM files over the same reference
+     * @return a new cost model
+     */
+    public static BAMIndexIntervalCostModel fromBAMFiles(final Collection<File> bamFiles) {
+        final List<GATKBAMIndex> indices = new ArrayList<GATKBAMIndex>(bamFiles.size());
+        for ( final File bamFile : bamFiles ) {
+            final File indexFile = SamFiles.findIndex(bamFile);
+            if ( indexFile == null )
+                throw new UserException.CouldNotReadInputFile(bamFile, "Unable to find the index of the BAM file");
+            indices.add(new GATKBAMIndex(indexFile));
+        }
+        return new BAMIndexIntervalCostModel(indices, DEFAULT_COST_PER_BASE);
+    }
+
+    /**
+     * Add the compressed bytes of each window given by a linear index to the cumulative bytes of a contig
+     *
+     * @param cumulative the cumulative bytes of the contig so far, or null if there are none yet
+     * @param entries    the virtual file offsets of the linear index of the contig in one BAM
+     * @return the new cumulative bytes of the contig
+     */
+    private static double[] addWindowBytes(final double[] cumulative, final long[] entries) {
+        if ( entries.length == 0 )
+            return cumulative;
+
+        // block addresses of the windows; windows without reads hold zero or a stale offset, so smooth them over
+        final long[] addresses = new long[entries.length];
+        long firstAddress = 0;
+        for ( final long entry : entries ) {
+            if ( entry != 0 ) {
+                firstAddress = entry >>> 16;
+                break;
+            }
+        }
+        long address = firstAddress;
+        for ( int i = 0; i < entries.length; i++ ) {
+            address = Math.max(address, entries[i] >>> 16);
+            addresses[i] = address;
+        }
+
+        // the last window has no next offset to measure against, so give it the average size of the others
+        final double lastWindowBytes = entries.length > 1 ? (addresses[entries.length - 1] - addresses[0]) / (double)(entries.length - 1) : 0;
+
+        final int windows = Math.max(entries.length, cumulative == null ? 0 : cumulative.length - 1);
+        final double[] result = new double[windows + 1];
+        for ( int w = 0; w < windows; w++ ) {
+            final double previous = cumulative == null ? 0 : cumulative[Math.min(w + 1, cumulative.length - 1)] - cumulative[Math.min(w, cumulative.length - 1)];
+            final double bytes = w + 1 < entries.length ? addresses[w + 1] - addresses[w] : (w + 1 == entries.length ? lastWindowBytes : 0);
+            result[w + 1] = result[w] + previous + bytes;
+        }
+        return result;
+    }
+
+    /**
+     * @return the estimated compressed bytes of reads in the positions of contig before position
+     */
+    private double bytesBefore(final double[] cumulative, final int position) {
+        final double window = (position - 1) / (double)WINDOW_SIZE;
+        final int w = (int)window;
+        if ( w >= cumulative.length - 1 )
+            return cumulative[cumulative.length - 1];
+        return cumulative[w] + (window - w) * (cumulative[w + 1] - cumulative[w]);
+    }
+
+    @Override
+    public double getCost(final GenomeLoc loc) {
+        double cost = costPerBase * loc.size();
+        final int contig = loc.getContigIndex();
+        if ( contig >= 0 && contig < cumulativeBytes.length && cumulativeBytes[contig] != null )
+            cost += bytesBefore(cumulativeBytes[contig], loc.getStop() + 1) - bytesBefore(cumulativeBytes[contig], loc.getStart());
+        return cost;
+    }
+}
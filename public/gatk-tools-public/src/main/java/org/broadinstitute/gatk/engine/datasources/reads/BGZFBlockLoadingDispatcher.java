@@ -25,15 +25,25 @@
 
 package org.broadinstitute.gatk.engine.datasources.reads;
 
+import org.apache.log4j.Logger;
 import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Preloads BGZF blocks in preparation for unzipping and data processing.
+ *
+ * Each of the numThreads block loaders claims a request, reads the compressed block with a positional read,
+ * inflates it into buffers that the loader reuses for every block, and copies the result into the requesting
+ * BlockInputStream.  Each BlockInputStream keeps at most one request in flight, issuing the next one as soon as
+ * it has room to read ahead, so the loaders work on different streams in parallel while each stream's blocks
+ * arrive in order.
+ *
  * TODO: Right now, the block loader has all threads blocked waiting for a work request.  Ultimately this should
  * TODO: be replaced with a central thread management strategy.
  */
@@ -45,14 +55,26 @@ public class BGZFBlockLoadingDispatcher {
 
     private final ExecutorService threadPool;
 
-    private final Queue<BAMAccessPlan> inputQueue;
+    private final BlockingQueue<BAMAccessPlan> inputQueue;
+
+    // statistics about the blocks loaded, for tuning the number of IO threads
+    private final AtomicInteger maxQueueDepth = new AtomicInteger(0);
+    private final AtomicLong numBlocksLoaded = new AtomicLong(0);
+    private final AtomicLong compressedBytesRead = new AtomicLong(0);
+    private final AtomicLong uncompressedBytesProduced = new AtomicLong(0);
+    private final AtomicLong readTimeNanos = new AtomicLong(0);
+    private final AtomicLong inflateTimeNanos = new AtomicLong(0);
+    private final AtomicLong stallTimeNanos = new AtomicLong(0);
 
     public BGZFBlockLoadingDispatcher(final int numThreads, final int numFileHandles) {
+        if ( numThreads < 1 ) throw new IllegalArgumentException("numThreads must be >= 1, got " + numThreads);
+
         threadPool = Executors.newFixedThreadPool(numThreads);
         fileHandleCache = new FileHandleCache(numFileHandles);
-        inputQueue = new LinkedList<BAMAccessPlan>();
+        inputQueue = new LinkedBlockingQueue<BAMAccessPlan>();
 
-        threadPool.execute(new BlockLoader(this,fileHandleCache,true));
+        for ( int i = 0; i < numThreads; i++ )
+            threadPool.execute(new BlockLoader(this,fileHandleCache,true));
     }
 
     /**
@@ -60,27 +82,123 @@ public class BGZFBlockLoadingDispatcher {
       * @param readerPosition Position at which to load.
      */
     void queueBlockLoad(final BAMAccessPlan readerPosition) {
-        synchronized(inputQueue) {
-            inputQueue.add(readerPosition);
-            inputQueue.notify();
-        }
+        inputQueue.add(readerPosition);
+
+        final int queueDepth = inputQueue.size();
+        int max;
+        while ( queueDepth > (max = maxQueueDepth.get()) && ! maxQueueDepth.compareAndSet(max, queueDepth) )
+            ;
     }
 
     /**
-     * Claims the next work request from the queue.
-     * @return The next work request, or null if none is available.
+     * Claims the next work request from the queue, waiting until one is available.
+     * @return The next work request.
      */
     BAMAccessPlan claimNextWorkRequest() {
-        synchronized(inputQueue) {
-            while(inputQueue.isEmpty()) {
-                try {
-                    inputQueue.wait();
-                }
-                catch(InterruptedException ex) {
-                    throw new ReviewedGATKException("Interrupt occurred waiting for next block reader work item");
-                }
-            }
-            return inputQueue.poll();
+        try {
+            return inputQueue.take();
         }
+        catch(InterruptedException ex) {
+            throw new ReviewedGATKException("Interrupt occurred waiting for next block reader work item");
+        }
+    }
+
+    /**
+     * Record that a block has been loaded.
+     * @param compressedBytes size of the block on disk.
+     * @param uncompressedBytes size of the block once inflated.
+     * @param readNanos time spent reading the block from disk.
+     * @param inflateNanos time spent inflating the block.
+     */
+    void reportBlockLoaded(final int compressedBytes, final int uncompressedBytes, final long readNanos, final long inflateNanos) {
+        numBlocksLoaded.incrementAndGet();
+        compressedBytesRead.addAndGet(compressedBytes);
+        uncompressedBytesProduced.addAndGet(uncompressedBytes);
+        readTimeNanos.addAndGet(readNanos);
+        inflateTimeNanos.addAndGet(inflateNanos);
+    }
+
+    /**
+     * Record that a consumer of a block input stream had to wait for a block to be loaded.
+     * @param nanos time spent waiting.
+     */
+    void reportStall(final long nanos) {
+        stallTimeNanos.addAndGet(nanos);
+    }
+
+    /**
+     * @return The number of block loads waiting for a loader thread.
+     */
+    public int getQueueDepth() {
+        return inputQueue.size();
+    }
+
+    /**
+     * @return The largest number of block loads that have been waiting for a loader thread at once.
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    /**
+     * @return The number of BGZF blocks loaded so far.
+     */
+    public long getNumBlocksLoaded() {
+        return numBlocksLoaded.get();
+    }
+
+    /**
+     * @return The total number of compressed bytes read from disk.
+     */
+    public long getCompressedBytesRead() {
+        return compressedBytesRead.get();
+    }
+
+    /**
+     * @return The total number of bytes produced by inflating blocks.
+     */
+    public long getUncompressedBytesProduced() {
+        return uncompressedBytesProduced.get();
+    }
+
+    /**
+     * @return The total time, summed over all loaders, spent reading compressed blocks from disk.
+     */
+    public long getReadTimeNanos() {
+        return readTimeNanos.get();
+    }
+
+    /**
+     * @return The total time, summed over all loaders, spent inflating blocks.
+     */
+    public long getInflateTimeNanos() {
+        return inflateTimeNanos.get();
+    }
+
+    /**
+     * @return The inflated MB produced per second of time spent inflating, by a single loader.
+     */
+    public double getInflateThroughputMBPerSecond() {
+        final long nanos = inflateTimeNanos.get();
+        return nanos == 0 ? 0.0 : (uncompressedBytesProduced.get() / (1024.0 * 1024.0)) / (nanos / 1e9);
+    }
+
+    /**
+     * @return The total time, summed over all consumers, spent waiting for blocks to be loaded.
+     */
+    public long getStallTimeNanos() {
+        return stallTimeNanos.get();
+    }
+
+    /**
+     * Print out a summary of the blocks loaded by this dispatcher.
+     * @param logger the logger to print to.
+     */
+    public void printStatistics(final Logger logger) {
+        logger.info(String.format("Asynchronous I/O: loaded %d BGZF blocks (%.2f MB compressed, %.2f MB inflated); " +
+                "read time %.2f s, inflate time %.2f s (%.2f MB/s), consumers stalled %.2f s waiting for blocks, max queue depth %d",
+                getNumBlocksLoaded(), getCompressedBytesRead() / (1024.0 * 1024.0), getUncompressedBytesProduced() / (1024.0 * 1024.0),
+                getReadTimeNanos() / 1e9, getInflateTimeNanos() / 1e9, getInflateThroughputMBPerSecond(),
+                getStallTimeNanos() / 1e9, getMaxQueueDepth()));
     }
 }
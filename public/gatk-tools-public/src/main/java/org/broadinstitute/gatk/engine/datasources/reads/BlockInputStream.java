@@ -40,8 +40,18 @@ import java.util.List;
 
 /**
  * Presents decompressed blocks to the SAMFileReader.
+ *
+ * The buffer holds several blocks, so that the next block can be loaded while the reader consumes the
+ * current one.  At most one block load is in flight for a stream at a time, as each load advances the
+ * access plan that the next load depends on.
  */
 public class BlockInputStream extends InputStream {
+    /**
+     * How many blocks the buffer can hold.  Once there is room for a whole block, beyond the block
+     * currently being read, the next block is requested.
+     */
+    private static final int BUFFER_SIZE_IN_BLOCKS = 4;
+
     /**
      * Mechanism for triggering block loads.
      */
@@ -92,6 +102,11 @@ public class BlockInputStream extends InputStream {
      */
     private final BlockCompressedInputStream validatingInputStream;
 
+    /**
+     * Whether a block load has been queued for this stream and has not yet arrived.  Guarded by lock.
+     */
+    private boolean blockLoadPending = false;
+
     /**
      * Create a new block presenting input stream with a dedicated buffer.
      * @param dispatcher the block loading messenger.
@@ -102,7 +117,7 @@ public class BlockInputStream extends InputStream {
         this.reader = reader;
         this.length = reader.samFile.length();
 
-        buffer = ByteBuffer.wrap(new byte[64*1024]);
+        buffer = ByteBuffer.wrap(new byte[BUFFER_SIZE_IN_BLOCKS*BlockLoader.MAX_BLOCK_SIZE]);
         buffer.order(ByteOrder.LITTLE_ENDIAN);
 
         // The state of the buffer assumes that the range of data written into the buffer appears in the range
@@ -185,14 +200,19 @@ public class BlockInputStream extends InputStream {
      */
     public void submitAccessPlan(final BAMAccessPlan accessPlan) {
         //System.out.printf("Thread %s: submitting access plan for block at position: %d%n",Thread.currentThread().getId(),position.getBlockAddress());
-        this.accessPlan = accessPlan;
-        accessPlan.reset();
+        synchronized(lock) {
+            // Let any block read ahead under the previous access plan land before throwing it away.
+            waitForPendingBlockLoad();
 
-        clearBuffers();
+            this.accessPlan = accessPlan;
+            accessPlan.reset();
 
-        // Pull the iterator past any oddball chunks at the beginning of the shard (chunkEnd < chunkStart, empty chunks, etc).
-        // TODO: Don't pass these empty chunks in.
-        accessPlan.advancePosition(makeFilePointer(accessPlan.getBlockAddress(),0));
+            clearBuffers();
+
+            // Pull the iterator past any oddball chunks at the beginning of the shard (chunkEnd < chunkStart, empty chunks, etc).
+            // TODO: Don't pass these empty chunks in.
+            accessPlan.advancePosition(makeFilePointer(accessPlan.getBlockAddress(),0));
+        }
 
         if(accessPlan.getBlockAddress() >= 0) {
             waitForBufferFill();
@@ -274,8 +294,16 @@ public class BlockInputStream extends InputStream {
                         throw new ReviewedGATKException(String.format("Bytes being inserted into BlockInputStream %s are incorrect",this));
                 }
 
+                // Wait for the reader to make room for the incoming block, if necessary.
                 compactBuffer();
-                // Open up the buffer for more reading.
+                while(buffer.capacity() - buffer.limit() < incomingBuffer.remaining()) {
+                    lock.wait();
+                    compactBuffer();
+                }
+
+                // Open up the buffer for writing after any data still waiting to be read.
+                final int readPosition = buffer.position();
+                buffer.position(buffer.limit());
                 buffer.limit(buffer.capacity());
 
                 // Get the spans overlapping this particular block...
@@ -285,9 +313,6 @@ public class BlockInputStream extends InputStream {
                 this.accessPlan = accessPlan;
                 accessPlan.advancePosition(makeFilePointer(filePosition, 0));
 
-                if(buffer.remaining() < incomingBuffer.remaining())
-                    lock.wait();
-
                 final int bytesInIncomingBuffer = incomingBuffer.limit();
 
                 for(GATKChunk spanOverlapping: spansOverlapping) {
@@ -307,14 +332,18 @@ public class BlockInputStream extends InputStream {
                     blockPositions.add(spanOverlapping.getChunkEnd());
                 }
 
-                // Set up the buffer for reading.
-                buffer.flip();
+                // Set up the buffer for reading, from wherever the reader left off.
+                buffer.limit(buffer.position());
+                buffer.position(readPosition);
 
-                lock.notify();
+                blockLoadPending = false;
+                lock.notifyAll();
+
+                // Start loading the next block while this one is read.
+                queueReadAhead();
             }
             catch(Exception ex) {
                 reportException(ex);
-                lock.notify();
             }
         }
     }
@@ -322,7 +351,40 @@ public class BlockInputStream extends InputStream {
     void reportException(Throwable t) {
         synchronized(lock) {
             this.error = t;
-            lock.notify();
+            blockLoadPending = false;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Queues a load of the next block if there's room in the buffer to hold it.  Must be called with the lock held.
+     */
+    private void queueReadAhead() {
+        // The block holding the current position may not be compacted away, so leave room for it as well as the next block.
+        if(buffer.remaining() <= buffer.capacity() - 2*BlockLoader.MAX_BLOCK_SIZE)
+            queueBlockLoad();
+    }
+
+    /**
+     * Queues a load of the next block, unless one is already in flight.  Must be called with the lock held.
+     */
+    private void queueBlockLoad() {
+        if(!blockLoadPending && error == null && !eof()) {
+            blockLoadPending = true;
+            dispatcher.queueBlockLoad(accessPlan);
+        }
+    }
+
+    /**
+     * Waits until the block load in flight, if any, has been copied into the buffer.  Must be called with the lock held.
+     */
+    private void waitForPendingBlockLoad() {
+        try {
+            while(blockLoadPending)
+                lock.wait();
+        }
+        catch(InterruptedException ex) {
+            throw new ReviewedGATKException("Interrupt occurred waiting for block load to complete",ex);
         }
     }
 
@@ -381,9 +443,11 @@ public class BlockInputStream extends InputStream {
                 // TODO: Assert that we don't copy across a block boundary
             }
 
-            // Notify any waiting threads that some of the contents of the buffer were removed.
-            if(length-remaining > 0)
-                lock.notify();
+            // Notify any waiting threads that some of the contents of the buffer were removed, and make use of the room.
+            if(length-remaining > 0) {
+                lock.notifyAll();
+                queueReadAhead();
+            }
         }
 
 //        if(validatingInputStream != null) {
@@ -409,6 +473,9 @@ public class BlockInputStream extends InputStream {
     }
 
     public void close() {
+        synchronized(lock) {
+            waitForPendingBlockLoad();
+        }
         if(validatingInputStream != null) {
             try {
                 validatingInputStream.close();
@@ -425,15 +492,20 @@ public class BlockInputStream extends InputStream {
 
     private void waitForBufferFill() {
         synchronized(lock) {
-            if(buffer.remaining() == 0 && !eof()) {
+            if(buffer.remaining() == 0 && (blockLoadPending || !eof())) {
                 //System.out.printf("Thread %s is waiting for a buffer fill from position %d to buffer %s%n",Thread.currentThread().getId(),position.getBlockAddress(),this);
-                dispatcher.queueBlockLoad(accessPlan);
+                final long stallStartTime = System.nanoTime();
                 try {
-                    lock.wait();
+                    // A load may bring in no data for this stream (e.g. a block containing no part of the requested spans), so keep waiting until data arrives.
+                    while(buffer.remaining() == 0 && error == null && (blockLoadPending || !eof())) {
+                        queueBlockLoad();
+                        lock.wait();
+                    }
                 }
                 catch(InterruptedException ex) {
                     throw new ReviewedGATKException("Interrupt occurred waiting for buffer to fill",ex);
                 }
+                dispatcher.reportStall(System.nanoTime() - stallStartTime);
             }
         }
     }
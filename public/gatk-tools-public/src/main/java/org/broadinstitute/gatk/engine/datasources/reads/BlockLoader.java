@@ -38,8 +38,16 @@ import java.util.zip.Inflater;
 
 /**
  * An engine for loading blocks.
+ *
+ * The buffers and inflater used to load blocks belong to the loader and are reused for every block, as the
+ * contents of each block are copied into the requesting BlockInputStream before the next block is loaded.
  */
 class BlockLoader implements Runnable {
+    /**
+     * The largest possible BGZF block, compressed or uncompressed.
+     */
+    static final int MAX_BLOCK_SIZE = BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE;
+
     /**
      * Coordinates the input queue.
      */
@@ -60,12 +68,32 @@ class BlockLoader implements Runnable {
      */
     private final ByteBuffer inputBuffer;
 
+    /**
+     * Holds the compressed contents of the current block, for the inflater.
+     */
+    private final byte[] compressedContent = new byte[MAX_BLOCK_SIZE];
+
+    /**
+     * Holds the uncompressed contents of the current block.
+     */
+    private final byte[] uncompressedContent = new byte[MAX_BLOCK_SIZE];
+
+    /**
+     * Inflates blocks; reset before each block.
+     */
+    private final Inflater inflater = new Inflater(true);
+
+    /**
+     * The position in the file just past the last block read.
+     */
+    private long nextBlockAddress;
+
     public BlockLoader(final BGZFBlockLoadingDispatcher dispatcher, final FileHandleCache fileHandleCache, final boolean decompress) {
         this.dispatcher = dispatcher;
         this.fileHandleCache = fileHandleCache;
         this.decompress = decompress;
 
-        this.inputBuffer = ByteBuffer.allocateDirect(64*1024 + BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK.length);
+        this.inputBuffer = ByteBuffer.allocateDirect(MAX_BLOCK_SIZE + BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK.length);
         inputBuffer.order(ByteOrder.LITTLE_ENDIAN);
     }
 
@@ -74,22 +102,26 @@ class BlockLoader implements Runnable {
             BAMAccessPlan accessPlan = null;
             try {
                 accessPlan = dispatcher.claimNextWorkRequest();
-                FileInputStream inputStream = fileHandleCache.claimFileInputStream(accessPlan.getReader());
-
-                //long blockAddress = readerPosition.getBlockAddress();
-                //System.out.printf("Thread %s: BlockLoader: copying bytes from %s at position %d into %s%n",Thread.currentThread().getId(),inputStream,blockAddress,readerPosition.getInputStream());
-
-                ByteBuffer compressedBlock = readBGZFBlock(inputStream,accessPlan.getBlockAddress());
-                long nextBlockAddress = position(inputStream);
-                fileHandleCache.releaseFileInputStream(accessPlan.getReader(),inputStream);
 
+                final long readStartTime = System.nanoTime();
+                FileInputStream inputStream = fileHandleCache.claimFileInputStream(accessPlan.getReader());
+                ByteBuffer compressedBlock;
+                try {
+                    compressedBlock = readBGZFBlock(inputStream,accessPlan.getBlockAddress());
+                }
+                finally {
+                    fileHandleCache.releaseFileInputStream(accessPlan.getReader(),inputStream);
+                }
+                final int compressedBytes = compressedBlock.remaining();
+
+                final long inflateStartTime = System.nanoTime();
                 ByteBuffer block = decompress ? decompressBGZFBlock(compressedBlock) : compressedBlock;
-                int bytesCopied = block.remaining();
+                final long inflateEndTime = System.nanoTime();
+
+                dispatcher.reportBlockLoaded(compressedBytes, block.remaining(), inflateStartTime - readStartTime, inflateEndTime - inflateStartTime);
 
                 BlockInputStream bamInputStream = accessPlan.getInputStream();
                 bamInputStream.copyIntoBuffer(block,accessPlan,nextBlockAddress);
-
-                //System.out.printf("Thread %s: BlockLoader: copied %d bytes from %s at position %d into %s%n",Thread.currentThread().getId(),bytesCopied,inputStream,blockAddress,readerPosition.getInputStream());
             }
             catch(Throwable error) {
                 if(accessPlan != null && accessPlan.getInputStream() != null)
@@ -100,10 +132,10 @@ class BlockLoader implements Runnable {
     }
 
     private ByteBuffer readBGZFBlock(final FileInputStream inputStream, final long blockAddress) throws IOException {
+        // Use positional reads, so that the file handle's position doesn't matter.
         FileChannel channel = inputStream.getChannel();
-
-        // Read the block header
-        channel.position(blockAddress);
+        final long fileSize = channel.size();
+        long position = blockAddress;
 
         int uncompressedDataSize = 0;
         int bufferSize = 0;
@@ -111,7 +143,7 @@ class BlockLoader implements Runnable {
         do {
             inputBuffer.clear();
             inputBuffer.limit(BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH);
-            channel.read(inputBuffer);
+            position += readFully(channel,inputBuffer,position);
 
             // Read out the size of the full BGZF block into a two bit short container, then 'or' that
             // value into an int buffer to transfer the bitwise contents into an int.
@@ -135,13 +167,14 @@ class BlockLoader implements Runnable {
             // Adjust buffer limits and finish reading the block.  Also read the next header, just in case there's a 0-byte block.
             inputBuffer.limit(bufferSize);
             inputBuffer.position(BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH);
-            channel.read(inputBuffer);
+            position += readFully(channel,inputBuffer,position);
 
             // Check the uncompressed length.  If 0 and not at EOF, we'll want to check the next block.
             uncompressedDataSize = inputBuffer.getInt(inputBuffer.limit()-4);
-            //System.out.printf("Uncompressed block size of the current block (at position %d) is %d%n",channel.position()-inputBuffer.limit(),uncompressedDataSize);
         }
-        while(uncompressedDataSize == 0 && channel.position() < channel.size());
+        while(uncompressedDataSize == 0 && position < fileSize);
+
+        nextBlockAddress = position;
 
         // Prepare the buffer for reading.
         inputBuffer.flip();
@@ -149,32 +182,44 @@ class BlockLoader implements Runnable {
         return inputBuffer;
     }
 
+    /**
+     * Read from the channel at the given position until the buffer is full or the end of the file is reached.
+     * @return The number of bytes read.
+     */
+    private int readFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+        int totalBytesRead = 0;
+        while(buffer.hasRemaining()) {
+            final int bytesRead = channel.read(buffer,position+totalBytesRead);
+            if(bytesRead < 0)
+                break;
+            totalBytesRead += bytesRead;
+        }
+        return totalBytesRead;
+    }
+
     private ByteBuffer decompressBGZFBlock(final ByteBuffer bgzfBlock) throws DataFormatException {
         final int compressedBufferSize = bgzfBlock.remaining();
 
         // Determine the uncompressed buffer size (
         bgzfBlock.position(bgzfBlock.limit()-4);
         int uncompressedBufferSize = bgzfBlock.getInt();
-        byte[] uncompressedContent = new byte[uncompressedBufferSize];
+        if(uncompressedBufferSize > uncompressedContent.length)
+            throw new ReviewedGATKException("Uncompressed block size " + uncompressedBufferSize + " is larger than the maximum BGZF block size");
 
         // Bound the CDATA section of the buffer.
         bgzfBlock.limit(compressedBufferSize-BlockCompressedStreamConstants.BLOCK_FOOTER_LENGTH);
         bgzfBlock.position(BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH);
-        byte[] compressedContent = new byte[bgzfBlock.remaining()];
-        ByteBuffer.wrap(compressedContent).put(bgzfBlock);
+        final int compressedDataSize = bgzfBlock.remaining();
+        bgzfBlock.get(compressedContent,0,compressedDataSize);
 
         // Decompress the buffer.
-        final Inflater inflater = new Inflater(true);
-        inflater.setInput(compressedContent);
-        int bytesUncompressed = inflater.inflate(uncompressedContent);
+        inflater.reset();
+        inflater.setInput(compressedContent,0,compressedDataSize);
+        int bytesUncompressed = inflater.inflate(uncompressedContent,0,uncompressedBufferSize);
         if(bytesUncompressed != uncompressedBufferSize)
             throw new ReviewedGATKException("Error decompressing block");
 
-        return ByteBuffer.wrap(uncompressedContent);
-    }
-
-    private long position(final FileInputStream inputStream) throws IOException {
-        return inputStream.getChannel().position();
+        return ByteBuffer.wrap(uncompressedContent,0,uncompressedBufferSize);
     }
 
     private int unpackUByte8(final ByteBuffer buffer,final int position) {
@@ -0,0 +1,111 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.datasources.reads;
+
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+
+import java.io.File;
+import java.util.Iterator;
+
+/**
+ * Batch granular file pointers into locus shards spanning about the same number of compressed bytes of BAM.
+ *
+ * The LocusShardBalancer makes a shard of every file pointer, so shards over densely covered regions read far more
+ * of the BAMs, and take far longer, than shards over sparsely covered ones.  This balancer combines neighbouring file
+ * pointers on the same contig for as long as the chunks of all the input BAMs they span stay within an even share
+ * of the total size of the BAMs.  File pointers are the finest granularity of the BAM index, so a file pointer
+ * larger than that share becomes a shard of its own.
+ */
+public class ByteSpanShardBalancer extends ShardBalancer {
+    private final int numShards;
+
+    /**
+     * The number of compressed bytes a shard should span, across all BAMs.
+     */
+    private long targetShardSize;
+
+    /**
+     * @param numShards the number of shards of equal compressed size the whole of the BAMs would divide into
+     */
+    public ByteSpanShardBalancer(final int numShards) {
+        if ( numShards < 1 ) throw new IllegalArgumentException("numShards must be >= 1 but got " + numShards);
+        this.numShards = numShards;
+    }
+
+    @Override
+    public void initialize(final SAMDataSource readsDataSource, final Iterator<FilePointer> filePointers, final GenomeLocParser parser) {
+        super.initialize(readsDataSource, filePointers, parser);
+        long totalSize = 0;
+        for ( final SAMReaderID id : readsDataSource.getReaderIDs() )
+            totalSize += new File(id.getSamFilePath()).length();
+        targetShardSize = Math.max(1, totalSize / numShards);
+    }
+
+    /**
+     * @return the number of compressed bytes a shard should span, across all BAMs
+     */
+    public long getTargetShardSize() {
+        return targetShardSize;
+    }
+
+    /**
+     * Convert iterators of file pointers into balanced iterators of shards.
+     * @return An iterator over balanced shards.
+     */
+    public Iterator<Shard> iterator() {
+        return new Iterator<Shard>() {
+            public boolean hasNext() {
+                return filePointers.hasNext();
+            }
+
+            public Shard next() {
+                FilePointer current = filePointers.next();
+
+                while ( filePointers.hasNext() && canCombine(current, filePointers.peek()) ) {
+                    final FilePointer combined = current.combine(parser, filePointers.peek());
+                    if ( combined.compressedSize() > targetShardSize )
+                        break;
+                    filePointers.next();
+                    current = combined;
+                }
+
+                return new LocusShard(parser,readsDataSource,current.getLocations(),current.fileSpans);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("Unable to remove from shard balancing iterator");
+            }
+        };
+    }
+
+    /**
+     * Only mapped file pointers on the same contig can be combined into a locus shard.
+     */
+    private static boolean canCombine(final FilePointer current, final FilePointer next) {
+        return ! current.isRegionUnmapped && ! next.isRegionUnmapped && ! current.isMonolithic() &&
+                current.getContigIndex() == next.getContigIndex();
+    }
+}
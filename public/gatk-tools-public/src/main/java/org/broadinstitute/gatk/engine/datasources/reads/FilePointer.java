@@ -242,6 +242,17 @@ public class FilePointer {
         return size;
     }
 
+    /**
+     * Computes the size of this file span, in compressed bytes: how much of the files has to be read to process it.
+     * @return Compressed size of the file span.
+     */
+    public long compressedSize() {
+        long size = 0L;
+        for(SAMFileSpan fileSpan: fileSpans.values())
+            size += ((GATKBAMFileSpan)fileSpan).compressedSize();
+        return size;
+    }
+
     /**
      * Returns the difference in size between two filespans.
      * @param other Other filespan against which to measure.
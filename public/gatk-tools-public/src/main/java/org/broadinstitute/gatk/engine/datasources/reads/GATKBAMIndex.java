@@ -118,6 +118,13 @@ public class GATKBAMIndex {
         closeIndexFile();
     }
 
+    /**
+     * @return the number of reference sequences in this index
+     */
+    public int getNumberOfReferences() {
+        return sequenceCount;
+    }
+
     public GATKBAMIndexData readReferenceSequence(final int referenceSequence) {
         openIndexFile();
 
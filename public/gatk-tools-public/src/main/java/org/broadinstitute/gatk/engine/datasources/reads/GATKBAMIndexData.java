@@ -51,6 +51,13 @@ public class GATKBAMIndexData {
         return referenceSequence;
     }
 
+    /**
+     * @return the linear index of this reference sequence: the file offset of the first read overlapping each 16kb window
+     */
+    public LinearIndex getLinearIndex() {
+        return linearIndex;
+    }
+
     /**
      * Perform an overlapping query of all bins bounding the given location.
      * @param bin The bin over which to perform an overlapping query.
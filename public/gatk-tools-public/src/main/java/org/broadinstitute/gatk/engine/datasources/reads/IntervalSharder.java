@@ -26,8 +26,10 @@
 package org.broadinstitute.gatk.engine.datasources.reads;
 
 import htsjdk.samtools.util.PeekableIterator;
+import org.broadinstitute.gatk.utils.GenomeLoc;
 import org.broadinstitute.gatk.utils.GenomeLocParser;
 import org.broadinstitute.gatk.utils.GenomeLocSortedSet;
+import org.broadinstitute.gatk.utils.interval.IntervalCostModel;
 import org.broadinstitute.gatk.utils.interval.IntervalMergingRule;
 
 import java.util.Iterator;
@@ -47,6 +49,16 @@ public class IntervalSharder implements Iterator<FilePointer> {
      */
     private final GenomeLocParser parser;
 
+    /**
+     * The expected cost of processing each region, or null to combine file pointers only when it's free.
+     */
+    private final IntervalCostModel costModel;
+
+    /**
+     * The largest expected cost of a file pointer built by combining cheaper ones.
+     */
+    private final double maxCombinedCost;
+
     public static IntervalSharder shardOverAllReads(final SAMDataSource dataSource, final GenomeLocParser parser) {
         return new IntervalSharder(BAMScheduler.createOverAllReads(dataSource,parser),parser);
     }
@@ -59,9 +71,36 @@ public class IntervalSharder implements Iterator<FilePointer> {
         return new IntervalSharder(BAMScheduler.createOverIntervals(dataSource,intervalMergeRule,loci),loci.getGenomeLocParser());
     }
 
+    /**
+     * Shard over the given intervals, additionally combining neighbouring file pointers on the same contig until
+     * their expected cost would exceed 1/numShards of the cost of all the intervals.  With many threads this turns
+     * long runs of cheap file pointers, such as the sparsely covered targets of an exome, into a few shards of
+     * about the same cost as the densely covered ones, instead of thousands of tiny shards.
+     *
+     * @param dataSource the reads to shard
+     * @param loci the intervals to shard over
+     * @param intervalMergeRule how to merge the intervals of combined file pointers
+     * @param costModel the expected cost of processing each region
+     * @param numShards the number of shards the combined file pointers should roughly amount to
+     * @return an iterator over the file pointers of the shards
+     */
+    public static IntervalSharder shardOverIntervals(final SAMDataSource dataSource, final GenomeLocSortedSet loci, final IntervalMergingRule intervalMergeRule,
+                                                     final IntervalCostModel costModel, final int numShards) {
+        if ( costModel == null ) throw new IllegalArgumentException("costModel cannot be null");
+        if ( numShards < 1 ) throw new IllegalArgumentException("numShards must be >= 1 but got " + numShards);
+        return new IntervalSharder(BAMScheduler.createOverIntervals(dataSource,intervalMergeRule,loci),loci.getGenomeLocParser(),
+                                   costModel, getCost(costModel, loci.toList()) / numShards);
+    }
+
     private IntervalSharder(final BAMScheduler scheduler, final GenomeLocParser parser) {
+        this(scheduler, parser, null, 0);
+    }
+
+    private IntervalSharder(final BAMScheduler scheduler, final GenomeLocParser parser, final IntervalCostModel costModel, final double maxCombinedCost) {
         wrappedIterator = new PeekableIterator<FilePointer>(scheduler);
         this.parser = parser;
+        this.costModel = costModel;
+        this.maxCombinedCost = maxCombinedCost;
     }
     public void close() {
       wrappedIterator.close();
@@ -72,22 +111,38 @@ public class IntervalSharder implements Iterator<FilePointer> {
     }
 
     /**
-     * Accumulate shards where there's no additional cost to processing the next shard in the sequence.
+     * Accumulate shards where there's no additional cost to processing the next shard in the sequence, or, given a
+     * cost model, while the combined shard is still expected to be cheap.
      * @return The next file pointer to process.
      */
     public FilePointer next() {
         FilePointer current = wrappedIterator.next();
+        double currentCost = costModel != null ? getCost(costModel, current.getLocations()) : 0;
 
         while ( wrappedIterator.hasNext() &&
                 current.isRegionUnmapped == wrappedIterator.peek().isRegionUnmapped &&
-                (current.getContigIndex() == wrappedIterator.peek().getContigIndex() || current.isRegionUnmapped) &&
-                current.minus(wrappedIterator.peek()) == 0 ) {
+                (current.getContigIndex() == wrappedIterator.peek().getContigIndex() || current.isRegionUnmapped) ) {
+            final FilePointer next = wrappedIterator.peek();
+            final double nextCost = costModel != null ? getCost(costModel, next.getLocations()) : 0;
+
+            if ( current.minus(next) != 0 && (costModel == null || current.isRegionUnmapped || currentCost + nextCost > maxCombinedCost) )
+                break;
 
             current = current.combine(parser,wrappedIterator.next());
+            currentCost += nextCost;
         }
 
         return current;
     }
 
+    private static double getCost(final IntervalCostModel costModel, final Iterable<GenomeLoc> locs) {
+        double cost = 0;
+        for ( final GenomeLoc loc : locs ) {
+            if ( ! GenomeLoc.isUnmapped(loc) )
+                cost += costModel.getCost(loc);
+        }
+        return cost;
+    }
+
     public void remove() { throw new UnsupportedOperationException("Unable to remove from an interval sharder."); }
 }
@@ -67,42 +67,29 @@ public class ReadShard extends Shard {
 
     /**
      * What is the maximum number of reads per BAM file which should go into a read shard.
-     *
-     * TODO: this non-final static variable should either be made final or turned into an
-     * TODO: instance variable somewhere -- as both static and mutable it wreaks havoc
-     * TODO: with tests that use multiple instances of SAMDataSource (since SAMDataSource
-     * TODO: changes this value)
+     * Taken from the data source that created this shard, so that engines running side by
+     * side in one JVM (tests, the GATK daemon) can each use their own buffer size.
      */
-    public static int MAX_READS = DEFAULT_MAX_READS;
+    private final int maxReads;
 
     /**
      * The reads making up this shard.
      */
-    private final Collection<SAMRecord> reads = new ArrayList<SAMRecord>(MAX_READS);
+    private final Collection<SAMRecord> reads;
 
     public ReadShard(GenomeLocParser parser, SAMDataSource readsDataSource, Map<SAMReaderID,SAMFileSpan> fileSpans, List<GenomeLoc> loci, boolean isUnmapped) {
         super(parser, ShardType.READ, loci, readsDataSource, fileSpans, isUnmapped);
-    }
-
-    /**
-     * Sets the maximum number of reads buffered in a read shard.  Implemented as a weirdly static interface
-     * until we know what effect tuning this parameter has.
-     *
-     * TODO: this mutable static interface is awful and breaks tests -- need to refactor
-     *
-     * @param bufferSize New maximum number
-     */
-    static void setReadBufferSize(final int bufferSize) {
-        MAX_READS = bufferSize;
+        this.maxReads = readsDataSource != null ? readsDataSource.getReadBufferSize() : DEFAULT_MAX_READS;
+        this.reads = new ArrayList<SAMRecord>(maxReads);
     }
 
     /**
      * What read buffer size are we using?
      *
-     * @return
+     * @return the maximum number of reads per BAM file buffered in this shard.
      */
-    public static int getReadBufferSize() {
-        return MAX_READS;
+    public int getReadBufferSize() {
+        return maxReads;
     }
 
     /**
@@ -127,7 +114,7 @@ public class ReadShard extends Shard {
      * @return True if this shard's buffer is full (and the shard can buffer reads).
      */
     public boolean isBufferFull() {
-        return reads.size() > ReadShard.MAX_READS;
+        return reads.size() > maxReads;
     }
 
     /**
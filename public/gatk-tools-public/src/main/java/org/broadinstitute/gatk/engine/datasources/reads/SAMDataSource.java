@@ -39,12 +39,14 @@ import org.broadinstitute.gatk.engine.filters.CountingFilteringIterator;
 import org.broadinstitute.gatk.engine.filters.ReadFilter;
 import org.broadinstitute.gatk.engine.iterators.*;
 import org.broadinstitute.gatk.engine.resourcemanagement.ThreadAllocation;
+import org.broadinstitute.gatk.utils.GenomeLoc;
 import org.broadinstitute.gatk.utils.GenomeLocParser;
 import org.broadinstitute.gatk.utils.GenomeLocSortedSet;
 import org.broadinstitute.gatk.utils.SimpleTimer;
 import org.broadinstitute.gatk.utils.baq.ReadTransformingIterator;
 import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.interval.IntervalCostModel;
 import org.broadinstitute.gatk.utils.interval.IntervalMergingRule;
 import org.broadinstitute.gatk.utils.sam.GATKSAMReadGroupRecord;
 import org.broadinstitute.gatk.utils.sam.GATKSamRecordFactory;
@@ -93,6 +95,11 @@ public class SAMDataSource {
      */
     private final boolean removeProgramRecords;
 
+    /**
+     * Maximum number of reads per BAM file to buffer in a read shard.
+     */
+    private final int readBufferSize;
+
     /**
      * Store BAM indices for each reader present.
      */
@@ -282,12 +289,12 @@ public class SAMDataSource {
         validationStringency = strictness;
         this.removeProgramRecords = removeProgramRecords;
         if(readBufferSize != null)
-            ReadShard.setReadBufferSize(readBufferSize);   // TODO: use of non-final static variable here is just awful, especially for parallel tests
+            this.readBufferSize = readBufferSize;
         else {
             // Choose a sensible default for the read buffer size.
             // Previously we we're picked 100000 reads per BAM per shard with a max cap of 250K reads in memory at once.
             // Now we are simply setting it to 100K reads
-            ReadShard.setReadBufferSize(100000);
+            this.readBufferSize = 100000;
         }
 
         this.sampleRenameMap = sampleRenameMap;
@@ -389,6 +396,14 @@ public class SAMDataSource {
         }
     }
 
+    /**
+     * Gets the dispatcher loading BGZF blocks asynchronously.
+     * @return The dispatcher, or null if not running in asynchronous I/O mode.
+     */
+    public BGZFBlockLoadingDispatcher getBlockLoadingDispatcher() {
+        return dispatcher;
+    }
+
     /**
      * Returns Reads data structure containing information about the reads data sources placed in this pool as well as
      * information about how they are downsampled, sorted, and filtered
@@ -396,6 +411,12 @@ public class SAMDataSource {
      */
     public ReadProperties getReadsInfo() { return readProperties; }
 
+    /**
+     * Gets the maximum number of reads per BAM file buffered in each read shard created from this data source.
+     * @return The read buffer size.
+     */
+    public int getReadBufferSize() { return readBufferSize; }
+
     /**
      * Checks to see whether any reads files are supplying data.
      * @return True if no reads files are supplying data to the traversal; false otherwise.
@@ -479,6 +500,34 @@ public class SAMDataSource {
         return bamIndices.get(id);
     }
 
+    /**
+     * Narrow the given file spans to the part of each file that can hold reads overlapping start or any later locus on
+     * its contig, by a query of the linear BAM index at start.  Spans of files without an index are left alone.
+     *
+     * Reads the indices from disk, so callers must not use the indices from several threads at once.
+     *
+     * @param fileSpans the file spans to narrow, by reader
+     * @param start     the first locus of interest
+     * @return the narrowed file spans, by reader
+     */
+    public Map<SAMReaderID,SAMFileSpan> getFileSpansStartingAt(final Map<SAMReaderID,SAMFileSpan> fileSpans, final GenomeLoc start) {
+        if ( start.isUnmapped() )
+            return fileSpans;
+
+        final Map<SAMReaderID,SAMFileSpan> narrowed = new HashMap<SAMReaderID,SAMFileSpan>(fileSpans);
+        for ( final Map.Entry<SAMReaderID,SAMFileSpan> entry : fileSpans.entrySet() ) {
+            final GATKBAMIndex index = getIndex(entry.getKey());
+            if ( index == null || ! (entry.getValue() instanceof GATKBAMFileSpan) || start.getContigIndex() >= index.getNumberOfReferences() )
+                continue;
+
+            // every read overlapping start or a later locus lies at or after the offset of start's linear index window
+            final long minimumOffset = index.readReferenceSequence(start.getContigIndex()).getLinearIndex().getMinimumOffset(start.getStart());
+            final GATKBAMFileSpan afterStart = new GATKBAMFileSpan(new GATKChunk(minimumOffset, Long.MAX_VALUE));
+            narrowed.put(entry.getKey(), ((GATKBAMFileSpan)entry.getValue()).intersection(afterStart));
+        }
+        return narrowed;
+    }
+
     /**
      * Retrieves the sort order of the readers.
      * @return Sort order.  Can be unsorted, coordinate order, or query name order.
@@ -1173,6 +1222,24 @@ public class SAMDataSource {
         shardBalancer.initialize(this,IntervalSharder.shardOverIntervals(SAMDataSource.this,intervals,intervalMergingRule),genomeLocParser);
         return shardBalancer;
     }
+
+    /**
+     * Creates a BAM schedule over all reads in the BAM file overlapping the given intervals, with shards combined
+     * until they have about the same expected cost.
+     * @param intervals the intervals to shard over
+     * @param shardBalancer shard balancer object
+     * @param costModel the expected cost of processing each region
+     * @param numShards the number of shards of equal cost the intervals would divide into
+     * @return non-null initialized version of the shard balancer
+     * @see IntervalSharder#shardOverIntervals(SAMDataSource, GenomeLocSortedSet, IntervalMergingRule, IntervalCostModel, int)
+     */
+    public Iterable<Shard> createShardIteratorOverIntervals(final GenomeLocSortedSet intervals, final ShardBalancer shardBalancer,
+                                                           final IntervalCostModel costModel, final int numShards) {
+        if(intervals == null)
+            throw new ReviewedGATKException("Unable to create schedule from intervals; no intervals were provided.");
+        shardBalancer.initialize(this,IntervalSharder.shardOverIntervals(SAMDataSource.this,intervals,intervalMergingRule,costModel,numShards),genomeLocParser);
+        return shardBalancer;
+    }
 }
 
 
@@ -75,7 +75,7 @@ public class BAMFileStat extends CommandLineProgram {
         try {
             BAMFileStat instance = new BAMFileStat();
             start(instance, argv);
-            System.exit(CommandLineProgram.result);
+            System.exit(CommandLineProgram.getResult());
         } catch (Exception e) {
             exitSystemWithError(e);
         }
@@ -95,6 +95,6 @@ public class BAMTagRenamer extends CommandLineProgram {
             throw new RuntimeException(e);
         }
 
-        System.exit(CommandLineProgram.result);
+        System.exit(CommandLineProgram.getResult());
     }
 }
@@ -35,6 +35,7 @@ import org.broadinstitute.gatk.utils.GenomeLocParser;
 import org.broadinstitute.gatk.utils.GenomeLocSortedSet;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
 import org.broadinstitute.gatk.utils.fasta.CachingIndexedFastaSequenceFile;
+import org.broadinstitute.gatk.utils.fasta.PackedFastaSequenceFile;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -53,12 +54,21 @@ public class ReferenceDataSource {
 
     /**
      * Create reference data source from fasta file
-     * @param fastaFile Fasta file to be used as reference
+     *
+     * If the reference is a packed reference (see PackedFastaSequenceFile) rather than a fasta, its bases are read
+     * from the packed file, and the fasta it was compiled from provides the index and dictionary.
+     *
+     * @param referenceFile Fasta file, or packed reference, to be used as reference
      */
-    public ReferenceDataSource(File fastaFile) {
-        // does the fasta file exist? check that first...
-        if (!fastaFile.exists())
-            throw new UserException("The fasta file you specified (" + fastaFile.getAbsolutePath() + ") does not exist.");
+    public ReferenceDataSource(File referenceFile) {
+        // does the reference file exist? check that first...
+        if (!referenceFile.exists())
+            throw new UserException("The fasta file you specified (" + referenceFile.getAbsolutePath() + ") does not exist.");
+
+        final boolean isPacked = PackedFastaSequenceFile.isPackedReference(referenceFile);
+        final File fastaFile = isPacked ? PackedFastaSequenceFile.getSourceFasta(referenceFile) : referenceFile;
+        if (isPacked && !fastaFile.exists())
+            throw new UserException("The fasta file (" + fastaFile.getAbsolutePath() + ") for the packed reference you specified (" + referenceFile.getAbsolutePath() + ") does not exist.");
 
         final boolean isGzipped = fastaFile.getAbsolutePath().endsWith(".gz");
         if ( isGzipped ) {
@@ -82,7 +92,10 @@ public class ReferenceDataSource {
 
         // Read reference data by creating an IndexedFastaSequenceFile.
         try {
-            reference = new CachingIndexedFastaSequenceFile(fastaFile);
+            reference = isPacked ? new PackedFastaSequenceFile(referenceFile) : new CachingIndexedFastaSequenceFile(fastaFile);
+        }
+        catch (UserException e) {
+            throw e;
         }
         catch (IllegalArgumentException e) {
             throw new UserException.CouldNotReadInputFile(fastaFile, "Could not read reference sequence.  The FASTA must have either a .fasta or .fa extension", e);
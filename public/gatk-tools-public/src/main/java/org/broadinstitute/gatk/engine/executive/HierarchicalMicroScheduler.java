@@ -39,6 +39,7 @@ import org.broadinstitute.gatk.engine.walkers.Walker;
 import org.broadinstitute.gatk.utils.MultiThreadedErrorTracker;
 import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.progressmeter.ProgressMetrics;
 import org.broadinstitute.gatk.utils.threading.ThreadPoolMonitor;
 
 import java.util.Collection;
@@ -122,13 +123,48 @@ public class HierarchicalMicroScheduler extends MicroScheduler implements Hierar
         }
 
         this.threadPool = Executors.newFixedThreadPool(nThreadsToUse, new UniqueThreadGroupThreadFactory());
+
+        registerMetrics(engine.getProgressMeter().getMetrics(), this);
+    }
+
+    /**
+     * Publish the statistics a microscheduler exposes through JMX as progress metrics as well
+     *
+     * @param metrics the metrics of the progress meter
+     * @param scheduler the microscheduler whose statistics should be published
+     */
+    static void registerMetrics(final ProgressMetrics metrics, final HierarchicalMicroSchedulerMBean scheduler) {
+        metrics.register("gatk_hms_reduce_queue_tasks", "Tree reduces waiting in the reduce queue", new ProgressMetrics.Gauge() {
+            @Override public double getValue() { return scheduler.getNumberOfTasksInReduceQueue(); }
+        });
+        metrics.register("gatk_hms_io_queue_tasks", "Output merge tasks waiting in the I/O queue", new ProgressMetrics.Gauge() {
+            @Override public double getValue() { return scheduler.getNumberOfTasksInIOQueue(); }
+        });
+        metrics.register("gatk_hms_shards_traversed", "Shard traversals completed", new ProgressMetrics.Gauge() {
+            @Override public double getValue() { return scheduler.getNumberOfShardsTraversed(); }
+        });
+        metrics.register("gatk_hms_shard_traverse_seconds", "Total seconds spent traversing shards", new ProgressMetrics.Gauge() {
+            @Override public double getValue() { return scheduler.getTotalShardTraverseTimeMillis() / 1000.0; }
+        });
+        metrics.register("gatk_hms_shard_traverse_avg_seconds", "Average seconds spent traversing a shard", new ProgressMetrics.Gauge() {
+            @Override public double getValue() { return scheduler.getAvgShardTraverseTimeMillis() / 1000.0; }
+        });
+        metrics.register("gatk_hms_tree_reduce_seconds", "Total seconds spent running tree reduces", new ProgressMetrics.Gauge() {
+            @Override public double getValue() { return scheduler.getTotalTreeReduceTimeMillis() / 1000.0; }
+        });
+        metrics.register("gatk_hms_tree_reduce_avg_seconds", "Average seconds spent running a tree reduce", new ProgressMetrics.Gauge() {
+            @Override public double getValue() { return scheduler.getAvgTreeReduceTimeMillis() / 1000.0; }
+        });
+        metrics.register("gatk_hms_output_merge_seconds", "Total seconds spent merging output", new ProgressMetrics.Gauge() {
+            @Override public double getValue() { return scheduler.getTotalOutputMergeTimeMillis() / 1000.0; }
+        });
     }
 
     /**
      * Creates threads for HMS each with a unique thread group.  Critical to
      * track outputs via the ThreadGroupOutputTracker.
      */
-    private static class UniqueThreadGroupThreadFactory implements ThreadFactory {
+    static class UniqueThreadGroupThreadFactory implements ThreadFactory {
         int counter = 0;
 
         @Override
@@ -464,6 +500,11 @@ public class HierarchicalMicroScheduler extends MicroScheduler implements Hierar
         }
     }
 
+    /** {@inheritDoc} */
+    public int getNumberOfShardsTraversed() {
+        return totalCompletedTraversals;
+    }
+
     /** {@inheritDoc} */
     public long getTotalShardTraverseTimeMillis() {
         return totalShardTraverseTime;
@@ -54,6 +54,12 @@ public interface HierarchicalMicroSchedulerMBean {
      */
     public int getNumberOfTasksInIOQueue();
 
+    /**
+     * How many shards have been traversed to date?
+     * @return Total number of shard traversals completed.
+     */
+    public int getNumberOfShardsTraversed();
+
     /**
      * What is the total time spent running traversals?
      * @return Total time spent traversing shards; 0 if none have been traversed.
@@ -91,6 +91,8 @@ public class LinearMicroScheduler extends MicroScheduler {
             if ( abortExecution() || done || shard == null ) // we ran out of shards that aren't owned
                 break;
 
+            final long shardStartTime = System.nanoTime();
+
             if(shard.getShardType() == Shard.ShardType.LOCUS) {
                 WindowMaker windowMaker = new WindowMaker(shard, engine.getGenomeLocParser(),
                         getReadIterator(shard), shard.getGenomeLocs(), SampleUtils.getSAMFileSamples(engine));
@@ -110,6 +112,9 @@ public class LinearMicroScheduler extends MicroScheduler {
                 dataProvider.close();
             }
 
+            if ( shardCostDiagnostics != null )
+                shardCostDiagnostics.recordShard(shard, System.nanoTime() - shardStartTime);
+
             done = walker.isDone();
         }
 
@@ -27,9 +27,11 @@ package org.broadinstitute.gatk.engine.executive;
 
 import com.google.java.contract.Ensures;
 import htsjdk.samtools.reference.IndexedFastaSequenceFile;
+import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import org.broadinstitute.gatk.engine.GenomeAnalysisEngine;
 import org.broadinstitute.gatk.engine.ReadMetrics;
+import org.broadinstitute.gatk.engine.arguments.GATKArgumentCollection;
 import org.broadinstitute.gatk.engine.datasources.reads.SAMDataSource;
 import org.broadinstitute.gatk.engine.datasources.reads.Shard;
 import org.broadinstitute.gatk.engine.datasources.rmd.ReferenceOrderedDataSource;
@@ -43,7 +45,9 @@ import org.broadinstitute.gatk.utils.AutoFormattingTime;
 import org.broadinstitute.gatk.utils.MathUtils;
 import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.fasta.CachingIndexedFastaSequenceFile;
 import org.broadinstitute.gatk.utils.progressmeter.ProgressMeter;
+import org.broadinstitute.gatk.utils.progressmeter.ProgressMetricsWriter;
 import org.broadinstitute.gatk.utils.threading.ThreadEfficiencyMonitor;
 
 import javax.management.JMException;
@@ -52,6 +56,7 @@ import javax.management.ObjectName;
 import java.io.File;
 import java.lang.management.ManagementFactory;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -119,6 +124,13 @@ public abstract class MicroScheduler implements MicroSchedulerMBean {
      */
     ThreadEfficiencyMonitor threadEfficiencyMonitor = null;
 
+    /**
+     * Compares the predicted and actual cost of each shard, if requested
+     *
+     * may be null
+     */
+    protected final ShardCostDiagnostics shardCostDiagnostics;
+
     /**
      * MicroScheduler factory function.  Create a microscheduler appropriate for reducing the
      * selected walker.
@@ -158,7 +170,9 @@ public abstract class MicroScheduler implements MicroSchedulerMBean {
             throw badNT("nct", engine, walker);
         }
 
-        if ( threadAllocation.getNumDataThreads() > 1 ) {
+        if ( threadAllocation.getNumDataThreads() > 1 && engine.getArguments() != null && engine.getArguments().workStealingDataThreads ) {
+            return new WorkStealingMicroScheduler(engine, walker, reads, reference, rods, threadAllocation);
+        } else if ( threadAllocation.getNumDataThreads() > 1 ) {
             return new HierarchicalMicroScheduler(engine, walker, reads, reference, rods, threadAllocation);
         } else {
             return new LinearMicroScheduler(engine, walker, reads, reference, rods, threadAllocation);
@@ -192,6 +206,7 @@ public abstract class MicroScheduler implements MicroSchedulerMBean {
         this.rods = rods;
 
         final File progressLogFile = engine.getArguments() == null ? null : engine.getArguments().performanceLog;
+        this.shardCostDiagnostics = engine.getArguments() != null && engine.getArguments().shardCostDiagnostics ? new ShardCostDiagnostics() : null;
 
         // Creates uninitialized TraversalEngines appropriate for walker and threadAllocation,
         // and adds it to the list of created engines for later shutdown.
@@ -202,7 +217,7 @@ public abstract class MicroScheduler implements MicroSchedulerMBean {
         }
 
         // Create the progress meter, and register it with the analysis engine
-        engine.registerProgressMeter(new ProgressMeter(progressLogFile,
+        engine.registerProgressMeter(new ProgressMeter(progressLogFile, createProgressMetricsWriter(engine.getArguments()),
                 availableTraversalEngines.peek().getTraversalUnits(),
                 engine.getRegionsOfGenomeBeingProcessed()));
 
@@ -224,6 +239,19 @@ public abstract class MicroScheduler implements MicroSchedulerMBean {
         }
     }
 
+    /**
+     * Create the writer exporting progress metrics requested by arguments, if any
+     *
+     * @param arguments the GATK arguments, may be null
+     * @return a writer, or null if progress metrics shouldn't be exported
+     */
+    private ProgressMetricsWriter createProgressMetricsWriter(final GATKArgumentCollection arguments) {
+        if ( arguments == null || arguments.progressMetricsFile == null )
+            return null;
+        return new ProgressMetricsWriter(arguments.progressMetricsFile, arguments.progressMetricsFormat,
+                TimeUnit.SECONDS.toMillis(arguments.progressMetricsIntervalSeconds));
+    }
+
     /**
      * Really make us a traversal engine of the appropriate type for walker and thread allocation
      *
@@ -232,15 +260,15 @@ public abstract class MicroScheduler implements MicroSchedulerMBean {
     @Ensures("result != null")
     private TraversalEngine createTraversalEngine(final Walker walker, final ThreadAllocation threadAllocation) {
         if (walker instanceof ReadWalker) {
-            return new TraverseReadsNano(threadAllocation.getNumCPUThreadsPerDataThread());
+            return new TraverseReadsNano(threadAllocation.getNumCPUThreadsPerDataThread(), threadAllocation.getCPUThreadExecutionMode());
         } else if (walker instanceof LocusWalker) {
-            return new TraverseLociNano(threadAllocation.getNumCPUThreadsPerDataThread());
+            return new TraverseLociNano(threadAllocation.getNumCPUThreadsPerDataThread(), threadAllocation.getCPUThreadExecutionMode());
         } else if (walker instanceof DuplicateWalker) {
             return new TraverseDuplicates();
         } else if (walker instanceof ReadPairWalker) {
             return new TraverseReadPairs();
         } else if (walker instanceof ActiveRegionWalker) {
-            return new TraverseActiveRegions(threadAllocation.getNumCPUThreadsPerDataThread());
+            return new TraverseActiveRegions(threadAllocation.getNumCPUThreadsPerDataThread(), threadAllocation.getCPUThreadExecutionMode());
         } else {
             throw new UnsupportedOperationException("Unable to determine traversal type, the walker is an unknown type.");
         }
@@ -329,6 +357,17 @@ public abstract class MicroScheduler implements MicroSchedulerMBean {
         printReadFilteringStats();
         shutdownTraversalEngines();
 
+        if ( shardCostDiagnostics != null )
+            shardCostDiagnostics.printSummary();
+
+        // Print out how often reference queries were served from the cache
+        if ( reference instanceof CachingIndexedFastaSequenceFile )
+            ((CachingIndexedFastaSequenceFile)reference).printEfficiency(Level.INFO);
+
+        // Print out how well asynchronous I/O kept up, if it was used
+        if ( reads != null && reads.getBlockLoadingDispatcher() != null )
+            reads.getBlockLoadingDispatcher().printStatistics(logger);
+
         // Print out the threading efficiency of this HMS, if state monitoring is enabled
         if ( threadEfficiencyMonitor != null ) {
             // include the master thread information
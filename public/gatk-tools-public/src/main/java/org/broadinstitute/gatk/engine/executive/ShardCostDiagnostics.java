@@ -0,0 +1,137 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.executive;
+
+import htsjdk.samtools.GATKBAMFileSpan;
+import htsjdk.samtools.SAMFileSpan;
+import org.apache.log4j.Logger;
+import org.broadinstitute.gatk.engine.datasources.reads.Shard;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks how well the compressed bytes of BAM a locus shard spans predict the time spent traversing it.
+ *
+ * As each shard completes, its compressed size and traversal time are logged along with the time predicted for it
+ * from the average time per byte of the shards before it.  When the traversal is done, a summary gives the
+ * correlation between size and time over all the shards and the typical error of the predictions, which shows
+ * whether shards balanced by their compressed size, as the ByteSpanShardBalancer makes them, take about as long.
+ */
+public class ShardCostDiagnostics {
+    private static final Logger logger = Logger.getLogger(ShardCostDiagnostics.class);
+
+    private final List<Long> shardSizes = new ArrayList<Long>();
+    private final List<Long> shardTimes = new ArrayList<Long>();
+    private long totalSize = 0;
+    private long totalTime = 0;
+
+    /**
+     * Record that the traversal of a shard has completed.  Only locus shards are recorded, as read shards are
+     * filled with reads rather than cut from the BAM index.
+     *
+     * @param shard        the traversed shard
+     * @param elapsedNanos the time the traversal took, in nanoseconds
+     */
+    public synchronized void recordShard(final Shard shard, final long elapsedNanos) {
+        if ( shard.getShardType() != Shard.ShardType.LOCUS )
+            return;
+
+        final long size = getCompressedSize(shard);
+        final String predicted = totalSize > 0 ? String.format("%.3f s", size * ((double)totalTime / totalSize) / 1e9) : "unknown";
+        logger.info(String.format("Shard %s: %d compressed bytes, predicted %s, took %.3f s", describe(shard), size, predicted, elapsedNanos / 1e9));
+
+        shardSizes.add(size);
+        shardTimes.add(elapsedNanos);
+        totalSize += size;
+        totalTime += elapsedNanos;
+    }
+
+    /**
+     * @return the number of compressed bytes of all the BAMs spanned by the shard
+     */
+    public static long getCompressedSize(final Shard shard) {
+        long size = 0;
+        if ( shard.getFileSpans() != null ) {
+            for ( final SAMFileSpan fileSpan : shard.getFileSpans().values() ) {
+                if ( fileSpan instanceof GATKBAMFileSpan )
+                    size += ((GATKBAMFileSpan)fileSpan).compressedSize();
+            }
+        }
+        return size;
+    }
+
+    private static String describe(final Shard shard) {
+        final List<GenomeLoc> locs = shard.getGenomeLocs();
+        if ( locs == null || locs.isEmpty() )
+            return "unmapped";
+        return locs.size() == 1 ? locs.get(0).toString() : String.format("%s and %d more intervals", locs.get(0), locs.size() - 1);
+    }
+
+    /**
+     * @return the Pearson correlation between the compressed sizes and the traversal times of the recorded shards,
+     *         or NaN if either doesn't vary
+     */
+    public synchronized double getCorrelation() {
+        final int n = shardSizes.size();
+        final double meanSize = (double)totalSize / n;
+        final double meanTime = (double)totalTime / n;
+        double covariance = 0, sizeVariance = 0, timeVariance = 0;
+        for ( int i = 0; i < n; i++ ) {
+            final double size = shardSizes.get(i) - meanSize;
+            final double time = shardTimes.get(i) - meanTime;
+            covariance += size * time;
+            sizeVariance += size * size;
+            timeVariance += time * time;
+        }
+        return sizeVariance > 0 && timeVariance > 0 ? covariance / Math.sqrt(sizeVariance * timeVariance) : Double.NaN;
+    }
+
+    /**
+     * Log how well the compressed sizes of all the recorded shards predicted their traversal times.
+     */
+    public synchronized void printSummary() {
+        final int n = shardSizes.size();
+        if ( n == 0 ) {
+            logger.info("Shard cost diagnostics: no locus shards were traversed");
+            return;
+        }
+
+        long maxTime = 0;
+        double totalError = 0;
+        final double nanosPerByte = totalSize > 0 ? (double)totalTime / totalSize : 0;
+        for ( int i = 0; i < n; i++ ) {
+            maxTime = Math.max(maxTime, shardTimes.get(i));
+            totalError += Math.abs(shardSizes.get(i) * nanosPerByte - shardTimes.get(i));
+        }
+        final double meanTime = (double)totalTime / n;
+
+        logger.info(String.format("Shard cost diagnostics: %d locus shards, %.3f s on average and %.3f s at most; " +
+                "correlation of compressed size and time %.3f; predictions off by %.3f s (%.1f%%) on average",
+                n, meanTime / 1e9, maxTime / 1e9, getCorrelation(), totalError / n / 1e9, meanTime > 0 ? 100 * totalError / n / meanTime : 0.0));
+    }
+}
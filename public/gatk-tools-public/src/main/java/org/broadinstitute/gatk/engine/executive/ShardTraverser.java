@@ -82,6 +82,7 @@ public class ShardTraverser implements Callable {
 
         try {
             final long startTime = System.currentTimeMillis();
+            final long startNanos = System.nanoTime();
 
             // this is CRITICAL -- initializes output maps in this master thread,
             // so that any subthreads created by the traversal itself can access this map
@@ -105,6 +106,8 @@ public class ShardTraverser implements Callable {
             final long endTime = System.currentTimeMillis();
 
             microScheduler.reportShardTraverseTime(endTime-startTime);
+            if ( microScheduler.shardCostDiagnostics != null )
+                microScheduler.shardCostDiagnostics.recordShard(shard, System.nanoTime() - startNanos);
 
             return accumulator;
         } catch(Throwable t) {
@@ -38,6 +38,7 @@ import org.broadinstitute.gatk.utils.locusiterator.LocusIterator;
 import org.broadinstitute.gatk.utils.locusiterator.LocusIteratorByState;
 import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -60,6 +61,11 @@ import java.util.NoSuchElementException;
  * WindowMakerIterator will then filter the incoming stream, emitting the following stream:
  *  chr1:3 {A,B,C,D}, chr1:4 {A,B,C,D}, chr1:5 {A,B,C,D,E}, chr1:6 {B,C,D,E}, chr1:7 {C,D,E}
  *
+ * While a traversal is running over the windows of a WindowMaker, another thread may call trySplit() to take
+ * away the second half of the loci not yet visited, in order to traverse them as a separate shard.  The window
+ * being traversed is truncated and the intervals after the split point are never emitted, so each locus is
+ * visited by exactly one of the two traversals.
+ *
  * @author mhanna
  * @version 0.1
  */
@@ -80,9 +86,25 @@ public class WindowMaker implements Iterable<WindowMaker.WindowMakerIterator>, I
     private final PeekableIterator<AlignmentContext> sourceIterator;
 
     /**
-     * Stores the sequence of intervals that the windowmaker should be tracking.
+     * Stores the sequence of intervals that the windowmaker should be tracking, or null if we're not filtering
+     * by interval.  Copied from the intervals we were given, as trySplit may truncate them.
+     */
+    private final List<GenomeLoc> intervals;
+
+    /**
+     * The index in intervals of the next window to create
+     */
+    private int nextInterval = 0;
+
+    /**
+     * One beyond the index in intervals of the last window to create.  Lowered when the intervals are split.
+     */
+    private int endInterval;
+
+    /**
+     * The window currently being iterated over, or null if no window has been created yet
      */
-    private final PeekableIterator<GenomeLoc> intervalIterator;
+    private WindowMakerIterator currentWindow = null;
 
     /**
      * In the case of monolithic sharding, this case returns whether the only shard has been generated.
@@ -114,7 +136,8 @@ public class WindowMaker implements Iterable<WindowMaker.WindowMakerIterator>, I
         this.libs = new LocusIteratorByState(readIterator,sourceInfo,genomeLocParser,sampleNames);
         this.sourceIterator = new PeekableIterator<AlignmentContext>(libs);
 
-        this.intervalIterator = intervals.size()>0 ? new PeekableIterator<GenomeLoc>(intervals.iterator()) : null;
+        this.intervals = intervals.size()>0 ? new ArrayList<GenomeLoc>(intervals) : null;
+        this.endInterval = intervals.size();
     }
 
     public WindowMaker(Shard shard, GenomeLocParser genomeLocParser, GATKSAMIterator iterator, List<GenomeLoc> intervals ) {
@@ -125,13 +148,86 @@ public class WindowMaker implements Iterable<WindowMaker.WindowMakerIterator>, I
         return this;
     }
 
-    public boolean hasNext() {
-        return (intervalIterator != null && intervalIterator.hasNext()) || !shardGenerated;
+    public synchronized boolean hasNext() {
+        return intervals != null ? nextInterval < endInterval : !shardGenerated;
     }
 
-    public WindowMakerIterator next() {
+    public synchronized WindowMakerIterator next() {
+        if ( ! hasNext() ) throw new NoSuchElementException("No more windows in this window maker");
         shardGenerated = true;
-        return new WindowMakerIterator(intervalIterator != null ? intervalIterator.next() : null);
+        currentWindow = new WindowMakerIterator(intervals != null ? intervals.get(nextInterval++) : null);
+        return currentWindow;
+    }
+
+    /**
+     * Try to split off the second half of the loci that this window maker hasn't yet emitted, measured in
+     * bp of the remaining intervals, so that they can be traversed by another thread.
+     *
+     * Can be called from any thread while a traversal is iterating over this window maker.  The loci
+     * returned are guaranteed not to be emitted by this window maker, and all of the loci before them
+     * will still be emitted.  Window makers without intervals (monolithic shards) cannot be split.
+     *
+     * @param genomeLocParser parser used to create the truncated intervals
+     * @param minSplitSize the minimum number of bp both this window maker and the split off part must keep
+     * @return the intervals split off from this window maker, in order, or null if no split was possible
+     */
+    public synchronized List<GenomeLoc> trySplit(final GenomeLocParser genomeLocParser, final int minSplitSize) {
+        if ( minSplitSize < 1 ) throw new IllegalArgumentException("minSplitSize must be >= 1, got " + minSplitSize);
+        if ( intervals == null )
+            return null;
+
+        // the spans of all of the loci not yet emitted, starting with the remainder of the current window
+        final List<GenomeLoc> remaining = new ArrayList<GenomeLoc>();
+        final GenomeLoc unvisitedInCurrentWindow = currentWindow == null ? null : currentWindow.getUnvisitedLoci(genomeLocParser);
+        if ( unvisitedInCurrentWindow != null )
+            remaining.add(unvisitedInCurrentWindow);
+        final boolean remainingStartsInCurrentWindow = unvisitedInCurrentWindow != null;
+        remaining.addAll(intervals.subList(nextInterval, endInterval));
+
+        long remainingSize = 0;
+        for ( final GenomeLoc loc : remaining )
+            remainingSize += loc.size();
+        if ( remainingSize < 2l * minSplitSize )
+            return null;
+
+        // find the interval containing the midpoint of the remaining loci
+        long sizeToKeep = remainingSize / 2;
+        int splitIndex = 0;
+        while ( remaining.get(splitIndex).size() <= sizeToKeep ) {
+            sizeToKeep -= remaining.get(splitIndex).size();
+            splitIndex++;
+        }
+
+        final GenomeLoc toSplit = remaining.get(splitIndex);
+        final List<GenomeLoc> splitOff = new ArrayList<GenomeLoc>();
+        final GenomeLoc kept;
+        if ( sizeToKeep == 0 ) {
+            kept = null;
+            splitOff.add(toSplit);
+        } else {
+            final int splitPoint = toSplit.getStart() + (int)sizeToKeep;
+            kept = genomeLocParser.createGenomeLoc(toSplit.getContig(), toSplit.getContigIndex(), toSplit.getStart(), splitPoint - 1);
+            splitOff.add(genomeLocParser.createGenomeLoc(toSplit.getContig(), toSplit.getContigIndex(), splitPoint, toSplit.getStop()));
+        }
+        splitOff.addAll(remaining.subList(splitIndex + 1, remaining.size()));
+
+        // now truncate our own work so we stop right before the split off loci
+        if ( remainingStartsInCurrentWindow && splitIndex == 0 ) {
+            // the split point is in the window currently being traversed
+            currentWindow.truncate(kept == null ? toSplit.getStart() - 1 : kept.getStop());
+            endInterval = nextInterval;
+        } else {
+            // the split point is in an interval we haven't started yet
+            final int intervalIndex = nextInterval + splitIndex - (remainingStartsInCurrentWindow ? 1 : 0);
+            if ( kept == null ) {
+                endInterval = intervalIndex;
+            } else {
+                intervals.set(intervalIndex, kept);
+                endInterval = intervalIndex + 1;
+            }
+        }
+
+        return splitOff;
     }
 
     public void remove() {
@@ -148,8 +244,22 @@ public class WindowMaker implements Iterable<WindowMaker.WindowMakerIterator>, I
          */
         private final GenomeLoc locus;
 
+        /**
+         * The last position within locus we will emit.  Lowered if this window is split by trySplit.
+         */
+        private int stop;
+
+        /**
+         * The last position we've claimed from the source iterator to emit, or locus.getStart() - 1 if none
+         */
+        private int lastClaimedPosition;
+
         public WindowMakerIterator(GenomeLoc locus) {
             this.locus = locus;
+            if ( locus != null ) {
+                this.stop = locus.getStop();
+                this.lastClaimedPosition = locus.getStart() - 1;
+            }
             advance();
         }
 
@@ -166,19 +276,43 @@ public class WindowMaker implements Iterable<WindowMaker.WindowMakerIterator>, I
         }
 
         public boolean hasNext() {
-            advance();
-            return currentAlignmentContext != null;
+            synchronized (WindowMaker.this) {
+                advance();
+                return currentAlignmentContext != null;
+            }
+        }
+
+        /**
+         * Get the part of locus that this iterator hasn't claimed yet
+         * @return a GenomeLoc, or null if there's nothing left in this window or we're not filtering by locus
+         */
+        private GenomeLoc getUnvisitedLoci(final GenomeLocParser genomeLocParser) {
+            if ( locus == null || lastClaimedPosition >= stop )
+                return null;
+            return genomeLocParser.createGenomeLoc(locus.getContig(), locus.getContigIndex(), lastClaimedPosition + 1, stop);
+        }
+
+        /**
+         * Stop emitting alignment contexts after newStop
+         * @param newStop the last position to emit, must not be before the last position already claimed
+         */
+        private void truncate(final int newStop) {
+            if ( newStop < lastClaimedPosition )
+                throw new IllegalStateException("Cannot truncate window " + locus + " to " + newStop + " as we already claimed " + lastClaimedPosition);
+            stop = newStop;
         }
 
         public AlignmentContext next() {
-            if(!hasNext()) throw new NoSuchElementException("WindowMakerIterator is out of elements for this interval.");
+            synchronized (WindowMaker.this) {
+                if(!hasNext()) throw new NoSuchElementException("WindowMakerIterator is out of elements for this interval.");
 
-            // Consume this alignment context.
-            AlignmentContext toReturn = currentAlignmentContext;
-            currentAlignmentContext = null;
+                // Consume this alignment context.
+                AlignmentContext toReturn = currentAlignmentContext;
+                currentAlignmentContext = null;
 
-            // Return the current element.
-            return toReturn;
+                // Return the current element.
+                return toReturn;
+            }
         }
 
         private void advance() {
@@ -195,13 +329,14 @@ public class WindowMaker implements Iterable<WindowMaker.WindowMakerIterator>, I
                 else if(locus.isPast(candidateAlignmentContext.getLocation()))
                     // Found a locus before the current window; claim this alignment context and throw it away.
                     sourceIterator.next();
-                else if(locus.containsP(candidateAlignmentContext.getLocation())) {
+                else if(locus.containsP(candidateAlignmentContext.getLocation()) && candidateAlignmentContext.getLocation().getStart() <= stop) {
                     // Found a locus within the current window; claim this alignment context and call it the next entry.
                     currentAlignmentContext = sourceIterator.next();
+                    lastClaimedPosition = currentAlignmentContext.getLocation().getStart();
                 }
-                else if(locus.isBefore(candidateAlignmentContext.getLocation())) {
-                    // Whoops.  Skipped passed the end of the region.  Iteration for this window is complete.  Do
-                    // not claim this alignment context in case it is part of the next shard.
+                else if(locus.isBefore(candidateAlignmentContext.getLocation()) || locus.containsP(candidateAlignmentContext.getLocation())) {
+                    // Whoops.  Skipped passed the end of the region (or the part of it left after a split).  Iteration
+                    // for this window is complete.  Do not claim this alignment context in case it is part of the next shard.
                     break;
                 }
                 else
@@ -0,0 +1,645 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.executive;
+
+import htsjdk.samtools.reference.IndexedFastaSequenceFile;
+import htsjdk.tribble.TribbleException;
+import org.broadinstitute.gatk.engine.GenomeAnalysisEngine;
+import org.broadinstitute.gatk.engine.WalkerManager;
+import org.broadinstitute.gatk.engine.datasources.providers.LocusShardDataProvider;
+import org.broadinstitute.gatk.engine.datasources.providers.ReadShardDataProvider;
+import org.broadinstitute.gatk.engine.datasources.providers.ShardDataProvider;
+import org.broadinstitute.gatk.engine.datasources.reads.LocusShard;
+import org.broadinstitute.gatk.engine.datasources.reads.SAMDataSource;
+import org.broadinstitute.gatk.engine.datasources.reads.Shard;
+import org.broadinstitute.gatk.engine.datasources.rmd.ReferenceOrderedDataSource;
+import org.broadinstitute.gatk.engine.io.OutputTracker;
+import org.broadinstitute.gatk.engine.io.ThreadGroupOutputTracker;
+import org.broadinstitute.gatk.engine.resourcemanagement.ThreadAllocation;
+import org.broadinstitute.gatk.engine.traversals.TraversalEngine;
+import org.broadinstitute.gatk.engine.walkers.DataSource;
+import org.broadinstitute.gatk.engine.walkers.TreeReducible;
+import org.broadinstitute.gatk.engine.walkers.Walker;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.MultiThreadedErrorTracker;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.progressmeter.ProgressMetrics;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A microscheduler for -nt data threads in which idle threads steal work from slow shards.
+ *
+ * The HierarchicalMicroScheduler hands out whole shards to a fixed pool, so a few shards that are much
+ * more expensive than the others (high coverage regions, for example) run on their own at the end of
+ * the job while the other threads sit idle.  Here each data thread repeatedly takes work for itself:
+ * first any work split off from other shards, then the next shard from the shard strategy, and when
+ * neither is available it splits a shard that is currently being traversed, taking over the second half
+ * of the loci that shard hasn't reached yet (see WindowMaker.trySplit).
+ *
+ * All of the shards, including the split off parts, are kept in a chain in genome order.  As soon as
+ * the shard at the head of the chain is done, whichever thread finished it merges its output into the
+ * final output streams and tree reduces its result into the running reduce of the chain so far.  So
+ * output merges and tree reduces happen on the data threads as soon as their inputs are ready, rather
+ * than on a thread polling the pool, and the order of both is the same as if the shards hadn't been split.
+ *
+ * Splitting is only done for locus shards of walkers that traverse covered loci (the default READS data
+ * source), as those are the traversals in which every emitted locus comes from the window being split.
+ * Like the HierarchicalMicroScheduler, this scheduler requires a TreeReducible walker.
+ */
+public class WorkStealingMicroScheduler extends MicroScheduler implements WorkStealingMicroSchedulerMBean {
+    /**
+     * How many shards may be waiting for their output to be merged before threads stop starting
+     * new shards, and instead help with the shard holding up the merge.
+     */
+    private static final int MAX_OUTSTANDING_OUTPUT_MERGES = 50;
+
+    /**
+     * Never split off, or leave behind, less than this many bp of a shard
+     */
+    protected static final int MIN_SPLIT_SIZE = 1000;
+
+    /**
+     * How long an idle thread waits before retrying to split one of the running shards
+     */
+    private static final long STEAL_RETRY_MILLIS = 100;
+
+    private final int nThreads;
+
+    /** Manage currently running threads. */
+    private final ExecutorService threadPool;
+
+    /**
+     * A thread local output tracker for managing output per-thread.
+     */
+    private final ThreadGroupOutputTracker outputTracker = new ThreadGroupOutputTracker();
+
+    /**
+     * An exception that's occurred in this traversal.  If null, no exception has occurred.
+     */
+    final MultiThreadedErrorTracker errorTracker = new MultiThreadedErrorTracker();
+
+    /**
+     * Serializes the merging of output and the reduce of results at the head of the chain
+     */
+    private final ReentrantLock mergeLock = new ReentrantLock();
+
+    /**
+     * The walker, and the walker as a TreeReducible.  Their map and reduce types aren't known here, but the
+     * scheduler only ever hands the walker values that the walker itself produced, so Object will do.
+     */
+    private Walker<Object,Object> walker;
+    private TreeReducible<Object> treeReducible;
+    private boolean splittingAllowed;
+
+    // the following are all guarded by this
+    private Iterator<Shard> shards;
+    private ShardTask chainHead = null;
+    private ShardTask chainTail = null;
+    private final Deque<ShardTask> splitOffTasks = new ArrayDeque<ShardTask>();
+    private int nOutstandingTasks = 0;
+    private int nIdleThreads = 0;
+    private int nSplits = 0;
+    private boolean stopStartingTasks = false;
+    private boolean allWorkDone = false;
+
+    // guarded by the mergeLock
+    private Object reduceResult = null;
+    private boolean haveReduceResult = false;
+
+    /** How many shard traversals have run to date? */
+    private int totalCompletedTraversals = 0;
+
+    /** What is the total time spent traversing shards? */
+    private long totalShardTraverseTime = 0;
+
+    /** What is the total time spent tree reducing shard output? */
+    private long totalTreeReduceTime = 0;
+
+    /** How many tree reduces have been completed? */
+    private long totalCompletedTreeReduces = 0;
+
+    /** What is the total time spent merging output? */
+    private long totalOutputMergeTime = 0;
+
+    /**
+     * Create a new work-stealing microscheduler to process the given reads and reference.
+     *
+     * @param walker           the walker used to process the dataset.
+     * @param reads            Reads file(s) to process.
+     * @param reference        Reference for driving the traversal.
+     * @param threadAllocation How should we apply multi-threaded execution?
+     */
+    protected WorkStealingMicroScheduler(final GenomeAnalysisEngine engine,
+                                         final Walker<?,?> walker,
+                                         final SAMDataSource reads,
+                                         final IndexedFastaSequenceFile reference,
+                                         final Collection<ReferenceOrderedDataSource> rods,
+                                         final ThreadAllocation threadAllocation) {
+        super(engine, walker, reads, reference, rods, threadAllocation);
+
+        if ( threadAllocation.monitorThreadEfficiency() ) {
+            throw new UserException.BadArgumentValue("nt", "Cannot monitor thread efficiency with -nt, sorry");
+        }
+
+        this.nThreads = threadAllocation.getNumDataThreads();
+        this.threadPool = Executors.newFixedThreadPool(nThreads, new HierarchicalMicroScheduler.UniqueThreadGroupThreadFactory());
+
+        final ProgressMetrics metrics = engine.getProgressMeter().getMetrics();
+        HierarchicalMicroScheduler.registerMetrics(metrics, this);
+        metrics.register("gatk_hms_shard_splits", "Times an idle thread has taken over part of a running shard", new ProgressMetrics.Gauge() {
+            @Override public double getValue() { return getNumberOfShardSplits(); }
+        });
+        metrics.register("gatk_hms_idle_threads", "Data threads waiting for work", new ProgressMetrics.Gauge() {
+            @Override public double getValue() { return getNumberOfIdleThreads(); }
+        });
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"}) // MicroScheduler.execute takes a raw Walker
+    public Object execute( final Walker walker, final Iterable<Shard> shardStrategy ) {
+        super.startingExecution();
+
+        // Fast fail for walkers not supporting TreeReducible interface.
+        if (!( walker instanceof TreeReducible ))
+            throw new IllegalArgumentException("The GATK can currently run in parallel only with TreeReducible walkers");
+
+        this.walker = (Walker<Object,Object>)walker;
+        this.treeReducible = (TreeReducible<Object>)walker;
+        this.splittingAllowed = WalkerManager.getWalkerDataSource(walker) == DataSource.READS;
+        synchronized (this) {
+            this.shards = shardStrategy.iterator();
+        }
+
+        initializeWalker(walker);
+
+        final CountDownLatch runningThreads = new CountDownLatch(nThreads);
+        for ( int i = 0; i < nThreads; i++ )
+            threadPool.submit(new DataThread(runningThreads));
+
+        try {
+            while ( ! runningThreads.await(STEAL_RETRY_MILLIS, TimeUnit.MILLISECONDS) ) {
+                if ( errorTracker.hasAnErrorOccurred() ) {
+                    threadPool.shutdownNow();
+                    errorTracker.throwErrorIfPending();
+                }
+            }
+        } catch ( InterruptedException ex ) {
+            threadPool.shutdownNow();
+            throw new ReviewedGATKException("Interrupted while waiting for data threads to complete", ex);
+        }
+
+        errorTracker.throwErrorIfPending();
+        threadPool.shutdown();
+
+        // All threads are done, so everything left in the chain is complete.  Merge it.
+        mergeCompletedTasks(true);
+        synchronized (this) {
+            if ( chainHead != null )
+                throw new ReviewedGATKException("BUG: shard " + chainHead.shard + " was never completed");
+        }
+
+        final Object result = haveReduceResult ? reduceResult : walker.reduceInit();
+        notifyTraversalDone(this.walker, result);
+
+        // do final cleanup operations
+        outputTracker.close();
+        cleanup();
+        executionIsDone();
+
+        return result;
+    }
+
+    /**
+     * Run the initialize method of the walker.  Ensure that any calls
+     * to the output stream will bypass thread local storage and write
+     * directly to the output file.
+     * @param walker Walker to initialize.
+     */
+    protected void initializeWalker(final Walker<?,?> walker) {
+        outputTracker.bypassThreadLocalStorage(true);
+        try {
+            walker.initialize();
+        }
+        finally {
+            outputTracker.bypassThreadLocalStorage(false);
+        }
+    }
+
+    /**
+     * Run the onTraversalDone method of the walker, bypassing thread local storage.
+     * @param walker Walker to notify.
+     * @param result the final result of the traversal
+     */
+    protected void notifyTraversalDone(final Walker<Object,Object> walker, final Object result) {
+        outputTracker.bypassThreadLocalStorage(true);
+        try {
+            walker.onTraversalDone(result);
+        }
+        finally {
+            outputTracker.bypassThreadLocalStorage(false);
+        }
+    }
+
+    /**
+     * @{inheritDoc}
+     */
+    public OutputTracker getOutputTracker() {
+        return outputTracker;
+    }
+
+    /**
+     * A shard to traverse, along with its place in the chain of shards and its results once traversed
+     */
+    private class ShardTask {
+        final Shard shard;
+
+        /** The next shard in genome order, guarded by the scheduler */
+        ShardTask next = null;
+
+        /** The window maker of this shard while it is being traversed, and can be split; guarded by the scheduler */
+        WindowMaker windowMaker = null;
+
+        /** Guarded by the scheduler */
+        boolean complete = false;
+
+        Object result = null;
+        OutputMergeTask outputMergeTask = null;
+
+        private ShardTask(final Shard shard) {
+            this.shard = shard;
+        }
+    }
+
+    /**
+     * The work loop of each data thread: get a task, traverse it, and merge whatever is ready
+     */
+    private class DataThread implements Runnable {
+        final CountDownLatch runningThreads;
+
+        private DataThread(final CountDownLatch runningThreads) {
+            this.runningThreads = runningThreads;
+        }
+
+        @Override
+        public void run() {
+            try {
+                ShardTask task;
+                while ( (task = nextTask()) != null ) {
+                    traverse(task);
+                    completeTask(task);
+                    mergeCompletedTasks(false);
+                }
+            } catch ( Throwable t ) {
+                notifyOfTraversalError(t);
+            } finally {
+                synchronized (WorkStealingMicroScheduler.this) {
+                    WorkStealingMicroScheduler.this.notifyAll();
+                }
+                runningThreads.countDown();
+            }
+        }
+    }
+
+    /**
+     * Get the next task for a data thread, waiting until one is available.
+     *
+     * @return the next task to traverse, or null if there's no more work
+     */
+    private synchronized ShardTask nextTask() throws InterruptedException {
+        nIdleThreads++;
+        try {
+            while ( true ) {
+                if ( allWorkDone || errorTracker.hasAnErrorOccurred() )
+                    return null;
+
+                if ( ! stopStartingTasks && abortExecution() )
+                    stopStartingTasks = true;
+
+                // work split off from other shards goes first, so the shard it came from can be merged sooner
+                if ( ! splitOffTasks.isEmpty() )
+                    return splitOffTasks.remove();
+
+                if ( ! stopStartingTasks && shards.hasNext() && nOutstandingTasks < MAX_OUTSTANDING_OUTPUT_MERGES ) {
+                    final ShardTask task = new ShardTask(shards.next());
+                    appendToChain(task);
+                    return task;
+                }
+
+                if ( ! stopStartingTasks ) {
+                    final ShardTask stolen = trySplitRunningTask();
+                    if ( stolen != null )
+                        return stolen;
+                }
+
+                if ( (stopStartingTasks || ! shards.hasNext()) && nIdleThreads == nThreads ) {
+                    // nobody is running anything that could generate more work, so we are done
+                    allWorkDone = true;
+                    notifyAll();
+                    return null;
+                }
+
+                wait(STEAL_RETRY_MILLIS);
+            }
+        } finally {
+            nIdleThreads--;
+        }
+    }
+
+    /**
+     * Try to split off part of a shard currently being traversed, starting from the head of the chain
+     *
+     * @return the split off part of a running shard, already linked into the chain, or null if none could be split
+     */
+    private synchronized ShardTask trySplitRunningTask() {
+        if ( ! splittingAllowed )
+            return null;
+
+        for ( ShardTask task = chainHead; task != null; task = task.next ) {
+            if ( task.windowMaker == null )
+                continue;
+
+            final List<GenomeLoc> splitOff = task.windowMaker.trySplit(engine.getGenomeLocParser(), MIN_SPLIT_SIZE);
+            if ( splitOff != null ) {
+                // the stolen shard only needs the part of its parent's reads that can overlap the split off loci
+                final ShardTask stolen = new ShardTask(new LocusShard(engine.getGenomeLocParser(), getSAMDataSource(),
+                        splitOff, getSAMDataSource().getFileSpansStartingAt(task.shard.getFileSpans(), splitOff.get(0))));
+                insertIntoChainAfter(task, stolen);
+                nSplits++;
+                logger.debug(String.format("Split %s off shard %s", stolen.shard, task.shard));
+                return stolen;
+            }
+        }
+
+        return null;
+    }
+
+    private synchronized void appendToChain(final ShardTask task) {
+        if ( chainTail == null )
+            chainHead = task;
+        else
+            chainTail.next = task;
+        chainTail = task;
+        nOutstandingTasks++;
+    }
+
+    private synchronized void insertIntoChainAfter(final ShardTask previous, final ShardTask task) {
+        task.next = previous.next;
+        previous.next = task;
+        if ( chainTail == previous )
+            chainTail = task;
+        nOutstandingTasks++;
+    }
+
+    private synchronized void setSplittableWindowMaker(final ShardTask task, final WindowMaker windowMaker) {
+        task.windowMaker = splittingAllowed ? windowMaker : null;
+    }
+
+    private synchronized void completeTask(final ShardTask task) {
+        task.complete = true;
+        notifyAll();
+    }
+
+    /**
+     * Remove the head of the chain if it has been traversed
+     * @return the completed task at the head of the chain, or null if the head isn't complete
+     */
+    private synchronized ShardTask takeCompletedHead() {
+        if ( chainHead == null || ! chainHead.complete )
+            return null;
+
+        final ShardTask head = chainHead;
+        chainHead = head.next;
+        if ( chainHead == null )
+            chainTail = null;
+        return head;
+    }
+
+    private synchronized boolean isHeadComplete() {
+        return chainHead != null && chainHead.complete;
+    }
+
+    /**
+     * Carry the walker over the shard of task, just like the ShardTraverser, making the window maker
+     * available for splitting while the traversal is underway
+     *
+     * @param task the task to traverse
+     */
+    private void traverse(final ShardTask task) {
+        final Object traversalEngineKey = Thread.currentThread();
+        final TraversalEngine<Object,Object,Walker<Object,Object>,ShardDataProvider> traversalEngine = borrowTypedTraversalEngine(traversalEngineKey);
+
+        try {
+            final long startTime = System.currentTimeMillis();
+            final long startNanos = System.nanoTime();
+
+            // this is CRITICAL -- initializes output maps in this master thread,
+            // so that any subthreads created by the traversal itself can access this map
+            outputTracker.initializeStorage();
+
+            Object accumulator = walker.reduceInit();
+            final Shard shard = task.shard;
+            if ( shard.getShardType() == Shard.ShardType.LOCUS ) {
+                final WindowMaker windowMaker = new WindowMaker(shard, engine.getGenomeLocParser(),
+                        getReadIterator(shard), shard.getGenomeLocs(), engine.getSampleDB().getSampleNames());
+                setSplittableWindowMaker(task, windowMaker);
+
+                for ( WindowMaker.WindowMakerIterator iterator : windowMaker ) {
+                    final ShardDataProvider dataProvider = new LocusShardDataProvider(shard, iterator.getSourceInfo(), engine.getGenomeLocParser(), iterator.getLocus(), iterator, reference, rods);
+                    accumulator = traversalEngine.traverse(walker, dataProvider, accumulator);
+                    dataProvider.close();
+                }
+
+                setSplittableWindowMaker(task, null);
+                windowMaker.close();
+            } else {
+                final ShardDataProvider dataProvider = new ReadShardDataProvider(shard, engine.getGenomeLocParser(), getReadIterator(shard), reference, rods);
+                accumulator = traversalEngine.traverse(walker, dataProvider, accumulator);
+                dataProvider.close();
+            }
+
+            task.outputMergeTask = outputTracker.closeStorage();
+            task.result = accumulator;
+
+            reportShardTraverseTime(System.currentTimeMillis() - startTime);
+            if ( shardCostDiagnostics != null )
+                shardCostDiagnostics.recordShard(task.shard, System.nanoTime() - startNanos);
+        } finally {
+            returnTraversalEngine(traversalEngineKey, traversalEngine);
+        }
+    }
+
+    /**
+     * Borrow a traversal engine typed for the walker, whose map and reduce types are taken to be Object as above
+     *
+     * @param key the key to borrow the engine under
+     * @return a traversal engine, to be given back with returnTraversalEngine
+     */
+    @SuppressWarnings("unchecked")
+    private TraversalEngine<Object,Object,Walker<Object,Object>,ShardDataProvider> borrowTypedTraversalEngine(final Object key) {
+        return (TraversalEngine<Object,Object,Walker<Object,Object>,ShardDataProvider>)borrowTraversalEngine(key);
+    }
+
+    /**
+     * Merge the output, and reduce the results, of all completed tasks at the head of the chain.
+     *
+     * @param wait if true, wait for any other thread merging to finish and then merge, otherwise
+     *             return immediately if another thread is already merging
+     */
+    private void mergeCompletedTasks(final boolean wait) {
+        do {
+            if ( wait )
+                mergeLock.lock();
+            else if ( ! mergeLock.tryLock() )
+                return;
+
+            try {
+                ShardTask task;
+                while ( (task = takeCompletedHead()) != null ) {
+                    mergeOutput(task);
+                    reduceResult(task);
+                    synchronized (this) {
+                        nOutstandingTasks--;
+                        notifyAll();
+                    }
+                }
+            } finally {
+                mergeLock.unlock();
+            }
+        } while ( isHeadComplete() );
+    }
+
+    private void mergeOutput(final ShardTask task) {
+        if ( task.outputMergeTask == null )
+            return;
+
+        final long startTime = System.currentTimeMillis();
+        try {
+            task.outputMergeTask.merge();
+        }
+        catch(TribbleException ex) {
+            // Specifically catch Tribble I/O exceptions and rethrow them as Reviewed.  We don't expect
+            // any issues here because we created the Tribble output file mere moments ago and expect it to
+            // be completely valid.
+            throw new ReviewedGATKException("Unable to merge temporary Tribble output file.",ex);
+        }
+        task.outputMergeTask = null;
+        totalOutputMergeTime += System.currentTimeMillis() - startTime;
+    }
+
+    private void reduceResult(final ShardTask task) {
+        if ( ! haveReduceResult ) {
+            reduceResult = task.result;
+            haveReduceResult = true;
+        } else {
+            final long startTime = System.currentTimeMillis();
+            reduceResult = treeReducible.treeReduce(reduceResult, task.result);
+            reportTreeReduceTime(System.currentTimeMillis() - startTime);
+        }
+        task.result = null;
+    }
+
+    /**
+     * Allows other threads to notify of an error during traversal.
+     */
+    protected synchronized RuntimeException notifyOfTraversalError(Throwable error) {
+        final RuntimeException ex = errorTracker.notifyOfError(error);
+        notifyAll();
+        return ex;
+    }
+
+    synchronized void reportShardTraverseTime( long shardTraversalTime ) {
+        totalShardTraverseTime += shardTraversalTime;
+        totalCompletedTraversals++;
+    }
+
+    synchronized void reportTreeReduceTime( long treeReduceTime ) {
+        totalTreeReduceTime += treeReduceTime;
+        totalCompletedTreeReduces++;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized int getNumberOfTasksInReduceQueue() {
+        int nCompleted = 0;
+        for ( ShardTask task = chainHead; task != null; task = task.next )
+            if ( task.complete ) nCompleted++;
+        return nCompleted;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized int getNumberOfTasksInIOQueue() {
+        return nOutstandingTasks;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized int getNumberOfShardsTraversed() {
+        return totalCompletedTraversals;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized long getTotalShardTraverseTimeMillis() {
+        return totalShardTraverseTime;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized long getAvgShardTraverseTimeMillis() {
+        if (totalCompletedTraversals == 0)
+            return 0;
+        return totalShardTraverseTime / totalCompletedTraversals;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized long getTotalTreeReduceTimeMillis() {
+        return totalTreeReduceTime;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized long getAvgTreeReduceTimeMillis() {
+        if (totalCompletedTreeReduces == 0)
+            return 0;
+        return totalTreeReduceTime / totalCompletedTreeReduces;
+    }
+
+    /** {@inheritDoc} */
+    public long getTotalOutputMergeTimeMillis() {
+        return totalOutputMergeTime;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized int getNumberOfShardSplits() {
+        return nSplits;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized int getNumberOfIdleThreads() {
+        return nIdleThreads;
+    }
+}
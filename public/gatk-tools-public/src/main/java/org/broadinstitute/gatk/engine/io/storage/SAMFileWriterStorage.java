@@ -37,6 +37,8 @@ import org.broadinstitute.gatk.utils.sam.SimplifyingSAMFileWriter;
 import java.io.File;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Provides temporary storage for SAMFileWriters.
@@ -45,22 +47,66 @@ import java.lang.reflect.Method;
  * @version 0.1
  */
 public class SAMFileWriterStorage implements SAMFileWriter, Storage<SAMFileWriter> {
+    /**
+     * Temporary storage keeps the reads of a shard in memory until there are more than this many of them, so that
+     * merging them into the output doesn't have to encode, compress, decompress and decode them again.
+     */
+    private static final int MAX_BUFFERED_READS = 10000;
+
+    /**
+     * The compression level of the temporary BAMs of shards with too many reads to keep in memory.  They are only
+     * read back once, so spend as little time as possible compressing them.
+     */
+    private static final int TEMPORARY_COMPRESSION_LEVEL = 1;
+
+    private final SAMFileWriterStub stub;
     private final File file;
     private SAMFileWriter writer;
 
+    /**
+     * The reads given to temporary storage while they fit in memory; null for permanent storage and once the
+     * reads have been spilled to the temporary file.
+     */
+    private List<SAMRecord> bufferedReads = null;
+    private ProgressLoggerInterface progressLogger = null;
+
     private static Logger logger = Logger.getLogger(SAMFileWriterStorage.class);
 
+    /**
+     * Constructs storage writing directly into the output of the stub.
+     * @param stub Stub to use when constructing the output file.
+     */
     public SAMFileWriterStorage( SAMFileWriterStub stub ) {
-        this(stub,stub.getOutputFile());
+        this.stub = stub;
+        this.file = stub.getOutputFile();
+        this.writer = createWriter(false);
     }
 
+    /**
+     * Constructs temporary storage for the reads of a shard, which is written to the given file only if there are
+     * too many reads to keep in memory.
+     * @param stub Stub to use when synthesizing file / header info.
+     * @param file File into which to spill the reads.
+     */
     public SAMFileWriterStorage( SAMFileWriterStub stub, File file ) {
+        this.stub = stub;
         this.file = file;
+        this.bufferedReads = new ArrayList<SAMRecord>();
+    }
+
+    /**
+     * Create the writer to the file of this storage.
+     * @param temporary true to create a writer for the temporary file of a shard, which is neither indexed nor
+     *                  checksummed, and written at a low compression level.
+     * @return A new writer.
+     */
+    private SAMFileWriter createWriter( final boolean temporary ) {
+        SAMFileWriter writer;
         SAMFileWriterFactory factory = new SAMFileWriterFactory();
         // Enable automatic index creation for pre-sorted BAMs.
-        if (stub.getFileHeader().getSortOrder().equals(SAMFileHeader.SortOrder.coordinate) && stub.getIndexOnTheFly())
+        if (!temporary && stub.getFileHeader().getSortOrder().equals(SAMFileHeader.SortOrder.coordinate) && stub.getIndexOnTheFly())
             factory.setCreateIndex(true);
-        if (stub.getGenerateMD5())
+        if (!temporary && stub.getGenerateMD5())
             factory.setCreateMd5File(true);
         // Adjust max records in RAM.
         // TODO -- this doesn't actually work because of a bug in Picard; do not use until fixed
@@ -68,34 +114,58 @@ public class SAMFileWriterStorage implements SAMFileWriter, Storage<SAMFileWrite
             factory.setMaxRecordsInRam(stub.getMaxRecordsInRam());
 
         if(stub.getOutputFile() != null) {
+            final Integer compressionLevel = temporary ? Integer.valueOf(TEMPORARY_COMPRESSION_LEVEL) : stub.getCompressionLevel();
             try {
-                this.writer = createBAMWriter(factory,stub.getFileHeader(),stub.isPresorted(),file,stub.getCompressionLevel());
+                writer = createBAMWriter(factory,stub.getFileHeader(),stub.isPresorted(),file,compressionLevel);
             }
             catch(RuntimeIOException ex) {
                 throw new UserException.CouldNotCreateOutputFile(file,"file could not be created",ex);
             }
         }
         else if(stub.getOutputStream() != null){
-            this.writer = factory.makeSAMWriter( stub.getFileHeader(), stub.isPresorted(), stub.getOutputStream());
+            writer = factory.makeSAMWriter( stub.getFileHeader(), stub.isPresorted(), stub.getOutputStream());
         }
         else
             throw new UserException("Unable to write to SAM file; neither a target file nor a stream has been specified");
 
         // if we want to send the BAM file through the simplifying writer, wrap it here
         if ( stub.simplifyBAM() ) {
-            this.writer = new SimplifyingSAMFileWriter(this.writer);
+            writer = new SimplifyingSAMFileWriter(writer);
         }
+
+        if ( progressLogger != null )
+            writer.setProgressLogger(progressLogger);
+
+        return writer;
     }
 
     public SAMFileHeader getFileHeader() {
-        return writer.getFileHeader();
+        return writer != null ? writer.getFileHeader() : stub.getFileHeader();
     }
 
     public void addAlignment( SAMRecord read ) {
-        writer.addAlignment(read);
+        if ( bufferedReads != null ) {
+            bufferedReads.add(read);
+            if ( bufferedReads.size() > MAX_BUFFERED_READS )
+                spill();
+        }
+        else
+            writer.addAlignment(read);
+    }
+
+    /**
+     * Write the reads kept in memory so far to the temporary file, and all further reads with them.
+     */
+    private void spill() {
+        writer = createWriter(true);
+        for ( final SAMRecord read : bufferedReads )
+            writer.addAlignment(read);
+        bufferedReads = null;
     }
 
     public void close() {
+        if ( writer == null )
+            return;
         try {
             writer.close();
         } catch (RuntimeIOException e) {
@@ -104,6 +174,14 @@ public class SAMFileWriterStorage implements SAMFileWriter, Storage<SAMFileWrite
     }
 
     public void mergeInto( SAMFileWriter targetStream ) {
+        if ( bufferedReads != null ) {
+            for ( final SAMRecord read : bufferedReads )
+                targetStream.addAlignment( read );
+            bufferedReads = null;
+            file.delete();
+            return;
+        }
+
         SAMFileReader reader = new SAMFileReader( file );
         try {
             CloseableIterator<SAMRecord> iterator = reader.iterator();
@@ -152,6 +230,8 @@ public class SAMFileWriterStorage implements SAMFileWriter, Storage<SAMFileWrite
 
     @Override
     public void setProgressLogger(final ProgressLoggerInterface logger) {
-        writer.setProgressLogger(logger);
+        progressLogger = logger;
+        if ( writer != null )
+            writer.setProgressLogger(logger);
     }
 }
@@ -42,6 +42,7 @@ import htsjdk.variant.variantcontext.writer.VariantContextWriterFactory;
 import htsjdk.variant.vcf.VCFHeader;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.List;
@@ -60,11 +61,28 @@ public class VariantContextWriterStorage implements Storage<VariantContextWriter
 
     private final static int BUFFER_SIZE = 1048576;
 
+    /**
+     * Temporary storage keeps the records of a shard in memory until there are more than this many of them, so that
+     * merging them into the output doesn't have to write, read and parse them again.
+     */
+    final static int MAX_BUFFERED_RECORDS = 10000;
+
     protected final File file;
     protected OutputStream stream;
-    protected final VariantContextWriter writer;
+    protected VariantContextWriter writer;
     boolean closed = false;
 
+    /**
+     * The stub of temporary storage, needed to create the writer of the temporary file if the records spill.
+     */
+    private final VariantContextWriterStub stub;
+
+    /**
+     * The records given to temporary storage while they fit in memory; null for permanent storage and once the
+     * records have been spilled to the temporary file.
+     */
+    private List<VariantContext> bufferedRecords = null;
+
     /**
      * Constructs an object which will write directly into the output file provided by the stub.
      * Intentionally delaying the writing of the header -- this should be filled in by the walker.
@@ -75,6 +93,7 @@ public class VariantContextWriterStorage implements Storage<VariantContextWriter
      * @param stub Stub to use when constructing the output file.
      */
     public VariantContextWriterStorage(VariantContextWriterStub stub)  {
+        this.stub = null;
         if ( stub.getOutputFile() != null ) {
             this.file = stub.getOutputFile();
             writer = vcfWriterToFile(stub,stub.getOutputFile(),true,true);
@@ -90,7 +109,8 @@ public class VariantContextWriterStorage implements Storage<VariantContextWriter
     }
 
     /**
-     * Constructs an object which will redirect into a different file.
+     * Constructs an object which will redirect into a different file.  The records are kept in memory, and only
+     * written to the file once there are too many of them.
      *
      * Note that this function does not respect the isCompressed() request from the stub, in order
      * to ensure that tmp. files can be read back in by the Tribble system, and merged with the mergeInto function.
@@ -101,8 +121,19 @@ public class VariantContextWriterStorage implements Storage<VariantContextWriter
     public VariantContextWriterStorage(VariantContextWriterStub stub, File tempFile) {
         //logger.debug("Creating temporary output file " + tempFile.getAbsolutePath() + " for VariantContext output.");
         this.file = tempFile;
-        this.writer = vcfWriterToFile(stub, file, false, false);
+        this.stub = stub;
+        this.bufferedRecords = new ArrayList<VariantContext>();
+    }
+
+    /**
+     * Write the records kept in memory so far to the temporary file, and all further records with them.
+     */
+    private void spill() {
+        writer = vcfWriterToFile(stub, file, false, false);
         writer.writeHeader(stub.getVCFHeader());
+        for ( final VariantContext vc : bufferedRecords )
+            writer.add(vc);
+        bufferedRecords = null;
     }
 
     /**
@@ -179,7 +210,13 @@ public class VariantContextWriterStorage implements Storage<VariantContextWriter
 
     public void add(VariantContext vc) {
         if ( closed ) throw new ReviewedGATKException("Attempting to write to a closed VariantContextWriterStorage " + vc.getStart() + " storage=" + this);
-        writer.add(vc);
+        if ( bufferedRecords != null ) {
+            bufferedRecords.add(vc);
+            if ( bufferedRecords.size() > MAX_BUFFERED_RECORDS )
+                spill();
+        }
+        else
+            writer.add(vc);
     }
 
     /**
@@ -188,14 +225,17 @@ public class VariantContextWriterStorage implements Storage<VariantContextWriter
      * @param header  the header
      */
     public void writeHeader(VCFHeader header) {
-        writer.writeHeader(header);
+        // temporary storage takes its header from the stub when it spills
+        if ( bufferedRecords == null )
+            writer.writeHeader(header);
     }
 
     /**
      * Close the VCF storage object.
      */
     public void close() {
-        writer.close();
+        if ( writer != null )
+            writer.close();
         closed = true;
     }
 
@@ -204,6 +244,16 @@ public class VariantContextWriterStorage implements Storage<VariantContextWriter
             if ( ! closed )
                 throw new ReviewedGATKException("Writer not closed, but we are merging into the file!");
             final String targetFilePath = target.file != null ? target.file.getAbsolutePath() : "/dev/stdin";
+
+            if ( bufferedRecords != null ) {
+                logger.debug(String.format("Merging %d buffered records of VariantContextWriterStorage into %s", bufferedRecords.size(), targetFilePath));
+                for ( final VariantContext vc : bufferedRecords )
+                    target.writer.add(vc);
+                bufferedRecords = null;
+                file.delete();
+                return;
+            }
+
             logger.debug(String.format("Merging VariantContextWriterStorage from %s into %s", file.getAbsolutePath(), targetFilePath));
 
             // use the feature manager to determine the right codec for the tmp file
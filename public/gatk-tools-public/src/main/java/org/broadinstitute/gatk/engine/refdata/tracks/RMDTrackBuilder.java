@@ -26,6 +26,7 @@
 package org.broadinstitute.gatk.engine.refdata.tracks;
 
 import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
 import org.apache.log4j.Logger;
 import htsjdk.tribble.AbstractFeatureReader;
 import htsjdk.tribble.FeatureCodec;
@@ -37,10 +38,12 @@ import htsjdk.tribble.util.LittleEndianOutputStream;
 import org.broadinstitute.gatk.utils.commandline.Tags;
 import org.broadinstitute.gatk.engine.GenomeAnalysisEngine;
 import org.broadinstitute.gatk.engine.arguments.ValidationExclusion;
+import org.broadinstitute.gatk.engine.daemon.DaemonCache;
 import org.broadinstitute.gatk.engine.io.stubs.VCFWriterArgumentTypeDescriptor;
 import org.broadinstitute.gatk.engine.refdata.utils.RMDTriplet;
 import org.broadinstitute.gatk.engine.refdata.utils.RMDTriplet.RMDStorageType;
 import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.Utils;
 import org.broadinstitute.gatk.utils.collections.Pair;
 import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
@@ -51,6 +54,8 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
 /**
@@ -80,7 +85,7 @@ public class RMDTrackBuilder { // extends PluginManager<FeatureCodec> {
     /**
      * Validation exclusions, for validating the sequence dictionary.
      */
-    private ValidationExclusion.TYPE validationExclusionType;
+    private final ValidationExclusion.TYPE validationExclusionType;
 
     private final FeatureManager featureManager;
 
@@ -91,6 +96,12 @@ public class RMDTrackBuilder { // extends PluginManager<FeatureCodec> {
     // Map of file name -> new sample name used when performing on-the-fly sample renaming
     private final Map<String, String> sampleRenameMap;
 
+    // If not null, a directory of indices, pre-validated against our dictionary, that is shared between runs
+    private final TribbleIndexCache indexCache;
+
+    // Loads of the index of the same file are serialized, so that only one of them creates and writes the index
+    private final static ConcurrentMap<String, Object> indexLoadLocks = new ConcurrentHashMap<String, Object>();
+
     /**
      * Construct an RMDTrackerBuilder, allowing the user to define tracks to build after-the-fact.  This is generally
      * used when walkers want to directly manage the ROD system for whatever reason.  Before using this constructor,
@@ -108,12 +119,31 @@ public class RMDTrackBuilder { // extends PluginManager<FeatureCodec> {
                            final ValidationExclusion.TYPE validationExclusionType,
                            final boolean disableAutoIndexCreation,
                            final Map<String, String> sampleRenameMap) {
+        this(dict, genomeLocParser, validationExclusionType, disableAutoIndexCreation, sampleRenameMap, null);
+    }
+
+    /**
+     * Construct an RMDTrackerBuilder that keeps the indices it loads or creates in a persistent index cache.
+     * @param dict Sequence dictionary to use.
+     * @param genomeLocParser Location parser to use.
+     * @param validationExclusionType Types of validations to exclude, for sequence dictionary verification.
+     * @param disableAutoIndexCreation Do not auto-create index files, and do not use file locking when accessing index files.
+     * @param sampleRenameMap Map of file name -> new sample name used when performing on-the-fly sample renaming
+     * @param indexCache Cache of pre-validated indices shared between runs, or null to always load indices from the input files
+     */
+    public RMDTrackBuilder(final SAMSequenceDictionary dict,
+                           final GenomeLocParser genomeLocParser,
+                           final ValidationExclusion.TYPE validationExclusionType,
+                           final boolean disableAutoIndexCreation,
+                           final Map<String, String> sampleRenameMap,
+                           final TribbleIndexCache indexCache) {
         this.dict = dict;
         this.validationExclusionType = validationExclusionType;
         this.genomeLocParser = genomeLocParser;
         this.featureManager = new FeatureManager(GenomeAnalysisEngine.lenientVCFProcessing(validationExclusionType));
         this.disableAutoIndexCreation = disableAutoIndexCreation;
         this.sampleRenameMap = sampleRenameMap;
+        this.indexCache = indexCache;
     }
 
     /**
@@ -262,13 +292,83 @@ public class RMDTrackBuilder { // extends PluginManager<FeatureCodec> {
 
     /**
      * create an index for the input file
+     *
+     * When resources are shared between runs (see DaemonCache), an index loaded for the same file, codec, sequence
+     * dictionary and validation exclusions by an earlier run is reused as long as neither the file nor its index has
+     * changed since.
+     *
+     * The state of this builder is fixed at construction, so the data sources opened in parallel by the engine load
+     * the indices of different files concurrently.  Loads of the same index file, by this builder or by the builders of
+     * concurrent daemon runs, are serialized by a lock per index file, so that only one of them creates and writes a
+     * missing index.
+     *
      * @param inputFile the input file
      * @param codec the codec to use
      * @return a linear index for the specified type
      * @throws IOException if we cannot write the index file
      */
-    public synchronized Index loadIndex( final File inputFile, final FeatureCodec codec) throws IOException {
+    public Index loadIndex( final File inputFile, final FeatureCodec codec) throws IOException {
         final File indexFile = Tribble.indexFile(inputFile);
+        final String lockKey = indexFile.getAbsolutePath();
+        Object lock = indexLoadLocks.get(lockKey);
+        if ( lock == null ) {
+            final Object created = new Object();
+            lock = indexLoadLocks.putIfAbsent(lockKey, created);
+            if ( lock == null )
+                lock = created;
+        }
+
+        synchronized (lock) {
+            return DaemonCache.get("Tribble index " + indexVariant(codec), new DaemonCache.Loader<Index>() {
+                @Override
+                public Index load() throws IOException {
+                    return loadIndex(inputFile, codec, indexFile);
+                }
+            }, inputFile, indexFile);
+        }
+    }
+
+    /**
+     * The indices of one file are kept apart by everything that goes into loading and validating them: the codec,
+     * the contigs of the reference dictionary and the validation exclusions.
+     *
+     * @param codec the codec the index is loaded for
+     * @return a key identifying how an index of a file is loaded
+     */
+    private String indexVariant(final FeatureCodec codec) {
+        return String.format("%s %s %s", codec.getClass().getName(), dictionaryKey(dict), validationExclusionType);
+    }
+
+    /**
+     * @param dict a sequence dictionary, or null
+     * @return a key identifying the contigs of dict by an MD5 digest of their names and lengths
+     */
+    private static String dictionaryKey(final SAMSequenceDictionary dict) {
+        if ( dict == null )
+            return "without dictionary";
+        final StringBuilder contigs = new StringBuilder();
+        for ( final SAMSequenceRecord contig : dict.getSequences() )
+            contigs.append(contig.getSequenceName()).append('\t').append(contig.getSequenceLength()).append('\n');
+        return String.format("for %d contigs %s", dict.size(), Utils.calcMD5(contigs.toString()));
+    }
+
+    private Index loadIndex( final File inputFile, final FeatureCodec codec, final File indexFile ) throws IOException {
+        if ( indexCache == null )
+            return loadIndexFromInputFile(inputFile, codec, indexFile);
+
+        final String variant = indexVariant(codec);
+        Index idx = indexCache.get(inputFile, variant);
+        if ( idx != null )
+            return idx;
+
+        idx = loadIndexFromInputFile(inputFile, codec, indexFile);
+        if ( dict != null && IndexDictionaryUtils.getSequenceDictionaryFromProperties(idx).size() == 0 )
+            validateAndUpdateIndexSequenceDictionary(inputFile, idx, dict);
+        indexCache.put(inputFile, variant, idx);
+        return idx;
+    }
+
+    private Index loadIndexFromInputFile( final File inputFile, final FeatureCodec codec, final File indexFile ) throws IOException {
         final FSLockWithShared lock = new FSLockWithShared(indexFile);
         Index idx = null;
 
@@ -0,0 +1,197 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.refdata.tracks;
+
+import htsjdk.tribble.TribbleException;
+import htsjdk.tribble.index.Index;
+import htsjdk.tribble.index.IndexFactory;
+import htsjdk.tribble.util.LittleEndianOutputStream;
+import org.apache.log4j.Logger;
+import org.broadinstitute.gatk.utils.Utils;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A directory of Tribble indices shared between GATK runs.
+ *
+ * Each index is stored under a name derived from the canonical path, size and modification time of the file it
+ * indexes, plus a variant string describing how the index was prepared (the reference dictionary it was validated
+ * against, for instance).  A file that changes on disk therefore simply stops matching its old entry, and an entry
+ * is never rewritten once it exists, so the cache needs no locking: entries are written to a temporary file and
+ * renamed into place, and readers memory-map them.
+ *
+ * Failing to read or write an entry is never fatal -- the caller just falls back to building the index itself.
+ */
+public class TribbleIndexCache {
+    private final static Logger logger = Logger.getLogger(TribbleIndexCache.class);
+
+    private static final String INDEX_EXTENSION = ".idx";
+
+    private final File directory;
+
+    /**
+     * Create a cache keeping its indices in directory, creating the directory if needed
+     *
+     * @param directory the directory holding the cached indices
+     */
+    public TribbleIndexCache(final File directory) {
+        if ( directory == null ) throw new IllegalArgumentException("directory cannot be null");
+        if ( ! directory.isDirectory() && ! directory.mkdirs() && ! directory.isDirectory() )
+            throw new UserException.CouldNotCreateOutputFile(directory, "Unable to create the Tribble index cache directory");
+        this.directory = directory;
+    }
+
+    /**
+     * @return the directory holding the cached indices
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Get the cached index for inputFile
+     *
+     * @param inputFile the indexed file
+     * @param variant   how the index was prepared, as given to put()
+     * @return the cached index, or null if there is none for the current contents of inputFile
+     */
+    public Index get(final File inputFile, final String variant) {
+        final File entry = entryFile(inputFile, variant);
+        if ( ! entry.canRead() )
+            return null;
+
+        logger.debug("Loading cached Tribble index " + entry + " for file " + inputFile);
+        try {
+            return readIndex(entry);
+        } catch (IOException e) {
+            logger.warn("Unable to read the cached Tribble index " + entry + " for file " + inputFile + "; rebuilding it");
+        } catch (TribbleException e) {
+            logger.warn("Unable to read the cached Tribble index " + entry + " for file " + inputFile + "; rebuilding it");
+        }
+        return null;
+    }
+
+    /**
+     * Store index as the cached index for inputFile
+     *
+     * @param inputFile the indexed file
+     * @param variant   how the index was prepared; only get() calls with the same variant will return it
+     * @param index     the index of inputFile
+     */
+    public void put(final File inputFile, final String variant, final Index index) {
+        final File entry = entryFile(inputFile, variant);
+        File temp = null;
+        try {
+            temp = File.createTempFile(entry.getName(), ".tmp", directory);
+            final LittleEndianOutputStream stream = new LittleEndianOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                index.write(stream);
+            } finally {
+                stream.close();
+            }
+
+            // another run may have cached the same index in the meantime, in which case its copy is just as good
+            if ( temp.renameTo(entry) || entry.exists() )
+                logger.debug("Cached Tribble index for file " + inputFile + " as " + entry);
+            else
+                logger.warn("Unable to add the Tribble index for " + inputFile + " to the index cache in " + directory);
+        } catch (IOException e) {
+            logger.warn("Unable to add the Tribble index for " + inputFile + " to the index cache in " + directory + ": " + e.getMessage());
+        } finally {
+            if ( temp != null && temp.exists() && ! temp.delete() )
+                logger.warn("Unable to delete temporary index cache file " + temp);
+        }
+    }
+
+    /**
+     * @return the file holding the cached index of the current contents of inputFile, prepared as described by variant
+     */
+    protected File entryFile(final File inputFile, final String variant) {
+        String path;
+        try {
+            path = inputFile.getCanonicalPath();
+        } catch (IOException e) {
+            path = inputFile.getAbsolutePath();
+        }
+        final String key = String.format("%s\t%d\t%d\t%s", path, inputFile.length(), inputFile.lastModified(), variant);
+        return new File(directory, inputFile.getName() + "." + Utils.calcMD5(key) + INDEX_EXTENSION);
+    }
+
+    /**
+     * Read the index in file through a memory mapping of it
+     *
+     * @param file a Tribble index file
+     * @return the index
+     * @throws IOException if the file can't be read
+     */
+    private static Index readIndex(final File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final BufferedInputStream stream = new BufferedInputStream(new ByteBufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())));
+            final Class<?> indexType = IndexFactory.IndexType.getIndexType(stream).getIndexType();
+            final Class<? extends Index> indexClass = indexType.asSubclass(Index.class);
+            return indexClass.getConstructor(InputStream.class).newInstance(stream);
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Unable to create an index from " + file, e);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads a byte buffer, such as a memory mapped file, as a stream
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) {
+            if ( ! buffer.hasRemaining() )
+                return -1;
+            final int n = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -26,6 +26,7 @@
 package org.broadinstitute.gatk.engine.resourcemanagement;
 
 import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+import org.broadinstitute.gatk.utils.nanoScheduler.NSExecutionMode;
 
 /**
  * Models how threads are distributed between various components of the GATK.
@@ -51,6 +52,11 @@ public class ThreadAllocation {
      */
     private final boolean monitorEfficiency;
 
+    /**
+     * How the CPU threads of each data thread share their work
+     */
+    private final NSExecutionMode cpuThreadExecutionMode;
+
     public int getNumDataThreads() {
         return numDataThreads;
     }
@@ -67,6 +73,10 @@ public class ThreadAllocation {
         return monitorEfficiency;
     }
 
+    public NSExecutionMode getCPUThreadExecutionMode() {
+        return cpuThreadExecutionMode;
+    }
+
     /**
      * Are we running in parallel mode?
      *
@@ -104,13 +114,31 @@ public class ThreadAllocation {
                             final int numCPUThreadsPerDataThread,
                             final int numIOThreads,
                             final boolean monitorEfficiency) {
+        this(numDataThreads, numCPUThreadsPerDataThread, numIOThreads, monitorEfficiency, NSExecutionMode.PER_ELEMENT);
+    }
+
+    /**
+     * Set up the thread allocation, specifying how the CPU threads of each data thread share their work.
+     * @param numDataThreads Total number of threads allocated to the traversal.
+     * @param numCPUThreadsPerDataThread The number of CPU threads per data thread to allocate
+     * @param numIOThreads Total number of threads allocated exclusively to IO.
+     * @param monitorEfficiency should we monitor threading efficiency in the GATK?
+     * @param cpuThreadExecutionMode how the CPU threads of each data thread distribute their work
+     */
+    public ThreadAllocation(final int numDataThreads,
+                            final int numCPUThreadsPerDataThread,
+                            final int numIOThreads,
+                            final boolean monitorEfficiency,
+                            final NSExecutionMode cpuThreadExecutionMode) {
         if ( numDataThreads < 1 ) throw new ReviewedGATKException("numDataThreads cannot be less than 1, but saw " + numDataThreads);
         if ( numCPUThreadsPerDataThread < 1 ) throw new ReviewedGATKException("numCPUThreadsPerDataThread cannot be less than 1, but saw " + numCPUThreadsPerDataThread);
         if ( numIOThreads < 0 ) throw new ReviewedGATKException("numIOThreads cannot be less than 0, but saw " + numIOThreads);
+        if ( cpuThreadExecutionMode == null ) throw new ReviewedGATKException("cpuThreadExecutionMode cannot be null");
 
         this.numDataThreads = numDataThreads;
         this.numCPUThreadsPerDataThread = numCPUThreadsPerDataThread;
         this.numIOThreads = numIOThreads;
         this.monitorEfficiency = monitorEfficiency;
+        this.cpuThreadExecutionMode = cpuThreadExecutionMode;
     }
 }
@@ -32,7 +32,9 @@ import org.broadinstitute.gatk.engine.datasources.providers.ShardDataProvider;
 import org.broadinstitute.gatk.engine.walkers.Walker;
 import org.broadinstitute.gatk.utils.GenomeLoc;
 import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+import org.broadinstitute.gatk.utils.nanoScheduler.NanoScheduler;
 import org.broadinstitute.gatk.utils.progressmeter.ProgressMeter;
+import org.broadinstitute.gatk.utils.progressmeter.ProgressMetrics;
 
 public abstract class TraversalEngine<M,T,WalkerType extends Walker<M,T>,ProviderType extends ShardDataProvider> {
     /** our log, which we want to capture anything from this class */
@@ -79,6 +81,34 @@ public abstract class TraversalEngine<M,T,WalkerType extends Walker<M,T>,Provide
 
         this.engine = engine;
         this.progressMeter = progressMeter;
+
+        if ( progressMeter != null )
+            registerMetrics(progressMeter.getMetrics());
+    }
+
+    /**
+     * Register gauges describing the internal state of this traversal engine with metrics
+     *
+     * With -nt every traversal engine registers its own gauges, and metrics reports their sum.
+     * The default implementation registers nothing.
+     *
+     * @param metrics the metrics of the progress meter we were initialized with
+     */
+    protected void registerMetrics(final ProgressMetrics metrics) {
+    }
+
+    /**
+     * Register the gauges describing the work queued up in nanoScheduler with metrics
+     *
+     * @param metrics the metrics to register with
+     * @param nanoScheduler the nano scheduler executing our traversals
+     */
+    protected static void registerNanoSchedulerMetrics(final ProgressMetrics metrics, final NanoScheduler<?,?,?> nanoScheduler) {
+        metrics.register("gatk_nanoscheduler_pending_map_results",
+                "Map results, or batches of them, waiting to be reduced by the nano schedulers",
+                new ProgressMetrics.Gauge() {
+                    @Override public double getValue() { return nanoScheduler.getNumPendingMapResults(); }
+                });
     }
 
     /**
@@ -43,11 +43,13 @@ import org.broadinstitute.gatk.utils.activeregion.ActiveRegion;
 import org.broadinstitute.gatk.utils.activeregion.ActivityProfile;
 import org.broadinstitute.gatk.utils.activeregion.ActivityProfileState;
 import org.broadinstitute.gatk.utils.activeregion.BandPassActivityProfile;
+import org.broadinstitute.gatk.utils.nanoScheduler.NSExecutionMode;
 import org.broadinstitute.gatk.utils.nanoScheduler.NSMapFunction;
 import org.broadinstitute.gatk.utils.nanoScheduler.NSProgressFunction;
 import org.broadinstitute.gatk.utils.nanoScheduler.NSReduceFunction;
 import org.broadinstitute.gatk.utils.nanoScheduler.NanoScheduler;
 import org.broadinstitute.gatk.utils.progressmeter.ProgressMeter;
+import org.broadinstitute.gatk.utils.progressmeter.ProgressMetrics;
 import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
 
 import java.io.PrintStream;
@@ -123,7 +125,16 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
      * @param nThreads number of threads
      */
     public TraverseActiveRegions(final int nThreads) {
-        nanoScheduler = new NanoScheduler<>(nThreads);
+        this(nThreads, NSExecutionMode.PER_ELEMENT);
+    }
+
+    /**
+     * Create an active region traverser that uses nThreads, distributing work among them according to executionMode
+     * @param nThreads number of threads
+     * @param executionMode how to distribute work among the threads
+     */
+    public TraverseActiveRegions(final int nThreads, final NSExecutionMode executionMode) {
+        nanoScheduler = new NanoScheduler<>(nThreads, executionMode);
         nanoScheduler.setProgressFunction(new NSProgressFunction<MapData>() {
             @Override
             public void progress(MapData lastActiveRegion) {
@@ -208,6 +219,11 @@ public final class TraverseActiveRegions<M, T> extends TraversalEngine<M,T,Activ
         return "active regions";
     }
 
+    @Override
+    protected void registerMetrics(final ProgressMetrics metrics) {
+        registerNanoSchedulerMetrics(metrics, nanoScheduler);
+    }
+
     @Override
     public String toString() {
         return "TraverseActiveRegions";
@@ -34,11 +34,13 @@ import org.broadinstitute.gatk.engine.walkers.DataSource;
 import org.broadinstitute.gatk.engine.walkers.LocusWalker;
 import org.broadinstitute.gatk.engine.walkers.Walker;
 import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.nanoScheduler.NSExecutionMode;
 import org.broadinstitute.gatk.utils.nanoScheduler.NSMapFunction;
 import org.broadinstitute.gatk.utils.nanoScheduler.NSProgressFunction;
 import org.broadinstitute.gatk.utils.nanoScheduler.NSReduceFunction;
 import org.broadinstitute.gatk.utils.nanoScheduler.NanoScheduler;
 import org.broadinstitute.gatk.utils.pileup.ReadBackedPileupImpl;
+import org.broadinstitute.gatk.utils.progressmeter.ProgressMetrics;
 
 import java.util.Iterator;
 
@@ -52,7 +54,11 @@ public class TraverseLociNano<M,T> extends TraversalEngine<M,T,LocusWalker<M,T>,
     final NanoScheduler<MapData, MapResult, T> nanoScheduler;
 
     public TraverseLociNano(int nThreads) {
-        nanoScheduler = new NanoScheduler<MapData, MapResult, T>(nThreads);
+        this(nThreads, NSExecutionMode.PER_ELEMENT);
+    }
+
+    public TraverseLociNano(final int nThreads, final NSExecutionMode executionMode) {
+        nanoScheduler = new NanoScheduler<MapData, MapResult, T>(nThreads, executionMode);
         nanoScheduler.setProgressFunction(new TraverseLociProgress());
     }
 
@@ -61,6 +67,11 @@ public class TraverseLociNano<M,T> extends TraversalEngine<M,T,LocusWalker<M,T>,
         return "sites";
     }
 
+    @Override
+    protected void registerMetrics(final ProgressMetrics metrics) {
+        registerNanoSchedulerMetrics(metrics, nanoScheduler);
+    }
+
     protected static class TraverseResults<T> {
         final int numIterations;
         final T reduceResult;
@@ -34,10 +34,12 @@ import org.broadinstitute.gatk.engine.datasources.providers.ReadShardDataProvide
 import org.broadinstitute.gatk.engine.datasources.providers.ReadView;
 import org.broadinstitute.gatk.engine.refdata.RefMetaDataTracker;
 import org.broadinstitute.gatk.engine.walkers.ReadWalker;
+import org.broadinstitute.gatk.utils.nanoScheduler.NSExecutionMode;
 import org.broadinstitute.gatk.utils.nanoScheduler.NSMapFunction;
 import org.broadinstitute.gatk.utils.nanoScheduler.NSProgressFunction;
 import org.broadinstitute.gatk.utils.nanoScheduler.NSReduceFunction;
 import org.broadinstitute.gatk.utils.nanoScheduler.NanoScheduler;
+import org.broadinstitute.gatk.utils.progressmeter.ProgressMetrics;
 import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
 
 import java.util.Iterator;
@@ -61,7 +63,11 @@ public class TraverseReadsNano<M,T> extends TraversalEngine<M,T,ReadWalker<M,T>,
     final NanoScheduler<MapData, MapResult, T> nanoScheduler;
 
     public TraverseReadsNano(int nThreads) {
-        nanoScheduler = new NanoScheduler<MapData, MapResult, T>(nThreads);
+        this(nThreads, NSExecutionMode.PER_ELEMENT);
+    }
+
+    public TraverseReadsNano(final int nThreads, final NSExecutionMode executionMode) {
+        nanoScheduler = new NanoScheduler<MapData, MapResult, T>(nThreads, executionMode);
         nanoScheduler.setProgressFunction(new NSProgressFunction<MapData>() {
             @Override
             public void progress(MapData lastProcessedMap) {
@@ -77,6 +83,11 @@ public class TraverseReadsNano<M,T> extends TraversalEngine<M,T,ReadWalker<M,T>,
         return "reads";
     }
 
+    @Override
+    protected void registerMetrics(final ProgressMetrics metrics) {
+        registerNanoSchedulerMetrics(metrics, nanoScheduler);
+    }
+
     /**
      * Traverse by reads, given the data and the walker
      *
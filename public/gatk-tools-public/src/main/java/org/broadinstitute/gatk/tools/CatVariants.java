@@ -29,7 +29,6 @@ import htsjdk.samtools.reference.ReferenceSequenceFile;
 import htsjdk.samtools.reference.ReferenceSequenceFileFactory;
 import org.apache.log4j.BasicConfigurator;
 import org.apache.log4j.Level;
-import htsjdk.tribble.AbstractFeatureReader;
 import htsjdk.tribble.FeatureReader;
 import htsjdk.tribble.index.IndexCreator;
 import org.broadinstitute.gatk.utils.commandline.Argument;
@@ -41,15 +40,11 @@ import org.broadinstitute.gatk.utils.help.HelpConstants;
 import org.broadinstitute.gatk.utils.text.XReadLines;
 import org.broadinstitute.gatk.utils.variant.GATKVCFIndexType;
 import org.broadinstitute.gatk.utils.variant.GATKVCFUtils;
-import htsjdk.variant.bcf2.BCF2Codec;
+import org.broadinstitute.gatk.utils.variant.VariantFileConcatenator;
+import org.broadinstitute.gatk.utils.variant.VariantFileConcatenator.FileType;
 import org.broadinstitute.gatk.utils.collections.Pair;
-import htsjdk.variant.vcf.VCFCodec;
-import htsjdk.variant.vcf.VCFHeader;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
 import htsjdk.variant.variantcontext.VariantContext;
-import htsjdk.variant.variantcontext.writer.Options;
-import htsjdk.variant.variantcontext.writer.VariantContextWriter;
-import htsjdk.variant.variantcontext.writer.VariantContextWriterFactory;
 
 import java.io.*;
 import java.util.*;
@@ -66,7 +61,8 @@ import java.util.*;
  *
  * When the input files are already sorted based on the intervals start positions, use -assumeSorted.
  *
- * Note: Currently the tool is more efficient when working with VCFs; we will work to make it as efficient for BCFs.
+ * When the headers of all inputs are compatible the records are copied without being decoded, and block-compressed
+ * VCFs are concatenated block by block. Otherwise every record is decoded and written again.
  *
  * </p>
  *
@@ -140,38 +136,10 @@ public class CatVariants extends CommandLineProgram {
         System.err.println("    If the input files are already sorted, then indicate that with --assumeSorted to improve performance.");
     }
 
-    private enum FileType {
-        VCF,
-        BCF,
-        BLOCK_COMPRESSED_VCF,
-        INVALID
-    }
-
     private FileType fileExtensionCheck(File inFile, File outFile) {
-        final String inFileName = inFile.toString().toLowerCase();
-        final String outFileName = outFile.toString().toLowerCase();
-
-        FileType inFileType = FileType.INVALID;
-
-        if (inFileName.endsWith(".vcf")) {
-            inFileType = FileType.VCF;
-            if (outFileName.endsWith(".vcf"))
-                return inFileType;
-        }
-
-        if (inFileName.endsWith(".bcf")) {
-            inFileType = FileType.BCF;
-            if (outFileName.endsWith(".bcf"))
-                return inFileType;
-        }
-
-        for (String extension : AbstractFeatureReader.BLOCK_COMPRESSED_EXTENSIONS) {
-            if (inFileName.endsWith(".vcf" + extension)) {
-                inFileType = FileType.BLOCK_COMPRESSED_VCF;
-                if (outFileName.endsWith(".vcf" + extension))
-                    return inFileType;
-            }
-        }
+        final FileType inFileType = VariantFileConcatenator.getFileType(inFile);
+        if (inFileType != FileType.INVALID && inFileType == VariantFileConcatenator.getFileType(outFile))
+            return inFileType;
 
         if (inFileType == FileType.INVALID)
             System.err.println(String.format("File extension for input file %s is not valid for CatVariants", inFile));
@@ -182,21 +150,6 @@ public class CatVariants extends CommandLineProgram {
         return FileType.INVALID;
     }
 
-    private FeatureReader<VariantContext> getFeatureReader(final FileType fileType, final File file) {
-        FeatureReader<VariantContext> reader = null;
-        switch(fileType) {
-            case VCF:
-            case BLOCK_COMPRESSED_VCF:
-                // getFeatureReader will handle both block-compressed and plain text VCFs
-                reader = AbstractFeatureReader.getFeatureReader(file.getAbsolutePath(), new VCFCodec(), false);
-                break;
-            case BCF:
-                reader = AbstractFeatureReader.getFeatureReader(file.getAbsolutePath(), new BCF2Codec(), false);
-                break;
-        }
-        return reader;
-    }
-
     /**
      * Replaces any .list files in rawFileList with the files named in said .list file
      * @param rawFileList the original file list, possibly including .list files
@@ -255,10 +208,11 @@ public class CatVariants extends CommandLineProgram {
                 if (!file.exists()) {
                     throw new UserException(String.format("File %s doesn't exist",file.getAbsolutePath()));
                 }
-                FeatureReader<VariantContext> reader = getFeatureReader(fileType, file);
+                FeatureReader<VariantContext> reader = VariantFileConcatenator.getFeatureReader(fileType, file);
                 Iterator<VariantContext> it = reader.iterator();
                 if(!it.hasNext()){
                     System.err.println(String.format("File %s is empty. This file will be ignored",file.getAbsolutePath()));
+                    reader.close();
                     continue;
                 }
                 VariantContext vc = it.next();
@@ -269,44 +223,22 @@ public class CatVariants extends CommandLineProgram {
 
         }
 
-        FileOutputStream outputStream = new FileOutputStream(outputFile);
-        EnumSet<Options> options = EnumSet.of(Options.INDEX_ON_THE_FLY);
-        final IndexCreator idxCreator = GATKVCFUtils.getIndexCreator(variant_index_type, variant_index_parameter, outputFile, ref.getSequenceDictionary());
-        final VariantContextWriter outputWriter = VariantContextWriterFactory.create(outputFile, outputStream, ref.getSequenceDictionary(), idxCreator, options);
+        // when every part is empty, as when gathering the output of a scatter with no variants in any of its
+        // intervals, the output still gets the header (and index) of the first part
+        if (priorityQueue.isEmpty())
+            priorityQueue.add(new Pair<>(0, variant.get(0)));
 
-        boolean firstFile = true;
-        int count = 0;
-        while(!priorityQueue.isEmpty() ){
-            count++;
+        final List<File> sortedFiles = new ArrayList<>(priorityQueue.size());
+        while (!priorityQueue.isEmpty()) {
             File file = priorityQueue.remove().getSecond();
             if (!file.exists()) {
                 throw new UserException(String.format("File %s doesn't exist",file.getAbsolutePath()));
             }
-            FeatureReader<VariantContext> reader = getFeatureReader(fileType, file);
-
-            if(count%10 ==0)
-                System.out.print(count);
-            else
-                System.out.print(".");
-            if (firstFile){
-                VCFHeader header = (VCFHeader)reader.getHeader();
-                outputWriter.writeHeader(header);
-                firstFile = false;
-            }
-
-            Iterator<VariantContext> it = reader.iterator();
-
-            while (it.hasNext()){
-                VariantContext vc = it.next();
-                outputWriter.add(vc);
-            }
-
-            reader.close();
-
+            sortedFiles.add(file);
         }
-        System.out.println();
 
-        outputWriter.close();
+        final IndexCreator idxCreator = GATKVCFUtils.getIndexCreator(variant_index_type, variant_index_parameter, outputFile, ref.getSequenceDictionary());
+        new VariantFileConcatenator(fileType, sortedFiles).concatenate(outputFile, ref.getSequenceDictionary(), idxCreator);
 
         return 0;
     }
@@ -315,7 +247,7 @@ public class CatVariants extends CommandLineProgram {
         try {
             CatVariants instance = new CatVariants();
             start(instance, args);
-            System.exit(CommandLineProgram.result);
+            System.exit(CommandLineProgram.getResult());
         } catch ( UserException e ) {
             printUsage();
             exitSystemWithUserError(e);
@@ -74,7 +74,7 @@ public class ListAnnotations extends CommandLineProgram {
         try {
             ListAnnotations instance = new ListAnnotations();
             start(instance, args);
-            System.exit(CommandLineProgram.result);
+            System.exit(CommandLineProgram.getResult());
         } catch ( UserException e ) {
             printUsage();
             exitSystemWithUserError(e);
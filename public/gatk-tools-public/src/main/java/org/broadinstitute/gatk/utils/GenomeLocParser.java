@@ -29,6 +29,7 @@ import com.google.java.contract.Ensures;
 import com.google.java.contract.Requires;
 import com.google.java.contract.ThrowEnsures;
 import htsjdk.samtools.reference.ReferenceSequenceFile;
+import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.SAMSequenceRecord;
@@ -81,6 +82,18 @@ public final class GenomeLocParser {
      */
     private final ValidationLevel validationLevel;
 
+    /**
+     * The contig names of the master sequence dictionary, by contig index.  Every GenomeLoc created from a contig
+     * index shares these strings.
+     */
+    private final String[] contigNames;
+
+    /**
+     * The most recent read header found to agree with our dictionary, shared by all threads so that the common case
+     * of reads from a single header needs no thread-local lookup
+     */
+    private volatile SAMFileHeader lastCompatibleHeader = null;
+
     /**
      * @return a caching sequence dictionary appropriate for this thread
      */
@@ -120,6 +133,9 @@ public final class GenomeLocParser {
 
         this.validationLevel = validationLevel;
         this.SINGLE_MASTER_SEQUENCE_DICTIONARY = seqDict;
+        this.contigNames = new String[seqDict.size()];
+        for (final SAMSequenceRecord contig : seqDict.getSequences())
+            contigNames[contig.getSequenceIndex()] = contig.getSequenceName();
         if ( logger.isDebugEnabled() ) {
             logger.debug(String.format("Prepared reference sequence contig dictionary"));
             for (SAMSequenceRecord contig : seqDict.getSequences()) {
@@ -240,6 +256,52 @@ public final class GenomeLocParser {
         return new GenomeLoc(interned, index, start, stop);
     }
 
+    /**
+     * Create a single position GenomeLoc from a packed locus
+     *
+     * The contig name of the new loc is taken from the sequence dictionary.  The position is not required to be on
+     * the reference.
+     *
+     * @param locus a locus packed by PackedLocus.pack
+     * @return a genome loc of the single position locus, or GenomeLoc.UNMAPPED if locus is unmapped
+     */
+    @Ensures("result != null")
+    public GenomeLoc createGenomeLoc(final long locus) {
+        if ( PackedLocus.isUnmapped(locus) )
+            return GenomeLoc.UNMAPPED;
+        final int contigIndex = PackedLocus.getContigIndex(locus);
+        if ( contigIndex < 0 || contigIndex >= contigNames.length )
+            vglHelper(String.format("The contig index %d of locus %s is not in the sequence dictionary", contigIndex, PackedLocus.toString(locus)));
+        final int position = PackedLocus.getPosition(locus);
+        return new GenomeLoc(contigNames[contigIndex], contigIndex, position, position);
+    }
+
+    /**
+     * Create a GenomeLoc spanning two packed loci on the same contig
+     *
+     * The contig name of the new loc is taken from the sequence dictionary.  The span is not required to be on the
+     * reference.
+     *
+     * @param start the packed first position of the loc
+     * @param stop  the packed last position of the loc, on the same contig as start
+     * @return a genome loc from start to stop, or GenomeLoc.UNMAPPED if both loci are unmapped
+     */
+    @Ensures("result != null")
+    public GenomeLoc createGenomeLoc(final long start, final long stop) {
+        final int contigIndex = PackedLocus.getContigIndex(start);
+        if ( contigIndex != PackedLocus.getContigIndex(stop) )
+            vglHelper(String.format("The loci %s and %s are not on the same contig", PackedLocus.toString(start), PackedLocus.toString(stop)));
+        if ( PackedLocus.isUnmapped(start) )
+            return GenomeLoc.UNMAPPED;
+        if ( contigIndex < 0 || contigIndex >= contigNames.length )
+            vglHelper(String.format("The contig index %d of locus %s is not in the sequence dictionary", contigIndex, PackedLocus.toString(start)));
+        final int startPosition = PackedLocus.getPosition(start);
+        final int stopPosition = PackedLocus.getPosition(stop);
+        if ( startPosition > stopPosition )
+            vglHelper(String.format("The stop position %d is less than start %d", stopPosition, startPosition));
+        return new GenomeLoc(contigNames[contigIndex], contigIndex, startPosition, stopPosition);
+    }
+
     /**
      * Create a new GenomeLoc, on contig, including the single position pos.
      *
@@ -446,7 +508,7 @@ public final class GenomeLocParser {
         else {
             // Use Math.max to ensure that end >= start (Picard assigns the end to reads that are entirely within an insertion as start-1)
             final int end = read.getReadUnmappedFlag() ? read.getAlignmentStart() : Math.max(read.getAlignmentEnd(), read.getAlignmentStart());
-            return createGenomeLoc(read.getReferenceName(), read.getReferenceIndex(), read.getAlignmentStart(), end, false);
+            return createGenomeLoc(read, read.getAlignmentStart(), end);
         }
     }
 
@@ -467,10 +529,48 @@ public final class GenomeLocParser {
         else {
             // Use Math.max to ensure that end >= start (Picard assigns the end to reads that are entirely within an insertion as start-1)
             final int end = read.getReadUnmappedFlag() ? read.getUnclippedEnd() : Math.max(read.getUnclippedEnd(), read.getUnclippedStart());
-            return createGenomeLoc(read.getReferenceName(), read.getReferenceIndex(), read.getUnclippedStart(), end, false);
+            return createGenomeLoc(read, read.getUnclippedStart(), end);
         }
     }
 
+    /**
+     * Create a genome loc from start to stop on the contig of a read.  The positions are not required to be on the
+     * reference.
+     *
+     * This is the fast path for the locs of reads: once the sequence dictionary of a read's header has been found to
+     * agree with ours (same names at the same indices), the reads from that header need no per-call lookup or
+     * validation of their contig, and the contig name is taken from our dictionary.  Other reads are validated as
+     * usual.
+     *
+     * @param read  a read placed on the genome
+     * @param start the starting position
+     * @param stop  the stop position of this loc, inclusive
+     * @return a non-null GenomeLoc
+     */
+    @Requires("read != null")
+    @Ensures("result != null")
+    public GenomeLoc createGenomeLoc(final SAMRecord read, final int start, final int stop) {
+        final int contigIndex = read.getReferenceIndex();
+        if ( contigIndex >= 0 && contigIndex < contigNames.length && start <= stop && isCompatibleHeader(read.getHeader()) )
+            return new GenomeLoc(contigNames[contigIndex], contigIndex, start, stop);
+        return createGenomeLoc(read.getReferenceName(), contigIndex, start, stop, false);
+    }
+
+    /**
+     * @param header a SAM file header, or null
+     * @return true if header is non-null, and the contig indices and names of its reads are those of our dictionary
+     */
+    private boolean isCompatibleHeader(final SAMFileHeader header) {
+        if ( header == null )
+            return false;
+        if ( header == lastCompatibleHeader )
+            return true;
+        if ( ! getContigInfo().isCompatibleHeader(header) )
+            return false;
+        lastCompatibleHeader = header;
+        return true;
+    }
+
     /**
      * Creates a GenomeLoc from a Tribble feature
      * @param feature
@@ -28,9 +28,6 @@ package org.broadinstitute.gatk.utils;
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.SAMSequenceRecord;
 import org.apache.log4j.Logger;
-import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
-import org.broadinstitute.gatk.utils.interval.IntervalMergingRule;
-import org.broadinstitute.gatk.utils.interval.IntervalUtils;
 
 import java.util.*;
 
@@ -43,18 +40,31 @@ import java.util.*;
  *         will also remove a region from the list, if the region to remove is a
  *         partial interval of a region in the collection it will remove the region from
  *         that element.
+ *         <p/>
+ *         The locations are kept in sorted arrays, alongside their starts and stops packed into longs
+ *         (see PackedLocus).  As the locations in the set never overlap, their stops are sorted just like their
+ *         starts, so the stop keys play the part of the maximum-end annotation of an interval tree: the first
+ *         location that can overlap a query is found by binary search on them, and the overlapping locations
+ *         follow it contiguously.  Overlap queries therefore take O(log n + k) without allocating, iterating
+ *         returns the stored locations themselves, and bulk construction is a single sort and merge.
  *
  * @author aaron
  * Date: May 22, 2009
  * Time: 10:54:40 AM
  */
 public class GenomeLocSortedSet extends AbstractSet<GenomeLoc> {
-    private static Logger logger = Logger.getLogger(GenomeLocSortedSet.class);
+    private static final int INITIAL_CAPACITY = 16;
 
     private GenomeLocParser genomeLocParser;
 
-    // our private storage for the GenomeLoc's
-    private final List<GenomeLoc> mArray = new ArrayList<GenomeLoc>();
+    // our private storage for the GenomeLoc's, and their packed start and stop keys
+    private GenomeLoc[] locs;
+    private long[] startKeys;
+    private long[] stopKeys;
+    private int size = 0;
+
+    // read-only list view of the locs, handed out by toList() and iterator()
+    private final LocList locList = new LocList();
 
     // cache this to make overlap checking much more efficient
     private int previousOverlapSearchIndex = -1;
@@ -65,8 +75,15 @@ public class GenomeLocSortedSet extends AbstractSet<GenomeLoc> {
      * @param parser a non-null the parser we use to create genome locs
      */
     public GenomeLocSortedSet(final GenomeLocParser parser) {
+        this(parser, INITIAL_CAPACITY);
+    }
+
+    private GenomeLocSortedSet(final GenomeLocParser parser, final int capacity) {
         if ( parser == null ) throw new IllegalArgumentException("parser cannot be null");
         this.genomeLocParser = parser;
+        locs = new GenomeLoc[Math.max(capacity, 1)];
+        startKeys = new long[locs.length];
+        stopKeys = new long[locs.length];
     }
 
     /**
@@ -90,11 +107,16 @@ public class GenomeLocSortedSet extends AbstractSet<GenomeLoc> {
      * @param l a collection of genome locs to add to this set
      */
     public GenomeLocSortedSet(final GenomeLocParser parser, final Collection<GenomeLoc> l) {
-        this(parser);
-
-        final ArrayList<GenomeLoc> sorted = new ArrayList<GenomeLoc>(l);
-        Collections.sort(sorted);
-        mArray.addAll(IntervalUtils.mergeIntervalLocations(sorted, IntervalMergingRule.OVERLAPPING_ONLY));
+        this(parser, l.size());
+
+        final GenomeLoc[] sorted = l.toArray(new GenomeLoc[l.size()]);
+        Arrays.sort(sorted);
+        for ( final GenomeLoc loc : sorted ) {
+            if ( size > 0 && startKey(loc) <= stopKeys[size - 1] )
+                set(size - 1, union(locs[size - 1], loc));
+            else
+                append(loc);
+        }
     }
 
     /**
@@ -111,7 +133,7 @@ public class GenomeLocSortedSet extends AbstractSet<GenomeLoc> {
      * @return an iterator<GenomeLoc>
      */
     public Iterator<GenomeLoc> iterator() {
-        return mArray.iterator();
+        return locList.iterator();
     }
 
     /**
@@ -120,7 +142,7 @@ public class GenomeLocSortedSet extends AbstractSet<GenomeLoc> {
      * @return the size of the collection
      */
     public int size() {
-        return mArray.size();
+        return size;
     }
 
     /**
@@ -129,8 +151,8 @@ public class GenomeLocSortedSet extends AbstractSet<GenomeLoc> {
      */
     public long coveredSize() {
         long s = 0;
-        for ( GenomeLoc e : this )
-            s += e.size();
+        for ( int i = 0; i < size; i++ )
+            s += locs[i].size();
         return s;
     }
 
@@ -143,13 +165,12 @@ public class GenomeLocSortedSet extends AbstractSet<GenomeLoc> {
     public long sizeBeforeLoc(GenomeLoc loc) {
         long s = 0;
 
-        for ( GenomeLoc e : this ) {
-            if ( e.isBefore(loc) )
-                s += e.size();
-            else if ( e.isPast(loc) )
-                break; // we are done
+        final long locStop = stopKey(loc);
+        for ( int i = 0; i < size && startKeys[i] <= locStop; i++ ) {
+            if ( locs[i].isBefore(loc) )
+                s += locs[i].size();
             else // loc is inside of s
-                s += loc.getStart() - e.getStart();
+                s += loc.getStart() - locs[i].getStart();
         }
 
         return s;
@@ -161,7 +182,20 @@ public class GenomeLocSortedSet extends AbstractSet<GenomeLoc> {
      * @return true if we have no elements
      */
     public boolean isEmpty() {
-        return mArray.isEmpty();
+        return size == 0;
+    }
+
+    /**
+     * Determine if the given loc is in the sorted set
+     *
+     * @param o the location to look for
+     * @return true if the set contains a loc equal to o
+     */
+    @Override
+    public boolean contains(final Object o) {
+        if ( ! (o instanceof GenomeLoc) )
+            return false;
+        return indexOf((GenomeLoc)o) >= 0;
     }
 
     /**
@@ -172,39 +206,21 @@ public class GenomeLocSortedSet extends AbstractSet<GenomeLoc> {
      */
     public boolean overlaps(final GenomeLoc loc) {
         // edge condition
-        if ( mArray.isEmpty() )
+        if ( size == 0 )
             return false;
 
-        // use the cached version first
-        if ( previousOverlapSearchIndex != -1 && overlapsAtOrImmediatelyAfterCachedIndex(loc, true) )
-            return true;
+        final long start = startKey(loc);
 
+        // use the cached index, or the one after it, first, as queries usually walk along the genome; otherwise
         // update the cached index
-        previousOverlapSearchIndex = Collections.binarySearch(mArray, loc);
-
-        // if it matches an interval exactly, we are done
-        if ( previousOverlapSearchIndex >= 0 )
-            return true;
-
-        // check whether it overlaps the interval before or after the insertion point
-        previousOverlapSearchIndex = Math.max(0, -1 * previousOverlapSearchIndex - 2);
-        return overlapsAtOrImmediatelyAfterCachedIndex(loc, false);
-    }
-
-    private boolean overlapsAtOrImmediatelyAfterCachedIndex(final GenomeLoc loc, final boolean updateCachedIndex) {
-        // check the cached entry
-        if ( mArray.get(previousOverlapSearchIndex).overlapsP(loc) )
-            return true;
-
-        // check the entry after the cached entry since we may have moved to it
-        boolean returnValue = false;
-        if ( previousOverlapSearchIndex < mArray.size() - 1 ) {
-            returnValue = mArray.get(previousOverlapSearchIndex + 1).overlapsP(loc);
-            if ( updateCachedIndex )
+        if ( ! isFirstStopAtOrAfter(previousOverlapSearchIndex, start) ) {
+            if ( isFirstStopAtOrAfter(previousOverlapSearchIndex + 1, start) )
                 previousOverlapSearchIndex++;
+            else
+                previousOverlapSearchIndex = firstStopAtOrAfter(start);
         }
 
-        return returnValue;
+        return previousOverlapSearchIndex < size && startKeys[previousOverlapSearchIndex] <= stopKey(loc);
     }
 
     /**
@@ -214,34 +230,12 @@ public class GenomeLocSortedSet extends AbstractSet<GenomeLoc> {
      * @return a non-null list of locations that overlap loc
      */
     public List<GenomeLoc> getOverlapping(final GenomeLoc loc) {
-        // the max ensures that if loc would be the first element, that we start searching at the first element
-        final int index = Collections.binarySearch(mArray, loc);
-        if ( index >= 0 )
-            // we can safely return a singleton because overlapping regions are merged and loc is exactly in
-            // the set already
-            return Collections.singletonList(loc);
-
-        // if loc isn't in the list index is (-(insertion point) - 1). The insertion point is defined as the point at
-        // which the key would be inserted into the list: the index of the first element greater than the key, or list.size()
-        // -ins - 1 = index => -ins = index + 1 => ins = -(index + 1)
-        // Note that we look one before the index in this case, as loc might occur after the previous overlapping interval
-        final int start = Math.max(-(index + 1) - 1, 0);
-        final int size = mArray.size();
-
-        final List<GenomeLoc> overlapping = new LinkedList<GenomeLoc>();
-        for ( int i = start; i < size; i++ ) {
-            final GenomeLoc myLoc = mArray.get(i);
-            if ( loc.overlapsP(myLoc) )
-                overlapping.add(myLoc);
-            else if ( myLoc.isPast(loc) )
-                // since mArray is ordered, if myLoc is past loc that means all future
-                // intervals cannot overlap loc either.  So we can safely abort the search
-                // note that we need to be a bit conservative on our tests since index needs to start
-                // at -1 the position of index, so it's possible that myLoc and loc don't overlap but the next
-                // position might
-                break;
-        }
+        final int first = firstStopAtOrAfter(startKey(loc));
+        final int last = firstStartAfter(stopKey(loc), first);
 
+        final List<GenomeLoc> overlapping = new ArrayList<GenomeLoc>(last - first);
+        for ( int i = first; i < last; i++ )
+            overlapping.add(locs[i]);
         return overlapping;
     }
 
@@ -257,7 +251,7 @@ public class GenomeLocSortedSet extends AbstractSet<GenomeLoc> {
         final List<GenomeLoc> overlapping = new LinkedList<GenomeLoc>();
 
         // super slow, but definitely works
-        for ( final GenomeLoc myLoc : mArray ) {
+        for ( final GenomeLoc myLoc : this ) {
             if ( loc.overlapsP(myLoc) )
                 overlapping.add(myLoc);
         }
@@ -303,101 +297,67 @@ public class GenomeLocSortedSet extends AbstractSet<GenomeLoc> {
 
         // if we have no other intervals yet or if the new loc is past the last one in the list (which is usually the
         // case because locs are generally added in order) then be extra efficient and just add the loc to the end
-        if ( mArray.size() == 0 || loc.isPast(mArray.get(mArray.size() - 1)) ) {
-            return mArray.add(loc);
+        final long start = startKey(loc);
+        if ( size == 0 || start > stopKeys[size - 1] ) {
+            append(loc);
+            return true;
         }
 
-        // find where in the list the new loc belongs
-        final int binarySearchIndex = Collections.binarySearch(mArray,loc);
+        // find the locs in the list the new loc overlaps; if there are none, first is where it belongs
+        final int first = firstStopAtOrAfter(start);
+        final int last = firstStartAfter(stopKey(loc), first);
+        if ( first == last ) {
+            insert(first, loc);
+            return true;
+        }
 
         // if it already exists in the list, return or throw an exception as needed
-        if ( binarySearchIndex >= 0 ) {
+        if ( locs[first].equals(loc) ) {
             if ( mergeIfIntervalOverlaps )
                 return false;
             throw new IllegalArgumentException("GenomeLocSortedSet already contains the GenomeLoc " + loc);
         }
 
-        // if it overlaps a loc already in the list merge or throw an exception as needed
-        final int insertionIndex = -1 * (binarySearchIndex + 1);
-        if ( ! mergeOverlappingIntervalsFromAdd(loc, insertionIndex, !mergeIfIntervalOverlaps) ) {
-            // it does not overlap any current intervals, so add it to the set
-            mArray.add(insertionIndex, loc);
-        }
-
+        // it overlaps locs already in the list, so merge with all of them or throw an exception as needed
+        if ( ! mergeIfIntervalOverlaps )
+            throw new IllegalArgumentException(String.format("GenomeLocSortedSet contains a GenomeLoc (%s) that overlaps with the provided one (%s)", locs[first].toString(), loc.toString()));
+        set(first, union(union(locs[first], loc), locs[last - 1]));
+        removeRange(first + 1, last);
         return true;
     }
 
-    /*
-     * If the provided GenomeLoc overlaps another already in the set, merge them (or throw an exception if requested)
-     *
-     * @param loc                          the GenomeLoc to add
-     * @param insertionIndex               the index in the sorted set to add the new loc
-     * @param throwExceptionIfOverlapping  if true we throw an exception if there's overlap, otherwise we merge them
+    /**
+     * Remove the given regions from the locs of this set
      *
-     * @return true if the loc was added or false otherwise
+     * @param toRemoveSet the regions to remove
+     * @return a new set holding what remains of the locs in this set
      */
-    private boolean mergeOverlappingIntervalsFromAdd(final GenomeLoc loc, final int insertionIndex, final boolean throwExceptionIfOverlapping) {
-        // try merging with the previous index
-        if ( insertionIndex != 0 && loc.overlapsP(mArray.get(insertionIndex - 1)) ) {
-            if ( throwExceptionIfOverlapping )
-                throw new IllegalArgumentException(String.format("GenomeLocSortedSet contains a GenomeLoc (%s) that overlaps with the provided one (%s)", mArray.get(insertionIndex - 1).toString(), loc.toString()));
-            mArray.set(insertionIndex - 1, mArray.get(insertionIndex - 1).merge(loc));
-            return true;
-        }
-
-        // try merging with the following index
-        if ( insertionIndex < mArray.size() && loc.overlapsP(mArray.get(insertionIndex)) ) {
-            if ( throwExceptionIfOverlapping )
-                throw new IllegalArgumentException(String.format("GenomeLocSortedSet contains a GenomeLoc (%s) that overlaps with the provided one (%s)", mArray.get(insertionIndex).toString(), loc.toString()));
-            mArray.set(insertionIndex, mArray.get(insertionIndex).merge(loc));
-            return true;
-        }
-
-        return false;
-    }
-
     public GenomeLocSortedSet subtractRegions(GenomeLocSortedSet toRemoveSet) {
-        LinkedList<GenomeLoc> good = new LinkedList<GenomeLoc>();
-        Stack<GenomeLoc> toProcess = new Stack<GenomeLoc>();
-        Stack<GenomeLoc> toExclude = new Stack<GenomeLoc>();
-
-        // initialize the stacks
-        toProcess.addAll(mArray);
-        Collections.reverse(toProcess);
-        toExclude.addAll(toRemoveSet.mArray);
-        Collections.reverse(toExclude);
-
-        int i = 0;
-        while ( ! toProcess.empty() ) {    // while there's still stuff to process
-            if ( toExclude.empty() ) {
-                good.addAll(toProcess);         // no more excludes, all the processing stuff is good
-                break;
-            }
-
-            GenomeLoc p = toProcess.peek();
-            GenomeLoc e = toExclude.peek();
-
-            if ( p.overlapsP(e) ) {
-                toProcess.pop();
-                for ( GenomeLoc newP : p.subtract(e) )
-                    toProcess.push(newP);
-            } else if ( p.compareContigs(e) < 0 ) {
-                good.add(toProcess.pop());         // p is now good
-            } else if ( p.compareContigs(e) > 0 ) {
-                toExclude.pop();                 // e can't effect anything
-            } else if ( p.getStop() < e.getStart() ) {
-                good.add(toProcess.pop());         // p stops before e starts, p is good
-            } else if ( e.getStop() < p.getStart() ) {
-                toExclude.pop();                 // p starts after e stops, e is done
-            } else {
-                throw new ReviewedGATKException("BUG: unexpected condition: p=" + p + ", e=" + e);
+        final GenomeLocSortedSet good = new GenomeLocSortedSet(genomeLocParser, size);
+
+        int e = 0;
+        for ( int p = 0; p < size; p++ ) {
+            final GenomeLoc loc = locs[p];
+
+            // skip the regions that stop before this loc; they can't affect it or any loc after it
+            while ( e < toRemoveSet.size && toRemoveSet.stopKeys[e] < startKeys[p] )
+                e++;
+
+            // walk along the regions overlapping loc, keeping the gaps between them
+            long remainingStart = startKeys[p];
+            for ( int i = e; i < toRemoveSet.size && toRemoveSet.startKeys[i] <= stopKeys[p]; i++ ) {
+                if ( toRemoveSet.startKeys[i] > remainingStart )
+                    good.append(sublocation(loc, remainingStart, toRemoveSet.startKeys[i] - 1));
+                remainingStart = Math.max(remainingStart, toRemoveSet.stopKeys[i] + 1);
             }
 
-            if ( i++ % 10000 == 0 )
-                logger.debug("removeRegions operation: i = " + i);
+            if ( remainingStart == startKeys[p] )
+                good.append(loc);
+            else if ( remainingStart <= stopKeys[p] )
+                good.append(sublocation(loc, remainingStart, stopKeys[p]));
         }
 
-        return createSetFromList(genomeLocParser,good);
+        return good;
     }
 
 
@@ -406,8 +366,9 @@ public class GenomeLocSortedSet extends AbstractSet<GenomeLoc> {
      * @param location the GenomeLoc to remove
      */
     public void remove(GenomeLoc location) {
-        if (!mArray.contains(location)) throw new IllegalArgumentException("Unable to remove location: " + location + ", not in the list");
-        mArray.remove(location);
+        final int index = indexOf(location);
+        if ( index < 0 ) throw new IllegalArgumentException("Unable to remove location: " + location + ", not in the list");
+        removeRange(index, index + 1);
     }
 
     /**
@@ -419,7 +380,7 @@ public class GenomeLocSortedSet extends AbstractSet<GenomeLoc> {
      */
     public static GenomeLocSortedSet createSetFromSequenceDictionary(final SAMSequenceDictionary dict) {
         final GenomeLocParser parser = new GenomeLocParser(dict);
-        final GenomeLocSortedSet returnSortedSet = new GenomeLocSortedSet(parser);
+        final GenomeLocSortedSet returnSortedSet = new GenomeLocSortedSet(parser, dict.size());
         for ( final SAMSequenceRecord sequence : dict.getSequences() ) {
             returnSortedSet.add(parser.createOverEntireContig(sequence.getSequenceName()));
         }
@@ -434,7 +395,7 @@ public class GenomeLocSortedSet extends AbstractSet<GenomeLoc> {
      * @return the sorted genome loc list
      */
     public static GenomeLocSortedSet createSetFromList(GenomeLocParser parser,List<GenomeLoc> locs) {
-        GenomeLocSortedSet set = new GenomeLocSortedSet(parser);
+        GenomeLocSortedSet set = new GenomeLocSortedSet(parser, locs.size());
         set.addAll(locs);
         return set;
     }
@@ -446,20 +407,24 @@ public class GenomeLocSortedSet extends AbstractSet<GenomeLoc> {
      * @return a new GenomeLocSortedSet, identical to the current GenomeLocSortedSet.
      */
     public GenomeLocSortedSet clone() {
-        GenomeLocSortedSet ret = new GenomeLocSortedSet(genomeLocParser);
-        for (GenomeLoc loc : this.mArray) {
+        GenomeLocSortedSet ret = new GenomeLocSortedSet(genomeLocParser, size);
+        for ( int i = 0; i < size; i++ ) {
             // ensure a deep copy
-            ret.mArray.add(genomeLocParser.createGenomeLoc(loc.getContig(), loc.getStart(), loc.getStop()));
+            ret.append(locs[i].isUnmapped() ? locs[i] : new GenomeLoc(locs[i].getContig(), locs[i].getContigIndex(), locs[i].getStart(), locs[i].getStop()));
         }
         return ret;
     }
 
     /**
      * convert this object to a list
+     *
+     * The list is a read-only, random access view of this set, so it reflects later changes to the set and costs
+     * nothing to create.  Removing elements from it removes them from the set.
+     *
      * @return the lists
      */
     public List<GenomeLoc> toList() {
-        return this.mArray;
+        return locList;
     }
 
     public String toString() {
@@ -473,4 +438,151 @@ public class GenomeLocSortedSet extends AbstractSet<GenomeLoc> {
 
         return s.toString();
     }
+
+    // -----------------------------------------------------------------------------------------------
+    //
+    // The sorted arrays
+    //
+    // -----------------------------------------------------------------------------------------------
+
+    private static long startKey(final GenomeLoc loc) {
+        return PackedLocus.ofStart(loc);
+    }
+
+    private static long stopKey(final GenomeLoc loc) {
+        return PackedLocus.ofStop(loc);
+    }
+
+    /**
+     * @return the loc on the contig of loc spanning the positions of the given keys
+     */
+    private static GenomeLoc sublocation(final GenomeLoc loc, final long startKey, final long stopKey) {
+        return new GenomeLoc(loc.getContig(), loc.getContigIndex(), PackedLocus.getPosition(startKey), PackedLocus.getPosition(stopKey));
+    }
+
+    /**
+     * @return the smallest loc spanning both a and b, which are on the same contig
+     */
+    private static GenomeLoc union(final GenomeLoc a, final GenomeLoc b) {
+        if ( a.containsP(b) ) return a;
+        if ( b.containsP(a) ) return b;
+        return a.merge(b);
+    }
+
+    /**
+     * @return the index of the first loc whose stop is at or after key, or size if there is none
+     */
+    private int firstStopAtOrAfter(final long key) {
+        int low = 0, high = size;
+        while ( low < high ) {
+            final int mid = (low + high) >>> 1;
+            if ( stopKeys[mid] < key )
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @return the index of the first loc at or after from whose start is after key, or size if there is none
+     */
+    private int firstStartAfter(final long key, final int from) {
+        int low = from, high = size;
+        while ( low < high ) {
+            final int mid = (low + high) >>> 1;
+            if ( startKeys[mid] <= key )
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @return true if index is what firstStopAtOrAfter(key) would return
+     */
+    private boolean isFirstStopAtOrAfter(final int index, final long key) {
+        return index >= 0 && index <= size
+                && (index == size || stopKeys[index] >= key)
+                && (index == 0 || stopKeys[index - 1] < key);
+    }
+
+    /**
+     * @return the index of the loc equal to loc, or -1 if there is none
+     */
+    private int indexOf(final GenomeLoc loc) {
+        final int index = firstStopAtOrAfter(stopKey(loc));
+        return index < size && locs[index].equals(loc) ? index : -1;
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if ( capacity > locs.length ) {
+            final int newCapacity = Math.max(capacity, locs.length + (locs.length >> 1));
+            locs = Arrays.copyOf(locs, newCapacity);
+            startKeys = Arrays.copyOf(startKeys, newCapacity);
+            stopKeys = Arrays.copyOf(stopKeys, newCapacity);
+        }
+    }
+
+    private void set(final int index, final GenomeLoc loc) {
+        locs[index] = loc;
+        startKeys[index] = startKey(loc);
+        stopKeys[index] = stopKey(loc);
+    }
+
+    private void append(final GenomeLoc loc) {
+        insert(size, loc);
+    }
+
+    private void insert(final int index, final GenomeLoc loc) {
+        ensureCapacity(size + 1);
+        if ( index < size ) {
+            System.arraycopy(locs, index, locs, index + 1, size - index);
+            System.arraycopy(startKeys, index, startKeys, index + 1, size - index);
+            System.arraycopy(stopKeys, index, stopKeys, index + 1, size - index);
+        }
+        set(index, loc);
+        size++;
+        locList.modified();
+    }
+
+    private void removeRange(final int from, final int to) {
+        if ( from == to )
+            return;
+        System.arraycopy(locs, to, locs, from, size - to);
+        System.arraycopy(startKeys, to, startKeys, from, size - to);
+        System.arraycopy(stopKeys, to, stopKeys, from, size - to);
+        Arrays.fill(locs, size - (to - from), size, null);
+        size -= to - from;
+        locList.modified();
+    }
+
+    /**
+     * The locs of this set as a read-only list
+     */
+    private final class LocList extends AbstractList<GenomeLoc> implements RandomAccess {
+        @Override
+        public GenomeLoc get(final int index) {
+            if ( index < 0 || index >= size )
+                throw new IndexOutOfBoundsException("Index " + index + " is out of bounds for a GenomeLocSortedSet of size " + size);
+            return locs[index];
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public GenomeLoc remove(final int index) {
+            final GenomeLoc removed = get(index);
+            removeRange(index, index + 1);
+            return removed;
+        }
+
+        private void modified() {
+            modCount++;
+        }
+    }
 }
@@ -27,6 +27,7 @@ package org.broadinstitute.gatk.utils;
 
 import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 
+import java.lang.management.GarbageCollectorMXBean;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
 
@@ -56,6 +57,42 @@ public class HeapSizeMonitor {
         return monitorRunnable.getMaxMemoryUsed();
     }
 
+    /**
+     * Unlike the monitor thread, doesn't force a garbage collection, so it is cheap enough to call periodically
+     *
+     * @return the number of bytes of heap currently in use
+     */
+    public static long getCurrentHeapUsed() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * @return the maximum number of bytes the heap can grow to, or -1 if undefined
+     */
+    public static long getMaxHeapSize() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax();
+    }
+
+    /**
+     * @return the total number of garbage collections run by all collectors in this JVM
+     */
+    public static long getTotalGarbageCollectionCount() {
+        long total = 0;
+        for ( final GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans() )
+            total += Math.max(gc.getCollectionCount(), 0); // -1 if the collector doesn't report it
+        return total;
+    }
+
+    /**
+     * @return the total time in milliseconds spent in garbage collection by all collectors in this JVM
+     */
+    public static long getTotalGarbageCollectionTimeMillis() {
+        long total = 0;
+        for ( final GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans() )
+            total += Math.max(gc.getCollectionTime(), 0); // -1 if the collector doesn't report it
+        return total;
+    }
+
     public void start() {
         monitorThread = new Thread(monitorRunnable);
         monitorThread.start();
@@ -27,10 +27,14 @@ package org.broadinstitute.gatk.utils;
 
 import com.google.java.contract.Ensures;
 import com.google.java.contract.Requires;
+import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMSequenceDictionary;
 import htsjdk.samtools.SAMSequenceRecord;
 import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 /**
  * A wrapper class that provides efficient most recently used caching for the global
  * SAMSequenceDictionary underlying all of the GATK engine capabilities.  It is essential
@@ -52,6 +56,14 @@ final class MRUCachingSAMSequenceDictionary {
     String lastContig = "";
     int lastIndex = -1;
 
+    /**
+     * The headers whose sequence dictionaries we have compared to ours, by identity, and whether they agreed
+     */
+    private final Map<SAMFileHeader, Boolean> headerCompatibility = new IdentityHashMap<SAMFileHeader, Boolean>();
+    private static final int MAX_CACHED_HEADERS = 100;
+    SAMFileHeader lastHeader = null;
+    boolean lastHeaderIsCompatible = false;
+
     /**
      * Create a new MRUCachingSAMSequenceDictionary that provides information about sequences in dict
      * @param dict a non-null, non-empty sequencing dictionary
@@ -93,6 +105,40 @@ final class MRUCachingSAMSequenceDictionary {
         return lastIndex == contigIndex || dict.getSequence(contigIndex) != null;
     }
 
+    /**
+     * Does the sequence dictionary of header agree with ours, in that each of its contigs is the contig with the same
+     * index in our dictionary?  Efficiently caching, as the answer for a header is remembered.
+     *
+     * @param header a non-null SAM file header
+     * @return true if the contig indices and names of reads from header are those of our dictionary
+     */
+    @Requires("header != null")
+    public final boolean isCompatibleHeader(final SAMFileHeader header) {
+        if ( header != lastHeader ) {
+            Boolean compatible = headerCompatibility.get(header);
+            if ( compatible == null ) {
+                if ( headerCompatibility.size() >= MAX_CACHED_HEADERS )
+                    headerCompatibility.clear();
+                compatible = dictionaryAgrees(header.getSequenceDictionary());
+                headerCompatibility.put(header, compatible);
+            }
+            lastHeader = header;
+            lastHeaderIsCompatible = compatible;
+        }
+        return lastHeaderIsCompatible;
+    }
+
+    private boolean dictionaryAgrees(final SAMSequenceDictionary other) {
+        if ( other == null || other.size() > dict.size() )
+            return false;
+        for ( final SAMSequenceRecord contig : other.getSequences() ) {
+            final SAMSequenceRecord ours = dict.getSequence(contig.getSequenceIndex());
+            if ( ours == null || ! ours.getSequenceName().equals(contig.getSequenceName()) )
+                return false;
+        }
+        return true;
+    }
+
     /**
      * Same as SAMSequenceDictionary.getSequence but uses a MRU cache for efficiency
      *
@@ -0,0 +1,109 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils;
+
+/**
+ * A single-base position on the genome packed into a long, for code that tracks loci too often to afford a
+ * GenomeLoc per position.
+ *
+ * The contig index occupies the high 32 bits and the position the low 32 bits, so packed loci compare (as longs) in
+ * the same order as the GenomeLocs they stand for: by contig index, then by position.  Unmapped loci are given the
+ * contig index UNMAPPED_CONTIG_INDEX, which sorts after every real contig just as GenomeLoc.UNMAPPED does.  Positions
+ * must not be negative.
+ *
+ * GenomeLocParser.createGenomeLoc(long) turns a packed locus back into a GenomeLoc.
+ */
+public final class PackedLocus {
+    /**
+     * The contig index of packed unmapped loci
+     */
+    public static final int UNMAPPED_CONTIG_INDEX = Integer.MAX_VALUE;
+
+    private PackedLocus() {}
+
+    /**
+     * Pack a position on a contig into a long
+     *
+     * @param contigIndex the index of the contig in the sequence dictionary
+     * @param position    the position on the contig, >= 0
+     * @return the packed locus
+     */
+    public static long pack(final int contigIndex, final int position) {
+        return ((long)contigIndex << 32) | (position & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param locus a packed locus
+     * @return the contig index of locus
+     */
+    public static int getContigIndex(final long locus) {
+        return (int)(locus >>> 32);
+    }
+
+    /**
+     * @param locus a packed locus
+     * @return the position of locus on its contig
+     */
+    public static int getPosition(final long locus) {
+        return (int)locus;
+    }
+
+    /**
+     * @param locus a packed locus
+     * @return true if locus is the position of an unmapped loc
+     */
+    public static boolean isUnmapped(final long locus) {
+        return getContigIndex(locus) == UNMAPPED_CONTIG_INDEX;
+    }
+
+    /**
+     * @param loc a non-null GenomeLoc
+     * @return the packed first position of loc
+     */
+    public static long ofStart(final GenomeLoc loc) {
+        return pack(contigIndexOf(loc), loc.getStart());
+    }
+
+    /**
+     * @param loc a non-null GenomeLoc
+     * @return the packed last position of loc
+     */
+    public static long ofStop(final GenomeLoc loc) {
+        return pack(contigIndexOf(loc), loc.getStop());
+    }
+
+    private static int contigIndexOf(final GenomeLoc loc) {
+        return loc.isUnmapped() ? UNMAPPED_CONTIG_INDEX : loc.getContigIndex();
+    }
+
+    /**
+     * @param locus a packed locus
+     * @return a human readable form of locus, for debugging
+     */
+    public static String toString(final long locus) {
+        return isUnmapped(locus) ? "unmapped" : String.format("#%d:%d", getContigIndex(locus), getPosition(locus));
+    }
+}
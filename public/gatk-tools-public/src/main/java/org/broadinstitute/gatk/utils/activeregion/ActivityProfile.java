@@ -30,6 +30,7 @@ import com.google.java.contract.Requires;
 import org.broadinstitute.gatk.utils.GenomeLoc;
 import org.broadinstitute.gatk.utils.GenomeLocParser;
 import org.broadinstitute.gatk.utils.GenomeLocSortedSet;
+import org.broadinstitute.gatk.utils.PackedLocus;
 
 import java.util.*;
 
@@ -179,7 +180,7 @@ public class ActivityProfile {
         if ( start < 0 || start > getCurrentContigLength() ) {
             return null;
         } else {
-            return parser.createGenomeLoc(regionStartLoc.getContig(), regionStartLoc.getContigIndex(), start, start);
+            return parser.createGenomeLoc(PackedLocus.pack(regionStartLoc.getContigIndex(), start));
         }
     }
 
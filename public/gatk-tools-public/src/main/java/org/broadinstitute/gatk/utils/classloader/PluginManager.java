@@ -32,14 +32,9 @@ import org.broadinstitute.gatk.engine.filters.FilterManager;
 import org.broadinstitute.gatk.utils.exceptions.DynamicClassResolutionException;
 import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
-import org.reflections.Reflections;
-import org.reflections.scanners.SubTypesScanner;
-import org.reflections.util.ConfigurationBuilder;
 
-import java.io.File;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
-import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.*;
@@ -51,34 +46,12 @@ import java.util.*;
  */
 public class PluginManager<PluginType> {
     /**
-     * A reference into our introspection utility.
+     * The type hierarchy of the classpath, read from plugin manifests where possible.
      */
-    private static final Reflections defaultReflections;
+    private static final PluginManifest defaultManifest;
 
     static {
-        // turn off logging in the reflections library - they talk too much
-        Reflections.log = null;
-
-        Set<URL> classPathUrls = new LinkedHashSet<URL>();
-
-        URL cwd;
-        try {
-            cwd = new File(".").getAbsoluteFile().toURI().toURL();
-        } catch (MalformedURLException e) {
-            throw new RuntimeException(e);
-        }
-
-        // NOTE: Reflections also scans directories for classes.
-        // Meanwhile some of the jar MANIFEST.MF Bundle-ClassPath properties contain "."
-        // Do NOT let reflections scan the CWD where it often picks up test classes when
-        // they weren't explicitly in the classpath, for example the UninstantiableWalker
-        for (URL url: JVMUtils.getClasspathURLs())
-            if (!url.equals(cwd))
-                classPathUrls.add(url);
-
-        defaultReflections = new Reflections( new ConfigurationBuilder()
-            .setUrls(classPathUrls)
-            .setScanners(new SubTypesScanner()));
+        defaultManifest = PluginManifest.load(PluginManifest.getClasspathURLs());
     }
 
     /**
@@ -140,19 +113,17 @@ public class PluginManager<PluginType> {
         this.plugins = new ArrayList<Class<? extends PluginType>>();
         this.interfaces = new ArrayList<Class<? extends PluginType>>();
 
-        Reflections reflections;
+        PluginManifest manifest;
         if (classpath == null) {
-            reflections = defaultReflections;
+            manifest = defaultManifest;
         } else {
             addClasspath(classpath);
-            reflections = new Reflections( new ConfigurationBuilder()
-                .setUrls(classpath)
-                .setScanners(new SubTypesScanner()));
+            manifest = PluginManifest.scan(classpath);
         }
 
         // Load all classes types filtering them by concrete.
         @SuppressWarnings("unchecked")
-        Set<Class<? extends PluginType>> allTypes = reflections.getSubTypesOf(pluginType);
+        Set<Class<? extends PluginType>> allTypes = manifest.getSubTypesOf(pluginType);
         for( Class<? extends PluginType> type: allTypes ) {
             // The plugin manager does not support anonymous classes; to be a plugin, a class must have a name.
             if(JVMUtils.isAnonymous(type))
@@ -0,0 +1,363 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.classloader;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.Multimap;
+import org.apache.log4j.Logger;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.reflections.ReflectionUtils;
+import org.reflections.Reflections;
+import org.reflections.scanners.SubTypesScanner;
+import org.reflections.util.ConfigurationBuilder;
+
+import java.io.*;
+import java.net.JarURLConnection;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.*;
+
+/**
+ * The type hierarchy of the classes on the classpath, as needed by the {@link PluginManager} to find plugins.
+ *
+ * Scanning every class on the classpath with Reflections takes seconds, which dominates the run time of short GATK
+ * invocations.  Instead, each module writes a plugin manifest at build time listing the subtype relationships of
+ * every class on its compile classpath.  At runtime the manifests of all jars on the classpath are merged, and only
+ * classes that no manifest accounts for (user-supplied jars, class directories that may have been recompiled since
+ * their manifest was written, or classes of modules without a manifest that were shaded into a jar together with one
+ * that has a manifest) are scanned.  A jar holding a manifest is only trusted for the classes the manifest lists;
+ * the rest of its classes are scanned.
+ *
+ * The manifest is a text file: lines starting with {@value #LOCATION_PREFIX} identify a jar whose classes are
+ * included by its size, modification time and absolute path, all other non-comment lines hold a supertype and one
+ * of its direct subtypes.  A jar on the classpath is only considered covered if all three match, so a rebuilt jar,
+ * or a different version of a jar with the same name, is scanned rather than described by stale type data.  Manifests concatenated
+ * together remain a valid manifest, so the manifests of several modules can be merged into a single jar.
+ */
+public class PluginManifest {
+    /**
+     * Path of the plugin manifest within a jar or class directory.
+     */
+    public static final String MANIFEST_PATH = "GATKPlugins.manifest";
+
+    /**
+     * Marks a line naming a jar whose classes are described by the manifest.
+     */
+    public static final String LOCATION_PREFIX = "@";
+
+    private static final String COMMENT_PREFIX = "#";
+
+    /**
+     * Suffix of the class files within the inputs Reflections filters, which are named like classes.
+     */
+    private static final String CLASS_SUFFIX = ".class";
+
+    private static final Logger logger = Logger.getLogger(PluginManifest.class);
+
+    static {
+        // turn off logging in the reflections library - they talk too much
+        Reflections.log = null;
+    }
+
+    /**
+     * Direct subtypes of each type, by class name.
+     */
+    private final Map<String, Set<String>> subTypes = new HashMap<String, Set<String>>();
+
+    /**
+     * Names of the classes whose supertypes are listed by the manifests read so far.  As manifests list
+     * java.lang.Object as a supertype too, these are all the classes the manifests describe.
+     */
+    private final Set<String> listedClasses = new HashSet<String>();
+
+    /**
+     * Identities, as returned by {@link #getJarIdentity}, of the jars covered by the manifests read so far.
+     */
+    private final Set<String> coveredJars = new HashSet<String>();
+
+    /**
+     * Classpath entries that had to be scanned for want of a manifest.
+     */
+    private final Set<URL> scannedUrls = new LinkedHashSet<URL>();
+
+    private PluginManifest() {
+    }
+
+    /**
+     * Build the type hierarchy of the given classpath, reading plugin manifests where available and scanning
+     * whatever they don't cover.
+     * @param classPathUrls Classpath entries whose classes should be included.
+     * @return The type hierarchy.
+     */
+    public static PluginManifest load(final Collection<URL> classPathUrls) {
+        return load(classPathUrls, PluginManifest.class.getClassLoader());
+    }
+
+    /**
+     * Build the type hierarchy of the given classpath, reading the plugin manifests visible to the given class loader.
+     * @param classPathUrls Classpath entries whose classes should be included.
+     * @param classLoader Class loader through which to find manifests.
+     * @return The type hierarchy.
+     */
+    public static PluginManifest load(final Collection<URL> classPathUrls, final ClassLoader classLoader) {
+        final PluginManifest manifest = new PluginManifest();
+        final Set<URL> manifestJars = new LinkedHashSet<URL>();
+        try {
+            final Enumeration<URL> manifests = classLoader.getResources(MANIFEST_PATH);
+            while (manifests.hasMoreElements()) {
+                final URL manifestUrl = manifests.nextElement();
+                // Class directories might have been recompiled since their manifest was written, so only trust jars.
+                final URL jarUrl = getJarUrl(manifestUrl);
+                if (jarUrl == null || !classPathUrls.contains(jarUrl))
+                    continue;
+                final InputStream stream = manifestUrl.openStream();
+                try {
+                    manifest.read(stream);
+                } finally {
+                    stream.close();
+                }
+                manifestJars.add(jarUrl);
+            }
+        } catch (IOException e) {
+            throw new ReviewedGATKException("Unable to read plugin manifests", e);
+        }
+
+        final Set<URL> uncovered = new LinkedHashSet<URL>();
+        for (final URL url : classPathUrls)
+            if (!manifestJars.contains(url) && !(isJar(url) && manifest.coveredJars.contains(getJarIdentity(url))))
+                uncovered.add(url);
+        manifest.scanUrls(uncovered, null);
+
+        // A jar may hold the manifests of only some of the modules shaded into it, so scan the classes they don't list.
+        manifest.scanUrls(manifestJars, new Predicate<String>() {
+            @Override
+            public boolean apply(final String input) {
+                return !(input.endsWith(CLASS_SUFFIX) && manifest.listedClasses.contains(input.substring(0, input.length() - CLASS_SUFFIX.length())));
+            }
+        });
+        return manifest;
+    }
+
+    /**
+     * Build the type hierarchy of the given classpath by scanning all of it.
+     * @param classPathUrls Classpath entries whose classes should be included.
+     * @return The type hierarchy.
+     */
+    public static PluginManifest scan(final Collection<URL> classPathUrls) {
+        final PluginManifest manifest = new PluginManifest();
+        manifest.scanUrls(classPathUrls, null);
+        return manifest;
+    }
+
+    /**
+     * Gets the classpath entries that may hold plugins.
+     * @return The classpath, excluding the working directory.
+     */
+    public static Set<URL> getClasspathURLs() {
+        Set<URL> classPathUrls = new LinkedHashSet<URL>();
+
+        URL cwd;
+        try {
+            cwd = new File(".").getAbsoluteFile().toURI().toURL();
+        } catch (MalformedURLException e) {
+            throw new RuntimeException(e);
+        }
+
+        // NOTE: Reflections also scans directories for classes.
+        // Meanwhile some of the jar MANIFEST.MF Bundle-ClassPath properties contain "."
+        // Do NOT let reflections scan the CWD where it often picks up test classes when
+        // they weren't explicitly in the classpath, for example the UninstantiableWalker
+        for (URL url: JVMUtils.getClasspathURLs())
+            if (!url.equals(cwd))
+                classPathUrls.add(url);
+
+        return classPathUrls;
+    }
+
+    /**
+     * Gets the classpath entries that were scanned, in whole or for the classes their manifests don't list.
+     * @return The scanned classpath entries.
+     */
+    public Set<URL> getScannedUrls() {
+        return Collections.unmodifiableSet(scannedUrls);
+    }
+
+    /**
+     * Gets all the loadable subtypes, direct or indirect, of the given type.
+     * @param type The supertype.
+     * @param <T> The supertype.
+     * @return Every subtype of type known to this manifest, excluding type itself.
+     */
+    public <T> Set<Class<? extends T>> getSubTypesOf(final Class<T> type) {
+        final Set<String> names = new LinkedHashSet<String>();
+        final Deque<String> pending = new ArrayDeque<String>();
+        pending.add(type.getName());
+        while (!pending.isEmpty()) {
+            final Set<String> direct = subTypes.get(pending.remove());
+            if (direct == null)
+                continue;
+            for (final String name : direct)
+                if (names.add(name))
+                    pending.add(name);
+        }
+        // Types that fail to load, e.g. because a minimized jar dropped them, aren't usable plugins.
+        return new LinkedHashSet<Class<? extends T>>(ReflectionUtils.<T>forNames(names));
+    }
+
+    /**
+     * Write the type hierarchy of the given classpath as a plugin manifest.
+     * @param classPathUrls Classpath entries whose classes should be included.
+     * @param writer Destination for the manifest.
+     */
+    public static void write(final Collection<URL> classPathUrls, final PrintWriter writer) {
+        final PluginManifest manifest = scan(classPathUrls);
+        writer.println(COMMENT_PREFIX + " Plugin manifest; see " + PluginManifest.class.getName());
+        final SortedSet<String> jars = new TreeSet<String>();
+        for (final URL url : classPathUrls) {
+            final String identity = isJar(url) ? getJarIdentity(url) : null;
+            if (identity != null)
+                jars.add(identity);
+        }
+        for (final String jar : jars)
+            writer.println(LOCATION_PREFIX + jar);
+        for (final Map.Entry<String, Set<String>> entry : new TreeMap<String, Set<String>>(manifest.subTypes).entrySet())
+            for (final String subType : new TreeSet<String>(entry.getValue()))
+                writer.println(entry.getKey() + " " + subType);
+    }
+
+    /**
+     * Generate the plugin manifest for the current classpath.  Run at build time over each module's classpath.
+     * @param args The file to write.
+     */
+    public static void main(final String[] args) {
+        if (args.length != 1)
+            throw new UserException.CommandLineException("Usage: PluginManifest <output file>");
+
+        final long startTime = System.currentTimeMillis();
+        final Set<URL> classPathUrls = getClasspathURLs();
+        try {
+            final PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(args[0])));
+            try {
+                write(classPathUrls, writer);
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            throw new UserException.CouldNotCreateOutputFile(new File(args[0]), e);
+        }
+        logger.info(String.format("Wrote plugin manifest for %d classpath entries to %s in %d ms",
+                classPathUrls.size(), args[0], System.currentTimeMillis() - startTime));
+    }
+
+    private void read(final InputStream stream) throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty() || line.startsWith(COMMENT_PREFIX))
+                continue;
+            if (line.startsWith(LOCATION_PREFIX)) {
+                coveredJars.add(line.substring(LOCATION_PREFIX.length()));
+                continue;
+            }
+            final int separator = line.indexOf(' ');
+            if (separator < 0)
+                throw new ReviewedGATKException("Malformed plugin manifest line: " + line);
+            final String subType = line.substring(separator + 1);
+            addSubType(line.substring(0, separator), subType);
+            listedClasses.add(subType);
+        }
+    }
+
+    /**
+     * Add the subtypes of the classes in the given classpath entries.
+     * @param urls Classpath entries to scan.
+     * @param inputFilter Accepts the files to scan, named like classes, or null to scan every class.
+     */
+    private void scanUrls(final Collection<URL> urls, final Predicate<String> inputFilter) {
+        if (urls.isEmpty())
+            return;
+        final long startTime = System.currentTimeMillis();
+        final ConfigurationBuilder configuration = new ConfigurationBuilder()
+                .setUrls(urls)
+                // include java.lang.Object, so that a manifest lists every class it describes
+                .setScanners(new SubTypesScanner(false));
+        if (inputFilter != null)
+            configuration.filterInputsBy(inputFilter);
+        final Reflections reflections = new Reflections(configuration);
+        final Multimap<String, String> scanned = reflections.getStore().get(SubTypesScanner.class);
+        for (final Map.Entry<String, String> entry : scanned.entries())
+            addSubType(entry.getKey(), entry.getValue());
+        scannedUrls.addAll(urls);
+        logger.debug(String.format("Scanned %d classpath entries for plugins in %d ms", urls.size(), System.currentTimeMillis() - startTime));
+    }
+
+    private void addSubType(final String superType, final String subType) {
+        Set<String> direct = subTypes.get(superType);
+        if (direct == null) {
+            direct = new HashSet<String>();
+            subTypes.put(superType, direct);
+        }
+        direct.add(subType);
+    }
+
+    /**
+     * Gets the jar holding the given resource.
+     * @param resource URL of a resource.
+     * @return The URL of the jar, as it would appear on the classpath, or null if the resource isn't in a jar.
+     */
+    private static URL getJarUrl(final URL resource) {
+        if (!"jar".equals(resource.getProtocol()))
+            return null;
+        try {
+            return ((JarURLConnection) resource.openConnection()).getJarFileURL();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static boolean isJar(final URL url) {
+        return url.getPath().endsWith(".jar");
+    }
+
+    /**
+     * Gets the identity of a jar as recorded in manifests: its size, modification time and absolute path.
+     * @param url URL of a jar.
+     * @return The identity, or null if the jar isn't a readable local file.
+     */
+    private static String getJarIdentity(final URL url) {
+        final File file;
+        try {
+            file = new File(url.toURI()).getAbsoluteFile();
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+        if (!file.isFile())
+            return null;
+        return file.length() + " " + file.lastModified() + " " + file.getPath();
+    }
+}
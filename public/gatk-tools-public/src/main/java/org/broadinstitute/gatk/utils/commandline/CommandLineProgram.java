@@ -29,6 +29,8 @@ import org.apache.log4j.FileAppender;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import org.apache.log4j.PatternLayout;
+import org.apache.log4j.spi.Filter;
+import org.apache.log4j.spi.LoggingEvent;
 import org.broadinstitute.gatk.engine.CommandLineGATK;
 import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 import org.broadinstitute.gatk.utils.help.ApplicationDetails;
@@ -148,11 +150,27 @@ public abstract class CommandLineProgram {
      */
     protected abstract int execute() throws Exception;
 
-    public static int result = -1;
+    /**
+     * The result of the last program started on each thread, so that programs run side by side in one JVM (tests,
+     * the GATK daemon) don't see each other's results.
+     */
+    private static final ThreadLocal<Integer> result = new ThreadLocal<Integer>() {
+        @Override
+        protected Integer initialValue() {
+            return -1;
+        }
+    };
+
+    /**
+     * @return the result of the last program run by start() on this thread, or -1 if none has finished
+     */
+    public static int getResult() {
+        return result.get();
+    }
 
     @SuppressWarnings("unchecked")
-    public static void start(CommandLineProgram clp, String[] args) throws Exception {
-        start(clp, args, false);
+    public static int start(CommandLineProgram clp, String[] args) throws Exception {
+        return start(clp, args, false);
     }
 
     /**
@@ -162,10 +180,12 @@ public abstract class CommandLineProgram {
      * @param clp  the command line program to execute
      * @param args the command line arguments passed in
      * @param dryRun dry run
+     * @return the return code of the program, or -1 for a dry run
      * @throws Exception when an exception occurs
      */
     @SuppressWarnings("unchecked")
-    public static void start(CommandLineProgram clp, String[] args, boolean dryRun) throws Exception {
+    public static int start(CommandLineProgram clp, String[] args, boolean dryRun) throws Exception {
+        int programResult = -1;
 
         try {
             // setup our log layout
@@ -231,21 +251,31 @@ public abstract class CommandLineProgram {
 
             if ( ! dryRun ) {
                 // if they specify a log location, output our data there
+                FileAppender appender = null;
                 if (clp.toFile != null) {
-                    FileAppender appender;
                     try {
                         appender = new FileAppender(layout, clp.toFile, false);
+                        appender.addFilter(new ThreadGroupFilter(Thread.currentThread().getThreadGroup()));
                         logger.addAppender(appender);
                     } catch (IOException e) {
                         throw new RuntimeException("Unable to re-route log output to " + clp.toFile + " make sure the destination exists");
                     }
                 }
 
-                // regardless of what happens next, generate the header information
-                HelpFormatter.generateHeaderInformation(clp.getApplicationDetails(), parsedArgs);
-
-                // call the execute
-                CommandLineProgram.result = clp.execute();
+                try {
+                    // regardless of what happens next, generate the header information
+                    HelpFormatter.generateHeaderInformation(clp.getApplicationDetails(), parsedArgs);
+
+                    // call the execute
+                    programResult = clp.execute();
+                    result.set(programResult);
+                } finally {
+                    // the logger outlives this program when several are run in one JVM
+                    if ( appender != null ) {
+                        logger.removeAppender(appender);
+                        appender.close();
+                    }
+                }
             }
         }
         catch (ArgumentException e) {
@@ -253,6 +283,25 @@ public abstract class CommandLineProgram {
             // Rethrow the exception to exit with an error.
             throw e;
         }
+        return programResult;
+    }
+
+    /**
+     * Passes on only the log events of threads in a given thread group, so that the log file of one program gets
+     * none of the output of other programs running in the same JVM.
+     */
+    private static class ThreadGroupFilter extends Filter {
+        private final ThreadGroup group;
+
+        private ThreadGroupFilter(final ThreadGroup group) {
+            this.group = group;
+        }
+
+        @Override
+        public int decide(final LoggingEvent event) {
+            // log4j calls appenders on the thread that logged the event
+            return group.parentOf(Thread.currentThread().getThreadGroup()) ? NEUTRAL : DENY;
+        }
     }
 
     /**
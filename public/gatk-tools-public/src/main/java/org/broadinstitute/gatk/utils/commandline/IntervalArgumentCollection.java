@@ -29,6 +29,7 @@ import htsjdk.tribble.Feature;
 import org.broadinstitute.gatk.utils.interval.IntervalMergingRule;
 import org.broadinstitute.gatk.utils.interval.IntervalSetRule;
 
+import java.io.File;
 import java.util.List;
 
 public class IntervalArgumentCollection {
@@ -85,4 +86,14 @@ public class IntervalArgumentCollection {
      */
     @Argument(fullName = "interval_padding", shortName = "ip", doc = "Amount of padding (in bp) to add to each interval", required = false, minValue = 0)
     public int intervalPadding = 0;
+
+    /**
+     * Use this to keep the final intervals, after parsing, padding, merging and excluding, in the given directory so
+     * that later runs with the same interval arguments and reference can skip straight to them. This saves a lot of
+     * start-up time with interval files of hundreds of thousands of intervals. Cached intervals are only reused while
+     * the interval files they were made from are unchanged.
+     */
+    @Advanced
+    @Argument(fullName = "interval_cache", shortName = "intervalCache", doc = "Directory in which to cache the merged intervals for reuse by later runs", required = false)
+    public File intervalCacheDirectory = null;
 }
@@ -37,12 +37,14 @@ import org.broadinstitute.gatk.utils.BaseUtils;
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A caching version of the IndexedFastaSequenceFile that avoids going to disk as often as the raw indexer.
  *
- * Thread-safe!  Uses a thread-local cache.
+ * Thread-safe!  The cache is made of fixed-size pages of the reference shared by all threads, so threads working
+ * on nearby regions share pages, and jumping between a few regions doesn't throw away everything that's cached.
+ * The total number of bases cached is bounded by the cache size, and pages not recently used are evicted first.
  *
  * Automatically upper-cases the bases coming in, unless the flag preserveCase is explicitly set.
  * Automatically converts IUPAC bases to Ns, unless the flag preserveIUPAC is explicitly set.
@@ -59,12 +61,15 @@ public class CachingIndexedFastaSequenceFile extends IndexedFastaSequenceFile {
     /** The default cache size in bp */
     public static final long DEFAULT_CACHE_SIZE = 1000000;
 
+    /** The largest page of the reference we will cache, in bp */
+    public static final int MAX_PAGE_SIZE = 64 * 1024;
+
+    /** The cache is always split into at least this many pages, so that a query spanning pages doesn't evict itself */
+    private static final int MIN_PAGES = 4;
+
     /** The cache size of this CachingIndexedFastaSequenceFile */
     private final long cacheSize;
 
-    /** When we have a cache miss at position X, we load sequence from X - cacheMissBackup */
-    private final long cacheMissBackup;
-
     /**
      * If true, we will preserve the case of the original base in the genome
      */
@@ -76,26 +81,13 @@ public class CachingIndexedFastaSequenceFile extends IndexedFastaSequenceFile {
     private final boolean preserveIUPAC;
 
     // information about checking efficiency
-    long cacheHits = 0;
-    long cacheMisses = 0;
-
-    /** Represents a specific cached sequence, with a specific start and stop, as well as the bases */
-    private static class Cache {
-        long start = -1, stop = -1;
-        ReferenceSequence seq = null;
-    }
+    private final AtomicLong cacheHits = new AtomicLong(0);
+    private final AtomicLong cacheMisses = new AtomicLong(0);
 
     /**
-     * Thread local cache to allow multi-threaded use of this class
+     * The pages of the reference cached so far, shared by all threads using this reader
      */
-    private ThreadLocal<Cache> cache;
-    {
-        cache = new ThreadLocal<Cache> () {
-            @Override protected Cache initialValue() {
-                return new Cache();
-            }
-        };
-    }
+    private final ReferencePageCache cache;
 
     /**
      * Same as general constructor but allows one to override the default cacheSize
@@ -110,7 +102,7 @@ public class CachingIndexedFastaSequenceFile extends IndexedFastaSequenceFile {
         super(fasta, index);
         if ( cacheSize < 0 ) throw new IllegalArgumentException("cacheSize must be > 0");
         this.cacheSize = cacheSize;
-        this.cacheMissBackup = Math.max(cacheSize / 1000, 1);
+        this.cache = createCache(cacheSize);
         this.preserveCase = preserveCase;
         this.preserveIUPAC = preserveIUPAC;
     }
@@ -129,7 +121,7 @@ public class CachingIndexedFastaSequenceFile extends IndexedFastaSequenceFile {
         super(fasta);
         if ( cacheSize < 0 ) throw new IllegalArgumentException("cacheSize must be > 0");
         this.cacheSize = cacheSize;
-        this.cacheMissBackup = Math.max(cacheSize / 1000, 1);
+        this.cache = createCache(cacheSize);
         this.preserveCase = preserveCase;
         this.preserveIUPAC = preserveIUPAC;
     }
@@ -184,11 +176,24 @@ public class CachingIndexedFastaSequenceFile extends IndexedFastaSequenceFile {
         this(fasta, cacheSize, false, false);
     }
 
+    /**
+     * Split a cache of cacheSize bp into pages
+     *
+     * @param cacheSize the total size in bp of the cache
+     * @return a new, empty cache
+     */
+    private static ReferencePageCache createCache(final long cacheSize) {
+        final int pageSize = (int)Math.max(Math.min(MAX_PAGE_SIZE, cacheSize / MIN_PAGES), 1);
+        final int maxPages = (int)Math.max((cacheSize + pageSize - 1) / pageSize, MIN_PAGES);
+        return new ReferencePageCache(pageSize, maxPages);
+    }
+
     /**
      * Print the efficiency (hits / queries) to logger with priority
      */
     public void printEfficiency(final Priority priority) {
-        logger.log(priority, String.format("### CachingIndexedFastaReader: hits=%d misses=%d efficiency %.6f%%", cacheHits, cacheMisses, calcEfficiency()));
+        logger.log(priority, String.format("### CachingIndexedFastaReader: hits=%d misses=%d efficiency %.6f%%, %d of %d pages of %d bp cached, %d pages evicted",
+                getCacheHits(), getCacheMisses(), calcEfficiency(), cache.getNumPages(), cache.getMaxPages(), cache.getPageSize(), cache.getNumEvictions()));
     }
 
     /**
@@ -196,21 +201,21 @@ public class CachingIndexedFastaSequenceFile extends IndexedFastaSequenceFile {
      * @return
      */
     public double calcEfficiency() {
-        return 100.0 * cacheHits / (cacheMisses + cacheHits * 1.0);
+        return 100.0 * getCacheHits() / (getCacheMisses() + getCacheHits() * 1.0);
     }
 
     /**
      * @return the number of cache hits that have occurred
      */
     public long getCacheHits() {
-        return cacheHits;
+        return cacheHits.get();
     }
 
     /**
      * @return the number of cache misses that have occurred
      */
     public long getCacheMisses() {
-        return cacheMisses;
+        return cacheMisses.get();
     }
 
     /**
@@ -251,8 +256,8 @@ public class CachingIndexedFastaSequenceFile extends IndexedFastaSequenceFile {
     /**
      * Gets the subsequence of the contig in the range [start,stop]
      *
-     * Uses the sequence cache if possible, or updates the cache to handle the request.  If the range
-     * is larger than the cache itself, just loads the sequence directly, not changing the cache at all
+     * Uses the cached pages of the reference if possible, loading any pages needed that aren't cached.  If the
+     * range is larger than the cache itself, just loads the sequence directly, not changing the cache at all
      *
      * @param contig Contig whose subsequence to retrieve.
      * @param start inclusive, 1-based start of region.
@@ -263,10 +268,9 @@ public class CachingIndexedFastaSequenceFile extends IndexedFastaSequenceFile {
     @Override
     public ReferenceSequence getSubsequenceAt( final String contig, long start, final long stop ) {
         final ReferenceSequence result;
-        final Cache myCache = cache.get();
 
-        if ( (stop - start) >= cacheSize ) {
-            cacheMisses++;
+        if ( (stop - start) >= cacheSize || start < 0 ) {
+            cacheMisses.incrementAndGet();
             result = super.getSubsequenceAt(contig, start, stop);
             if ( ! preserveCase ) StringUtil.toUpperCase(result.getBases());
             if ( ! preserveIUPAC ) BaseUtils.convertIUPACtoN(result.getBases(), true, start < 1);
@@ -277,29 +281,33 @@ public class CachingIndexedFastaSequenceFile extends IndexedFastaSequenceFile {
             if (stop > contigInfo.getSequenceLength())
                 throw new PicardException("Query asks for data past end of contig");
 
-            if ( start < myCache.start || stop > myCache.stop || myCache.seq == null || myCache.seq.getContigIndex() != contigInfo.getSequenceIndex() ) {
-                cacheMisses++;
-                myCache.start = Math.max(start - cacheMissBackup, 0);
-                myCache.stop  = Math.min(start + cacheSize + cacheMissBackup, contigInfo.getSequenceLength());
-                myCache.seq   = super.getSubsequenceAt(contig, myCache.start, myCache.stop);
-
-                // convert all of the bases in the sequence to upper case if we aren't preserving cases
-                if ( ! preserveCase ) StringUtil.toUpperCase(myCache.seq.getBases());
-                if ( ! preserveIUPAC ) BaseUtils.convertIUPACtoN(myCache.seq.getBases(), true, myCache.start == 0);
-            } else {
-                cacheHits++;
+            // copy the requested bases out of each of the pages overlapping them, loading the pages we don't have
+            final int pageSize = cache.getPageSize();
+            final byte[] bases = new byte[(int)(stop - start + 1)];
+            boolean allPagesCached = true;
+            for ( long pageIndex = start / pageSize; pageIndex <= stop / pageSize; pageIndex++ ) {
+                ReferencePageCache.Page page = cache.get(contigInfo.getSequenceIndex(), pageIndex);
+                if ( page == null ) {
+                    allPagesCached = false;
+                    page = cache.add(loadPage(contigInfo, pageIndex, pageSize));
+                }
+
+                final long copyStart = Math.max(start, page.start);
+                final long copyStop = Math.min(stop, page.start + page.bases.length - 1);
+                try {
+                    System.arraycopy(page.bases, (int)(copyStart - page.start), bases, (int)(copyStart - start), (int)(copyStop - copyStart + 1));
+                } catch ( IndexOutOfBoundsException e ) {
+                    throw new ReviewedGATKException(String.format("BUG: bad array indexing.  Page start %d and size %d, request start %d end %d",
+                            page.start, page.bases.length, start, stop), e);
+                }
             }
 
-            // at this point we determine where in the cache we want to extract the requested subsequence
-            final int cacheOffsetStart = (int)(start - myCache.start);
-            final int cacheOffsetStop = (int)(stop - start + cacheOffsetStart + 1);
+            if ( allPagesCached )
+                cacheHits.incrementAndGet();
+            else
+                cacheMisses.incrementAndGet();
 
-            try {
-                result = new ReferenceSequence(myCache.seq.getName(), myCache.seq.getContigIndex(), Arrays.copyOfRange(myCache.seq.getBases(), cacheOffsetStart, cacheOffsetStop));
-            } catch ( ArrayIndexOutOfBoundsException e ) {
-                throw new ReviewedGATKException(String.format("BUG: bad array indexing.  Cache start %d and end %d, request start %d end %d, offset start %d and end %d, base size %d",
-                        myCache.start, myCache.stop, start, stop, cacheOffsetStart, cacheOffsetStop, myCache.seq.getBases().length), e);
-            }
+            result = new ReferenceSequence(contigInfo.getSequenceName(), contigInfo.getSequenceIndex(), bases);
         }
 
         // for debugging -- print out our efficiency if requested
@@ -308,4 +316,28 @@ public class CachingIndexedFastaSequenceFile extends IndexedFastaSequenceFile {
 
         return result;
     }
-}
\ No newline at end of file
+
+    /**
+     * Load a page of the reference from disk, converting the case and IUPAC bases as requested
+     *
+     * Page i covers positions [i * pageSize, (i+1) * pageSize - 1] of the contig, truncated at the end of the
+     * contig.  Position 0 (the byte just before the first base) is included in the first page, so that queries
+     * starting at 0 return the same bases as the underlying reader.
+     *
+     * @param contigInfo the contig of the page
+     * @param pageIndex the index of the page within the contig
+     * @param pageSize the size of every page but the last in a contig
+     * @return a new page, not yet in the cache
+     */
+    private ReferencePageCache.Page loadPage(final SAMSequenceRecord contigInfo, final long pageIndex, final int pageSize) {
+        final long pageStart = pageIndex * pageSize;
+        final long pageStop = Math.min(pageStart + pageSize - 1, contigInfo.getSequenceLength());
+        final byte[] bases = super.getSubsequenceAt(contigInfo.getSequenceName(), pageStart, pageStop).getBases();
+
+        // convert all of the bases in the sequence to upper case if we aren't preserving cases
+        if ( ! preserveCase ) StringUtil.toUpperCase(bases);
+        if ( ! preserveIUPAC ) BaseUtils.convertIUPACtoN(bases, true, pageStart == 0);
+
+        return new ReferencePageCache.Page(contigInfo.getSequenceIndex(), pageIndex, pageStart, bases);
+    }
+}
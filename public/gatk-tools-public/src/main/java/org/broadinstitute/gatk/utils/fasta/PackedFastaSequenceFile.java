@@ -0,0 +1,428 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.fasta;
+
+import htsjdk.samtools.SAMException;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.reference.IndexedFastaSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequence;
+import htsjdk.samtools.util.StringUtil;
+import org.broadinstitute.gatk.utils.BaseUtils;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A reference reader serving bases out of a memory-mapped, 2-bit packed copy of a FASTA.
+ *
+ * The packed file is compiled once from a FASTA by PackedFastaWriter and lives alongside the FASTA, its .fai and
+ * its .dict, named as the FASTA plus PACKED_REFERENCE_EXTENSION.  For each contig it holds the bases packed four to
+ * a byte, the runs of bases that aren't A, C, G or T (Ns and other IUPAC codes) and the runs of lower case bases.
+ * Queries decode straight out of the mapped file, so there's no line parsing, no cache and no per-query upper casing
+ * or IUPAC conversion, and the whole reference takes about a quarter of the memory of the text FASTA.  All queries
+ * use absolute reads of the mapped buffers, so a single reader can be shared by any number of threads.
+ *
+ * Like CachingIndexedFastaSequenceFile, bases are upper cased unless preserveCase is set, and IUPAC bases are
+ * converted to Ns unless preserveIUPAC is set.
+ *
+ * File layout (big-endian):
+ *
+ *   header:     magic, version, length of the source FASTA and the offset of the contig table
+ *   then for each contig:
+ *     bases:      2 bits per base (A=0, C=1, G=2, T=3), first base in the high bits of each byte
+ *     exceptions: (int start, int length, byte base) runs of non-ACGT bases, upper cased, sorted by start
+ *     mask:       (int start, int length) runs of lower case bases, sorted by start
+ *   contig table: number of contigs, and for each contig its name, length, and the offset and count of its
+ *                 packed bases, exception runs and lower case runs
+ *
+ * All positions within the file are 0-based offsets into the contig.
+ */
+public class PackedFastaSequenceFile extends IndexedFastaSequenceFile {
+    protected static final org.apache.log4j.Logger logger = org.apache.log4j.Logger.getLogger(PackedFastaSequenceFile.class);
+
+    /** The extension of a packed reference, appended to the name of the FASTA it was compiled from */
+    public static final String PACKED_REFERENCE_EXTENSION = ".packed";
+
+    /** First bytes of every packed reference: "GATKPKFA" */
+    static final long MAGIC = 0x4741544B504B4641L;
+
+    /** Version of the packed reference layout */
+    static final int VERSION = 1;
+
+    /** Bytes in each run of exception bases: int start, int length, byte base */
+    static final int EXCEPTION_RUN_SIZE = 9;
+
+    /** Bytes in each run of lower case bases: int start, int length */
+    static final int MASK_RUN_SIZE = 8;
+
+    /** The bases encoded by each 2-bit code */
+    static final byte[] CODE_TO_BASE = { 'A', 'C', 'G', 'T' };
+
+    /** The largest region of the file we'll map at once; each contig lies entirely within one region */
+    private static final long MAX_MAPPED_REGION_SIZE = Integer.MAX_VALUE;
+
+    /**
+     * The byte returned for position 0 of a contig: the line terminator just before the sequence in the FASTA,
+     * which is what IndexedFastaSequenceFile returns for queries starting at 0
+     */
+    private static final byte POSITION_ZERO_BYTE = '\n';
+
+    /**
+     * Where the data for a single contig lives in the mapped file
+     */
+    private static final class Contig {
+        final String name;
+        final int index;
+        final int length;
+        final ByteBuffer data;
+        final int basesOffset;
+        final int exceptionsOffset;
+        final int nExceptionRuns;
+        final int maskOffset;
+        final int nMaskRuns;
+
+        private Contig(final String name, final int index, final int length, final ByteBuffer data, final int basesOffset,
+                       final int exceptionsOffset, final int nExceptionRuns, final int maskOffset, final int nMaskRuns) {
+            this.name = name;
+            this.index = index;
+            this.length = length;
+            this.data = data;
+            this.basesOffset = basesOffset;
+            this.exceptionsOffset = exceptionsOffset;
+            this.nExceptionRuns = nExceptionRuns;
+            this.maskOffset = maskOffset;
+            this.nMaskRuns = nMaskRuns;
+        }
+    }
+
+    /** The packed reference we are reading */
+    private final File packedFile;
+
+    /** If true, we will preserve the case of the original base in the genome */
+    private final boolean preserveCase;
+
+    /** If true, we will preserve the IUPAC bases in the genome */
+    private final boolean preserveIUPAC;
+
+    /** The contigs in the packed file, by name */
+    private final Map<String, Contig> contigs = new HashMap<String, Contig>();
+
+    /**
+     * Open the packed reference packedFile, which must sit next to the FASTA it was compiled from
+     *
+     * @param packedFile the packed reference, named as its FASTA plus PACKED_REFERENCE_EXTENSION
+     * @param preserveCase If true, we will keep the case of the underlying bases in the FASTA, otherwise everything is converted to upper case
+     * @param preserveIUPAC If true, we will keep the IUPAC bases in the FASTA, otherwise they are converted to Ns
+     */
+    public PackedFastaSequenceFile(final File packedFile, final boolean preserveCase, final boolean preserveIUPAC) throws FileNotFoundException {
+        super(getSourceFasta(packedFile));
+        this.packedFile = packedFile;
+        this.preserveCase = preserveCase;
+        this.preserveIUPAC = preserveIUPAC;
+
+        try {
+            readPackedFile();
+        } catch ( IOException e ) {
+            throw new UserException.CouldNotReadInputFile(packedFile, e);
+        }
+    }
+
+    /**
+     * Open the packed reference packedFile, upper casing all bases and converting IUPAC bases to Ns
+     *
+     * @param packedFile the packed reference, named as its FASTA plus PACKED_REFERENCE_EXTENSION
+     */
+    public PackedFastaSequenceFile(final File packedFile) throws FileNotFoundException {
+        this(packedFile, false, false);
+    }
+
+    /**
+     * Is file a packed reference, judging by its name?
+     *
+     * @param file a reference file
+     * @return true if file has the packed reference extension
+     */
+    public static boolean isPackedReference(final File file) {
+        return file.getName().endsWith(PACKED_REFERENCE_EXTENSION);
+    }
+
+    /**
+     * Get the FASTA a packed reference was compiled from
+     *
+     * @param packedFile the packed reference
+     * @return the FASTA named as packedFile without PACKED_REFERENCE_EXTENSION
+     */
+    public static File getSourceFasta(final File packedFile) {
+        if ( ! isPackedReference(packedFile) )
+            throw new IllegalArgumentException("Packed reference " + packedFile + " must end with " + PACKED_REFERENCE_EXTENSION);
+        final String path = packedFile.getPath();
+        return new File(path.substring(0, path.length() - PACKED_REFERENCE_EXTENSION.length()));
+    }
+
+    /**
+     * Get the packed reference compiled from a FASTA
+     *
+     * @param fasta the FASTA
+     * @return the packed reference for fasta, which may or may not exist
+     */
+    public static File getPackedReference(final File fasta) {
+        return new File(fasta.getPath() + PACKED_REFERENCE_EXTENSION);
+    }
+
+    /**
+     * Read the header of the packed file, check it against the FASTA and map the contigs
+     */
+    private void readPackedFile() throws IOException {
+        final FileInputStream stream = new FileInputStream(packedFile);
+        final List<String> names = new ArrayList<String>();
+        final List<long[]> layouts = new ArrayList<long[]>();
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+            if ( in.readLong() != MAGIC )
+                throw new UserException.MalformedFile(packedFile, "not a packed reference");
+            final int version = in.readInt();
+            if ( version != VERSION )
+                throw new UserException.MalformedFile(packedFile, "unsupported packed reference version " + version);
+            final long fastaLength = in.readLong();
+            if ( fastaLength != file.length() )
+                throw new UserException.CouldNotReadInputFile(packedFile, "it is out of date with " + file.getAbsolutePath() + "; please recreate it with PackedFastaWriter");
+
+            stream.getChannel().position(in.readLong());
+            in = new DataInputStream(new BufferedInputStream(stream));
+            final int nContigs = in.readInt();
+            for ( int i = 0; i < nContigs; i++ ) {
+                names.add(in.readUTF());
+                // length, bases offset, exceptions offset, exception runs, mask offset, mask runs
+                layouts.add(new long[] { in.readLong(), in.readLong(), in.readLong(), in.readInt(), in.readLong(), in.readInt() });
+            }
+        } finally {
+            stream.close();
+        }
+
+        checkAgainstDictionary(names, layouts);
+
+        // map the contigs, a region of up to MAX_MAPPED_REGION_SIZE bytes at a time
+        final RandomAccessFile raf = new RandomAccessFile(packedFile, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            int regionFirstContig = 0;
+            while ( regionFirstContig < names.size() ) {
+                final long regionStart = layouts.get(regionFirstContig)[1];
+                int regionEndContig = regionFirstContig;
+                while ( regionEndContig < names.size() && getContigEnd(layouts.get(regionEndContig)) - regionStart <= MAX_MAPPED_REGION_SIZE )
+                    regionEndContig++;
+                if ( regionEndContig == regionFirstContig )
+                    throw new UserException.MalformedFile(packedFile, "contig " + names.get(regionFirstContig) + " is too large to map");
+
+                final ByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, getContigEnd(layouts.get(regionEndContig - 1)) - regionStart);
+                for ( int i = regionFirstContig; i < regionEndContig; i++ ) {
+                    final long[] layout = layouts.get(i);
+                    contigs.put(names.get(i), new Contig(names.get(i), i, (int)layout[0], region,
+                            (int)(layout[1] - regionStart), (int)(layout[2] - regionStart), (int)layout[3], (int)(layout[4] - regionStart), (int)layout[5]));
+                }
+                regionFirstContig = regionEndContig;
+            }
+        } finally {
+            // the mappings stay valid after the channel is closed
+            raf.close();
+        }
+
+        logger.info(String.format("Mapped packed reference %s with %d contigs", packedFile.getAbsolutePath(), contigs.size()));
+    }
+
+    /**
+     * The offset just past the end of the data for a contig
+     */
+    private static long getContigEnd(final long[] layout) {
+        return layout[4] + layout[5] * MASK_RUN_SIZE;
+    }
+
+    /**
+     * Make sure the contigs in the packed file are exactly those in the sequence dictionary of the FASTA
+     */
+    private void checkAgainstDictionary(final List<String> names, final List<long[]> layouts) {
+        final SAMSequenceDictionary dictionary = getSequenceDictionary();
+        if ( dictionary == null )
+            return;
+        if ( dictionary.size() != names.size() )
+            throw new UserException.MalformedFile(packedFile, String.format("has %d contigs but the sequence dictionary has %d", names.size(), dictionary.size()));
+        for ( int i = 0; i < names.size(); i++ ) {
+            final SAMSequenceRecord record = dictionary.getSequence(i);
+            if ( ! record.getSequenceName().equals(names.get(i)) || record.getSequenceLength() != layouts.get(i)[0] )
+                throw new UserException.MalformedFile(packedFile, String.format("contig %s of length %d doesn't match contig %s of length %d in the sequence dictionary",
+                        names.get(i), layouts.get(i)[0], record.getSequenceName(), record.getSequenceLength()));
+        }
+    }
+
+    /**
+     * Is this reader keeping the original case of bases in the fasta, or is everything being made upper case?
+     *
+     * @return true if the bases coming from this reader are in the original case in the fasta, false if they are all upper cased
+     */
+    public boolean isPreservingCase() {
+        return preserveCase;
+    }
+
+    /**
+     * Is this reader keeping the IUPAC bases in the fasta, or is it turning them into Ns?
+     *
+     * @return true if the IUPAC bases coming from this reader are not modified
+     */
+    public boolean isPreservingIUPAC() {
+        return preserveIUPAC;
+    }
+
+    /**
+     * Gets the subsequence of the contig in the range [start,stop], decoded from the packed file
+     *
+     * @param contig Contig whose subsequence to retrieve.
+     * @param start inclusive, 1-based start of region.
+     * @param stop inclusive, 1-based stop of region.
+     * @return The partial reference sequence associated with this range.  If preserveCase is false, then
+     *         all of the bases in the ReferenceSequence returned by this method will be upper cased.
+     */
+    @Override
+    public ReferenceSequence getSubsequenceAt( final String contig, final long start, final long stop ) {
+        if ( start > stop + 1 )
+            throw new SAMException(String.format("Malformed query; start point %d lies after end point %d", start, stop));
+        if ( start < 0 )
+            throw new IllegalArgumentException("start must be >= 0 but got " + start);
+
+        final Contig contigInfo = contigs.get(contig);
+        if ( contigInfo == null )
+            throw new SAMException("Unable to find entry for contig: " + contig);
+        if ( stop > contigInfo.length )
+            throw new SAMException("Query asks for data past end of contig");
+
+        final byte[] bases = new byte[(int)(stop - start + 1)];
+        int offset = 0;
+        if ( start == 0 && bases.length > 0 )
+            bases[offset++] = POSITION_ZERO_BYTE;
+
+        // the 0-based range of bases within the contig
+        final int first = (int)Math.max(start - 1, 0);
+        final int last = (int)stop - 1;
+
+        decodeBases(contigInfo, first, last, bases, offset);
+        if ( preserveCase )
+            applyMask(contigInfo, first, last, bases, offset);
+        applyExceptions(contigInfo, first, last, bases, offset);
+
+        return new ReferenceSequence(contigInfo.name, contigInfo.index, bases);
+    }
+
+    /**
+     * Decode the 2-bit bases [first, last] of contig into bases starting at offset
+     */
+    private static void decodeBases(final Contig contig, final int first, final int last, final byte[] bases, final int offset) {
+        final ByteBuffer data = contig.data;
+        int pos = first;
+        int out = offset;
+        while ( pos <= last ) {
+            final int packed = data.get(contig.basesOffset + (pos >> 2));
+            // decode the rest of this byte, stopping at last
+            final int stopInByte = Math.min(3, last - (pos & ~3));
+            for ( int i = pos & 3; i <= stopInByte; i++ )
+                bases[out++] = CODE_TO_BASE[(packed >> (6 - (i << 1))) & 3];
+            pos = (pos | 3) + 1;
+        }
+    }
+
+    /**
+     * Lower case the bases [first, last] of contig that are lower case in the FASTA
+     */
+    private void applyMask(final Contig contig, final int first, final int last, final byte[] bases, final int offset) {
+        final ByteBuffer data = contig.data;
+        for ( int run = findFirstRun(data, contig.maskOffset, MASK_RUN_SIZE, contig.nMaskRuns, first); run < contig.nMaskRuns; run++ ) {
+            final int runPos = contig.maskOffset + run * MASK_RUN_SIZE;
+            final int runStart = data.getInt(runPos);
+            if ( runStart > last )
+                break;
+            final int runStop = Math.min(last, runStart + data.getInt(runPos + 4) - 1);
+            for ( int pos = Math.max(first, runStart); pos <= runStop; pos++ )
+                bases[offset + pos - first] = StringUtil.toLowerCase(bases[offset + pos - first]);
+        }
+    }
+
+    /**
+     * Fill in the bases [first, last] of contig that aren't A, C, G or T, converting them to Ns if requested
+     */
+    private void applyExceptions(final Contig contig, final int first, final int last, final byte[] bases, final int offset) {
+        final ByteBuffer data = contig.data;
+        for ( int run = findFirstRun(data, contig.exceptionsOffset, EXCEPTION_RUN_SIZE, contig.nExceptionRuns, first); run < contig.nExceptionRuns; run++ ) {
+            final int runPos = contig.exceptionsOffset + run * EXCEPTION_RUN_SIZE;
+            final int runStart = data.getInt(runPos);
+            if ( runStart > last )
+                break;
+            final int runStop = Math.min(last, runStart + data.getInt(runPos + 4) - 1);
+            final byte base = data.get(runPos + 8);
+            // IUPAC bases, whatever their case in the FASTA, are converted to upper case Ns
+            final boolean keepCase = preserveCase && preserveIUPAC;
+            final byte converted = preserveIUPAC ? base : BaseUtils.convertIUPACtoN(new byte[] { base }, true, false)[0];
+            for ( int pos = Math.max(first, runStart); pos <= runStop; pos++ ) {
+                final int i = offset + pos - first;
+                // the mask has already been applied, so the case of bases[i] is the case in the FASTA
+                bases[i] = keepCase && Character.isLowerCase(bases[i]) ? StringUtil.toLowerCase(converted) : converted;
+            }
+        }
+    }
+
+    /**
+     * Find the first of the nRuns runs, each stored as an int start and an int length, that ends at or after pos
+     *
+     * @return the index of the run, or nRuns if all runs end before pos
+     */
+    private static int findFirstRun(final ByteBuffer data, final int runsOffset, final int runSize, final int nRuns, final int pos) {
+        int low = 0, high = nRuns;
+        while ( low < high ) {
+            final int mid = (low + high) >>> 1;
+            final int runPos = runsOffset + mid * runSize;
+            if ( data.getInt(runPos) + data.getInt(runPos + 4) - 1 < pos )
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    @Override
+    public String toString() {
+        return packedFile.getAbsolutePath();
+    }
+}
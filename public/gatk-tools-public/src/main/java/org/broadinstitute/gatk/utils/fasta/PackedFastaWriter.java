@@ -0,0 +1,201 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.fasta;
+
+import htsjdk.samtools.reference.IndexedFastaSequenceFile;
+import htsjdk.samtools.reference.ReferenceSequence;
+import htsjdk.samtools.util.StringUtil;
+import org.apache.log4j.Logger;
+import org.broadinstitute.gatk.utils.commandline.Argument;
+import org.broadinstitute.gatk.utils.commandline.CommandLineProgram;
+import org.broadinstitute.gatk.utils.commandline.Input;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * Compiles an indexed FASTA into the packed reference read by PackedFastaSequenceFile.
+ *
+ * The packed reference is written next to the FASTA, named as the FASTA plus
+ * PackedFastaSequenceFile.PACKED_REFERENCE_EXTENSION.  Once it exists, pass it as the reference (-R) to use it
+ * in place of the FASTA.
+ */
+public class PackedFastaWriter extends CommandLineProgram {
+    private static Logger logger = Logger.getLogger(PackedFastaWriter.class);
+
+    @Input(fullName = "reference_sequence", shortName = "R", doc = "Indexed FASTA reference to pack", required = true)
+    public File referenceFile = null;
+
+    @Argument(fullName = "out", shortName = "o", doc = "Packed reference to write; defaults to the reference plus " + PackedFastaSequenceFile.PACKED_REFERENCE_EXTENSION, required = false)
+    public File packedFile = null;
+
+    /** The 2-bit code of each base, or -1 for bases that aren't A, C, G or T */
+    private static final byte[] BASE_TO_CODE = new byte[256];
+    static {
+        Arrays.fill(BASE_TO_CODE, (byte)-1);
+        for ( int code = 0; code < PackedFastaSequenceFile.CODE_TO_BASE.length; code++ )
+            BASE_TO_CODE[PackedFastaSequenceFile.CODE_TO_BASE[code]] = (byte)code;
+    }
+
+    @Override
+    protected int execute() throws IOException {
+        final File output = packedFile != null ? packedFile : PackedFastaSequenceFile.getPackedReference(referenceFile);
+        writePackedFasta(referenceFile, output);
+        return 0;
+    }
+
+    /**
+     * Compile fasta into a packed reference
+     *
+     * Contigs are packed one at a time, so this needs enough memory to hold the largest contig of fasta.
+     *
+     * @param fasta an indexed FASTA
+     * @param packedFile the packed reference to write
+     */
+    public static void writePackedFasta(final File fasta, final File packedFile) throws IOException {
+        final IndexedFastaSequenceFile reader = new IndexedFastaSequenceFile(fasta);
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(packedFile), 1 << 20));
+        try {
+            out.writeLong(PackedFastaSequenceFile.MAGIC);
+            out.writeInt(PackedFastaSequenceFile.VERSION);
+            out.writeLong(fasta.length());
+
+            // the contig table goes at the end, once we know where everything is
+            final long tableOffsetPosition = out.size();
+            out.writeLong(0);
+
+            final ByteArrayOutputStream table = new ByteArrayOutputStream();
+            final DataOutputStream tableOut = new DataOutputStream(table);
+            int nContigs = 0;
+            long offset = out.size();
+            for ( ReferenceSequence contig = reader.nextSequence(); contig != null; contig = reader.nextSequence() ) {
+                final byte[] bases = contig.getBases();
+                final byte[] packed = new byte[(bases.length + 3) / 4];
+                final ByteArrayOutputStream exceptions = new ByteArrayOutputStream();
+                final DataOutputStream exceptionsOut = new DataOutputStream(exceptions);
+                final ByteArrayOutputStream mask = new ByteArrayOutputStream();
+                final DataOutputStream maskOut = new DataOutputStream(mask);
+                int nExceptionRuns = 0, nMaskRuns = 0;
+
+                int exceptionStart = -1, maskStart = -1;
+                byte exceptionBase = 0;
+                for ( int i = 0; i <= bases.length; i++ ) {
+                    final boolean atEnd = i == bases.length;
+                    final byte base = atEnd ? 0 : StringUtil.toUpperCase(bases[i]);
+                    final boolean lowerCase = ! atEnd && base != bases[i];
+
+                    // close the current runs if they end here
+                    if ( exceptionStart != -1 && base != exceptionBase ) {
+                        exceptionsOut.writeInt(exceptionStart);
+                        exceptionsOut.writeInt(i - exceptionStart);
+                        exceptionsOut.writeByte(exceptionBase);
+                        nExceptionRuns++;
+                        exceptionStart = -1;
+                    }
+                    if ( maskStart != -1 && ! lowerCase ) {
+                        maskOut.writeInt(maskStart);
+                        maskOut.writeInt(i - maskStart);
+                        nMaskRuns++;
+                        maskStart = -1;
+                    }
+                    if ( atEnd )
+                        break;
+
+                    final int code = BASE_TO_CODE[base & 0xFF];
+                    if ( code != -1 )
+                        packed[i >> 2] |= code << (6 - ((i & 3) << 1));
+                    else if ( exceptionStart == -1 ) {
+                        // packed as an A, with the real base in an exception run
+                        exceptionStart = i;
+                        exceptionBase = base;
+                    }
+                    if ( lowerCase && maskStart == -1 )
+                        maskStart = i;
+                }
+
+                out.write(packed);
+                exceptions.writeTo(out);
+                mask.writeTo(out);
+
+                tableOut.writeUTF(contig.getName());
+                tableOut.writeLong(bases.length);
+                tableOut.writeLong(offset);
+                tableOut.writeLong(offset + packed.length);
+                tableOut.writeInt(nExceptionRuns);
+                tableOut.writeLong(offset + packed.length + exceptions.size());
+                tableOut.writeInt(nMaskRuns);
+                offset += packed.length + exceptions.size() + mask.size();
+                nContigs++;
+
+                logger.info(String.format("Packed %s: %d bases, %d runs of non-ACGT bases, %d runs of lower case bases",
+                        contig.getName(), bases.length, nExceptionRuns, nMaskRuns));
+            }
+
+            out.writeInt(nContigs);
+            table.writeTo(out);
+            out.close();
+
+            final RandomAccessFile raf = new RandomAccessFile(packedFile, "rw");
+            try {
+                raf.seek(tableOffsetPosition);
+                raf.writeLong(offset);
+            } finally {
+                raf.close();
+            }
+        } finally {
+            out.close();
+            reader.close();
+        }
+    }
+
+    /**
+     * Required main method implementation.
+     * @param argv Command-line argument text.
+     * @throws Exception on error.
+     */
+    public static void main(String[] argv) throws Exception {
+        int returnCode = 0;
+        try {
+            PackedFastaWriter instance = new PackedFastaWriter();
+            start(instance, argv);
+            returnCode = 0;
+        }
+        catch(Exception ex) {
+            returnCode = 1;
+            ex.printStackTrace();
+            throw ex;
+        }
+        finally {
+            System.exit(returnCode);
+        }
+    }
+}
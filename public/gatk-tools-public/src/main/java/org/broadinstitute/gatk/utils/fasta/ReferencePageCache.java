@@ -0,0 +1,153 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.fasta;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, thread-safe cache of fixed-size pages of reference bases, shared by all threads.
+ *
+ * Pages are looked up without locking.  When the cache is full, adding a page evicts another
+ * using the CLOCK algorithm: pages looked up since the clock hand last passed them get a second
+ * chance, so pages in active use by any thread stay resident.
+ */
+class ReferencePageCache {
+    /**
+     * A page of reference bases, covering positions [start, start + bases.length) of a contig
+     */
+    static final class Page {
+        final int contigIndex;
+        final long pageIndex;
+        final long start;
+        final byte[] bases;
+
+        /** has this page been used since the clock hand last passed it? */
+        volatile boolean referenced = true;
+
+        Page(final int contigIndex, final long pageIndex, final long start, final byte[] bases) {
+            this.contigIndex = contigIndex;
+            this.pageIndex = pageIndex;
+            this.start = start;
+            this.bases = bases;
+        }
+    }
+
+    private final int pageSize;
+    private final int maxPages;
+
+    private final ConcurrentHashMap<Long, Page> pages;
+
+    // the clock, guarded by this
+    private final Page[] clock;
+    private int clockHand = 0;
+
+    private final AtomicLong nEvictions = new AtomicLong(0);
+
+    /**
+     * @param pageSize the number of bases in each page
+     * @param maxPages the maximum number of pages to hold at once
+     */
+    ReferencePageCache(final int pageSize, final int maxPages) {
+        if ( pageSize < 1 ) throw new IllegalArgumentException("pageSize must be >= 1, got " + pageSize);
+        if ( maxPages < 1 ) throw new IllegalArgumentException("maxPages must be >= 1, got " + maxPages);
+
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+        this.pages = new ConcurrentHashMap<Long, Page>(maxPages * 2);
+        this.clock = new Page[maxPages];
+    }
+
+    int getPageSize() {
+        return pageSize;
+    }
+
+    int getMaxPages() {
+        return maxPages;
+    }
+
+    /**
+     * @return the number of pages currently in the cache
+     */
+    int getNumPages() {
+        return pages.size();
+    }
+
+    /**
+     * @return the number of pages evicted from the cache so far
+     */
+    long getNumEvictions() {
+        return nEvictions.get();
+    }
+
+    private static long key(final int contigIndex, final long pageIndex) {
+        return ((long)contigIndex << 40) | pageIndex;
+    }
+
+    /**
+     * Get a page, if it's in the cache
+     *
+     * @param contigIndex the index of the page's contig in the sequence dictionary
+     * @param pageIndex the index of the page within the contig
+     * @return the page, or null if it isn't in the cache
+     */
+    Page get(final int contigIndex, final long pageIndex) {
+        final Page page = pages.get(key(contigIndex, pageIndex));
+        if ( page != null )
+            page.referenced = true;
+        return page;
+    }
+
+    /**
+     * Add a page to the cache, evicting another page if the cache is full
+     *
+     * @param page the page to add
+     * @return the page now in the cache, which is a page added by another thread if the page was already present
+     */
+    synchronized Page add(final Page page) {
+        final long key = key(page.contigIndex, page.pageIndex);
+        final Page existing = pages.get(key);
+        if ( existing != null )
+            return existing;
+
+        // advance the clock hand to the first empty slot or page not referenced since we last passed it
+        while ( clock[clockHand] != null && clock[clockHand].referenced ) {
+            clock[clockHand].referenced = false;
+            clockHand = (clockHand + 1) % maxPages;
+        }
+
+        final Page evicted = clock[clockHand];
+        if ( evicted != null ) {
+            pages.remove(key(evicted.contigIndex, evicted.pageIndex));
+            nEvictions.incrementAndGet();
+        }
+
+        clock[clockHand] = page;
+        clockHand = (clockHand + 1) % maxPages;
+        pages.put(key, page);
+        return page;
+    }
+}
@@ -0,0 +1,244 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.genotyper;
+
+import java.util.Arrays;
+
+/**
+ * Contiguous primitive storage for the likelihoods of a single sample in a {@link ReadLikelihoods} collection.
+ *
+ * <p>
+ *     All values live in one array laid out allele-major, so that the likelihood of read {@code r} given
+ *     allele {@code a} is found at {@code a * readCapacity + r}. The slab keeps some spare capacity for both
+ *     reads and alleles so that adding reads or alleles, and removing reads, is usually done in place.
+ * </p>
+ *
+ * <p>
+ *     The slab does not know how many alleles and reads are in use; that is up to the enclosing
+ *     read-likelihoods collection, which passes the current counts to the methods that need them.
+ * </p>
+ *
+ * <p>
+ *     Values are always stored in double precision. Likelihoods are log10 values that callers compare and sum
+ *     after marginalization, and no caller in this tree could trade that precision for the memory of a float slab.
+ * </p>
+ */
+final class LikelihoodSlab {
+
+    /**
+     * Number of spare allele rows allocated with a new slab.
+     *
+     * <p>One is enough to add the &lt;NON_REF&gt; allele without reallocation.</p>
+     */
+    static final int ALLELE_HEADROOM = 1;
+
+    /**
+     * Maximum number of values in a slab.
+     */
+    private static final int MAXIMUM_CAPACITY = Integer.MAX_VALUE - 8;
+
+    /**
+     * Number of reads that fit in each allele row; the stride between consecutive alleles.
+     */
+    private int readCapacity;
+
+    /**
+     * Number of allele rows in the slab.
+     */
+    private int alleleCapacity;
+
+    private double[] values;
+
+    /**
+     * Creates a new slab with room for at least the requested number of alleles and reads.
+     *
+     * <p>All values are initially 0.</p>
+     *
+     * @param alleleCount the number of alleles.
+     * @param readCount the number of reads.
+     *
+     * @throws IllegalArgumentException if either count is negative or the slab would be too large.
+     * @return never {@code null}.
+     */
+    static LikelihoodSlab create(final int alleleCount, final int readCount) {
+        if (alleleCount < 0)
+            throw new IllegalArgumentException("the allele count cannot be negative");
+        if (readCount < 0)
+            throw new IllegalArgumentException("the read count cannot be negative");
+        final int alleleCapacity = alleleCount + ALLELE_HEADROOM;
+        checkCapacity(alleleCapacity, readCount);
+        return new LikelihoodSlab(alleleCapacity, readCount);
+    }
+
+    private static void checkCapacity(final int alleleCapacity, final int readCapacity) {
+        if ((long) alleleCapacity * readCapacity > MAXIMUM_CAPACITY)
+            throw new IllegalArgumentException("too many allele and read combinations: " + alleleCapacity + " x " + readCapacity);
+    }
+
+    private LikelihoodSlab(final int alleleCapacity, final int readCapacity) {
+        this.alleleCapacity = alleleCapacity;
+        this.readCapacity = readCapacity;
+        values = new double[alleleCapacity * readCapacity];
+    }
+
+    private LikelihoodSlab(final LikelihoodSlab original) {
+        alleleCapacity = original.alleleCapacity;
+        readCapacity = original.readCapacity;
+        values = original.values.clone();
+    }
+
+    /**
+     * Returns the likelihood of a read given an allele.
+     */
+    double get(final int alleleIndex, final int readIndex) {
+        return values[alleleIndex * readCapacity + readIndex];
+    }
+
+    /**
+     * Changes the likelihood of a read given an allele.
+     */
+    void set(final int alleleIndex, final int readIndex, final double value) {
+        values[alleleIndex * readCapacity + readIndex] = value;
+    }
+
+    /**
+     * Sets the likelihood of a range of reads given an allele to the same value.
+     *
+     * @param alleleIndex the target allele.
+     * @param fromReadIndex first read in the range (inclusive).
+     * @param toReadIndex last read in the range (exclusive).
+     * @param value the new value.
+     */
+    void fill(final int alleleIndex, final int fromReadIndex, final int toReadIndex, final double value) {
+        final int offset = alleleIndex * readCapacity;
+        Arrays.fill(values, offset + fromReadIndex, offset + toReadIndex, value);
+    }
+
+    /**
+     * Copies the likelihood of the first reads given an allele into an array.
+     *
+     * @param alleleIndex the target allele.
+     * @param dest the destination array.
+     * @param offset the first position to write in {@code dest}.
+     * @param readCount number of reads to copy.
+     */
+    void copyAllele(final int alleleIndex, final double[] dest, final int offset, final int readCount) {
+        System.arraycopy(values, alleleIndex * readCapacity, dest, offset, readCount);
+    }
+
+    /**
+     * Makes sure that the slab can hold the requested number of alleles and reads.
+     *
+     * <p>
+     *     The values of the alleles and reads in use are preserved. If the slab needs to grow in the
+     *     read dimension, some extra read capacity is allocated to accommodate further growth.
+     * </p>
+     *
+     * @param alleleCount the number of alleles required.
+     * @param readCount the number of reads required.
+     * @param usedAlleleCount the number of alleles currently in use.
+     * @param usedReadCount the number of reads currently in use.
+     */
+    void ensureCapacity(final int alleleCount, final int readCount, final int usedAlleleCount, final int usedReadCount) {
+        if (alleleCount <= alleleCapacity && readCount <= readCapacity)
+            return;
+        final int newReadCapacity = readCount <= readCapacity ? readCapacity
+                : Math.min(MAXIMUM_CAPACITY, Math.max(readCount, readCapacity + (readCapacity >> 1)));
+        final int newAlleleCapacity = Math.max(alleleCount, alleleCapacity);
+        checkCapacity(newAlleleCapacity, newReadCapacity);
+        if (newReadCapacity == readCapacity) {
+            // the rows are already laid out as required, we only need more of them.
+            values = Arrays.copyOf(values, newAlleleCapacity * newReadCapacity);
+        } else {
+            final double[] newValues = new double[newAlleleCapacity * newReadCapacity];
+            for (int a = 0; a < usedAlleleCount; a++)
+                System.arraycopy(values, a * readCapacity, newValues, a * newReadCapacity, usedReadCount);
+            values = newValues;
+        }
+        alleleCapacity = newAlleleCapacity;
+        readCapacity = newReadCapacity;
+    }
+
+    /**
+     * Removes reads in place, shifting the remaining reads to close the gaps.
+     *
+     * @param remove indicates for each read in use whether it should be removed.
+     * @param firstRemoved index of the first read to remove.
+     * @param alleleCount the number of alleles in use.
+     * @param readCount the number of reads in use before the removal.
+     */
+    void removeReads(final boolean[] remove, final int firstRemoved, final int alleleCount, final int readCount) {
+        for (int a = 0; a < alleleCount; a++) {
+            final int offset = a * readCapacity;
+            int to = offset + firstRemoved;
+            for (int r = firstRemoved + 1; r < readCount; r++)
+                if (!remove[r])
+                    values[to++] = values[offset + r];
+        }
+    }
+
+    /**
+     * Returns an independent copy of this slab.
+     */
+    LikelihoodSlab copy() {
+        return new LikelihoodSlab(this);
+    }
+
+    /**
+     * Creates a new slab with the marginal likelihoods with respect to a new set of alleles.
+     *
+     * <p>
+     *     The likelihood of a read given a new allele is the maximum likelihood given any of the old alleles
+     *     that map to it, or {@link Double#NEGATIVE_INFINITY} if there is none.
+     * </p>
+     *
+     * @param oldToNewAlleleIndexMap new allele index for each old allele; -1 if it does not map to any.
+     * @param newAlleleCount number of new alleles.
+     * @param readsToKeep indices of the reads to keep, in order; {@code null} to keep all of them.
+     * @param newReadCount number of reads in the result.
+     *
+     * @return never {@code null}.
+     */
+    LikelihoodSlab marginalize(final int[] oldToNewAlleleIndexMap, final int newAlleleCount,
+                               final int[] readsToKeep, final int newReadCount) {
+        final LikelihoodSlab result = new LikelihoodSlab(newAlleleCount + ALLELE_HEADROOM, newReadCount);
+        final double[] newValues = result.values;
+        Arrays.fill(newValues, 0, newAlleleCount * newReadCount, Double.NEGATIVE_INFINITY);
+        for (int a = 0; a < oldToNewAlleleIndexMap.length; a++) {
+            final int newAlleleIndex = oldToNewAlleleIndexMap[a];
+            if (newAlleleIndex == -1)
+                continue;
+            final int oldOffset = a * readCapacity;
+            final int newOffset = newAlleleIndex * newReadCount;
+            for (int r = 0; r < newReadCount; r++) {
+                final double likelihood = values[oldOffset + (readsToKeep == null ? r : readsToKeep[r])];
+                if (likelihood > newValues[newOffset + r])
+                    newValues[newOffset + r] = likelihood;
+            }
+        }
+        return result;
+    }
+}
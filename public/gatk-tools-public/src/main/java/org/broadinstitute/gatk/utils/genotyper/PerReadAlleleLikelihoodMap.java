@@ -35,6 +35,7 @@ import org.broadinstitute.gatk.utils.pileup.PileupElement;
 import org.broadinstitute.gatk.utils.pileup.ReadBackedPileup;
 import org.broadinstitute.gatk.utils.sam.AlignmentUtils;
 import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
+import org.broadinstitute.gatk.utils.smithwaterman.SWImplementation;
 import htsjdk.variant.variantcontext.Allele;
 
 import java.util.*;
@@ -394,6 +395,16 @@ public class PerReadAlleleLikelihoodMap {
      * @param paddedReferenceLoc    the active region
      */
     public void realignReadsToMostLikelyHaplotype(final Collection<Haplotype> haplotypes, final GenomeLoc paddedReferenceLoc) {
+        realignReadsToMostLikelyHaplotype(haplotypes, paddedReferenceLoc, SWImplementation.FULL_MATRIX);
+    }
+
+    /**
+     * Loop over all of the reads in this likelihood map and realign them to its most likely haplotype
+     * @param haplotypes            the collection of haplotypes
+     * @param paddedReferenceLoc    the active region
+     * @param swImplementation      the Smith-Waterman implementation used to align each read to its haplotype
+     */
+    public void realignReadsToMostLikelyHaplotype(final Collection<Haplotype> haplotypes, final GenomeLoc paddedReferenceLoc, final SWImplementation swImplementation) {
 
         // we need to remap the Alleles back to the Haplotypes; inefficient but unfortunately this is a requirement currently
         final Map<Allele, Haplotype> alleleToHaplotypeMap = new HashMap<>(haplotypes.size());
@@ -403,7 +414,7 @@ public class PerReadAlleleLikelihoodMap {
         final Map<GATKSAMRecord, Map<Allele, Double>> newLikelihoodReadMap = new LinkedHashMap<>(likelihoodReadMap.size());
         for( final Map.Entry<GATKSAMRecord, Map<Allele, Double>> entry : likelihoodReadMap.entrySet() ) {
             final MostLikelyAllele bestAllele = PerReadAlleleLikelihoodMap.getMostLikelyAllele(entry.getValue());
-            final GATKSAMRecord alignedToRef = AlignmentUtils.createReadAlignedToRef(entry.getKey(), alleleToHaplotypeMap.get(bestAllele.getMostLikelyAllele()), paddedReferenceLoc.getStart(), bestAllele.isInformative());
+            final GATKSAMRecord alignedToRef = AlignmentUtils.createReadAlignedToRef(entry.getKey(), alleleToHaplotypeMap.get(bestAllele.getMostLikelyAllele()), paddedReferenceLoc.getStart(), bestAllele.isInformative(), swImplementation);
             newLikelihoodReadMap.put(alignedToRef, entry.getValue());
         }
 
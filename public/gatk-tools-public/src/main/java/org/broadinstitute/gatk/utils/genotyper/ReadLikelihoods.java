@@ -27,8 +27,8 @@ package org.broadinstitute.gatk.utils.genotyper;
 
 import htsjdk.variant.variantcontext.Allele;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
-import it.unimi.dsi.fastutil.objects.Object2IntMap;
-import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
 import org.broadinstitute.gatk.engine.downsampling.AlleleBiasedDownsamplingUtils;
 import org.broadinstitute.gatk.tools.walkers.genotyper.*;
 import org.broadinstitute.gatk.utils.GenomeLoc;
@@ -41,6 +41,11 @@ import java.util.*;
 /**
  * Read-likelihoods container implementation based on integer indexed arrays.
  *
+ * <p>
+ *     The likelihoods of each sample are kept in a single contiguous primitive array (see {@link LikelihoodSlab}).
+ *     Adding alleles or reads, and removing reads, is done in place whenever the sample array has room for it.
+ * </p>
+ *
  * @param <A> the type of the allele the likelihood makes reference to.
  *
  * @author Valentin Ruano-Rubio &lt;valentin@broadinstitute.org&gt;
@@ -53,12 +58,12 @@ public class ReadLikelihoods<A extends Allele> implements SampleList, AlleleList
     private GATKSAMRecord[][] readsBySampleIndex;
 
     /**
-     * Indexed per sample, allele and finally read (within sample).
+     * Likelihood values indexed per sample.
      * <p>
-     *     valuesBySampleIndex[s][a][r] == lnLk(R_r | A_a) where R_r comes from Sample s.
+     *     valuesBySampleIndex[s].get(a,r) == lnLk(R_r | A_a) where R_r comes from Sample s.
      * </p>
      */
-    private double[][][] valuesBySampleIndex;
+    private final LikelihoodSlab[] valuesBySampleIndex;
 
     /**
      * Sample list
@@ -85,8 +90,11 @@ public class ReadLikelihoods<A extends Allele> implements SampleList, AlleleList
      *
      * <p>In order to save CPU time the indices contained in this array (not the array itself) is
      * lazily initialized by invoking {@link #readIndexBySampleIndex(int)}.</p>
+     *
+     * <p>Reads are looked up by identity, which avoids computing {@link GATKSAMRecord#hashCode()} over the
+     * whole record.</p>
      */
-    private final Object2IntMap<GATKSAMRecord>[] readIndexBySampleIndex;
+    private final Reference2IntMap<GATKSAMRecord>[] readIndexBySampleIndex;
 
     /**
      * Index of the reference allele if any, otherwise -1
@@ -137,10 +145,10 @@ public class ReadLikelihoods<A extends Allele> implements SampleList, AlleleList
 
         readsBySampleIndex = new GATKSAMRecord[sampleCount][];
         readListBySampleIndex = new List[sampleCount];
-        valuesBySampleIndex = new double[sampleCount][][];
+        valuesBySampleIndex = new LikelihoodSlab[sampleCount];
         referenceAlleleIndex = findReferenceAllele(alleles);
 
-        readIndexBySampleIndex = new Object2IntMap[sampleCount];
+        readIndexBySampleIndex = new Reference2IntMap[sampleCount];
 
         setupIndexes(reads, sampleCount, alleleCount);
 
@@ -164,8 +172,7 @@ public class ReadLikelihoods<A extends Allele> implements SampleList, AlleleList
                 : reads.toArray(new GATKSAMRecord[reads.size()]);
         final int sampleReadCount = readsBySampleIndex[sampleIndex].length;
 
-        final double[][] sampleValues = new double[alleleCount][sampleReadCount];
-        valuesBySampleIndex[sampleIndex] = sampleValues;
+        valuesBySampleIndex[sampleIndex] = LikelihoodSlab.create(alleleCount, sampleReadCount);
     }
 
     /**
@@ -174,18 +181,16 @@ public class ReadLikelihoods<A extends Allele> implements SampleList, AlleleList
     public ReadLikelihoods<A> clone() {
 
         final int sampleCount = samples.sampleCount();
-        final int alleleCount = alleles.alleleCount();
 
-        final double[][][] newLikelihoodValues = new double[sampleCount][alleleCount][];
+        final LikelihoodSlab[] newLikelihoodValues = new LikelihoodSlab[sampleCount];
 
         @SuppressWarnings("unchecked")
-        final Object2IntMap<GATKSAMRecord>[] newReadIndexBySampleIndex = new Object2IntMap[sampleCount];
+        final Reference2IntMap<GATKSAMRecord>[] newReadIndexBySampleIndex = new Reference2IntMap[sampleCount];
         final GATKSAMRecord[][] newReadsBySampleIndex = new GATKSAMRecord[sampleCount][];
 
         for (int s = 0; s < sampleCount; s++) {
             newReadsBySampleIndex[s] = readsBySampleIndex[s].clone();
-            for (int a = 0; a < alleleCount; a++)
-                newLikelihoodValues[s][a] = valuesBySampleIndex[s][a].clone();
+            newLikelihoodValues[s] = valuesBySampleIndex[s].copy();
         }
 
         // Finally we create the new read-likelihood
@@ -197,8 +202,8 @@ public class ReadLikelihoods<A extends Allele> implements SampleList, AlleleList
     // Internally used constructor.
     @SuppressWarnings("unchecked")
     private ReadLikelihoods(final AlleleList alleles, final SampleList samples,
-                            final GATKSAMRecord[][] readsBySampleIndex, final Object2IntMap<GATKSAMRecord>[] readIndex,
-                            final double[][][] values) {
+                            final GATKSAMRecord[][] readsBySampleIndex, final Reference2IntMap<GATKSAMRecord>[] readIndex,
+                            final LikelihoodSlab[] values) {
         this.samples = samples;
         this.alleles = alleles;
         this.readsBySampleIndex = readsBySampleIndex;
@@ -346,7 +351,7 @@ public class ReadLikelihoods<A extends Allele> implements SampleList, AlleleList
             return;
 
         for (int s = 0; s < valuesBySampleIndex.length; s++) {
-            final double[][] sampleValues = valuesBySampleIndex[s];
+            final LikelihoodSlab sampleValues = valuesBySampleIndex[s];
             final int readCount = readsBySampleIndex[s].length;
             for (int r = 0; r < readCount; r++)
                 normalizeLikelihoodsPerRead(bestToZero, maximumLikelihoodDifferenceCap, sampleValues, s, r);
@@ -355,14 +360,14 @@ public class ReadLikelihoods<A extends Allele> implements SampleList, AlleleList
 
     // Does the normalizeLikelihoods job for each read.
     private void normalizeLikelihoodsPerRead(final boolean bestToZero, final double maximumBestAltLikelihoodDifference,
-                                             final double[][] sampleValues, final int sampleIndex, final int readIndex) {
+                                             final LikelihoodSlab sampleValues, final int sampleIndex, final int readIndex) {
 
         final BestAllele bestAlternativeAllele = searchBestAllele(sampleIndex,readIndex,false);
 
         final double worstLikelihoodCap = bestAlternativeAllele.likelihood + maximumBestAltLikelihoodDifference;
 
         final double referenceLikelihood = referenceAlleleIndex == -1 ? Double.NEGATIVE_INFINITY :
-                sampleValues[referenceAlleleIndex][readIndex];
+                sampleValues.get(referenceAlleleIndex, readIndex);
 
 
         final double bestAbsoluteLikelihood = Math.max(bestAlternativeAllele.likelihood,referenceLikelihood);
@@ -371,18 +376,20 @@ public class ReadLikelihoods<A extends Allele> implements SampleList, AlleleList
         if (bestToZero) {
             if (bestAbsoluteLikelihood == Double.NEGATIVE_INFINITY)
                 for (int a = 0; a < alleleCount; a++)
-                    sampleValues[a][readIndex] = 0;
+                    sampleValues.set(a, readIndex, 0);
             else if (worstLikelihoodCap != Double.NEGATIVE_INFINITY)
-                for (int a = 0; a < alleleCount; a++)
-                    sampleValues[a][readIndex] = (sampleValues[a][readIndex] < worstLikelihoodCap ? worstLikelihoodCap : sampleValues[a][readIndex]) - bestAbsoluteLikelihood;
+                for (int a = 0; a < alleleCount; a++) {
+                    final double likelihood = sampleValues.get(a, readIndex);
+                    sampleValues.set(a, readIndex, (likelihood < worstLikelihoodCap ? worstLikelihoodCap : likelihood) - bestAbsoluteLikelihood);
+                }
             else
                 for (int a = 0; a < alleleCount; a++)
-                    sampleValues[a][readIndex] -= bestAbsoluteLikelihood;
+                    sampleValues.set(a, readIndex, sampleValues.get(a, readIndex) - bestAbsoluteLikelihood);
         } else  // else if (maximumReferenceLikelihoodFall != Double.NEGATIVE_INFINITY ) { //
             // Guarantee to be the case by enclosing code.
             for (int a = 0; a < alleleCount; a++)
-                if (sampleValues[a][readIndex] < worstLikelihoodCap)
-                    sampleValues[a][readIndex] = worstLikelihoodCap;
+                if (sampleValues.get(a, readIndex) < worstLikelihoodCap)
+                    sampleValues.set(a, readIndex, worstLikelihoodCap);
     }
 
     /**
@@ -434,15 +441,15 @@ public class ReadLikelihoods<A extends Allele> implements SampleList, AlleleList
         if (alleleCount == 0 || (alleleCount == 1 && referenceAlleleIndex == 0 && !canBeReference))
             return new BestAllele(sampleIndex,readIndex,-1,Double.NEGATIVE_INFINITY,Double.NEGATIVE_INFINITY);
 
-        final double[][] sampleValues = valuesBySampleIndex[sampleIndex];
+        final LikelihoodSlab sampleValues = valuesBySampleIndex[sampleIndex];
         int bestAlleleIndex = canBeReference || referenceAlleleIndex != 0 ? 0 : 1;
 
-        double bestLikelihood = sampleValues[bestAlleleIndex][readIndex];
+        double bestLikelihood = sampleValues.get(bestAlleleIndex, readIndex);
         double secondBestLikelihood = Double.NEGATIVE_INFINITY;
         for (int a = bestAlleleIndex + 1; a < alleleCount; a++) {
             if (!canBeReference && referenceAlleleIndex == a)
                 continue;
-            final double candidateLikelihood = sampleValues[a][readIndex];
+            final double candidateLikelihood = sampleValues.get(a, readIndex);
             if (candidateLikelihood > bestLikelihood) {
                 bestAlleleIndex = a;
                 secondBestLikelihood = bestLikelihood;
@@ -458,7 +465,7 @@ public class ReadLikelihoods<A extends Allele> implements SampleList, AlleleList
         final int sampleCount = samples.sampleCount();
         for (int s = 0; s < sampleCount; s++) {
             final GATKSAMRecord[] sampleReads = readsBySampleIndex[s];
-            final Object2IntMap<GATKSAMRecord> readIndex = readIndexBySampleIndex[s];
+            final Reference2IntMap<GATKSAMRecord> readIndex = readIndexBySampleIndex[s];
             final int sampleReadCount = sampleReads.length;
             for (int r = 0; r < sampleReadCount; r++) {
                 final GATKSAMRecord read = sampleReads[r];
@@ -524,13 +531,10 @@ public class ReadLikelihoods<A extends Allele> implements SampleList, AlleleList
         final int sampleCount = samples.sampleCount();
         for (int s = 0; s < sampleCount; s++) {
             final int sampleReadCount = readsBySampleIndex[s].length;
-            final double[][] newValuesBySampleIndex = Arrays.copyOf(valuesBySampleIndex[s],newAlleleCount);
-            for (int a = oldAlleleCount; a < newAlleleCount; a++) {
-                newValuesBySampleIndex[a] = new double[sampleReadCount];
-                if (defaultLikelihood != 0.0)
-                    Arrays.fill(newValuesBySampleIndex[a],defaultLikelihood);
-            }
-            valuesBySampleIndex[s] = newValuesBySampleIndex;
+            final LikelihoodSlab sampleValues = valuesBySampleIndex[s];
+            sampleValues.ensureCapacity(newAlleleCount, sampleReadCount, oldAlleleCount, sampleReadCount);
+            for (int a = oldAlleleCount; a < newAlleleCount; a++)
+                sampleValues.fill(a, 0, sampleReadCount, defaultLikelihood);
         }
     }
 
@@ -673,12 +677,12 @@ public class ReadLikelihoods<A extends Allele> implements SampleList, AlleleList
 
         // We calculate the marginal likelihoods.
 
-        final double[][][] newLikelihoodValues = marginalLikelihoods(oldAlleleCount, newAlleleCount, oldToNewAlleleIndexMap, null);
+        final LikelihoodSlab[] newLikelihoodValues = marginalLikelihoods(newAlleleCount, oldToNewAlleleIndexMap, null);
 
         final int sampleCount = samples.sampleCount();
 
         @SuppressWarnings("unchecked")
-        final Object2IntMap<GATKSAMRecord>[] newReadIndexBySampleIndex = new Object2IntMap[sampleCount];
+        final Reference2IntMap<GATKSAMRecord>[] newReadIndexBySampleIndex = new Reference2IntMap[sampleCount];
         final GATKSAMRecord[][] newReadsBySampleIndex = new GATKSAMRecord[sampleCount][];
 
         for (int s = 0; s < sampleCount; s++) {
@@ -728,12 +732,12 @@ public class ReadLikelihoods<A extends Allele> implements SampleList, AlleleList
         final int[][] readsToKeep = overlappingReadIndicesBySampleIndex(overlap);
         // We calculate the marginal likelihoods.
 
-        final double[][][] newLikelihoodValues = marginalLikelihoods(oldAlleleCount, newAlleleCount, oldToNewAlleleIndexMap, readsToKeep);
+        final LikelihoodSlab[] newLikelihoodValues = marginalLikelihoods(newAlleleCount, oldToNewAlleleIndexMap, readsToKeep);
 
         final int sampleCount = samples.sampleCount();
 
         @SuppressWarnings("unchecked")
-        final Object2IntMap<GATKSAMRecord>[] newReadIndexBySampleIndex = new Object2IntMap[sampleCount];
+        final Reference2IntMap<GATKSAMRecord>[] newReadIndexBySampleIndex = new Reference2IntMap[sampleCount];
         final GATKSAMRecord[][] newReadsBySampleIndex = new GATKSAMRecord[sampleCount][];
 
         for (int s = 0; s < sampleCount; s++) {
@@ -797,32 +801,16 @@ public class ReadLikelihoods<A extends Allele> implements SampleList, AlleleList
     }
 
     // Calculate the marginal likelihoods considering the old -> new allele index mapping.
-    private double[][][] marginalLikelihoods(final int oldAlleleCount, final int newAlleleCount, final int[] oldToNewAlleleIndexMap, final int[][] readsToKeep) {
+    private LikelihoodSlab[] marginalLikelihoods(final int newAlleleCount, final int[] oldToNewAlleleIndexMap, final int[][] readsToKeep) {
 
         final int sampleCount = samples.sampleCount();
-        final double[][][] result = new double[sampleCount][][];
+        final LikelihoodSlab[] result = new LikelihoodSlab[sampleCount];
 
         for (int s = 0; s < sampleCount; s++) {
             final int sampleReadCount = readsBySampleIndex[s].length;
-            final double[][] oldSampleValues = valuesBySampleIndex[s];
             final int[] sampleReadToKeep = readsToKeep == null || readsToKeep[s].length == sampleReadCount ? null : readsToKeep[s];
             final int newSampleReadCount = sampleReadToKeep == null ? sampleReadCount : sampleReadToKeep.length;
-            final double[][] newSampleValues = result[s] = new double[newAlleleCount][newSampleReadCount];
-            // We initiate all likelihoods to -Inf.
-            for (int a = 0; a < newAlleleCount; a++)
-                Arrays.fill(newSampleValues[a], Double.NEGATIVE_INFINITY);
-            // For each old allele and read we update the new table keeping the maximum likelihood.
-            for (int r = 0; r < newSampleReadCount; r++) {
-                for (int a = 0; a < oldAlleleCount; a++) {
-                    final int oldReadIndex = newSampleReadCount == sampleReadCount ? r : sampleReadToKeep[r];
-                    final int newAlleleIndex = oldToNewAlleleIndexMap[a];
-                    if (newAlleleIndex == -1)
-                        continue;
-                    final double likelihood = oldSampleValues[a][oldReadIndex];
-                    if (likelihood > newSampleValues[newAlleleIndex][r])
-                        newSampleValues[newAlleleIndex][r] = likelihood;
-                }
-            }
+            result[s] = valuesBySampleIndex[s].marginalize(oldToNewAlleleIndexMap, newAlleleCount, sampleReadToKeep, newSampleReadCount);
         }
         return result;
     }
@@ -998,9 +986,9 @@ public class ReadLikelihoods<A extends Allele> implements SampleList, AlleleList
         final double log10MaxLikelihoodForTrueAllele = maxErrorsForRead * log10QualPerBase;
 
         final int alleleCount = alleles.alleleCount();
-        final double[][] sampleValues = valuesBySampleIndex[sampleIndex];
+        final LikelihoodSlab sampleValues = valuesBySampleIndex[sampleIndex];
         for (int a = 0; a < alleleCount; a++)
-            if (sampleValues[a][readIndex] >= log10MaxLikelihoodForTrueAllele)
+            if (sampleValues.get(a, readIndex) >= log10MaxLikelihoodForTrueAllele)
                 return false;
         return true;
     }
@@ -1041,13 +1029,12 @@ public class ReadLikelihoods<A extends Allele> implements SampleList, AlleleList
 
     // Extends the likelihood arrays-matrices.
     private void extendsLikelihoodArrays(double initialLikelihood, int sampleIndex, int sampleReadCount, int newSampleReadCount) {
-        final double[][] sampleValues = valuesBySampleIndex[sampleIndex];
+        final LikelihoodSlab sampleValues = valuesBySampleIndex[sampleIndex];
         final int alleleCount = alleles.alleleCount();
+        sampleValues.ensureCapacity(alleleCount, newSampleReadCount, alleleCount, sampleReadCount);
+        // the spare capacity may hold values of removed reads so we always fill.
         for (int a = 0; a < alleleCount; a++)
-            sampleValues[a] = Arrays.copyOf(sampleValues[a], newSampleReadCount);
-        if (initialLikelihood != 0.0) // the default array new value.
-            for (int a = 0; a < alleleCount; a++)
-                Arrays.fill(sampleValues[a],sampleReadCount,newSampleReadCount,initialLikelihood);
+            sampleValues.fill(a, sampleReadCount, newSampleReadCount, initialLikelihood);
     }
 
     // Append the new read reference into the structure per-sample.
@@ -1057,7 +1044,7 @@ public class ReadLikelihoods<A extends Allele> implements SampleList, AlleleList
                 Arrays.copyOf(readsBySampleIndex[sampleIndex], newSampleReadCount);
 
         int nextReadIndex = sampleReadCount;
-        final Object2IntMap<GATKSAMRecord> sampleReadIndex = readIndexBySampleIndex[sampleIndex];
+        final Reference2IntMap<GATKSAMRecord> sampleReadIndex = readIndexBySampleIndex[sampleIndex];
         for (final GATKSAMRecord newRead : newSampleReads) {
         //    if (sampleReadIndex.containsKey(newRead)) // might be worth handle this without exception (ignore the read?) but in practice should never be the case.
         //        throw new IllegalArgumentException("you cannot add reads that are already in read-likelihood collection");
@@ -1111,16 +1098,17 @@ public class ReadLikelihoods<A extends Allele> implements SampleList, AlleleList
 
     // Updates per-sample structures according to the addition of the NON_REF allele.
     private void addNonReferenceAlleleLikelihoodsPerSample(final int alleleCount, final int newAlleleCount, final int sampleIndex) {
-        final double[][] sampleValues = valuesBySampleIndex[sampleIndex] = Arrays.copyOf(valuesBySampleIndex[sampleIndex], newAlleleCount);
+        final LikelihoodSlab sampleValues = valuesBySampleIndex[sampleIndex];
         final int sampleReadCount = readsBySampleIndex[sampleIndex].length;
+        sampleValues.ensureCapacity(newAlleleCount, sampleReadCount, alleleCount, sampleReadCount);
 
-        final double[] nonRefAlleleLikelihoods = sampleValues[alleleCount] = new double [sampleReadCount];
-        Arrays.fill(nonRefAlleleLikelihoods,Double.NEGATIVE_INFINITY);
+        // the best allele search already includes the new allele so it must start at -Inf.
+        sampleValues.fill(alleleCount, 0, sampleReadCount, Double.NEGATIVE_INFINITY);
         for (int r = 0; r < sampleReadCount; r++) {
             final BestAllele bestAllele = searchBestAllele(sampleIndex,r,true);
             final double secondBestLikelihood = Double.isInfinite(bestAllele.confidence) ? bestAllele.likelihood
                     : bestAllele.likelihood - bestAllele.confidence;
-            nonRefAlleleLikelihoods[r] = secondBestLikelihood;
+            sampleValues.set(alleleCount, r, secondBestLikelihood);
         }
     }
 
@@ -1277,11 +1265,7 @@ public class ReadLikelihoods<A extends Allele> implements SampleList, AlleleList
      */
     @SuppressWarnings("unused")
     public int readIndex(final int sampleIndex, final GATKSAMRecord read) {
-        final Object2IntMap<GATKSAMRecord> readIndex = readIndexBySampleIndex(sampleIndex);
-        if (readIndex.containsKey(read))
-            return readIndexBySampleIndex(sampleIndex).getInt(read);
-        else
-            return -1;
+        return readIndexBySampleIndex(sampleIndex).getInt(read);
     }
 
     /**
@@ -1363,10 +1347,8 @@ public class ReadLikelihoods<A extends Allele> implements SampleList, AlleleList
         final GATKSAMRecord[] sampleReads = readsBySampleIndex[sampleIndex];
         final int sampleReadCount = sampleReads.length;
 
-        final Object2IntMap<GATKSAMRecord> indexByRead = readIndexBySampleIndex[sampleIndex];
-        if (indexByRead != null)
-            for (int i = 0; i < removeCount; i++)
-                indexByRead.remove(sampleReads[indexToRemove.getInt(i)]);
+        // the indices of the remaining reads change, so the read-index is rebuilt on demand.
+        readIndexBySampleIndex[sampleIndex] = null;
         final boolean[] removeIndex = new boolean[sampleReadCount];
         int firstDeleted = indexToRemove.get(0);
         for (int i = 0; i < removeCount; i++)
@@ -1381,14 +1363,8 @@ public class ReadLikelihoods<A extends Allele> implements SampleList, AlleleList
         System.arraycopy(oldSampleReads,0,newSampleReads,0,firstDeleted);
         Utils.skimArray(oldSampleReads,firstDeleted, newSampleReads, firstDeleted, removeIndex, firstDeleted);
 
-        // Then we skim out the likelihoods of the removed reads.
-        final double[][] oldSampleValues = valuesBySampleIndex[sampleIndex];
-        final double[][] newSampleValues = new double[alleleCount][newSampleReadCount];
-        for (int a = 0; a < alleleCount; a++) {
-            System.arraycopy(oldSampleValues[a],0,newSampleValues[a],0,firstDeleted);
-            Utils.skimArray(oldSampleValues[a], firstDeleted, newSampleValues[a], firstDeleted, removeIndex, firstDeleted);
-        }
-        valuesBySampleIndex[sampleIndex] = newSampleValues;
+        // Then we skim out the likelihoods of the removed reads in place.
+        valuesBySampleIndex[sampleIndex].removeReads(removeIndex, firstDeleted, alleleCount, sampleReadCount);
         readsBySampleIndex[sampleIndex] = newSampleReads;
         readListBySampleIndex[sampleIndex] = null; // reset the unmodifiable list.
     }
@@ -1399,7 +1375,7 @@ public class ReadLikelihoods<A extends Allele> implements SampleList, AlleleList
         final GATKSAMRecord[] sampleReads = readsBySampleIndex[sampleIndex];
         final int sampleReadCount = sampleReads.length;
 
-        final Object2IntMap<GATKSAMRecord> indexByRead = readIndexBySampleIndex(sampleIndex);
+        final Reference2IntMap<GATKSAMRecord> indexByRead = readIndexBySampleIndex(sampleIndex);
         // Count how many we are going to remove, which ones (indexes) and remove entry from the read-index map.
         final boolean[] removeIndex = new boolean[sampleReadCount];
         int removeCount = 0; // captures the number of deletions.
@@ -1408,8 +1384,8 @@ public class ReadLikelihoods<A extends Allele> implements SampleList, AlleleList
         final Iterator<GATKSAMRecord> readsToRemoveIterator = readsToRemove.iterator();
         while (readsToRemoveIterator.hasNext()) {
             final GATKSAMRecord read = readsToRemoveIterator.next();
-            if (indexByRead.containsKey(read)) {
-                final int index = indexByRead.getInt(read);
+            final int index = indexByRead.getInt(read);
+            if (index != -1) {
                 if (firstDeleted > index)
                     firstDeleted = index;
                 removeCount++;
@@ -1437,25 +1413,21 @@ public class ReadLikelihoods<A extends Allele> implements SampleList, AlleleList
             indexByRead.put(newSampleReads[r], r);
         }
 
-        // Then we skim out the likelihoods of the removed reads.
-        final double[][] oldSampleValues = valuesBySampleIndex[sampleIndex];
-        final double[][] newSampleValues = new double[alleleCount][newSampleReadCount];
-        for (int a = 0; a < alleleCount; a++) {
-            System.arraycopy(oldSampleValues[a],0,newSampleValues[a],0,firstDeleted);
-            Utils.skimArray(oldSampleValues[a], firstDeleted, newSampleValues[a], firstDeleted, removeIndex, firstDeleted);
-        }
-        valuesBySampleIndex[sampleIndex] = newSampleValues;
+        // Then we skim out the likelihoods of the removed reads in place.
+        valuesBySampleIndex[sampleIndex].removeReads(removeIndex, firstDeleted, alleleCount, sampleReadCount);
         readsBySampleIndex[sampleIndex] = newSampleReads;
         readListBySampleIndex[sampleIndex] = null; // reset the unmodifiable list.
     }
 
-    private Object2IntMap<GATKSAMRecord> readIndexBySampleIndex(final int sampleIndex) {
+    private Reference2IntMap<GATKSAMRecord> readIndexBySampleIndex(final int sampleIndex) {
         if (readIndexBySampleIndex[sampleIndex] == null) {
             final GATKSAMRecord[] sampleReads = readsBySampleIndex[sampleIndex];
             final int sampleReadCount = sampleReads.length;
-            readIndexBySampleIndex[sampleIndex] = new Object2IntOpenHashMap<>(sampleReadCount);
+            final Reference2IntMap<GATKSAMRecord> index = new Reference2IntOpenHashMap<>(sampleReadCount);
+            index.defaultReturnValue(-1);
             for (int r = 0; r < sampleReadCount; r++)
-                readIndexBySampleIndex[sampleIndex].put(sampleReads[r],r);
+                index.put(sampleReads[r],r);
+            readIndexBySampleIndex[sampleIndex] = index;
         }
         return readIndexBySampleIndex[sampleIndex];
     }
@@ -1490,11 +1462,11 @@ public class ReadLikelihoods<A extends Allele> implements SampleList, AlleleList
         final int alleleCount = alleles.alleleCount();
         final GATKSAMRecord[] sampleReads = readsBySampleIndex[sampleIndex];
         final int sampleReadCount = sampleReads.length;
+        final LikelihoodSlab sampleValues = valuesBySampleIndex[sampleIndex];
         for (int a = 0; a < alleleCount; a++) {
             final A allele = alleles.alleleAt(a);
-            final double[] readLikelihoods = valuesBySampleIndex[sampleIndex][a];
             for (int r = 0; r < sampleReadCount; r++)
-                result.add(sampleReads[r], allele, readLikelihoods[r]);
+                result.add(sampleReads[r], allele, sampleValues.get(a, r));
         }
         return result;
     }
@@ -1522,12 +1494,22 @@ public class ReadLikelihoods<A extends Allele> implements SampleList, AlleleList
 
         @Override
         public void set(final int alleleIndex, final int readIndex, final double value) {
-            valuesBySampleIndex[sampleIndex][alleleIndex][readIndex] = value;
+            checkIndices(alleleIndex, readIndex);
+            valuesBySampleIndex[sampleIndex].set(alleleIndex, readIndex, value);
         }
 
         @Override
         public double get(final int alleleIndex, final int readIndex) {
-            return valuesBySampleIndex[sampleIndex][alleleIndex][readIndex];
+            checkIndices(alleleIndex, readIndex);
+            return valuesBySampleIndex[sampleIndex].get(alleleIndex, readIndex);
+        }
+
+        // The sample slab may have spare capacity, so out of range indices would not necessarily fail on access.
+        private void checkIndices(final int alleleIndex, final int readIndex) {
+            if (alleleIndex < 0 || alleleIndex >= alleles.alleleCount())
+                throw new IllegalArgumentException("invalid allele index: " + alleleIndex);
+            if (readIndex < 0 || readIndex >= readsBySampleIndex[sampleIndex].length)
+                throw new IllegalArgumentException("invalid read index: " + readIndex);
         }
 
         @Override
@@ -1567,7 +1549,7 @@ public class ReadLikelihoods<A extends Allele> implements SampleList, AlleleList
 
         @Override
         public void copyAlleleLikelihoods(final int alleleIndex, final double[] dest, final int offset) {
-            System.arraycopy(valuesBySampleIndex[sampleIndex][alleleIndex],0,dest,offset,readCount());
+            valuesBySampleIndex[sampleIndex].copyAllele(alleleIndex, dest, offset, readCount());
         }
     }
 
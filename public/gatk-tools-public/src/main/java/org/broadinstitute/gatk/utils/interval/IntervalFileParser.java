@@ -0,0 +1,298 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.interval;
+
+import org.apache.log4j.Logger;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.PackedLocus;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.threading.NamedThreadFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Parses Picard (interval_list) and GATK (one chrA:B-C per line) interval files into PackedIntervalLists.
+ *
+ * The file is read sequentially in chunks of whole lines, and the chunks are parsed concurrently, so a file of
+ * millions of intervals is parsed about as fast as it can be read.  The intervals are returned in the order of the
+ * file.
+ *
+ * Picard files are recognized by their SAM style header.  As when reading them with Picard, intervals that are not
+ * on the reference are skipped with a warning.  Every line of a GATK file must be a valid interval.
+ */
+public class IntervalFileParser {
+    private final static Logger logger = Logger.getLogger(IntervalFileParser.class);
+
+    /** the number of bytes of the file parsed by each task */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private final GenomeLocParser parser;
+    private final int numThreads;
+    private final int chunkSize;
+
+    /**
+     * Create a parser using a thread per available processor
+     *
+     * @param parser the parser for the reference the intervals are on
+     */
+    public IntervalFileParser(final GenomeLocParser parser) {
+        this(parser, Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param parser     the parser for the reference the intervals are on
+     * @param numThreads the maximum number of threads parsing chunks of the file at once
+     * @param chunkSize  the approximate number of bytes of the file parsed at a time
+     */
+    public IntervalFileParser(final GenomeLocParser parser, final int numThreads, final int chunkSize) {
+        if ( parser == null ) throw new IllegalArgumentException("parser cannot be null");
+        if ( numThreads < 1 ) throw new IllegalArgumentException("numThreads must be >= 1 but got " + numThreads);
+        if ( chunkSize < 1 ) throw new IllegalArgumentException("chunkSize must be >= 1 but got " + chunkSize);
+        this.parser = parser;
+        this.numThreads = numThreads;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Parse the intervals in file
+     *
+     * @param file a Picard or GATK interval file
+     * @return the intervals in file, in the order they appear there
+     * @throws IOException if the file can't be read
+     * @throws UserException.MalformedGenomeLoc if a line of a GATK interval file isn't a valid interval
+     * @throws UserException.MalformedFile if a line of a Picard interval file can't be parsed
+     */
+    public PackedIntervalList parse(final File file) throws IOException {
+        final InputStream stream = new FileInputStream(file);
+        ExecutorService executor = null;
+        try {
+            final List<Future<ParsedChunk>> chunks = new ArrayList<Future<ParsedChunk>>();
+            Boolean isPicardFile = null;
+            byte[] carry = new byte[0];
+            while ( true ) {
+                final byte[] block = Arrays.copyOf(carry, carry.length + chunkSize);
+                final int length = carry.length + readFully(stream, block, carry.length, chunkSize);
+                final boolean atEnd = length < block.length;
+
+                // parse whole lines only, carrying the last partial line over into the next chunk
+                int chunkEnd = length;
+                if ( ! atEnd ) {
+                    while ( chunkEnd > 0 && block[chunkEnd - 1] != '\n' )
+                        chunkEnd--;
+                    if ( chunkEnd == 0 ) { // a single line longer than the chunk; read on until it ends
+                        carry = Arrays.copyOf(block, length);
+                        continue;
+                    }
+                }
+                carry = Arrays.copyOfRange(block, chunkEnd, length);
+
+                if ( isPicardFile == null )
+                    isPicardFile = startsWithHeader(block, chunkEnd);
+
+                final Callable<ParsedChunk> task = new ChunkParser(file, block, chunkEnd, isPicardFile);
+                if ( atEnd && executor == null ) { // the whole file fits in one chunk, so don't bother with threads
+                    final FutureTask<ParsedChunk> inline = new FutureTask<ParsedChunk>(task);
+                    inline.run();
+                    chunks.add(inline);
+                    break;
+                }
+                if ( executor == null )
+                    executor = Executors.newFixedThreadPool(numThreads, new NamedThreadFactory("GATK-interval-parser-%d"));
+                chunks.add(executor.submit(task));
+                if ( atEnd )
+                    break;
+            }
+
+            final PackedIntervalList intervals = new PackedIntervalList();
+            int nInvalidIntervals = 0;
+            for ( final Future<ParsedChunk> chunk : chunks ) {
+                final ParsedChunk parsed = chunk.get();
+                intervals.addAll(parsed.intervals);
+                nInvalidIntervals += parsed.nInvalidIntervals;
+            }
+            if ( nInvalidIntervals > 0 )
+                logger.warn("Ignoring " + nInvalidIntervals + " invalid intervals from " + file);
+            return intervals;
+        } catch (InterruptedException e) {
+            throw new ReviewedGATKException("Interrupted while parsing the interval file " + file, e);
+        } catch (ExecutionException e) {
+            if ( e.getCause() instanceof RuntimeException )
+                throw (RuntimeException)e.getCause();
+            if ( e.getCause() instanceof Error )
+                throw (Error)e.getCause();
+            throw new ReviewedGATKException("Unable to parse the interval file " + file, e.getCause());
+        } finally {
+            if ( executor != null )
+                executor.shutdownNow();
+            stream.close();
+        }
+    }
+
+    /**
+     * Read length bytes into buffer unless the stream ends first
+     *
+     * @return the number of bytes read
+     */
+    private static int readFully(final InputStream stream, final byte[] buffer, final int offset, final int length) throws IOException {
+        int total = 0;
+        while ( total < length ) {
+            final int n = stream.read(buffer, offset + total, length - total);
+            if ( n < 0 )
+                break;
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * @return true if the first non-blank character of the first length bytes of block starts a SAM header line
+     */
+    private static boolean startsWithHeader(final byte[] block, final int length) {
+        for ( int i = 0; i < length; i++ ) {
+            if ( ! Character.isWhitespace(block[i]) )
+                return block[i] == '@';
+        }
+        return false;
+    }
+
+    /**
+     * The intervals parsed from one chunk of a file
+     */
+    private static final class ParsedChunk {
+        private final PackedIntervalList intervals;
+        private final int nInvalidIntervals;
+
+        private ParsedChunk(final PackedIntervalList intervals, final int nInvalidIntervals) {
+            this.intervals = intervals;
+            this.nInvalidIntervals = nInvalidIntervals;
+        }
+    }
+
+    /**
+     * Parses the lines in the first length bytes of a chunk of a file
+     */
+    private final class ChunkParser implements Callable<ParsedChunk> {
+        private final File file;
+        private final byte[] bytes;
+        private final int length;
+        private final boolean isPicardFile;
+
+        private ChunkParser(final File file, final byte[] bytes, final int length, final boolean isPicardFile) {
+            this.file = file;
+            this.bytes = bytes;
+            this.length = length;
+            this.isPicardFile = isPicardFile;
+        }
+
+        @Override
+        public ParsedChunk call() {
+            final PackedIntervalList intervals = new PackedIntervalList();
+            int nInvalidIntervals = 0;
+            int lineStart = 0;
+            while ( lineStart < length ) {
+                int lineEnd = lineStart;
+                while ( lineEnd < length && bytes[lineEnd] != '\n' )
+                    lineEnd++;
+
+                if ( isPicardFile ) {
+                    if ( ! addPicardInterval(intervals, lineStart, lineEnd) )
+                        nInvalidIntervals++;
+                } else {
+                    final String line = new String(bytes, lineStart, lineEnd - lineStart, ASCII).trim();
+                    if ( line.length() > 0 )
+                        intervals.add(parser.parseGenomeLoc(line));
+                }
+                lineStart = lineEnd + 1;
+            }
+            return new ParsedChunk(intervals, nInvalidIntervals);
+        }
+
+        /**
+         * Add the interval on a line of a Picard interval file, in the tab separated form contig, start, end,
+         * strand, name.  Header and blank lines are skipped.
+         *
+         * @return false if the line is an interval that isn't on the reference, true otherwise
+         */
+        private boolean addPicardInterval(final PackedIntervalList intervals, final int lineStart, int lineEnd) {
+            if ( lineEnd > lineStart && bytes[lineEnd - 1] == '\r' )
+                lineEnd--;
+            if ( lineStart == lineEnd || bytes[lineStart] == '@' )
+                return true;
+
+            final int contigEnd = indexOfTab(lineStart, lineEnd);
+            final int startEnd = indexOfTab(contigEnd + 1, lineEnd);
+            final int stopEnd = indexOfTab(startEnd + 1, lineEnd);
+            if ( contigEnd >= lineEnd || startEnd >= lineEnd )
+                throw badLine(lineStart, lineEnd);
+
+            final String contig = new String(bytes, lineStart, contigEnd - lineStart, ASCII);
+            final int start = parsePosition(contigEnd + 1, startEnd, lineStart, lineEnd);
+            final int stop = parsePosition(startEnd + 1, stopEnd, lineStart, lineEnd);
+            if ( ! parser.isValidGenomeLoc(contig, start, stop, true) )
+                return false;
+
+            final int contigIndex = parser.getContigIndex(contig);
+            intervals.add(PackedLocus.pack(contigIndex, start), PackedLocus.pack(contigIndex, stop));
+            return true;
+        }
+
+        private int indexOfTab(int from, final int end) {
+            while ( from < end && bytes[from] != '\t' )
+                from++;
+            return from;
+        }
+
+        private int parsePosition(final int from, final int to, final int lineStart, final int lineEnd) {
+            if ( from >= to || to - from > 10 )
+                throw badLine(lineStart, lineEnd);
+            long value = 0;
+            for ( int i = from; i < to; i++ ) {
+                final int digit = bytes[i] - '0';
+                if ( digit < 0 || digit > 9 )
+                    throw badLine(lineStart, lineEnd);
+                value = value * 10 + digit;
+            }
+            if ( value > Integer.MAX_VALUE )
+                throw badLine(lineStart, lineEnd);
+            return (int)value;
+        }
+
+        private UserException badLine(final int lineStart, final int lineEnd) {
+            return new UserException.MalformedFile(file, "Invalid interval_list line: " + new String(bytes, lineStart, lineEnd - lineStart, ASCII));
+        }
+    }
+}
@@ -42,7 +42,6 @@ import org.broadinstitute.gatk.utils.Utils;
 import org.broadinstitute.gatk.utils.collections.Pair;
 import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
 import org.broadinstitute.gatk.utils.exceptions.UserException;
-import org.broadinstitute.gatk.utils.text.XReadLines;
 
 import java.io.File;
 import java.io.IOException;
@@ -122,7 +121,6 @@ public class IntervalUtils {
      * @return List<GenomeLoc> List of Genome Locs that have been parsed from file
      */
     public static List<GenomeLoc> intervalFileToList(final GenomeLocParser glParser, final String file_name) {
-        // try to open file
         File inputFile = new File(file_name);
         List<GenomeLoc> ret = new ArrayList<GenomeLoc>();
 
@@ -132,47 +130,12 @@ public class IntervalUtils {
             throw new ReviewedGATKException("BED files must be parsed through Tribble; parsing them as intervals through the GATK engine is no longer supported");
         }
         else {
-            /**
-             * IF not a BED file:
-             * first try to read it as a Picard interval file since that's well structured
-             * we'll fail quickly if it's not a valid file.
-             */
-            boolean isPicardInterval = false;
+            // Picard and GATK interval files are both handled, in parallel for large files, by the IntervalFileParser
             try {
-                // Note: Picard will skip over intervals with contigs not in the sequence dictionary
-                IntervalList il = IntervalList.fromFile(inputFile);
-                isPicardInterval = true;
-
-                int nInvalidIntervals = 0;
-                for (Interval interval : il.getIntervals()) {
-                    if ( glParser.isValidGenomeLoc(interval.getSequence(), interval.getStart(), interval.getEnd(), true))
-                        ret.add(glParser.createGenomeLoc(interval.getSequence(), interval.getStart(), interval.getEnd(), true));
-                    else {
-                        nInvalidIntervals++;
-                    }
-                }
-                if ( nInvalidIntervals > 0 )
-                    logger.warn("Ignoring " + nInvalidIntervals + " invalid intervals from " + inputFile);
+                ret.addAll(new IntervalFileParser(glParser).parse(inputFile).toGenomeLocs(glParser));
             }
-
-            // if that didn't work, try parsing file as a GATK interval file
-            catch (Exception e) {
-                if ( isPicardInterval ) // definitely a picard file, but we failed to parse
-                    throw new UserException.CouldNotReadInputFile(inputFile, e);
-                else {
-                    try {
-                        XReadLines reader = new XReadLines(new File(file_name));
-                        for(String line: reader) {
-                            if ( line.trim().length() > 0 ) {
-                                ret.add(glParser.parseGenomeLoc(line));
-                            }
-                        }
-                        reader.close();
-                    }
-                    catch (IOException e2) {
-                        throw new UserException.CouldNotReadInputFile(inputFile, e2);
-                    }
-                }
+            catch (IOException e) {
+                throw new UserException.CouldNotReadInputFile(inputFile, e);
             }
         }
 
@@ -200,8 +163,8 @@ public class IntervalUtils {
         if (setOne == null || setOne.size() == 0 || setTwo == null || setTwo.size() == 0)
             return Collections.unmodifiableList((setOne == null || setOne.size() == 0) ? setTwo : setOne);
 
-        // our master list, since we can't guarantee removal time in a generic list
-        LinkedList<GenomeLoc> retList = new LinkedList<GenomeLoc>();
+        // our master list
+        ArrayList<GenomeLoc> retList = new ArrayList<GenomeLoc>();
 
         // if we're set to UNION, just add them all
         if (rule == null || rule == IntervalSetRule.UNION) {
@@ -210,6 +173,12 @@ public class IntervalUtils {
             return Collections.unmodifiableList(retList);
         }
 
+        // the lists are walked by index below, which must not be linear in the size of the list
+        if ( ! (setOne instanceof RandomAccess) )
+            setOne = new ArrayList<GenomeLoc>(setOne);
+        if ( ! (setTwo instanceof RandomAccess) )
+            setTwo = new ArrayList<GenomeLoc>(setTwo);
+
         // else we're INTERSECTION, create two indexes into the lists
         int iOne = 0;
         int iTwo = 0;
@@ -248,14 +217,12 @@ public class IntervalUtils {
      * @return A sorted, merged version of the intervals passed in.
      */
     public static GenomeLocSortedSet sortAndMergeIntervals(GenomeLocParser parser, List<GenomeLoc> intervals, IntervalMergingRule mergingRule) {
-        // Make a copy of the (potentially unmodifiable) list to be sorted
-        intervals = new ArrayList<GenomeLoc>(intervals);
-        // sort raw interval list
-        Collections.sort(intervals);
-        // now merge raw interval list
-        intervals = mergeIntervalLocations(intervals, mergingRule);
+        // sort and merge packed copies of the intervals, so that only the merged intervals become GenomeLocs again
+        final PackedIntervalList packed = PackedIntervalList.fromGenomeLocs(intervals);
+        packed.sort();
+        packed.merge(mergingRule);
 
-        return GenomeLocSortedSet.createSetFromList(parser,intervals);
+        return packed.toGenomeLocSortedSet(parser);
     }
 
     /**
@@ -579,6 +546,105 @@ public class IntervalUtils {
         return new SplitLocusRecursive(split, remaining);
     }
 
+    /**
+     * Splits the locs into numParts parts of about equal expected cost, cutting locs where needed.
+     *
+     * This is splitLocusIntervals() with the size of a loc replaced by its cost under the model, so a part covering
+     * a deeply sequenced region gets fewer bases than its siblings.  Unmapped locs cost nothing and are never cut.
+     * If the model gives the locs no cost at all, they are split by size instead.
+     *
+     * @param locs the sorted locs to split
+     * @param numParts the number of parts to split them into
+     * @param costModel the expected cost of each region
+     * @return the parts, in order; there may be fewer than numParts if the locs can't be cut that finely
+     */
+    @Requires({"locs != null", "numParts > 0", "costModel != null"})
+    @Ensures("result != null")
+    public static List<List<GenomeLoc>> splitLocusIntervalsByCost(final List<GenomeLoc> locs, final int numParts, final IntervalCostModel costModel) {
+        double totalCost = 0;
+        for ( final GenomeLoc loc : locs )
+            totalCost += costOf(loc, costModel);
+        if ( totalCost <= 0 )
+            return splitLocusIntervals(locs, numParts);
+
+        // each part ends where the running cost reaches its share of the total, so rounding errors don't accumulate
+        final List<List<GenomeLoc>> splits = new ArrayList<List<GenomeLoc>>(numParts);
+        final LinkedList<GenomeLoc> remaining = new LinkedList<GenomeLoc>(locs);
+        List<GenomeLoc> split = new ArrayList<GenomeLoc>();
+        double costSoFar = 0;
+        while ( ! remaining.isEmpty() ) {
+            if ( splits.size() + 1 == numParts ) {
+                // the last one gets all of the remaining parts
+                split.addAll(remaining);
+                remaining.clear();
+                break;
+            }
+
+            final double splitEnd = totalCost * (splits.size() + 1) / numParts;
+            final GenomeLoc head = remaining.pop();
+            final double headCost = costOf(head, costModel);
+            if ( costSoFar + headCost < splitEnd ) {
+                split.add(head);
+                costSoFar += headCost;
+                continue;
+            }
+
+            // cut head where the part reaches its share, or close the part just before head if that is closer
+            final int cutPoint = findCostCutPoint(head, splitEnd - costSoFar, costModel);
+            if ( cutPoint > head.getStart() && cutPoint <= head.getStop() ) {
+                final GenomeLoc[] parts = head.split(cutPoint);
+                split.add(parts[0]);
+                costSoFar += costOf(parts[0], costModel);
+                remaining.push(parts[1]);
+            } else if ( cutPoint > head.getStop() || split.isEmpty() ) {
+                split.add(head);
+                costSoFar += headCost;
+            } else {
+                remaining.push(head);
+            }
+            splits.add(split);
+            split = new ArrayList<GenomeLoc>();
+        }
+
+        if ( ! split.isEmpty() )
+            splits.add(split);
+        return splits;
+    }
+
+    private static double costOf(final GenomeLoc loc, final IntervalCostModel costModel) {
+        return GenomeLoc.isUnmapped(loc) ? 0 : costModel.getCost(loc);
+    }
+
+    /**
+     * Find where to cut loc so that the piece before the cut costs as close to cost as possible
+     *
+     * @return the first position after the cut; loc.getStart() to cut nothing off and loc.getStop() + 1 to take all of loc
+     */
+    private static int findCostCutPoint(final GenomeLoc loc, final double cost, final IntervalCostModel costModel) {
+        if ( GenomeLoc.isUnmapped(loc) )
+            return cost > 0 ? loc.getStop() + 1 : loc.getStart();
+
+        // binary search for the first cut whose piece costs at least cost; the cost of a piece grows with its size
+        int low = loc.getStart();
+        int high = loc.getStop() + 1;
+        while ( low < high ) {
+            final int mid = low + (high - low) / 2;
+            if ( mid > loc.getStart() && costModel.getCost(loc.setStop(loc, mid - 1)) >= cost )
+                high = mid;
+            else
+                low = mid + 1;
+        }
+
+        // low overshoots cost; the cut before it may be closer
+        if ( low > loc.getStart() ) {
+            final double over = costModel.getCost(loc.setStop(loc, low - 1)) - cost;
+            final double under = low - 1 > loc.getStart() ? cost - costModel.getCost(loc.setStop(loc, low - 2)) : cost;
+            if ( under < over )
+                return low - 1;
+        }
+        return low;
+    }
+
     /**
      * Setup the intervals to be processed
      */
@@ -610,6 +676,18 @@ public class IntervalUtils {
 
         // Note that the use of '-L all' is no longer supported.
 
+        MergedIntervalCache cache = null;
+        String cacheKey = null;
+        if ( argCollection.intervalCacheDirectory != null ) {
+            cache = new MergedIntervalCache(argCollection.intervalCacheDirectory);
+            cacheKey = MergedIntervalCache.keyFor(referenceDataSource.getReference().getSequenceDictionary(), argCollection);
+            intervals = cache.get(new GenomeLocParser(referenceDataSource.getReference()), cacheKey);
+            if ( intervals != null ) {
+                logger.info(String.format("Processing %d bp from intervals cached in %s", intervals.coveredSize(), cache.getDirectory()));
+                return intervals;
+            }
+        }
+
         // if include argument isn't given, create new set of all possible intervals
 
         final Pair<GenomeLocSortedSet, GenomeLocSortedSet> includeExcludePair = IntervalUtils.parseIntervalBindingsPair(
@@ -638,6 +716,9 @@ public class IntervalUtils {
                     toPruneSize - intervalSize, (toPruneSize - intervalSize) / (0.01 * toPruneSize)));
         }
 
+        if ( cache != null )
+            cache.put(cacheKey, intervals);
+
         logger.info(String.format("Processing %d bp from intervals", intervals.coveredSize()));
         return intervals;
     }
@@ -665,7 +746,8 @@ public class IntervalUtils {
             final List<IntervalBinding<Feature>> intervalBindings,
             final IntervalSetRule rule, final IntervalMergingRule intervalMergingRule, final int padding,
             final GenomeLocParser genomeLocParser) {
-        List<GenomeLoc> allIntervals = new ArrayList<GenomeLoc>();
+        // combine the intervals as packed loci, as mergeListsBySetOperator() and sortAndMergeIntervals() would
+        PackedIntervalList allIntervals = new PackedIntervalList();
         for ( IntervalBinding intervalBinding : intervalBindings) {
             @SuppressWarnings("unchecked")
             List<GenomeLoc> intervals = intervalBinding.getIntervals(genomeLocParser);
@@ -678,10 +760,23 @@ public class IntervalUtils {
                 intervals = getIntervalsWithFlanks(genomeLocParser, intervals, padding);
             }
 
-            allIntervals = mergeListsBySetOperator(intervals, allIntervals, rule);
+            final PackedIntervalList packed = PackedIntervalList.fromGenomeLocs(intervals);
+            if ( allIntervals.isEmpty() )
+                allIntervals = packed;
+            else if ( packed.isEmpty() )
+                continue;
+            else if ( rule == null || rule == IntervalSetRule.UNION )
+                allIntervals.addAll(packed);
+            else {
+                allIntervals = PackedIntervalList.intersection(packed, allIntervals);
+                if ( allIntervals.isEmpty() )
+                    throw new UserException.BadInput("The INTERSECTION of your -L options produced no intervals.");
+            }
         }
 
-        return sortAndMergeIntervals(genomeLocParser, allIntervals, intervalMergingRule);
+        allIntervals.sort();
+        allIntervals.merge(intervalMergingRule);
+        return allIntervals.toGenomeLocSortedSet(genomeLocParser);
     }
 
     private final static class SplitLocusRecursive {
@@ -0,0 +1,225 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.interval;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.tribble.Feature;
+import org.apache.log4j.Logger;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.GenomeLocSortedSet;
+import org.broadinstitute.gatk.utils.PackedLocus;
+import org.broadinstitute.gatk.utils.Utils;
+import org.broadinstitute.gatk.utils.commandline.IntervalArgumentCollection;
+import org.broadinstitute.gatk.utils.commandline.IntervalBinding;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * A directory of merged interval sets shared between GATK runs.
+ *
+ * Each set is stored under a name derived from everything that determines it: the reference dictionary, the -L and
+ * -XL arguments (with the path, size and modification time of the files among them) and the interval set, merging
+ * and padding rules.  A run with the same interval arguments therefore reads the final intervals straight from the
+ * cache instead of parsing, sorting and merging its interval files again.  As with the Tribble index cache, entries
+ * are written to a temporary file and renamed into place, and failing to read or write one is never fatal.
+ *
+ * An entry holds the merged intervals as pairs of packed loci (see PackedLocus), in big-endian order after a magic
+ * number and the interval count.
+ */
+public class MergedIntervalCache {
+    private final static Logger logger = Logger.getLogger(MergedIntervalCache.class);
+
+    private static final String ENTRY_EXTENSION = ".intervals";
+    private static final long MAGIC = 0x4741544b49564c31L; // "GATKIVL1"
+    private static final int HEADER_SIZE = 12;
+
+    private final File directory;
+
+    /**
+     * Create a cache keeping its interval sets in directory, creating the directory if needed
+     *
+     * @param directory the directory holding the cached interval sets
+     */
+    public MergedIntervalCache(final File directory) {
+        if ( directory == null ) throw new IllegalArgumentException("directory cannot be null");
+        if ( ! directory.isDirectory() && ! directory.mkdirs() && ! directory.isDirectory() )
+            throw new UserException.CouldNotCreateOutputFile(directory, "Unable to create the interval cache directory");
+        this.directory = directory;
+    }
+
+    /**
+     * @return the directory holding the cached interval sets
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Describe the interval set the arguments produce on a reference, for use as a cache key
+     *
+     * @param dictionary the sequence dictionary of the reference
+     * @param arguments  the interval arguments
+     * @return a string that changes whenever the interval set the arguments produce might
+     */
+    public static String keyFor(final SAMSequenceDictionary dictionary, final IntervalArgumentCollection arguments) {
+        if ( dictionary == null ) throw new IllegalArgumentException("dictionary cannot be null");
+        if ( arguments == null ) throw new IllegalArgumentException("arguments cannot be null");
+
+        final StringBuilder key = new StringBuilder();
+        for ( final SAMSequenceRecord contig : dictionary.getSequences() )
+            key.append(contig.getSequenceName()).append('\t').append(contig.getSequenceLength()).append('\n');
+        key.append("isr=").append(arguments.intervalSetRule)
+                .append("\tim=").append(arguments.intervalMerging)
+                .append("\tip=").append(arguments.intervalPadding).append('\n');
+        appendBindings(key, "L", arguments.intervals);
+        appendBindings(key, "XL", arguments.excludeIntervals);
+        return key.toString();
+    }
+
+    private static void appendBindings(final StringBuilder key, final String name, final List<IntervalBinding<Feature>> bindings) {
+        if ( bindings == null )
+            return;
+        for ( final IntervalBinding<Feature> binding : bindings ) {
+            final String source = binding.getSource();
+            key.append(name).append('\t').append(source);
+            final File file = new File(source);
+            if ( file.isFile() ) {
+                String path;
+                try {
+                    path = file.getCanonicalPath();
+                } catch (IOException e) {
+                    path = file.getAbsolutePath();
+                }
+                key.append('\t').append(path).append('\t').append(file.length()).append('\t').append(file.lastModified());
+            }
+            key.append('\n');
+        }
+    }
+
+    /**
+     * Get the cached interval set for key
+     *
+     * @param parser the parser for the reference the intervals are on
+     * @param key    the key the set was stored under
+     * @return the cached interval set, or null if there is none
+     */
+    public GenomeLocSortedSet get(final GenomeLocParser parser, final String key) {
+        final File entry = entryFile(key);
+        if ( ! entry.canRead() )
+            return null;
+
+        logger.debug("Loading cached intervals from " + entry);
+        try {
+            return readIntervals(entry).toGenomeLocSortedSet(parser);
+        } catch (IOException e) {
+            logger.warn("Unable to read the cached intervals " + entry + " (" + e.getMessage() + "); parsing the intervals again");
+        } catch (UserException.MalformedGenomeLoc e) {
+            logger.warn("The cached intervals " + entry + " don't match the reference; parsing the intervals again");
+        }
+        return null;
+    }
+
+    /**
+     * Store intervals as the cached interval set for key
+     *
+     * @param key       the key describing how the set was made
+     * @param intervals the sorted, merged intervals
+     */
+    public void put(final String key, final GenomeLocSortedSet intervals) {
+        final File entry = entryFile(key);
+        File temp = null;
+        try {
+            temp = File.createTempFile(entry.getName(), ".tmp", directory);
+            final DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                final List<GenomeLoc> locs = intervals.toList();
+                stream.writeLong(MAGIC);
+                stream.writeInt(locs.size());
+                for ( final GenomeLoc loc : locs ) {
+                    stream.writeLong(PackedLocus.ofStart(loc));
+                    stream.writeLong(PackedLocus.ofStop(loc));
+                }
+            } finally {
+                stream.close();
+            }
+
+            // another run may have cached the same intervals in the meantime, in which case its copy is just as good
+            if ( temp.renameTo(entry) || entry.exists() )
+                logger.debug("Cached intervals as " + entry);
+            else
+                logger.warn("Unable to add the intervals to the interval cache in " + directory);
+        } catch (IOException e) {
+            logger.warn("Unable to add the intervals to the interval cache in " + directory + ": " + e.getMessage());
+        } finally {
+            if ( temp != null && temp.exists() && ! temp.delete() )
+                logger.warn("Unable to delete temporary interval cache file " + temp);
+        }
+    }
+
+    /**
+     * @return the file holding the cached interval set for key
+     */
+    protected File entryFile(final String key) {
+        return new File(directory, Utils.calcMD5(key) + ENTRY_EXTENSION);
+    }
+
+    /**
+     * Read the intervals in file through a memory mapping of it
+     *
+     * @param file a cache entry
+     * @return the intervals in the entry
+     * @throws IOException if the file can't be read or isn't a cache entry
+     */
+    private static PackedIntervalList readIntervals(final File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if ( buffer.remaining() < HEADER_SIZE || buffer.getLong() != MAGIC )
+                throw new IOException("not an interval cache file");
+            final int count = buffer.getInt();
+            if ( count < 0 || buffer.remaining() != count * 16L )
+                throw new IOException("truncated interval cache file");
+
+            final long[] loci = new long[2 * count];
+            buffer.asLongBuffer().get(loci);
+            final PackedIntervalList intervals = new PackedIntervalList(count);
+            for ( int i = 0; i < loci.length; i += 2 )
+                intervals.add(loci[i], loci[i + 1]);
+            return intervals;
+        } catch (IllegalArgumentException e) {
+            throw new IOException("invalid interval in interval cache file", e);
+        } finally {
+            raf.close();
+        }
+    }
+}
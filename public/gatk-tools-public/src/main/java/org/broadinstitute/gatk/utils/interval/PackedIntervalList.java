@@ -0,0 +1,307 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.interval;
+
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.GenomeLocSortedSet;
+import org.broadinstitute.gatk.utils.PackedLocus;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A list of intervals kept as pairs of packed loci (see PackedLocus) in primitive arrays.
+ *
+ * Interval files with millions of lines make the GenomeLoc based sorting and merging in IntervalUtils expensive, so
+ * this class does the same work without creating an object per interval: sort() is a radix sort of the packed loci,
+ * and merge() and intersection() follow IntervalUtils.mergeIntervalLocations() and
+ * IntervalUtils.mergeListsBySetOperator() exactly.  GenomeLocs are only created once the final intervals are known.
+ *
+ * Unmapped intervals are kept as an interval from and to the packed unmapped locus, which sorts after every
+ * interval on the genome, so any number of them merge into a single GenomeLoc.UNMAPPED.
+ */
+public final class PackedIntervalList {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /** bits sorted per radix pass */
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+    private static final int RADIX_PASSES = Long.SIZE / RADIX_BITS;
+
+    private long[] starts;
+    private long[] stops;
+    private int size = 0;
+
+    public PackedIntervalList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the number of intervals to allocate space for
+     */
+    public PackedIntervalList(final int capacity) {
+        if ( capacity < 0 ) throw new IllegalArgumentException("capacity must be >= 0 but got " + capacity);
+        starts = new long[capacity];
+        stops = new long[capacity];
+    }
+
+    /**
+     * Create a packed list of the same intervals as locs, in the same order
+     *
+     * @param locs a non-null list of GenomeLocs
+     * @return a new PackedIntervalList
+     */
+    public static PackedIntervalList fromGenomeLocs(final List<GenomeLoc> locs) {
+        if ( locs == null ) throw new IllegalArgumentException("locs cannot be null");
+        final PackedIntervalList list = new PackedIntervalList(locs.size());
+        for ( final GenomeLoc loc : locs )
+            list.add(loc);
+        return list;
+    }
+
+    /**
+     * Add an interval between two packed loci to the end of this list
+     *
+     * @param start the packed first position of the interval
+     * @param stop  the packed last position of the interval, on the same contig and not before start
+     */
+    public void add(final long start, final long stop) {
+        if ( PackedLocus.getContigIndex(start) != PackedLocus.getContigIndex(stop) || start > stop )
+            throw new IllegalArgumentException("Invalid interval from " + PackedLocus.toString(start) + " to " + PackedLocus.toString(stop));
+        ensureCapacity(size + 1);
+        starts[size] = start;
+        stops[size] = stop;
+        size++;
+    }
+
+    /**
+     * Add the interval of loc to the end of this list
+     *
+     * @param loc a non-null GenomeLoc
+     */
+    public void add(final GenomeLoc loc) {
+        if ( loc == null ) throw new IllegalArgumentException("loc cannot be null");
+        add(PackedLocus.ofStart(loc), PackedLocus.ofStop(loc));
+    }
+
+    /**
+     * Add all of the intervals in other to the end of this list
+     *
+     * @param other a non-null PackedIntervalList
+     */
+    public void addAll(final PackedIntervalList other) {
+        if ( other == null ) throw new IllegalArgumentException("other cannot be null");
+        ensureCapacity(size + other.size);
+        System.arraycopy(other.starts, 0, starts, size, other.size);
+        System.arraycopy(other.stops, 0, stops, size, other.size);
+        size += other.size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param i the index of an interval in this list
+     * @return the packed first position of interval i
+     */
+    public long getStart(final int i) {
+        checkIndex(i);
+        return starts[i];
+    }
+
+    /**
+     * @param i the index of an interval in this list
+     * @return the packed last position of interval i
+     */
+    public long getStop(final int i) {
+        checkIndex(i);
+        return stops[i];
+    }
+
+    /**
+     * @return true if the intervals are in GenomeLoc order: by start, then by stop
+     */
+    public boolean isSorted() {
+        for ( int i = 1; i < size; i++ ) {
+            if ( starts[i] < starts[i-1] || (starts[i] == starts[i-1] && stops[i] < stops[i-1]) )
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Sort the intervals into GenomeLoc order: by contig index, then start, then stop
+     *
+     * This is a least significant digit radix sort, first on the stops and then on the starts.  Digits that are the
+     * same for every interval are skipped, so intervals on a single contig, or on a handful of contigs, need only the
+     * passes over the position bytes.
+     */
+    public void sort() {
+        if ( isSorted() )
+            return;
+
+        long[] keys = stops, others = starts;
+        long[] keyBuffer = new long[size], otherBuffer = new long[size];
+        for ( int sortByStart = 0; sortByStart < 2; sortByStart++ ) {
+            final int[][] counts = new int[RADIX_PASSES][RADIX];
+            for ( int i = 0; i < size; i++ ) {
+                final long key = keys[i];
+                for ( int pass = 0; pass < RADIX_PASSES; pass++ )
+                    counts[pass][digit(key, pass)]++;
+            }
+
+            for ( int pass = 0; pass < RADIX_PASSES; pass++ ) {
+                final int[] offsets = counts[pass];
+                if ( offsets[digit(keys[0], pass)] == size )
+                    continue; // every key has the same digit, so this pass wouldn't change anything
+
+                int offset = 0;
+                for ( int d = 0; d < RADIX; d++ ) {
+                    final int count = offsets[d];
+                    offsets[d] = offset;
+                    offset += count;
+                }
+                for ( int i = 0; i < size; i++ ) {
+                    final int target = offsets[digit(keys[i], pass)]++;
+                    keyBuffer[target] = keys[i];
+                    otherBuffer[target] = others[i];
+                }
+
+                long[] swap = keys; keys = keyBuffer; keyBuffer = swap;
+                swap = others; others = otherBuffer; otherBuffer = swap;
+            }
+
+            // the next round sorts by the other member of each interval, stably keeping the order of this round
+            final long[] swap = keys; keys = others; others = swap;
+            final long[] bufferSwap = keyBuffer; keyBuffer = otherBuffer; otherBuffer = bufferSwap;
+        }
+
+        // after both rounds, keys hold the stops again and others the starts
+        stops = keys;
+        starts = others;
+    }
+
+    private static int digit(final long key, final int pass) {
+        return (int)(key >>> (pass * RADIX_BITS)) & (RADIX - 1);
+    }
+
+    /**
+     * Merge overlapping intervals, and abutting ones if the rule asks for it, in place
+     *
+     * The list must be sorted.  The merged list is what IntervalUtils.mergeIntervalLocations() produces.
+     *
+     * @param rule the merging rule; null means IntervalMergingRule.ALL
+     */
+    public void merge(final IntervalMergingRule rule) {
+        if ( size <= 1 )
+            return;
+
+        final boolean mergeAbutting = rule == null || rule == IntervalMergingRule.ALL;
+        int last = 0;
+        for ( int i = 1; i < size; i++ ) {
+            final long start = starts[i];
+            final long lastStop = stops[last];
+            if ( PackedLocus.getContigIndex(start) == PackedLocus.getContigIndex(lastStop)
+                    && (start <= lastStop || (mergeAbutting && start == lastStop + 1)) ) {
+                if ( stops[i] > lastStop )
+                    stops[last] = stops[i];
+            } else {
+                last++;
+                starts[last] = start;
+                stops[last] = stops[i];
+            }
+        }
+        size = last + 1;
+    }
+
+    /**
+     * Intersect two sorted lists of intervals, as IntervalSetRule.INTERSECTION does
+     *
+     * Each interval of one list is intersected with every interval of the other that it overlaps.  If the intervals
+     * within each list don't overlap each other, the result is sorted and doesn't overlap either.
+     *
+     * @param one a sorted list of intervals
+     * @param two another sorted list of intervals
+     * @return a new list of the overlaps between the intervals of one and two
+     */
+    public static PackedIntervalList intersection(final PackedIntervalList one, final PackedIntervalList two) {
+        if ( one == null || two == null ) throw new IllegalArgumentException("lists cannot be null");
+
+        final PackedIntervalList result = new PackedIntervalList(Math.min(one.size, two.size));
+        int iOne = 0;
+        int iTwo = 0;
+        while ( iOne < one.size && iTwo < two.size ) {
+            if ( two.stops[iTwo] < one.starts[iOne] )
+                iTwo++;
+            else if ( one.stops[iOne] < two.starts[iTwo] )
+                iOne++;
+            else {
+                result.add(Math.max(one.starts[iOne], two.starts[iTwo]), Math.min(one.stops[iOne], two.stops[iTwo]));
+                if ( one.stops[iOne] < two.stops[iTwo] ) iOne++;
+                else iTwo++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param parser the parser for the contigs the loci were packed with
+     * @return the GenomeLoc of each interval, in the order of this list
+     */
+    public List<GenomeLoc> toGenomeLocs(final GenomeLocParser parser) {
+        if ( parser == null ) throw new IllegalArgumentException("parser cannot be null");
+        final GenomeLoc[] locs = new GenomeLoc[size];
+        for ( int i = 0; i < size; i++ )
+            locs[i] = parser.createGenomeLoc(starts[i], stops[i]);
+        return Arrays.asList(locs);
+    }
+
+    /**
+     * @param parser the parser for the contigs the loci were packed with
+     * @return a GenomeLocSortedSet of the intervals, which must be sorted and merged
+     */
+    public GenomeLocSortedSet toGenomeLocSortedSet(final GenomeLocParser parser) {
+        return GenomeLocSortedSet.createSetFromList(parser, toGenomeLocs(parser));
+    }
+
+    private void checkIndex(final int i) {
+        if ( i < 0 || i >= size ) throw new IndexOutOfBoundsException("index " + i + " is not in [0, " + size + ")");
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if ( capacity > starts.length ) {
+            final int newCapacity = Math.max(capacity, Math.max(DEFAULT_CAPACITY, starts.length + (starts.length >> 1)));
+            starts = Arrays.copyOf(starts, newCapacity);
+            stops = Arrays.copyOf(stops, newCapacity);
+        }
+    }
+}
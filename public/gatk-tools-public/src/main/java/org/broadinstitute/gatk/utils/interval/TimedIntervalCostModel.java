@@ -0,0 +1,157 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.interval;
+
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.text.XReadLines;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Estimates the cost of processing a region from how long an earlier run took over the same region.
+ *
+ * The timings are read from a tab separated file of an interval (in any form -L accepts on the command line) and the
+ * seconds spent processing it on each line; lines starting with # are ignored.  The intervals must not overlap.  The
+ * time of an interval is spread evenly over its bases.
+ *
+ * Regions that weren't timed are costed by a fallback model, scaled so that over the timed intervals it agrees with
+ * the timings on average.  Without a fallback, untimed bases cost the average time per timed base.
+ */
+public class TimedIntervalCostModel implements IntervalCostModel {
+    private final GenomeLoc[] intervals;
+    private final double[] secondsPerBase;
+    private final IntervalCostModel fallback;
+    private final double fallbackScale;
+    private final double meanSecondsPerBase;
+
+    /**
+     * @param parser   the parser for the reference the intervals are on
+     * @param timings  the file of intervals and their processing times
+     * @param fallback the model for regions without timings, or null
+     */
+    public TimedIntervalCostModel(final GenomeLocParser parser, final File timings, final IntervalCostModel fallback) {
+        if ( parser == null ) throw new IllegalArgumentException("parser cannot be null");
+        if ( timings == null ) throw new IllegalArgumentException("timings cannot be null");
+
+        final SortedMap<GenomeLoc, Double> seconds = readTimings(parser, timings);
+        intervals = seconds.keySet().toArray(new GenomeLoc[seconds.size()]);
+        secondsPerBase = new double[intervals.length];
+
+        double totalSeconds = 0;
+        long totalBases = 0;
+        double totalFallbackCost = 0;
+        for ( int i = 0; i < intervals.length; i++ ) {
+            if ( i > 0 && intervals[i - 1].overlapsP(intervals[i]) )
+                throw new UserException.MalformedFile(timings, "The timed intervals " + intervals[i - 1] + " and " + intervals[i] + " overlap");
+            final double time = seconds.get(intervals[i]);
+            secondsPerBase[i] = time / intervals[i].size();
+            totalSeconds += time;
+            totalBases += intervals[i].size();
+            if ( fallback != null )
+                totalFallbackCost += fallback.getCost(intervals[i]);
+        }
+
+        this.fallback = totalFallbackCost > 0 ? fallback : null;
+        this.fallbackScale = totalFallbackCost > 0 ? totalSeconds / totalFallbackCost : 0;
+        this.meanSecondsPerBase = totalBases > 0 ? totalSeconds / totalBases : 0;
+    }
+
+    private static SortedMap<GenomeLoc, Double> readTimings(final GenomeLocParser parser, final File timings) {
+        final SortedMap<GenomeLoc, Double> seconds = new TreeMap<GenomeLoc, Double>();
+        try {
+            final XReadLines reader = new XReadLines(timings, true, "#");
+            try {
+                for ( final String line : reader ) {
+                    if ( line.isEmpty() )
+                        continue;
+                    final String[] fields = line.split("\t");
+                    if ( fields.length != 2 )
+                        throw new UserException.MalformedFile(timings, "Expected an interval and a time in seconds, but got: " + line);
+                    final double time;
+                    try {
+                        time = Double.parseDouble(fields[1]);
+                    } catch (NumberFormatException e) {
+                        throw new UserException.MalformedFile(timings, "Invalid time in line: " + line, e);
+                    }
+                    if ( time < 0 || Double.isNaN(time) || Double.isInfinite(time) )
+                        throw new UserException.MalformedFile(timings, "Invalid time in line: " + line);
+                    if ( seconds.put(parser.parseGenomeLoc(fields[0]), time) != null )
+                        throw new UserException.MalformedFile(timings, "The interval " + fields[0] + " is timed more than once");
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            throw new UserException.CouldNotReadInputFile(timings, e);
+        }
+        return seconds;
+    }
+
+    @Override
+    public double getCost(final GenomeLoc loc) {
+        double cost = 0;
+        int position = loc.getStart();
+        for ( int i = firstIntervalNotBefore(loc); i < intervals.length && ! loc.isBefore(intervals[i]); i++ ) {
+            final GenomeLoc overlap = loc.intersect(intervals[i]);
+            if ( overlap.getStart() > position )
+                cost += untimedCost(loc, position, overlap.getStart() - 1);
+            cost += overlap.size() * secondsPerBase[i];
+            position = overlap.getStop() + 1;
+        }
+        if ( position <= loc.getStop() )
+            cost += untimedCost(loc, position, loc.getStop());
+        return cost;
+    }
+
+    /**
+     * @return the index of the first timed interval that isn't entirely before loc
+     */
+    private int firstIntervalNotBefore(final GenomeLoc loc) {
+        int low = 0;
+        int high = intervals.length;
+        while ( low < high ) {
+            final int mid = (low + high) >>> 1;
+            if ( intervals[mid].isBefore(loc) )
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @return the cost of the bases from start to stop on the contig of loc, none of which were timed
+     */
+    private double untimedCost(final GenomeLoc loc, final int start, final int stop) {
+        if ( fallback == null )
+            return (stop - start + 1) * meanSecondsPerBase;
+        return fallbackScale * fallback.getCost(loc.setStop(loc.setStart(loc, start), stop));
+    }
+}
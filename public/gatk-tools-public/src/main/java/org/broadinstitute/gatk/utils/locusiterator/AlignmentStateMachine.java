@@ -178,7 +178,8 @@ public class AlignmentStateMachine {
     @Ensures("result != null")
     public GenomeLoc getLocation(final GenomeLocParser genomeLocParser) {
         // TODO -- may return wonky results if on an edge (could be 0 or could be beyond genome location)
-        return genomeLocParser.createGenomeLoc(read.getReferenceName(), getGenomePosition());
+        final int position = getGenomePosition();
+        return genomeLocParser.createGenomeLoc(read, position, position);
     }
 
     /**
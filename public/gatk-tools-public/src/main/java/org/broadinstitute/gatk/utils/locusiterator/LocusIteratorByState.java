@@ -39,6 +39,7 @@ import org.broadinstitute.gatk.engine.iterators.GATKSAMRecordIterator;
 import org.broadinstitute.gatk.utils.GenomeLoc;
 import org.broadinstitute.gatk.utils.GenomeLocParser;
 import org.broadinstitute.gatk.utils.SampleUtils;
+import org.broadinstitute.gatk.utils.pileup.PerSamplePileupBuilder;
 import org.broadinstitute.gatk.utils.pileup.PileupElement;
 import org.broadinstitute.gatk.utils.pileup.ReadBackedPileupImpl;
 import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
@@ -102,6 +103,11 @@ public final class LocusIteratorByState extends LocusIterator {
      */
     private final ReadStateManager readStates;
 
+    /**
+     * Builds the pileup at each locus, reusing the sample index across all pileups
+     */
+    private final PerSamplePileupBuilder pileupBuilder;
+
     /**
      * Should we include reads in the pileup which are aligned with a deletion operator to the reference?
      */
@@ -199,6 +205,7 @@ public final class LocusIteratorByState extends LocusIterator {
         this.includeReadsWithDeletionAtLoci = includeReadsWithDeletionAtLoci;
         this.samples = new ArrayList<String>(samples);
         this.readStates = new ReadStateManager(samIterator, this.samples, downsamplingInfo, maintainUniqueReadsList);
+        this.pileupBuilder = new PerSamplePileupBuilder(this.samples);
     }
 
     @Override
@@ -286,23 +293,27 @@ public final class LocusIteratorByState extends LocusIterator {
      * Creates the next alignment context from the given state.  Note that this is implemented as a
      * lazy load method. nextAlignmentContext MUST BE null in order for this method to advance to the
      * next entry.
+     *
+     * The read states are walked by index, sample by sample, and the pileup elements of all samples are
+     * laid out by pileupBuilder in a single array, so the only allocations at each locus are that array, the
+     * pileup elements themselves and the small per-sample trackers of the pileup.
      */
     private void lazyLoadNextAlignmentContext() {
         while (nextAlignmentContext == null && readStates.hasNext()) {
             readStates.collectPendingReads();
 
             final GenomeLoc location = getLocation();
-            final Map<String, ReadBackedPileupImpl> fullPileup = new HashMap<String, ReadBackedPileupImpl>();
+            pileupBuilder.startLocus(readStates.size());
 
-            for (final Map.Entry<String, PerSampleReadStateManager> sampleStatePair : readStates ) {
-                final String sample = sampleStatePair.getKey();
-                final PerSampleReadStateManager readState = sampleStatePair.getValue();
-                final Iterator<AlignmentStateMachine> iterator = readState.iterator();
-                final List<PileupElement> pile = new ArrayList<PileupElement>(readState.size());
+            for (int sampleIndex = 0; sampleIndex < readStates.getNumberOfSamples(); sampleIndex++) {
+                final PerSampleReadStateManager readState = readStates.getReadStatesForSample(sampleIndex);
+                if ( readState.isEmpty() )
+                    continue;
 
-                while (iterator.hasNext()) {
+                pileupBuilder.startSample(sampleIndex);
+                for (int i = 0; i < readState.size(); i++) {
                     // state object with the read/offset information
-                    final AlignmentStateMachine state = iterator.next();
+                    final AlignmentStateMachine state = readState.get(i);
                     final GATKSAMRecord read = state.getRead();
                     final CigarOperator op = state.getCigarOperator();
 
@@ -314,17 +325,17 @@ public final class LocusIteratorByState extends LocusIterator {
                             continue;
                         }
 
-                        pile.add(state.makePileupElement());
+                        pileupBuilder.add(state.makePileupElement());
                     }
                 }
-
-                if (! pile.isEmpty() ) // if this pileup added at least one base, add it to the full pileup
-                    fullPileup.put(sample, new ReadBackedPileupImpl(location, pile));
             }
 
+            // if we got reads with non-D/N over the current position, we are done
+            final ReadBackedPileupImpl pileup = pileupBuilder.getNumberOfElements() > 0 ? pileupBuilder.build(location) : null;
+
             readStates.updateReadStates(); // critical - must be called after we get the current state offsets and location
-            if (!fullPileup.isEmpty()) // if we got reads with non-D/N over the current position, we are done
-                nextAlignmentContext = new AlignmentContext(location, new ReadBackedPileupImpl(location, fullPileup), false);
+            if (pileup != null)
+                nextAlignmentContext = new AlignmentContext(location, pileup, false);
         }
     }
 
@@ -33,13 +33,18 @@ import org.apache.log4j.Logger;
 import org.broadinstitute.gatk.engine.downsampling.Downsampler;
 import org.broadinstitute.gatk.engine.downsampling.LevelingDownsampler;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * ReadStateManager for a single sample
  *
+ * The states are kept in an array that's compacted in place as reads fall off the pileup, so advancing
+ * to the next locus doesn't allocate anything.
+ *
  * User: depristo
  * Date: 1/13/13
  * Time: 12:28 PM
@@ -55,13 +60,20 @@ final class PerSampleReadStateManager implements Iterable<AlignmentStateMachine>
     private final static Logger logger = Logger.getLogger(ReadStateManager.class);
     private final static boolean CAPTURE_DOWNSAMPLING_STATS = false;
 
+    private final static int INITIAL_CAPACITY = 16;
+
     /**
-     * A list (potentially empty) of alignment state machines.
+     * An array (potentially empty) of alignment state machines, of which the first nStates are in use.
      *
      * The state machines must be ordered by the alignment start of their underlying reads, with the
      * lowest alignment starts on the left, and the largest on the right
      */
-    private LinkedList<AlignmentStateMachine> readStatesByAlignmentStart = new LinkedList<AlignmentStateMachine>();
+    private AlignmentStateMachine[] readStatesByAlignmentStart = new AlignmentStateMachine[INITIAL_CAPACITY];
+
+    /**
+     * The number of states in readStatesByAlignmentStart
+     */
+    private int nStates = 0;
 
     private final Downsampler<LinkedList<AlignmentStateMachine>> levelingDownsampler;
     private final int downsamplingTarget;
@@ -102,7 +114,8 @@ final class PerSampleReadStateManager implements Iterable<AlignmentStateMachine>
         final LinkedList<LinkedList<AlignmentStateMachine>> grouped = new LinkedList<LinkedList<AlignmentStateMachine>>();
 
         AlignmentStateMachine last = null;
-        for ( final AlignmentStateMachine stateMachine : readStatesByAlignmentStart ) {
+        for ( int i = 0; i < nStates; i++ ) {
+            final AlignmentStateMachine stateMachine = readStatesByAlignmentStart[i];
             if ( last == null || stateMachine.getGenomeOffset() != last.getGenomeOffset() ) {
                 // we've advanced to a place where the state machine has a different state,
                 // so start a new list
@@ -116,15 +129,14 @@ final class PerSampleReadStateManager implements Iterable<AlignmentStateMachine>
     }
 
     /**
-     * Flattens the grouped list of list of alignment state machines into a single list in order
-     * @return a non-null list contains the state machines
+     * Replaces our states with the grouped list of list of alignment state machines, flattened into a single list in order
      */
-    @Ensures("result != null")
-    private LinkedList<AlignmentStateMachine> flattenByAlignmentStart(final List<LinkedList<AlignmentStateMachine>> grouped) {
-        final LinkedList<AlignmentStateMachine> flat = new LinkedList<AlignmentStateMachine>();
+    private void flattenByAlignmentStart(final List<LinkedList<AlignmentStateMachine>> grouped) {
+        nStates = 0;
         for ( final List<AlignmentStateMachine> l : grouped )
-            flat.addAll(l);
-        return flat;
+            for ( final AlignmentStateMachine state : l )
+                readStatesByAlignmentStart[nStates++] = state;
+        Arrays.fill(readStatesByAlignmentStart, nStates, readStatesByAlignmentStart.length, null);
     }
 
     /**
@@ -133,7 +145,8 @@ final class PerSampleReadStateManager implements Iterable<AlignmentStateMachine>
      */
     private boolean readStartsAreWellOrdered() {
         int lastStart = -1;
-        for ( final AlignmentStateMachine machine : readStatesByAlignmentStart ) {
+        for ( int i = 0; i < nStates; i++ ) {
+            final AlignmentStateMachine machine = readStatesByAlignmentStart[i];
             if ( lastStart > machine.getRead().getAlignmentStart() )
                 return false;
             lastStart = machine.getRead().getAlignmentStart();
@@ -142,22 +155,25 @@ final class PerSampleReadStateManager implements Iterable<AlignmentStateMachine>
     }
 
     /**
-     * Assumes it can just keep the states linked lists without making a copy
+     * Add states to the end of this manager.  states isn't kept, so the caller may reuse it
      * @param states the new states to add to this manager
      * @return The change in the number of states, after including states and potentially downsampling.  Note
      * that this return result might be negative, if downsampling is enabled, as we might drop
      * more sites than have been added by the downsampler
      */
     @Requires("states != null")
-    public int addStatesAtNextAlignmentStart(final LinkedList<AlignmentStateMachine> states) {
+    public int addStatesAtNextAlignmentStart(final List<AlignmentStateMachine> states) {
         if ( states.isEmpty() ) {
             return 0;
         }
 
-        readStatesByAlignmentStart.addAll(states);
+        if ( nStates + states.size() > readStatesByAlignmentStart.length )
+            readStatesByAlignmentStart = Arrays.copyOf(readStatesByAlignmentStart, Math.max(2 * readStatesByAlignmentStart.length, nStates + states.size()));
+        for ( final AlignmentStateMachine state : states )
+            readStatesByAlignmentStart[nStates++] = state;
         int nStatesAdded = states.size();
 
-        if ( isDownsampling() && readStatesByAlignmentStart.size() > downsamplingTarget ) {
+        if ( isDownsampling() && nStates > downsamplingTarget ) {
             // only go into the downsampling branch if we are downsampling and the coverage > the target
             captureDownsamplingStats();
             levelingDownsampler.submit(groupByAlignmentStart());
@@ -165,8 +181,7 @@ final class PerSampleReadStateManager implements Iterable<AlignmentStateMachine>
 
             nStatesAdded -= levelingDownsampler.getNumberOfDiscardedItems();
 
-            // use returned List directly rather than make a copy, for efficiency's sake
-            readStatesByAlignmentStart = flattenByAlignmentStart(levelingDownsampler.consumeFinalizedItems());
+            flattenByAlignmentStart(levelingDownsampler.consumeFinalizedItems());
             levelingDownsampler.resetStats();
         }
 
@@ -186,7 +201,7 @@ final class PerSampleReadStateManager implements Iterable<AlignmentStateMachine>
      * @return a potentially null AlignmentStateMachine
      */
     public AlignmentStateMachine getFirst() {
-        return isEmpty() ? null : readStatesByAlignmentStart.getFirst();
+        return isEmpty() ? null : readStatesByAlignmentStart[0];
     }
 
     /**
@@ -215,7 +230,7 @@ final class PerSampleReadStateManager implements Iterable<AlignmentStateMachine>
      * @return true if there's at least one alignment, false otherwise
      */
     public boolean isEmpty() {
-        return readStatesByAlignmentStart.isEmpty();
+        return nStates == 0;
     }
 
     /**
@@ -224,7 +239,17 @@ final class PerSampleReadStateManager implements Iterable<AlignmentStateMachine>
      */
     @Ensures("result >= 0")
     public int size() {
-        return readStatesByAlignmentStart.size();
+        return nStates;
+    }
+
+    /**
+     * Get the i-th read state in alignment start order
+     * @param i the index of the state, from 0 to size() - 1
+     * @return a non-null AlignmentStateMachine
+     */
+    @Requires({"i >= 0", "i < size()"})
+    public AlignmentStateMachine get(final int i) {
+        return readStatesByAlignmentStart[i];
     }
 
     /**
@@ -233,20 +258,21 @@ final class PerSampleReadStateManager implements Iterable<AlignmentStateMachine>
      * @return the number of states we're removed after advancing
      */
     public int updateReadStates() {
-        int nRemoved = 0;
-        final Iterator<AlignmentStateMachine> it = iterator();
-        while (it.hasNext()) {
-            final AlignmentStateMachine state = it.next();
+        // compact the surviving states to the front of the array, preserving their order
+        int nKept = 0;
+        for ( int i = 0; i < nStates; i++ ) {
+            final AlignmentStateMachine state = readStatesByAlignmentStart[i];
             final CigarOperator op = state.stepForwardOnGenome();
-            if (op == null) {
-                // we discard the read only when we are past its end AND indel at the end of the read (if any) was
-                // already processed. Keeping the read state that returned null upon stepForwardOnGenome() is safe
-                // as the next call to stepForwardOnGenome() will return null again AND will clear hadIndel() flag.
-                it.remove();                                                // we've stepped off the end of the object
-                nRemoved++;
-            }
+            // we discard the read only when we are past its end AND indel at the end of the read (if any) was
+            // already processed. Keeping the read state that returned null upon stepForwardOnGenome() is safe
+            // as the next call to stepForwardOnGenome() will return null again AND will clear hadIndel() flag.
+            if (op != null)
+                readStatesByAlignmentStart[nKept++] = state;
         }
 
+        final int nRemoved = nStates - nKept;
+        Arrays.fill(readStatesByAlignmentStart, nKept, nStates, null);  // we've stepped off the end of these objects
+        nStates = nKept;
         return nRemoved;
     }
 
@@ -256,6 +282,30 @@ final class PerSampleReadStateManager implements Iterable<AlignmentStateMachine>
      */
     @Ensures("result != null")
     public Iterator<AlignmentStateMachine> iterator() {
-        return readStatesByAlignmentStart.iterator();
+        return new Iterator<AlignmentStateMachine>() {
+            private int next = 0;
+            private boolean canRemove = false;
+
+            @Override
+            public boolean hasNext() {
+                return next < nStates;
+            }
+
+            @Override
+            public AlignmentStateMachine next() {
+                if ( next >= nStates ) throw new NoSuchElementException();
+                canRemove = true;
+                return readStatesByAlignmentStart[next++];
+            }
+
+            @Override
+            public void remove() {
+                if ( ! canRemove ) throw new IllegalStateException("next() hasn't been called since the last remove()");
+                canRemove = false;
+                System.arraycopy(readStatesByAlignmentStart, next, readStatesByAlignmentStart, next - 1, nStates - next);
+                readStatesByAlignmentStart[--nStates] = null;
+                next--;
+            }
+        };
     }
 }
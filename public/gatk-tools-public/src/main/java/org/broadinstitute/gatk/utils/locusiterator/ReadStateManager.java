@@ -46,18 +46,20 @@ import java.util.*;
  * Date: 1/5/13
  * Time: 2:02 PM
  */
-final class ReadStateManager implements Iterable<Map.Entry<String, PerSampleReadStateManager>> {
+final class ReadStateManager {
     private final List<String> samples;
     private final PeekableIterator<GATKSAMRecord> iterator;
     private final SamplePartitioner<GATKSAMRecord> samplePartitioner;
 
     /**
-     * A mapping from sample name -> the per sample read state manager that manages
-     *
-     * IT IS CRITICAL THAT THIS BE A LINKED HASH MAP, SO THAT THE ITERATION OF THE MAP OCCURS IN THE SAME
-     * ORDER AS THE ORIGINL SAMPLES
+     * The per sample read state managers, in the same order as the original samples
+     */
+    private final PerSampleReadStateManager[] readStatesBySample;
+
+    /**
+     * Scratch list of the new states for a sample, reused each time we add reads
      */
-    private final Map<String, PerSampleReadStateManager> readStatesBySample = new LinkedHashMap<String, PerSampleReadStateManager>();
+    private final List<AlignmentStateMachine> newReadStates = new ArrayList<AlignmentStateMachine>();
 
     private LinkedList<GATKSAMRecord> submittedReads;
     private final boolean keepSubmittedReads;
@@ -74,25 +76,32 @@ final class ReadStateManager implements Iterable<Map.Entry<String, PerSampleRead
         this.keepSubmittedReads = keepSubmittedReads;
         this.submittedReads = new LinkedList<GATKSAMRecord>();
 
-        for (final String sample : samples) {
-            // because this is a linked hash map the order of iteration will be in sample order
-            readStatesBySample.put(sample, new PerSampleReadStateManager(LIBSDownsamplingInfo));
+        readStatesBySample = new PerSampleReadStateManager[samples.size()];
+        for (int i = 0; i < readStatesBySample.length; i++) {
+            readStatesBySample[i] = new PerSampleReadStateManager(LIBSDownsamplingInfo);
         }
 
         samplePartitioner = new SamplePartitioner<GATKSAMRecord>(LIBSDownsamplingInfo, samples);
     }
 
     /**
-     * Returns a iterator over all the sample -> per-sample read state managers with each sample in this read state manager.
+     * Get the number of samples in this read state manager
      *
-     * The order of iteration is the same as the order of the samples provided upon construction to this
-     * ReadStateManager.
+     * @return the number of samples provided upon construction to this ReadStateManager
+     */
+    public int getNumberOfSamples() {
+        return readStatesBySample.length;
+    }
+
+    /**
+     * Get the per-sample read state manager for the sampleIndex-th sample provided upon construction
+     * to this ReadStateManager
      *
-     * @return Iterator over sample + per sample read state manager pairs for this read state manager.
+     * @param sampleIndex the index of the sample in the samples provided upon construction
+     * @return a non-null per sample read state manager
      */
-    @Override
-    public Iterator<Map.Entry<String, PerSampleReadStateManager>> iterator() {
-        return readStatesBySample.entrySet().iterator();
+    public PerSampleReadStateManager getReadStatesForSample(final int sampleIndex) {
+        return readStatesBySample[sampleIndex];
     }
 
     public boolean isEmpty() {
@@ -115,11 +124,11 @@ final class ReadStateManager implements Iterable<Map.Entry<String, PerSampleRead
      * @return Total number of reads in the given sample.
      */
     public int size(final String sample) {
-        return readStatesBySample.get(sample).size();
+        return readStatesBySample[samples.indexOf(sample)].size();
     }
 
     public AlignmentStateMachine getFirst() {
-        for ( final PerSampleReadStateManager manager : readStatesBySample.values() ) {
+        for ( final PerSampleReadStateManager manager : readStatesBySample ) {
             if ( ! manager.isEmpty() )
                 return manager.getFirst();
         }
@@ -135,7 +144,7 @@ final class ReadStateManager implements Iterable<Map.Entry<String, PerSampleRead
      * of the next pileup.
      */
     public void updateReadStates() {
-        for (final PerSampleReadStateManager perSampleReadStateManager : readStatesBySample.values() ) {
+        for (final PerSampleReadStateManager perSampleReadStateManager : readStatesBySample ) {
             totalReadStates -= perSampleReadStateManager.updateReadStates();
         }
     }
@@ -176,14 +185,20 @@ final class ReadStateManager implements Iterable<Map.Entry<String, PerSampleRead
             firstAlignmentStart = firstState.getGenomePosition();
         }
 
+        boolean submittedAnyReads = false;
         while ( iterator.hasNext() && readStartsAtCurrentPosition(iterator.peek(), firstContigIndex, firstAlignmentStart) ) {
             submitRead(iterator.next());
+            submittedAnyReads = true;
         }
 
+        // most loci don't start any new reads, and then there's nothing to partition
+        if ( ! submittedAnyReads )
+            return;
+
         samplePartitioner.doneSubmittingReads();
 
-        for (final String sample : samples) {
-            final Collection<GATKSAMRecord> newReads = samplePartitioner.getReadsForSample(sample);
+        for (int i = 0; i < readStatesBySample.length; i++) {
+            final Collection<GATKSAMRecord> newReads = samplePartitioner.getReadsForSample(samples.get(i));
 
             // if we're keeping reads, take the (potentially downsampled) list of new reads for this sample
             // and add to the list of reads.  Note this may reorder the list of reads someone (it groups them
@@ -192,8 +207,7 @@ final class ReadStateManager implements Iterable<Map.Entry<String, PerSampleRead
             if ( keepSubmittedReads )
                 submittedReads.addAll(newReads);
 
-            final PerSampleReadStateManager statesBySample = readStatesBySample.get(sample);
-            addReadsToSample(statesBySample, newReads);
+            addReadsToSample(readStatesBySample[i], newReads);
         }
 
         samplePartitioner.reset();
@@ -275,8 +289,7 @@ final class ReadStateManager implements Iterable<Map.Entry<String, PerSampleRead
         if (reads.isEmpty())
             return;
 
-        final LinkedList<AlignmentStateMachine> newReadStates = new LinkedList<AlignmentStateMachine>();
-
+        newReadStates.clear();
         for (final GATKSAMRecord read : reads) {
             final AlignmentStateMachine state = new AlignmentStateMachine(read);
             if ( state.stepForwardOnGenome() != null ) // todo -- should be an assertion not a skip
@@ -285,5 +298,6 @@ final class ReadStateManager implements Iterable<Map.Entry<String, PerSampleRead
         }
 
         totalReadStates += readStates.addStatesAtNextAlignmentStart(newReadStates);
+        newReadStates.clear();
     }
 }
@@ -0,0 +1,185 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.nanoScheduler;
+
+import com.google.java.contract.Ensures;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Helper class that allows multiple threads to read batches of input values from an iterator.
+ *
+ * Unlike InputProducer, which hands out a single value per synchronized call, this producer
+ * hands out contiguous runs of values, so the monitor protecting the (not thread-safe) iterator
+ * is acquired once per batch rather than once per element.  The size of each batch adapts to
+ * the observed cost of the map function: map threads report how long they took to process
+ * their batches via recordMapTime, and the producer sizes the next batches so that each takes
+ * roughly TARGET_BATCH_NANOS to map, clamped to [1, maxBatchSize].  Cheap maps (e.g. loci
+ * with little coverage) therefore get large batches, while expensive maps (active regions)
+ * degrade gracefully to one element per batch.
+ */
+class BatchedInputProducer<InputType> {
+    /**
+     * How long we'd like a batch to take to be mapped.  Long enough to amortize the cost
+     * of acquiring the input and reduce monitors, short enough to keep all threads busy
+     */
+    protected final static long TARGET_BATCH_NANOS = 1000 * 1000;
+
+    /**
+     * The weight of the newest observation in the running estimate of the map cost, as 1 / 2^N
+     */
+    private final static int MAP_COST_SMOOTHING_SHIFT = 3;
+
+    /**
+     * The iterator we are using to get data from
+     */
+    final Iterator<InputType> inputReader;
+
+    /**
+     * The largest number of elements we will ever put into a single batch
+     */
+    final int maxBatchSize;
+
+    /**
+     * Running exponentially weighted estimate of the number of nanoseconds the map function takes
+     * per input element, or -1 if we haven't seen any map timings yet
+     */
+    private final AtomicLong mapNanosPerElement = new AtomicLong(-1);
+
+    boolean readLastValue = false;
+    int nRead = 0;
+    int nBatches = 0;
+
+    /**
+     * @param inputReader the iterator providing the input values
+     * @param maxBatchSize the maximum number of values to hand out in a single batch
+     */
+    public BatchedInputProducer(final Iterator<InputType> inputReader, final int maxBatchSize) {
+        if ( inputReader == null ) throw new IllegalArgumentException("inputReader cannot be null");
+        if ( maxBatchSize < 1 ) throw new IllegalArgumentException("maxBatchSize must be >= 1, got " + maxBatchSize);
+        this.inputReader = inputReader;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Returns the number of elements in the input stream, AFTER we've read all of the values.
+     * If we haven't read them all yet, returns -1
+     *
+     * @return the total number of elements in input stream, or -1 if some are still to be read
+     */
+    public synchronized int getNumInputValues() {
+        return readLastValue ? nRead : -1;
+    }
+
+    /**
+     * @return the number of non-empty batches handed out by this producer so far
+     */
+    public synchronized int getNumBatches() {
+        return nBatches;
+    }
+
+    /**
+     * Returns true if all of the elements have been read from the input stream
+     *
+     * @return true if all of the elements have been read from the input stream
+     */
+    public synchronized boolean allInputsHaveBeenRead() {
+        return readLastValue;
+    }
+
+    /**
+     * Get the next batch of input values from this producer.
+     *
+     * The returned batch contains between 1 and getCurrentBatchSize() values, in the order
+     * they were returned by the underlying iterator.  Once the iterator is exhausted this
+     * function returns null, and keeps doing so on every subsequent call.
+     *
+     * @return the next non-empty batch of input values, or null if the iterator is exhausted
+     */
+    public synchronized <MapType> InputBatch<InputType, MapType> nextBatch() {
+        if ( readLastValue )
+            return null;
+
+        final int batchSize = getCurrentBatchSize();
+        InputBatch<InputType, MapType> batch = null;
+        while ( batch == null || batch.size() < batchSize ) {
+            if ( ! inputReader.hasNext() ) {
+                readLastValue = true;
+                break;
+            }
+
+            final InputType input = inputReader.next();
+            if ( input == null )
+                throw new IllegalStateException("inputReader.next() returned a null value, breaking our contract");
+
+            if ( batch == null )
+                batch = new InputBatch<InputType, MapType>(nBatches++, nRead, batchSize);
+            batch.add(input);
+            nRead++;
+        }
+
+        return batch;
+    }
+
+    /**
+     * Record that a map thread took elapsedNanos to map nElements input values, updating our
+     * estimate of the map cost used to size future batches.
+     *
+     * Lock free, so map threads never contend with readers of the input stream to report timings
+     *
+     * @param nElements the number of elements mapped, must be > 0
+     * @param elapsedNanos the time taken to map them, in nanoseconds
+     */
+    public void recordMapTime(final int nElements, final long elapsedNanos) {
+        if ( nElements < 1 ) throw new IllegalArgumentException("nElements must be >= 1, got " + nElements);
+
+        final long observed = Math.max(elapsedNanos / nElements, 1);
+        while ( true ) {
+            final long current = mapNanosPerElement.get();
+            final long updated = current < 0 ? observed : current + ((observed - current) >> MAP_COST_SMOOTHING_SHIFT);
+            if ( mapNanosPerElement.compareAndSet(current, Math.max(updated, 1)) )
+                return;
+        }
+    }
+
+    /**
+     * How many elements should we put into the next batch, given what we know about the map cost?
+     *
+     * Until we have seen the timing of at least one batch we hand out single elements, so
+     * that expensive maps never get stuck behind a large first batch.
+     *
+     * @return the number of elements for the next batch, between 1 and maxBatchSize
+     */
+    @Ensures({"result >= 1", "result <= maxBatchSize"})
+    public int getCurrentBatchSize() {
+        final long nanosPerElement = mapNanosPerElement.get();
+        if ( nanosPerElement < 0 )
+            return 1;
+        final long size = TARGET_BATCH_NANOS / nanosPerElement;
+        return (int)Math.max(1, Math.min(maxBatchSize, size));
+    }
+}
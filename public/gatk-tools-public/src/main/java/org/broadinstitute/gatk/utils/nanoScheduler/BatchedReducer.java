@@ -0,0 +1,118 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.nanoScheduler;
+
+import com.google.java.contract.Ensures;
+import org.broadinstitute.gatk.utils.MultiThreadedErrorTracker;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Reducer for the batched execution mode of the NanoScheduler.
+ *
+ * Works like Reducer, but consumes whole InputBatches from an OrderedRingBuffer, applying the
+ * reduce function to each map result of each batch in input order.  A map thread that fails to
+ * get the reduce lock immediately goes back to mapping, and a thread releasing the lock re-checks
+ * the buffer so a batch published just before the release isn't left behind.  If the reduce
+ * function fails the buffer is aborted, so that map threads waiting for a free slot give up.
+ */
+class BatchedReducer<InputType, MapType, ReduceType> {
+    private final NSReduceFunction<MapType, ReduceType> reduce;
+    private final MultiThreadedErrorTracker errorTracker;
+
+    /**
+     * Held while a thread is reducing, guarding the single consumer side of the ring buffer and sum
+     */
+    private final Lock reduceLock = new ReentrantLock();
+
+    /**
+     * The sum of the reduce function applied to all map results.  Only touched by the thread holding
+     * the reduce lock; volatile so the final value is visible to the thread calling getReduceResult
+     */
+    private volatile ReduceType sum;
+
+    public BatchedReducer(final NSReduceFunction<MapType, ReduceType> reduce,
+                          final MultiThreadedErrorTracker errorTracker,
+                          final ReduceType initialSum) {
+        if ( errorTracker == null ) throw new IllegalArgumentException("Error tracker cannot be null");
+        if ( reduce == null ) throw new IllegalArgumentException("Reduce function cannot be null");
+
+        this.errorTracker = errorTracker;
+        this.reduce = reduce;
+        this.sum = initialSum;
+    }
+
+    /**
+     * Reduce as many batches as are available, in order, from mapResults
+     *
+     * @param mapResults the ring buffer of mapped batches, keyed by batch ID
+     * @param waitForLock if true, block until we can become the reducing thread, otherwise return
+     *                    immediately if another thread is already reducing
+     * @return the number of map results reduced by this call
+     */
+    @Ensures("result >= 0")
+    public int reduceAsMuchAsPossible(final OrderedRingBuffer<InputBatch<InputType, MapType>> mapResults, final boolean waitForLock) {
+        if ( mapResults == null ) throw new IllegalArgumentException("mapResults cannot be null");
+        int nReducesNow = 0;
+
+        do {
+            if ( waitForLock )
+                reduceLock.lock();
+            else if ( ! reduceLock.tryLock() )
+                return nReducesNow;
+
+            try {
+                ReduceType localSum = sum;
+                InputBatch<InputType, MapType> batch;
+                while ( (batch = mapResults.take()) != null ) {
+                    for ( int i = 0; i < batch.size(); i++ )
+                        localSum = reduce.apply(batch.getMapResult(i), localSum);
+                    nReducesNow += batch.size();
+                }
+                sum = localSum;
+            } catch (Exception ex) {
+                errorTracker.notifyOfError(ex);
+                mapResults.abort();
+                return nReducesNow;
+            } finally {
+                reduceLock.unlock();
+            }
+        } while ( mapResults.nextValueIsAvailable() );
+
+        return nReducesNow;
+    }
+
+    /**
+     * Get the current reduce result
+     *
+     * @see Reducer#getReduceResult()
+     * @return the total reduce result across all batches reduced so far
+     */
+    public ReduceType getReduceResult() {
+        return sum;
+    }
+}
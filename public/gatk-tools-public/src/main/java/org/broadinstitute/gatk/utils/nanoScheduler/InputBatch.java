@@ -0,0 +1,108 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.nanoScheduler;
+
+/**
+ * A contiguous run of input values handed out together to a single map thread, along
+ * with storage for the map results of each of those inputs.
+ *
+ * Batches are numbered from 0 in the order in which their inputs were read from the
+ * underlying iterator, so reducing batches in batchID order and the elements of each batch
+ * in index order reproduces the original input order.
+ *
+ * @param <InputType> the type of the input values
+ * @param <MapType> the type of the map results
+ */
+class InputBatch<InputType, MapType> {
+    /**
+     * The ID of this batch, an integer incrementing from 0 to the number of batches read
+     */
+    final int batchID;
+
+    /**
+     * The ID of the first input value in this batch, counting every value read so far from the iterator
+     */
+    final int firstInputID;
+
+    final Object[] inputs;
+    final Object[] mapResults;
+    int size = 0;
+
+    InputBatch(final int batchID, final int firstInputID, final int capacity) {
+        if ( batchID < 0 ) throw new IllegalArgumentException("batchID must be >= 0");
+        if ( firstInputID < 0 ) throw new IllegalArgumentException("firstInputID must be >= 0");
+        if ( capacity < 1 ) throw new IllegalArgumentException("capacity must be >= 1");
+        this.batchID = batchID;
+        this.firstInputID = firstInputID;
+        this.inputs = new Object[capacity];
+        this.mapResults = new Object[capacity];
+    }
+
+    /**
+     * @return the ID of this batch
+     */
+    public int getBatchID() {
+        return batchID;
+    }
+
+    /**
+     * @return the number of input values in this batch
+     */
+    public int size() {
+        return size;
+    }
+
+    void add(final InputType input) {
+        inputs[size++] = input;
+    }
+
+    @SuppressWarnings("unchecked")
+    public InputType getInput(final int i) {
+        return (InputType)inputs[i];
+    }
+
+    @SuppressWarnings("unchecked")
+    public MapType getMapResult(final int i) {
+        return (MapType)mapResults[i];
+    }
+
+    public void setMapResult(final int i, final MapType result) {
+        mapResults[i] = result;
+    }
+
+    /**
+     * Drop our references to the input values so they can be collected before this batch is reduced
+     */
+    void releaseInputs() {
+        for ( int i = 0; i < size; i++ )
+            inputs[i] = null;
+    }
+
+    @Override
+    public String toString() {
+        return "[InputBatch id=" + batchID + " first=" + firstInputID + " size=" + size + "]";
+    }
+}
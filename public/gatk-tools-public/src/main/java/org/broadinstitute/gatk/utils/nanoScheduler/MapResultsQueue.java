@@ -88,6 +88,19 @@ public class MapResultsQueue<MapType> {
         }
     }
 
+    /**
+     * How many map results are waiting in this queue to be taken?
+     *
+     * @return the number of results put but not yet taken
+     */
+    public synchronized int getNumPending() {
+        int n = 0;
+        for ( int jobID = nextJobID(); jobID < queue.size(); jobID++ )
+            if ( queue.get(jobID) != null )
+                n++;
+        return n;
+    }
+
     /**
      * Get the next job ID'd be expect to see given our previous job id
      * @return the next job id we'd fetch to reduce
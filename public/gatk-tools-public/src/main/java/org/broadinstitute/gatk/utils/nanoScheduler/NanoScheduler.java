@@ -61,6 +61,13 @@ import java.util.concurrent.*;
  * thread is put to work by execute to help with the processing of the data.  So in reality the
  * nanoScheduler only spawn nThreads - 1 additional workers (if this is > 1).
  *
+ * The NSExecutionMode determines how work is distributed among the threads.  In PER_ELEMENT mode
+ * each map thread takes a single input at a time from a synchronized InputProducer and puts its
+ * result into the synchronized MapResultsQueue.  In BATCHED mode map threads take adaptively sized
+ * runs of inputs from a BatchedInputProducer, and publish their results into a lock-free
+ * OrderedRingBuffer, so the per-element monitor handoffs disappear for cheap map functions.
+ * Both modes call reduce in input order.
+ *
  * User: depristo
  * Date: 8/24/12
  * Time: 9:47 AM
@@ -70,6 +77,12 @@ public class NanoScheduler<InputType, MapType, ReduceType> {
     private final static boolean ALLOW_SINGLE_THREAD_FASTPATH = true;
     protected final static int UPDATE_PROGRESS_FREQ = 100;
 
+    /**
+     * The number of batches per map thread the BATCHED mode can hold in its ring buffer
+     * before map threads that run ahead of the reduce have to wait
+     */
+    private final static int BATCHES_IN_FLIGHT_PER_THREAD = 4;
+
     /**
      * Currently not used, but kept because it's conceptual reasonable to have a buffer
      */
@@ -80,6 +93,11 @@ public class NanoScheduler<InputType, MapType, ReduceType> {
      */
     final int nThreads;
 
+    /**
+     * How we distribute the work among the nThreads
+     */
+    final NSExecutionMode executionMode;
+
     final ExecutorService masterExecutor;
     final ExecutorService mapExecutor;
     final MultiThreadedErrorTracker errorTracker = new MultiThreadedErrorTracker();
@@ -88,6 +106,16 @@ public class NanoScheduler<InputType, MapType, ReduceType> {
     boolean debug = false;
     private NSProgressFunction<InputType> progressFunction = null;
 
+    /**
+     * Counts the map results of the currently executing run that haven't been reduced yet, or null
+     * if no multi-threaded run is executing.  Only read when metrics are exported
+     */
+    private volatile PendingMapResults pendingMapResults = null;
+
+    private interface PendingMapResults {
+        int get();
+    }
+
     /**
      * Create a new nanoscheduler with the desire characteristics requested by the argument
      *
@@ -95,15 +123,32 @@ public class NanoScheduler<InputType, MapType, ReduceType> {
      *                 thread calling execute
      */
     public NanoScheduler(final int nThreads) {
-        this(nThreads*100, nThreads);
+        this(nThreads, NSExecutionMode.PER_ELEMENT);
+    }
+
+    /**
+     * Create a new nanoscheduler using nThreads that distributes its work according to executionMode
+     *
+     * @param nThreads the number of threads to use to get work done, in addition to the
+     *                 thread calling execute
+     * @param executionMode how to distribute work among the threads
+     */
+    public NanoScheduler(final int nThreads, final NSExecutionMode executionMode) {
+        this(nThreads*100, nThreads, executionMode);
     }
 
     protected NanoScheduler(final int bufferSize, final int nThreads) {
+        this(bufferSize, nThreads, NSExecutionMode.PER_ELEMENT);
+    }
+
+    protected NanoScheduler(final int bufferSize, final int nThreads, final NSExecutionMode executionMode) {
         if ( bufferSize < 1 ) throw new IllegalArgumentException("bufferSize must be >= 1, got " + bufferSize);
         if ( nThreads < 1 ) throw new IllegalArgumentException("nThreads must be >= 1, got " + nThreads);
+        if ( executionMode == null ) throw new IllegalArgumentException("executionMode cannot be null");
 
         this.bufferSize = bufferSize;
         this.nThreads = nThreads;
+        this.executionMode = executionMode;
 
         if ( nThreads == 1 ) {
             this.mapExecutor = this.masterExecutor = null;
@@ -131,6 +176,41 @@ public class NanoScheduler<InputType, MapType, ReduceType> {
         return this.bufferSize;
     }
 
+    /**
+     * How this NanoScheduler distributes work among its threads
+     * @return a non-null NSExecutionMode
+     */
+    @Ensures("result != null")
+    public NSExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * How much work is queued up waiting to be reduced?
+     *
+     * In PER_ELEMENT mode this is the number of map results waiting to be reduced.  In BATCHED mode it
+     * is the number of batches that have been read but not yet reduced, including those being mapped.
+     *
+     * Cheap enough to be polled periodically while execute is running on another thread.
+     *
+     * @return the number of map results or batches pending reduce, or 0 if no run is executing
+     */
+    @Ensures("result >= 0")
+    public int getNumPendingMapResults() {
+        final PendingMapResults pending = pendingMapResults;
+        return pending == null ? 0 : Math.max(pending.get(), 0);
+    }
+
+    /**
+     * The largest number of input elements handed to a map thread at once in BATCHED mode
+     *
+     * @return the buffer size divided among the threads, but at least 1
+     */
+    @Ensures("result > 0")
+    protected int getMaxBatchSize() {
+        return Math.max(bufferSize / nThreads, 1);
+    }
+
     /**
      * Tells this nanoScheduler to shutdown immediately, releasing all its resources.
      *
@@ -293,6 +373,21 @@ public class NanoScheduler<InputType, MapType, ReduceType> {
             progressFunction.progress(input);
     }
 
+    /**
+     * Maybe update the progress meter after mapping a batch, if the batch covers a counter value
+     * for which updateProgress would have been called had we mapped its elements one at a time
+     *
+     * @param batch a batch whose elements have all been mapped
+     */
+    private void updateProgress(final InputBatch<InputType, MapType> batch) {
+        if ( progressFunction != null ) {
+            final int first = batch.firstInputID;
+            final int last = first + batch.size() - 1;
+            if ( first % UPDATE_PROGRESS_FREQ == 0 || first / UPDATE_PROGRESS_FREQ != last / UPDATE_PROGRESS_FREQ )
+                progressFunction.progress(batch.getInput(batch.size() - 1));
+        }
+    }
+
     /**
      * Efficient parallel version of Map/Reduce
      *
@@ -306,7 +401,9 @@ public class NanoScheduler<InputType, MapType, ReduceType> {
         debugPrint("Executing nanoScheduler");
 
         // start up the master job
-        final MasterJob masterJob = new MasterJob(inputReader, map, initialValue, reduce);
+        final Callable<ReduceType> masterJob = executionMode == NSExecutionMode.BATCHED
+                ? new BatchedMasterJob(inputReader, map, initialValue, reduce)
+                : new MasterJob(inputReader, map, initialValue, reduce);
         final Future<ReduceType> reduceResult = masterExecutor.submit(masterJob);
 
         while ( true ) {
@@ -390,6 +487,9 @@ public class NanoScheduler<InputType, MapType, ReduceType> {
 
             // create the MapResultsQueue to store results of map jobs.
             final MapResultsQueue<MapType> mapResultQueue = new MapResultsQueue<MapType>();
+            pendingMapResults = new PendingMapResults() {
+                @Override public int get() { return mapResultQueue.getNumPending(); }
+            };
 
             // create the reducer we'll use for this nano scheduling run
             final Reducer<MapType, ReduceType> reducer = new Reducer<MapType, ReduceType>(reduce, errorTracker, initialValue);
@@ -407,6 +507,8 @@ public class NanoScheduler<InputType, MapType, ReduceType> {
             } catch (Throwable ex) {
                 errorTracker.notifyOfError(ex);
                 return initialValue;
+            } finally {
+                pendingMapResults = null;
             }
         }
 
@@ -491,4 +593,117 @@ public class NanoScheduler<InputType, MapType, ReduceType> {
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * The BATCHED mode equivalent of MasterJob
+     *
+     * Sets up the batched input producer, ring buffer and reducer, starts the map threads, and
+     * waits for them to finish before doing the final reduce.
+     */
+    private class BatchedMasterJob implements Callable<ReduceType> {
+        final Iterator<InputType> inputReader;
+        final NSMapFunction<InputType, MapType> map;
+        final ReduceType initialValue;
+        final NSReduceFunction<MapType, ReduceType> reduce;
+
+        private BatchedMasterJob(Iterator<InputType> inputReader, NSMapFunction<InputType, MapType> map, ReduceType initialValue, NSReduceFunction<MapType, ReduceType> reduce) {
+            this.inputReader = inputReader;
+            this.map = map;
+            this.initialValue = initialValue;
+            this.reduce = reduce;
+        }
+
+        @Override
+        public ReduceType call() {
+            final BatchedInputProducer<InputType> inputProducer = new BatchedInputProducer<InputType>(inputReader, getMaxBatchSize());
+            final OrderedRingBuffer<InputBatch<InputType, MapType>> mapResults =
+                    new OrderedRingBuffer<InputBatch<InputType, MapType>>(nThreads * BATCHES_IN_FLIGHT_PER_THREAD);
+            pendingMapResults = new PendingMapResults() {
+                @Override public int get() { return inputProducer.getNumBatches() - mapResults.getNextSequenceToTake(); }
+            };
+            final BatchedReducer<InputType, MapType, ReduceType> reducer =
+                    new BatchedReducer<InputType, MapType, ReduceType>(reduce, errorTracker, initialValue);
+
+            final CountDownLatch runningMapJobs = new CountDownLatch(nThreads);
+
+            try {
+                for ( int i = 0; i < nThreads; i++ ) {
+                    mapExecutor.submit(new BatchedReadMapReduceJob(inputProducer, mapResults, runningMapJobs, map, reducer));
+                }
+
+                // wait for all of the map threads to finish, and then reduce whatever is left
+                runningMapJobs.await();
+                reducer.reduceAsMuchAsPossible(mapResults, true);
+
+                if ( ! errorTracker.hasAnErrorOccurred() && mapResults.getNextSequenceToTake() != inputProducer.getNumBatches() )
+                    throw new IllegalStateException("Only reduced " + mapResults.getNextSequenceToTake() + " of " + inputProducer.getNumBatches() + " batches");
+
+                debugPrint("Reduced %d inputs in %d batches", inputProducer.getNumInputValues(), inputProducer.getNumBatches());
+                return reducer.getReduceResult();
+            } catch (Throwable ex) {
+                errorTracker.notifyOfError(ex);
+                return initialValue;
+            } finally {
+                pendingMapResults = null;
+            }
+        }
+    }
+
+    /**
+     * The BATCHED mode equivalent of ReadMapReduceJob
+     *
+     * Repeatedly takes a batch of inputs, maps each of them, publishes the batch into the ring
+     * buffer and reduces as much as possible without blocking, until the input is exhausted.
+     */
+    private class BatchedReadMapReduceJob implements Runnable {
+        final BatchedInputProducer<InputType> inputProducer;
+        final OrderedRingBuffer<InputBatch<InputType, MapType>> mapResults;
+        final NSMapFunction<InputType, MapType> map;
+        final BatchedReducer<InputType, MapType, ReduceType> reducer;
+        final CountDownLatch runningMapJobs;
+
+        private BatchedReadMapReduceJob(final BatchedInputProducer<InputType> inputProducer,
+                                        final OrderedRingBuffer<InputBatch<InputType, MapType>> mapResults,
+                                        final CountDownLatch runningMapJobs,
+                                        final NSMapFunction<InputType, MapType> map,
+                                        final BatchedReducer<InputType, MapType, ReduceType> reducer) {
+            this.inputProducer = inputProducer;
+            this.mapResults = mapResults;
+            this.runningMapJobs = runningMapJobs;
+            this.map = map;
+            this.reducer = reducer;
+        }
+
+        @Override
+        public void run() {
+            try {
+                InputBatch<InputType, MapType> batch;
+                while ( (batch = inputProducer.<MapType>nextBatch()) != null ) {
+                    final long startTime = System.nanoTime();
+                    for ( int i = 0; i < batch.size(); i++ )
+                        batch.setMapResult(i, map.apply(batch.getInput(i)));
+                    inputProducer.recordMapTime(batch.size(), System.nanoTime() - startTime);
+
+                    updateProgress(batch);
+                    batch.releaseInputs();
+
+                    // publish our results.  If our slot is still occupied by an older batch, help to reduce,
+                    // then wait for the reducing thread to free it
+                    if ( ! mapResults.tryPut(batch.getBatchID(), batch) ) {
+                        reducer.reduceAsMuchAsPossible(mapResults, false);
+                        if ( ! mapResults.put(batch.getBatchID(), batch) )
+                            return; // another thread failed, so our slot may never be freed
+                    }
+
+                    reducer.reduceAsMuchAsPossible(mapResults, false);
+                }
+            } catch (Throwable ex) {
+                errorTracker.notifyOfError(ex);
+                // our batch will never be published, so no thread waiting for a slot behind it can continue
+                mapResults.abort();
+            } finally {
+                runningMapJobs.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.nanoScheduler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free, fixed capacity buffer holding values keyed by a dense sequence number
+ * (0, 1, 2, ...) that must be consumed in sequence order.
+ *
+ * Any number of threads may put values, each with a distinct sequence number, but only a single
+ * thread at a time may consume them (this is guaranteed in the NanoScheduler by the BatchedReducer).
+ * A value with sequence number seq lives in slot seq % capacity, so a put can only succeed once
+ * every value with a sequence number <= seq - capacity has been consumed.  Producers that
+ * run ahead of the consumer by more than capacity values have to wait, which bounds the
+ * memory used to hold results that can't be reduced yet.
+ *
+ * Compared to MapResultsQueue no monitor is acquired while the producers keep within capacity of
+ * the consumer: producers publish values with a single volatile write into their own slot, and the
+ * consumer advances its position with a volatile write that producers read to decide whether their
+ * slot is free.  Only a producer that has to wait for its slot blocks on a monitor, and the consumer
+ * only notifies it when some producer is waiting.
+ */
+class OrderedRingBuffer<T> {
+    private final AtomicReferenceArray<T> slots;
+    private final int mask;
+
+    /**
+     * The sequence number of the next value to be consumed.  Only written by the single consumer
+     */
+    private final AtomicInteger nextToTake = new AtomicInteger(0);
+
+    /**
+     * The number of producers blocked in put, waiting for the consumer to free their slot
+     */
+    private final AtomicInteger waitingProducers = new AtomicInteger(0);
+
+    /**
+     * Monitor the blocked producers wait on, notified when the consumer takes a value or the buffer is aborted
+     */
+    private final Object slotFreed = new Object();
+
+    /**
+     * Set once the values in this buffer will no longer be consumed
+     */
+    private volatile boolean aborted = false;
+
+    /**
+     * Create a new ring buffer able to hold at least minCapacity values not yet consumed
+     *
+     * @param minCapacity the minimum capacity, will be rounded up to the next power of 2
+     */
+    public OrderedRingBuffer(final int minCapacity) {
+        if ( minCapacity < 1 ) throw new IllegalArgumentException("minCapacity must be >= 1, got " + minCapacity);
+        final int capacity = Integer.highestOneBit(minCapacity) == minCapacity ? minCapacity : Integer.highestOneBit(minCapacity) << 1;
+        this.slots = new AtomicReferenceArray<T>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * @return the number of values this buffer can hold before producers have to wait for the consumer
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return the sequence number of the next value the consumer will take
+     */
+    public int getNextSequenceToTake() {
+        return nextToTake.get();
+    }
+
+    /**
+     * Try to put value with sequence number seq into this buffer
+     *
+     * @param seq the sequence number of value, must not have been put before
+     * @param value a non-null value
+     * @return true if value was stored, false if the slot for seq is still in use, in which
+     *         case the caller should try again once the consumer has made progress
+     */
+    public boolean tryPut(final int seq, final T value) {
+        if ( value == null ) throw new IllegalArgumentException("value cannot be null");
+        if ( seq < nextToTake.get() ) throw new IllegalArgumentException("seq " + seq + " has already been consumed");
+
+        if ( seq - nextToTake.get() >= capacity() )
+            return false;
+
+        slots.set(seq & mask, value);
+        return true;
+    }
+
+    /**
+     * Put value with sequence number seq into this buffer, blocking until its slot is free
+     *
+     * @param seq the sequence number of value, must not have been put before
+     * @param value a non-null value
+     * @return true if value was stored, false if the buffer was aborted before the slot for seq was freed
+     * @throws InterruptedException if interrupted while waiting for the slot
+     */
+    public boolean put(final int seq, final T value) throws InterruptedException {
+        if ( tryPut(seq, value) )
+            return true;
+
+        // the consumer checks for waiting producers after advancing, so register before checking the slot again
+        waitingProducers.incrementAndGet();
+        try {
+            synchronized (slotFreed) {
+                while ( ! tryPut(seq, value) ) {
+                    if ( aborted )
+                        return false;
+                    slotFreed.wait();
+                }
+                return true;
+            }
+        } finally {
+            waitingProducers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Stop consuming the values of this buffer, waking up the producers waiting in put
+     */
+    public void abort() {
+        aborted = true;
+        synchronized (slotFreed) {
+            slotFreed.notifyAll();
+        }
+    }
+
+    /**
+     * Is the next value in sequence order available to be taken?
+     *
+     * @return true if a call to take() would return a non-null value
+     */
+    public boolean nextValueIsAvailable() {
+        return slots.get(nextToTake.get() & mask) != null;
+    }
+
+    /**
+     * Take the next value in sequence order, if it is available
+     *
+     * Must only be called by one thread at a time
+     *
+     * @return the next value in sequence order, or null if it hasn't been put yet
+     */
+    public T take() {
+        final int seq = nextToTake.get();
+        final int slot = seq & mask;
+        final T value = slots.get(slot);
+        if ( value != null ) {
+            // clear the slot before advancing, so a producer that sees the new position finds it empty
+            slots.set(slot, null);
+            nextToTake.set(seq + 1);
+            if ( waitingProducers.get() > 0 ) {
+                synchronized (slotFreed) {
+                    slotFreed.notifyAll();
+                }
+            }
+        }
+        return value;
+    }
+}
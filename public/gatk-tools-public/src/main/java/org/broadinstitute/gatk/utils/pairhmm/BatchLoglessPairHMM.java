@@ -0,0 +1,425 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.pairhmm;
+
+import org.broadinstitute.gatk.utils.MathUtils;
+import org.broadinstitute.gatk.utils.QualityUtils;
+import org.broadinstitute.gatk.utils.genotyper.ReadLikelihoods;
+import org.broadinstitute.gatk.utils.haplotype.Haplotype;
+import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.broadinstitute.gatk.utils.pairhmm.PairHMMModel.*;
+
+/**
+ * Pure Java logless PairHMM that aligns a read against several haplotypes at once.
+ *
+ * <p>
+ *     Haplotypes are processed in groups of up to {@link #LANES} lanes. The state arrays of a group are interleaved
+ *     so that the innermost loop of the recurrence runs over the lanes of one cell, which is a straight line of
+ *     independent multiply-adds over contiguous memory that the JIT can turn into SIMD instructions. Haplotypes
+ *     shorter than the longest in their group are padded; padding columns come after the haplotype's own
+ *     columns so they never affect its result.
+ * </p>
+ *
+ * <p>
+ *     Like the native VECTOR_LOGLESS_CACHING implementation, the likelihoods are computed in probability space,
+ *     scaled by a large initial constant to stay clear of underflow. Unlike it, the kernel works in double precision:
+ *     the JVM cannot flush denormals to zero, and single precision values reaching the denormal range are slow
+ *     enough to make a float first pass more expensive than a double one. Lanes whose final probability still
+ *     underflows are recomputed in log space by {@link Log10PairHMM}.
+ * </p>
+ *
+ * <p>
+ *     Besides the standard {@link PairHMM} interface this class implements {@link BatchPairHMM}, so that callers can
+ *     add all the reads of a region with {@link #batchAdd} and collect all the likelihoods at once with
+ *     {@link #batchGetResult}.
+ * </p>
+ */
+public final class BatchLoglessPairHMM extends PairHMM implements BatchPairHMM {
+
+    /**
+     * Maximum number of haplotypes computed together.
+     */
+    public static final int LANES = 8;
+
+    /**
+     * Results below this value (before removing the initial scaling) are recomputed in log space.
+     */
+    static final double MIN_ACCEPTED = 1e-300;
+
+    private static final double INITIAL_CONSTANT = Math.scalb(1.0, 1020);
+    private static final double LOG10_INITIAL_CONSTANT = Math.log10(INITIAL_CONSTANT);
+
+    private static final byte N = (byte) 'N';
+
+    // Per read position constants; position i of the read is in entry i + 1.
+    private double[][] transition;
+    private double[] matchPrior;
+    private double[] mismatchPrior;
+
+    // Interleaved state rows, (column * laneCount + lane).
+    private double[] mPrev, mCur, xPrev, xCur, yPrev, yCur;
+
+    // Interleaved haplotype bases of the group being computed, (column * laneCount + lane).
+    private byte[] groupBases;
+    private final int[] groupLengths = new int[LANES];
+    private final byte[][] groupHaplotypes = new byte[LANES][];
+    private final double[] laneResults = new double[LANES];
+    private final double[] groupResults = new double[LANES];
+
+    // Log space implementation for the lanes that underflow, created on first use.
+    private Log10PairHMM log10PairHMM;
+
+    // Number of lanes recomputed in log space since construction; only for testing and diagnostics.
+    private long log10LaneCount = 0;
+
+    // Pending work submitted through the BatchPairHMM interface.
+    private final List<BatchEntry> batch = new ArrayList<>();
+
+    /**
+     * Read and haplotypes added through {@link #batchAdd}.
+     */
+    private static final class BatchEntry {
+        private final byte[][] haplotypes;
+        private final byte[] readBases, readQuals, insertionGOP, deletionGOP, overallGCP;
+
+        private BatchEntry(final byte[][] haplotypes, final byte[] readBases, final byte[] readQuals,
+                           final byte[] insertionGOP, final byte[] deletionGOP, final byte[] overallGCP) {
+            this.haplotypes = haplotypes;
+            this.readBases = readBases;
+            this.readQuals = readQuals;
+            this.insertionGOP = insertionGOP;
+            this.deletionGOP = deletionGOP;
+            this.overallGCP = overallGCP;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void initialize(final int readMaxLength, final int haplotypeMaxLength) {
+        super.initialize(readMaxLength, haplotypeMaxLength);
+
+        transition = PairHMMModel.createTransitionMatrix(maxReadLength);
+        matchPrior = new double[paddedMaxReadLength];
+        mismatchPrior = new double[paddedMaxReadLength];
+
+        final int rowLength = paddedMaxHaplotypeLength * LANES;
+        mPrev = new double[rowLength];
+        mCur = new double[rowLength];
+        xPrev = new double[rowLength];
+        xCur = new double[rowLength];
+        yPrev = new double[rowLength];
+        yCur = new double[rowLength];
+        groupBases = new byte[maxHaplotypeLength * LANES];
+        log10PairHMM = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>All the haplotypes are computed together against each read.</p>
+     */
+    @Override
+    public void computeLikelihoods(final ReadLikelihoods.Matrix<Haplotype> likelihoods,
+                                   final List<GATKSAMRecord> processedReads,
+                                   final Map<GATKSAMRecord,byte[]> gcp) {
+        if (processedReads.isEmpty())
+            return;
+        if (doProfiling)
+            startTime = System.nanoTime();
+
+        final List<Haplotype> alleles = likelihoods.alleles();
+        final int alleleCount = alleles.size();
+        final byte[][] haplotypes = new byte[alleleCount][];
+        int haplotypeMaxLength = 0;
+        for (int a = 0; a < alleleCount; a++) {
+            haplotypes[a] = alleles.get(a).getBases();
+            haplotypeMaxLength = Math.max(haplotypeMaxLength, haplotypes[a].length);
+        }
+        final int readMaxLength = findMaxReadLength(processedReads);
+        if (!initialized || readMaxLength > maxReadLength || haplotypeMaxLength > maxHaplotypeLength)
+            initialize(readMaxLength, haplotypeMaxLength);
+
+        final int readCount = processedReads.size();
+        mLikelihoodArray = new double[readCount * alleleCount];
+        final double[] readResults = new double[alleleCount];
+        long haplotypeColumnCount = 0;
+        for (final byte[] haplotype : haplotypes)
+            haplotypeColumnCount += haplotype.length;
+        regionCellCount = 0;
+        regionSharedCellCount = 0;
+        int readIndex = 0;
+        for (final GATKSAMRecord read : processedReads) {
+            computeReadLikelihoods(haplotypes, read.getReadBases(), read.getBaseQualities(),
+                    read.getBaseInsertionQualities(), read.getBaseDeletionQualities(), gcp.get(read), readResults);
+            for (int a = 0; a < alleleCount; a++)
+                likelihoods.set(a, readIndex, readResults[a]);
+            System.arraycopy(readResults, 0, mLikelihoodArray, readIndex * alleleCount, alleleCount);
+            regionCellCount += read.getReadLength() * haplotypeColumnCount;
+            readIndex++;
+        }
+
+        if (doProfiling) {
+            threadLocalPairHMMComputeTimeDiff = (System.nanoTime() - startTime);
+            pairHMMComputeTime += threadLocalPairHMMComputeTimeDiff;
+            // every cell is computed, so this implementation isn't included in the prefix sharing totals
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Likelihoods are computed when {@link #batchGetResult} is called.</p>
+     */
+    @Override
+    public void batchAdd(final List<Haplotype> haplotypes, final byte[] readBases, final byte[] readQuals,
+                         final byte[] insertionGOP, final byte[] deletionGOP, final byte[] overallGCP) {
+        if (haplotypes == null) throw new IllegalArgumentException("haplotypes cannot be null");
+        if (readBases == null) throw new IllegalArgumentException("readBases cannot be null");
+        final byte[][] haplotypeBases = new byte[haplotypes.size()][];
+        for (int h = 0; h < haplotypeBases.length; h++)
+            haplotypeBases[h] = haplotypes.get(h).getBases();
+        batch.add(new BatchEntry(haplotypeBases, readBases, readQuals, insertionGOP, deletionGOP, overallGCP));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return the log10 likelihoods of every read added since the last call, given each of its haplotypes, in
+     * the order they were added: all the haplotypes of the first read, then all those of the second read and so on.
+     */
+    @Override
+    public double[] batchGetResult() {
+        int resultCount = 0;
+        int readMaxLength = 0;
+        int haplotypeMaxLength = 0;
+        for (final BatchEntry entry : batch) {
+            resultCount += entry.haplotypes.length;
+            readMaxLength = Math.max(readMaxLength, entry.readBases.length);
+            for (final byte[] haplotype : entry.haplotypes)
+                haplotypeMaxLength = Math.max(haplotypeMaxLength, haplotype.length);
+        }
+        final double[] result = new double[resultCount];
+        if (resultCount == 0) {
+            batch.clear();
+            return result;
+        }
+        if (!initialized || readMaxLength > maxReadLength || haplotypeMaxLength > maxHaplotypeLength)
+            initialize(Math.max(1, readMaxLength), haplotypeMaxLength);
+
+        int offset = 0;
+        double[] readResults = new double[0];
+        for (final BatchEntry entry : batch) {
+            final int haplotypeCount = entry.haplotypes.length;
+            if (readResults.length < haplotypeCount)
+                readResults = new double[haplotypeCount];
+            computeReadLikelihoods(entry.haplotypes, entry.readBases, entry.readQuals, entry.insertionGOP,
+                    entry.deletionGOP, entry.overallGCP, readResults);
+            System.arraycopy(readResults, 0, result, offset, haplotypeCount);
+            offset += haplotypeCount;
+        }
+        batch.clear();
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected double subComputeReadLikelihoodGivenHaplotypeLog10(final byte[] haplotypeBases,
+                                                                 final byte[] readBases,
+                                                                 final byte[] readQuals,
+                                                                 final byte[] insertionGOP,
+                                                                 final byte[] deletionGOP,
+                                                                 final byte[] overallGCP,
+                                                                 final int hapStartIndex,
+                                                                 final boolean recacheReadValues,
+                                                                 final int nextHapStartIndex) {
+        if (!constantsAreInitialized || recacheReadValues)
+            initializeReadConstants(readBases, readQuals, insertionGOP, deletionGOP, overallGCP);
+        groupHaplotypes[0] = haplotypeBases;
+        computeGroup(readBases, readQuals, insertionGOP, deletionGOP, overallGCP, 1);
+        return groupResults[0];
+    }
+
+    /**
+     * Number of haplotype lanes that had to be recomputed in log space so far.
+     */
+    long getLog10LaneCount() {
+        return log10LaneCount;
+    }
+
+    // Computes the likelihoods of a read given each haplotype, group by group.
+    private void computeReadLikelihoods(final byte[][] haplotypes, final byte[] readBases, final byte[] readQuals,
+                                        final byte[] insertionGOP, final byte[] deletionGOP, final byte[] overallGCP,
+                                        final double[] result) {
+        checkRead(readBases, readQuals, insertionGOP, deletionGOP, overallGCP);
+        initializeReadConstants(readBases, readQuals, insertionGOP, deletionGOP, overallGCP);
+        for (int first = 0; first < haplotypes.length; first += LANES) {
+            final int laneCount = Math.min(LANES, haplotypes.length - first);
+            for (int h = 0; h < laneCount; h++) {
+                final byte[] haplotype = haplotypes[first + h];
+                if (haplotype == null || haplotype.length == 0)
+                    throw new IllegalArgumentException("haplotype bases cannot be null or empty");
+                groupHaplotypes[h] = haplotype;
+            }
+            computeGroup(readBases, readQuals, insertionGOP, deletionGOP, overallGCP, laneCount);
+            for (int h = 0; h < laneCount; h++) {
+                final double lk = groupResults[h];
+                if (lk > 0.0 || !MathUtils.goodLog10Probability(lk))
+                    throw new IllegalStateException("Invalid Log Probability: " + lk + " for haplotype " + new String(groupHaplotypes[h]) + " and read " + new String(readBases));
+                result[first + h] = lk;
+            }
+        }
+        Arrays.fill(groupHaplotypes, null);
+    }
+
+    private void checkRead(final byte[] readBases, final byte[] readQuals, final byte[] insertionGOP,
+                           final byte[] deletionGOP, final byte[] overallGCP) {
+        if (readBases == null) throw new IllegalArgumentException("readBases cannot be null");
+        if (readBases.length > maxReadLength) throw new IllegalArgumentException("readBases is too long, got " + readBases.length + " but max is " + maxReadLength);
+        if (readQuals.length != readBases.length) throw new IllegalArgumentException("Read bases and read quals aren't the same size: " + readBases.length + " vs " + readQuals.length);
+        if (insertionGOP.length != readBases.length) throw new IllegalArgumentException("Read bases and read insertion quals aren't the same size: " + readBases.length + " vs " + insertionGOP.length);
+        if (deletionGOP.length != readBases.length) throw new IllegalArgumentException("Read bases and read deletion quals aren't the same size: " + readBases.length + " vs " + deletionGOP.length);
+        if (overallGCP.length != readBases.length) throw new IllegalArgumentException("Read bases and overall GCP aren't the same size: " + readBases.length + " vs " + overallGCP.length);
+    }
+
+    // Caches the transition and prior probabilities for each read position.
+    private void initializeReadConstants(final byte[] readBases, final byte[] readQuals, final byte[] insertionGOP,
+                                         final byte[] deletionGOP, final byte[] overallGCP) {
+        PairHMMModel.qualToTransProbs(transition, insertionGOP, deletionGOP, overallGCP);
+        for (int i = 1; i <= readBases.length; i++) {
+            final double errorProbability = QualityUtils.qualToErrorProb(readQuals[i - 1]);
+            matchPrior[i] = 1.0 - errorProbability;
+            // a read N matches anything.
+            mismatchPrior[i] = readBases[i - 1] == N ? matchPrior[i]
+                    : (doNotUseTristateCorrection ? errorProbability : errorProbability / 3.0);
+        }
+        constantsAreInitialized = true;
+    }
+
+    // Computes groupResults for the haplotypes in groupHaplotypes[0 .. laneCount).
+    private void computeGroup(final byte[] readBases, final byte[] readQuals, final byte[] insertionGOP,
+                              final byte[] deletionGOP, final byte[] overallGCP, final int laneCount) {
+        int width = 0;
+        for (int h = 0; h < laneCount; h++) {
+            final byte[] haplotype = groupHaplotypes[h];
+            if (haplotype.length > maxHaplotypeLength)
+                throw new IllegalArgumentException("Haplotype bases is too long, got " + haplotype.length + " but max is " + maxHaplotypeLength);
+            groupLengths[h] = haplotype.length;
+            width = Math.max(width, haplotype.length);
+        }
+        interleaveBases(laneCount, width);
+
+        computeLanes(readBases, laneCount, width);
+        for (int h = 0; h < laneCount; h++) {
+            if (laneResults[h] >= MIN_ACCEPTED) {
+                groupResults[h] = Math.log10(laneResults[h]) - LOG10_INITIAL_CONSTANT;
+                continue;
+            }
+            // so unlikely that even the scaled probability underflows; this is rare enough to go one by one.
+            if (log10PairHMM == null) {
+                log10PairHMM = new Log10PairHMM(true);
+                if (doNotUseTristateCorrection)
+                    log10PairHMM.doNotUseTristateCorrection();
+                log10PairHMM.initialize(maxReadLength, maxHaplotypeLength);
+            }
+            groupResults[h] = log10PairHMM.computeReadLikelihoodGivenHaplotypeLog10(groupHaplotypes[h], readBases,
+                    readQuals, insertionGOP, deletionGOP, overallGCP, true, null);
+            log10LaneCount++;
+        }
+    }
+
+    // Lays out the group haplotype bases column by column; padding is never read for a lane's own result.
+    private void interleaveBases(final int laneCount, final int width) {
+        for (int h = 0; h < laneCount; h++) {
+            final byte[] haplotype = groupHaplotypes[h];
+            final int length = haplotype.length;
+            for (int j = 0; j < length; j++)
+                groupBases[j * laneCount + h] = haplotype[j];
+            for (int j = length; j < width; j++)
+                groupBases[j * laneCount + h] = 0;
+        }
+    }
+
+    private void computeLanes(final byte[] readBases, final int laneCount, final int width) {
+        double[] mPrev = this.mPrev, mCur = this.mCur, xPrev = this.xPrev, xCur = this.xCur, yPrev = this.yPrev, yCur = this.yCur;
+        final int rowLength = (width + 1) * laneCount;
+        Arrays.fill(mPrev, 0, rowLength, 0.0);
+        Arrays.fill(xPrev, 0, rowLength, 0.0);
+        for (int h = 0; h < laneCount; h++) {
+            final double initialValue = INITIAL_CONSTANT / groupLengths[h];
+            for (int c = h; c < rowLength; c += laneCount)
+                yPrev[c] = initialValue;
+        }
+
+        final int readLength = readBases.length;
+        for (int i = 1; i <= readLength; i++) {
+            final byte readBase = readBases[i - 1];
+            final double matchPrior = this.matchPrior[i];
+            final double mismatchPrior = this.mismatchPrior[i];
+            final double[] transition = this.transition[i];
+            final double mm = transition[matchToMatch];
+            final double gm = transition[indelToMatch];
+            final double mx = transition[matchToInsertion];
+            final double xx = transition[insertionToInsertion];
+            final double my = transition[matchToDeletion];
+            final double yy = transition[deletionToDeletion];
+
+            for (int h = 0; h < laneCount; h++)
+                mCur[h] = xCur[h] = yCur[h] = 0.0;
+            for (int j = 1; j <= width; j++) {
+                final int cell = j * laneCount;
+                final int diagonal = cell - laneCount;
+                for (int h = 0; h < laneCount; h++) {
+                    final byte haplotypeBase = groupBases[diagonal + h];
+                    final double prior = haplotypeBase == readBase || haplotypeBase == N ? matchPrior : mismatchPrior;
+                    mCur[cell + h] = prior * (mPrev[diagonal + h] * mm + (xPrev[diagonal + h] + yPrev[diagonal + h]) * gm);
+                    xCur[cell + h] = mPrev[cell + h] * mx + xPrev[cell + h] * xx;
+                    yCur[cell + h] = mCur[diagonal + h] * my + yCur[diagonal + h] * yy;
+                }
+            }
+            double[] swap = mPrev; mPrev = mCur; mCur = swap;
+            swap = xPrev; xPrev = xCur; xCur = swap;
+            swap = yPrev; yPrev = yCur; yCur = swap;
+        }
+
+        for (int h = 0; h < laneCount; h++) {
+            double sum = 0.0;
+            final int end = groupLengths[h] * laneCount + h;
+            for (int c = laneCount + h; c <= end; c += laneCount)
+                sum += mPrev[c] + xPrev[c];
+            laneResults[h] = sum;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.pairhmm;
+
+import htsjdk.variant.variantcontext.Allele;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Order in which to run the haplotypes of a region through the PairHMM so that shared haplotype prefixes are computed
+ * only once per read.
+ *
+ * <p>
+ *     Haplotypes are grouped by length, since the initial deletion probabilities depend on it, and each group is
+ *     visited as a depth-first traversal of its prefix trie, which is the same as sorting its bases lexicographically.
+ *     Consecutive haplotypes in that order share the longest possible prefix, and a PairHMM that keeps the matrix
+ *     columns of the previous haplotype only needs to compute the columns that come after it. Identical haplotypes
+ *     share all their columns.
+ * </p>
+ *
+ * <p>
+ *     The order is computed once per region and reused for every read.
+ * </p>
+ */
+final class HaplotypePrefixOrder {
+
+    // allele indices in evaluation order.
+    private final int[] alleleIndices;
+
+    // length of the prefix each haplotype shares with the previous one in evaluation order; 0 if the lengths differ.
+    private final int[] sharedPrefixLengths;
+
+    // total number of haplotype columns and of those shared with the previous haplotype.
+    private final long columnCount;
+    private final long sharedColumnCount;
+
+    /**
+     * Creates the order for a list of haplotypes.
+     *
+     * @param alleles the haplotypes, in their original order.
+     * @throws IllegalArgumentException if {@code alleles} is {@code null} or contains an allele with no bases.
+     */
+    HaplotypePrefixOrder(final List<? extends Allele> alleles) {
+        if (alleles == null) throw new IllegalArgumentException("the allele list cannot be null");
+        final int alleleCount = alleles.size();
+        final byte[][] bases = new byte[alleleCount][];
+        final Integer[] order = new Integer[alleleCount];
+        for (int a = 0; a < alleleCount; a++) {
+            bases[a] = alleles.get(a).getBases();
+            if (bases[a] == null || bases[a].length == 0)
+                throw new IllegalArgumentException("haplotype bases cannot be null or empty");
+            order[a] = a;
+        }
+
+        // Arrays.sort on objects is stable, so equal haplotypes keep their original relative order.
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer a1, final Integer a2) {
+                final byte[] b1 = bases[a1];
+                final byte[] b2 = bases[a2];
+                if (b1.length != b2.length)
+                    return b1.length < b2.length ? -1 : 1;
+                for (int i = 0; i < b1.length; i++)
+                    if (b1[i] != b2[i])
+                        return b1[i] < b2[i] ? -1 : 1;
+                return 0;
+            }
+        });
+
+        alleleIndices = new int[alleleCount];
+        sharedPrefixLengths = new int[alleleCount];
+        long columns = 0;
+        long sharedColumns = 0;
+        for (int k = 0; k < alleleCount; k++) {
+            final byte[] current = bases[order[k]];
+            alleleIndices[k] = order[k];
+            if (k > 0 && bases[order[k - 1]].length == current.length)
+                sharedPrefixLengths[k] = PairHMM.findFirstPositionWhereHaplotypesDiffer(bases[order[k - 1]], current);
+            columns += current.length;
+            sharedColumns += sharedPrefixLengths[k];
+        }
+        columnCount = columns;
+        sharedColumnCount = sharedColumns;
+    }
+
+    /**
+     * Number of haplotypes.
+     */
+    int size() {
+        return alleleIndices.length;
+    }
+
+    /**
+     * Index, in the original list, of the haplotype to compute in the given position.
+     *
+     * @param position position in the evaluation order, between 0 and {@link #size()} - 1.
+     */
+    int alleleIndex(final int position) {
+        return alleleIndices[position];
+    }
+
+    /**
+     * Number of leading bases that the haplotype in the given position shares with the one before it.
+     *
+     * @param position position in the evaluation order, between 0 and {@link #size()} - 1.
+     * @return 0 for the first haplotype and for haplotypes whose length differs from the previous one.
+     */
+    int sharedPrefixLength(final int position) {
+        return sharedPrefixLengths[position];
+    }
+
+    /**
+     * Total number of bases over all the haplotypes.
+     */
+    long columnCount() {
+        return columnCount;
+    }
+
+    /**
+     * Number of haplotype bases whose PairHMM columns are shared with the previous haplotype in the order.
+     */
+    long sharedColumnCount() {
+        return sharedColumnCount;
+    }
+}
@@ -67,6 +67,16 @@ abstract class N2MemoryPairHMM extends PairHMM {
         prior = new double[paddedMaxReadLength][paddedMaxHaplotypeLength];
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * The full matrices are kept between haplotypes, so any shared prefix can be reused.
+     */
+    @Override
+    protected boolean canRewindHaplotypeStartIndex() {
+        return true;
+    }
+
     /**
      * Print out the core hmm matrices for debugging
      */
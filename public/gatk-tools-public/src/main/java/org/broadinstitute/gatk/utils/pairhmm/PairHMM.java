@@ -37,6 +37,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 /**
  * Util class for performing the pair HMM for local alignment. Figure 4.3 in Durbin 1998 book.
  *
@@ -63,7 +64,9 @@ public abstract class PairHMM {
         /* Debugging for vector implementation of LOGLESS_CACHING */
         DEBUG_VECTOR_LOGLESS_CACHING,
         /* Logless caching PairHMM that stores computations in 1D arrays instead of matrices, and which proceeds diagonally over the (read x haplotype) intersection matrix */
-        ARRAY_LOGLESS
+        ARRAY_LOGLESS,
+        /* Pure Java logless PairHMM that computes several haplotypes at once; does not require the native library */
+        BATCH_LOGLESS
     }
 
     protected int maxHaplotypeLength, maxReadLength;
@@ -84,6 +87,14 @@ public abstract class PairHMM {
     protected long threadLocalPairHMMComputeTimeDiff = 0;
     protected long startTime = 0;
 
+    // PairHMM cells of the last region, and how many of them were shared with the previous haplotype and not computed.
+    // The totals are updated concurrently by the PairHMMs of every thread, and only cover implementations that share
+    // haplotype prefixes, so that the reported sharing ratio isn't diluted by those that never do.
+    protected long regionCellCount = 0;
+    protected long regionSharedCellCount = 0;
+    protected static final AtomicLong totalCellCount = new AtomicLong(0);
+    protected static final AtomicLong totalSharedCellCount = new AtomicLong(0);
+
     /**
      * Initialize this PairHMM, making it suitable to run against a read and haplotype with given lengths
      *
@@ -197,7 +208,12 @@ public abstract class PairHMM {
         final List<Haplotype> alleles = likelihoods.alleles();
         final int alleleCount = alleles.size();
         mLikelihoodArray = new double[readCount * alleleCount];
-        int idx = 0;
+
+        // the haplotypes are run in prefix trie order so that each read only computes the columns
+        // that differ from the previous haplotype.
+        final HaplotypePrefixOrder order = new HaplotypePrefixOrder(alleles);
+        regionCellCount = 0;
+        regionSharedCellCount = 0;
         int readIndex = 0;
         for(final GATKSAMRecord read : processedReads){
             final byte[] readBases = read.getReadBases();
@@ -206,24 +222,32 @@ public abstract class PairHMM {
             final byte[] readDelQuals = read.getBaseDeletionQualities();
             final byte[] overallGCP = gcp.get(read);
 
-            // peak at the next haplotype in the list (necessary to get nextHaplotypeBases, which is required for caching in the array implementation)
-            final boolean isFirstHaplotype = true;
-            for (int a = 0; a < alleleCount; a++) {
-                final Allele allele = alleles.get(a);
-                final byte[] alleleBases = allele.getBases();
-                final byte[] nextAlleleBases = a == alleles.size() - 1 ? null : alleles.get(a + 1).getBases();
+            for (int k = 0; k < alleleCount; k++) {
+                final int a = order.alleleIndex(k);
+                final byte[] alleleBases = alleles.get(a).getBases();
+                // peak at the next haplotype in the order (necessary to get nextHaplotypeBases, which is required for caching)
+                final byte[] nextAlleleBases = k == alleleCount - 1 ? null : alleles.get(order.alleleIndex(k + 1)).getBases();
+                final boolean isFirstHaplotype = k == 0;
+                if (!isFirstHaplotype)
+                    regionSharedCellCount += (long) readBases.length * hapStartIndex;
                 final double lk = computeReadLikelihoodGivenHaplotypeLog10(alleleBases,
                         readBases, readQuals, readInsQuals, readDelQuals, overallGCP, isFirstHaplotype, nextAlleleBases);
                 likelihoods.set(a, readIndex, lk);
-                mLikelihoodArray[idx++] = lk;
+                mLikelihoodArray[readIndex * alleleCount + a] = lk;
             }
+            regionCellCount += (long) readBases.length * order.columnCount();
             readIndex++;
         }
+        if (logger.isDebugEnabled())
+            logger.debug(String.format("PairHMM region: %d reads, %d haplotypes, %d of %d cells shared between haplotype prefixes",
+                    readCount, alleleCount, regionSharedCellCount, regionCellCount));
         if(doProfiling) {
             threadLocalPairHMMComputeTimeDiff = (System.nanoTime() - startTime);
             //synchronized(doProfiling)
             {
                 pairHMMComputeTime += threadLocalPairHMMComputeTimeDiff;
+                totalCellCount.addAndGet(regionCellCount);
+                totalSharedCellCount.addAndGet(regionSharedCellCount);
             }
         }
     }
@@ -289,7 +313,7 @@ public abstract class PairHMM {
 
         // For the next iteration, the hapStartIndex for the next haploytpe becomes the index for the current haplotype
         // The array implementation has to look ahead to the next haplotype to store caching info. It cannot do this if nextHapStart is before hapStart
-        hapStartIndex = (nextHapStartIndex < hapStartIndex) ? 0: nextHapStartIndex;
+        hapStartIndex = (nextHapStartIndex < hapStartIndex && !canRewindHaplotypeStartIndex()) ? 0: nextHapStartIndex;
 
         return result;
     }
@@ -309,6 +333,19 @@ public abstract class PairHMM {
                                                                            final boolean recacheReadValues,
                                                                            final int nextHapStartIndex);
 
+    /**
+     * Whether the next haplotype can reuse the columns of a prefix shorter than the one reused by the current haplotype.
+     *
+     * Implementations that keep every column of the previous haplotype can resume from any shared prefix, which is
+     * what happens when going back up the haplotype prefix trie. Implementations that only cache what the current
+     * haplotype shares with the next one must not, and keep this default.
+     *
+     * @return true if hapStartIndex can move backwards between consecutive haplotypes
+     */
+    protected boolean canRewindHaplotypeStartIndex() {
+        return false;
+    }
+
     /**
      * Compute the first position at which two haplotypes differ
      *
@@ -346,12 +383,31 @@ public abstract class PairHMM {
      * Return the results of the computeLikelihoods function
      */
     public double[] getLikelihoodArray() { return mLikelihoodArray; }
+
+    /**
+     * Number of PairHMM cells (read bases times haplotype bases) in the last call to computeLikelihoods
+     */
+    public long getRegionCellCount() { return regionCellCount; }
+
+    /**
+     * Number of cells of the last call to computeLikelihoods that were not computed because they were shared with the
+     * previous haplotype's prefix
+     */
+    public long getRegionSharedCellCount() { return regionSharedCellCount; }
+
     /**
      * Called at the end of the program to close files, print profiling information etc 
      */
     public void close()
     {
         if(doProfiling)
+        {
             System.out.println("Total compute time in PairHMM computeLikelihoods() : "+(pairHMMComputeTime*1e-9));
+            final long cellCount = totalCellCount.get();
+            final long sharedCellCount = totalSharedCellCount.get();
+            if (cellCount > 0)
+                System.out.println(String.format("PairHMM cells shared between haplotype prefixes : %d of %d (%.1f%%)",
+                        sharedCellCount, cellCount, 100.0 * sharedCellCount / cellCount));
+        }
     }
 }
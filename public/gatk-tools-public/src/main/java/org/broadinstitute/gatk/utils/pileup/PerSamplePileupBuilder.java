@@ -0,0 +1,156 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.pileup;
+
+import org.broadinstitute.gatk.utils.GenomeLoc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds per-sample ReadBackedPileups one locus after another, for a fixed list of samples.
+ *
+ * The sample list and its index are shared by all of the pileups built here, and the elements of all samples
+ * at a locus are laid out in a single array, one sample after another.  So building a pileup allocates just the
+ * element array and a small tracker for each sample with data, rather than a map, and a list and a pileup for
+ * each sample.
+ *
+ * Usage, at each locus:
+ *
+ *   builder.startLocus(maximum number of elements at the locus);
+ *   for each sample index i:
+ *     builder.startSample(i);
+ *     builder.add(element) for each element of sample i
+ *   pileup = builder.build(location);
+ *
+ * The pileups built are independent of the builder and each other, so they can be kept after the next locus is built.
+ *
+ * The samples of the pileups are in the order of the sample list given to the builder, where a pileup built from a
+ * map of per-sample pileups has them in the order of the map.
+ */
+public final class PerSamplePileupBuilder {
+    private final List<String> samples;
+    private final Map<String, Integer> sampleIndices;
+
+    private PileupElement[] elements;
+    private int nElements;
+    private PerSamplePileupElementTracker<PileupElement> tracker;
+    private int currentSample;
+    private int currentSampleStart;
+
+    /**
+     * Create a builder of pileups for samples
+     *
+     * @param samples the samples of the pileups, in sample index order.  May contain null
+     */
+    public PerSamplePileupBuilder(final Collection<String> samples) {
+        if ( samples == null ) throw new IllegalArgumentException("samples cannot be null");
+        this.samples = new ArrayList<String>(samples);
+        this.sampleIndices = new HashMap<String, Integer>(this.samples.size());
+        for ( int i = 0; i < this.samples.size(); i++ ) {
+            if ( ! sampleIndices.containsKey(this.samples.get(i)) )
+                sampleIndices.put(this.samples.get(i), i);
+        }
+    }
+
+    /**
+     * Start building the pileup at a new locus, discarding anything added since the last build
+     *
+     * @param maxElements the most elements that will be added at this locus
+     */
+    public void startLocus(final int maxElements) {
+        if ( maxElements < 0 ) throw new IllegalArgumentException("maxElements must be >= 0 but got " + maxElements);
+        elements = new PileupElement[maxElements];
+        nElements = 0;
+        tracker = null;
+        currentSample = -1;
+    }
+
+    /**
+     * Start adding elements of the sample with index sampleIndex
+     *
+     * Samples must be started in increasing sample index order, each at most once per locus
+     *
+     * @param sampleIndex the index of the sample in the samples of this builder
+     */
+    public void startSample(final int sampleIndex) {
+        if ( elements == null ) throw new IllegalStateException("startLocus must be called before startSample");
+        if ( sampleIndex <= currentSample || sampleIndex >= samples.size() )
+            throw new IllegalArgumentException("Bad sample index " + sampleIndex + " after sample " + currentSample + " of " + samples.size());
+        finishSample();
+        currentSample = sampleIndex;
+        currentSampleStart = nElements;
+    }
+
+    /**
+     * Add element to the pileup of the current sample
+     *
+     * @param element a non-null pileup element
+     */
+    public void add(final PileupElement element) {
+        if ( currentSample == -1 ) throw new IllegalStateException("startSample must be called before add");
+        elements[nElements++] = element;
+    }
+
+    /**
+     * Get the number of elements added across all samples at this locus so far
+     * @return the number of elements
+     */
+    public int getNumberOfElements() {
+        return nElements;
+    }
+
+    /**
+     * Build the pileup at loc of the elements added since startLocus
+     *
+     * @param loc the location of the pileup
+     * @return a pileup with an element tracker for each sample with at least one element
+     */
+    public ReadBackedPileupImpl build(final GenomeLoc loc) {
+        if ( elements == null ) throw new IllegalStateException("startLocus must be called before build");
+        finishSample();
+        final PerSamplePileupElementTracker<PileupElement> pileupTracker =
+                tracker != null ? tracker : new PerSamplePileupElementTracker<PileupElement>(samples, sampleIndices);
+        elements = null;
+        tracker = null;
+        return new ReadBackedPileupImpl(loc, pileupTracker);
+    }
+
+    /**
+     * Give the elements added to the current sample, if any, to the tracker
+     */
+    private void finishSample() {
+        if ( currentSample != -1 && nElements > currentSampleStart ) {
+            if ( tracker == null )
+                tracker = new PerSamplePileupElementTracker<PileupElement>(samples, sampleIndices);
+            tracker.addElements(currentSample, new UnifiedPileupElementTracker<PileupElement>(elements, currentSampleStart, nElements));
+        }
+        currentSample = -1;
+    }
+}
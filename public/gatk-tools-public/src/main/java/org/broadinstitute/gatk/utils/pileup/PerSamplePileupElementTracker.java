@@ -0,0 +1,170 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.pileup;
+
+import org.apache.commons.collections.iterators.IteratorChain;
+
+import java.util.*;
+
+/**
+ * Tracks the pileup elements of each sample separately.
+ *
+ * Samples are kept in arrays indexed by a sample index, which LocusIteratorByState shares between the trackers of
+ * all of its pileups so that making the pileup at a locus doesn't need a map of its own.
+ *
+ * Samples are visited in sample index order: the order in which they were added, or the order of the shared sample
+ * list.  Pileups used to be keyed by a HashMap, so the order of samples, and of elements of different samples at the
+ * same offset, was that of the map; it is now that of the sample list, which is the same from run to run.
+ */
+class PerSamplePileupElementTracker<PE extends PileupElement> extends PileupElementTracker<PE> {
+    private final static int INITIAL_CAPACITY = 4;
+
+    /** The names of the samples, in sample index order; never modified if it's shared */
+    private final List<String> samples;
+
+    /** The index of each sample in samples; never modified if it's shared */
+    private final Map<String, Integer> sampleIndices;
+
+    /** Is this tracker sharing samples and sampleIndices with other trackers? */
+    private final boolean sharedSamples;
+
+    /** The elements of each sample, by sample index, or null if we have no elements for the sample */
+    private PileupElementTracker<PE>[] pileup;
+    private int size = 0;
+
+    @SuppressWarnings("unchecked")
+    public PerSamplePileupElementTracker() {
+        samples = new ArrayList<String>();
+        sampleIndices = new HashMap<String, Integer>();
+        sharedSamples = false;
+        pileup = newTrackerArray(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Create a tracker for the given samples, sharing samples and sampleIndices rather than copying them
+     *
+     * @param samples the names of the samples, which must not be changed while this tracker is in use
+     * @param sampleIndices the index of each sample in samples, which must not be changed while this tracker is in use
+     */
+    @SuppressWarnings("unchecked")
+    public PerSamplePileupElementTracker(final List<String> samples, final Map<String, Integer> sampleIndices) {
+        this.samples = samples;
+        this.sampleIndices = sampleIndices;
+        sharedSamples = true;
+        pileup = newTrackerArray(samples.size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <PE extends PileupElement> PileupElementTracker<PE>[] newTrackerArray(final int size) {
+        return (PileupElementTracker<PE>[])new PileupElementTracker<?>[size];
+    }
+
+    public PerSamplePileupElementTracker<PE> copy() {
+        PerSamplePileupElementTracker<PE> result = new PerSamplePileupElementTracker<PE>();
+        for (final String sample : getSamples())
+            result.addElements(sample, getElements(sample));
+
+        return result;
+    }
+
+    /**
+     * Gets a list of all the samples stored in this pileup.
+     * @return List of samples in this pileup, in sample index order.
+     */
+    public Collection<String> getSamples() {
+        final List<String> result = new ArrayList<String>(samples.size());
+        for ( int i = 0; i < samples.size(); i++ )
+            if ( pileup[i] != null )
+                result.add(samples.get(i));
+        return result;
+    }
+
+    public PileupElementTracker<PE> getElements(final String sample) {
+        final Integer index = sampleIndices.get(sample);
+        return index == null ? null : pileup[index];
+    }
+
+    public PileupElementTracker<PE> getElements(final Collection<String> selectSampleNames) {
+        PerSamplePileupElementTracker<PE> result = new PerSamplePileupElementTracker<PE>();
+        for (final String sample :  selectSampleNames) {
+            result.addElements(sample, getElements(sample));
+        }
+        return result;
+    }
+
+    public void addElements(final String sample, PileupElementTracker<PE> elements) {
+        Integer index = sampleIndices.get(sample);
+        if ( index == null ) {
+            if ( sharedSamples )
+                throw new IllegalArgumentException("Sample " + sample + " isn't one of the samples of this pileup");
+            index = samples.size();
+            samples.add(sample);
+            sampleIndices.put(sample, index);
+            if ( index == pileup.length )
+                pileup = Arrays.copyOf(pileup, 2 * pileup.length);
+        }
+        addElements(index, elements);
+    }
+
+    /**
+     * Set the elements of the sample with the given sample index
+     */
+    public void addElements(final int sampleIndex, PileupElementTracker<PE> elements) {
+        if ( pileup[sampleIndex] != null )
+            size -= pileup[sampleIndex].size();
+        pileup[sampleIndex] = elements;
+        size += elements.size();
+    }
+
+    public Iterator<PE> iterator() { return new MergingPileupElementIterator<PE>(this); }
+
+    public int size() {
+        return size;
+    }
+
+
+    @SuppressWarnings("unchecked")
+    public Iterable<PE> unorderedIterable() {
+        return new Iterable<PE>() {
+            @Override
+            public Iterator<PE> iterator() {
+                return new Iterator<PE>() {
+                    final private IteratorChain chain = new IteratorChain();
+
+                    { // initialize the chain with the unordered iterators of the per sample pileups
+                        for ( PileupElementTracker<PE> pet : pileup ) {
+                            if ( pet != null )
+                                chain.addIterator(pet.unorderedIterator());
+                        }
+                    }
+                    @Override public boolean hasNext() { return chain.hasNext(); }
+                    @Override public PE next() { return (PE)chain.next(); }
+                    @Override public void remove() { throw new UnsupportedOperationException("Cannot remove"); }
+                };
+            }
+        };
+    }
+}
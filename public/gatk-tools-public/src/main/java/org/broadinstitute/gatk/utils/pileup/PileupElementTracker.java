@@ -25,9 +25,7 @@
 
 package org.broadinstitute.gatk.utils.pileup;
 
-import org.apache.commons.collections.iterators.IteratorChain;
-
-import java.util.*;
+import java.util.Iterator;
 
 /**
  * Javadoc goes here.
@@ -53,102 +51,3 @@ abstract class PileupElementTracker<PE extends PileupElement> implements Iterabl
 
     public abstract PileupElementTracker<PE> copy();
 }
-
-class UnifiedPileupElementTracker<PE extends PileupElement> extends PileupElementTracker<PE> {
-    private final List<PE> pileup;
-
-    @Override
-    public UnifiedPileupElementTracker<PE> copy() {
-        UnifiedPileupElementTracker<PE> result = new UnifiedPileupElementTracker<PE>();
-        for(PE element : pileup)
-            result.add(element);
-        return result;
-    }
-
-    public UnifiedPileupElementTracker() { pileup = new LinkedList<PE>(); }
-    public UnifiedPileupElementTracker(List<PE> pileup) { this.pileup = pileup; }
-
-    public void add(PE element) {
-        pileup.add(element);
-    }
-
-    public PE get(int index) {
-        return pileup.get(index);
-    }
-
-    public int size() {
-        return pileup.size();
-    }
-
-    public Iterator<PE> iterator() { return pileup.iterator(); }
-    public Iterable<PE> unorderedIterable() { return this; }
-}
-
-class PerSamplePileupElementTracker<PE extends PileupElement> extends PileupElementTracker<PE> {
-    private final Map<String,PileupElementTracker<PE>> pileup;
-    private int size = 0;
-
-    public PerSamplePileupElementTracker() {
-        pileup = new HashMap<String,PileupElementTracker<PE>>();
-    }
-
-    public PerSamplePileupElementTracker<PE> copy() {
-        PerSamplePileupElementTracker<PE> result = new PerSamplePileupElementTracker<PE>();
-        for (Map.Entry<String, PileupElementTracker<PE>> entry : pileup.entrySet())
-            result.addElements(entry.getKey(), entry.getValue());
-
-        return result;
-    }
-
-    /**
-     * Gets a list of all the samples stored in this pileup.
-     * @return List of samples in this pileup.
-     */
-    public Collection<String> getSamples() {
-        return pileup.keySet();
-    }
-
-    public PileupElementTracker<PE> getElements(final String sample) {
-        return pileup.get(sample);
-    }
-
-    public PileupElementTracker<PE> getElements(final Collection<String> selectSampleNames) {
-        PerSamplePileupElementTracker<PE> result = new PerSamplePileupElementTracker<PE>();
-        for (final String sample :  selectSampleNames) {
-            result.addElements(sample, pileup.get(sample));
-        }
-        return result;
-    }
-
-    public void addElements(final String sample, PileupElementTracker<PE> elements) {
-        pileup.put(sample,elements);
-        size += elements.size();
-    }
-
-    public Iterator<PE> iterator() { return new MergingPileupElementIterator<PE>(this); }
-
-    public int size() {
-        return size;
-    }
-
-
-    public Iterable<PE> unorderedIterable() {
-        return new Iterable<PE>() {
-            @Override
-            public Iterator<PE> iterator() {
-                return new Iterator<PE>() {
-                    final private IteratorChain chain = new IteratorChain();
-
-                    { // initialize the chain with the unordered iterators of the per sample pileups
-                        for ( PileupElementTracker<PE> pet : pileup.values() ) {
-                            chain.addIterator(pet.unorderedIterator());
-                        }
-                    }
-                    @Override public boolean hasNext() { return chain.hasNext(); }
-                    @Override public PE next() { return (PE)chain.next(); }
-                    @Override public void remove() { throw new UnsupportedOperationException("Cannot remove"); }
-                };
-            }
-        };
-    }
-}
\ No newline at end of file
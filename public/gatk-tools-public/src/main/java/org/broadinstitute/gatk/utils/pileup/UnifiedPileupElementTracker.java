@@ -0,0 +1,113 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.pileup;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An array-backed tracker of pileup elements.
+ *
+ * The elements may be a slice of a larger array shared with other trackers, as when LocusIteratorByState lays
+ * out the elements of all samples in a single array.  The shared array is copied before any element is added.
+ */
+class UnifiedPileupElementTracker<PE extends PileupElement> extends PileupElementTracker<PE> {
+    private final static int INITIAL_CAPACITY = 10;
+
+    private PE[] pileup;
+    private int start;
+    private int size;
+
+    /** Is pileup shared with someone else, so that we must copy it before changing it? */
+    private boolean shared;
+
+    @Override
+    public UnifiedPileupElementTracker<PE> copy() {
+        UnifiedPileupElementTracker<PE> result = new UnifiedPileupElementTracker<PE>();
+        for(PE element : this)
+            result.add(element);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    public UnifiedPileupElementTracker() {
+        pileup = (PE[])new PileupElement[INITIAL_CAPACITY];
+    }
+
+    @SuppressWarnings("unchecked")
+    public UnifiedPileupElementTracker(List<PE> pileup) {
+        this.pileup = pileup.toArray((PE[])new PileupElement[pileup.size()]);
+        this.size = this.pileup.length;
+    }
+
+    /**
+     * Create a tracker of the elements pileup[start, stop), without copying them
+     */
+    public UnifiedPileupElementTracker(final PE[] pileup, final int start, final int stop) {
+        this.pileup = pileup;
+        this.start = start;
+        this.size = stop - start;
+        this.shared = true;
+    }
+
+    public void add(PE element) {
+        if ( shared || start + size == pileup.length ) {
+            pileup = Arrays.copyOfRange(pileup, start, start + Math.max(INITIAL_CAPACITY, 2 * size));
+            start = 0;
+            shared = false;
+        }
+        pileup[start + size++] = element;
+    }
+
+    public PE get(int index) {
+        if ( index < 0 || index >= size ) throw new IndexOutOfBoundsException("Index " + index + " out of bounds for pileup of size " + size);
+        return pileup[start + index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Iterator<PE> iterator() {
+        return new Iterator<PE>() {
+            private int next = 0;
+
+            @Override public boolean hasNext() { return next < size; }
+
+            @Override
+            public PE next() {
+                if ( next >= size ) throw new NoSuchElementException();
+                return pileup[start + next++];
+            }
+
+            @Override public void remove() { throw new UnsupportedOperationException("Cannot remove"); }
+        };
+    }
+
+    public Iterable<PE> unorderedIterable() { return this; }
+}
@@ -57,6 +57,11 @@ import java.util.List;
  * The optional file log an expanded set of metrics in tabular format
  * suitable for subsequent analysis in R.
  *
+ * The meter also owns a ProgressMetrics registry, to which it and other parts of the
+ * engine add gauges.  If a ProgressMetricsWriter is provided, the daemon thread exports
+ * snapshots of these metrics periodically, in a machine-readable format, without adding
+ * any work to notifyOfProgress().
+ *
  * This class is -- and MUST BE -- thread-safe for use in the GATK.  Multiple independent
  * threads executing processors will be calling notifyOfProgress() simultaneously and this
  * class does (and MUST) properly sort out the timings of logs without interlacing outputs
@@ -152,10 +157,31 @@ public class ProgressMeter {
      */
     private final PrintStream performanceLog;
 
+    /**
+     * The registry of metrics describing our progress, to which other components can add their own
+     */
+    private final ProgressMetrics metrics = new ProgressMetrics();
+
+    /**
+     * A potentially null writer to which we periodically export metrics
+     */
+    private final ProgressMetricsWriter metricsWriter;
+
+    /**
+     * When was the last time we exported metrics?  In milliseconds
+     */
+    private long lastMetricsExportTime = -1;
+
+    /**
+     * The progress snapshot taken for the last metrics export, read by the gauges of our own metrics
+     */
+    private volatile ProgressMeterData lastMetricsSnapshot = null;
+
     /** We use the SimpleTimer to time our run */
     private final SimpleTimer timer = new SimpleTimer();
 
     private GenomeLoc maxGenomeLoc = null;
+    private long maxLocus = Long.MIN_VALUE;
     private Position position = new Position(PositionStatus.STARTING);
     private long nTotalRecordsProcessed = 0;
 
@@ -179,16 +205,45 @@ public class ProgressMeter {
     public ProgressMeter(final File performanceLogFile,
                          final String processingUnitName,
                          final GenomeLocSortedSet processingIntervals) {
-        this(performanceLogFile, processingUnitName, processingIntervals, ProgressMeterDaemon.DEFAULT_POLL_FREQUENCY_MILLISECONDS);
+        this(performanceLogFile, null, processingUnitName, processingIntervals);
+    }
+
+    /**
+     * Create a new ProgressMeter exporting its metrics to metricsWriter
+     *
+     * Note that progress meter isn't started until the client calls start()
+     *
+     * @param performanceLogFile an optional performance log file where a table of performance logs will be written
+     * @param metricsWriter an optional writer to which metrics are periodically exported
+     * @param processingUnitName the name of the unit type being processed, suitable for saying X seconds per processingUnitName
+     * @param processingIntervals the intervals being processed
+     */
+    public ProgressMeter(final File performanceLogFile,
+                         final ProgressMetricsWriter metricsWriter,
+                         final String processingUnitName,
+                         final GenomeLocSortedSet processingIntervals) {
+        this(performanceLogFile, metricsWriter, processingUnitName, processingIntervals,
+                metricsWriter == null ? ProgressMeterDaemon.DEFAULT_POLL_FREQUENCY_MILLISECONDS
+                        : Math.min(ProgressMeterDaemon.DEFAULT_POLL_FREQUENCY_MILLISECONDS, metricsWriter.getIntervalMillis()));
+    }
+
+    protected ProgressMeter(final File performanceLogFile,
+                            final String processingUnitName,
+                            final GenomeLocSortedSet processingIntervals,
+                            final long pollingFrequency) {
+        this(performanceLogFile, null, processingUnitName, processingIntervals, pollingFrequency);
     }
 
     protected ProgressMeter(final File performanceLogFile,
+                            final ProgressMetricsWriter metricsWriter,
                             final String processingUnitName,
                             final GenomeLocSortedSet processingIntervals,
                             final long pollingFrequency) {
         if ( processingUnitName == null ) throw new IllegalArgumentException("processingUnitName cannot be null");
         if ( processingIntervals == null ) throw new IllegalArgumentException("Target intervals cannot be null");
 
+        this.metricsWriter = metricsWriter;
+
         this.processingUnitName = processingUnitName;
         this.regionsBeingProcessed = processingIntervals;
         this.processingUnitWidth = Math.max(processingUnitName.length(), "processed".length());
@@ -211,6 +266,8 @@ public class ProgressMeter {
         // cached for performance reasons
         targetSizeInBP = processingIntervals.coveredSize();
 
+        registerProgressMetrics();
+
         // start up the timer
         progressMeterDaemon = new ProgressMeterDaemon(this, pollingFrequency);
     }
@@ -219,6 +276,13 @@ public class ProgressMeter {
         return progressMeterDaemon;
     }
 
+    /**
+     * @return the registry of metrics describing this run, to which clients can add their own gauges
+     */
+    public ProgressMetrics getMetrics() {
+        return metrics;
+    }
+
     /**
      * Start up the progress meter, printing initialization message and starting up the
      * daemon thread for periodic printing.
@@ -294,12 +358,17 @@ public class ProgressMeter {
         if ( nTotalRecordsProcessed < 0 ) throw new IllegalArgumentException("nTotalRecordsProcessed must be >= 0");
         if ( loc.size() != 1 ) throw new IllegalArgumentException("GenomeLoc must have size == 1 but got " + loc);
 
-        // weird comparison to ensure that loc == null (in unmapped reads) is keep before maxGenomeLoc == null (on startup)
-        this.maxGenomeLoc = loc == null ? loc : (maxGenomeLoc == null ? loc : loc.max(maxGenomeLoc));
+        // compare packed loci, as we are called for every locus of a traversal
+        final long locus = PackedLocus.ofStart(loc);
+        if ( maxGenomeLoc == null || locus > maxLocus ) {
+            this.maxGenomeLoc = loc;
+            this.maxLocus = locus;
+        }
         this.nTotalRecordsProcessed = Math.max(this.nTotalRecordsProcessed, nTotalRecordsProcessed);
 
-        // a pretty name for our position
-        this.position = maxGenomeLoc == null ? new Position(PositionStatus.IN_UNMAPPED_READS) : new Position(maxGenomeLoc);
+        // a pretty name for our position, which is formatted from maxGenomeLoc only when printed
+        if ( position.type != PositionStatus.ON_GENOME )
+            this.position = new Position(maxGenomeLoc);
     }
 
     /**
@@ -432,6 +501,112 @@ public class ProgressMeter {
         return new ProgressMeterData(timer.getElapsedTime(), nTotalRecordsProcessed, bpProcessed);
     }
 
+    /**
+     * Export a snapshot of our metrics to the metrics writer, if we have one and an export is due
+     *
+     * Not synchronized on the meter while the gauges are read, so that gauges can safely take locks
+     * held by threads that are calling notifyOfProgress().  Export failures are logged, not thrown,
+     * as the metrics are not worth failing the run over.
+     *
+     * @param mustExport if true, metrics will be exported regardless of the last time we exported them
+     */
+    protected void exportMetrics(final boolean mustExport) {
+        if ( metricsWriter == null )
+            return;
+
+        synchronized (this) {
+            final long curTime = timer.currentTime();
+            if ( ! mustExport && curTime - lastMetricsExportTime < metricsWriter.getIntervalMillis() )
+                return;
+            lastMetricsExportTime = curTime;
+
+            // nothing processed yet is 0 bp done, not the end of processing
+            lastMetricsSnapshot = position.type == PositionStatus.STARTING
+                    ? new ProgressMeterData(timer.getElapsedTime(), nTotalRecordsProcessed, 0)
+                    : takeProgressSnapshot(maxGenomeLoc, nTotalRecordsProcessed);
+        }
+
+        try {
+            metricsWriter.write(metrics);
+        } catch ( UserException e ) {
+            logger.warn("Unable to export progress metrics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Register the metrics describing our progress, computed from the last metrics snapshot, and
+     * the heap and garbage collection metrics of the JVM
+     */
+    private void registerProgressMetrics() {
+        final String unit = ProgressMetrics.sanitizeName(processingUnitName);
+
+        metrics.register("gatk_elapsed_seconds", "Seconds since processing started", new SnapshotGauge() {
+            @Override protected double getValue(final ProgressMeterData data) { return data.getElapsedSeconds(); }
+        });
+        metrics.register("gatk_" + unit + "_processed", "Number of " + processingUnitName + " processed", new SnapshotGauge() {
+            @Override protected double getValue(final ProgressMeterData data) { return data.getUnitsProcessed(); }
+        });
+        metrics.register("gatk_" + unit + "_per_second", "Average number of " + processingUnitName + " processed per second", new SnapshotGauge() {
+            @Override protected double getValue(final ProgressMeterData data) { return perSecond(data.getUnitsProcessed(), data); }
+        });
+        metrics.register("gatk_bp_processed", "Number of bp of the target intervals processed", new SnapshotGauge() {
+            @Override protected double getValue(final ProgressMeterData data) { return data.getBpProcessed(); }
+        });
+        metrics.register("gatk_bp_per_second", "Average number of bp of the target intervals processed per second", new SnapshotGauge() {
+            @Override protected double getValue(final ProgressMeterData data) { return perSecond(data.getBpProcessed(), data); }
+        });
+        metrics.register("gatk_percent_complete", "Percent of the target intervals processed", new SnapshotGauge() {
+            @Override protected double getValue(final ProgressMeterData data) { return 100 * data.calculateFractionGenomeTargetCompleted(targetSizeInBP); }
+        });
+        metrics.register("gatk_estimated_total_seconds", "Estimated total runtime in seconds", new SnapshotGauge() {
+            @Override protected double getValue(final ProgressMeterData data) { return estimatedTotalSeconds(data); }
+        });
+        metrics.register("gatk_estimated_remaining_seconds", "Estimated runtime remaining in seconds", new SnapshotGauge() {
+            @Override protected double getValue(final ProgressMeterData data) { return estimatedTotalSeconds(data) - data.getElapsedSeconds(); }
+        });
+        metrics.register("gatk_done", "1 if processing is complete, 0 otherwise", new ProgressMetrics.Gauge() {
+            @Override public double getValue() { return position.type == PositionStatus.DONE ? 1 : 0; }
+        });
+
+        metrics.register("gatk_heap_used_bytes", "Bytes of heap currently in use", new ProgressMetrics.Gauge() {
+            @Override public double getValue() { return HeapSizeMonitor.getCurrentHeapUsed(); }
+        });
+        metrics.register("gatk_heap_max_bytes", "Maximum bytes the heap can grow to", new ProgressMetrics.Gauge() {
+            @Override public double getValue() { final long max = HeapSizeMonitor.getMaxHeapSize(); return max < 0 ? Double.NaN : max; }
+        });
+        metrics.register("gatk_gc_collections", "Total number of garbage collections", new ProgressMetrics.Gauge() {
+            @Override public double getValue() { return HeapSizeMonitor.getTotalGarbageCollectionCount(); }
+        });
+        metrics.register("gatk_gc_seconds", "Total seconds spent in garbage collection", new ProgressMetrics.Gauge() {
+            @Override public double getValue() { return HeapSizeMonitor.getTotalGarbageCollectionTimeMillis() / 1000.0; }
+        });
+    }
+
+    private static double perSecond(final long count, final ProgressMeterData data) {
+        return data.getElapsedSeconds() > 0 ? count / data.getElapsedSeconds() : Double.NaN;
+    }
+
+    /**
+     * @return the estimated total runtime in seconds, or NaN if we haven't made any progress to estimate it from
+     */
+    private double estimatedTotalSeconds(final ProgressMeterData data) {
+        final double fractionCompleted = data.calculateFractionGenomeTargetCompleted(targetSizeInBP);
+        return fractionCompleted > 0 ? data.getElapsedSeconds() / fractionCompleted : Double.NaN;
+    }
+
+    /**
+     * A gauge computed from the last metrics snapshot, NaN until the first one has been taken
+     */
+    private abstract class SnapshotGauge implements ProgressMetrics.Gauge {
+        @Override
+        public double getValue() {
+            final ProgressMeterData data = lastMetricsSnapshot;
+            return data == null ? Double.NaN : getValue(data);
+        }
+
+        protected abstract double getValue(final ProgressMeterData data);
+    }
+
     /**
      * Should be called when processing is done
      */
@@ -447,6 +622,11 @@ public class ProgressMeter {
         if ( performanceLog != null )
             performanceLog.close();
 
+        if ( metricsWriter != null ) {
+            exportMetrics(true);
+            metricsWriter.close();
+        }
+
         // shutdown our daemon thread
         progressMeterDaemon.done();
     }
@@ -0,0 +1,161 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.progressmeter;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * A registry of named numeric metrics describing a running GATK, suitable for export to a file
+ * in a machine-readable format by ProgressMetricsWriter
+ *
+ * Metrics are pull-based: each is a Gauge that computes its value only when a snapshot is taken,
+ * which happens every few seconds on the progress meter daemon thread.  Nothing is recorded on
+ * the traversal hot path, so registering a metric costs nothing while the GATK is working.
+ *
+ * Several gauges may be registered under the same name, for example one per traversal engine
+ * when running with -nt, in which case the value of the metric is the sum of their values.
+ *
+ * Names follow the Prometheus conventions, so that the metrics can be scraped without renaming.
+ *
+ * This class is thread-safe.
+ */
+public class ProgressMetrics {
+    /**
+     * A source of the current value of a metric
+     */
+    public interface Gauge {
+        /**
+         * @return the current value of this gauge, or Double.NaN if it isn't known
+         */
+        public double getValue();
+    }
+
+    private final static Pattern VALID_NAME = Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+
+    private final Map<String, Metric> metrics = new LinkedHashMap<String, Metric>();
+
+    /**
+     * Register gauge as a source of the metric called name
+     *
+     * @param name the name of the metric, must be a valid Prometheus metric name
+     * @param help a one line description of the metric
+     * @param gauge the source of the value of the metric
+     */
+    public synchronized void register(final String name, final String help, final Gauge gauge) {
+        if ( name == null || ! VALID_NAME.matcher(name).matches() ) throw new IllegalArgumentException("Invalid metric name " + name);
+        if ( help == null ) throw new IllegalArgumentException("help cannot be null");
+        if ( gauge == null ) throw new IllegalArgumentException("gauge cannot be null");
+
+        Metric metric = metrics.get(name);
+        if ( metric == null ) {
+            metric = new Metric(help);
+            metrics.put(name, metric);
+        }
+        synchronized (metric.gauges) {
+            metric.gauges.add(gauge);
+        }
+    }
+
+    /**
+     * @return the names of all registered metrics, in registration order
+     */
+    public synchronized List<String> getNames() {
+        return new ArrayList<String>(metrics.keySet());
+    }
+
+    /**
+     * @param name the name of a registered metric
+     * @return the help text of the metric called name
+     */
+    public synchronized String getHelp(final String name) {
+        final Metric metric = metrics.get(name);
+        if ( metric == null ) throw new IllegalArgumentException("No metric named " + name);
+        return metric.help;
+    }
+
+    /**
+     * Get the current value of all registered metrics
+     *
+     * @return a map from metric name to value, in registration order
+     */
+    public Map<String, Double> snapshot() {
+        final Map<String, Metric> toRead;
+        synchronized (this) {
+            toRead = new LinkedHashMap<String, Metric>(metrics);
+        }
+
+        // read the gauges outside of our lock, as they may have to acquire locks of their own
+        final Map<String, Double> values = new LinkedHashMap<String, Double>(toRead.size());
+        for ( final Map.Entry<String, Metric> entry : toRead.entrySet() )
+            values.put(entry.getKey(), entry.getValue().getValue());
+        return values;
+    }
+
+    /**
+     * Turn name into a valid metric name by replacing every character not allowed in one with _
+     *
+     * @param name a non-null, non-empty name
+     * @return a valid metric name
+     */
+    public static String sanitizeName(final String name) {
+        if ( name == null || name.isEmpty() ) throw new IllegalArgumentException("name cannot be null or empty");
+
+        final StringBuilder sb = new StringBuilder(name.length() + 1);
+        if ( Character.isDigit(name.charAt(0)) )
+            sb.append('_');
+        for ( int i = 0; i < name.length(); i++ ) {
+            final char c = name.charAt(i);
+            final boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == ':';
+            sb.append(valid ? c : '_');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A metric and all of the gauges contributing to its value
+     */
+    private static class Metric {
+        final String help;
+        final List<Gauge> gauges = new ArrayList<Gauge>(1);
+
+        private Metric(final String help) {
+            this.help = help;
+        }
+
+        private double getValue() {
+            final Gauge[] toRead;
+            synchronized (gauges) {
+                toRead = gauges.toArray(new Gauge[gauges.size()]);
+            }
+
+            double sum = 0.0;
+            for ( final Gauge gauge : toRead )
+                sum += gauge.getValue();
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.progressmeter;
+
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+/**
+ * Writes snapshots of ProgressMetrics to a file in a machine-readable format
+ *
+ * Two formats are supported:
+ *
+ *      -- JSON_LINES appends one JSON object per snapshot to the file, containing the time of the
+ *         snapshot in milliseconds since the epoch and the value of every metric.  Unknown and
+ *         infinite values are written as null
+ *      -- PROMETHEUS rewrites the file with each snapshot in the Prometheus text exposition
+ *         format, so that it can be picked up by the node exporter textfile collector.  The file
+ *         is replaced atomically, so a reader never sees a partially written snapshot
+ *
+ * This class is thread-safe.
+ */
+public class ProgressMetricsWriter {
+    public enum Format {
+        /** One JSON object per line, appended with each snapshot */
+        JSON_LINES,
+        /** Prometheus text exposition format, rewritten with each snapshot */
+        PROMETHEUS
+    }
+
+    private final File file;
+    private final Format format;
+    private final long intervalMillis;
+
+    /**
+     * The stream we are appending JSON lines to, or null when writing PROMETHEUS
+     */
+    private final PrintStream jsonOut;
+
+    private boolean closed = false;
+
+    /**
+     * Create a new writer of metrics snapshots to file
+     *
+     * @param file the file to write to, will be overwritten if it exists
+     * @param format the format to write snapshots in
+     * @param intervalMillis how often, in milliseconds, snapshots should be written
+     */
+    public ProgressMetricsWriter(final File file, final Format format, final long intervalMillis) {
+        if ( file == null ) throw new IllegalArgumentException("file cannot be null");
+        if ( format == null ) throw new IllegalArgumentException("format cannot be null");
+        if ( intervalMillis <= 0 ) throw new IllegalArgumentException("intervalMillis must be > 0 but got " + intervalMillis);
+
+        this.file = file;
+        this.format = format;
+        this.intervalMillis = intervalMillis;
+
+        if ( format == Format.JSON_LINES ) {
+            try {
+                jsonOut = new PrintStream(new FileOutputStream(file));
+            } catch ( FileNotFoundException e ) {
+                throw new UserException.CouldNotCreateOutputFile(file, e);
+            }
+        } else {
+            jsonOut = null;
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * @return how often, in milliseconds, snapshots should be written
+     */
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * Write a snapshot of the current values of metrics
+     *
+     * Snapshots written after this writer has been closed are ignored, so that a periodic export
+     * racing with the final one at the end of the run is harmless.
+     *
+     * @param metrics the metrics to write
+     * @throws UserException.CouldNotCreateOutputFile if the snapshot can't be written
+     */
+    public synchronized void write(final ProgressMetrics metrics) {
+        if ( metrics == null ) throw new IllegalArgumentException("metrics cannot be null");
+        if ( closed )
+            return;
+
+        final Map<String, Double> values = metrics.snapshot();
+        if ( format == Format.JSON_LINES ) {
+            jsonOut.println(toJSONLine(System.currentTimeMillis(), values));
+            if ( jsonOut.checkError() )
+                throw new UserException.CouldNotCreateOutputFile(file, "an I/O error occurred writing metrics");
+        } else {
+            writePrometheus(metrics, values);
+        }
+    }
+
+    /**
+     * Close this writer.  Snapshots written after it has been closed are ignored
+     */
+    public synchronized void close() {
+        if ( ! closed ) {
+            closed = true;
+            if ( jsonOut != null )
+                jsonOut.close();
+        }
+    }
+
+    /**
+     * Replace file with the Prometheus text format rendering of values, via a temporary file
+     * in the same directory that is then moved over file
+     */
+    private void writePrometheus(final ProgressMetrics metrics, final Map<String, Double> values) {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        final File tmp = new File(parent, "." + file.getName() + ".tmp");
+        try {
+            final PrintStream out = new PrintStream(new FileOutputStream(tmp));
+            try {
+                out.print(toPrometheusText(metrics, values));
+            } finally {
+                out.close();
+            }
+            if ( out.checkError() )
+                throw new IOException("an I/O error occurred writing " + tmp);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch ( IOException e ) {
+            throw new UserException.CouldNotCreateOutputFile(file, e);
+        }
+    }
+
+    /**
+     * @param timestamp the time of the snapshot, in milliseconds since the epoch
+     * @param values the value of each metric
+     * @return a single line JSON object containing timestamp and values
+     */
+    protected static String toJSONLine(final long timestamp, final Map<String, Double> values) {
+        final StringBuilder sb = new StringBuilder(32 * (values.size() + 1));
+        sb.append("{\"timestamp\":").append(timestamp);
+        for ( final Map.Entry<String, Double> entry : values.entrySet() ) {
+            // metric names can't contain characters that need escaping in JSON
+            sb.append(",\"").append(entry.getKey()).append("\":");
+            final double value = entry.getValue();
+            sb.append(Double.isNaN(value) || Double.isInfinite(value) ? "null" : formatValue(value));
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * @param metrics the metrics providing the help text
+     * @param values the value of each metric
+     * @return the Prometheus text format rendering of values, with every metric typed as a gauge
+     */
+    protected static String toPrometheusText(final ProgressMetrics metrics, final Map<String, Double> values) {
+        final StringBuilder sb = new StringBuilder(96 * values.size());
+        for ( final Map.Entry<String, Double> entry : values.entrySet() ) {
+            final String name = entry.getKey();
+            final double value = entry.getValue();
+            sb.append("# HELP ").append(name).append(' ').append(escapeHelp(metrics.getHelp(name))).append('\n');
+            sb.append("# TYPE ").append(name).append(" gauge\n");
+            sb.append(name).append(' ');
+            if ( Double.isNaN(value) )
+                sb.append("NaN");
+            else if ( Double.isInfinite(value) )
+                sb.append(value > 0 ? "+Inf" : "-Inf");
+            else
+                sb.append(formatValue(value));
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Format a finite value, without a fractional part or exponent if it is a reasonably sized integer
+     */
+    private static String formatValue(final double value) {
+        if ( value == Math.rint(value) && Math.abs(value) < 1e15 )
+            return Long.toString((long)value);
+        else
+            return Double.toString(value);
+    }
+
+    /**
+     * Escape backslashes and newlines in help text, as required by the Prometheus text format
+     */
+    private static String escapeHelp(final String help) {
+        return help.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,491 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.smithwaterman;
+
+import htsjdk.samtools.Cigar;
+import htsjdk.samtools.CigarElement;
+import htsjdk.samtools.CigarOperator;
+import org.broadinstitute.gatk.utils.sam.AlignmentUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reusable Smith-Waterman aligner that keeps only two rows of scores and one byte of traceback per cell
+ *
+ * ************************************************************************
+ * ****                    IMPORTANT NOTE:                             ****
+ * ****  This class assumes that all bytes come from UPPERCASED chars! ****
+ * ************************************************************************
+ *
+ * Without a band, the alignments are exactly those of {@link SWPairwiseAlignment} with the same parameters and
+ * overhang strategy: the recurrence, the tie breaking and the traceback are the same. The differences are in
+ * how the work is laid out:
+ *
+ * - scores live in two primitive rows of the alternate sequence length instead of a full int matrix, and the
+ *   backtrack matrix is replaced by one byte per cell holding the step taken and whether each gap was opened
+ *   or extended there; gap lengths are recovered by walking those bits during the traceback.
+ * - the match/mismatch scores of each reference base against the whole alternate sequence are computed once per
+ *   alignment (a query profile), so the inner loop has no base comparison.
+ * - the buffers are kept between alignments, so aligning many reads against the same haplotype with
+ *   {@link #alignAll} allocates almost nothing.
+ * - optionally, only the cells within a band of diagonals around the expected alignment offset are computed,
+ *   which makes each alignment linear in the length of the sequences. Paths leaving the band are not considered.
+ *
+ * Instances are not thread safe.
+ */
+public final class LinearSpaceSWAligner {
+
+    /**
+     * Band width value that disables banding.
+     */
+    public static final int NO_BAND = -1;
+
+    // never let matrix elements drop below this cutoff, same as SWPairwiseAlignment.
+    private static final int MATRIX_MIN_CUTOFF = (int) -1e8;
+
+    // score of the cells outside the band, and initial value of the best gaps.
+    private static final int LOW_INIT_VALUE = Integer.MIN_VALUE / 2;
+
+    // traceback byte layout: the step taken in the two low bits, then whether the vertical and horizontal
+    // gaps ending in the cell extend the gap ending in the previous cell (rather than being opened there).
+    private static final byte STEP_DIAGONAL = 0;
+    private static final byte STEP_RIGHT = 1;
+    private static final byte STEP_DOWN = 2;
+    private static final int STEP_MASK = 3;
+    private static final int VERTICAL_EXTENDED = 4;
+    private static final int HORIZONTAL_EXTENDED = 8;
+
+    private final Parameters parameters;
+    private final SWPairwiseAlignment.OVERHANG_STRATEGY overhangStrategy;
+
+    // reusable buffers, grown on demand.
+    private int[] previousRow = new int[0];
+    private int[] currentRow = new int[0];
+    private int[] bestGapVertical = new int[0];
+    private int[] lastColumn = new int[0];
+    private byte[] traceback = new byte[0];
+    private final int[][] profile = new int[256][];
+    private final boolean[] profileIsSet = new boolean[256];
+
+    // geometry of the alignment being computed: diagonals (reference position - alternate position) in
+    // [lowDiagonal, highDiagonal] are computed, and the traceback of row i starts at column max(0, i - highDiagonal).
+    private int lowDiagonal, highDiagonal, tracebackStride;
+
+    /**
+     * Create a new aligner
+     *
+     * @param parameters the SW parameters to use
+     * @param overhangStrategy the overhang strategy to use
+     */
+    public LinearSpaceSWAligner(final Parameters parameters, final SWPairwiseAlignment.OVERHANG_STRATEGY overhangStrategy) {
+        if ( parameters == null ) throw new IllegalArgumentException("parameters cannot be null");
+        if ( overhangStrategy == null ) throw new IllegalArgumentException("overhangStrategy cannot be null");
+        this.parameters = parameters;
+        this.overhangStrategy = overhangStrategy;
+    }
+
+    /**
+     * Create a new aligner
+     *
+     * @param namedParameters the named parameter set to get our parameters from
+     * @param overhangStrategy the overhang strategy to use
+     */
+    public LinearSpaceSWAligner(final SWParameterSet namedParameters, final SWPairwiseAlignment.OVERHANG_STRATEGY overhangStrategy) {
+        this(namedParameters.parameters, overhangStrategy);
+    }
+
+    /**
+     * Does this aligner score with the given parameters and overhang strategy?
+     *
+     * @param parameters the SW parameters
+     * @param overhangStrategy the overhang strategy
+     * @return true if aligning with this aligner is the same as with a new aligner with these settings
+     */
+    boolean hasSettings(final Parameters parameters, final SWPairwiseAlignment.OVERHANG_STRATEGY overhangStrategy) {
+        return this.overhangStrategy == overhangStrategy
+                && this.parameters.w_match == parameters.w_match
+                && this.parameters.w_mismatch == parameters.w_mismatch
+                && this.parameters.w_open == parameters.w_open
+                && this.parameters.w_extend == parameters.w_extend;
+    }
+
+    /**
+     * Aligns the alternate sequence to the reference sequence over the full matrix
+     *
+     * @param reference  ref sequence
+     * @param alternate  alt sequence
+     * @return a non-null alignment
+     */
+    public SmithWaterman align(final byte[] reference, final byte[] alternate) {
+        return align(reference, alternate, 0, NO_BAND);
+    }
+
+    /**
+     * Aligns the alternate sequence to the reference sequence, only considering alignments that stay close to
+     * an expected offset
+     *
+     * The band contains the cells whose diagonal (reference position minus alternate position) is within
+     * {@code bandWidth} of {@code expectedOffset}. The expected offset is clamped so that the band can reach the
+     * end of the alternate sequence, and with the INDEL and LEADING_INDEL strategies the band is widened to include
+     * the corners the alignment must go through.
+     *
+     * @param reference  ref sequence
+     * @param alternate  alt sequence
+     * @param expectedOffset expected start of the alternate sequence in the reference sequence
+     * @param bandWidth maximum distance from the expected diagonal, or {@link #NO_BAND} to align over the full matrix
+     * @return a non-null alignment
+     */
+    public SmithWaterman align(final byte[] reference, final byte[] alternate, final int expectedOffset, final int bandWidth) {
+        if ( reference == null || reference.length == 0 || alternate == null || alternate.length == 0 )
+            throw new IllegalArgumentException("Non-null, non-empty sequences are required for the Smith-Waterman calculation");
+        if ( bandWidth < 0 && bandWidth != NO_BAND )
+            throw new IllegalArgumentException("bandWidth must be >= 0 or NO_BAND but got " + bandWidth);
+
+        setBand(reference.length, alternate.length, expectedOffset, bandWidth);
+        ensureCapacity(reference.length, alternate.length);
+        calculateMatrix(reference, alternate);
+        return calculateCigar(reference.length, alternate.length);
+    }
+
+    /**
+     * Aligns many alternate sequences, typically reads, against the same reference sequence, typically a haplotype
+     *
+     * @param reference  ref sequence
+     * @param alternates alt sequences
+     * @return the alignments, in the same order as {@code alternates}
+     */
+    public List<SmithWaterman> alignAll(final byte[] reference, final List<byte[]> alternates) {
+        return alignAll(reference, alternates, null, NO_BAND);
+    }
+
+    /**
+     * Aligns many alternate sequences against the same reference sequence, each within a band around its own
+     * expected offset
+     *
+     * @param reference  ref sequence
+     * @param alternates alt sequences
+     * @param expectedOffsets expected start of each alternate sequence in the reference; may be {@code null}
+     *                        only if {@code bandWidth} is {@link #NO_BAND}
+     * @param bandWidth maximum distance from the expected diagonal, or {@link #NO_BAND}
+     * @return the alignments, in the same order as {@code alternates}
+     */
+    public List<SmithWaterman> alignAll(final byte[] reference, final List<byte[]> alternates, final int[] expectedOffsets, final int bandWidth) {
+        if ( alternates == null ) throw new IllegalArgumentException("alternates cannot be null");
+        if ( bandWidth != NO_BAND && (expectedOffsets == null || expectedOffsets.length != alternates.size()) )
+            throw new IllegalArgumentException("a banded alignment needs one expected offset per alternate sequence");
+
+        final List<SmithWaterman> result = new ArrayList<>(alternates.size());
+        for ( int i = 0; i < alternates.size(); i++ )
+            result.add(align(reference, alternates.get(i), bandWidth == NO_BAND ? 0 : expectedOffsets[i], bandWidth));
+        return result;
+    }
+
+    private void setBand(final int n, final int m, final int expectedOffset, final int bandWidth) {
+        if ( bandWidth == NO_BAND ) {
+            lowDiagonal = -m;
+            highDiagonal = n;
+        } else {
+            // keep at least one cell of the last column in the band.
+            final int center = Math.max(1 - m, Math.min(n - m, expectedOffset));
+            lowDiagonal = center - bandWidth;
+            highDiagonal = center + bandWidth;
+            if ( overhangStrategy == SWPairwiseAlignment.OVERHANG_STRATEGY.INDEL || overhangStrategy == SWPairwiseAlignment.OVERHANG_STRATEGY.LEADING_INDEL ) {
+                lowDiagonal = Math.min(lowDiagonal, Math.min(0, n - m));
+                highDiagonal = Math.max(highDiagonal, Math.max(0, n - m));
+            }
+            lowDiagonal = Math.max(lowDiagonal, -m);
+            highDiagonal = Math.min(highDiagonal, n);
+        }
+        tracebackStride = Math.min(m, highDiagonal - lowDiagonal) + 1;
+    }
+
+    // must be called after setBand, which determines the size of the traceback.
+    private void ensureCapacity(final int n, final int m) {
+        if ( previousRow.length < m + 1 ) {
+            previousRow = new int[m + 1];
+            currentRow = new int[m + 1];
+            bestGapVertical = new int[m + 1];
+        }
+        if ( lastColumn.length < n + 1 )
+            lastColumn = new int[n + 1];
+        final long tracebackSize = (long) (n + 1) * tracebackStride;
+        if ( tracebackSize > Integer.MAX_VALUE )
+            throw new IllegalArgumentException("Sequences are too long for the Smith-Waterman calculation: " + n + " x " + m);
+        if ( traceback.length < tracebackSize )
+            traceback = new byte[(int) tracebackSize];
+    }
+
+    private int tracebackIndex(final int i, final int j) {
+        return i * tracebackStride + j - Math.max(0, i - highDiagonal);
+    }
+
+    // the match/mismatch scores of a reference base against every position of the alternate sequence.
+    private int[] profileRow(final byte referenceBase, final byte[] alternate) {
+        final int b = referenceBase & 0xFF;
+        if ( ! profileIsSet[b] ) {
+            int[] row = profile[b];
+            if ( row == null || row.length < alternate.length + 1 )
+                row = profile[b] = new int[previousRow.length];
+            for ( int j = 1; j <= alternate.length; j++ )
+                row[j] = alternate[j - 1] == referenceBase ? parameters.w_match : parameters.w_mismatch;
+            profileIsSet[b] = true;
+        }
+        return profile[b];
+    }
+
+    /**
+     * Same recurrence as {@link SWPairwiseAlignment#calculateMatrix}, computed row by row over the band
+     */
+    private void calculateMatrix(final byte[] reference, final byte[] alternate) {
+        final int n = reference.length;
+        final int m = alternate.length;
+        final int w_open = parameters.w_open;
+        final int w_extend = parameters.w_extend;
+        final boolean edgeGaps = overhangStrategy == SWPairwiseAlignment.OVERHANG_STRATEGY.INDEL || overhangStrategy == SWPairwiseAlignment.OVERHANG_STRATEGY.LEADING_INDEL;
+        Arrays.fill(profileIsSet, false);
+
+        int[] lastRow = previousRow;
+        int[] curRow = currentRow;
+        final int[] best_gap_v = bestGapVertical;
+        Arrays.fill(best_gap_v, 0, m + 1, LOW_INIT_VALUE);
+
+        // initialize the first row; it is never banded.
+        lastRow[0] = 0;
+        if ( edgeGaps ) {
+            int currentValue = w_open;
+            lastRow[1] = currentValue;
+            for ( int j = 2; j <= m; j++ ) {
+                currentValue += w_extend;
+                lastRow[j] = currentValue;
+            }
+        } else
+            Arrays.fill(lastRow, 1, m + 1, 0);
+
+        int firstColumnValue = 0;
+        for ( int i = 1; i <= n; i++ ) {
+            // first column, never banded either.
+            if ( edgeGaps )
+                firstColumnValue = i == 1 ? w_open : firstColumnValue + w_extend;
+            curRow[0] = firstColumnValue;
+
+            final int jStart = Math.max(1, i - highDiagonal);
+            final int jEnd = Math.min(m, i - lowDiagonal);
+            if ( jStart > 1 && jStart <= m + 1 )
+                curRow[jStart - 1] = LOW_INIT_VALUE;
+            final int[] scores = profileRow(reference[i - 1], alternate);
+            final int rowOffset = tracebackIndex(i, 0);
+
+            int best_gap_h = LOW_INIT_VALUE;
+            for ( int j = jStart; j <= jEnd; j++ ) {
+                final int step_diag = lastRow[j - 1] + scores[j];
+                int trace;
+
+                // see SWPairwiseAlignment for the optimized traversal of the gaps; it only works for linear
+                // gap penalties w(k) = wopen + (k-1) * wextend.
+                int prev_gap = lastRow[j] + w_open;
+                int gap = best_gap_v[j] + w_extend;
+                if ( prev_gap > gap ) {
+                    gap = prev_gap;
+                    trace = 0;
+                } else
+                    trace = VERTICAL_EXTENDED;
+                best_gap_v[j] = gap;
+                final int step_down = gap;
+
+                prev_gap = curRow[j - 1] + w_open;
+                best_gap_h += w_extend;
+                if ( prev_gap > best_gap_h )
+                    best_gap_h = prev_gap;
+                else
+                    trace |= HORIZONTAL_EXTENDED;
+                final int step_right = best_gap_h;
+
+                //priority here will be step diagonal, step right, step down
+                if ( step_diag >= step_down && step_diag >= step_right ) {
+                    curRow[j] = Math.max(MATRIX_MIN_CUTOFF, step_diag);
+                    trace |= STEP_DIAGONAL;
+                } else if ( step_right >= step_down ) {
+                    curRow[j] = Math.max(MATRIX_MIN_CUTOFF, step_right);
+                    trace |= STEP_RIGHT;
+                } else {
+                    curRow[j] = Math.max(MATRIX_MIN_CUTOFF, step_down);
+                    trace |= STEP_DOWN;
+                }
+                traceback[rowOffset + j] = (byte) trace;
+            }
+            // the next row reads this one up to column jEnd + 1.
+            if ( jEnd < m )
+                curRow[Math.max(1, jEnd + 1)] = LOW_INIT_VALUE;
+            lastColumn[i] = jEnd == m ? curRow[m] : LOW_INIT_VALUE;
+
+            final int[] swap = lastRow;
+            lastRow = curRow;
+            curRow = swap;
+        }
+        // keep the bottom row in previousRow, with nothing left over from earlier rows outside the band.
+        if ( n - highDiagonal > 1 )
+            Arrays.fill(lastRow, 1, Math.min(m + 1, n - highDiagonal), LOW_INIT_VALUE);
+        if ( n - lowDiagonal < m )
+            Arrays.fill(lastRow, Math.max(1, n - lowDiagonal + 1), m + 1, LOW_INIT_VALUE);
+        previousRow = lastRow;
+        currentRow = curRow;
+    }
+
+    // number of consecutive cells, ending in (i,j), that the vertical gap arriving at (i,j) spans.
+    private int verticalGapLength(final int i, final int j) {
+        int length = 1;
+        for ( int row = i; row > 1 && row - 1 >= j + lowDiagonal && (traceback[tracebackIndex(row, j)] & VERTICAL_EXTENDED) != 0; row-- )
+            length++;
+        return length;
+    }
+
+    // number of consecutive cells, ending in (i,j), that the horizontal gap arriving at (i,j) spans.
+    private int horizontalGapLength(final int i, final int j) {
+        final int jStart = Math.max(1, i - highDiagonal);
+        int length = 1;
+        for ( int column = j; column > jStart && (traceback[tracebackIndex(i, column)] & HORIZONTAL_EXTENDED) != 0; column-- )
+            length++;
+        return length;
+    }
+
+    /**
+     * Same traceback as {@link SWPairwiseAlignment#calculateCigar}, reading the compact traceback
+     */
+    private SmithWaterman calculateCigar(final int refLength, final int altLength) {
+        // p holds the position we start backtracking from; we will be assembling a cigar in the backwards order
+        int p1 = 0, p2 = 0;
+
+        int maxscore = Integer.MIN_VALUE; // sw scores are allowed to be negative
+        int segment_length = 0; // length of the segment (continuous matches, insertions or deletions)
+
+        // if we want to consider overhangs as legitimate operators, then just start from the corner of the matrix
+        if ( overhangStrategy == SWPairwiseAlignment.OVERHANG_STRATEGY.INDEL ) {
+            p1 = refLength;
+            p2 = altLength;
+        } else {
+            // look for the largest score on the rightmost column, then for a larger score on the bottom-most row.
+            p2 = altLength;
+            for ( int i = 1; i <= refLength; i++ ) {
+                final int curScore = lastColumn[i];
+                if ( curScore >= maxscore ) {
+                    p1 = i;
+                    maxscore = curScore;
+                }
+            }
+            if ( overhangStrategy != SWPairwiseAlignment.OVERHANG_STRATEGY.LEADING_INDEL ) {
+                final int[] bottomRow = previousRow;
+                for ( int j = 1; j <= altLength; j++ ) {
+                    final int curScore = bottomRow[j];
+                    if ( curScore > maxscore ||
+                            (curScore == maxscore && Math.abs(refLength - j) < Math.abs(p1 - p2)) ) {
+                        p1 = refLength;
+                        p2 = j;
+                        maxscore = curScore;
+                        segment_length = altLength - j; // end of sequence 2 is overhanging; we will just record it as 'M' segment
+                    }
+                }
+            }
+        }
+        final List<CigarElement> lce = new ArrayList<>(5);
+        if ( segment_length > 0 && overhangStrategy == SWPairwiseAlignment.OVERHANG_STRATEGY.SOFTCLIP ) {
+            lce.add(new CigarElement(segment_length, CigarOperator.S));
+            segment_length = 0;
+        }
+
+        // we will be placing all insertions and deletions into sequence b, so the operators are named w/regard
+        // to that sequence
+        CigarOperator state = CigarOperator.M;
+        do {
+            final int step = traceback[tracebackIndex(p1, p2)] & STEP_MASK;
+            final CigarOperator new_state;
+            final int step_length;
+            if ( step == STEP_DOWN ) {
+                new_state = CigarOperator.D;
+                step_length = verticalGapLength(p1, p2);
+                p1 -= step_length;
+            } else if ( step == STEP_RIGHT ) {
+                new_state = CigarOperator.I;
+                step_length = horizontalGapLength(p1, p2);
+                p2 -= step_length;
+            } else {
+                new_state = CigarOperator.M;
+                step_length = 1;
+                p1--;
+                p2--;
+            }
+
+            if ( new_state == state ) segment_length += step_length;
+            else {
+                lce.add(new CigarElement(segment_length, state));
+                segment_length = step_length;
+                state = new_state;
+            }
+        } while ( p1 > 0 && p2 > 0 );
+
+        // see SWPairwiseAlignment for how the overhangs are reported with each strategy.
+        final int alignment_offset;
+        if ( overhangStrategy == SWPairwiseAlignment.OVERHANG_STRATEGY.SOFTCLIP ) {
+            lce.add(new CigarElement(segment_length, state));
+            if ( p2 > 0 ) lce.add(new CigarElement(p2, CigarOperator.S));
+            alignment_offset = p1;
+        } else if ( overhangStrategy == SWPairwiseAlignment.OVERHANG_STRATEGY.IGNORE ) {
+            lce.add(new CigarElement(segment_length + p2, state));
+            alignment_offset = p1 - p2;
+        } else {
+            lce.add(new CigarElement(segment_length, state));
+            if ( p1 > 0 )
+                lce.add(new CigarElement(p1, CigarOperator.D));
+            else if ( p2 > 0 )
+                lce.add(new CigarElement(p2, CigarOperator.I));
+            alignment_offset = 0;
+        }
+
+        Collections.reverse(lce);
+        return new Result(AlignmentUtils.consolidateCigar(new Cigar(lce)), alignment_offset);
+    }
+
+    /**
+     * Result of a single alignment
+     */
+    private static final class Result implements SmithWaterman {
+        private final Cigar cigar;
+        private final int alignmentOffset;
+
+        private Result(final Cigar cigar, final int alignmentOffset) {
+            this.cigar = cigar;
+            this.alignmentOffset = alignmentOffset;
+        }
+
+        @Override
+        public Cigar getCigar() { return cigar; }
+
+        @Override
+        public int getAlignmentStart2wrt1() { return alignmentOffset; }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.smithwaterman;
+
+/**
+ * The available Smith-Waterman implementations
+ *
+ * Lets callers pick an implementation while only depending on the {@link SmithWaterman} interface.
+ */
+public enum SWImplementation {
+    /* Full score and backtrack matrices, see SWPairwiseAlignment */
+    FULL_MATRIX {
+        @Override
+        public SmithWaterman align(final byte[] reference, final byte[] alternate, final Parameters parameters, final SWPairwiseAlignment.OVERHANG_STRATEGY strategy) {
+            return new SWPairwiseAlignment(reference, alternate, parameters, strategy);
+        }
+    },
+    /* Two rows of scores and one byte of traceback per cell, see LinearSpaceSWAligner; gives the same alignments as FULL_MATRIX */
+    LINEAR_SPACE {
+        /* The last aligner used by each thread, whose buffers are reused as long as the settings don't change */
+        private final ThreadLocal<LinearSpaceSWAligner> aligners = new ThreadLocal<>();
+
+        @Override
+        public SmithWaterman align(final byte[] reference, final byte[] alternate, final Parameters parameters, final SWPairwiseAlignment.OVERHANG_STRATEGY strategy) {
+            LinearSpaceSWAligner aligner = aligners.get();
+            if ( aligner == null || ! aligner.hasSettings(parameters, strategy) ) {
+                aligner = new LinearSpaceSWAligner(parameters, strategy);
+                aligners.set(aligner);
+            }
+            return aligner.align(reference, alternate);
+        }
+    };
+
+    /**
+     * Aligns the alternate sequence to the reference sequence
+     *
+     * @param reference  ref sequence
+     * @param alternate  alt sequence
+     * @param parameters the SW parameters to use
+     * @param strategy   the overhang strategy to use
+     * @return a non-null alignment
+     */
+    public abstract SmithWaterman align(final byte[] reference, final byte[] alternate, final Parameters parameters, final SWPairwiseAlignment.OVERHANG_STRATEGY strategy);
+}
@@ -147,6 +147,22 @@ public class SWPairwiseAlignment implements SmithWaterman {
         align(seq1, seq2);
     }
 
+    /**
+     * Create a new SW pairwise aligner
+     *
+     * After creating the object the two sequences are aligned with an internal call to align(seq1, seq2)
+     *
+     * @param seq1 the first sequence we want to align
+     * @param seq2 the second sequence we want to align
+     * @param parameters the SW parameters to use
+     * @param strategy   the overhang strategy to use
+     */
+    public SWPairwiseAlignment(final byte[] seq1, final byte[] seq2, final Parameters parameters, final OVERHANG_STRATEGY strategy) {
+        this(parameters);
+        overhang_strategy = strategy;
+        align(seq1, seq2);
+    }
+
     /**
      * Create a new SW pairwise aligner, without actually doing any alignment yet
      *
@@ -0,0 +1,620 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.variant;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.tribble.BasicFeature;
+import htsjdk.tribble.FeatureReader;
+import htsjdk.tribble.index.IndexCreator;
+import htsjdk.variant.bcf2.BCF2Codec;
+import htsjdk.variant.bcf2.BCF2Utils;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.writer.Options;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.variantcontext.writer.VariantContextWriterFactory;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFContigHeaderLine;
+import htsjdk.variant.vcf.VCFHeader;
+import org.apache.log4j.Logger;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Concatenates VCF or BCF files covering consecutive, non-overlapping genome intervals, such as the scattered
+ * outputs of a GATK run.
+ *
+ * <p>
+ * The headers of all parts are read once up front.  When they are compatible (same samples in the same order and,
+ * for BCF, the same INFO/FORMAT/FILTER and contig dictionaries) the records are copied as raw bytes without being
+ * decoded: plain VCF and BCF parts are copied record by record after their header, and block-compressed VCF parts
+ * are copied as whole BGZF blocks, re-compressing only the block in which the header of each later part ends.
+ * The header of the first part is used for the output.
+ * </p>
+ *
+ * <p>
+ * While plain VCF and BCF records are copied the index of the output is built from the position of each record,
+ * which only requires reading the CHROM, POS, REF and INFO columns (or the fixed BCF site fields).  Block-compressed
+ * output is indexed by scanning the lines of the concatenated file once it has been written.
+ * </p>
+ *
+ * <p>
+ * Parts with incompatible headers are concatenated by decoding and re-encoding every record instead.
+ * </p>
+ */
+public class VariantFileConcatenator {
+    private final static Logger logger = Logger.getLogger(VariantFileConcatenator.class);
+
+    private final static int BUFFER_SIZE = 1024 * 1024;
+
+    /** The VCF column holding the INFO field, the last one needed to locate a record */
+    private final static int INFO_COLUMN = 7;
+
+    private final static String END_KEY = "END=";
+
+    /** The BCF magic ("BCF" plus major and minor version) preceding the header length */
+    private final static int BCF_MAGIC_LENGTH = 5;
+
+    public enum FileType {
+        VCF,
+        BCF,
+        BLOCK_COMPRESSED_VCF,
+        INVALID
+    }
+
+    private final FileType fileType;
+    private final List<File> parts;
+    private final List<VCFHeader> headers;
+    private final String incompatibility;
+
+    /**
+     * Reads the headers of the parts to concatenate
+     *
+     * @param fileType the type shared by all parts
+     * @param parts the parts, in the order in which they should be concatenated
+     */
+    public VariantFileConcatenator(final FileType fileType, final List<File> parts) {
+        if ( fileType == null || fileType == FileType.INVALID ) throw new IllegalArgumentException("Invalid file type " + fileType);
+        if ( parts == null || parts.isEmpty() ) throw new IllegalArgumentException("parts cannot be null or empty");
+
+        this.fileType = fileType;
+        this.parts = new ArrayList<>(parts);
+        this.headers = new ArrayList<>(parts.size());
+        for ( final File part : parts ) {
+            final FeatureReader<VariantContext> reader = getFeatureReader(fileType, part);
+            headers.add((VCFHeader)reader.getHeader());
+            closeReader(part, reader);
+        }
+        this.incompatibility = findIncompatibility();
+    }
+
+    /**
+     * Determines the file type of a variant file from its extension
+     *
+     * @param file the VCF or BCF file
+     * @return the type of the file, or INVALID if the extension is not recognized
+     */
+    public static FileType getFileType(final File file) {
+        final String fileName = file.toString().toLowerCase();
+        if ( fileName.endsWith(".vcf") )
+            return FileType.VCF;
+        if ( fileName.endsWith(".bcf") )
+            return FileType.BCF;
+        for ( final String extension : AbstractFeatureReader.BLOCK_COMPRESSED_EXTENSIONS ) {
+            if ( fileName.endsWith(".vcf" + extension) )
+                return FileType.BLOCK_COMPRESSED_VCF;
+        }
+        return FileType.INVALID;
+    }
+
+    /**
+     * Opens a reader over a variant file of the given type
+     *
+     * @param fileType the type of the file
+     * @param file the file
+     * @return a reader which does not require an index
+     */
+    public static FeatureReader<VariantContext> getFeatureReader(final FileType fileType, final File file) {
+        switch ( fileType ) {
+            case VCF:
+            case BLOCK_COMPRESSED_VCF:
+                // getFeatureReader will handle both block-compressed and plain text VCFs
+                return AbstractFeatureReader.getFeatureReader(file.getAbsolutePath(), new VCFCodec(), false);
+            case BCF:
+                return AbstractFeatureReader.getFeatureReader(file.getAbsolutePath(), new BCF2Codec(), false);
+            default:
+                throw new IllegalArgumentException("Invalid file type " + fileType);
+        }
+    }
+
+    /**
+     * @return true if the parts will be concatenated without decoding their records
+     */
+    public boolean canConcatenateBlocks() {
+        return incompatibility == null;
+    }
+
+    /**
+     * @return the reason the parts must be concatenated record by record, or null if they can be copied as raw bytes
+     */
+    public String getIncompatibility() {
+        return incompatibility;
+    }
+
+    /**
+     * Concatenates the parts into the output file and writes its index
+     *
+     * @param output the file to write, with the same type as the parts
+     * @param dictionary the reference sequence dictionary, used when records have to be re-encoded
+     * @param indexCreator the creator for the output index, or null to skip indexing
+     */
+    public void concatenate(final File output, final SAMSequenceDictionary dictionary, final IndexCreator indexCreator) {
+        if ( output == null ) throw new IllegalArgumentException("output cannot be null");
+
+        if ( canConcatenateBlocks() ) {
+            logger.info(String.format("Concatenating %d %s files without decoding their records", parts.size(), fileType));
+            try {
+                concatenateBlocks(output, indexCreator);
+            } catch ( IOException e ) {
+                throw new UserException.CouldNotCreateOutputFile(output, "Unable to concatenate " + parts, e);
+            }
+        } else {
+            logger.info(String.format("Concatenating %d %s files record by record: %s", parts.size(), fileType, incompatibility));
+            concatenateRecords(output, dictionary, indexCreator);
+        }
+    }
+
+    private String findIncompatibility() {
+        final File firstPart = parts.get(0);
+        final VCFHeader firstHeader = headers.get(0);
+        for ( int i = 1; i < parts.size(); i++ ) {
+            final VCFHeader header = headers.get(i);
+            if ( ! firstHeader.getGenotypeSamples().equals(header.getGenotypeSamples()) )
+                return String.format("%s does not have the same samples as %s", parts.get(i), firstPart);
+            if ( fileType == FileType.BCF ) {
+                // BCF records refer to their header strings and contigs by offset
+                if ( ! BCF2Utils.makeDictionary(firstHeader).equals(BCF2Utils.makeDictionary(header)) )
+                    return String.format("%s does not have the same INFO, FORMAT and FILTER fields as %s", parts.get(i), firstPart);
+                if ( ! getContigNames(firstHeader).equals(getContigNames(header)) )
+                    return String.format("%s does not have the same contigs as %s", parts.get(i), firstPart);
+            }
+        }
+
+        if ( fileType == FileType.BLOCK_COMPRESSED_VCF ) {
+            for ( final File part : parts ) {
+                try {
+                    if ( BlockCompressedInputStream.checkTermination(part) == BlockCompressedInputStream.FileTermination.DEFECTIVE )
+                        return String.format("%s is not a complete block-compressed file", part);
+                } catch ( IOException e ) {
+                    throw new UserException.CouldNotReadInputFile(part, e);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private static List<String> getContigNames(final VCFHeader header) {
+        final List<String> contigs = new ArrayList<>();
+        for ( final VCFContigHeaderLine contig : header.getContigLines() )
+            contigs.add(contig.getID());
+        return contigs;
+    }
+
+    private void concatenateRecords(final File output, final SAMSequenceDictionary dictionary, final IndexCreator indexCreator) {
+        final FileOutputStream outputStream;
+        try {
+            outputStream = new FileOutputStream(output);
+        } catch ( FileNotFoundException e ) {
+            throw new UserException.CouldNotCreateOutputFile(output, e);
+        }
+
+        final EnumSet<Options> options = indexCreator == null ? EnumSet.noneOf(Options.class) : EnumSet.of(Options.INDEX_ON_THE_FLY);
+        final VariantContextWriter writer = VariantContextWriterFactory.create(output, outputStream, dictionary, indexCreator, options);
+        writer.writeHeader(headers.get(0));
+        for ( final File part : parts ) {
+            final FeatureReader<VariantContext> reader = getFeatureReader(fileType, part);
+            try {
+                final Iterator<VariantContext> it = reader.iterator();
+                while ( it.hasNext() )
+                    writer.add(it.next());
+            } catch ( IOException e ) {
+                throw new UserException.CouldNotReadInputFile(part, e);
+            } finally {
+                closeReader(part, reader);
+            }
+        }
+        writer.close();
+    }
+
+    private void concatenateBlocks(final File output, final IndexCreator indexCreator) throws IOException {
+        final RecordIndexer indexer = indexCreator == null ? null : new RecordIndexer(indexCreator, getContigNames(headers.get(0)));
+        final OutputStream out = new BufferedOutputStream(new FileOutputStream(output), BUFFER_SIZE);
+        long position = 0;
+        try {
+            for ( int i = 0; i < parts.size(); i++ ) {
+                final boolean keepHeader = i == 0;
+                switch ( fileType ) {
+                    case VCF:
+                        position = copyTextPart(parts.get(i), keepHeader, out, position, indexer);
+                        break;
+                    case BCF:
+                        position = copyBCFPart(parts.get(i), keepHeader, out, position, indexer);
+                        break;
+                    case BLOCK_COMPRESSED_VCF:
+                        copyBlockCompressedPart(parts.get(i), keepHeader, out);
+                        break;
+                }
+            }
+            if ( fileType == FileType.BLOCK_COMPRESSED_VCF )
+                out.write(BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK);
+        } finally {
+            out.close();
+        }
+
+        if ( indexer != null ) {
+            if ( fileType == FileType.BLOCK_COMPRESSED_VCF )
+                position = indexBlockCompressed(output, indexer);
+            indexCreator.finalizeIndex(position).writeBasedOnFeatureFile(output);
+        }
+    }
+
+    /**
+     * Feeds the virtual file pointer of every record in a block-compressed VCF to the indexer
+     *
+     * @return the virtual file pointer of the end of the file
+     */
+    private static long indexBlockCompressed(final File file, final RecordIndexer indexer) throws IOException {
+        final BlockCompressedInputStream in = new BlockCompressedInputStream(file);
+        try {
+            long position = 0;
+            String line;
+            while ( (line = in.readLine()) != null ) {
+                if ( ! line.startsWith("#") )
+                    indexer.addTextRecord(file, line, position);
+                position = in.getFilePointer();
+            }
+            return position;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Copies the records of a plain text VCF, and the header as well if requested
+     *
+     * @return the output position after the copied bytes
+     */
+    private static long copyTextPart(final File part, final boolean keepHeader, final OutputStream out, long position, final RecordIndexer indexer) throws IOException {
+        final long headerLength = keepHeader ? 0 : getTextHeaderLength(part);
+        final InputStream in = new FileInputStream(part);
+        try {
+            skipFully(in, headerLength, part);
+            if ( indexer != null )
+                indexer.startTextPart(part);
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ( (n = in.read(buffer)) > 0 ) {
+                if ( indexer != null )
+                    indexer.scanText(buffer, n, position);
+                out.write(buffer, 0, n);
+                position += n;
+            }
+            if ( indexer != null )
+                indexer.finishTextPart();
+        } finally {
+            in.close();
+        }
+        return position;
+    }
+
+    /**
+     * @return the number of bytes taken by the '#' lines at the start of a plain text VCF
+     */
+    private static long getTextHeaderLength(final File part) throws IOException {
+        final InputStream in = new BufferedInputStream(new FileInputStream(part), BUFFER_SIZE);
+        try {
+            long length = 0;
+            int b;
+            while ( (b = in.read()) == '#' ) {
+                length++;
+                while ( (b = in.read()) != -1 ) {
+                    length++;
+                    if ( b == '\n' )
+                        break;
+                }
+            }
+            return length;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void skipFully(final InputStream in, long bytes, final File part) throws IOException {
+        while ( bytes > 0 ) {
+            final long skipped = in.skip(bytes);
+            if ( skipped <= 0 )
+                throw new UserException.MalformedFile(part, "File ended while skipping its header");
+            bytes -= skipped;
+        }
+    }
+
+    /**
+     * Copies the records of an uncompressed BCF, and the header as well if requested
+     *
+     * @return the output position after the copied bytes
+     */
+    private static long copyBCFPart(final File part, final boolean keepHeader, final OutputStream out, long position, final RecordIndexer indexer) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(part), BUFFER_SIZE));
+        try {
+            final byte[] header = new byte[BCF_MAGIC_LENGTH + 4];
+            in.readFully(header);
+            final int headerTextLength = readLittleEndianInt(header, BCF_MAGIC_LENGTH);
+            if ( keepHeader ) {
+                final byte[] headerText = new byte[headerTextLength];
+                in.readFully(headerText);
+                out.write(header);
+                out.write(headerText);
+                position += header.length + headerText.length;
+            } else {
+                skipFully(in, headerTextLength, part);
+            }
+
+            // each record is the length of its site and genotype blocks followed by the blocks themselves
+            byte[] record = new byte[BUFFER_SIZE];
+            int b;
+            while ( (b = in.read()) != -1 ) {
+                record[0] = (byte)b;
+                in.readFully(record, 1, 7);
+                final long recordLength = 8L + (readLittleEndianInt(record, 0) & 0xFFFFFFFFL) + (readLittleEndianInt(record, 4) & 0xFFFFFFFFL);
+                if ( recordLength > Integer.MAX_VALUE )
+                    throw new UserException.MalformedFile(part, "BCF record of " + recordLength + " bytes is too large");
+                if ( recordLength > record.length )
+                    record = Arrays.copyOf(record, (int)recordLength);
+                in.readFully(record, 8, (int)recordLength - 8);
+                if ( indexer != null )
+                    indexer.addBCFRecord(part, record, position);
+                out.write(record, 0, (int)recordLength);
+                position += recordLength;
+            }
+        } catch ( EOFException e ) {
+            throw new UserException.MalformedFile(part, "BCF file is truncated", e);
+        } finally {
+            in.close();
+        }
+        return position;
+    }
+
+    private static int readLittleEndianInt(final byte[] bytes, final int offset) {
+        return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8 | (bytes[offset + 2] & 0xFF) << 16 | (bytes[offset + 3] & 0xFF) << 24;
+    }
+
+    /**
+     * Copies the BGZF blocks of a block-compressed VCF, dropping its terminator block.  Unless the header should be
+     * kept, the block in which the header ends is decompressed and only its records are re-compressed.
+     */
+    private static void copyBlockCompressedPart(final File part, final boolean keepHeader, final OutputStream out) throws IOException {
+        final boolean hasTerminator = BlockCompressedInputStream.checkTermination(part) == BlockCompressedInputStream.FileTermination.HAS_TERMINATOR_BLOCK;
+        final long dataEnd = part.length() - (hasTerminator ? BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK.length : 0);
+
+        long copyStart = 0;
+        if ( ! keepHeader ) {
+            final BlockCompressedInputStream in = new BlockCompressedInputStream(part);
+            try {
+                long firstRecord = 0;
+                String line;
+                while ( (line = in.readLine()) != null && line.startsWith("#") )
+                    firstRecord = in.getFilePointer();
+                if ( line == null )
+                    return; // no records in this part
+
+                in.seek(firstRecord);
+                // available() moves on to the next block when the header ends exactly at a block boundary
+                final byte[] remainder = new byte[in.available()];
+                final long blockAddress = BlockCompressedFilePointerUtil.getBlockAddress(in.getFilePointer());
+                int read = 0;
+                while ( read < remainder.length ) {
+                    final int n = in.read(remainder, read, remainder.length - read);
+                    if ( n < 0 )
+                        throw new UserException.MalformedFile(part, "Block-compressed file is truncated");
+                    read += n;
+                }
+                writeCompressedBlocks(remainder, out);
+                copyStart = blockAddress + getBlockSize(part, blockAddress);
+            } finally {
+                in.close();
+            }
+        }
+
+        copyRange(part, copyStart, dataEnd, out);
+    }
+
+    private static void writeCompressedBlocks(final byte[] bytes, final OutputStream out) throws IOException {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length);
+        final BlockCompressedOutputStream bgzf = new BlockCompressedOutputStream(compressed, null);
+        bgzf.write(bytes);
+        bgzf.close();
+        // close() always terminates the stream, but the terminator belongs at the end of the output only
+        out.write(compressed.toByteArray(), 0, compressed.size() - BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK.length);
+    }
+
+    /**
+     * @return the compressed size of the BGZF block starting at blockAddress, read from its BSIZE field
+     */
+    private static int getBlockSize(final File part, final long blockAddress) throws IOException {
+        final RandomAccessFile file = new RandomAccessFile(part, "r");
+        try {
+            final byte[] blockHeader = new byte[BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH];
+            file.seek(blockAddress);
+            file.readFully(blockHeader);
+            final int offset = BlockCompressedStreamConstants.BLOCK_LENGTH_OFFSET;
+            return ((blockHeader[offset] & 0xFF) | (blockHeader[offset + 1] & 0xFF) << 8) + 1;
+        } finally {
+            file.close();
+        }
+    }
+
+    private static void copyRange(final File part, final long start, final long end, final OutputStream out) throws IOException {
+        final InputStream in = new FileInputStream(part);
+        try {
+            skipFully(in, start, part);
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            long remaining = end - start;
+            while ( remaining > 0 ) {
+                final int n = in.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+                if ( n < 0 )
+                    throw new UserException.MalformedFile(part, "File is truncated");
+                out.write(buffer, 0, n);
+                remaining -= n;
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void closeReader(final File part, final FeatureReader<VariantContext> reader) {
+        try {
+            reader.close();
+        } catch ( IOException e ) {
+            throw new UserException.CouldNotReadInputFile(part, e);
+        }
+    }
+
+    /**
+     * Feeds the location of each copied record to an index creator, reading only the fields that locate the record
+     */
+    private static final class RecordIndexer {
+        private final IndexCreator indexCreator;
+        private final List<String> contigs;
+
+        // the start of the current text line, up to and excluding the tab after the INFO column
+        private byte[] line = new byte[1024];
+        private int lineLength;
+        private int tabs;
+        private long lineStart;
+        private boolean atLineStart;
+        private boolean inRecord;
+        private File part;
+
+        private RecordIndexer(final IndexCreator indexCreator, final List<String> contigs) {
+            this.indexCreator = indexCreator;
+            this.contigs = contigs;
+        }
+
+        private void startTextPart(final File part) {
+            this.part = part;
+            atLineStart = true;
+            inRecord = false;
+        }
+
+        /**
+         * @param buffer bytes copied from the current part
+         * @param length the number of bytes in buffer
+         * @param position the output position of buffer[0]
+         */
+        private void scanText(final byte[] buffer, final int length, final long position) {
+            for ( int i = 0; i < length; i++ ) {
+                final byte b = buffer[i];
+                if ( atLineStart ) {
+                    atLineStart = false;
+                    inRecord = b != '#';
+                    lineStart = position + i;
+                    lineLength = 0;
+                    tabs = 0;
+                }
+                if ( b == '\n' ) {
+                    if ( inRecord )
+                        addLineStart();
+                    atLineStart = true;
+                } else if ( inRecord ) {
+                    if ( b == '\t' && ++tabs > INFO_COLUMN ) {
+                        addLineStart();
+                    } else {
+                        if ( lineLength == line.length )
+                            line = Arrays.copyOf(line, line.length * 2);
+                        line[lineLength++] = b;
+                    }
+                }
+            }
+        }
+
+        private void finishTextPart() {
+            if ( inRecord )
+                addLineStart();
+        }
+
+        private void addLineStart() {
+            inRecord = false;
+            if ( lineLength > 0 && line[lineLength - 1] == '\r' )
+                lineLength--;
+            addTextRecord(part, new String(line, 0, lineLength), lineStart);
+        }
+
+        /**
+         * @param part the file the record was copied from
+         * @param record the record, or at least its columns up to INFO
+         * @param position the output position of the record
+         */
+        private void addTextRecord(final File part, final String record, final long position) {
+            final String[] columns = record.split("\t", INFO_COLUMN + 2);
+            if ( columns.length < 5 )
+                throw new UserException.MalformedFile(part, "VCF record at position " + position + " of the output has fewer than 5 columns");
+
+            try {
+                final int start = Integer.parseInt(columns[1]);
+                int end = start + columns[3].length() - 1;
+                if ( columns.length > INFO_COLUMN ) {
+                    for ( final String info : columns[INFO_COLUMN].split(";") ) {
+                        if ( info.startsWith(END_KEY) )
+                            end = Integer.parseInt(info.substring(END_KEY.length()));
+                    }
+                }
+                indexCreator.addFeature(new BasicFeature(columns[0], start, end), position);
+            } catch ( NumberFormatException e ) {
+                throw new UserException.MalformedFile(part, "VCF record at position " + position + " of the output has an invalid position", e);
+            }
+        }
+
+        /**
+         * @param record the BCF record, starting with the lengths of its blocks
+         * @param position the output position of the record
+         */
+        private void addBCFRecord(final File part, final byte[] record, final long position) {
+            final int contig = readLittleEndianInt(record, 8);
+            final int start = readLittleEndianInt(record, 12) + 1;
+            final int referenceLength = readLittleEndianInt(record, 16);
+            if ( contig < 0 || contig >= contigs.size() )
+                throw new UserException.MalformedFile(part, "BCF record refers to contig " + contig + " which is not in the header");
+            indexCreator.addFeature(new BasicFeature(contigs.get(contig), start, start + referenceLength - 1), position);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine;
+
+import com.google.caliper.Param;
+import com.google.caliper.SimpleBenchmark;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.classloader.PluginManifest;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+
+import java.io.*;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Caliper benchmark of the fixed cost of starting the GATK, comparing plugin discovery by classpath scanning
+ * against discovery from a prebuilt plugin manifest.
+ *
+ * The classpath is packaged into jars first, as it would be when deployed, since class directories are always
+ * scanned.  timeFirstLocus launches a fresh JVM per rep that counts a single locus, so it measures everything
+ * between the command line and the first locus: JVM startup, class loading, plugin discovery and opening the inputs.
+ */
+public class GATKStartupBenchmark extends SimpleBenchmark {
+    @Param({"SCAN", "MANIFEST"})
+    PluginDiscovery discovery; // set automatically by framework
+
+    public enum PluginDiscovery { SCAN, MANIFEST }
+
+    private List<URL> classPath;
+    private ClassLoader manifestLoader;
+
+    @Override protected void setUp() throws IOException {
+        classPath = new ArrayList<URL>();
+        for ( final URL url : PluginManifest.getClasspathURLs() ) {
+            final File file = new File(url.getPath());
+            classPath.add(file.isDirectory() ? createJar(file).toURI().toURL() : url);
+        }
+
+        if ( discovery == PluginDiscovery.MANIFEST ) {
+            final File manifestJar = File.createTempFile("plugins", ".jar");
+            manifestJar.deleteOnExit();
+            final JarOutputStream stream = new JarOutputStream(new FileOutputStream(manifestJar));
+            stream.putNextEntry(new JarEntry(PluginManifest.MANIFEST_PATH));
+            final PrintWriter writer = new PrintWriter(new OutputStreamWriter(stream, "UTF-8"));
+            PluginManifest.write(classPath, writer);
+            writer.flush();
+            stream.closeEntry();
+            stream.close();
+            classPath.add(manifestJar.toURI().toURL());
+            manifestLoader = new URLClassLoader(new URL[]{manifestJar.toURI().toURL()}, null);
+        } else {
+            manifestLoader = new URLClassLoader(new URL[0], null);
+        }
+    }
+
+    public int timePluginDiscovery(final int reps) {
+        int nScanned = 0;
+        for ( int i = 0; i < reps; i++ )
+            nScanned += PluginManifest.load(classPath, manifestLoader).getScannedUrls().size();
+        return nScanned;
+    }
+
+    public void timeFirstLocus(final int reps) throws IOException, InterruptedException {
+        final StringBuilder classPathString = new StringBuilder();
+        for ( final URL url : classPath )
+            classPathString.append(classPathString.length() == 0 ? "" : File.pathSeparator).append(url.getPath());
+
+        for ( int i = 0; i < reps; i++ ) {
+            final Process process = new ProcessBuilder(
+                    new File(System.getProperty("java.home"), "bin/java").getPath(),
+                    "-cp", classPathString.toString(),
+                    CommandLineGATK.class.getName(),
+                    "-T", "CountLoci",
+                    "-R", BaseTest.exampleFASTA,
+                    "-I", BaseTest.publicTestDir + "exampleBAM.bam",
+                    "-L", "chr1:200")
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.to(new File("/dev/null")))
+                    .start();
+            if ( process.waitFor() != 0 )
+                throw new ReviewedGATKException("GATK exited with status " + process.exitValue());
+        }
+    }
+
+    // a temporary jar holding the contents of the given class directory.
+    private static File createJar(final File directory) throws IOException {
+        final File jar = File.createTempFile(directory.getName(), ".jar");
+        jar.deleteOnExit();
+        final JarOutputStream stream = new JarOutputStream(new FileOutputStream(jar));
+        addToJar(stream, directory, "");
+        stream.close();
+        return jar;
+    }
+
+    private static void addToJar(final JarOutputStream stream, final File file, final String path) throws IOException {
+        if ( file.isDirectory() ) {
+            final File[] children = file.listFiles();
+            if ( children == null )
+                return;
+            for ( final File child : children )
+                addToJar(stream, child, path + child.getName() + (child.isDirectory() ? "/" : ""));
+            return;
+        }
+        stream.putNextEntry(new JarEntry(path));
+        final InputStream input = new FileInputStream(file);
+        try {
+            final byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ( (read = input.read(buffer)) > 0 )
+                stream.write(buffer, 0, read);
+        } finally {
+            input.close();
+        }
+        stream.closeEntry();
+    }
+
+    public static void main(String[] args) {
+        com.google.caliper.Runner.main(GATKStartupBenchmark.class, args);
+    }
+}
@@ -0,0 +1,218 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.alignment.bwa.java;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import org.broadinstitute.gatk.engine.GenomeAnalysisEngine;
+import org.broadinstitute.gatk.engine.alignment.Alignment;
+import org.broadinstitute.gatk.engine.alignment.bwa.BWTFiles;
+import org.broadinstitute.gatk.engine.alignment.reference.bwt.BWT;
+import org.broadinstitute.gatk.engine.alignment.reference.bwt.BWTWriter;
+import org.broadinstitute.gatk.engine.alignment.reference.bwt.SuffixArray;
+import org.broadinstitute.gatk.engine.alignment.reference.bwt.SuffixArrayWriter;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.BaseUtils;
+import org.broadinstitute.gatk.utils.Utils;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Aligns reads sampled from a small random reference with {@link BWAJavaAligner}.
+ */
+public class BWAJavaAlignerUnitTest extends BaseTest {
+
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+    private static final int CONTIG_LENGTH = 600;
+    private static final int READ_LENGTH = 36;
+
+    private SAMFileHeader header;
+    private byte[] reference;
+    private BWAJavaAligner aligner;
+
+    @BeforeClass
+    public void buildIndex() {
+        final Random random = new Random(17);
+        header = ArtificialSAMUtils.createArtificialSamHeader(2, 0, CONTIG_LENGTH);
+        reference = new byte[2 * CONTIG_LENGTH];
+        for ( int i = 0; i < reference.length; i++ )
+            reference[i] = BASES[random.nextInt(BASES.length)];
+
+        aligner = new BWAJavaAligner(writeIndex(reference), header.getSequenceDictionary());
+    }
+
+    private static BWTFiles writeIndex(final byte[] sequence) {
+        final BWTFiles bwtFiles = new BWTFiles(createTempFile("reference", ".fasta").getPath());
+        writeBWT(bwtFiles.forwardBWTFile, bwtFiles.forwardSAFile, sequence);
+        writeBWT(bwtFiles.reverseBWTFile, bwtFiles.reverseSAFile, Utils.reverse(sequence));
+        return bwtFiles;
+    }
+
+    private static void writeBWT(final File bwtFile, final File suffixArrayFile, final byte[] sequence) {
+        bwtFile.deleteOnExit();
+        suffixArrayFile.deleteOnExit();
+        final BWTWriter bwtWriter = new BWTWriter(bwtFile);
+        bwtWriter.write(BWT.createFromReferenceSequence(sequence));
+        bwtWriter.close();
+        final SuffixArrayWriter suffixArrayWriter = new SuffixArrayWriter(suffixArrayFile);
+        suffixArrayWriter.write(SuffixArray.createFromReferenceSequence(sequence));
+        suffixArrayWriter.close();
+    }
+
+    // an unmapped read from the given 0-based offset in the concatenated reference.
+    private SAMRecord createRead(final String name, final int offset, final boolean negativeStrand, final int mismatchPosition) {
+        final byte[] bases = Arrays.copyOfRange(reference, offset, offset + READ_LENGTH);
+        if ( mismatchPosition >= 0 )
+            bases[mismatchPosition] = bases[mismatchPosition] == 'A' ? (byte) 'C' : (byte) 'A';
+        final byte[] quals = new byte[READ_LENGTH];
+        Arrays.fill(quals, (byte) 30);
+        final SAMRecord read = ArtificialSAMUtils.createArtificialRead(header, name, SAMRecord.NO_ALIGNMENT_REFERENCE_INDEX, SAMRecord.NO_ALIGNMENT_START,
+                negativeStrand ? BaseUtils.simpleReverseComplement(bases) : bases, quals);
+        read.setReadUnmappedFlag(true);
+        return read;
+    }
+
+    @Test
+    public void testAlignsReadsToTheirOrigin() {
+        final Random random = new Random(5);
+        for ( int i = 0; i < 40; i++ ) {
+            final int contig = random.nextInt(2);
+            final int offset = contig * CONTIG_LENGTH + random.nextInt(CONTIG_LENGTH - READ_LENGTH);
+            final boolean negativeStrand = random.nextBoolean();
+            final int mismatch = random.nextBoolean() ? 10 + random.nextInt(READ_LENGTH - 20) : -1;
+            final SAMRecord read = createRead("read" + i, offset, negativeStrand, mismatch);
+
+            final SAMRecord aligned = aligner.align(read, header);
+            Assert.assertFalse(aligned.getReadUnmappedFlag(), read.getReadName());
+            Assert.assertEquals(aligned.getReferenceIndex().intValue(), contig, read.getReadName());
+            Assert.assertEquals(aligned.getAlignmentStart(), offset - contig * CONTIG_LENGTH + 1, read.getReadName());
+            Assert.assertEquals(aligned.getReadNegativeStrandFlag(), negativeStrand, read.getReadName());
+            Assert.assertEquals(aligned.getCigarString(), READ_LENGTH + "M", read.getReadName());
+            Assert.assertEquals(aligned.getIntegerAttribute("NM").intValue(), mismatch >= 0 ? 1 : 0, read.getReadName());
+            Assert.assertEquals(aligned.getMappingQuality(), 37, read.getReadName());
+        }
+    }
+
+    @Test
+    public void testAlignmentsBatchedByScore() {
+        final SAMRecord read = createRead("batched", 100, false, 18);
+        final Iterable<Alignment[]> batches = aligner.getAllAlignments(read.getReadBases());
+        int lastScore = -1;
+        for ( final Alignment[] batch : batches ) {
+            Assert.assertTrue(batch.length > 0);
+            final int score = ((BWAAlignment) batch[0]).getScore();
+            Assert.assertTrue(score > lastScore);
+            for ( final Alignment alignment : batch )
+                Assert.assertEquals(((BWAAlignment) alignment).getScore(), score);
+            lastScore = score;
+        }
+        Assert.assertEquals(aligner.getBestAlignment(read.getReadBases()).getAlignmentStart(), 101);
+    }
+
+    @Test
+    public void testUnalignableRead() {
+        final byte[] bases = new byte[READ_LENGTH];
+        Arrays.fill(bases, (byte) 'N');
+        final SAMRecord read = createRead("unalignable", 0, false, -1);
+        read.setReadBases(bases);
+        Assert.assertNull(aligner.getBestAlignment(bases));
+        Assert.assertTrue(aligner.align(read, header).getReadUnmappedFlag());
+    }
+
+    @Test
+    public void testReadSpanningContigsIsNotPlaced() {
+        final SAMRecord read = createRead("spanning", CONTIG_LENGTH - READ_LENGTH / 2, false, -1);
+        Assert.assertTrue(aligner.align(read, header).getReadUnmappedFlag());
+    }
+
+    @Test
+    public void testBatchMatchesSerialAlignment() {
+        final Random random = new Random(11);
+        final List<SAMRecord> reads = new ArrayList<>();
+        for ( int i = 0; i < 100; i++ )
+            reads.add(createRead("read" + i, random.nextInt(reference.length - READ_LENGTH), random.nextBoolean(), random.nextBoolean() ? READ_LENGTH / 2 : -1));
+
+        final List<SAMRecord> serial = aligner.align(reads, header, 1);
+        final List<SAMRecord> parallel = aligner.align(reads, header, 4);
+        Assert.assertEquals(parallel.size(), reads.size());
+        for ( int i = 0; i < reads.size(); i++ ) {
+            Assert.assertEquals(parallel.get(i).getReadName(), reads.get(i).getReadName());
+            Assert.assertEquals(parallel.get(i).getSAMString(), serial.get(i).getSAMString());
+        }
+    }
+
+    @Test
+    public void testTiedAlignmentsChosenDeterministically() {
+        // the same read length of sequence at four places in the reference, so that each read has four best alignments
+        final int[] copies = {50, 300, CONTIG_LENGTH + 100, CONTIG_LENGTH + 400};
+        final byte[] repeated = reference.clone();
+        for ( final int copy : copies )
+            System.arraycopy(reference, copies[0], repeated, copy, READ_LENGTH);
+        final BWTFiles bwtFiles = writeIndex(repeated);
+
+        final byte[] bases = Arrays.copyOfRange(repeated, copies[0], copies[0] + READ_LENGTH);
+        final List<SAMRecord> reads = new ArrayList<>();
+        for ( int i = 0; i < 50; i++ ) {
+            final SAMRecord read = createRead("repeat" + i, 0, false, -1);
+            read.setReadBases(bases);
+            reads.add(read);
+        }
+
+        GenomeAnalysisEngine.resetRandomGenerator();
+        final BWAJavaAligner repeatAligner = new BWAJavaAligner(bwtFiles, header.getSequenceDictionary());
+        Assert.assertEquals(repeatAligner.getAllAlignments(bases).get(0).length, copies.length);
+        final List<SAMRecord> serial = repeatAligner.align(reads, header, 1);
+        final List<SAMRecord> parallel = repeatAligner.align(reads, header, 4);
+
+        // an aligner created from the same GATK seed makes the same choice
+        GenomeAnalysisEngine.resetRandomGenerator();
+        final SAMRecord reseeded = new BWAJavaAligner(bwtFiles, header.getSequenceDictionary()).align(reads.get(0), header);
+
+        final String expected = serial.get(0).getReferenceName() + ":" + serial.get(0).getAlignmentStart();
+        boolean isCopy = false;
+        for ( final int copy : copies )
+            isCopy |= expected.equals(header.getSequence(copy / CONTIG_LENGTH).getSequenceName() + ":" + (copy % CONTIG_LENGTH + 1));
+        Assert.assertTrue(isCopy, expected);
+        for ( int i = 0; i < reads.size(); i++ ) {
+            Assert.assertEquals(serial.get(i).getReferenceName() + ":" + serial.get(i).getAlignmentStart(), expected);
+            Assert.assertEquals(parallel.get(i).getSAMString(), serial.get(i).getSAMString());
+        }
+        Assert.assertEquals(reseeded.getSAMString(), serial.get(0).getSAMString());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testBatchRequiresAThread() {
+        aligner.align(new ArrayList<SAMRecord>(), header, 0);
+    }
+}
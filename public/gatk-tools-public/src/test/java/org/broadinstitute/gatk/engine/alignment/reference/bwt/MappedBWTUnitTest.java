@@ -0,0 +1,151 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.alignment.reference.bwt;
+
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that {@link MappedBWT} and {@link MappedSuffixArray} answer queries exactly as the heap-resident
+ * structures read by {@link BWTReader} and {@link SuffixArrayReader}.
+ */
+public class MappedBWTUnitTest extends BaseTest {
+
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+
+    private static class Index {
+        final File bwtFile;
+        final File suffixArrayFile;
+
+        private Index(final int length, final long seed) {
+            final Random random = new Random(seed);
+            final byte[] reference = new byte[length];
+            for ( int i = 0; i < length; i++ )
+                reference[i] = BASES[random.nextInt(BASES.length)];
+
+            bwtFile = createTempFile("mapped", ".bwt");
+            final BWTWriter bwtWriter = new BWTWriter(bwtFile);
+            bwtWriter.write(BWT.createFromReferenceSequence(reference));
+            bwtWriter.close();
+
+            suffixArrayFile = createTempFile("mapped", ".sa");
+            final SuffixArrayWriter suffixArrayWriter = new SuffixArrayWriter(suffixArrayFile);
+            suffixArrayWriter.write(SuffixArray.createFromReferenceSequence(reference));
+            suffixArrayWriter.close();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Index[%d bytes]", bwtFile.length());
+        }
+    }
+
+    @DataProvider(name = "indices")
+    public Object[][] makeIndices() {
+        final List<Object[]> tests = new ArrayList<>();
+        // lengths around the 16-base word and 128-base block boundaries.
+        for ( final int length : new int[]{1, 15, 16, 17, 127, 128, 129, 300, 1000} )
+            tests.add(new Object[]{new Index(length, length)});
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "indices")
+    public void testBWTMatchesReader(final Index index) {
+        final BWT expected = new BWTReader(index.bwtFile).read();
+        final MappedBWT mapped = new MappedBWT(index.bwtFile);
+
+        Assert.assertEquals(mapped.length(), expected.length());
+        Assert.assertEquals(mapped.getSequence(), expected.getSequence());
+        for ( final byte base : BASES ) {
+            Assert.assertEquals(mapped.counts(base), expected.counts(base), "counts of " + (char) base);
+            // the search starts at -1 for an empty prefix and runs through the '$'.
+            for ( long i = -1; i <= expected.length(); i++ )
+                Assert.assertEquals(mapped.occurrences(base, i), expected.occurrences(base, i), "occurrences of " + (char) base + " at " + i);
+        }
+        for ( long i = 0; i <= expected.length(); i++ ) {
+            if ( i != expected.inverseSA0 )
+                Assert.assertEquals(mapped.getBase(i), expected.getBase(i), "base at " + i);
+        }
+    }
+
+    @Test(dataProvider = "indices")
+    public void testOccurrencesCountThroughTheEndOfLine(final Index index) {
+        final BWT bwt = new BWTReader(index.bwtFile).read();
+        final byte[] sequence = bwt.getSequence();
+        for ( final byte base : BASES ) {
+            long expected = 0;
+            for ( long row = 0; row <= bwt.length(); row++ ) {
+                // the row holding the '$' matches no base.
+                if ( row != bwt.inverseSA0 && sequence[(int) (row < bwt.inverseSA0 ? row : row - 1)] == base )
+                    expected++;
+                Assert.assertEquals(bwt.occurrences(base, row), expected, "occurrences of " + (char) base + " through row " + row);
+            }
+        }
+    }
+
+    @Test(dataProvider = "indices")
+    public void testSuffixArrayMatchesReader(final Index index) {
+        final BWT bwt = new BWTReader(index.bwtFile).read();
+        final SuffixArray expected = new SuffixArrayReader(index.suffixArrayFile, bwt).read();
+        final MappedSuffixArray mapped = new MappedSuffixArray(index.suffixArrayFile, MappedBWT.open(index.bwtFile));
+
+        Assert.assertEquals(mapped.inverseSA0, expected.inverseSA0);
+        Assert.assertEquals(mapped.length(), expected.length());
+        Assert.assertEquals(mapped.occurrences.toArray(true), expected.occurrences.toArray(true));
+        for ( long i = 0; i < expected.sequence.length; i++ )
+            Assert.assertEquals(mapped.get(i), expected.get(i), "suffix array entry " + i);
+    }
+
+    @Test
+    public void testOpenSharesMappings() {
+        final Index index = new Index(200, 42);
+        final MappedBWT bwt = MappedBWT.open(index.bwtFile);
+        Assert.assertSame(MappedBWT.open(index.bwtFile), bwt);
+        Assert.assertSame(MappedBWT.open(new File(index.bwtFile.getParentFile(), "./" + index.bwtFile.getName())), bwt);
+
+        final MappedSuffixArray suffixArray = MappedSuffixArray.open(index.suffixArrayFile, bwt);
+        Assert.assertSame(MappedSuffixArray.open(index.suffixArrayFile, bwt), suffixArray);
+        Assert.assertNotSame(MappedSuffixArray.open(index.suffixArrayFile, new MappedBWT(index.bwtFile)), suffixArray);
+    }
+
+    @Test(expectedExceptions = UserException.MalformedFile.class)
+    public void testTruncatedBWT() throws Exception {
+        final Index index = new Index(300, 7);
+        final RandomAccessFile file = new RandomAccessFile(index.bwtFile, "rw");
+        file.setLength(100);
+        file.close();
+        new MappedBWT(index.bwtFile);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.daemon;
+
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DaemonCacheUnitTest extends BaseTest {
+
+    private static class CountingLoader implements DaemonCache.Loader<String> {
+        final AtomicInteger loads = new AtomicInteger();
+
+        @Override
+        public String load() {
+            return "value " + loads.incrementAndGet();
+        }
+    }
+
+    @AfterMethod
+    public void disableCache() {
+        DaemonCache.setEnabled(false);
+    }
+
+    private static void write(final File file, final String contents) throws IOException {
+        final FileWriter writer = new FileWriter(file);
+        writer.write(contents);
+        writer.close();
+    }
+
+    @Test
+    public void testDisabledCacheAlwaysLoads() throws IOException {
+        final File file = createTempFile("cached", ".txt");
+        final CountingLoader loader = new CountingLoader();
+        Assert.assertEquals(DaemonCache.get("test", loader, file), "value 1");
+        Assert.assertEquals(DaemonCache.get("test", loader, file), "value 2");
+        Assert.assertEquals(DaemonCache.size(), 0);
+    }
+
+    @Test
+    public void testValuesAreReusedUntilTheFileChanges() throws IOException {
+        DaemonCache.setEnabled(true);
+        final File file = createTempFile("cached", ".txt");
+        final CountingLoader loader = new CountingLoader();
+
+        Assert.assertEquals(DaemonCache.get("test", loader, file), "value 1");
+        Assert.assertEquals(DaemonCache.get("test", loader, new File(file.getParentFile(), "./" + file.getName())), "value 1");
+        Assert.assertEquals(loader.loads.get(), 1);
+
+        // a different kind of value from the same file is cached apart
+        Assert.assertEquals(DaemonCache.get("other", loader, file), "value 2");
+
+        write(file, "changed");
+        Assert.assertEquals(DaemonCache.get("test", loader, file), "value 3");
+        Assert.assertEquals(DaemonCache.get("test", loader, file), "value 3");
+    }
+
+    @Test
+    public void testFilesWrittenByTheLoaderDoNotInvalidate() throws IOException {
+        DaemonCache.setEnabled(true);
+        final File input = createTempFile("cached", ".txt");
+        final File index = new File(input.getPath() + ".idx");
+        index.deleteOnExit();
+
+        final AtomicInteger loads = new AtomicInteger();
+        final DaemonCache.Loader<Integer> loader = new DaemonCache.Loader<Integer>() {
+            @Override
+            public Integer load() throws IOException {
+                write(index, "index of " + input);
+                return loads.incrementAndGet();
+            }
+        };
+
+        Assert.assertEquals((int)DaemonCache.get("index", loader, input, index), 1);
+        Assert.assertEquals((int)DaemonCache.get("index", loader, input, index), 1);
+
+        Assert.assertTrue(index.delete());
+        Assert.assertEquals((int)DaemonCache.get("index", loader, input, index), 2);
+    }
+
+    @Test
+    public void testDisablingClearsTheCache() throws IOException {
+        DaemonCache.setEnabled(true);
+        final File file = createTempFile("cached", ".txt");
+        final CountingLoader loader = new CountingLoader();
+        DaemonCache.get("test", loader, file);
+        Assert.assertEquals(DaemonCache.size(), 1);
+
+        DaemonCache.setEnabled(false);
+        Assert.assertEquals(DaemonCache.size(), 0);
+        DaemonCache.setEnabled(true);
+        Assert.assertEquals(DaemonCache.get("test", loader, file), "value 2");
+    }
+}
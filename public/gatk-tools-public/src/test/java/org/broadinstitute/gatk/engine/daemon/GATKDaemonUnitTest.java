@@ -0,0 +1,217 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.daemon;
+
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.*;
+
+public class GATKDaemonUnitTest extends BaseTest {
+    private static final String[] COUNT_LOCI = {
+            "-T", "CountLoci",
+            "-R", exampleFASTA,
+            "-I", publicTestDir + "exampleBAM.bam",
+            "-L", "chr1:200-1200"
+    };
+
+    private GATKDaemon daemon;
+    private File daemonFile;
+
+    // the JVM state the runs replace while they execute, which must be restored afterwards for the tests that follow
+    private PrintStream originalOut;
+    private PrintStream originalErr;
+    private SecurityManager originalSecurityManager;
+
+    private static class Result {
+        final int status;
+        final String out;
+        final String err;
+
+        private Result(final int status, final String out, final String err) {
+            this.status = status;
+            this.out = out;
+            this.err = err;
+        }
+    }
+
+    @BeforeClass
+    public void startDaemon() throws IOException {
+        originalOut = System.out;
+        originalErr = System.err;
+        originalSecurityManager = System.getSecurityManager();
+
+        daemonFile = createTempFile("gatk", ".daemon");
+        daemon = new GATKDaemon();
+        daemon.port = 0;
+        daemon.maxConcurrentRuns = 2;
+        daemon.daemonFile = daemonFile;
+        daemon.startServer();
+    }
+
+    @AfterClass
+    public void stopDaemon() throws InterruptedException {
+        daemon.shutdown();
+        Assert.assertTrue(daemon.awaitTermination(1, TimeUnit.MINUTES));
+        Assert.assertFalse(daemonFile.exists(), "the daemon file was not removed");
+        DaemonCache.setEnabled(false);
+        assertHooksUninstalled();
+    }
+
+    private void assertHooksUninstalled() {
+        Assert.assertSame(System.out, originalOut, "System.out was not restored");
+        Assert.assertSame(System.err, originalErr, "System.err was not restored");
+        Assert.assertSame(System.getSecurityManager(), originalSecurityManager, "the security manager was not restored");
+    }
+
+    private Result run(final String... args) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        final int status = GATKDaemonClient.runOnDaemon(daemonFile, args, out, err);
+        return new Result(status, out.toString(), err.toString());
+    }
+
+    @Test
+    public void testRunsShareTheReference() throws IOException {
+        final Result first = run(COUNT_LOCI);
+        Assert.assertEquals(first.status, 0, first.err);
+        Assert.assertEquals(first.out.trim(), "133");
+        Assert.assertTrue(DaemonCache.size() > 0, "nothing was cached");
+
+        final int cached = DaemonCache.size();
+        final Result second = run(COUNT_LOCI);
+        Assert.assertEquals(second.status, 0, second.err);
+        Assert.assertEquals(second.out, first.out);
+        Assert.assertEquals(DaemonCache.size(), cached);
+    }
+
+    @Test
+    public void testConcurrentRunsKeepTheirOutputApart() throws Exception {
+        final int nRuns = 4;
+        final List<String[]> commands = new ArrayList<>();
+        final List<String> expected = new ArrayList<>();
+        for ( int i = 0; i < nRuns; i++ ) {
+            commands.add(new String[]{"-T", "CountLoci", "-R", exampleFASTA, "-I", publicTestDir + "exampleBAM.bam", "-L", "chr1:200-" + (220 + 30 * i)});
+            expected.add(run(commands.get(i)).out);
+        }
+
+        final ExecutorService clients = Executors.newFixedThreadPool(nRuns);
+        try {
+            final List<Future<Result>> results = new ArrayList<>();
+            for ( final String[] command : commands ) {
+                results.add(clients.submit(new Callable<Result>() {
+                    @Override
+                    public Result call() throws IOException {
+                        return run(command);
+                    }
+                }));
+            }
+            for ( int i = 0; i < nRuns; i++ ) {
+                final Result result = results.get(i).get();
+                Assert.assertEquals(result.status, 0, result.err);
+                Assert.assertEquals(result.out, expected.get(i));
+            }
+        } finally {
+            clients.shutdown();
+        }
+        Assert.assertEquals(new HashSet<>(expected).size(), nRuns, "the runs should not all count the same loci");
+    }
+
+    @Test
+    public void testFailedRunReportsItsErrorAndLeavesTheDaemonRunning() throws IOException {
+        final Result failed = run("-T", "NoSuchWalker", "-R", exampleFASTA);
+        Assert.assertEquals(failed.status, 1);
+        Assert.assertTrue(failed.err.contains("USER ERROR"), failed.err);
+        // only the error the GATK exited with is reported
+        Assert.assertFalse(failed.err.contains("RUNTIME ERROR"), failed.err);
+
+        final Result next = run(COUNT_LOCI);
+        Assert.assertEquals(next.status, 0, next.err);
+    }
+
+    @Test
+    public void testRunInProcessReportsItsOutputAndUsage() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        final GATKRunResult result = GATKDaemon.runInProcess(COUNT_LOCI, out, err);
+        Assert.assertEquals(result.getExitStatus(), 0, err.toString());
+        Assert.assertEquals(out.toString().trim(), "133");
+        Assert.assertTrue(result.getWallTimeMillis() >= 0);
+        Assert.assertTrue(result.getCpuTimeNanos() > 0, "no CPU time was measured");
+        Assert.assertTrue(result.getAllocatedBytes() > 0, "no allocation was measured");
+
+        final ByteArrayOutputStream failedErr = new ByteArrayOutputStream();
+        final GATKRunResult failed = GATKDaemon.runInProcess(new String[]{"-T", "NoSuchWalker", "-R", exampleFASTA}, new ByteArrayOutputStream(), failedErr);
+        Assert.assertEquals(failed.getExitStatus(), 1);
+        Assert.assertTrue(failedErr.toString().contains("USER ERROR"), failedErr.toString());
+
+        // nothing else is running, so the hooks are gone as soon as the runs end
+        assertHooksUninstalled();
+        originalOut.flush();
+        Assert.assertFalse(originalOut.checkError(), "System.out was closed by the runs");
+    }
+
+    private Result sendRequest(final DaemonProtocol.Request request) throws IOException {
+        final Socket socket = new Socket(InetAddress.getLoopbackAddress(), daemon.getPort());
+        try {
+            request.write(new DataOutputStream(socket.getOutputStream()));
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final ByteArrayOutputStream err = new ByteArrayOutputStream();
+            final int status = DaemonProtocol.readResponse(new DataInputStream(socket.getInputStream()), out, err);
+            return new Result(status, out.toString(), err.toString());
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testRequestsWithoutTheTokenAreRefused() throws IOException {
+        final Result result = sendRequest(new DaemonProtocol.Request("not the token", new File(".").getCanonicalPath(), COUNT_LOCI));
+        Assert.assertEquals(result.status, 1);
+        Assert.assertTrue(result.err.contains("access token"), result.err);
+        Assert.assertEquals(result.out, "");
+    }
+
+    @Test
+    public void testRequestsFromAnotherDirectoryAreRefused() throws IOException {
+        final BufferedReader reader = new BufferedReader(new FileReader(daemonFile));
+        final String token = reader.readLine().split(" ")[1];
+        reader.close();
+
+        final Result result = sendRequest(new DaemonProtocol.Request(token, new File("..").getCanonicalPath(), COUNT_LOCI));
+        Assert.assertEquals(result.status, 1);
+        Assert.assertTrue(result.err.contains("cannot resolve paths"), result.err);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.daemon;
+
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class ThreadGroupUsageUnitTest extends BaseTest {
+    private static Thread busyThread(final ThreadGroup group, final Counter counter) {
+        return new Thread(group, new Runnable() {
+            @Override
+            public void run() {
+                long sum = 0;
+                final long end = System.nanoTime() + 200 * 1000 * 1000L;
+                while ( System.nanoTime() < end ) {
+                    sum += new long[64].length;
+                }
+                counter.sum = sum;
+            }
+        });
+    }
+
+    private static final class Counter {
+        volatile long sum;
+    }
+
+    @Test
+    public void testCountsTheThreadsOfTheGroup() throws InterruptedException {
+        final ThreadGroup group = new ThreadGroup("usage-test");
+        final ThreadGroupUsage usage = new ThreadGroupUsage(group);
+        Assert.assertTrue(usage.getCpuTimeNanos() <= 0, "nothing has been sampled yet");
+
+        final Counter counter = new Counter();
+        final Thread busy = busyThread(group, counter);
+        busy.start();
+        Thread.sleep(100);
+        usage.sample();
+        final long early = usage.getCpuTimeNanos();
+        busy.join();
+        Assert.assertTrue(counter.sum > 0);
+
+        // the thread has ended, so its last sample still counts
+        usage.sample();
+        Assert.assertEquals(usage.getCpuTimeNanos(), early);
+        if ( early >= 0 )
+            Assert.assertTrue(early > 0, "no CPU time was sampled");
+        if ( usage.getAllocatedBytes() >= 0 )
+            Assert.assertTrue(usage.getAllocatedBytes() > 0, "no allocation was sampled");
+    }
+
+    @Test
+    public void testIgnoresThreadsOutsideTheGroup() throws InterruptedException {
+        final ThreadGroupUsage usage = new ThreadGroupUsage(new ThreadGroup("empty-usage-test"));
+        final Thread busy = busyThread(new ThreadGroup("other-usage-test"), new Counter());
+        busy.start();
+        Thread.sleep(50);
+        usage.sample();
+        busy.join();
+        Assert.assertTrue(usage.getCpuTimeNanos() <= 0);
+        Assert.assertTrue(usage.getAllocatedBytes() <= 0);
+    }
+}
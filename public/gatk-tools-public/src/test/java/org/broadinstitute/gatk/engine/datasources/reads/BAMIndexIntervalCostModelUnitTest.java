@@ -0,0 +1,117 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.datasources.reads;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMFileWriterFactory;
+import htsjdk.samtools.SAMRecord;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.Utils;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * UnitTests for the estimation of interval costs from BAM indices
+ */
+public class BAMIndexIntervalCostModelUnitTest extends BaseTest {
+    private final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(2, 1, 1000000);
+    private final GenomeLocParser genomeLocParser = new GenomeLocParser(header.getSequenceDictionary());
+
+    private File bamFile;
+
+    /**
+     * Write a BAM with a read every 100 bases of chr1:1-200000, and a read every base of chr1:100001-120000
+     */
+    @BeforeClass
+    public void writeBAM() {
+        bamFile = createTempFile("bamIndexIntervalCostModel", ".bam");
+        header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+        final SAMFileWriter writer = new SAMFileWriterFactory().setCreateIndex(true).makeBAMWriter(header, true, bamFile);
+        for ( int start = 1; start <= 200000; start++ ) {
+            if ( start % 100 != 0 && (start <= 100000 || start > 120000) )
+                continue;
+            final SAMRecord read = ArtificialSAMUtils.createArtificialRead(header, "read" + start, 0, start, 100);
+            read.setReadBases(Utils.dupBytes((byte)'A', 100));
+            read.setBaseQualities(Utils.dupBytes((byte)30, 100));
+            writer.addAlignment(read);
+        }
+        writer.close();
+        new File(bamFile.getPath().replaceAll("\\.bam$", ".bai")).deleteOnExit();
+    }
+
+    private GenomeLoc loc(final String contig, final int start, final int stop) {
+        return genomeLocParser.createGenomeLoc(contig, start, stop);
+    }
+
+    @Test
+    public void testCostFollowsReads() {
+        final BAMIndexIntervalCostModel model = BAMIndexIntervalCostModel.fromBAMFiles(Collections.singletonList(bamFile));
+
+        final double sparse = model.getCost(loc("chr1", 20001, 40000));
+        final double dense = model.getCost(loc("chr1", 100001, 120000));
+        final double empty = model.getCost(loc("chr1", 500001, 520000));
+        Assert.assertTrue(sparse > empty, "sparse " + sparse + " empty " + empty);
+        Assert.assertTrue(dense > 10 * sparse, "dense " + dense + " sparse " + sparse);
+
+        // regions without reads only cost their bases
+        Assert.assertEquals(empty, BAMIndexIntervalCostModel.DEFAULT_COST_PER_BASE * 20000, 1e-6);
+        Assert.assertEquals(model.getCost(loc("chr2", 1, 1000)), BAMIndexIntervalCostModel.DEFAULT_COST_PER_BASE * 1000, 1e-6);
+    }
+
+    @Test
+    public void testCostsAreAdditive() {
+        final BAMIndexIntervalCostModel model = BAMIndexIntervalCostModel.fromBAMFiles(Collections.singletonList(bamFile));
+        final GenomeLoc whole = loc("chr1", 1, 250000);
+        for ( int cut = 2; cut <= whole.getStop(); cut += 9973 ) {
+            final GenomeLoc[] parts = whole.split(cut);
+            Assert.assertEquals(model.getCost(parts[0]) + model.getCost(parts[1]), model.getCost(whole), 1e-6, "cut at " + cut);
+        }
+    }
+
+    @Test
+    public void testCostsAddUpOverBAMs() {
+        final BAMIndexIntervalCostModel one = BAMIndexIntervalCostModel.fromBAMFiles(Collections.singletonList(bamFile));
+        final BAMIndexIntervalCostModel two = BAMIndexIntervalCostModel.fromBAMFiles(Arrays.asList(bamFile, bamFile));
+        final GenomeLoc dense = loc("chr1", 100001, 120000);
+        final double perBase = BAMIndexIntervalCostModel.DEFAULT_COST_PER_BASE * dense.size();
+        Assert.assertEquals(two.getCost(dense) - perBase, 2 * (one.getCost(dense) - perBase), 1e-6);
+    }
+
+    @Test(expectedExceptions = UserException.CouldNotReadInputFile.class)
+    public void testMissingIndex() {
+        BAMIndexIntervalCostModel.fromBAMFiles(Collections.singletonList(createTempFile("bamIndexIntervalCostModel", ".bam")));
+    }
+}
@@ -0,0 +1,249 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.datasources.reads;
+
+import htsjdk.samtools.GATKBAMFileSpan;
+import htsjdk.samtools.GATKChunk;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.commandline.Tags;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Checks the bytes presented by BlockInputStream, loaded asynchronously by the BGZFBlockLoadingDispatcher,
+ * against a serial read of the same BGZF file with Picard's BlockCompressedInputStream.
+ */
+public class BlockInputStreamUnitTest extends BaseTest {
+    /** Enough data for many more blocks than the stream buffers at once */
+    private static final int UNCOMPRESSED_SIZE = 1024 * 1024 + 12345;
+
+    private BGZFBlockLoadingDispatcher dispatcher;
+    private SAMReaderID reader;
+    private byte[] contents;
+    private List<Long> blockAddresses;
+
+    @BeforeClass
+    public void setup() throws IOException {
+        final File file = createTempFile("BlockInputStreamUnitTest", ".bgzf");
+
+        // bases compress about four fold, so each block is a fraction of its maximum size on disk
+        final Random random = new Random(42);
+        contents = new byte[UNCOMPRESSED_SIZE];
+        for ( int i = 0; i < contents.length; i++ )
+            contents[i] = (byte)"ACGT".charAt(random.nextInt(4));
+
+        final BlockCompressedOutputStream out = new BlockCompressedOutputStream(file);
+        out.write(contents);
+        out.close();
+
+        blockAddresses = readBlockAddresses(file);
+        Assert.assertTrue(blockAddresses.size() > 10, "too few blocks in the test file: " + blockAddresses.size());
+
+        reader = new SAMReaderID(file, new Tags());
+        dispatcher = new BGZFBlockLoadingDispatcher(2, 2);
+    }
+
+    @DataProvider(name = "ReadSizes")
+    public Object[][] makeReadSizes() {
+        return new Object[][]{{1}, {1000}, {BlockLoader.MAX_BLOCK_SIZE + 7}, {UNCOMPRESSED_SIZE * 2}};
+    }
+
+    @Test(dataProvider = "ReadSizes")
+    public void testSequentialReadMatchesSerialRead(final int readSize) {
+        final BlockInputStream stream = new BlockInputStream(dispatcher, reader, false);
+        try {
+            Assert.assertEquals(readFully(stream, readSize), contents);
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Test
+    public void testEOF() {
+        final BlockInputStream stream = new BlockInputStream(dispatcher, reader, false);
+        try {
+            Assert.assertEquals(readFully(stream, 4096).length, UNCOMPRESSED_SIZE);
+            Assert.assertTrue(stream.eof());
+            Assert.assertEquals(stream.read(new byte[10], 0, 10), -1);
+            Assert.assertEquals(stream.read(new byte[10], 0, 10), -1);
+        } finally {
+            stream.close();
+        }
+    }
+
+    @DataProvider(name = "Spans")
+    public Object[][] makeSpans() {
+        // block indices and offsets into the uncompressed blocks, as {startBlock, startOffset, endBlock, endOffset}
+        return new Object[][]{
+                {Arrays.asList(new int[]{1, 100, 1, 2000})},                            // within one block
+                {Arrays.asList(new int[]{1, 100, 4, 2000})},                            // across several block boundaries
+                {Arrays.asList(new int[]{2, 0, 3, 0})},                                 // exactly one whole block
+                {Arrays.asList(new int[]{0, 0, 9, 0})},                                 // more blocks than the buffer holds
+                {Arrays.asList(new int[]{1, 10, 2, 20}, new int[]{2, 30, 5, 40})},      // two chunks sharing a block
+                {Arrays.asList(new int[]{0, 5, 1, 5}, new int[]{6, 500, 8, 60000})},    // skipping blocks between chunks
+        };
+    }
+
+    @Test(dataProvider = "Spans")
+    public void testSeekAcrossBlockBoundaries(final List<int[]> chunks) throws IOException {
+        final GATKBAMFileSpan span = makeSpan(chunks);
+        final byte[] expected = readSerially(span);
+        Assert.assertTrue(expected.length > 0);
+
+        final BlockInputStream stream = new BlockInputStream(dispatcher, reader, false);
+        try {
+            stream.submitAccessPlan(new BAMAccessPlan(reader, stream, span));
+            Assert.assertEquals(readFully(stream, 777), expected);
+
+            // seeking back to the same span must present the same data again
+            stream.submitAccessPlan(new BAMAccessPlan(reader, stream, span));
+            Assert.assertEquals(readFully(stream, 100000), expected);
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Test
+    public void testSeekBeforeSpanIsExhausted() throws IOException {
+        final GATKBAMFileSpan first = makeSpan(Arrays.asList(new int[]{0, 0, 9, 0}));
+        final GATKBAMFileSpan second = makeSpan(Arrays.asList(new int[]{3, 17, 5, 100}));
+
+        final BlockInputStream stream = new BlockInputStream(dispatcher, reader, false);
+        try {
+            // leave blocks read ahead under the first plan in the buffer when seeking away
+            stream.submitAccessPlan(new BAMAccessPlan(reader, stream, first));
+            final byte[] partial = new byte[1000];
+            Assert.assertEquals(stream.read(partial, 0, partial.length), partial.length);
+            Assert.assertEquals(partial, Arrays.copyOf(contents, partial.length));
+
+            stream.submitAccessPlan(new BAMAccessPlan(reader, stream, second));
+            Assert.assertEquals(readFully(stream, 1000), readSerially(second));
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentReadersOnOneFile() throws Exception {
+        final int numReaders = 6;
+        final ExecutorService executor = Executors.newFixedThreadPool(numReaders);
+        try {
+            final List<Future<byte[]>> results = new ArrayList<Future<byte[]>>();
+            for ( int i = 0; i < numReaders; i++ ) {
+                final int readSize = 1000 + 3017 * i;
+                results.add(executor.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() {
+                        final BlockInputStream stream = new BlockInputStream(dispatcher, reader, false);
+                        try {
+                            return readFully(stream, readSize);
+                        } finally {
+                            stream.close();
+                        }
+                    }
+                }));
+            }
+            for ( final Future<byte[]> result : results )
+                Assert.assertEquals(result.get(), contents);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Read the stream until it reports the end of its data
+     */
+    private static byte[] readFully(final BlockInputStream stream, final int readSize) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] bytes = new byte[readSize];
+        int bytesRead;
+        while ( (bytesRead = stream.read(bytes, 0, bytes.length)) > 0 )
+            out.write(bytes, 0, bytesRead);
+        return out.toByteArray();
+    }
+
+    /**
+     * Read the chunks of the span one after another with Picard's serial BGZF reader
+     */
+    private byte[] readSerially(final GATKBAMFileSpan span) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final BlockCompressedInputStream in = new BlockCompressedInputStream(reader.samFile);
+        try {
+            for ( final GATKChunk chunk : span.getGATKChunks() ) {
+                in.seek(chunk.getChunkStart());
+                while ( in.getFilePointer() < chunk.getChunkEnd() )
+                    out.write(in.read());
+            }
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+
+    private GATKBAMFileSpan makeSpan(final List<int[]> chunks) {
+        final List<GATKChunk> gatkChunks = new ArrayList<GATKChunk>();
+        for ( final int[] chunk : chunks )
+            gatkChunks.add(new GATKChunk(blockAddresses.get(chunk[0]), chunk[1], blockAddresses.get(chunk[2]), chunk[3]));
+        return new GATKBAMFileSpan(gatkChunks.toArray(new GATKChunk[gatkChunks.size()]));
+    }
+
+    /**
+     * @return the addresses of the BGZF blocks of the file, from the block sizes in their headers
+     */
+    private static List<Long> readBlockAddresses(final File file) throws IOException {
+        final List<Long> addresses = new ArrayList<Long>();
+        final RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            final byte[] header = new byte[18];
+            for ( long address = 0; address < in.length(); ) {
+                addresses.add(address);
+                in.seek(address);
+                in.readFully(header);
+                address += ((header[16] & 0xff) | (header[17] & 0xff) << 8) + 1;
+            }
+        } finally {
+            in.close();
+        }
+        return addresses;
+    }
+}
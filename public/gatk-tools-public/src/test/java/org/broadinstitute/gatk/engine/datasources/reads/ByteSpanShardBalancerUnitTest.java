@@ -0,0 +1,148 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.datasources.reads;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMFileWriterFactory;
+import htsjdk.samtools.SAMReadGroupRecord;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMTag;
+import htsjdk.samtools.ValidationStringency;
+import org.broadinstitute.gatk.engine.arguments.ValidationExclusion;
+import org.broadinstitute.gatk.engine.downsampling.DownsamplingMethod;
+import org.broadinstitute.gatk.engine.executive.ShardCostDiagnostics;
+import org.broadinstitute.gatk.engine.filters.ReadFilter;
+import org.broadinstitute.gatk.engine.resourcemanagement.ThreadAllocation;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.Utils;
+import org.broadinstitute.gatk.utils.commandline.Tags;
+import org.broadinstitute.gatk.utils.interval.IntervalMergingRule;
+import org.broadinstitute.gatk.utils.interval.IntervalUtils;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * UnitTests for balancing locus shards by the compressed bytes of BAM they span
+ */
+public class ByteSpanShardBalancerUnitTest extends BaseTest {
+    private final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(2, 1, 300000);
+    private final GenomeLocParser genomeLocParser = new GenomeLocParser(header.getSequenceDictionary());
+
+    private SAMDataSource dataSource;
+
+    /**
+     * Write a BAM with a read every 100 bases of both contigs, and a read every base of chr1:100001-140000
+     */
+    @BeforeClass
+    public void createDataSource() {
+        final File bamFile = createTempFile("byteSpanShardBalancer", ".bam");
+        header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+        final SAMReadGroupRecord readGroup = new SAMReadGroupRecord("rg");
+        readGroup.setSample("sample");
+        header.addReadGroup(readGroup);
+        final SAMFileWriter writer = new SAMFileWriterFactory().setCreateIndex(true).makeBAMWriter(header, true, bamFile);
+        for ( int contig = 0; contig < 2; contig++ ) {
+            for ( int start = 1; start <= 299900; start++ ) {
+                if ( start % 100 != 0 && (contig != 0 || start <= 100000 || start > 140000) )
+                    continue;
+                final SAMRecord read = ArtificialSAMUtils.createArtificialRead(header, "read" + contig + "_" + start, contig, start, 100);
+                read.setReadBases(Utils.dupBytes((byte)'A', 100));
+                read.setBaseQualities(Utils.dupBytes((byte)30, 100));
+                read.setAttribute(SAMTag.RG.name(), "rg");
+                writer.addAlignment(read);
+            }
+        }
+        writer.close();
+        new File(bamFile.getPath().replaceAll("\\.bam$", ".bai")).deleteOnExit();
+
+        dataSource = new SAMDataSource(Arrays.asList(new SAMReaderID(bamFile, new Tags())),
+                new ThreadAllocation(),
+                null,
+                genomeLocParser,
+                false,
+                ValidationStringency.SILENT,
+                ReadShard.DEFAULT_MAX_READS,
+                DownsamplingMethod.NONE,
+                new ValidationExclusion(),
+                new ArrayList<ReadFilter>(),
+                false);
+    }
+
+    private List<Shard> getShards(final ShardBalancer balancer) {
+        final List<Shard> shards = new ArrayList<Shard>();
+        for ( final Shard shard : dataSource.createShardIteratorOverMappedReads(balancer) )
+            shards.add(shard);
+        return shards;
+    }
+
+    @Test
+    public void testShardsAreBalancedByCompressedSize() {
+        final List<Shard> locusShards = getShards(new LocusShardBalancer());
+        final Set<List<GenomeLoc>> locusShardLocations = new HashSet<List<GenomeLoc>>();
+        for ( final Shard shard : locusShards )
+            locusShardLocations.add(shard.getGenomeLocs());
+
+        final ByteSpanShardBalancer balancer = new ByteSpanShardBalancer(10);
+        final List<Shard> shards = getShards(balancer);
+        Assert.assertTrue(shards.size() < locusShards.size(), shards.size() + " shards balanced by size, " + locusShards.size() + " shards otherwise");
+
+        final List<GenomeLoc> locations = new ArrayList<GenomeLoc>();
+        for ( final Shard shard : shards ) {
+            // a shard over more than the target size can only be one that couldn't be divided any further
+            if ( ShardCostDiagnostics.getCompressedSize(shard) > balancer.getTargetShardSize() )
+                Assert.assertTrue(locusShardLocations.contains(shard.getGenomeLocs()), "shard " + shard.getGenomeLocs() + " is too large");
+
+            final List<GenomeLoc> shardLocations = shard.getGenomeLocs();
+            Assert.assertEquals(shardLocations.get(0).getContigIndex(), shardLocations.get(shardLocations.size() - 1).getContigIndex());
+            locations.addAll(shardLocations);
+        }
+
+        // the shards cover both contigs exactly once
+        Assert.assertEquals(IntervalUtils.mergeIntervalLocations(locations, IntervalMergingRule.ALL),
+                Arrays.asList(genomeLocParser.createOverEntireContig("chr1"), genomeLocParser.createOverEntireContig("chr2")));
+        long size = 0;
+        for ( final GenomeLoc loc : locations )
+            size += loc.size();
+        Assert.assertEquals(size, 600000);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNoShards() {
+        new ByteSpanShardBalancer(0);
+    }
+}
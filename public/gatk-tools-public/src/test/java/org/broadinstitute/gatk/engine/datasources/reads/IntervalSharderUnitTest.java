@@ -0,0 +1,218 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+package org.broadinstitute.gatk.engine.datasources.reads;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMFileWriterFactory;
+import htsjdk.samtools.SAMReadGroupRecord;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMTag;
+import htsjdk.samtools.ValidationStringency;
+import org.broadinstitute.gatk.engine.arguments.ValidationExclusion;
+import org.broadinstitute.gatk.engine.downsampling.DownsamplingMethod;
+import org.broadinstitute.gatk.engine.filters.ReadFilter;
+import org.broadinstitute.gatk.engine.resourcemanagement.ThreadAllocation;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.GenomeLocSortedSet;
+import org.broadinstitute.gatk.utils.Utils;
+import org.broadinstitute.gatk.utils.commandline.Tags;
+import org.broadinstitute.gatk.utils.interval.IntervalCostModel;
+import org.broadinstitute.gatk.utils.interval.IntervalMergingRule;
+import org.broadinstitute.gatk.utils.interval.IntervalUtils;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * UnitTests for combining the file pointers of intervals by their expected cost
+ */
+public class IntervalSharderUnitTest extends BaseTest {
+    private final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(2, 1, 1000000);
+    private final GenomeLocParser genomeLocParser = new GenomeLocParser(header.getSequenceDictionary());
+
+    /**
+     * Costs one per base, except on the interval chr1:400001-401000 where every base costs a hundred
+     */
+    private final IntervalCostModel hotspotModel = new IntervalCostModel() {
+        @Override
+        public double getCost(final GenomeLoc loc) {
+            final GenomeLoc hotspot = genomeLocParser.createGenomeLoc("chr1", 400001, 401000);
+            return loc.size() + (loc.overlapsP(hotspot) ? 99 * loc.intersect(hotspot).size() : 0);
+        }
+    };
+
+    private SAMDataSource dataSource;
+
+    /**
+     * 1000 base intervals every 50000 bases of both contigs
+     */
+    private GenomeLocSortedSet intervals;
+
+    /**
+     * Write a BAM with a read every 100 bases of both contigs
+     */
+    @BeforeClass
+    public void createDataSource() {
+        final File bamFile = createTempFile("intervalSharder", ".bam");
+        header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+        final SAMReadGroupRecord readGroup = new SAMReadGroupRecord("rg");
+        readGroup.setSample("sample");
+        header.addReadGroup(readGroup);
+        final SAMFileWriter writer = new SAMFileWriterFactory().setCreateIndex(true).makeBAMWriter(header, true, bamFile);
+        for ( int contig = 0; contig < 2; contig++ ) {
+            for ( int start = 100; start < 1000000; start += 100 ) {
+                final SAMRecord read = ArtificialSAMUtils.createArtificialRead(header, "read" + contig + "_" + start, contig, start, 100);
+                read.setReadBases(Utils.dupBytes((byte)'A', 100));
+                read.setBaseQualities(Utils.dupBytes((byte)30, 100));
+                read.setAttribute(SAMTag.RG.name(), "rg");
+                writer.addAlignment(read);
+            }
+        }
+        writer.close();
+        new File(bamFile.getPath().replaceAll("\\.bam$", ".bai")).deleteOnExit();
+
+        dataSource = new SAMDataSource(Arrays.asList(new SAMReaderID(bamFile, new Tags())),
+                new ThreadAllocation(),
+                null,
+                genomeLocParser,
+                false,
+                ValidationStringency.SILENT,
+                ReadShard.DEFAULT_MAX_READS,
+                DownsamplingMethod.NONE,
+                new ValidationExclusion(),
+                new ArrayList<ReadFilter>(),
+                false);
+
+        intervals = new GenomeLocSortedSet(genomeLocParser);
+        for ( final String contig : Arrays.asList("chr1", "chr2") )
+            for ( int start = 1; start < 1000000; start += 50000 )
+                intervals.add(genomeLocParser.createGenomeLoc(contig, start, start + 999));
+    }
+
+    private static List<FilePointer> getFilePointers(final IntervalSharder sharder) {
+        final List<FilePointer> filePointers = new ArrayList<FilePointer>();
+        while ( sharder.hasNext() )
+            filePointers.add(sharder.next());
+        sharder.close();
+        return filePointers;
+    }
+
+    private double getCost(final List<GenomeLoc> locs) {
+        double cost = 0;
+        for ( final GenomeLoc loc : locs )
+            cost += hotspotModel.getCost(loc);
+        return cost;
+    }
+
+    private List<GenomeLoc> getMergedLocations(final List<FilePointer> filePointers) {
+        final List<GenomeLoc> locations = new ArrayList<GenomeLoc>();
+        for ( final FilePointer filePointer : filePointers )
+            locations.addAll(filePointer.getLocations());
+        return IntervalUtils.mergeIntervalLocations(locations, IntervalMergingRule.ALL);
+    }
+
+    @Test
+    public void testCheapFilePointersAreCombined() {
+        final List<FilePointer> uncombined = getFilePointers(IntervalSharder.shardOverIntervals(dataSource, intervals, IntervalMergingRule.ALL));
+        final int numShards = 4;
+        final List<FilePointer> combined = getFilePointers(IntervalSharder.shardOverIntervals(dataSource, intervals, IntervalMergingRule.ALL, hotspotModel, numShards));
+        final double maxCombinedCost = getCost(intervals.toList()) / numShards;
+
+        // without a cost model the distant intervals have file pointers of their own
+        Assert.assertTrue(uncombined.size() >= intervals.size());
+        Assert.assertTrue(combined.size() < uncombined.size(), combined.size() + " combined file pointers, " + uncombined.size() + " otherwise");
+
+        for ( int i = 0; i < combined.size(); i++ ) {
+            final List<GenomeLoc> locations = combined.get(i).getLocations();
+            Assert.assertEquals(locations.get(0).getContigIndex(), locations.get(locations.size() - 1).getContigIndex(), "file pointer crosses contigs");
+
+            // only a single expensive interval may go over the combined cost
+            final double cost = getCost(locations);
+            if ( cost > maxCombinedCost )
+                Assert.assertEquals(IntervalUtils.mergeIntervalLocations(locations, IntervalMergingRule.ALL),
+                        Collections.singletonList(genomeLocParser.createGenomeLoc("chr1", 400001, 401000)));
+
+            // and neighbouring file pointers on a contig are only kept apart when combining them would cost too much
+            if ( i + 1 < combined.size() ) {
+                final GenomeLoc nextStart = combined.get(i + 1).getLocations().get(0);
+                if ( nextStart.getContigIndex() == locations.get(0).getContigIndex() ) {
+                    final FilePointer next = findStartingAt(uncombined, nextStart);
+                    Assert.assertTrue(cost + getCost(next.getLocations()) > maxCombinedCost, "file pointer ending " + locations.get(locations.size() - 1) + " should have been combined");
+                }
+            }
+        }
+
+        // all 20000 bases of chr2 cost less than a quarter of the total, so they are traversed together
+        Assert.assertEquals(combined.get(combined.size() - 1).getLocations().get(0), genomeLocParser.createGenomeLoc("chr2", 1, 1000));
+
+        // the combined file pointers still cover the intervals exactly once
+        Assert.assertEquals(getMergedLocations(combined), intervals.toList());
+        Assert.assertEquals(getMergedLocations(uncombined), intervals.toList());
+    }
+
+    private static FilePointer findStartingAt(final List<FilePointer> filePointers, final GenomeLoc start) {
+        for ( final FilePointer filePointer : filePointers )
+            if ( filePointer.getLocations().get(0).getContigIndex() == start.getContigIndex() && filePointer.getLocations().get(0).getStart() == start.getStart() )
+                return filePointer;
+        throw new IllegalStateException("No file pointer starts at " + start);
+    }
+
+    @Test
+    public void testCostBalancedShardsCoverIntervals() {
+        final List<GenomeLoc> locations = new ArrayList<GenomeLoc>();
+        int nShards = 0;
+        for ( final Shard shard : dataSource.createShardIteratorOverIntervals(intervals, new LocusShardBalancer(), hotspotModel, 4) ) {
+            locations.addAll(shard.getGenomeLocs());
+            nShards++;
+        }
+
+        int nUncombinedShards = 0;
+        for ( final Shard shard : dataSource.createShardIteratorOverIntervals(intervals, new LocusShardBalancer()) )
+            nUncombinedShards++;
+
+        Assert.assertTrue(nShards < nUncombinedShards, nShards + " cost balanced shards, " + nUncombinedShards + " otherwise");
+        Assert.assertEquals(IntervalUtils.mergeIntervalLocations(locations, IntervalMergingRule.ALL), intervals.toList());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNoCostModel() {
+        IntervalSharder.shardOverIntervals(dataSource, intervals, IntervalMergingRule.ALL, null, 4);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNoShards() {
+        IntervalSharder.shardOverIntervals(dataSource, intervals, IntervalMergingRule.ALL, hotspotModel, 0);
+    }
+}
@@ -89,7 +89,7 @@ public class ReadShardBalancerUnitTest extends BaseTest {
                                                          new GenomeLocParser(header.getSequenceDictionary()),
                                                          false,
                                                          ValidationStringency.SILENT,
-                                                         ReadShard.DEFAULT_MAX_READS,  // reset ReadShard.MAX_READS to ReadShard.DEFAULT_MAX_READS for each test
+                                                         ReadShard.DEFAULT_MAX_READS,  // read shards buffer ReadShard.DEFAULT_MAX_READS reads in each test
                                                          downsamplingMethod,
                                                          new ValidationExclusion(),
                                                          new ArrayList<ReadFilter>(),
@@ -104,6 +104,9 @@ public class ReadShardBalancerUnitTest extends BaseTest {
                 int numContigsThisShard = 0;
                 SAMRecord lastRead = null;
 
+                // the buffer size comes from this data source, not from whichever one was created last
+                Assert.assertEquals(((ReadShard)shard).getReadBufferSize(), ReadShard.DEFAULT_MAX_READS);
+
                 for ( SAMRecord read : shard.iterator() ) {
                     totalReadsSeen++;
 
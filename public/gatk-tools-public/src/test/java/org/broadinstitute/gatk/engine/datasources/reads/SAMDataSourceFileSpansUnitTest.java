@@ -0,0 +1,140 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.datasources.reads;
+
+import htsjdk.samtools.*;
+import org.broadinstitute.gatk.engine.arguments.ValidationExclusion;
+import org.broadinstitute.gatk.engine.filters.ReadFilter;
+import org.broadinstitute.gatk.engine.iterators.GATKSAMIterator;
+import org.broadinstitute.gatk.engine.resourcemanagement.ThreadAllocation;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.commandline.Tags;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Tests narrowing the file spans of a shard to the reads that can overlap the later part of its loci,
+ * as done for the shards split off by the WorkStealingMicroScheduler
+ */
+public class SAMDataSourceFileSpansUnitTest extends BaseTest {
+    private static final int CONTIG_LENGTH = 100000;
+    private static final int READ_LENGTH = 100;
+
+    private GenomeLocParser parser;
+    private SAMDataSource dataSource;
+    private SAMReaderID reader;
+
+    @BeforeClass
+    public void setup() {
+        final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(1, 1, CONTIG_LENGTH);
+        final SAMReadGroupRecord readGroup = new SAMReadGroupRecord("rg");
+        readGroup.setSample("sample");
+        header.addReadGroup(readGroup);
+        parser = new GenomeLocParser(header.getSequenceDictionary());
+
+        final File bam = createTempFile("SAMDataSourceFileSpansUnitTest", ".bam");
+        final SAMFileWriter writer = new SAMFileWriterFactory().setCreateIndex(true).makeBAMWriter(header, true, bam);
+        for ( int start = 1; start + READ_LENGTH <= CONTIG_LENGTH; start += 10 ) {
+            final SAMRecord read = ArtificialSAMUtils.createArtificialRead(header, "read" + start, 0, start, READ_LENGTH);
+            read.setAttribute("RG", readGroup.getId());
+            writer.addAlignment(read);
+        }
+        writer.close();
+        new File(bam.getPath().replace(".bam", ".bai")).deleteOnExit();
+
+        reader = new SAMReaderID(bam, new Tags());
+        dataSource = new SAMDataSource(Arrays.asList(reader),
+                new ThreadAllocation(),
+                null,
+                parser,
+                false,
+                ValidationStringency.SILENT,
+                null,
+                null,
+                new ValidationExclusion(),
+                new ArrayList<ReadFilter>(),
+                false);
+    }
+
+    @DataProvider(name = "SplitPoints")
+    public Object[][] makeSplitPoints() {
+        return new Object[][]{{1}, {16000}, {16385}, {50000}, {60000}, {CONTIG_LENGTH - 50}};
+    }
+
+    @Test(dataProvider = "SplitPoints")
+    public void testFileSpansStartingAt(final int splitPoint) {
+        final Map<SAMReaderID,SAMFileSpan> parentSpans = new HashMap<SAMReaderID,SAMFileSpan>();
+        final GATKBAMFileSpan parentSpan = new GATKBAMFileSpan(new GATKChunk(dataSource.getInitialReaderPositions().get(reader).getGATKChunks().get(0).getChunkStart(), Long.MAX_VALUE));
+        parentSpans.put(reader, parentSpan);
+
+        final GenomeLoc splitOff = parser.createGenomeLoc("chr1", splitPoint, CONTIG_LENGTH);
+        final Map<SAMReaderID,SAMFileSpan> narrowedSpans = dataSource.getFileSpansStartingAt(parentSpans, splitOff);
+        final GATKBAMFileSpan narrowedSpan = (GATKBAMFileSpan)narrowedSpans.get(reader);
+
+        // the narrowed span is part of the parent span
+        Assert.assertEquals(narrowedSpan.intersection(parentSpan).getGATKChunks(), narrowedSpan.getGATKChunks());
+        if ( splitPoint > 16384 )
+            Assert.assertTrue(narrowedSpan.getGATKChunks().get(0).getChunkStart() > parentSpan.getGATKChunks().get(0).getChunkStart(),
+                    "span wasn't narrowed for a split at " + splitPoint);
+
+        // and holds every read overlapping the split off loci
+        final List<String> parentReads = readsOverlapping(parentSpans, splitOff);
+        final List<String> narrowedReads = readsOverlapping(narrowedSpans, splitOff);
+        Assert.assertFalse(parentReads.isEmpty());
+        Assert.assertEquals(narrowedReads, parentReads);
+    }
+
+    @Test
+    public void testUnmappedSpansAreLeftAlone() {
+        final Map<SAMReaderID,SAMFileSpan> spans = new HashMap<SAMReaderID,SAMFileSpan>();
+        spans.put(reader, new GATKBAMFileSpan(new GATKChunk(0, Long.MAX_VALUE)));
+        Assert.assertEquals(dataSource.getFileSpansStartingAt(spans, GenomeLoc.UNMAPPED), spans);
+    }
+
+    /**
+     * @return the names of the reads read from fileSpans overlapping loc, in order
+     */
+    private List<String> readsOverlapping(final Map<SAMReaderID,SAMFileSpan> fileSpans, final GenomeLoc loc) {
+        final List<String> reads = new ArrayList<String>();
+        final GATKSAMIterator iterator = dataSource.seek(new LocusShard(parser, dataSource, Collections.singletonList(loc), fileSpans));
+        try {
+            for ( final SAMRecord read : iterator )
+                if ( read.getAlignmentEnd() >= loc.getStart() && read.getAlignmentStart() <= loc.getStop() )
+                    reads.add(read.getReadName());
+        } finally {
+            iterator.close();
+        }
+        return reads;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.executive;
+
+import htsjdk.samtools.GATKBAMFileSpan;
+import htsjdk.samtools.GATKChunk;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileSpan;
+import org.broadinstitute.gatk.engine.datasources.reads.LocusShard;
+import org.broadinstitute.gatk.engine.datasources.reads.SAMDataSource;
+import org.broadinstitute.gatk.engine.datasources.reads.SAMReaderID;
+import org.broadinstitute.gatk.engine.resourcemanagement.ThreadAllocation;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.commandline.Tags;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * UnitTests for the comparison of predicted and actual shard costs
+ */
+public class ShardCostDiagnosticsUnitTest extends BaseTest {
+    private final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(1, 1, 1000000);
+    private final GenomeLocParser genomeLocParser = new GenomeLocParser(header.getSequenceDictionary());
+    private final SAMDataSource dataSource = new SAMDataSource(Collections.<SAMReaderID>emptyList(), new ThreadAllocation(), null, genomeLocParser);
+
+    /**
+     * @return a locus shard spanning the given blocks of two BAMs
+     */
+    private LocusShard createShard(final int start, final long firstBlock, final long lastBlock) {
+        final Map<SAMReaderID,SAMFileSpan> fileSpans = new HashMap<SAMReaderID,SAMFileSpan>();
+        fileSpans.put(new SAMReaderID(new File("one.bam"), new Tags()), new GATKBAMFileSpan(new GATKChunk(firstBlock << 16, lastBlock << 16)));
+        fileSpans.put(new SAMReaderID(new File("two.bam"), new Tags()), new GATKBAMFileSpan(new GATKChunk(firstBlock << 16, (firstBlock + 10) << 16)));
+        return new LocusShard(genomeLocParser, dataSource, Collections.singletonList(genomeLocParser.createGenomeLoc("chr1", start, start + 999)), fileSpans);
+    }
+
+    @Test
+    public void testCompressedSize() {
+        Assert.assertEquals(ShardCostDiagnostics.getCompressedSize(createShard(1, 1000, 1500)), 510);
+    }
+
+    @Test
+    public void testCorrelation() {
+        final ShardCostDiagnostics diagnostics = new ShardCostDiagnostics();
+        for ( int i = 0; i < 10; i++ ) {
+            final LocusShard shard = createShard(1 + 1000 * i, 100000 * i, 100000 * i + 1000 * (i + 1));
+            diagnostics.recordShard(shard, 1000000L * (i + 2));
+        }
+        Assert.assertEquals(diagnostics.getCorrelation(), 1.0, 1e-9);
+        diagnostics.printSummary();
+    }
+
+    @Test
+    public void testNoVariation() {
+        final ShardCostDiagnostics diagnostics = new ShardCostDiagnostics();
+        diagnostics.recordShard(createShard(1, 0, 1000), 1000000L);
+        diagnostics.recordShard(createShard(1001, 1000, 2000), 1000000L);
+        Assert.assertTrue(Double.isNaN(diagnostics.getCorrelation()));
+    }
+}
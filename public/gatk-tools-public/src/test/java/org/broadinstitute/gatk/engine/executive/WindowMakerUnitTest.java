@@ -0,0 +1,125 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.executive;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+import org.broadinstitute.gatk.engine.datasources.reads.MockLocusShard;
+import org.broadinstitute.gatk.engine.datasources.reads.Shard;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests splitting the remaining work of a WindowMaker while it's being traversed
+ */
+public class WindowMakerUnitTest extends BaseTest {
+    private SAMFileHeader header;
+    private GenomeLocParser genomeLocParser;
+    private List<GenomeLoc> intervals;
+
+    @BeforeClass
+    public void setup() {
+        header = ArtificialSAMUtils.createArtificialSamHeader(1, 0, 100000);
+        genomeLocParser = new GenomeLocParser(header.getSequenceDictionary());
+        intervals = Arrays.asList(genomeLocParser.createGenomeLoc("chr0", 100, 20000),
+                genomeLocParser.createGenomeLoc("chr0", 30000, 31000),
+                genomeLocParser.createGenomeLoc("chr0", 50000, 80000));
+    }
+
+    private WindowMaker makeWindowMaker() {
+        // reads covering every locus of the intervals
+        final List<SAMRecord> reads = new ArrayList<SAMRecord>();
+        for ( int start = 1; start < 90000; start += 37 )
+            reads.add(ArtificialSAMUtils.createArtificialRead(header, "read" + start, 0, start, 50));
+        final Shard shard = new MockLocusShard(genomeLocParser, intervals);
+        return new WindowMaker(shard, genomeLocParser, ArtificialSAMUtils.createReadIterator(reads), intervals);
+    }
+
+    private List<Integer> allPositions(final List<GenomeLoc> locs) {
+        final List<Integer> positions = new ArrayList<Integer>();
+        for ( final GenomeLoc loc : locs )
+            for ( int pos = loc.getStart(); pos <= loc.getStop(); pos++ )
+                positions.add(pos);
+        return positions;
+    }
+
+    @DataProvider(name = "SplitTest")
+    public Object[][] makeSplitTest() {
+        final List<Object[]> tests = new ArrayList<Object[]>();
+        for ( final int nEmittedBeforeSplit : Arrays.asList(0, 1, 1000, 19900, 19901, 20000, 20902, 20903, 40000, 50000, 51000, 51902) )
+            for ( final int minSplitSize : Arrays.asList(1, 1000, 10000) )
+                tests.add(new Object[]{nEmittedBeforeSplit, minSplitSize});
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "SplitTest")
+    public void testSplitCoversRemainingLociExactlyOnce(final int nEmittedBeforeSplit, final int minSplitSize) {
+        final WindowMaker windowMaker = makeWindowMaker();
+        final List<Integer> expected = allPositions(intervals);
+
+        final List<Integer> seen = new ArrayList<Integer>();
+        List<GenomeLoc> splitOff = null;
+        for ( final WindowMaker.WindowMakerIterator window : windowMaker ) {
+            while ( window.hasNext() ) {
+                if ( seen.size() == nEmittedBeforeSplit )
+                    splitOff = windowMaker.trySplit(genomeLocParser, minSplitSize);
+                seen.add(window.next().getLocation().getStart());
+            }
+        }
+
+        // the alignment context about to be emitted has already been claimed when we split, so it can't be split off
+        final int nSplittable = expected.size() - nEmittedBeforeSplit - 1;
+        if ( nSplittable < 2 * minSplitSize ) {
+            Assert.assertNull(splitOff, "Shouldn't be able to split off less than the min split size");
+        } else {
+            Assert.assertNotNull(splitOff, "Should have been able to split");
+            final List<Integer> splitPositions = allPositions(splitOff);
+            Assert.assertTrue(splitPositions.size() >= minSplitSize, "Split off too little");
+            Assert.assertTrue(seen.size() - nEmittedBeforeSplit >= minSplitSize, "Left too little after the split");
+            seen.addAll(splitPositions);
+        }
+
+        Assert.assertEquals(seen, expected, "Loci emitted and split off should together be exactly the loci of the intervals, in order");
+    }
+
+    @Test
+    public void testMonolithicWindowMakerCannotBeSplit() {
+        final Shard shard = new MockLocusShard(genomeLocParser, intervals);
+        final WindowMaker windowMaker = new WindowMaker(shard, genomeLocParser,
+                ArtificialSAMUtils.createReadIterator(new ArrayList<SAMRecord>()), new ArrayList<GenomeLoc>());
+        Assert.assertNull(windowMaker.trySplit(genomeLocParser, 1));
+    }
+}
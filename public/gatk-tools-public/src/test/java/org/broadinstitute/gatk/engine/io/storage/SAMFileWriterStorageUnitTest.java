@@ -0,0 +1,88 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.io.storage;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.util.ProgressLoggerInterface;
+import org.broadinstitute.gatk.engine.GenomeAnalysisEngine;
+import org.broadinstitute.gatk.engine.io.stubs.SAMFileWriterStub;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * UnitTests for the temporary storage of reads written by a shard
+ */
+public class SAMFileWriterStorageUnitTest extends BaseTest {
+    private final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(1, 1, 1000000);
+
+    /**
+     * Collects the reads merged into it
+     */
+    private class CollectingWriter implements SAMFileWriter {
+        final List<String> reads = new ArrayList<String>();
+        public void addAlignment(final SAMRecord read) { reads.add(read.getSAMString()); }
+        public SAMFileHeader getFileHeader() { return header; }
+        public void setProgressLogger(final ProgressLoggerInterface progress) { }
+        public void close() { }
+    }
+
+    @DataProvider(name = "readCounts")
+    public Object[][] makeReadCounts() {
+        // the first few fit in memory, the last spills to the temporary file
+        return new Object[][] { { 0 }, { 1 }, { 1000 }, { 25000 } };
+    }
+
+    @Test(dataProvider = "readCounts")
+    public void testMergeInto(final int numReads) {
+        final SAMFileWriterStub stub = new SAMFileWriterStub(new GenomeAnalysisEngine(), createTempFile("samFileWriterStorage", ".bam"));
+        stub.writeHeader(header);
+        final File tempFile = createTempFile("samFileWriterStorage", ".tmp");
+        final SAMFileWriterStorage storage = new SAMFileWriterStorage(stub, tempFile);
+
+        final List<String> expected = new ArrayList<String>();
+        for ( int i = 0; i < numReads; i++ ) {
+            final SAMRecord read = ArtificialSAMUtils.createArtificialRead(header, "read" + i, 0, 1 + i, 10);
+            expected.add(read.getSAMString());
+            storage.addAlignment(read);
+        }
+        storage.close();
+        Assert.assertEquals(tempFile.length() > 0, numReads > 10000, "temporary file written");
+
+        final CollectingWriter target = new CollectingWriter();
+        storage.mergeInto(target);
+        Assert.assertEquals(target.reads, expected);
+        Assert.assertFalse(tempFile.exists());
+    }
+}
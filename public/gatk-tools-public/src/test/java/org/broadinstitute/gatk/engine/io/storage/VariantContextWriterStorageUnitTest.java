@@ -0,0 +1,174 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.io.storage;
+
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.tribble.FeatureReader;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFHeader;
+import org.broadinstitute.gatk.engine.GenomeAnalysisEngine;
+import org.broadinstitute.gatk.engine.arguments.GATKArgumentCollection;
+import org.broadinstitute.gatk.engine.io.OutputTracker;
+import org.broadinstitute.gatk.engine.io.stubs.Stub;
+import org.broadinstitute.gatk.engine.io.stubs.VariantContextWriterStub;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.exceptions.ReviewedGATKException;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * UnitTests for the temporary storage of variants written by a shard
+ */
+public class VariantContextWriterStorageUnitTest extends BaseTest {
+    private GenomeAnalysisEngine engine;
+    private VCFHeader header;
+    private List<VariantContext> variants;
+
+    @BeforeClass
+    public void setup() throws IOException {
+        engine = new GenomeAnalysisEngine();
+        engine.setArguments(new GATKArgumentCollection());
+        engine.setReferenceDataSource(new File(exampleFASTA));
+
+        final FeatureReader<VariantContext> reader = AbstractFeatureReader.getFeatureReader(publicTestDir + "exampleDBSNP.vcf", new VCFCodec(), false);
+        header = (VCFHeader)reader.getHeader();
+        header.setWriteEngineHeaders(false);
+        variants = new ArrayList<VariantContext>();
+        final Iterator<VariantContext> it = reader.iterator();
+        while ( it.hasNext() )
+            variants.add(it.next());
+        reader.close();
+    }
+
+    /**
+     * Hands out the storage of a single stub, like the output tracker of a thread
+     */
+    private static class SingleStorageTracker extends OutputTracker {
+        private final Object storage;
+        private SingleStorageTracker(final Object storage) { this.storage = storage; }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T getStorage(final Stub<T> stub) { return (T)storage; }
+    }
+
+    @DataProvider(name = "recordCounts")
+    public Object[][] makeRecordCounts() {
+        // up to MAX_BUFFERED_RECORDS the records stay in memory, beyond that they spill to the temporary file
+        final int max = VariantContextWriterStorage.MAX_BUFFERED_RECORDS;
+        return new Object[][] { { 0 }, { 1 }, { 1000 }, { max }, { max + 1 }, { 2 * max + 17 } };
+    }
+
+    @Test(dataProvider = "recordCounts")
+    public void testMergeInto(final int numRecords) throws IOException {
+        final File tempFile = createTempFile("variantContextWriterStorage", ".vcf");
+        final VariantContextWriterStorage storage = createTemporaryStorage(tempFile);
+
+        final List<String> expected = new ArrayList<String>();
+        for ( int i = 0; i < numRecords; i++ ) {
+            final VariantContext vc = variants.get(i % variants.size());
+            expected.add(vc.getChr() + "\t" + vc.getStart() + "\t" + vc.getID());
+            storage.add(vc);
+        }
+        storage.close();
+        Assert.assertEquals(tempFile.length() > 0, numRecords > VariantContextWriterStorage.MAX_BUFFERED_RECORDS, "temporary file written");
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final VariantContextWriterStorage target = new VariantContextWriterStorage(new VariantContextWriterStub(engine, output, Collections.emptyList()));
+        target.writeHeader(header);
+        storage.mergeInto(target);
+        target.close();
+        Assert.assertFalse(tempFile.exists());
+
+        // the merged records follow the single header of the target
+        final List<String> records = new ArrayList<String>();
+        int headerLines = 0;
+        for ( final String line : output.toString().split("\n") ) {
+            if ( line.startsWith("#CHROM") )
+                headerLines++;
+            else if ( ! line.startsWith("#") ) {
+                final String[] fields = line.split("\t");
+                records.add(fields[0] + "\t" + fields[1] + "\t" + fields[2]);
+            }
+        }
+        Assert.assertEquals(headerLines, 1);
+        Assert.assertEquals(records, expected);
+    }
+
+    @Test
+    public void testSpillWritesStubHeader() throws IOException {
+        final File tempFile = createTempFile("variantContextWriterStorage", ".vcf");
+        final VariantContextWriterStorage storage = createTemporaryStorage(tempFile);
+
+        // while the records are buffered, the header is only kept by the stub
+        Assert.assertEquals(tempFile.length(), 0);
+        for ( int i = 0; i <= VariantContextWriterStorage.MAX_BUFFERED_RECORDS; i++ )
+            storage.add(variants.get(i % variants.size()));
+        storage.close();
+
+        final FeatureReader<VariantContext> reader = AbstractFeatureReader.getFeatureReader(tempFile.getAbsolutePath(), new VCFCodec(), false);
+        final VCFHeader spilledHeader = (VCFHeader)reader.getHeader();
+        int spilledRecords = 0;
+        final Iterator<VariantContext> it = reader.iterator();
+        while ( it.hasNext() ) {
+            it.next();
+            spilledRecords++;
+        }
+        reader.close();
+        tempFile.delete();
+
+        Assert.assertEquals(spilledHeader.getGenotypeSamples(), header.getGenotypeSamples());
+        Assert.assertEquals(spilledHeader.getInfoHeaderLines().size(), header.getInfoHeaderLines().size());
+        Assert.assertEquals(spilledHeader.getContigLines().size(), header.getContigLines().size());
+        Assert.assertEquals(spilledRecords, VariantContextWriterStorage.MAX_BUFFERED_RECORDS + 1);
+    }
+
+    @Test(expectedExceptions = ReviewedGATKException.class)
+    public void testAddAfterClose() {
+        final VariantContextWriterStorage storage = createTemporaryStorage(createTempFile("variantContextWriterStorage", ".vcf"));
+        storage.close();
+        storage.add(variants.get(0));
+    }
+
+    /**
+     * Creates the temporary storage of a stub and writes the header through the stub, as a walker would
+     */
+    private VariantContextWriterStorage createTemporaryStorage(final File tempFile) {
+        final VariantContextWriterStub stub = new VariantContextWriterStub(engine, createTempFile("variantContextWriterStub", ".vcf"), Collections.emptyList());
+        final VariantContextWriterStorage storage = new VariantContextWriterStorage(stub, tempFile);
+        stub.register(new SingleStorageTracker(storage));
+        stub.writeHeader(header);
+        return storage;
+    }
+}
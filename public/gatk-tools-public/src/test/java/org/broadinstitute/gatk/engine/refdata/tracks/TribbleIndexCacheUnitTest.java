@@ -0,0 +1,123 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.engine.refdata.tracks;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.tribble.FeatureCodec;
+import htsjdk.tribble.index.Index;
+import htsjdk.variant.vcf.VCFCodec;
+import org.apache.commons.io.FileUtils;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * UnitTests for the persistent Tribble index cache and its use by the RMDTrackBuilder
+ */
+public class TribbleIndexCacheUnitTest extends BaseTest {
+    private static final File VCF_FILE = new File(publicTestDir + "exampleDBSNP.vcf");
+
+    private final SAMSequenceDictionary dict = new SAMSequenceDictionary(Arrays.asList(new SAMSequenceRecord("chr1", 100000)));
+    private final GenomeLocParser genomeLocParser = new GenomeLocParser(dict);
+
+    private File vcf;
+    private File cacheDir;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        cacheDir = createTempFile("tribbleIndexCache", "");
+        Assert.assertTrue(cacheDir.delete());
+        vcf = createTempFile("tribbleIndexCache", ".vcf");
+        FileUtils.copyFile(VCF_FILE, vcf);
+    }
+
+    /**
+     * An RMDTrackBuilder that counts the indices it has to create itself
+     */
+    private class CountingRMDTrackBuilder extends RMDTrackBuilder {
+        private int created = 0;
+
+        private CountingRMDTrackBuilder(final TribbleIndexCache indexCache) {
+            super(dict, genomeLocParser, null, true, null, indexCache);
+        }
+
+        @Override
+        protected Index createIndexInMemory(final File inputFile, final FeatureCodec codec) {
+            created++;
+            return super.createIndexInMemory(inputFile, codec);
+        }
+    }
+
+    @Test
+    public void testCachedIndexIsReused() throws IOException {
+        final CountingRMDTrackBuilder first = new CountingRMDTrackBuilder(new TribbleIndexCache(cacheDir));
+        final Index created = first.loadIndex(vcf, new VCFCodec());
+        Assert.assertEquals(first.created, 1);
+        Assert.assertEquals(cacheDir.listFiles().length, 1);
+
+        final CountingRMDTrackBuilder second = new CountingRMDTrackBuilder(new TribbleIndexCache(cacheDir));
+        final Index cached = second.loadIndex(vcf, new VCFCodec());
+        Assert.assertEquals(second.created, 0, "the cached index was not used");
+        Assert.assertEquals(cached.getSequenceNames(), created.getSequenceNames());
+        Assert.assertEquals(IndexDictionaryUtils.getSequenceDictionaryFromProperties(cached).getSequence("chr1").getSequenceLength(), 100000,
+                "the cached index should carry the validated sequence dictionary");
+    }
+
+    @Test
+    public void testChangedFileIsReindexed() throws IOException {
+        final CountingRMDTrackBuilder builder = new CountingRMDTrackBuilder(new TribbleIndexCache(cacheDir));
+        builder.loadIndex(vcf, new VCFCodec());
+        Assert.assertTrue(vcf.setLastModified(vcf.lastModified() - 10000));
+        builder.loadIndex(vcf, new VCFCodec());
+        Assert.assertEquals(builder.created, 2);
+        Assert.assertEquals(cacheDir.listFiles().length, 2);
+    }
+
+    @Test
+    public void testOtherDictionaryMisses() throws IOException {
+        final TribbleIndexCache cache = new TribbleIndexCache(cacheDir);
+        new CountingRMDTrackBuilder(cache).loadIndex(vcf, new VCFCodec());
+
+        final SAMSequenceDictionary otherDict = new SAMSequenceDictionary(Arrays.asList(new SAMSequenceRecord("chr1", 100000), new SAMSequenceRecord("chr2", 100000)));
+        final RMDTrackBuilder other = new RMDTrackBuilder(otherDict, new GenomeLocParser(otherDict), null, true, null, cache);
+        other.loadIndex(vcf, new VCFCodec());
+        Assert.assertEquals(cacheDir.listFiles().length, 2);
+    }
+
+    @Test
+    public void testUnreadableEntryIsIgnored() throws IOException {
+        final TribbleIndexCache cache = new TribbleIndexCache(cacheDir);
+        FileUtils.writeStringToFile(cache.entryFile(vcf, "variant"), "not an index");
+        Assert.assertNull(cache.get(vcf, "variant"));
+    }
+}
@@ -440,7 +440,7 @@ public class WalkerTest extends BaseTest {
                 // we expected an exception but didn't see it
                 Assert.fail(String.format("Test %s:%s expected exception %s but none was thrown", testClassName, testName, expectedException.toString()));
         } else {
-            if ( CommandLineExecutable.result != 0) {
+            if ( CommandLineExecutable.getResult() != 0) {
                 throw new RuntimeException("Error running the GATK with arguments: " + args);
             }
         }
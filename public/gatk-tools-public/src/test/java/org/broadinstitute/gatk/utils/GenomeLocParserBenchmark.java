@@ -27,8 +27,11 @@ package org.broadinstitute.gatk.utils;
 
 import com.google.caliper.Param;
 import com.google.caliper.SimpleBenchmark;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.reference.IndexedFastaSequenceFile;
 import org.broadinstitute.gatk.utils.fasta.CachingIndexedFastaSequenceFile;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
 
 import java.io.File;
 
@@ -39,41 +42,83 @@ public class GenomeLocParserBenchmark extends SimpleBenchmark {
     private IndexedFastaSequenceFile seq;
     private final int ITERATIONS = 1000000;
 
-    @Param({"NEW", "NONE"})
+    @Param({"STANDARD", "NONE"})
     GenomeLocParser.ValidationLevel validationLevel; // set automatically by framework
 
     @Param({"true", "false"})
     boolean useContigIndex; // set automatically by framework
 
+    private static final int N_READS = 1000;
+    private GenomeLocParser genomeLocParser;
+    private SAMRecord[] reads;
+
     @Override protected void setUp() throws Exception {
-        seq = new CachingIndexedFastaSequenceFile(new File("/Users/depristo/Desktop/broadLocal/localData/human_g1k_v37.fasta"));
+        // seq = new CachingIndexedFastaSequenceFile(new File("/Users/depristo/Desktop/broadLocal/localData/human_g1k_v37.fasta"));
+        // the reads get their own copy of the dictionary, as reads from a BAM file do
+        genomeLocParser = new GenomeLocParser(ArtificialSAMUtils.createArtificialSamHeader(25, 1, 250000000).getSequenceDictionary(), validationLevel);
+        final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(25, 1, 250000000);
+        reads = new SAMRecord[N_READS];
+        for ( int i = 0; i < N_READS; i++ )
+            reads[i] = ArtificialSAMUtils.createArtificialRead(header, "read" + i, 1, 1 + 100 * i, 101);
+    }
+
+    /**
+     * Creates a GenomeLoc for each locus along a contig, as the locus iterator does
+     */
+    public int timeSequentialCreation(int rep) {
+        int sum = 0;
+        for ( int i = 0; i < rep; i++ ) {
+            GenomeLoc last = genomeLocParser.createGenomeLoc("chr2", 1, 1);
+            for ( int j = 1; j < ITERATIONS; j++ ) {
+                if ( useContigIndex )
+                    last = genomeLocParser.createGenomeLoc(last.getContig(), last.getContigIndex(), last.getStart() + 1, last.getStart() + 1);
+                else
+                    last = genomeLocParser.createGenomeLoc(last.getContig(), last.getStart() + 1);
+            }
+            sum += last.getStart();
+        }
+        return sum;
+    }
+
+    /**
+     * As timeSequentialCreation, but tracking the locus as a packed long and creating each GenomeLoc from it
+     */
+    public int timeSequentialCreationFromPackedLocus(int rep) {
+        int sum = 0;
+        for ( int i = 0; i < rep; i++ ) {
+            long locus = PackedLocus.pack(1, 1);
+            for ( int j = 1; j < ITERATIONS; j++ )
+                sum += genomeLocParser.createGenomeLoc(++locus).getStart();
+        }
+        return sum;
+    }
+
+    /**
+     * Creates the GenomeLocs of reads from a header matching the reference, through the validated fast path
+     */
+    public int timeCreationFromReads(int rep) {
+        int sum = 0;
+        for ( int i = 0; i < rep; i++ ) {
+            for ( int j = 0; j < ITERATIONS; j++ )
+                sum += genomeLocParser.createGenomeLoc(reads[j % N_READS]).getStop();
+        }
+        return sum;
+    }
+
+    /**
+     * Creates the same GenomeLocs as timeCreationFromReads, looking up and validating the contig of each read
+     */
+    public int timeCreationFromReadsByContigName(int rep) {
+        int sum = 0;
+        for ( int i = 0; i < rep; i++ ) {
+            for ( int j = 0; j < ITERATIONS; j++ ) {
+                final SAMRecord read = reads[j % N_READS];
+                final int end = read.getReadUnmappedFlag() ? read.getAlignmentStart() : Math.max(read.getAlignmentEnd(), read.getAlignmentStart());
+                sum += genomeLocParser.createGenomeLoc(read.getReferenceName(), read.getReferenceIndex(), read.getAlignmentStart(), end, false).getStop();
+            }
+        }
+        return sum;
     }
-//
-//    public void timeSequentialCreationFromGenomeLoc(int rep) {
-//        final GenomeLocParser genomeLocParser = new GenomeLocParser(seq.getSequenceDictionary(), validationLevel);
-//        GenomeLoc last = genomeLocParser.createGenomeLoc("1", 1, 1);
-//        for ( int i = 0; i < rep; i++ ) {
-//            for ( int j = 1; j < ITERATIONS; j++ ) {
-//                if ( useContigIndex )
-//                    last = genomeLocParser.createGenomeLoc(last.getContig(), last.getContigIndex(), last.getStart() + 1);
-//                else
-//                    last = genomeLocParser.createGenomeLoc(last.getContig(), last.getStart() + 1);
-//            }
-//        }
-//    }
-//
-//    public void timeSequentialCreationFromGenomeLocOriginal(int rep) {
-//        final GenomeLocParserOriginal genomeLocParser = new GenomeLocParserOriginal(seq.getSequenceDictionary());
-//        GenomeLoc last = genomeLocParser.createGenomeLoc("1", 1, 1);
-//        for ( int i = 0; i < rep; i++ ) {
-//            for ( int j = 1; j < ITERATIONS; j++ ) {
-//                if ( useContigIndex )
-//                    last = genomeLocParser.createGenomeLoc(last.getContig(), last.getContigIndex(), last.getStart() + 1);
-//                else
-//                    last = genomeLocParser.createGenomeLoc(last.getContig(), last.getStart() + 1);
-//            }
-//        }
-//    }
 
     public static void main(String[] args) {
         com.google.caliper.Runner.main(GenomeLocParserBenchmark.class, args);
@@ -419,6 +419,49 @@ public class GenomeLocParserUnitTest extends BaseTest {
         Assert.assertEquals(loc.getStop(), read.getAlignmentStart());
     }
 
+    @Test
+    public void testCreationFromSAMRecordOfOtherHeader() {
+        // reads from a header that agrees with the reference get the contig name of the reference's dictionary
+        final SAMFileHeader readHeader = ArtificialSAMUtils.createArtificialSamHeader(1, 1, 10);
+        final GATKSAMRecord read = ArtificialSAMUtils.createArtificialRead(readHeader, "foo", 0, 1, 5);
+        final GenomeLoc loc = genomeLocParser.createGenomeLoc(read);
+        Assert.assertEquals(loc, genomeLocParser.createGenomeLoc("chr1", 1, 5));
+        Assert.assertSame(loc.getContig(), header.getSequenceDictionary().getSequence(0).getSequenceName());
+    }
+
+    @Test(expectedExceptions = ReviewedGATKException.class)
+    public void testCreationFromSAMRecordOfIncompatibleHeader() {
+        final SAMFileHeader readHeader = ArtificialSAMUtils.createArtificialSamHeader(1, 2, 10);
+        final GATKSAMRecord read = ArtificialSAMUtils.createArtificialRead(readHeader, "foo", 0, 1, 5);
+        genomeLocParser.createGenomeLoc(read);
+    }
+
+    @Test
+    public void testCreationFromPackedLocus() {
+        final GenomeLoc loc = genomeLocParser.createGenomeLoc(PackedLocus.pack(0, 7));
+        Assert.assertEquals(loc, genomeLocParser.createGenomeLoc("chr1", 7));
+        Assert.assertSame(loc.getContig(), header.getSequenceDictionary().getSequence(0).getSequenceName());
+        Assert.assertEquals(PackedLocus.ofStart(loc), PackedLocus.pack(0, 7));
+        Assert.assertTrue(genomeLocParser.createGenomeLoc(PackedLocus.ofStart(GenomeLoc.UNMAPPED)).isUnmapped());
+    }
+
+    @Test(expectedExceptions = UserException.MalformedGenomeLoc.class)
+    public void testCreationFromPackedLocusOfUnknownContig() {
+        genomeLocParser.createGenomeLoc(PackedLocus.pack(1, 7));
+    }
+
+    @Test
+    public void testPackedLocusOrder() {
+        final SAMFileHeader twoContigs = ArtificialSAMUtils.createArtificialSamHeader(2, 1, 100);
+        final GenomeLocParser parser = new GenomeLocParser(twoContigs.getSequenceDictionary());
+        final List<GenomeLoc> locs = Arrays.asList(parser.createGenomeLoc("chr1", 1), parser.createGenomeLoc("chr1", 100),
+                parser.createGenomeLoc("chr2", 1), parser.createGenomeLoc("chr2", 2), GenomeLoc.UNMAPPED);
+        for ( final GenomeLoc a : locs ) {
+            for ( final GenomeLoc b : locs )
+                Assert.assertEquals(Long.signum(PackedLocus.ofStart(a) - PackedLocus.ofStart(b)), Integer.signum(a.compareTo(b)), a + " vs " + b);
+        }
+    }
+
     @Test
     public void testCreationFromFeature() {
         final Feature feature = new BasicFeature("chr1", 1, 5);
@@ -166,6 +166,20 @@ public class GenomeLocSortedSetUnitTest extends BaseTest {
         assertEquals(loc.getContigIndex(), 1);
     }
 
+    @Test
+    public void mergingSpansSeveralRegions() {
+        mSortedSet.add(genomeLocParser.createGenomeLoc(contigOneName, 1, 10));
+        mSortedSet.add(genomeLocParser.createGenomeLoc(contigOneName, 20, 30));
+        mSortedSet.add(genomeLocParser.createGenomeLoc(contigOneName, 40, 50));
+        mSortedSet.add(genomeLocParser.createGenomeLoc(contigOneName, 60, 70));
+        mSortedSet.addRegion(genomeLocParser.createGenomeLoc(contigOneName, 5, 45));
+        assertEquals(mSortedSet.size(), 2);
+        assertEquals(mSortedSet.toList().get(0), genomeLocParser.createGenomeLoc(contigOneName, 1, 50));
+        assertEquals(mSortedSet.toList().get(1), genomeLocParser.createGenomeLoc(contigOneName, 60, 70));
+        assertTrue(mSortedSet.contains(genomeLocParser.createGenomeLoc(contigOneName, 1, 50)));
+        assertFalse(mSortedSet.contains(genomeLocParser.createGenomeLoc(contigOneName, 1, 10)));
+    }
+
     @Test
     public void overlap() {
         for ( int i = 1; i < 6; i++ ) {
@@ -297,6 +311,26 @@ public class GenomeLocSortedSetUnitTest extends BaseTest {
         assertEquals(genomeLocParser.createGenomeLoc(contigOneName, 19, 20), p4);
     }
 
+    @Test
+    public void substractAcrossContigs() {
+        final String contigTwoName = header.getSequenceDictionary().getSequence(2).getSequenceName();
+        final GenomeLoc untouched = genomeLocParser.createGenomeLoc(contigOneName, 100, 200);
+        mSortedSet.add(untouched);
+        mSortedSet.add(genomeLocParser.createGenomeLoc(contigTwoName, 1, 100));
+        mSortedSet.add(GenomeLoc.UNMAPPED);
+
+        final GenomeLocSortedSet toExclude = new GenomeLocSortedSet(genomeLocParser, Arrays.asList(
+                genomeLocParser.createGenomeLoc(contigOneName, 300, 400),
+                genomeLocParser.createGenomeLoc(contigTwoName, 1, 10),
+                genomeLocParser.createGenomeLoc(contigTwoName, 90, 200),
+                GenomeLoc.UNMAPPED));
+
+        final GenomeLocSortedSet remaining = mSortedSet.subtractRegions(toExclude);
+        assertEquals(remaining.size(), 2);
+        assertTrue(remaining.toList().get(0) == untouched);
+        assertEquals(remaining.toList().get(1), genomeLocParser.createGenomeLoc(contigTwoName, 11, 89));
+    }
+
     private void testSizeBeforeLocX(int pos, int size) {
         GenomeLoc test = genomeLocParser.createGenomeLoc(contigOneName, pos, pos);
         assertEquals(mSortedSet.sizeBeforeLoc(test), size, String.format("X pos=%d size=%d", pos, size));
@@ -0,0 +1,206 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.classloader;
+
+import htsjdk.tribble.FeatureCodec;
+import org.broadinstitute.gatk.engine.filters.ReadFilter;
+import org.broadinstitute.gatk.engine.walkers.Walker;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+public class PluginManifestUnitTest extends BaseTest {
+    private static final List<Class<?>> PLUGIN_TYPES = Arrays.<Class<?>>asList(Walker.class, ReadFilter.class, FeatureCodec.class);
+
+    private List<URL> classPath;
+    private List<URL> jars;
+    private List<URL> directories;
+    private PluginManifest scanned;
+
+    @BeforeClass
+    public void scanClasspath() {
+        classPath = new ArrayList<URL>(PluginManifest.getClasspathURLs());
+        jars = new ArrayList<URL>();
+        directories = new ArrayList<URL>();
+        for (final URL url : classPath)
+            (url.getPath().endsWith(".jar") ? jars : directories).add(url);
+        scanned = PluginManifest.scan(classPath);
+    }
+
+    // a jar holding one manifest per group of classpath entries, concatenated as when shading.
+    private static URL createManifestJar(final List<List<URL>> described) throws IOException {
+        final File jar = createTempFile("plugins", ".jar");
+        final JarOutputStream stream = new JarOutputStream(new FileOutputStream(jar));
+        stream.putNextEntry(new JarEntry(PluginManifest.MANIFEST_PATH));
+        final PrintWriter writer = new PrintWriter(new OutputStreamWriter(stream, "UTF-8"));
+        for (final List<URL> urls : described)
+            PluginManifest.write(urls, writer);
+        writer.flush();
+        stream.closeEntry();
+        stream.close();
+        return jar.toURI().toURL();
+    }
+
+    private PluginManifest load(final URL manifestJar, final List<URL> classPath) {
+        final List<URL> withManifest = new ArrayList<URL>(classPath);
+        withManifest.add(manifestJar);
+        // no parent, so that only the test manifest is visible.
+        return PluginManifest.load(withManifest, new URLClassLoader(new URL[]{manifestJar}, null));
+    }
+
+    private static void assertSameElements(final Set<?> actual, final Set<?> expected) {
+        Assert.assertTrue(actual.equals(expected), "expected " + expected + " but found " + actual);
+    }
+
+    private void assertSameSubTypes(final PluginManifest actual) {
+        for (final Class<?> type : PLUGIN_TYPES) {
+            Assert.assertFalse(scanned.getSubTypesOf(type).isEmpty(), "no subtypes of " + type);
+            assertSameElements(actual.getSubTypesOf(type), scanned.getSubTypesOf(type));
+        }
+    }
+
+    @Test
+    public void testManifestCoversJars() throws IOException {
+        final int half = jars.size() / 2;
+        final URL manifestJar = createManifestJar(Arrays.asList(jars.subList(0, half), jars.subList(half, jars.size())));
+        final PluginManifest manifest = load(manifestJar, classPath);
+
+        // class directories may have changed since the manifest was written, so they're always scanned, as is the
+        // jar holding the manifest for any classes the manifest doesn't list.
+        final Set<URL> expected = new HashSet<URL>(directories);
+        expected.add(manifestJar);
+        assertSameElements(manifest.getScannedUrls(), expected);
+        assertSameSubTypes(manifest);
+    }
+
+    @Test
+    public void testUnknownJarIsScanned() throws IOException {
+        final URL unknownJar = jars.get(0);
+        final URL manifestJar = createManifestJar(Collections.singletonList(jars.subList(1, jars.size())));
+        final PluginManifest manifest = load(manifestJar, classPath);
+
+        final Set<URL> expected = new HashSet<URL>(directories);
+        expected.add(manifestJar);
+        expected.add(unknownJar);
+        assertSameElements(manifest.getScannedUrls(), expected);
+        assertSameSubTypes(manifest);
+    }
+
+    @Test
+    public void testJarWithSameNameIsScanned() throws IOException {
+        final URL manifestJar = createManifestJar(Collections.singletonList(jars));
+
+        // a jar with the same name as a covered one, but elsewhere and modified, as after a rebuild or upgrade
+        final File original = new File(jars.get(0).getPath());
+        final File otherDir = Files.createTempDirectory("plugins").toFile();
+        final File sameName = new File(otherDir, original.getName());
+        otherDir.deleteOnExit();
+        sameName.deleteOnExit();
+        Files.copy(original.toPath(), sameName.toPath());
+        Assert.assertTrue(sameName.setLastModified(original.lastModified() + 10000));
+        final URL sameNameUrl = sameName.toURI().toURL();
+
+        final List<URL> withSameName = new ArrayList<URL>(classPath);
+        withSameName.set(classPath.indexOf(jars.get(0)), sameNameUrl);
+        final PluginManifest manifest = load(manifestJar, withSameName);
+
+        final Set<URL> expected = new HashSet<URL>(directories);
+        expected.add(manifestJar);
+        expected.add(sameNameUrl);
+        assertSameElements(manifest.getScannedUrls(), expected);
+    }
+
+    @Test
+    public void testPluginMissingFromTheManifestOfItsJarIsFound() throws IOException {
+        final Class<?> missing = org.broadinstitute.gatk.tools.walkers.qc.CountLoci.class;
+
+        // the manifest of the whole classpath, less the plugin, as when a module without a manifest is shaded into
+        // the same jar as one with a manifest
+        final StringWriter written = new StringWriter();
+        PluginManifest.write(classPath, new PrintWriter(written));
+        final StringBuilder withoutPlugin = new StringBuilder();
+        final BufferedReader lines = new BufferedReader(new StringReader(written.toString()));
+        for (String line = lines.readLine(); line != null; line = lines.readLine())
+            if (!line.endsWith(" " + missing.getName()))
+                withoutPlugin.append(line).append('\n');
+
+        final File jar = createTempFile("plugins", ".jar");
+        final JarOutputStream stream = new JarOutputStream(new FileOutputStream(jar));
+        stream.putNextEntry(new JarEntry(PluginManifest.MANIFEST_PATH));
+        stream.write(withoutPlugin.toString().getBytes("UTF-8"));
+        stream.closeEntry();
+        final String classFile = missing.getName().replace('.', '/') + ".class";
+        stream.putNextEntry(new JarEntry(classFile));
+        final InputStream classBytes = missing.getClassLoader().getResourceAsStream(classFile);
+        try {
+            final byte[] buffer = new byte[8192];
+            for (int n = classBytes.read(buffer); n >= 0; n = classBytes.read(buffer))
+                stream.write(buffer, 0, n);
+        } finally {
+            classBytes.close();
+        }
+        stream.closeEntry();
+        stream.close();
+        final URL manifestJar = jar.toURI().toURL();
+
+        // the plugin's own class directory is left off the classpath, so it can only be found in the manifest's jar
+        final PluginManifest manifest = load(manifestJar, jars);
+        assertSameElements(manifest.getScannedUrls(), Collections.singleton(manifestJar));
+        Assert.assertTrue(manifest.getSubTypesOf(Walker.class).contains(missing), missing + " was not found");
+        Assert.assertFalse(manifest.getSubTypesOf(ReadFilter.class).isEmpty(), "the plugins listed by the manifest were lost");
+    }
+
+    @Test
+    public void testNoManifestScansEverything() {
+        final PluginManifest manifest = PluginManifest.load(classPath, new URLClassLoader(new URL[0], null));
+        assertSameElements(manifest.getScannedUrls(), new HashSet<URL>(classPath));
+        assertSameSubTypes(manifest);
+    }
+
+    @Test
+    public void testSubTypesAreTransitive() {
+        final Set<Class<? extends Walker>> walkers = scanned.getSubTypesOf(Walker.class);
+        Assert.assertTrue(walkers.contains(org.broadinstitute.gatk.tools.walkers.qc.CountLoci.class));
+        Assert.assertFalse(walkers.contains(Walker.class));
+    }
+}
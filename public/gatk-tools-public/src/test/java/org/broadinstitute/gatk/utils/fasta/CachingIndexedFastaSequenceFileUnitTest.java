@@ -188,6 +188,34 @@ public class CachingIndexedFastaSequenceFileUnitTest extends BaseTest {
         }
     }
 
+    @Test(dataProvider = "fastas", enabled = true && ! DEBUG)
+    public void testCachingIndexedFastaReaderAlternatingRegions(File fasta, int cacheSize, int querySize) throws FileNotFoundException {
+        final IndexedFastaSequenceFile uncached = new IndexedFastaSequenceFile(fasta);
+        final CachingIndexedFastaSequenceFile caching = new CachingIndexedFastaSequenceFile(fasta, getCacheSize(cacheSize), true, false);
+
+        final SAMSequenceRecord contig = uncached.getSequenceDictionary().getSequence(0);
+        if ( querySize >= caching.getCacheSize() )
+            return; // queries this large aren't cached
+
+        // walk through two distant regions at once, which should share the cache rather than evict each other
+        final int regionSize = (int)Math.min(caching.getCacheSize() / 4, contig.getSequenceLength() / 2 - querySize);
+        final int[] regionStarts = new int[]{ 1, contig.getSequenceLength() / 2 };
+        int nQueries = 0;
+        for ( int offset = 0; offset + querySize < regionSize; offset++ ) {
+            for ( final int regionStart : regionStarts ) {
+                final int start = regionStart + offset;
+                final int stop = start + querySize;
+                Assert.assertEquals(caching.getSubsequenceAt(contig.getSequenceName(), start, stop).getBases(),
+                        uncached.getSubsequenceAt(contig.getSequenceName(), start, stop).getBases());
+                nQueries++;
+            }
+        }
+
+        // each region needs at most 2 pages of the cache, and so should only miss while loading them
+        caching.printEfficiency(Priority.WARN);
+        Assert.assertTrue(caching.getCacheMisses() <= 2 * regionStarts.length, "Expected at most " + 2 * regionStarts.length + " cache misses out of " + nQueries + " queries but got " + caching.getCacheMisses());
+    }
+
     // make sure some bases are lower case and some are upper case
     @Test(enabled = true)
     public void testMixedCasesInExample() throws FileNotFoundException, InterruptedException {
@@ -0,0 +1,189 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.fasta;
+
+import htsjdk.samtools.SAMException;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.reference.ReferenceSequence;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks that PackedFastaSequenceFile returns exactly the bases CachingIndexedFastaSequenceFile does
+ */
+public class PackedFastaSequenceFileUnitTest extends BaseTest {
+    private static final List<Integer> QUERY_SIZES = Arrays.asList(1, 10, 100);
+
+    /** contigs with runs of Ns, other IUPAC bases, and lower case bases, of lengths that don't fill the last packed byte */
+    private static final String[] MIXED_CONTIGS = {
+            "A",
+            "nC",
+            "ACGTACGTACGTNNNNNNNNNNacgtnnnnRYKMSWBDHVrykmswbdhvACGTTGCAaaaaaaaaaaaaaaaaaCCCCCCNNnnNN",
+            "NNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNNN",
+            "acgtRacgtrACGTnACGTNacgtRRRRrrrrACGTACGTACGTACGTACGTACGTACGTACGTACGTACGTACGTACGTACGTACGTACGTACGTACGTACGTACGTACGT",
+    };
+
+    private File exampleFasta;
+    private File mixedFasta;
+
+    @BeforeClass
+    public void setup() throws IOException {
+        // packed references must live next to their fasta, so work on copies in the temp directory
+        exampleFasta = copyFasta(new File(publicTestDir + "exampleFASTA.fasta"));
+        mixedFasta = writeFasta(MIXED_CONTIGS);
+        PackedFastaWriter.writePackedFasta(exampleFasta, PackedFastaSequenceFile.getPackedReference(exampleFasta));
+        PackedFastaWriter.writePackedFasta(mixedFasta, PackedFastaSequenceFile.getPackedReference(mixedFasta));
+    }
+
+    private static File getDictionary(final File fasta) {
+        return new File(fasta.getAbsolutePath().replaceAll("\\.fasta$", ".dict"));
+    }
+
+    private static File createTempFasta() {
+        final File fasta = createTempFile("packedFastaTest", ".fasta");
+        new File(fasta.getAbsolutePath() + ".fai").deleteOnExit();
+        getDictionary(fasta).deleteOnExit();
+        PackedFastaSequenceFile.getPackedReference(fasta).deleteOnExit();
+        return fasta;
+    }
+
+    private static File copyFasta(final File original) throws IOException {
+        final File fasta = createTempFasta();
+        Files.copy(original.toPath(), fasta.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.copy(new File(original.getAbsolutePath() + ".fai").toPath(), new File(fasta.getAbsolutePath() + ".fai").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.copy(getDictionary(original).toPath(), getDictionary(fasta).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return fasta;
+    }
+
+    private static File writeFasta(final String[] contigs) throws IOException {
+        final int lineLength = 10;
+        final File fasta = createTempFasta();
+        final PrintWriter fastaWriter = new PrintWriter(new FileWriter(fasta));
+        final PrintWriter indexWriter = new PrintWriter(new FileWriter(fasta.getAbsolutePath() + ".fai"));
+        final PrintWriter dictWriter = new PrintWriter(new FileWriter(getDictionary(fasta)));
+        dictWriter.print("@HD\tVN:1.0\tSO:unsorted\n");
+        long offset = 0;
+        for ( int i = 0; i < contigs.length; i++ ) {
+            final String header = ">contig" + i + " mixed bases\n";
+            offset += header.length();
+            fastaWriter.print(header);
+            indexWriter.printf("contig%d\t%d\t%d\t%d\t%d\n", i, contigs[i].length(), offset, lineLength, lineLength + 1);
+            dictWriter.printf("@SQ\tSN:contig%d\tLN:%d\n", i, contigs[i].length());
+            for ( int start = 0; start < contigs[i].length(); start += lineLength ) {
+                final String line = contigs[i].substring(start, Math.min(start + lineLength, contigs[i].length())) + "\n";
+                offset += line.length();
+                fastaWriter.print(line);
+            }
+        }
+        fastaWriter.close();
+        indexWriter.close();
+        dictWriter.close();
+        return fasta;
+    }
+
+    @DataProvider(name = "fastas")
+    public Object[][] makeFastas() {
+        final List<Object[]> params = new ArrayList<Object[]>();
+        for ( final File fasta : Arrays.asList(exampleFasta, mixedFasta) )
+            for ( final boolean preserveCase : Arrays.asList(true, false) )
+                for ( final boolean preserveIUPAC : Arrays.asList(true, false) )
+                    params.add(new Object[]{fasta, preserveCase, preserveIUPAC});
+        return params.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "fastas")
+    public void testPackedMatchesCaching(final File fasta, final boolean preserveCase, final boolean preserveIUPAC) throws IOException {
+        final CachingIndexedFastaSequenceFile caching = new CachingIndexedFastaSequenceFile(fasta, CachingIndexedFastaSequenceFile.DEFAULT_CACHE_SIZE, preserveCase, preserveIUPAC);
+        final PackedFastaSequenceFile packed = new PackedFastaSequenceFile(PackedFastaSequenceFile.getPackedReference(fasta), preserveCase, preserveIUPAC);
+        Assert.assertEquals(packed.isPreservingCase(), preserveCase);
+        Assert.assertEquals(packed.isPreservingIUPAC(), preserveIUPAC);
+
+        for ( final SAMSequenceRecord contig : caching.getSequenceDictionary().getSequences() ) {
+            assertSameBases(caching.getSequence(contig.getSequenceName()), packed.getSequence(contig.getSequenceName()));
+            for ( final int querySize : QUERY_SIZES ) {
+                for ( int start = 1; start + querySize - 1 <= contig.getSequenceLength(); start += 3 ) {
+                    final int stop = start + querySize - 1;
+                    assertSameBases(caching.getSubsequenceAt(contig.getSequenceName(), start, stop), packed.getSubsequenceAt(contig.getSequenceName(), start, stop));
+                }
+            }
+
+            // position 0 is the byte before the first base, which the packed file doesn't keep, but the rest must match
+            final ReferenceSequence fromZero = packed.getSubsequenceAt(contig.getSequenceName(), 0, contig.getSequenceLength());
+            Assert.assertEquals(Arrays.copyOfRange(fromZero.getBases(), 1, fromZero.length()), caching.getSequence(contig.getSequenceName()).getBases());
+            Assert.assertEquals(packed.getSubsequenceAt(contig.getSequenceName(), 1, 0).length(), 0);
+        }
+
+        // iterating over the whole reference
+        for ( final SAMSequenceRecord contig : caching.getSequenceDictionary().getSequences() )
+            assertSameBases(caching.getSequence(contig.getSequenceName()), packed.nextSequence());
+        Assert.assertNull(packed.nextSequence());
+        packed.close();
+    }
+
+    private static void assertSameBases(final ReferenceSequence expected, final ReferenceSequence actual) {
+        Assert.assertEquals(actual.getName(), expected.getName());
+        Assert.assertEquals(actual.getContigIndex(), expected.getContigIndex());
+        Assert.assertEquals(new String(actual.getBases()), new String(expected.getBases()));
+    }
+
+    @Test(expectedExceptions = SAMException.class)
+    public void testQueryPastEndOfContig() throws IOException {
+        final PackedFastaSequenceFile packed = new PackedFastaSequenceFile(PackedFastaSequenceFile.getPackedReference(mixedFasta));
+        packed.getSubsequenceAt("contig0", 1, MIXED_CONTIGS[0].length() + 1);
+    }
+
+    @Test(expectedExceptions = UserException.class)
+    public void testOutOfDatePackedReference() throws IOException {
+        final File fasta = writeFasta(MIXED_CONTIGS);
+        PackedFastaWriter.writePackedFasta(fasta, PackedFastaSequenceFile.getPackedReference(fasta));
+        Files.write(fasta.toPath(), ">extra\nACGT\n".getBytes(), StandardOpenOption.APPEND);
+        new PackedFastaSequenceFile(PackedFastaSequenceFile.getPackedReference(fasta));
+    }
+
+    @Test
+    public void testPackedReferenceNames() {
+        final File packedFile = new File("/path/to/reference.fasta" + PackedFastaSequenceFile.PACKED_REFERENCE_EXTENSION);
+        Assert.assertTrue(PackedFastaSequenceFile.isPackedReference(packedFile));
+        Assert.assertFalse(PackedFastaSequenceFile.isPackedReference(new File("/path/to/reference.fasta")));
+        Assert.assertEquals(PackedFastaSequenceFile.getSourceFasta(packedFile), new File("/path/to/reference.fasta"));
+        Assert.assertEquals(PackedFastaSequenceFile.getPackedReference(new File("/path/to/reference.fasta")), packedFile);
+    }
+}
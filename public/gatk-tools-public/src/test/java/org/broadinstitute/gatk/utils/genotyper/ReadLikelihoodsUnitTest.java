@@ -0,0 +1,227 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.genotyper;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.variant.variantcontext.Allele;
+import org.broadinstitute.gatk.tools.walkers.genotyper.IndexedAlleleList;
+import org.broadinstitute.gatk.tools.walkers.genotyper.IndexedSampleList;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
+import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
+import org.broadinstitute.gatk.utils.variant.GATKVariantContextUtils;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+/**
+ * Tests the storage operations of {@link ReadLikelihoods}.
+ */
+public class ReadLikelihoodsUnitTest extends BaseTest {
+
+    private static final SAMFileHeader HEADER = ArtificialSAMUtils.createArtificialSamHeader(1, 1, 1000);
+    private static final String[] SAMPLES = {"sample1", "sample2", "sample3"};
+    private static final Allele[] ALLELES = {Allele.create("A", true), Allele.create("C"), Allele.create("G"), Allele.create("T")};
+
+    private Map<String,List<GATKSAMRecord>> makeReads(final int[] readCounts, final String prefix) {
+        final Map<String,List<GATKSAMRecord>> result = new LinkedHashMap<>();
+        for (int s = 0; s < SAMPLES.length; s++) {
+            final List<GATKSAMRecord> reads = new ArrayList<>(readCounts[s]);
+            for (int r = 0; r < readCounts[s]; r++)
+                // identical reads on purpose; they must still be told apart.
+                reads.add(ArtificialSAMUtils.createArtificialRead(HEADER, prefix, 0, 1 + r * 10, 10));
+            result.put(SAMPLES[s], reads);
+        }
+        return result;
+    }
+
+    private ReadLikelihoods<Allele> makeLikelihoods(final int[] readCounts) {
+        final ReadLikelihoods<Allele> result = new ReadLikelihoods<>(new IndexedSampleList(SAMPLES),
+                new IndexedAlleleList<>(ALLELES), makeReads(readCounts, "read"));
+        final Random random = new Random(13);
+        for (int s = 0; s < SAMPLES.length; s++) {
+            final ReadLikelihoods.Matrix<Allele> matrix = result.sampleMatrix(s);
+            for (int a = 0; a < matrix.alleleCount(); a++)
+                for (int r = 0; r < matrix.readCount(); r++)
+                    matrix.set(a, r, -random.nextInt(100) * 0.25);
+        }
+        return result;
+    }
+
+    private static double[][][] values(final ReadLikelihoods<Allele> likelihoods) {
+        final double[][][] result = new double[likelihoods.sampleCount()][][];
+        for (int s = 0; s < likelihoods.sampleCount(); s++) {
+            final ReadLikelihoods.Matrix<Allele> matrix = likelihoods.sampleMatrix(s);
+            result[s] = new double[matrix.alleleCount()][matrix.readCount()];
+            for (int a = 0; a < matrix.alleleCount(); a++)
+                matrix.copyAlleleLikelihoods(a, result[s][a], 0);
+        }
+        return result;
+    }
+
+    @Test
+    public void testSetAndGet() {
+        final ReadLikelihoods<Allele> likelihoods = makeLikelihoods(new int[]{5, 0, 17});
+        final double[][][] values = values(likelihoods);
+        for (int s = 0; s < SAMPLES.length; s++) {
+            final ReadLikelihoods.Matrix<Allele> matrix = likelihoods.sampleMatrix(s);
+            for (int a = 0; a < ALLELES.length; a++)
+                for (int r = 0; r < matrix.readCount(); r++)
+                    Assert.assertEquals(matrix.get(a, r), values[s][a][r]);
+        }
+        Assert.assertEquals(values[0][1].length, 5);
+        Assert.assertEquals(values[1][1].length, 0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testReadIndexBeyondReadCount() {
+        final ReadLikelihoods<Allele> likelihoods = makeLikelihoods(new int[]{5, 1, 1});
+        // spare capacity left by adding reads must not be reachable through the matrix.
+        likelihoods.addReads(Collections.singletonMap(SAMPLES[0], makeReads(new int[]{1, 0, 0}, "extra").get(SAMPLES[0])), 0);
+        likelihoods.sampleMatrix(0).get(0, 6);
+    }
+
+    @Test
+    public void testReadIndexIsByIdentity() {
+        final ReadLikelihoods<Allele> likelihoods = makeLikelihoods(new int[]{3, 3, 3});
+        final GATKSAMRecord read = likelihoods.sampleMatrix(0).readAt(1);
+        final GATKSAMRecord copy = ArtificialSAMUtils.createArtificialRead(HEADER, read.getReadName(), 0, read.getAlignmentStart(), 10);
+        Assert.assertEquals(copy, read);
+        Assert.assertEquals(likelihoods.readIndex(0, read), 1);
+        Assert.assertEquals(likelihoods.readIndex(0, copy), -1);
+        Assert.assertEquals(likelihoods.readIndex(1, read), -1);
+    }
+
+    @Test
+    public void testAddReadsAndAlleles() {
+        final ReadLikelihoods<Allele> likelihoods = makeLikelihoods(new int[]{4, 2, 7});
+        final double[][][] original = values(likelihoods);
+
+        // grow several times to go through both in place and reallocating growth.
+        for (int i = 0; i < 5; i++)
+            likelihoods.addReads(makeReads(new int[]{3, 0, 1}, "more" + i), -2.5);
+        final Allele extra = Allele.create("AC");
+        likelihoods.addMissingAlleles(Arrays.asList(ALLELES[1], extra), -7);
+        likelihoods.addNonReferenceAllele(GATKVariantContextUtils.NON_REF_SYMBOLIC_ALLELE);
+
+        Assert.assertEquals(likelihoods.alleleCount(), ALLELES.length + 2);
+        Assert.assertEquals(likelihoods.alleleIndex(extra), ALLELES.length);
+        final double[][][] grown = values(likelihoods);
+        final int[] addedReads = {15, 0, 5};
+        for (int s = 0; s < SAMPLES.length; s++) {
+            final int oldReadCount = original[s][0].length;
+            Assert.assertEquals(likelihoods.sampleReadCount(s), oldReadCount + addedReads[s]);
+            for (int r = 0; r < likelihoods.sampleReadCount(s); r++) {
+                for (int a = 0; a < ALLELES.length; a++)
+                    Assert.assertEquals(grown[s][a][r], r < oldReadCount ? original[s][a][r] : -2.5);
+                Assert.assertEquals(grown[s][ALLELES.length][r], -7.0);
+                // the non-ref likelihood is the second best one.
+                final double[] readValues = new double[ALLELES.length + 1];
+                for (int a = 0; a <= ALLELES.length; a++)
+                    readValues[a] = grown[s][a][r];
+                Arrays.sort(readValues);
+                Assert.assertEquals(grown[s][ALLELES.length + 1][r], readValues[ALLELES.length - 1]);
+            }
+        }
+    }
+
+    @Test
+    public void testMarginalize() {
+        final ReadLikelihoods<Allele> likelihoods = makeLikelihoods(new int[]{6, 0, 9});
+        final double[][][] original = values(likelihoods);
+        final Allele newRef = Allele.create("N", true);
+        final Allele newAlt = Allele.create("NN");
+        final Map<Allele,List<Allele>> newToOld = new LinkedHashMap<>();
+        newToOld.put(newRef, Arrays.asList(ALLELES[0]));
+        newToOld.put(newAlt, Arrays.asList(ALLELES[1], ALLELES[3]));
+
+        final ReadLikelihoods<Allele> marginal = likelihoods.marginalize(newToOld);
+        Assert.assertEquals(marginal.alleles(), Arrays.asList(newRef, newAlt));
+        final double[][][] marginalValues = values(marginal);
+        for (int s = 0; s < SAMPLES.length; s++)
+            for (int r = 0; r < original[s][0].length; r++) {
+                Assert.assertEquals(marginalValues[s][0][r], original[s][0][r]);
+                Assert.assertEquals(marginalValues[s][1][r], Math.max(original[s][1][r], original[s][3][r]));
+            }
+
+        // only reads starting at 1 or 11 overlap the first 15 bases.
+        final ReadLikelihoods<Allele> overlapping = likelihoods.marginalize(newToOld, locationOnFirstContig(1, 15));
+        for (int s = 0; s < SAMPLES.length; s++) {
+            Assert.assertEquals(overlapping.sampleReadCount(s), Math.min(2, original[s][0].length));
+            for (int r = 0; r < overlapping.sampleReadCount(s); r++)
+                Assert.assertEquals(overlapping.sampleMatrix(s).get(1, r), marginalValues[s][1][r]);
+        }
+    }
+
+    @Test
+    public void testCloneIsIndependent() {
+        final ReadLikelihoods<Allele> likelihoods = makeLikelihoods(new int[]{3, 4, 5});
+        final double[][][] original = values(likelihoods);
+        final ReadLikelihoods<Allele> clone = likelihoods.clone();
+        clone.sampleMatrix(1).set(2, 3, 1.5);
+        clone.addReads(makeReads(new int[]{2, 2, 2}, "more"), 0);
+        Assert.assertEquals(values(likelihoods), original);
+        Assert.assertEquals(clone.sampleMatrix(1).get(2, 3), 1.5);
+    }
+
+    @Test
+    public void testRemoveReads() {
+        final ReadLikelihoods<Allele> likelihoods = makeLikelihoods(new int[]{10, 3, 20});
+        final double[][][] original = values(likelihoods);
+        final List<List<GATKSAMRecord>> originalReads = new ArrayList<>();
+        for (int s = 0; s < SAMPLES.length; s++)
+            originalReads.add(new ArrayList<>(likelihoods.sampleReads(s)));
+
+        // reads starting beyond position 50 are dropped.
+        likelihoods.filterToOnlyOverlappingUnclippedReads(locationOnFirstContig(1, 50));
+        for (int s = 0; s < SAMPLES.length; s++) {
+            final int keptCount = Math.min(5, original[s][0].length);
+            Assert.assertEquals(likelihoods.sampleReadCount(s), keptCount);
+            for (int r = 0; r < keptCount; r++) {
+                final GATKSAMRecord read = likelihoods.sampleMatrix(s).readAt(r);
+                Assert.assertSame(read, originalReads.get(s).get(r));
+                Assert.assertEquals(likelihoods.readIndex(s, read), r);
+                for (int a = 0; a < ALLELES.length; a++)
+                    Assert.assertEquals(likelihoods.sampleMatrix(s).get(a, r), original[s][a][r]);
+            }
+        }
+
+        // the reads added after the removal reuse the spare capacity.
+        likelihoods.addReads(makeReads(new int[]{2, 0, 0}, "more"), -1);
+        for (int a = 0; a < ALLELES.length; a++) {
+            Assert.assertEquals(likelihoods.sampleMatrix(0).get(a, 4), original[0][a][4]);
+            Assert.assertEquals(likelihoods.sampleMatrix(0).get(a, 5), -1.0);
+            Assert.assertEquals(likelihoods.sampleMatrix(0).get(a, 6), -1.0);
+        }
+    }
+
+    private static GenomeLoc locationOnFirstContig(final int start, final int stop) {
+        return new GenomeLocParser(HEADER.getSequenceDictionary()).createGenomeLoc(HEADER.getSequence(0).getSequenceName(), start, stop);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.interval;
+
+import htsjdk.samtools.SAMFileHeader;
+import org.apache.commons.io.FileUtils;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * UnitTests for the parallel parsing of Picard and GATK interval files
+ */
+public class IntervalFileParserUnitTest extends BaseTest {
+    private final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(3, 1, 1000000);
+    private final GenomeLocParser genomeLocParser = new GenomeLocParser(header.getSequenceDictionary());
+
+    private final List<GenomeLoc> locs = new ArrayList<GenomeLoc>();
+    {
+        final Random random = new Random(42);
+        for ( int i = 0; i < 2000; i++ ) {
+            final int start = 1 + random.nextInt(999000);
+            locs.add(genomeLocParser.createGenomeLoc("chr" + (1 + random.nextInt(3)), start, start + random.nextInt(1000)));
+        }
+    }
+
+    private File writeIntervals(final String extension, final String contents) throws IOException {
+        final File file = createTempFile("intervalFileParser", extension);
+        FileUtils.writeStringToFile(file, contents);
+        return file;
+    }
+
+    private File writeGATKIntervals() throws IOException {
+        final StringBuilder contents = new StringBuilder();
+        for ( final GenomeLoc loc : locs )
+            contents.append(loc.toString()).append(loc.getStart() % 7 == 0 ? "\r\n\n" : "\n");
+        return writeIntervals(".intervals", contents.toString());
+    }
+
+    private File writePicardIntervals() throws IOException {
+        final StringBuilder contents = new StringBuilder("@HD\tVN:1.0\tSO:coordinate\n");
+        for ( int i = 0; i < header.getSequenceDictionary().size(); i++ )
+            contents.append(String.format("@SQ\tSN:%s\tLN:%d%n", header.getSequence(i).getSequenceName(), header.getSequence(i).getSequenceLength()));
+        for ( final GenomeLoc loc : locs )
+            contents.append(String.format("%s\t%d\t%d\t+\ttarget_%d%n", loc.getContig(), loc.getStart(), loc.getStop(), loc.getStart()));
+        // intervals that aren't on the reference are skipped
+        contents.append("chr1\t999999\t1000001\t+\toff_the_end\n");
+        contents.append("chrUn\t1\t10\t+\tunknown_contig\n");
+        return writeIntervals(".interval_list", contents.toString());
+    }
+
+    @DataProvider(name = "ParserSettings")
+    public Object[][] makeParserSettings() {
+        final List<Object[]> tests = new ArrayList<Object[]>();
+        for ( final int numThreads : Arrays.asList(1, 4) )
+            for ( final int chunkSize : Arrays.asList(7, 100, 4096, IntervalFileParser.DEFAULT_CHUNK_SIZE) )
+                tests.add(new Object[]{numThreads, chunkSize});
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "ParserSettings")
+    public void testGATKIntervals(final int numThreads, final int chunkSize) throws IOException {
+        final PackedIntervalList parsed = new IntervalFileParser(genomeLocParser, numThreads, chunkSize).parse(writeGATKIntervals());
+        Assert.assertEquals(parsed.toGenomeLocs(genomeLocParser), locs);
+    }
+
+    @Test(dataProvider = "ParserSettings")
+    public void testPicardIntervals(final int numThreads, final int chunkSize) throws IOException {
+        final PackedIntervalList parsed = new IntervalFileParser(genomeLocParser, numThreads, chunkSize).parse(writePicardIntervals());
+        Assert.assertEquals(parsed.toGenomeLocs(genomeLocParser), locs);
+    }
+
+    @Test
+    public void testIntervalFileToList() throws IOException {
+        Assert.assertEquals(IntervalUtils.intervalFileToList(genomeLocParser, writeGATKIntervals().getAbsolutePath()), locs);
+        Assert.assertEquals(IntervalUtils.intervalFileToList(genomeLocParser, writePicardIntervals().getAbsolutePath()), locs);
+    }
+
+    @Test
+    public void testEmptyFile() throws IOException {
+        Assert.assertTrue(new IntervalFileParser(genomeLocParser).parse(writeIntervals(".intervals", "")).isEmpty());
+    }
+
+    @Test(expectedExceptions = UserException.MalformedGenomeLoc.class)
+    public void testBadGATKInterval() throws IOException {
+        new IntervalFileParser(genomeLocParser, 4, 16).parse(writeIntervals(".intervals", "chr1:1-10\nchr1:1-10\nchrUn:1-10\nchr2:1-10\n"));
+    }
+
+    @Test(expectedExceptions = UserException.MalformedFile.class)
+    public void testBadPicardInterval() throws IOException {
+        new IntervalFileParser(genomeLocParser, 4, 16).parse(writeIntervals(".interval_list", "@HD\tVN:1.0\nchr1\t1\t10\t+\tok\nchr1\tone\tten\t+\tbad\n"));
+    }
+}
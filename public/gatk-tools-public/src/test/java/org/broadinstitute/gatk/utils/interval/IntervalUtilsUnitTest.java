@@ -288,6 +288,63 @@ public class IntervalUtilsUnitTest extends BaseTest {
         Assert.assertEquals(flat, test.expected, "SplitLocusIntervals locs not expected intervals");
     }
 
+    // -------------------------------------------------------------------------------------
+    //
+    // splitLocusIntervalsByCost tests
+    //
+    // -------------------------------------------------------------------------------------
+
+    /**
+     * Costs one per base, except on chr1:1001-2000 where every base costs ten
+     */
+    private final IntervalCostModel hotspotModel = new IntervalCostModel() {
+        @Override
+        public double getCost(final GenomeLoc loc) {
+            final GenomeLoc hotspot = hg18GenomeLocParser.createGenomeLoc("chr1", 1001, 2000);
+            return loc.size() + (loc.overlapsP(hotspot) ? 9 * loc.intersect(hotspot).size() : 0);
+        }
+    };
+
+    @Test
+    public void testSplitByCostBalancesParts() {
+        final List<GenomeLoc> locs = getLocs("chr1:1-5000", "chr2:1-3000");
+        final List<List<GenomeLoc>> splits = IntervalUtils.splitLocusIntervalsByCost(locs, 4, hotspotModel);
+
+        // 17000 in total, so each of the parts should cost about 4250
+        Assert.assertEquals(splits.size(), 4);
+        Assert.assertEquals(splits.get(0), getLocs("chr1:1-1325"));
+        Assert.assertEquals(splits.get(1), getLocs("chr1:1326-1750"));
+        for ( final List<GenomeLoc> split : splits ) {
+            double cost = 0;
+            for ( final GenomeLoc loc : split )
+                cost += hotspotModel.getCost(loc);
+            Assert.assertEquals(cost, 4250, 10);
+        }
+
+        // the parts cover the original intervals exactly once
+        final List<GenomeLoc> merged = IntervalUtils.mergeIntervalLocations(IntervalUtils.flattenSplitIntervals(splits), IntervalMergingRule.ALL);
+        Assert.assertEquals(merged, locs);
+    }
+
+    @Test
+    public void testSplitByCostWithoutCostFallsBackToSize() {
+        final IntervalCostModel free = new IntervalCostModel() {
+            @Override
+            public double getCost(final GenomeLoc loc) {
+                return 0;
+            }
+        };
+        final List<GenomeLoc> locs = getLocs("chr1:1-5000", "chr2:1-3000");
+        Assert.assertEquals(IntervalUtils.splitLocusIntervalsByCost(locs, 3, free), IntervalUtils.splitLocusIntervals(locs, 3));
+    }
+
+    @Test
+    public void testSplitByCostIntoMorePartsThanBases() {
+        final List<GenomeLoc> locs = getLocs("chr1:1-2", "chr2:5-5");
+        final List<List<GenomeLoc>> splits = IntervalUtils.splitLocusIntervalsByCost(locs, 5, hotspotModel);
+        Assert.assertEquals(IntervalUtils.flattenSplitIntervals(splits), getLocs("chr1:1-1", "chr1:2-2", "chr2:5-5"));
+    }
+
     //
     // Misc. tests
     //
@@ -0,0 +1,121 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.interval;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.tribble.Feature;
+import org.apache.commons.io.FileUtils;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.GenomeLocSortedSet;
+import org.broadinstitute.gatk.utils.commandline.IntervalArgumentCollection;
+import org.broadinstitute.gatk.utils.commandline.IntervalBinding;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * UnitTests for the persistent cache of merged intervals
+ */
+public class MergedIntervalCacheUnitTest extends BaseTest {
+    private final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(3, 1, 1000000);
+    private final GenomeLocParser genomeLocParser = new GenomeLocParser(header.getSequenceDictionary());
+
+    private File cacheDir;
+    private File intervalFile;
+    private IntervalArgumentCollection arguments;
+    private GenomeLocSortedSet intervals;
+
+    @BeforeMethod
+    public void setup() throws IOException {
+        cacheDir = createTempFile("mergedIntervalCache", "");
+        Assert.assertTrue(cacheDir.delete());
+
+        intervalFile = createTempFile("mergedIntervalCache", ".intervals");
+        FileUtils.writeStringToFile(intervalFile, "chr1:100-200\nchr1:150-300\nchr2:1-10\n");
+
+        arguments = new IntervalArgumentCollection();
+        arguments.intervals = new ArrayList<IntervalBinding<Feature>>();
+        arguments.intervals.add(new IntervalBinding<Feature>(intervalFile.getAbsolutePath()));
+        arguments.intervals.add(new IntervalBinding<Feature>("chr3:5-15"));
+
+        intervals = IntervalUtils.loadIntervals(arguments.intervals, arguments.intervalSetRule, arguments.intervalMerging, 0, genomeLocParser);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        final MergedIntervalCache cache = new MergedIntervalCache(cacheDir);
+        final String key = MergedIntervalCache.keyFor(header.getSequenceDictionary(), arguments);
+        Assert.assertNull(cache.get(genomeLocParser, key));
+
+        cache.put(key, intervals);
+        final GenomeLocSortedSet cached = new MergedIntervalCache(cacheDir).get(genomeLocParser, key);
+        Assert.assertNotNull(cached);
+        Assert.assertEquals(cached.toList(), intervals.toList());
+        Assert.assertEquals(cached.toList(), Arrays.asList(
+                genomeLocParser.createGenomeLoc("chr1", 100, 300),
+                genomeLocParser.createGenomeLoc("chr2", 1, 10),
+                genomeLocParser.createGenomeLoc("chr3", 5, 15)));
+    }
+
+    @Test
+    public void testKeyChangesWithArguments() throws IOException {
+        final String key = MergedIntervalCache.keyFor(header.getSequenceDictionary(), arguments);
+        Assert.assertEquals(MergedIntervalCache.keyFor(header.getSequenceDictionary(), arguments), key);
+
+        arguments.intervalPadding = 10;
+        Assert.assertNotEquals(MergedIntervalCache.keyFor(header.getSequenceDictionary(), arguments), key);
+        arguments.intervalPadding = 0;
+
+        arguments.intervalMerging = IntervalMergingRule.OVERLAPPING_ONLY;
+        Assert.assertNotEquals(MergedIntervalCache.keyFor(header.getSequenceDictionary(), arguments), key);
+        arguments.intervalMerging = IntervalMergingRule.ALL;
+
+        Assert.assertNotEquals(MergedIntervalCache.keyFor(ArtificialSAMUtils.createArtificialSamHeader(3, 1, 2000000).getSequenceDictionary(), arguments), key);
+
+        FileUtils.writeStringToFile(intervalFile, "chr1:100-200\nchr2:1-10\n");
+        Assert.assertTrue(intervalFile.setLastModified(intervalFile.lastModified() - 10000));
+        Assert.assertNotEquals(MergedIntervalCache.keyFor(header.getSequenceDictionary(), arguments), key);
+    }
+
+    @Test
+    public void testCorruptEntryIsIgnored() throws IOException {
+        final MergedIntervalCache cache = new MergedIntervalCache(cacheDir);
+        final String key = MergedIntervalCache.keyFor(header.getSequenceDictionary(), arguments);
+        cache.put(key, intervals);
+
+        final File entry = cache.entryFile(key);
+        Assert.assertTrue(entry.exists());
+        FileUtils.writeStringToFile(entry, "not an interval cache entry");
+        Assert.assertNull(cache.get(genomeLocParser, key));
+    }
+}
@@ -0,0 +1,140 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.interval;
+
+import htsjdk.samtools.SAMFileHeader;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.PackedLocus;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+/**
+ * UnitTests for sorting, merging and intersecting packed intervals, checked against the GenomeLoc based versions
+ * in IntervalUtils
+ */
+public class PackedIntervalListUnitTest extends BaseTest {
+    private final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(3, 1, 1000000);
+    private final GenomeLocParser genomeLocParser = new GenomeLocParser(header.getSequenceDictionary());
+
+    private List<GenomeLoc> randomLocs(final Random random, final int n, final int maxStart, final int maxLength) {
+        final List<GenomeLoc> locs = new ArrayList<GenomeLoc>(n);
+        for ( int i = 0; i < n; i++ ) {
+            final String contig = header.getSequence(random.nextInt(3)).getSequenceName();
+            final int start = 1 + random.nextInt(maxStart);
+            locs.add(genomeLocParser.createGenomeLoc(contig, start, start + random.nextInt(maxLength)));
+        }
+        return locs;
+    }
+
+    @DataProvider(name = "RandomLocs")
+    public Object[][] makeRandomLocs() {
+        final List<Object[]> tests = new ArrayList<Object[]>();
+        final Random random = new Random(42);
+        for ( final int n : Arrays.asList(0, 1, 2, 10, 1000) )
+            for ( final int maxStart : Arrays.asList(10, 1000, 900000) )
+                for ( final int maxLength : Arrays.asList(1, 10, 100) )
+                    tests.add(new Object[]{randomLocs(random, n, maxStart, maxLength)});
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "RandomLocs")
+    public void testSort(final List<GenomeLoc> locs) {
+        final List<GenomeLoc> expected = new ArrayList<GenomeLoc>(locs);
+        Collections.sort(expected);
+
+        final PackedIntervalList packed = PackedIntervalList.fromGenomeLocs(locs);
+        packed.sort();
+        Assert.assertTrue(packed.isSorted());
+        Assert.assertEquals(packed.toGenomeLocs(genomeLocParser), expected);
+    }
+
+    @Test(dataProvider = "RandomLocs")
+    public void testMerge(final List<GenomeLoc> locs) {
+        final List<GenomeLoc> sorted = new ArrayList<GenomeLoc>(locs);
+        Collections.sort(sorted);
+
+        for ( final IntervalMergingRule rule : IntervalMergingRule.values() ) {
+            final PackedIntervalList packed = PackedIntervalList.fromGenomeLocs(locs);
+            packed.sort();
+            packed.merge(rule);
+            Assert.assertEquals(packed.toGenomeLocs(genomeLocParser), IntervalUtils.mergeIntervalLocations(sorted, rule), "Merging with rule " + rule);
+        }
+    }
+
+    @Test(dataProvider = "RandomLocs")
+    public void testIntersection(final List<GenomeLoc> locs) {
+        final List<GenomeLoc> one = new ArrayList<GenomeLoc>(locs);
+        Collections.sort(one);
+        final List<GenomeLoc> two = new ArrayList<GenomeLoc>(randomLocs(new Random(locs.size()), locs.size(), 1000, 100));
+        Collections.sort(two);
+
+        final PackedIntervalList intersection = PackedIntervalList.intersection(PackedIntervalList.fromGenomeLocs(one), PackedIntervalList.fromGenomeLocs(two));
+        if ( one.isEmpty() ) {
+            Assert.assertTrue(intersection.isEmpty());
+            return;
+        }
+
+        List<GenomeLoc> expected;
+        try {
+            expected = IntervalUtils.mergeListsBySetOperator(one, two, IntervalSetRule.INTERSECTION);
+        } catch (UserException.BadInput e) {
+            expected = Collections.emptyList();
+        }
+        Assert.assertEquals(intersection.toGenomeLocs(genomeLocParser), expected);
+    }
+
+    @Test
+    public void testUnmappedMergesLast() {
+        final GenomeLoc chr1 = genomeLocParser.createGenomeLoc("chr1", 10, 20);
+        final GenomeLoc chr2 = genomeLocParser.createGenomeLoc("chr2", 1, 5);
+        final PackedIntervalList packed = PackedIntervalList.fromGenomeLocs(Arrays.asList(GenomeLoc.UNMAPPED, chr2, GenomeLoc.UNMAPPED, chr1));
+        packed.sort();
+        packed.merge(IntervalMergingRule.ALL);
+        Assert.assertEquals(packed.toGenomeLocs(genomeLocParser), Arrays.asList(chr1, chr2, GenomeLoc.UNMAPPED));
+    }
+
+    @Test
+    public void testAbuttingIntervalsOnDifferentContigsAreNotMerged() {
+        final GenomeLoc endOfChr1 = genomeLocParser.createGenomeLoc("chr1", 999990, 1000000);
+        final GenomeLoc startOfChr2 = genomeLocParser.createGenomeLoc("chr2", 1, 10);
+        final PackedIntervalList packed = PackedIntervalList.fromGenomeLocs(Arrays.asList(startOfChr2, endOfChr1));
+        packed.sort();
+        packed.merge(IntervalMergingRule.ALL);
+        Assert.assertEquals(packed.toGenomeLocs(genomeLocParser), Arrays.asList(endOfChr1, startOfChr2));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testIntervalAcrossContigs() {
+        new PackedIntervalList().add(PackedLocus.pack(0, 10), PackedLocus.pack(1, 5));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.interval;
+
+import htsjdk.samtools.SAMFileHeader;
+import org.apache.commons.io.FileUtils;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.exceptions.UserException;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * UnitTests for the timing based interval cost model
+ */
+public class TimedIntervalCostModelUnitTest extends BaseTest {
+    private final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(3, 1, 10000);
+    private final GenomeLocParser genomeLocParser = new GenomeLocParser(header.getSequenceDictionary());
+
+    /**
+     * Costs one per base, except on chr1:1001-2000 where every base costs ten, as a fallback for untimed regions
+     */
+    private final IntervalCostModel hotspotModel = new IntervalCostModel() {
+        @Override
+        public double getCost(final GenomeLoc loc) {
+            final GenomeLoc hotspot = genomeLocParser.createGenomeLoc("chr1", 1001, 2000);
+            return loc.size() + (loc.overlapsP(hotspot) ? 9 * loc.intersect(hotspot).size() : 0);
+        }
+    };
+
+    private File writeTimings(final String contents) throws IOException {
+        final File file = createTempFile("timedIntervalCostModel", ".tsv");
+        FileUtils.writeStringToFile(file, contents);
+        return file;
+    }
+
+    private GenomeLoc loc(final String contig, final int start, final int stop) {
+        return genomeLocParser.createGenomeLoc(contig, start, stop);
+    }
+
+    @Test
+    public void testTimedCosts() throws IOException {
+        final File timings = writeTimings("# interval\tseconds\nchr1:1-100\t50\nchr1:201-300\t10\n\nchr2:1-1000\t100\n");
+        final TimedIntervalCostModel model = new TimedIntervalCostModel(genomeLocParser, timings, null);
+
+        Assert.assertEquals(model.getCost(loc("chr1", 1, 100)), 50.0, 1e-9);
+        Assert.assertEquals(model.getCost(loc("chr1", 51, 60)), 5.0, 1e-9);
+        Assert.assertEquals(model.getCost(loc("chr2", 1, 10)), 1.0, 1e-9);
+
+        // untimed bases cost the average time per timed base, which is 160 / 1200
+        final double mean = 160.0 / 1200;
+        Assert.assertEquals(model.getCost(loc("chr1", 101, 200)), 100 * mean, 1e-9);
+        Assert.assertEquals(model.getCost(loc("chr3", 1, 10)), 10 * mean, 1e-9);
+        Assert.assertEquals(model.getCost(loc("chr1", 91, 210)), 5.0 + 100 * mean + 1.0, 1e-9);
+    }
+
+    @Test
+    public void testFallbackIsCalibrated() throws IOException {
+        // the fallback costs 5600 over the timed intervals, which took 1120 seconds
+        final File timings = writeTimings("chr1:501-1500\t1100\nchr2:1-100\t20\n");
+        final TimedIntervalCostModel model = new TimedIntervalCostModel(genomeLocParser, timings, hotspotModel);
+
+        Assert.assertEquals(model.getCost(loc("chr1", 501, 1500)), 1100.0, 1e-9);
+        Assert.assertEquals(model.getCost(loc("chr1", 1501, 2000)), 0.2 * 5000, 1e-9);
+        Assert.assertEquals(model.getCost(loc("chr3", 1, 100)), 0.2 * 100, 1e-9);
+    }
+
+    @Test
+    public void testCostsAreAdditive() throws IOException {
+        final File timings = writeTimings("chr1:501-1500\t200\nchr1:3001-3010\t1\n");
+        final TimedIntervalCostModel model = new TimedIntervalCostModel(genomeLocParser, timings, hotspotModel);
+
+        final GenomeLoc whole = loc("chr1", 1, 5000);
+        for ( int cut = 2; cut <= whole.getStop(); cut += 97 ) {
+            final GenomeLoc[] parts = whole.split(cut);
+            Assert.assertEquals(model.getCost(parts[0]) + model.getCost(parts[1]), model.getCost(whole), 1e-6, "cut at " + cut);
+        }
+    }
+
+    @DataProvider(name = "badTimings")
+    public Object[][] makeBadTimings() {
+        return new Object[][] {
+                { "chr1:1-100\n" },
+                { "chr1:1-100\t10\textra\n" },
+                { "chr1:1-100\tten\n" },
+                { "chr1:1-100\t-1\n" },
+                { "chr1:1-100\t1\nchr1:1-100\t2\n" },
+                { "chr1:1-100\t1\nchr1:50-150\t2\n" }
+        };
+    }
+
+    @Test(dataProvider = "badTimings", expectedExceptions = UserException.MalformedFile.class)
+    public void testBadTimings(final String contents) throws IOException {
+        new TimedIntervalCostModel(genomeLocParser, writeTimings(contents), null);
+    }
+}
@@ -32,41 +32,97 @@ import org.broadinstitute.gatk.engine.contexts.AlignmentContext;
 import org.broadinstitute.gatk.utils.GenomeLocParser;
 import org.broadinstitute.gatk.utils.QualityUtils;
 import org.broadinstitute.gatk.utils.Utils;
+import org.broadinstitute.gatk.utils.pileup.PileupElement;
 import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
+import org.broadinstitute.gatk.utils.sam.GATKSAMReadGroupRecord;
 import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 
 /**
  * Caliper microbenchmark of fragment pileup
+ *
+ * The tiled benchmarks start a read at every locus, so that most loci see a full pileup of readLength reads
+ * spread over nSamples samples.  Running main also reports the throughput and the bytes allocated per locus,
+ * which is the number to watch when changing how LocusIteratorByState builds its pileups.
  */
 public class LocusIteratorBenchmark extends SimpleBenchmark {
     protected SAMFileHeader header;
     protected GenomeLocParser genomeLocParser;
 
     List<GATKSAMRecord> reads = new LinkedList<GATKSAMRecord>();
+    List<GATKSAMRecord> tiledReads = new LinkedList<GATKSAMRecord>();
+    List<String> samples = new ArrayList<String>();
     final int readLength = 101;
     final int nReads = 10000;
+    final int nTiledLoci = 10000;
     final int locus = 1;
 
     @Param({"101M", "50M10I40M", "50M10D40M"})
     String cigar; // set automatically by framework
 
+    @Param({"1", "10"})
+    int nSamples; // set automatically by framework
+
     @Override protected void setUp() {
-        header = ArtificialSAMUtils.createArtificialSamHeader(1, 1, 1000);
+        header = ArtificialSAMUtils.createArtificialSamHeader(1, 1, nTiledLoci + 2 * readLength);
         genomeLocParser = new GenomeLocParser(header.getSequenceDictionary());
 
-        for ( int j = 0; j < nReads; j++ ) {
-            GATKSAMRecord read = ArtificialSAMUtils.createArtificialRead(header, "read", 0, locus, readLength);
-            read.setReadBases(Utils.dupBytes((byte) 'A', readLength));
-            final byte[] quals = new byte[readLength];
-            for ( int i = 0; i < readLength; i++ )
-                quals[i] = (byte)(i % QualityUtils.MAX_SAM_QUAL_SCORE);
-            read.setBaseQualities(quals);
-            read.setCigarString(cigar);
-            reads.add(read);
+        final List<GATKSAMReadGroupRecord> readGroups = new ArrayList<GATKSAMReadGroupRecord>(nSamples);
+        for ( int i = 0; i < nSamples; i++ ) {
+            final GATKSAMReadGroupRecord rg = new GATKSAMReadGroupRecord("rg" + i);
+            rg.setSample("sample" + i);
+            header.addReadGroup(rg);
+            readGroups.add(rg);
+            samples.add(rg.getSample());
+        }
+
+        for ( int j = 0; j < nReads; j++ )
+            reads.add(makeRead(locus, readGroups.get(j % nSamples)));
+
+        // one read per sample starting at each locus, round robin over the samples
+        for ( int start = 1; start <= nTiledLoci; start++ )
+            tiledReads.add(makeRead(start, readGroups.get(start % nSamples)));
+    }
+
+    private GATKSAMRecord makeRead(final int start, final GATKSAMReadGroupRecord readGroup) {
+        GATKSAMRecord read = ArtificialSAMUtils.createArtificialRead(header, "read", 0, start, readLength);
+        read.setReadBases(Utils.dupBytes((byte) 'A', readLength));
+        final byte[] quals = new byte[readLength];
+        for ( int i = 0; i < readLength; i++ )
+            quals[i] = (byte)(i % QualityUtils.MAX_SAM_QUAL_SCORE);
+        read.setBaseQualities(quals);
+        read.setCigarString(cigar);
+        read.setReadGroup(readGroup);
+        return read;
+    }
+
+    private LocusIteratorByState makeLIBS(final List<GATKSAMRecord> reads) {
+        return new LocusIteratorByState(
+                new LocusIteratorByStateBaseTest.FakeCloseableIterator<GATKSAMRecord>(reads.iterator()),
+                LocusIteratorByStateBaseTest.createTestReadProperties(),
+                genomeLocParser,
+                samples);
+    }
+
+    /**
+     * Walk all of the loci covered by reads, touching every element of every pileup
+     *
+     * @return the number of loci visited
+     */
+    private int walkLoci(final List<GATKSAMRecord> reads) {
+        final LocusIteratorByState libs = makeLIBS(reads);
+        int nLoci = 0;
+        while ( libs.hasNext() ) {
+            final AlignmentContext context = libs.next();
+            for ( final PileupElement p : context.getBasePileup() )
+                p.getQual();
+            nLoci++;
         }
+        return nLoci;
     }
 
 //    public void timeOriginalLIBS(int rep) {
@@ -101,12 +157,7 @@ public class LocusIteratorBenchmark extends SimpleBenchmark {
 
     public void timeNewLIBS(int rep) {
         for ( int i = 0; i < rep; i++ ) {
-            final org.broadinstitute.gatk.utils.locusiterator.LocusIteratorByState libs =
-                    new org.broadinstitute.gatk.utils.locusiterator.LocusIteratorByState(
-                            new LocusIteratorByStateBaseTest.FakeCloseableIterator<GATKSAMRecord>(reads.iterator()),
-                            LocusIteratorByStateBaseTest.createTestReadProperties(),
-                            genomeLocParser,
-                            LocusIteratorByState.sampleListForSAMWithoutReadGroups());
+            final LocusIteratorByState libs = makeLIBS(reads);
 
             while ( libs.hasNext() ) {
                 AlignmentContext context = libs.next();
@@ -114,6 +165,11 @@ public class LocusIteratorBenchmark extends SimpleBenchmark {
         }
     }
 
+    public void timeTiledLIBS(int rep) {
+        for ( int i = 0; i < rep; i++ )
+            walkLoci(tiledReads);
+    }
+
 //    public void timeOriginalLIBSStateMachine(int rep) {
 //        for ( int i = 0; i < rep; i++ ) {
 //            for ( final SAMRecord read : reads ) {
@@ -136,7 +192,45 @@ public class LocusIteratorBenchmark extends SimpleBenchmark {
         }
     }
 
+    /**
+     * Report the throughput and the bytes allocated per locus for the tiled benchmark
+     *
+     * Allocation is measured with the HotSpot per-thread allocation counter, so nothing is reported on JVMs
+     * that don't provide it.
+     */
+    public static void reportPerLocusCosts() {
+        if ( ! (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) )
+            return;
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final int nWarmupReps = 5, nReps = 10;
+
+        for ( final String cigar : new String[]{"101M", "50M10I40M", "50M10D40M"} ) {
+            for ( final int nSamples : new int[]{1, 10} ) {
+                final LocusIteratorBenchmark benchmark = new LocusIteratorBenchmark();
+                benchmark.cigar = cigar;
+                benchmark.nSamples = nSamples;
+                benchmark.setUp();
+
+                for ( int i = 0; i < nWarmupReps; i++ )
+                    benchmark.walkLoci(benchmark.tiledReads);
+
+                long nLoci = 0;
+                final long startBytes = threads.getThreadAllocatedBytes(threadId);
+                final long startTime = System.nanoTime();
+                for ( int i = 0; i < nReps; i++ )
+                    nLoci += benchmark.walkLoci(benchmark.tiledReads);
+                final long elapsed = System.nanoTime() - startTime;
+                final long allocated = threads.getThreadAllocatedBytes(threadId) - startBytes;
+
+                System.out.printf("cigar=%-10s nSamples=%-3d %10.0f loci/sec %10.1f bytes/locus%n",
+                        cigar, nSamples, nLoci / (elapsed / 1e9), allocated / (double)nLoci);
+            }
+        }
+    }
+
     public static void main(String[] args) {
+        reportPerLocusCosts();
         com.google.caliper.Runner.main(LocusIteratorBenchmark.class, args);
     }
 }
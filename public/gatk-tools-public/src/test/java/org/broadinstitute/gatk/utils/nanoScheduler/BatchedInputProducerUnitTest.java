@@ -0,0 +1,107 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.nanoScheduler;
+
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * UnitTests for the BatchedInputProducer
+ */
+public class BatchedInputProducerUnitTest extends BaseTest {
+    @DataProvider(name = "BatchedInputProducerTest")
+    public Object[][] createBatchedInputProducerTest() {
+        List<Object[]> tests = new ArrayList<Object[]>();
+
+        for ( final int nElements : Arrays.asList(0, 1, 10, 100, 1000, 10000, 100000) ) {
+            for ( final int maxBatchSize : Arrays.asList(1, 10, 100) ) {
+                for ( final long mapNanosPerElement : Arrays.asList(-1l, 1l, 1000l, 1000l * 1000 * 1000) ) {
+                    tests.add(new Object[]{ nElements, maxBatchSize, mapNanosPerElement });
+                }
+            }
+        }
+
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(enabled = true, dataProvider = "BatchedInputProducerTest", timeOut = NanoSchedulerUnitTest.NANO_SCHEDULE_MAX_RUNTIME)
+    public void testBatchedInputProducer(final int nElements, final int maxBatchSize, final long mapNanosPerElement) {
+        final List<Integer> elements = new ArrayList<Integer>(nElements);
+        for ( int i = 0; i < nElements; i++ ) elements.add(i);
+
+        final BatchedInputProducer<Integer> ip = new BatchedInputProducer<Integer>(elements.iterator(), maxBatchSize);
+        if ( mapNanosPerElement > 0 )
+            ip.recordMapTime(1, mapNanosPerElement);
+
+        Assert.assertFalse(ip.allInputsHaveBeenRead(), "BatchedInputProducer said that all inputs have been read, but I haven't started reading yet");
+        Assert.assertEquals(ip.getNumInputValues(), -1, "BatchedInputProducer told me that the queue was done, but I haven't started reading yet");
+
+        final int expectedBatchSize = mapNanosPerElement < 0 ? 1
+                : (int)Math.max(1, Math.min(maxBatchSize, BatchedInputProducer.TARGET_BATCH_NANOS / mapNanosPerElement));
+        Assert.assertEquals(ip.getCurrentBatchSize(), expectedBatchSize, "Unexpected batch size");
+
+        int lastValue = -1;
+        int nBatches = 0;
+        InputBatch<Integer, Integer> batch;
+        while ( (batch = ip.nextBatch()) != null ) {
+            Assert.assertEquals(batch.getBatchID(), nBatches++, "Batch IDs should be consecutive");
+            Assert.assertEquals(batch.firstInputID, lastValue + 1, "Batch should start right after the previous one");
+            Assert.assertTrue(batch.size() >= 1 && batch.size() <= expectedBatchSize, "Bad batch size " + batch.size());
+            for ( int i = 0; i < batch.size(); i++ ) {
+                final int expected = lastValue + 1;
+                Assert.assertEquals((int)batch.getInput(i), expected, "Value observed " + batch.getInput(i) + " not equal to the expected value " + expected);
+                lastValue = expected;
+            }
+        }
+
+        Assert.assertNull(ip.nextBatch(), "Exhausted BatchedInputProducer should keep returning null");
+        Assert.assertEquals(lastValue, nElements - 1, "Didn't see all of the elements");
+        Assert.assertEquals(ip.getNumBatches(), nBatches, "Wrong number of batches");
+        Assert.assertTrue(ip.allInputsHaveBeenRead(), "BatchedInputProducer said that all inputs haven't been read, but I read them all");
+        Assert.assertEquals(ip.getNumInputValues(), nElements, "Wrong number of total elements getNumInputValues");
+    }
+
+    @Test
+    public void testBatchSizeAdaptsToMapCost() {
+        final BatchedInputProducer<Integer> ip = new BatchedInputProducer<Integer>(new ArrayList<Integer>().iterator(), 1000);
+        Assert.assertEquals(ip.getCurrentBatchSize(), 1, "Batches should be single elements before any map costs are known");
+
+        for ( int i = 0; i < 100; i++ )
+            ip.recordMapTime(10, 10 * 100);
+        final int cheapSize = ip.getCurrentBatchSize();
+        Assert.assertTrue(cheapSize > 1, "Cheap maps should produce larger batches, but got " + cheapSize);
+
+        for ( int i = 0; i < 100; i++ )
+            ip.recordMapTime(1, 10 * BatchedInputProducer.TARGET_BATCH_NANOS);
+        Assert.assertEquals(ip.getCurrentBatchSize(), 1, "Expensive maps should produce single element batches");
+    }
+}
@@ -0,0 +1,89 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.nanoScheduler;
+
+import com.google.caliper.Param;
+import com.google.caliper.SimpleBenchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Caliper microbenchmark comparing the PER_ELEMENT and BATCHED execution modes of the NanoScheduler
+ *
+ * The map cost is a configurable amount of busy work per element, so that we can see how each mode
+ * copes with very cheap maps (like loci with low coverage), where contention on the input and
+ * reduce monitors dominates, as well as with heavier maps.
+ */
+public class NanoSchedulerBenchmark extends SimpleBenchmark {
+    private final static int N_ELEMENTS = 100000;
+
+    @Param({"1", "2", "4", "8", "16", "32"})
+    int nThreads; // set automatically by framework
+
+    @Param({"PER_ELEMENT", "BATCHED"})
+    NSExecutionMode executionMode; // set automatically by framework
+
+    @Param({"0", "100", "10000"})
+    int mapWork; // set automatically by framework
+
+    private List<Integer> inputs;
+    private NanoScheduler<Integer, Long, Long> nanoScheduler;
+
+    @Override protected void setUp() {
+        inputs = new ArrayList<Integer>(N_ELEMENTS);
+        for ( int i = 0; i < N_ELEMENTS; i++ )
+            inputs.add(i);
+        nanoScheduler = new NanoScheduler<Integer, Long, Long>(nThreads, executionMode);
+    }
+
+    @Override protected void tearDown() {
+        nanoScheduler.shutdown();
+    }
+
+    public void timeExecute(int rep) {
+        final NSMapFunction<Integer, Long> map = new NSMapFunction<Integer, Long>() {
+            @Override public Long apply(final Integer input) {
+                long x = input;
+                for ( int i = 0; i < mapWork; i++ )
+                    x = x * 31 + i;
+                return x;
+            }
+        };
+        final NSReduceFunction<Long, Long> reduce = new NSReduceFunction<Long, Long>() {
+            @Override public Long apply(final Long one, final Long sum) {
+                return one + sum;
+            }
+        };
+
+        for ( int i = 0; i < rep; i++ )
+            nanoScheduler.execute(inputs.iterator(), map, 0l, reduce);
+    }
+
+    public static void main(String[] args) {
+        com.google.caliper.Runner.main(NanoSchedulerBenchmark.class, args);
+    }
+}
@@ -36,6 +36,7 @@ import org.testng.annotations.Test;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
@@ -105,8 +106,13 @@ public class NanoSchedulerUnitTest extends BaseTest {
     private static class NanoSchedulerBasicTest extends TestDataProvider {
         final int bufferSize, nThreads, start, end, expectedResult;
         final boolean addDelays;
+        final NSExecutionMode executionMode;
 
         public NanoSchedulerBasicTest(final int bufferSize, final int nThreads, final int start, final int end, final boolean addDelays) {
+            this(bufferSize, nThreads, start, end, addDelays, NSExecutionMode.PER_ELEMENT);
+        }
+
+        public NanoSchedulerBasicTest(final int bufferSize, final int nThreads, final int start, final int end, final boolean addDelays, final NSExecutionMode executionMode) {
             super(NanoSchedulerBasicTest.class);
             this.bufferSize = bufferSize;
             this.nThreads = nThreads;
@@ -114,8 +120,9 @@ public class NanoSchedulerUnitTest extends BaseTest {
             this.end = end;
             this.expectedResult = sum2x(start, end);
             this.addDelays = addDelays;
-            setName(String.format("%s nt=%d buf=%d start=%d end=%d sum=%d delays=%b",
-                    getClass().getSimpleName(), nThreads, bufferSize, start, end, expectedResult, addDelays));
+            this.executionMode = executionMode;
+            setName(String.format("%s nt=%d buf=%d start=%d end=%d sum=%d delays=%b mode=%s",
+                    getClass().getSimpleName(), nThreads, bufferSize, start, end, expectedResult, addDelays, executionMode));
         }
 
         public Iterator<Integer> makeReader() {
@@ -137,9 +144,9 @@ public class NanoSchedulerUnitTest extends BaseTest {
         public NanoScheduler<Integer, Integer, Integer> makeScheduler() {
             final NanoScheduler <Integer, Integer, Integer> nano;
             if ( bufferSize == -1 )
-                nano = new NanoScheduler<Integer, Integer, Integer>(nThreads);
+                nano = new NanoScheduler<Integer, Integer, Integer>(nThreads, executionMode);
             else
-                nano = new NanoScheduler<Integer, Integer, Integer>(bufferSize, nThreads);
+                nano = new NanoScheduler<Integer, Integer, Integer>(bufferSize, nThreads, executionMode);
 
             nano.setDebug(debug);
             return nano;
@@ -172,8 +179,10 @@ public class NanoSchedulerUnitTest extends BaseTest {
                 for ( final int start : Arrays.asList(0) ) {
                     for ( final int end : Arrays.asList(0, 1, 2, 11, 100, 10000, 100000) ) {
                         for ( final boolean addDelays : Arrays.asList(true, false) ) {
-                            if ( end < 1000 )
-                                new NanoSchedulerBasicTest(bufferSize, nt, start, end, addDelays);
+                            for ( final NSExecutionMode mode : NSExecutionMode.values() ) {
+                                if ( end < 1000 )
+                                    new NanoSchedulerBasicTest(bufferSize, nt, start, end, addDelays, mode);
+                            }
                         }
                     }
                 }
@@ -207,6 +216,7 @@ public class NanoSchedulerUnitTest extends BaseTest {
         if ( test.bufferSize > -1 )
             Assert.assertEquals(nanoScheduler.getBufferSize(), test.bufferSize, "bufferSize argument");
         Assert.assertEquals(nanoScheduler.getnThreads(), test.nThreads, "nThreads argument");
+        Assert.assertEquals(nanoScheduler.getExecutionMode(), test.executionMode, "executionMode argument");
 
         final Integer sum = nanoScheduler.execute(test.makeReader(), test.makeMap(), test.initReduce(), test.makeReduce());
         Assert.assertNotNull(sum);
@@ -234,6 +244,29 @@ public class NanoSchedulerUnitTest extends BaseTest {
         }
     }
 
+    @Test(enabled = true && ! DEBUG, timeOut = NANO_SCHEDULE_MAX_RUNTIME)
+    public void testPendingMapResults() throws InterruptedException {
+        for ( final NSExecutionMode mode : NSExecutionMode.values() ) {
+            final NanoSchedulerBasicTest test = new NanoSchedulerBasicTest(100, 2, 0, 1000, false, mode);
+            final NanoScheduler<Integer, Integer, Integer> nanoScheduler = test.makeScheduler();
+            Assert.assertEquals(nanoScheduler.getNumPendingMapResults(), 0, "no run is executing");
+
+            final List<Integer> pendingSeen = Collections.synchronizedList(new ArrayList<Integer>());
+            final Integer sum = nanoScheduler.execute(test.makeReader(), new Map2x() {
+                @Override public Integer apply(Integer input) {
+                    pendingSeen.add(nanoScheduler.getNumPendingMapResults());
+                    return super.apply(input);
+                }
+            }, test.initReduce(), test.makeReduce());
+
+            Assert.assertEquals((int)sum, test.expectedResult);
+            for ( final int pending : pendingSeen )
+                Assert.assertTrue(pending >= 0, "pending map results must be >= 0 but got " + pending);
+            Assert.assertEquals(nanoScheduler.getNumPendingMapResults(), 0, "run is complete");
+            nanoScheduler.shutdown();
+        }
+    }
+
     @Test(enabled = true && ! DEBUG, timeOut = NANO_SCHEDULE_MAX_RUNTIME)
     public void testShutdown() throws InterruptedException {
         final NanoScheduler<Integer, Integer, Integer> nanoScheduler = new NanoScheduler<Integer, Integer, Integer>(1, 2);
@@ -257,10 +290,12 @@ public class NanoSchedulerUnitTest extends BaseTest {
         for ( final int bufSize : Arrays.asList(100) ) {
             for ( final int nThreads : Arrays.asList(8) ) {
                 for ( final boolean addDelays : Arrays.asList(true, false) ) {
-                    final NanoSchedulerBasicTest test = new NanoSchedulerBasicTest(bufSize, nThreads, 1, 1000000, false);
-                    final int maxN = addDelays ? 1000 : 10000;
-                    for ( int nElementsBeforeError = 0; nElementsBeforeError < maxN; nElementsBeforeError += Math.max(nElementsBeforeError / 10, 1) ) {
-                        tests.add(new Object[]{nElementsBeforeError, test, addDelays});
+                    for ( final NSExecutionMode mode : NSExecutionMode.values() ) {
+                        final NanoSchedulerBasicTest test = new NanoSchedulerBasicTest(bufSize, nThreads, 1, 1000000, false, mode);
+                        final int maxN = addDelays ? 1000 : 10000;
+                        for ( int nElementsBeforeError = 0; nElementsBeforeError < maxN; nElementsBeforeError += Math.max(nElementsBeforeError / 10, 1) ) {
+                            tests.add(new Object[]{nElementsBeforeError, test, addDelays});
+                        }
                     }
                 }
             }
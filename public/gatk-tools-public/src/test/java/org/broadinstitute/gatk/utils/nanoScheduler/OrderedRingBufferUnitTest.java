@@ -0,0 +1,174 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.nanoScheduler;
+
+import org.broadinstitute.gatk.engine.GenomeAnalysisEngine;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * UnitTests for the OrderedRingBuffer
+ */
+public class OrderedRingBufferUnitTest extends BaseTest {
+    @Test
+    public void testCapacityIsRoundedToPowerOfTwo() {
+        Assert.assertEquals(new OrderedRingBuffer<Integer>(1).capacity(), 1);
+        Assert.assertEquals(new OrderedRingBuffer<Integer>(4).capacity(), 4);
+        Assert.assertEquals(new OrderedRingBuffer<Integer>(5).capacity(), 8);
+        Assert.assertEquals(new OrderedRingBuffer<Integer>(100).capacity(), 128);
+    }
+
+    @DataProvider(name = "OrderedRingBufferTest")
+    public Object[][] createOrderedRingBufferTest() {
+        List<Object[]> tests = new ArrayList<Object[]>();
+
+        for ( final int nElements : Arrays.asList(0, 1, 10, 100, 1000) ) {
+            for ( final int capacity : Arrays.asList(1, 4, 16) ) {
+                tests.add(new Object[]{ nElements, capacity });
+            }
+        }
+
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(enabled = true, dataProvider = "OrderedRingBufferTest", timeOut = NanoSchedulerUnitTest.NANO_SCHEDULE_MAX_RUNTIME)
+    public void testOutOfOrderPutsAreTakenInOrder(final int nElements, final int capacity) {
+        final OrderedRingBuffer<Integer> buffer = new OrderedRingBuffer<Integer>(capacity);
+
+        // put values in a shuffled order within each window of capacity sequence numbers
+        final List<Integer> taken = new ArrayList<Integer>(nElements);
+        for ( int windowStart = 0; windowStart < nElements; windowStart += buffer.capacity() ) {
+            final List<Integer> window = new ArrayList<Integer>();
+            for ( int seq = windowStart; seq < Math.min(windowStart + buffer.capacity(), nElements); seq++ )
+                window.add(seq);
+            Collections.shuffle(window, GenomeAnalysisEngine.getRandomGenerator());
+
+            for ( final int seq : window ) {
+                Assert.assertTrue(buffer.tryPut(seq, seq), "Should be room for " + seq);
+                Assert.assertFalse(buffer.tryPut(seq + buffer.capacity(), seq), "Should be no room for " + (seq + buffer.capacity()));
+            }
+
+            Integer value;
+            while ( (value = buffer.take()) != null )
+                taken.add(value);
+        }
+
+        Assert.assertFalse(buffer.nextValueIsAvailable());
+        Assert.assertNull(buffer.take());
+        Assert.assertEquals(buffer.getNextSequenceToTake(), nElements);
+        Assert.assertEquals(taken.size(), nElements);
+        for ( int i = 0; i < taken.size(); i++ )
+            Assert.assertEquals((int)taken.get(i), i, "Values taken out of order");
+    }
+
+    @Test
+    public void testTakeWaitsForGap() {
+        final OrderedRingBuffer<Integer> buffer = new OrderedRingBuffer<Integer>(4);
+        Assert.assertTrue(buffer.tryPut(1, 1));
+        Assert.assertFalse(buffer.nextValueIsAvailable(), "Value 0 hasn't been put yet");
+        Assert.assertNull(buffer.take());
+        Assert.assertTrue(buffer.tryPut(0, 0));
+        Assert.assertEquals((int)buffer.take(), 0);
+        Assert.assertEquals((int)buffer.take(), 1);
+        Assert.assertNull(buffer.take());
+    }
+
+    @Test(timeOut = NanoSchedulerUnitTest.NANO_SCHEDULE_MAX_RUNTIME)
+    public void testPutBlocksUntilSlotIsTaken() throws Exception {
+        final OrderedRingBuffer<Integer> buffer = new OrderedRingBuffer<Integer>(1);
+        Assert.assertTrue(buffer.tryPut(0, 0));
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<Boolean> put = executor.submit(blockingPut(buffer, 1));
+            assertStillBlocked(put);
+
+            Assert.assertEquals((int)buffer.take(), 0);
+            Assert.assertTrue(put.get());
+            Assert.assertEquals((int)buffer.take(), 1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeOut = NanoSchedulerUnitTest.NANO_SCHEDULE_MAX_RUNTIME)
+    public void testAbortReleasesBlockedPut() throws Exception {
+        final OrderedRingBuffer<Integer> buffer = new OrderedRingBuffer<Integer>(1);
+        Assert.assertTrue(buffer.tryPut(0, 0));
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<Boolean> put = executor.submit(blockingPut(buffer, 1));
+            assertStillBlocked(put);
+
+            buffer.abort();
+            Assert.assertFalse(put.get(), "Aborted put should not have stored its value");
+            Assert.assertEquals((int)buffer.take(), 0);
+            Assert.assertNull(buffer.take());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Callable<Boolean> blockingPut(final OrderedRingBuffer<Integer> buffer, final int seq) {
+        return new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws InterruptedException {
+                return buffer.put(seq, seq);
+            }
+        };
+    }
+
+    private static void assertStillBlocked(final Future<Boolean> put) throws Exception {
+        try {
+            put.get(100, TimeUnit.MILLISECONDS);
+            Assert.fail("put should wait for its slot to be taken");
+        } catch ( TimeoutException e ) {
+            // expected, the slot is still occupied
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testCannotPutConsumedSequence() {
+        final OrderedRingBuffer<Integer> buffer = new OrderedRingBuffer<Integer>(4);
+        buffer.tryPut(0, 0);
+        buffer.take();
+        buffer.tryPut(0, 0);
+    }
+}
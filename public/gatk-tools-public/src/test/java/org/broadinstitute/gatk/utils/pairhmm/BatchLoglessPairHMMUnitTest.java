@@ -0,0 +1,205 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.pairhmm;
+
+import htsjdk.samtools.SAMFileHeader;
+import org.broadinstitute.gatk.tools.walkers.genotyper.IndexedAlleleList;
+import org.broadinstitute.gatk.tools.walkers.genotyper.IndexedSampleList;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.Utils;
+import org.broadinstitute.gatk.utils.genotyper.ReadLikelihoods;
+import org.broadinstitute.gatk.utils.haplotype.Haplotype;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
+import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+/**
+ * Compares {@link BatchLoglessPairHMM} against the exact {@link Log10PairHMM}.
+ */
+public class BatchLoglessPairHMMUnitTest extends BaseTest {
+
+    private static final double TOLERANCE = 1e-3;
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+
+    private static byte[] randomBases(final Random random, final int length, final double nFraction) {
+        final byte[] bases = new byte[length];
+        for (int i = 0; i < length; i++)
+            bases[i] = random.nextDouble() < nFraction ? (byte) 'N' : BASES[random.nextInt(BASES.length)];
+        return bases;
+    }
+
+    // Introduces a few substitutions and small indels so that reads look like they come from the haplotype.
+    private static byte[] mutate(final Random random, final byte[] bases, final int length) {
+        final StringBuilder builder = new StringBuilder();
+        int i = random.nextInt(Math.max(1, bases.length - length));
+        while (builder.length() < length && i < bases.length) {
+            final double event = random.nextDouble();
+            if (event < 0.02)
+                builder.append((char) BASES[random.nextInt(BASES.length)]);
+            else if (event < 0.04)
+                i++;
+            else if (event < 0.07) {
+                builder.append((char) BASES[random.nextInt(BASES.length)]);
+                i++;
+            } else
+                builder.append((char) bases[i++]);
+        }
+        while (builder.length() < length)
+            builder.append((char) BASES[random.nextInt(BASES.length)]);
+        return builder.toString().getBytes();
+    }
+
+    private static byte[] randomQuals(final Random random, final int length, final int min, final int max) {
+        final byte[] quals = new byte[length];
+        for (int i = 0; i < length; i++)
+            quals[i] = (byte) (min + random.nextInt(max - min + 1));
+        return quals;
+    }
+
+    private static double exactLikelihood(final byte[] haplotype, final byte[] read, final byte[] quals,
+                                          final byte[] insQuals, final byte[] delQuals, final byte[] gcp) {
+        final Log10PairHMM exact = new Log10PairHMM(true);
+        exact.initialize(read.length, haplotype.length);
+        return exact.computeReadLikelihoodGivenHaplotypeLog10(haplotype, read, quals, insQuals, delQuals, gcp, true, null);
+    }
+
+    @DataProvider(name = "RandomAlignments")
+    public Object[][] makeRandomAlignments() {
+        final List<Object[]> tests = new ArrayList<>();
+        for (final int readLength : Arrays.asList(1, 5, 20, 101))
+            for (final int haplotypeCount : Arrays.asList(1, 3, BatchLoglessPairHMM.LANES, BatchLoglessPairHMM.LANES + 5))
+                for (final double nFraction : Arrays.asList(0.0, 0.05))
+                    tests.add(new Object[]{readLength, haplotypeCount, nFraction});
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "RandomAlignments")
+    public void testBatchMatchesExact(final int readLength, final int haplotypeCount, final double nFraction) {
+        final Random random = new Random(readLength * 31 + haplotypeCount);
+        final byte[] reference = randomBases(random, readLength + 60, nFraction);
+        final List<Haplotype> haplotypes = new ArrayList<>(haplotypeCount);
+        for (int h = 0; h < haplotypeCount; h++)
+            // haplotypes of different lengths so that groups need padding.
+            haplotypes.add(new Haplotype(mutate(random, reference, readLength + random.nextInt(40) + 1)));
+
+        final BatchLoglessPairHMM hmm = new BatchLoglessPairHMM();
+        final List<byte[][]> reads = new ArrayList<>();
+        for (int r = 0; r < 3; r++) {
+            final byte[] read = mutate(random, reference, readLength);
+            final byte[][] readData = {read, randomQuals(random, readLength, 10, 40), randomQuals(random, readLength, 30, 45),
+                    randomQuals(random, readLength, 30, 45), Utils.dupBytes((byte) 10, readLength)};
+            reads.add(readData);
+            hmm.batchAdd(haplotypes, readData[0], readData[1], readData[2], readData[3], readData[4]);
+        }
+
+        final double[] results = hmm.batchGetResult();
+        Assert.assertEquals(results.length, reads.size() * haplotypeCount);
+        int i = 0;
+        for (final byte[][] readData : reads)
+            for (final Haplotype haplotype : haplotypes)
+                Assert.assertEquals(results[i++], exactLikelihood(haplotype.getBases(), readData[0], readData[1], readData[2], readData[3], readData[4]), TOLERANCE);
+
+        // the batch is consumed by the previous call.
+        Assert.assertEquals(hmm.batchGetResult().length, 0);
+    }
+
+    @Test
+    public void testLog10Fallback() {
+        // a long read that does not look like the haplotype at all, with expensive gaps, underflows even the scaled doubles.
+        final Random random = new Random(17);
+        final int readLength = 300;
+        final byte[] read = Utils.dupBytes((byte) 'A', readLength);
+        final byte[] quals = Utils.dupBytes((byte) 40, readLength);
+        final byte[] gop = Utils.dupBytes((byte) 45, readLength);
+        final byte[] gcp = Utils.dupBytes((byte) 40, readLength);
+        final byte[] mismatching = Utils.dupBytes((byte) 'C', readLength);
+        final byte[] matching = randomBases(random, readLength, 0.0);
+        System.arraycopy(read, 0, matching, 0, readLength / 2);
+
+        final BatchLoglessPairHMM hmm = new BatchLoglessPairHMM();
+        hmm.batchAdd(Arrays.asList(new Haplotype(mismatching), new Haplotype(read), new Haplotype(matching)), read, quals, gop, gop, gcp);
+        final double[] results = hmm.batchGetResult();
+        Assert.assertEquals(hmm.getLog10LaneCount(), 1);
+        Assert.assertTrue(results[0] < -700);
+        Assert.assertEquals(results[0], exactLikelihood(mismatching, read, quals, gop, gop, gcp), TOLERANCE);
+        Assert.assertEquals(results[1], exactLikelihood(read, read, quals, gop, gop, gcp), TOLERANCE);
+        Assert.assertEquals(results[2], exactLikelihood(matching, read, quals, gop, gop, gcp), TOLERANCE);
+    }
+
+    @Test
+    public void testSingleHaplotypeInterface() {
+        final Random random = new Random(3);
+        final byte[] haplotype = randomBases(random, 50, 0.0);
+        final byte[] read = mutate(random, haplotype, 30);
+        final byte[] quals = randomQuals(random, 30, 10, 40);
+        final byte[] gop = Utils.dupBytes((byte) 45, 30);
+        final byte[] gcp = Utils.dupBytes((byte) 10, 30);
+
+        final BatchLoglessPairHMM hmm = new BatchLoglessPairHMM();
+        hmm.initialize(30, 50);
+        final double lk = hmm.computeReadLikelihoodGivenHaplotypeLog10(haplotype, read, quals, gop, gop, gcp, true, null);
+        Assert.assertEquals(lk, exactLikelihood(haplotype, read, quals, gop, gop, gcp), TOLERANCE);
+    }
+
+    @Test
+    public void testComputeLikelihoods() {
+        final Random random = new Random(5);
+        final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(1, 1, 1000);
+        final byte[] reference = randomBases(random, 150, 0.0);
+        final List<Haplotype> haplotypes = new ArrayList<>();
+        for (int h = 0; h < 11; h++)
+            haplotypes.add(new Haplotype(mutate(random, reference, 100 + h), h == 0));
+
+        final List<GATKSAMRecord> reads = new ArrayList<>();
+        final Map<GATKSAMRecord,byte[]> gcps = new HashMap<>();
+        for (int r = 0; r < 7; r++) {
+            final int readLength = 20 + 10 * r;
+            final GATKSAMRecord read = ArtificialSAMUtils.createArtificialRead(header, "read" + r, 0, 1, mutate(random, reference, readLength),
+                    randomQuals(random, readLength, 10, 40));
+            reads.add(read);
+            gcps.put(read, Utils.dupBytes((byte) 10, readLength));
+        }
+
+        final ReadLikelihoods<Haplotype> likelihoods = new ReadLikelihoods<>(new IndexedSampleList("sample"),
+                new IndexedAlleleList<>(haplotypes), Collections.singletonMap("sample", reads));
+        final BatchLoglessPairHMM hmm = new BatchLoglessPairHMM();
+        hmm.computeLikelihoods(likelihoods.sampleMatrix(0), reads, gcps);
+
+        for (int r = 0; r < reads.size(); r++) {
+            final GATKSAMRecord read = reads.get(r);
+            for (int h = 0; h < haplotypes.size(); h++) {
+                final double expected = exactLikelihood(haplotypes.get(h).getBases(), read.getReadBases(), read.getBaseQualities(),
+                        read.getBaseInsertionQualities(), read.getBaseDeletionQualities(), gcps.get(read));
+                Assert.assertEquals(likelihoods.sampleMatrix(0).get(h, r), expected, TOLERANCE);
+                Assert.assertEquals(hmm.getLikelihoodArray()[r * haplotypes.size() + h], expected, TOLERANCE);
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.pairhmm;
+
+import htsjdk.samtools.SAMFileHeader;
+import org.broadinstitute.gatk.tools.walkers.genotyper.IndexedAlleleList;
+import org.broadinstitute.gatk.tools.walkers.genotyper.IndexedSampleList;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.Utils;
+import org.broadinstitute.gatk.utils.genotyper.ReadLikelihoods;
+import org.broadinstitute.gatk.utils.haplotype.Haplotype;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
+import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+/**
+ * Tests the haplotype prefix trie order and the PairHMM column reuse that it enables.
+ */
+public class HaplotypePrefixOrderUnitTest extends BaseTest {
+
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+
+    private static List<Haplotype> haplotypes(final String ... bases) {
+        final List<Haplotype> result = new ArrayList<>(bases.length);
+        for (final String b : bases)
+            result.add(new Haplotype(b.getBytes(), result.isEmpty()));
+        return result;
+    }
+
+    @Test
+    public void testOrder() {
+        final HaplotypePrefixOrder order = new HaplotypePrefixOrder(haplotypes("ACGT", "ACGA", "AC", "ACGA", "TCGA", "AAGT"));
+        Assert.assertEquals(order.size(), 6);
+        final int[] expectedIndices = {2, 5, 1, 3, 0, 4};
+        final int[] expectedShared = {0, 0, 1, 4, 3, 0};
+        for (int k = 0; k < order.size(); k++) {
+            Assert.assertEquals(order.alleleIndex(k), expectedIndices[k], "position " + k);
+            Assert.assertEquals(order.sharedPrefixLength(k), expectedShared[k], "position " + k);
+        }
+        Assert.assertEquals(order.columnCount(), 22);
+        Assert.assertEquals(order.sharedColumnCount(), 8);
+    }
+
+    @Test
+    public void testEmpty() {
+        final HaplotypePrefixOrder order = new HaplotypePrefixOrder(Collections.<Haplotype>emptyList());
+        Assert.assertEquals(order.size(), 0);
+        Assert.assertEquals(order.columnCount(), 0);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNullAlleles() {
+        new HaplotypePrefixOrder(null);
+    }
+
+    @Test
+    public void testComputeLikelihoodsReusesSharedPrefixes() {
+        final Random random = new Random(13);
+        final int prefixLength = 120;
+        final byte[] prefix = new byte[prefixLength];
+        for (int i = 0; i < prefixLength; i++)
+            prefix[i] = BASES[random.nextInt(BASES.length)];
+
+        // haplotypes that share a long prefix and differ near their end, in no particular order and of two lengths.
+        final List<Haplotype> haplotypes = new ArrayList<>();
+        for (int h = 0; h < 12; h++) {
+            final byte[] bases = Arrays.copyOf(prefix, prefixLength + 10 + (h % 2));
+            for (int i = prefixLength - 20; i < bases.length; i++)
+                if (i >= prefixLength || random.nextInt(10) == 0)
+                    bases[i] = BASES[random.nextInt(BASES.length)];
+            haplotypes.add(new Haplotype(bases, h == 0));
+        }
+
+        final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(1, 1, 1000);
+        final List<GATKSAMRecord> reads = new ArrayList<>();
+        final Map<GATKSAMRecord,byte[]> gcps = new HashMap<>();
+        for (int r = 0; r < 5; r++) {
+            final int readLength = 30 + 10 * r;
+            final int start = random.nextInt(prefixLength + 10 - readLength);
+            final byte[] quals = new byte[readLength];
+            for (int i = 0; i < readLength; i++)
+                quals[i] = (byte) (10 + random.nextInt(30));
+            final GATKSAMRecord read = ArtificialSAMUtils.createArtificialRead(header, "read" + r, 0, 1,
+                    Arrays.copyOfRange(haplotypes.get(r).getBases(), start, start + readLength), quals);
+            reads.add(read);
+            gcps.put(read, Utils.dupBytes((byte) 10, readLength));
+        }
+
+        final ReadLikelihoods<Haplotype> likelihoods = new ReadLikelihoods<>(new IndexedSampleList("sample"),
+                new IndexedAlleleList<>(haplotypes), Collections.singletonMap("sample", reads));
+        final Log10PairHMM hmm = new Log10PairHMM(true);
+        hmm.computeLikelihoods(likelihoods.sampleMatrix(0), reads, gcps);
+
+        final HaplotypePrefixOrder order = new HaplotypePrefixOrder(haplotypes);
+        long readBaseCount = 0;
+        for (int r = 0; r < reads.size(); r++) {
+            final GATKSAMRecord read = reads.get(r);
+            readBaseCount += read.getReadLength();
+            for (int h = 0; h < haplotypes.size(); h++) {
+                final byte[] haplotype = haplotypes.get(h).getBases();
+                final Log10PairHMM fresh = new Log10PairHMM(true);
+                fresh.initialize(read.getReadLength(), haplotype.length);
+                final double expected = fresh.computeReadLikelihoodGivenHaplotypeLog10(haplotype, read.getReadBases(), read.getBaseQualities(),
+                        read.getBaseInsertionQualities(), read.getBaseDeletionQualities(), gcps.get(read), true, null);
+                Assert.assertEquals(likelihoods.sampleMatrix(0).get(h, r), expected, 1e-9, "read " + r + " haplotype " + h);
+                Assert.assertEquals(hmm.getLikelihoodArray()[r * haplotypes.size() + h], expected, 1e-9);
+            }
+        }
+        Assert.assertEquals(hmm.getRegionCellCount(), readBaseCount * order.columnCount());
+        Assert.assertEquals(hmm.getRegionSharedCellCount(), readBaseCount * order.sharedColumnCount());
+        Assert.assertTrue(hmm.getRegionSharedCellCount() > hmm.getRegionCellCount() / 2);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.pairhmm;
+
+import com.google.caliper.Param;
+import com.google.caliper.SimpleBenchmark;
+import htsjdk.samtools.SAMFileHeader;
+import org.broadinstitute.gatk.tools.walkers.genotyper.IndexedAlleleList;
+import org.broadinstitute.gatk.tools.walkers.genotyper.IndexedSampleList;
+import org.broadinstitute.gatk.utils.Utils;
+import org.broadinstitute.gatk.utils.genotyper.ReadLikelihoods;
+import org.broadinstitute.gatk.utils.haplotype.Haplotype;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
+import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
+
+import java.util.*;
+
+/**
+ * Caliper microbenchmark comparing the Java PairHMM implementations over an active region worth of reads and haplotypes
+ */
+public class PairHMMBenchmark extends SimpleBenchmark {
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+    private final int nReads = 50;
+    private final int haplotypeLength = 300;
+
+    @Param({"100", "250"})
+    int readLength; // set automatically by framework
+
+    @Param({"2", "8", "32"})
+    int nHaplotypes; // set automatically by framework
+
+    private List<GATKSAMRecord> reads;
+    private Map<GATKSAMRecord, byte[]> gcps;
+    private ReadLikelihoods<Haplotype> likelihoods;
+
+    @Override protected void setUp() {
+        final Random random = new Random(42);
+        final byte[] reference = new byte[haplotypeLength];
+        for ( int i = 0; i < haplotypeLength; i++ )
+            reference[i] = BASES[random.nextInt(BASES.length)];
+
+        // haplotypes differ from the reference by a few SNPs
+        final List<Haplotype> haplotypes = new ArrayList<>(nHaplotypes);
+        for ( int h = 0; h < nHaplotypes; h++ ) {
+            final byte[] bases = reference.clone();
+            for ( int s = 0; s < 3; s++ )
+                bases[random.nextInt(haplotypeLength)] = BASES[random.nextInt(BASES.length)];
+            haplotypes.add(new Haplotype(bases, h == 0));
+        }
+
+        final SAMFileHeader header = ArtificialSAMUtils.createArtificialSamHeader(1, 1, 1000);
+        reads = new ArrayList<>(nReads);
+        gcps = new HashMap<>(nReads);
+        for ( int r = 0; r < nReads; r++ ) {
+            final int start = random.nextInt(haplotypeLength - readLength + 1);
+            final byte[] quals = new byte[readLength];
+            for ( int i = 0; i < readLength; i++ )
+                quals[i] = (byte)(10 + random.nextInt(30));
+            final GATKSAMRecord read = ArtificialSAMUtils.createArtificialRead(header, "read" + r, 0, 1,
+                    Arrays.copyOfRange(haplotypes.get(r % nHaplotypes).getBases(), start, start + readLength), quals);
+            reads.add(read);
+            gcps.put(read, Utils.dupBytes((byte) 10, readLength));
+        }
+
+        likelihoods = new ReadLikelihoods<>(new IndexedSampleList("sample"), new IndexedAlleleList<>(haplotypes),
+                Collections.singletonMap("sample", reads));
+    }
+
+    private void run(final PairHMM hmm, final int rep) {
+        for ( int i = 0; i < rep; i++ )
+            hmm.computeLikelihoods(likelihoods.sampleMatrix(0), reads, gcps);
+    }
+
+    public void timeLog10PairHMM(int rep) {
+        run(new Log10PairHMM(false), rep);
+    }
+
+    public void timeBatchLoglessPairHMM(int rep) {
+        run(new BatchLoglessPairHMM(), rep);
+    }
+
+    public static void main(String[] args) {
+        com.google.caliper.Runner.main(PairHMMBenchmark.class, args);
+    }
+}
@@ -0,0 +1,201 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.pileup;
+
+import htsjdk.samtools.SAMFileHeader;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.GenomeLoc;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.sam.ArtificialSAMUtils;
+import org.broadinstitute.gatk.utils.sam.GATKSAMRecord;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.*;
+
+/**
+ * Checks that the pileups of PerSamplePileupBuilder match those built the old way, from a map of per-sample pileups
+ */
+public class PerSamplePileupBuilderUnitTest extends BaseTest {
+    private SAMFileHeader header;
+    private GenomeLoc loc;
+
+    @BeforeClass
+    public void beforeClass() {
+        header = ArtificialSAMUtils.createArtificialSamHeader(1, 1, 1000);
+        loc = new GenomeLocParser(header.getSequenceDictionary()).createGenomeLoc("chr1", 50);
+    }
+
+    @DataProvider(name = "Samples")
+    public Object[][] makeSamples() {
+        return new Object[][]{
+                // the single sample of a run without read groups, and a named single sample
+                {Arrays.asList((String)null), new int[]{5}},
+                {Arrays.asList("NA12878"), new int[]{1}},
+                {Arrays.asList("NA12878"), new int[]{0}},
+                // several samples, some of them without elements at this locus
+                {Arrays.asList("s1", "s2", "s3"), new int[]{2, 0, 4}},
+                {Arrays.asList("s1", "s2", "s3", "s4"), new int[]{0, 0, 3, 0}},
+                {Arrays.asList("s1", "s2", "s3"), new int[]{0, 0, 0}},
+                {Arrays.asList("b", "a", "c", "e", "d"), new int[]{3, 1, 4, 1, 5}},
+        };
+    }
+
+    @Test(dataProvider = "Samples")
+    public void testBuilderMatchesPileupOfSamplePileups(final List<String> samples, final int[] nElements) {
+        final List<List<PileupElement>> elements = makeElements(samples, nElements);
+        final ReadBackedPileupImpl built = build(new PerSamplePileupBuilder(samples), elements, false);
+
+        // the old way, with the sample pileups in sample list order
+        final Map<String, ReadBackedPileupImpl> pileupsBySample = new LinkedHashMap<String, ReadBackedPileupImpl>();
+        for ( int i = 0; i < samples.size(); i++ )
+            if ( ! elements.get(i).isEmpty() )
+                pileupsBySample.put(samples.get(i), new ReadBackedPileupImpl(loc, elements.get(i)));
+        final ReadBackedPileupImpl expected = new ReadBackedPileupImpl(loc, pileupsBySample);
+
+        assertSamePileups(built, expected, samples);
+    }
+
+    @Test(dataProvider = "Samples")
+    public void testStartingEmptySamples(final List<String> samples, final int[] nElements) {
+        final List<List<PileupElement>> elements = makeElements(samples, nElements);
+        final ReadBackedPileupImpl withEmptySamples = build(new PerSamplePileupBuilder(samples), elements, true);
+        final ReadBackedPileupImpl withoutEmptySamples = build(new PerSamplePileupBuilder(samples), elements, false);
+        assertSamePileups(withEmptySamples, withoutEmptySamples, samples);
+    }
+
+    @Test
+    public void testPileupsOutliveTheNextLocus() {
+        final List<String> samples = Arrays.asList("s1", "s2");
+        final PerSamplePileupBuilder builder = new PerSamplePileupBuilder(samples);
+
+        final List<List<PileupElement>> first = makeElements(samples, new int[]{2, 3});
+        final ReadBackedPileupImpl firstPileup = build(builder, first, false);
+        final List<PileupElement> firstElements = toList(firstPileup);
+
+        final ReadBackedPileupImpl secondPileup = build(builder, makeElements(samples, new int[]{4, 1}), false);
+
+        Assert.assertEquals(toList(firstPileup), firstElements);
+        Assert.assertEquals(toList(firstPileup.getPileupForSample("s1")), first.get(0));
+        Assert.assertEquals(toList(firstPileup.getPileupForSample("s2")), first.get(1));
+        Assert.assertEquals(secondPileup.getNumberOfElements(), 5);
+    }
+
+    @Test
+    public void testSliceIsCopiedOnWrite() {
+        final List<PileupElement> elements = makeElements(Arrays.asList("s1"), new int[]{4}).get(0);
+        final PileupElement[] array = elements.toArray(new PileupElement[elements.size()]);
+        final UnifiedPileupElementTracker<PileupElement> slice = new UnifiedPileupElementTracker<PileupElement>(array, 1, 3);
+
+        Assert.assertEquals(slice.size(), 2);
+        Assert.assertSame(slice.get(0), array[1]);
+
+        slice.add(elements.get(0));
+        Assert.assertEquals(slice.size(), 3);
+        Assert.assertSame(slice.get(2), elements.get(0));
+        Assert.assertEquals(array, elements.toArray(), "adding to a slice changed the shared array");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testSamplesOutOfOrder() {
+        final PerSamplePileupBuilder builder = new PerSamplePileupBuilder(Arrays.asList("s1", "s2"));
+        builder.startLocus(1);
+        builder.startSample(1);
+        builder.startSample(0);
+    }
+
+    /**
+     * Build a pileup of elements, whose i-th list holds the elements of the i-th sample
+     *
+     * @param startEmptySamples if true, start samples that have no elements too
+     */
+    private ReadBackedPileupImpl build(final PerSamplePileupBuilder builder, final List<List<PileupElement>> elements, final boolean startEmptySamples) {
+        int total = 0;
+        for ( final List<PileupElement> sampleElements : elements )
+            total += sampleElements.size();
+
+        builder.startLocus(total);
+        for ( int i = 0; i < elements.size(); i++ ) {
+            if ( elements.get(i).isEmpty() && ! startEmptySamples )
+                continue;
+            builder.startSample(i);
+            for ( final PileupElement element : elements.get(i) )
+                builder.add(element);
+        }
+        Assert.assertEquals(builder.getNumberOfElements(), total);
+        return builder.build(loc);
+    }
+
+    /**
+     * Make nElements[i] elements for the i-th sample, at offsets that interleave and tie across samples
+     */
+    private List<List<PileupElement>> makeElements(final List<String> samples, final int[] nElements) {
+        final List<List<PileupElement>> elements = new ArrayList<List<PileupElement>>();
+        for ( int i = 0; i < samples.size(); i++ ) {
+            final List<PileupElement> sampleElements = new ArrayList<PileupElement>();
+            for ( int j = 0; j < nElements[i]; j++ ) {
+                final GATKSAMRecord read = ArtificialSAMUtils.createArtificialRead(header, "read_" + i + "_" + j, 0, 50 - j - i, 10);
+                final int offset = j + i;
+                sampleElements.add(new PileupElement(read, offset, read.getCigar().getCigarElement(0), 0, offset));
+            }
+            elements.add(sampleElements);
+        }
+        return elements;
+    }
+
+    private void assertSamePileups(final ReadBackedPileupImpl actual, final ReadBackedPileupImpl expected, final List<String> samples) {
+        Assert.assertEquals(actual.getNumberOfElements(), expected.getNumberOfElements());
+        Assert.assertEquals(actual.getLocation(), expected.getLocation());
+        Assert.assertEquals(actual.getSamples(), expected.getSamples());
+        Assert.assertEquals(toList(actual), toList(expected));
+
+        final List<PileupElement> actualUnordered = new ArrayList<PileupElement>();
+        for ( final PileupElement element : actual.pileupElementTracker.unorderedIterable() )
+            actualUnordered.add(element);
+        final List<PileupElement> expectedUnordered = new ArrayList<PileupElement>();
+        for ( final PileupElement element : expected.pileupElementTracker.unorderedIterable() )
+            expectedUnordered.add(element);
+        Assert.assertEquals(actualUnordered, expectedUnordered);
+
+        for ( final String sample : new LinkedHashSet<String>(samples) ) {
+            final ReadBackedPileup actualSample = actual.getPileupForSample(sample);
+            final ReadBackedPileup expectedSample = expected.getPileupForSample(sample);
+            if ( expectedSample == null )
+                Assert.assertNull(actualSample, "pileup for sample " + sample + " should be null");
+            else
+                Assert.assertEquals(toList(actualSample), toList(expectedSample), "pileups differ for sample " + sample);
+        }
+    }
+
+    private static List<PileupElement> toList(final ReadBackedPileup pileup) {
+        final List<PileupElement> elements = new ArrayList<PileupElement>();
+        for ( final PileupElement element : pileup )
+            elements.add(element);
+        return elements;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.progressmeter;
+
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.GenomeLocParser;
+import org.broadinstitute.gatk.utils.GenomeLocSortedSet;
+import org.broadinstitute.gatk.utils.fasta.CachingIndexedFastaSequenceFile;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * UnitTests for ProgressMetrics, and the metrics registered by ProgressMeter
+ */
+public class ProgressMetricsUnitTest extends BaseTest {
+    private GenomeLocParser genomeLocParser;
+
+    @BeforeClass
+    public void init() throws FileNotFoundException {
+        genomeLocParser = new GenomeLocParser(new CachingIndexedFastaSequenceFile(new File(exampleFASTA)));
+    }
+
+    private static ProgressMetrics.Gauge constant(final double value) {
+        return new ProgressMetrics.Gauge() {
+            @Override public double getValue() { return value; }
+        };
+    }
+
+    @Test
+    public void testSnapshotInRegistrationOrder() {
+        final ProgressMetrics metrics = new ProgressMetrics();
+        metrics.register("b_metric", "the b", constant(2.0));
+        metrics.register("a_metric", "the a", constant(1.0));
+
+        Assert.assertEquals(metrics.getNames(), Arrays.asList("b_metric", "a_metric"));
+        Assert.assertEquals(metrics.getHelp("a_metric"), "the a");
+
+        final Map<String, Double> snapshot = metrics.snapshot();
+        Assert.assertEquals(snapshot.keySet().toArray(), new Object[]{"b_metric", "a_metric"});
+        Assert.assertEquals(snapshot.get("b_metric"), 2.0);
+        Assert.assertEquals(snapshot.get("a_metric"), 1.0);
+    }
+
+    @Test
+    public void testGaugesWithTheSameNameAreSummed() {
+        final ProgressMetrics metrics = new ProgressMetrics();
+        metrics.register("queue_depth", "depth", constant(3.0));
+        metrics.register("queue_depth", "depth", constant(4.0));
+
+        Assert.assertEquals(metrics.getNames().size(), 1);
+        Assert.assertEquals(metrics.snapshot().get("queue_depth"), 7.0);
+    }
+
+    @Test
+    public void testGaugesAreReadAtSnapshotTime() {
+        final ProgressMetrics metrics = new ProgressMetrics();
+        final double[] value = {1.0};
+        metrics.register("changing", "changes", new ProgressMetrics.Gauge() {
+            @Override public double getValue() { return value[0]; }
+        });
+
+        Assert.assertEquals(metrics.snapshot().get("changing"), 1.0);
+        value[0] = 5.0;
+        Assert.assertEquals(metrics.snapshot().get("changing"), 5.0);
+    }
+
+    @DataProvider(name = "InvalidNames")
+    public Object[][] makeInvalidNames() {
+        return new Object[][]{{null}, {""}, {"1abc"}, {"with space"}, {"with-dash"}};
+    }
+
+    @Test(dataProvider = "InvalidNames", expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidNames(final String name) {
+        new ProgressMetrics().register(name, "help", constant(0.0));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnknownHelp() {
+        new ProgressMetrics().getHelp("unknown");
+    }
+
+    @DataProvider(name = "SanitizeNames")
+    public Object[][] makeSanitizeNames() {
+        return new Object[][]{
+                {"sites", "sites"},
+                {"active regions", "active_regions"},
+                {"read-pairs", "read_pairs"},
+                {"1kg", "_1kg"},
+                {"ok_name:sub", "ok_name:sub"}
+        };
+    }
+
+    @Test(dataProvider = "SanitizeNames")
+    public void testSanitizeName(final String name, final String expected) {
+        Assert.assertEquals(ProgressMetrics.sanitizeName(name), expected);
+        new ProgressMetrics().register(expected, "help", constant(0.0));
+    }
+
+    @Test
+    public void testProgressMeterMetrics() throws Exception {
+        final File metricsFile = createTempFile("progressMetrics", ".json");
+        final GenomeLocSortedSet intervals = new GenomeLocSortedSet(genomeLocParser, genomeLocParser.createGenomeLoc("chr1", 1, 1000));
+        final ProgressMetricsWriter writer = new ProgressMetricsWriter(metricsFile, ProgressMetricsWriter.Format.JSON_LINES, 1000);
+        final ProgressMeter meter = new ProgressMeter(null, writer, "active regions", intervals);
+
+        // no snapshot has been taken yet, so progress is unknown
+        Assert.assertTrue(Double.isNaN(meter.getMetrics().snapshot().get("gatk_active_regions_processed")));
+
+        meter.notifyOfProgress(genomeLocParser.createGenomeLoc("chr1", 250), 10);
+        meter.exportMetrics(true);
+
+        final Map<String, Double> snapshot = meter.getMetrics().snapshot();
+        Assert.assertEquals(snapshot.get("gatk_active_regions_processed"), 10.0);
+        Assert.assertEquals(snapshot.get("gatk_bp_processed"), 249.0);
+        Assert.assertEquals(snapshot.get("gatk_percent_complete"), 24.9, 1e-6);
+        Assert.assertEquals(snapshot.get("gatk_done"), 0.0);
+        Assert.assertTrue(snapshot.get("gatk_heap_used_bytes") > 0);
+        Assert.assertTrue(snapshot.get("gatk_gc_collections") >= 0);
+
+        meter.notifyDone(20);
+        final Map<String, Double> done = meter.getMetrics().snapshot();
+        Assert.assertEquals(done.get("gatk_active_regions_processed"), 20.0);
+        Assert.assertEquals(done.get("gatk_done"), 1.0);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.progressmeter;
+
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * UnitTests for ProgressMetricsWriter
+ */
+public class ProgressMetricsWriterUnitTest extends BaseTest {
+    private static ProgressMetrics makeMetrics(final double... values) {
+        final ProgressMetrics metrics = new ProgressMetrics();
+        for ( int i = 0; i < values.length; i++ ) {
+            final double value = values[i];
+            metrics.register("metric_" + i, "help for metric " + i, new ProgressMetrics.Gauge() {
+                @Override public double getValue() { return value; }
+            });
+        }
+        return metrics;
+    }
+
+    @Test
+    public void testJSONLine() {
+        final Map<String, Double> values = new LinkedHashMap<String, Double>();
+        values.put("count", 12.0);
+        values.put("rate", 1.5);
+        values.put("unknown", Double.NaN);
+        values.put("infinite", Double.POSITIVE_INFINITY);
+
+        Assert.assertEquals(ProgressMetricsWriter.toJSONLine(1000L, values),
+                "{\"timestamp\":1000,\"count\":12,\"rate\":1.5,\"unknown\":null,\"infinite\":null}");
+    }
+
+    @Test
+    public void testPrometheusText() {
+        final ProgressMetrics metrics = makeMetrics(3.0, 0.25, Double.NaN, Double.POSITIVE_INFINITY);
+        Assert.assertEquals(ProgressMetricsWriter.toPrometheusText(metrics, metrics.snapshot()),
+                "# HELP metric_0 help for metric 0\n# TYPE metric_0 gauge\nmetric_0 3\n" +
+                "# HELP metric_1 help for metric 1\n# TYPE metric_1 gauge\nmetric_1 0.25\n" +
+                "# HELP metric_2 help for metric 2\n# TYPE metric_2 gauge\nmetric_2 NaN\n" +
+                "# HELP metric_3 help for metric 3\n# TYPE metric_3 gauge\nmetric_3 +Inf\n");
+    }
+
+    @Test
+    public void testJSONLinesAreAppended() throws Exception {
+        final File file = createTempFile("progressMetrics", ".json");
+        final ProgressMetricsWriter writer = new ProgressMetricsWriter(file, ProgressMetricsWriter.Format.JSON_LINES, 1000);
+        final ProgressMetrics metrics = makeMetrics(1.0, 2.0);
+        writer.write(metrics);
+        writer.write(metrics);
+        writer.close();
+
+        // writes after close are ignored
+        writer.write(metrics);
+
+        final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        Assert.assertEquals(lines.size(), 2);
+        for ( final String line : lines ) {
+            Assert.assertTrue(line.startsWith("{\"timestamp\":"), line);
+            Assert.assertTrue(line.endsWith(",\"metric_0\":1,\"metric_1\":2}"), line);
+        }
+    }
+
+    @Test
+    public void testPrometheusFileIsReplaced() throws Exception {
+        final File file = createTempFile("progressMetrics", ".prom");
+        final ProgressMetricsWriter writer = new ProgressMetricsWriter(file, ProgressMetricsWriter.Format.PROMETHEUS, 1000);
+        final double[] value = {1.0};
+        final ProgressMetrics metrics = new ProgressMetrics();
+        metrics.register("value", "a value", new ProgressMetrics.Gauge() {
+            @Override public double getValue() { return value[0]; }
+        });
+
+        writer.write(metrics);
+        value[0] = 2.0;
+        writer.write(metrics);
+        writer.close();
+
+        final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        Assert.assertEquals(lines.size(), 3);
+        Assert.assertEquals(lines.get(2), "value 2");
+        Assert.assertFalse(new File(file.getParentFile(), "." + file.getName() + ".tmp").exists());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testBadInterval() throws Exception {
+        new ProgressMetricsWriter(createTempFile("progressMetrics", ".json"), ProgressMetricsWriter.Format.JSON_LINES, 0);
+    }
+}
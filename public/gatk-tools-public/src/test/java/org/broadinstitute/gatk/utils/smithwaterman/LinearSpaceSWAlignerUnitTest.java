@@ -0,0 +1,199 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.smithwaterman;
+
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.sam.CigarUtils;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that {@link LinearSpaceSWAligner} gives the same alignments as {@link SWPairwiseAlignment}.
+ */
+public class LinearSpaceSWAlignerUnitTest extends BaseTest {
+
+    private static final byte[] BASES = {'A', 'C', 'G', 'T'};
+
+    private static byte[] randomBases(final Random random, final int length) {
+        final byte[] bases = new byte[length];
+        for ( int i = 0; i < length; i++ )
+            bases[i] = BASES[random.nextInt(BASES.length)];
+        return bases;
+    }
+
+    // a piece of the reference with a few substitutions and indels.
+    private static byte[] mutate(final Random random, final byte[] reference, final int start, final int length) {
+        final StringBuilder builder = new StringBuilder();
+        int i = start;
+        while ( builder.length() < length && i < reference.length ) {
+            final double event = random.nextDouble();
+            if ( event < 0.03 )
+                builder.append((char) BASES[random.nextInt(BASES.length)]);
+            else if ( event < 0.06 )
+                i += 1 + random.nextInt(3);
+            else if ( event < 0.1 ) {
+                builder.append((char) BASES[random.nextInt(BASES.length)]);
+                i++;
+            } else
+                builder.append((char) reference[i++]);
+        }
+        while ( builder.length() < length )
+            builder.append((char) BASES[random.nextInt(BASES.length)]);
+        return builder.toString().getBytes();
+    }
+
+    @DataProvider(name = "Strategies")
+    public Object[][] makeStrategies() {
+        final List<Object[]> tests = new ArrayList<>();
+        for ( final SWParameterSet parameters : SWParameterSet.values() )
+            for ( final SWPairwiseAlignment.OVERHANG_STRATEGY strategy : SWPairwiseAlignment.OVERHANG_STRATEGY.values() )
+                tests.add(new Object[]{parameters, strategy});
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "Strategies")
+    public void testSameAsFullMatrix(final SWParameterSet parameters, final SWPairwiseAlignment.OVERHANG_STRATEGY strategy) {
+        final Random random = new Random(parameters.ordinal() * 31 + strategy.ordinal());
+        final LinearSpaceSWAligner aligner = new LinearSpaceSWAligner(parameters, strategy);
+        for ( int k = 0; k < 300; k++ ) {
+            final byte[] reference = randomBases(random, 1 + random.nextInt(120));
+            final byte[] alternate = random.nextBoolean()
+                    ? mutate(random, reference, random.nextInt(reference.length), 1 + random.nextInt(100))
+                    : randomBases(random, 1 + random.nextInt(30));
+            final SWPairwiseAlignment expected = new SWPairwiseAlignment(reference, alternate, parameters, strategy);
+            final SmithWaterman actual = aligner.align(reference, alternate);
+            final String message = new String(reference) + " vs " + new String(alternate);
+            Assert.assertEquals(actual.getCigar(), expected.getCigar(), message);
+            Assert.assertEquals(actual.getAlignmentStart2wrt1(), expected.getAlignmentStart2wrt1(), message);
+        }
+    }
+
+    @Test(dataProvider = "Strategies")
+    public void testWideBandSameAsFullMatrix(final SWParameterSet parameters, final SWPairwiseAlignment.OVERHANG_STRATEGY strategy) {
+        final Random random = new Random(7);
+        final LinearSpaceSWAligner aligner = new LinearSpaceSWAligner(parameters, strategy);
+        for ( int k = 0; k < 100; k++ ) {
+            final byte[] reference = randomBases(random, 1 + random.nextInt(80));
+            final byte[] alternate = mutate(random, reference, 0, 1 + random.nextInt(60));
+            final SWPairwiseAlignment expected = new SWPairwiseAlignment(reference, alternate, parameters, strategy);
+            final SmithWaterman actual = aligner.align(reference, alternate, random.nextInt(10) - 5, reference.length + alternate.length);
+            Assert.assertEquals(actual.getCigar(), expected.getCigar());
+            Assert.assertEquals(actual.getAlignmentStart2wrt1(), expected.getAlignmentStart2wrt1());
+        }
+    }
+
+    @Test
+    public void testBandedReadAlignment() {
+        // reads that come from the haplotype with small indels are found within a narrow band around their true start.
+        final Random random = new Random(11);
+        final byte[] haplotype = randomBases(random, 400);
+        final LinearSpaceSWAligner aligner = new LinearSpaceSWAligner(SWParameterSet.STANDARD_NGS, SWPairwiseAlignment.OVERHANG_STRATEGY.SOFTCLIP);
+        final List<byte[]> reads = new ArrayList<>();
+        final int[] starts = new int[50];
+        for ( int r = 0; r < starts.length; r++ ) {
+            starts[r] = random.nextInt(300);
+            reads.add(mutate(random, haplotype, starts[r], 100));
+        }
+        final List<SmithWaterman> banded = aligner.alignAll(haplotype, reads, starts, 20);
+        final List<SmithWaterman> full = aligner.alignAll(haplotype, reads);
+        Assert.assertEquals(banded.size(), reads.size());
+        for ( int r = 0; r < reads.size(); r++ ) {
+            final SWPairwiseAlignment expected = new SWPairwiseAlignment(haplotype, reads.get(r), SWParameterSet.STANDARD_NGS, SWPairwiseAlignment.OVERHANG_STRATEGY.SOFTCLIP);
+            Assert.assertEquals(full.get(r).getCigar(), expected.getCigar());
+            Assert.assertEquals(full.get(r).getAlignmentStart2wrt1(), expected.getAlignmentStart2wrt1());
+            Assert.assertEquals(banded.get(r).getCigar(), expected.getCigar());
+            Assert.assertEquals(banded.get(r).getAlignmentStart2wrt1(), expected.getAlignmentStart2wrt1());
+        }
+    }
+
+    @Test
+    public void testNarrowBandStaysInBand() {
+        // the read matches the haplotype exactly at 150, and with two mismatches at 12, inside the band 10 +/- 5
+        final Random random = new Random(3);
+        final byte[] haplotype = randomBases(random, 200);
+        final byte[] read = Arrays.copyOfRange(haplotype, 150, 190);
+        System.arraycopy(read, 0, haplotype, 12, read.length);
+        for ( final int mismatch : new int[]{15, 25} )
+            haplotype[12 + mismatch] = read[mismatch] == 'A' ? (byte)'C' : (byte)'A';
+
+        final LinearSpaceSWAligner aligner = new LinearSpaceSWAligner(SWParameterSet.STANDARD_NGS, SWPairwiseAlignment.OVERHANG_STRATEGY.SOFTCLIP);
+        Assert.assertEquals(aligner.align(haplotype, read).getAlignmentStart2wrt1(), 150);
+
+        // every alignment inside the band lies within haplotype[5, 15 + read.length), so the full matrix over that window is the answer
+        final SmithWaterman expected = new SWPairwiseAlignment(Arrays.copyOfRange(haplotype, 5, 15 + read.length), read, SWParameterSet.STANDARD_NGS, SWPairwiseAlignment.OVERHANG_STRATEGY.SOFTCLIP);
+        Assert.assertEquals(expected.getCigar().toString(), "40M");
+        Assert.assertEquals(expected.getAlignmentStart2wrt1(), 7);
+
+        final SmithWaterman banded = aligner.align(haplotype, read, 10, 5);
+        Assert.assertEquals(banded.getCigar(), expected.getCigar());
+        Assert.assertEquals(banded.getAlignmentStart2wrt1(), expected.getAlignmentStart2wrt1() + 5);
+    }
+
+    @Test
+    public void testLinearSpaceImplementationFollowsParameters() {
+        // each thread reuses one aligner, which must be replaced when the parameters or strategy change
+        final Random random = new Random(23);
+        final byte[] reference = randomBases(random, 150);
+        final byte[] alternate = mutate(random, reference, 20, 90);
+        for ( int k = 0; k < 3; k++ ) {
+            for ( final Parameters parameters : Arrays.asList(SWParameterSet.ORIGINAL_DEFAULT.parameters, SWParameterSet.STANDARD_NGS.parameters, new Parameters(200, -150, -260, -11)) ) {
+                for ( final SWPairwiseAlignment.OVERHANG_STRATEGY strategy : SWPairwiseAlignment.OVERHANG_STRATEGY.values() ) {
+                    final SmithWaterman expected = SWImplementation.FULL_MATRIX.align(reference, alternate, parameters, strategy);
+                    final SmithWaterman actual = SWImplementation.LINEAR_SPACE.align(reference, alternate, parameters, strategy);
+                    Assert.assertEquals(actual.getCigar(), expected.getCigar(), parameters.w_match + " " + strategy);
+                    Assert.assertEquals(actual.getAlignmentStart2wrt1(), expected.getAlignmentStart2wrt1(), parameters.w_match + " " + strategy);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testImplementationsGiveSameCigars() {
+        final Random random = new Random(19);
+        for ( int k = 0; k < 100; k++ ) {
+            final byte[] reference = randomBases(random, 20 + random.nextInt(200));
+            final byte[] path = mutate(random, reference, 0, reference.length + random.nextInt(10) - 5);
+            Assert.assertEquals(CigarUtils.calculateCigar(reference, path, SWImplementation.LINEAR_SPACE),
+                    CigarUtils.calculateCigar(reference, path, SWImplementation.FULL_MATRIX));
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testEmptySequence() {
+        new LinearSpaceSWAligner(SWParameterSet.ORIGINAL_DEFAULT, SWPairwiseAlignment.OVERHANG_STRATEGY.SOFTCLIP).align(new byte[0], "ACGT".getBytes());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testBadBandWidth() {
+        new LinearSpaceSWAligner(SWParameterSet.ORIGINAL_DEFAULT, SWPairwiseAlignment.OVERHANG_STRATEGY.SOFTCLIP).align("ACGT".getBytes(), "ACGT".getBytes(), 0, -2);
+    }
+}
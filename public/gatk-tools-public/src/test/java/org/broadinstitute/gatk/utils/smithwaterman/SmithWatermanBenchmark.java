@@ -34,7 +34,7 @@ import org.broadinstitute.gatk.utils.Utils;
  */
 public class SmithWatermanBenchmark extends SimpleBenchmark {
 
-    @Param({"Original"})
+    @Param({"Original", "LinearSpace", "Banded"})
     String version; // set automatically by framework
 
     @Param({"10", "50", "100", "500"})
@@ -72,11 +72,17 @@ public class SmithWatermanBenchmark extends SimpleBenchmark {
     }
 
     public void timeSW(int rep) {
+        final LinearSpaceSWAligner aligner = new LinearSpaceSWAligner(SWParameterSet.ORIGINAL_DEFAULT, SWPairwiseAlignment.OVERHANG_STRATEGY.SOFTCLIP);
         for ( int i = 0; i < rep; i++ ) {
             final SmithWaterman sw;
             if ( version.equals("Greedy") )
                 throw new IllegalArgumentException("Unsupported implementation");
-            sw = new SWPairwiseAlignment(refString.getBytes(), hapString.getBytes());
+            else if ( version.equals("LinearSpace") )
+                sw = aligner.align(refString.getBytes(), hapString.getBytes());
+            else if ( version.equals("Banded") )
+                sw = aligner.align(refString.getBytes(), hapString.getBytes(), 0, 20);
+            else
+                sw = new SWPairwiseAlignment(refString.getBytes(), hapString.getBytes());
             sw.getCigar();
         }
     }
@@ -0,0 +1,251 @@
+/*
+* Copyright (c) 2012 The Broad Institute
+* 
+* Permission is hereby granted, free of charge, to any person
+* obtaining a copy of this software and associated documentation
+* files (the "Software"), to deal in the Software without
+* restriction, including without limitation the rights to use,
+* copy, modify, merge, publish, distribute, sublicense, and/or sell
+* copies of the Software, and to permit persons to whom the
+* Software is furnished to do so, subject to the following
+* conditions:
+* 
+* The above copyright notice and this permission notice shall be
+* included in all copies or substantial portions of the Software.
+* 
+* THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+* EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+* OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+* NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+* HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+* WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+* FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR
+* THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+*/
+
+package org.broadinstitute.gatk.utils.variant;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.tribble.FeatureReader;
+import htsjdk.tribble.Tribble;
+import htsjdk.tribble.util.TabixUtils;
+import htsjdk.variant.bcf2.BCF2Codec;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.writer.Options;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.variantcontext.writer.VariantContextWriterFactory;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFConstants;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderLine;
+import htsjdk.variant.vcf.VCFStandardHeaderLines;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.broadinstitute.gatk.utils.BaseTest;
+import org.broadinstitute.gatk.utils.fasta.CachingIndexedFastaSequenceFile;
+import org.broadinstitute.gatk.utils.variant.VariantFileConcatenator.FileType;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+public class VariantFileConcatenatorUnitTest extends BaseTest {
+    private SAMSequenceDictionary dictionary;
+    private VCFHeader header;
+    private List<VariantContext> variants;
+
+    @BeforeClass
+    public void setup() throws IOException {
+        dictionary = new CachingIndexedFastaSequenceFile(new File(exampleFASTA)).getSequenceDictionary();
+        final FeatureReader<VariantContext> reader = AbstractFeatureReader.getFeatureReader(publicTestDir + "exampleDBSNP.vcf", new VCFCodec(), false);
+        header = (VCFHeader)reader.getHeader();
+        variants = new ArrayList<>();
+        final Iterator<VariantContext> it = reader.iterator();
+        while ( it.hasNext() )
+            variants.add(it.next());
+        reader.close();
+    }
+
+    @DataProvider(name = "Extensions")
+    public Object[][] makeExtensions() {
+        final List<Object[]> tests = new ArrayList<>();
+        tests.add(new Object[]{".vcf", FileType.VCF});
+        tests.add(new Object[]{".bcf", FileType.BCF});
+        tests.add(new Object[]{".vcf.gz", FileType.BLOCK_COMPRESSED_VCF});
+        return tests.toArray(new Object[][]{});
+    }
+
+    @Test(dataProvider = "Extensions")
+    public void testFileType(final String extension, final FileType fileType) {
+        Assert.assertEquals(VariantFileConcatenator.getFileType(new File("test" + extension)), fileType);
+        Assert.assertEquals(VariantFileConcatenator.getFileType(new File("test" + extension.toUpperCase())), fileType);
+    }
+
+    @Test
+    public void testBlockCompressedFileTypes() {
+        for ( final String extension : AbstractFeatureReader.BLOCK_COMPRESSED_EXTENSIONS )
+            Assert.assertEquals(VariantFileConcatenator.getFileType(new File("test.vcf" + extension)), FileType.BLOCK_COMPRESSED_VCF);
+    }
+
+    @Test
+    public void testInvalidFileType() {
+        Assert.assertEquals(VariantFileConcatenator.getFileType(new File("test.txt")), FileType.INVALID);
+    }
+
+    @Test(dataProvider = "Extensions")
+    public void testConcatenateBlocks(final String extension, final FileType fileType) throws IOException {
+        // the empty part in the middle only has a header
+        final List<File> parts = writeParts(extension, Arrays.asList(0, 70, 70, 150, variants.size()), header, header, header, header);
+        final VariantFileConcatenator concatenator = new VariantFileConcatenator(fileType, parts);
+        Assert.assertTrue(concatenator.canConcatenateBlocks(), concatenator.getIncompatibility());
+
+        final File output = createTempFile("concatenated", extension);
+        concatenator.concatenate(output, dictionary, GATKVCFUtils.getIndexCreator(GATKVCFUtils.DEFAULT_INDEX_TYPE, GATKVCFUtils.DEFAULT_INDEX_PARAMETER, output, dictionary));
+        assertVariants(readVariants(fileType, output, false), variants);
+        assertIndexed(fileType, output);
+    }
+
+    @Test(dataProvider = "Extensions")
+    public void testConcatenateBlocksMatchesWriter(final String extension, final FileType fileType) throws IOException {
+        // parts written by the GATK concatenate to the same text as their records written to a single file, so
+        // outputs only change where the parts are block-compressed, whose blocks are kept as they were written
+        final List<File> parts = writeParts(extension, Arrays.asList(0, 100, variants.size()), header, header);
+        final File output = createTempFile("concatenated", extension);
+        new VariantFileConcatenator(fileType, parts).concatenate(output, dictionary, null);
+
+        final File written = writeParts(extension, Arrays.asList(0, variants.size()), header).get(0);
+        Assert.assertEquals(readText(fileType, output), readText(fileType, written));
+    }
+
+    @Test(dataProvider = "Extensions")
+    public void testConcatenateRecords(final String extension, final FileType fileType) throws IOException {
+        final Set<VCFHeaderLine> samplesHeaderLines = new LinkedHashSet<>(header.getMetaDataInInputOrder());
+        samplesHeaderLines.add(VCFStandardHeaderLines.getFormatLine(VCFConstants.GENOTYPE_KEY));
+        final VCFHeader samplesHeader = new VCFHeader(samplesHeaderLines, Arrays.asList("NA12878"));
+        final List<File> parts = writeParts(extension, Arrays.asList(0, 100, variants.size()), samplesHeader, header);
+        final VariantFileConcatenator concatenator = new VariantFileConcatenator(fileType, parts);
+        Assert.assertFalse(concatenator.canConcatenateBlocks());
+        Assert.assertNotNull(concatenator.getIncompatibility());
+
+        final File output = createTempFile("concatenated", extension);
+        concatenator.concatenate(output, dictionary, GATKVCFUtils.getIndexCreator(GATKVCFUtils.DEFAULT_INDEX_TYPE, GATKVCFUtils.DEFAULT_INDEX_PARAMETER, output, dictionary));
+        assertVariants(readVariants(fileType, output, false), variants);
+    }
+
+    @Test
+    public void testLargeBlockCompressedParts() throws IOException {
+        // many copies of the variants so that each part spans several BGZF blocks
+        final List<VariantContext> manyVariants = new ArrayList<>();
+        for ( int copy = 0; copy < 40; copy++ ) {
+            for ( final VariantContext vc : variants )
+                manyVariants.add(vc);
+        }
+        final List<VariantContext> original = variants;
+        variants = manyVariants;
+        try {
+            final int size = variants.size();
+            final List<File> parts = writeParts(".vcf.gz", Arrays.asList(0, size / 3, 2 * size / 3, size), header, header, header);
+            final File output = createTempFile("concatenated", ".vcf.gz");
+            new VariantFileConcatenator(FileType.BLOCK_COMPRESSED_VCF, parts).concatenate(output, dictionary, null);
+            assertVariants(readVariants(FileType.BLOCK_COMPRESSED_VCF, output, false), variants);
+            Assert.assertFalse(new File(output.getPath() + TabixUtils.STANDARD_INDEX_EXTENSION).exists());
+        } finally {
+            variants = original;
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNoParts() {
+        new VariantFileConcatenator(FileType.VCF, Collections.<File>emptyList());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidType() {
+        new VariantFileConcatenator(FileType.INVALID, Arrays.asList(new File(publicTestDir + "exampleDBSNP.vcf")));
+    }
+
+    /**
+     * Writes the variants between consecutive boundaries to separate parts, each with its own header
+     */
+    private List<File> writeParts(final String extension, final List<Integer> boundaries, final VCFHeader... partHeaders) {
+        final List<File> parts = new ArrayList<>();
+        for ( int i = 0; i < partHeaders.length; i++ ) {
+            final File part = createTempFile("part" + i, extension);
+            final VariantContextWriter writer = VariantContextWriterFactory.create(part, dictionary, EnumSet.noneOf(Options.class));
+            writer.writeHeader(partHeaders[i]);
+            for ( final VariantContext vc : variants.subList(boundaries.get(i), boundaries.get(i + 1)) )
+                writer.add(vc);
+            writer.close();
+            parts.add(part);
+        }
+        return parts;
+    }
+
+    private byte[] readText(final FileType fileType, final File file) throws IOException {
+        if ( fileType != FileType.BLOCK_COMPRESSED_VCF )
+            return FileUtils.readFileToByteArray(file);
+        final BlockCompressedInputStream in = new BlockCompressedInputStream(file);
+        try {
+            return IOUtils.toByteArray(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private List<VariantContext> readVariants(final FileType fileType, final File file, final boolean requireIndex) throws IOException {
+        final FeatureReader<VariantContext> reader = openReader(fileType, file, requireIndex);
+        final List<VariantContext> result = new ArrayList<>();
+        final Iterator<VariantContext> it = reader.iterator();
+        while ( it.hasNext() )
+            result.add(it.next());
+        reader.close();
+        return result;
+    }
+
+    private FeatureReader<VariantContext> openReader(final FileType fileType, final File file, final boolean requireIndex) {
+        if ( fileType == FileType.BCF )
+            return AbstractFeatureReader.getFeatureReader(file.getAbsolutePath(), new BCF2Codec(), requireIndex);
+        else
+            return AbstractFeatureReader.getFeatureReader(file.getAbsolutePath(), new VCFCodec(), requireIndex);
+    }
+
+    private void assertVariants(final List<VariantContext> actual, final List<VariantContext> expected) {
+        Assert.assertEquals(actual.size(), expected.size());
+        for ( int i = 0; i < expected.size(); i++ ) {
+            Assert.assertEquals(actual.get(i).getChr(), expected.get(i).getChr());
+            Assert.assertEquals(actual.get(i).getStart(), expected.get(i).getStart());
+            Assert.assertEquals(actual.get(i).getEnd(), expected.get(i).getEnd());
+            Assert.assertEquals(actual.get(i).getID(), expected.get(i).getID());
+            Assert.assertEquals(actual.get(i).getAlleles(), expected.get(i).getAlleles());
+        }
+    }
+
+    private void assertIndexed(final FileType fileType, final File output) throws IOException {
+        final File index = fileType == FileType.BLOCK_COMPRESSED_VCF ? new File(output.getPath() + TabixUtils.STANDARD_INDEX_EXTENSION) : Tribble.indexFile(output);
+        Assert.assertTrue(index.exists(), "Missing index " + index);
+        index.deleteOnExit();
+
+        // query a window in the middle through the index
+        final VariantContext first = variants.get(50);
+        final VariantContext last = variants.get(160);
+        final FeatureReader<VariantContext> reader = openReader(fileType, output, true);
+        final List<VariantContext> queried = new ArrayList<>();
+        final Iterator<VariantContext> it = reader.query(first.getChr(), first.getStart(), last.getStart());
+        while ( it.hasNext() )
+            queried.add(it.next());
+        reader.close();
+
+        final List<VariantContext> expected = new ArrayList<>();
+        for ( final VariantContext vc : variants ) {
+            if ( vc.getEnd() >= first.getStart() && vc.getStart() <= last.getStart() )
+                expected.add(vc);
+        }
+        assertVariants(queried, expected);
+    }
+}